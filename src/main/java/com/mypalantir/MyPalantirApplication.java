@@ -2,6 +2,7 @@ package com.mypalantir;
 
 import com.mypalantir.config.Config;
 import com.mypalantir.config.EnvConfig;
+import com.mypalantir.meta.LinkType;
 import com.mypalantir.meta.Loader;
 import com.mypalantir.meta.Validator;
 import com.mypalantir.service.AtomicMetricService;
@@ -32,6 +33,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @SpringBootApplication
 @EnableConfigurationProperties(Config.class)
@@ -131,8 +133,16 @@ public class MyPalantirApplication {
     }
 
     @Bean
-    public LinkStorage fileLinkStorage(PathManager pathManager) {
-        return new LinkStorage(pathManager);
+    public LinkStorage fileLinkStorage(PathManager pathManager, Config config, @Lazy Loader loader) {
+        LinkStorage storage = new LinkStorage(pathManager, config.getLinkBatchSize());
+        // 文件模式下启动时加载邻接索引，避免首次邻居查询时扫描全部关系文件
+        if ("file".equalsIgnoreCase(config.getStorageType()) && loader.getSchema() != null
+                && loader.getSchema().getLinkTypes() != null) {
+            storage.loadAdjacencyIndexes(loader.getSchema().getLinkTypes().stream()
+                .map(LinkType::getName)
+                .collect(Collectors.toList()));
+        }
+        return storage;
     }
 
     @Bean
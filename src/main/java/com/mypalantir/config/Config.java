@@ -60,6 +60,130 @@ public class Config {
     @Value("${storage.graph.type:neo4j}")
     private String storageGraphType;
 
+    /** 分段日志存储（storage.type=segment）：单个段文件大小上限 */
+    @Value("${storage.segment.max-segment-bytes:67108864}")
+    private long segmentMaxSegmentBytes;
+
+    /** 分段日志存储：批量 fsync 间隔（毫秒），0 表示每次写入立即 fsync */
+    @Value("${storage.segment.fsync-interval-ms:200}")
+    private long segmentFsyncIntervalMs;
+
+    /** 分段日志存储：失效字节占比达到该值时压缩 */
+    @Value("${storage.segment.compaction-ratio:0.5}")
+    private double segmentCompactionRatio;
+
+    /** 分段日志存储：日志小于该字节数时不压缩 */
+    @Value("${storage.segment.compaction-min-bytes:4194304}")
+    private long segmentCompactionMinBytes;
+
+    /** 分段日志存储：压缩检查间隔（毫秒） */
+    @Value("${storage.segment.compaction-interval-ms:60000}")
+    private long segmentCompactionIntervalMs;
+
+    /** 分段日志存储：首次打开类型日志时导入旧的单文件 JSON 数据 */
+    @Value("${storage.segment.import-legacy:true}")
+    private boolean segmentImportLegacy;
+
+    /** 关系批量写入（createLinksBatch 等）每批条目数 */
+    @Value("${storage.link.batch-size:1000}")
+    private int linkBatchSize;
+
+    /** 关系同步（LinkSyncService）每批提交给存储层 createLinksBatch 的关系数量 */
+    @Value("${link.sync.batch-size:1000}")
+    private int linkSyncBatchSize;
+
+    /** 混合存储实例读穿缓存开关（storage.type=hybrid） */
+    @Value("${storage.cache.enabled:true}")
+    private boolean instanceCacheEnabled;
+
+    /** 实例缓存：每个对象类型的条目数上限，可按类型覆盖 storage.cache.type.{objectType}.max-entries */
+    @Value("${storage.cache.max-entries:10000}")
+    private int instanceCacheMaxEntries;
+
+    /** 实例缓存：条目存活时间（毫秒），可按类型覆盖 storage.cache.type.{objectType}.ttl-ms */
+    @Value("${storage.cache.ttl-ms:60000}")
+    private long instanceCacheTtlMs;
+
+    /** 实例缓存：负缓存（实例不存在）存活时间（毫秒），0 表示关闭，可按类型覆盖 */
+    @Value("${storage.cache.negative-ttl-ms:0}")
+    private long instanceCacheNegativeTtlMs;
+
+    /** 批量导入：每次 batchMergeInstances 写入的行数 */
+    @Value("${import.chunk-size:1000}")
+    private int importChunkSize;
+
+    /** 批量导入：并行写入的块数上限 */
+    @Value("${import.parallelism:4}")
+    private int importParallelism;
+
+    /** 批量导入：任务中保留的错误样本条数 */
+    @Value("${import.error-sample-size:20}")
+    private int importErrorSampleSize;
+
+    /** 跨库抽取：源表游标每次拉取的行数（MySQL/Doris 使用流式读取，不受此值影响） */
+    @Value("${extract.pipeline.fetch-size:1000}")
+    private int extractFetchSize;
+
+    /** 跨库抽取：每批写入目标表的行数 */
+    @Value("${extract.pipeline.batch-size:1000}")
+    private int extractBatchSize;
+
+    /** 跨库抽取：并发写入线程数（每个线程一个目标连接） */
+    @Value("${extract.pipeline.writers:2}")
+    private int extractWriters;
+
+    /** 跨库抽取：读取与写入之间的队列容量（批），队列满时读取阻塞 */
+    @Value("${extract.pipeline.queue-capacity:4}")
+    private int extractQueueCapacity;
+
+    /** 图数据库：启动时按本体自动创建缺失的 id 唯一约束与字段索引 */
+    @Value("${storage.graph.schema.auto-create:true}")
+    private boolean graphSchemaAutoCreate;
+
+    /** 同步表 -> 图数据库：每次 batchMergeInstances 写入的行数 */
+    @Value("${graph.sync.batch-size:500}")
+    private int graphSyncBatchSize;
+
+    /** 同步表 -> 图数据库：初始并发批次数 */
+    @Value("${graph.sync.parallelism:4}")
+    private int graphSyncParallelism;
+
+    /** 同步表 -> 图数据库：并发批次数上限（自适应调整不超过此值） */
+    @Value("${graph.sync.max-parallelism:8}")
+    private int graphSyncMaxParallelism;
+
+    /** 同步表 -> 图数据库：单批目标延迟（毫秒），超过时并发减半，低于时逐步增加 */
+    @Value("${graph.sync.target-latency-ms:1000}")
+    private long graphSyncTargetLatencyMs;
+
+    /** 同步表 -> 图数据库：单批失败重试次数 */
+    @Value("${graph.sync.max-retries:2}")
+    private int graphSyncMaxRetries;
+
+    /** 增量抽取后按写入行同步图数据库的行数上限，超过时改为流式同步整张同步表 */
+    @Value("${graph.sync.incremental-max-rows:100000}")
+    private int graphSyncIncrementalMaxRows;
+
+    /** 混合模式图摘要写后队列开关：关闭时实例写入同步更新图数据库 */
+    @Value("${storage.graph-outbox.enabled:true}")
+    private boolean graphOutboxEnabled;
+
+    /** 写后队列：每次 UNWIND 合并到图数据库的行数 */
+    @Value("${storage.graph-outbox.batch-size:500}")
+    private int graphOutboxBatchSize;
+
+    /** 写后队列：后台刷新间隔（毫秒） */
+    @Value("${storage.graph-outbox.flush-interval-ms:200}")
+    private long graphOutboxFlushIntervalMs;
+
+    /** 写后队列：首次失败后的重试等待（毫秒），之后逐次翻倍 */
+    @Value("${storage.graph-outbox.retry-backoff-ms:1000}")
+    private long graphOutboxRetryBackoffMs;
+
+    /** 写后队列：重试等待上限（毫秒） */
+    @Value("${storage.graph-outbox.max-backoff-ms:60000}")
+    private long graphOutboxMaxBackoffMs;
+
     @Value("${neo4j.uri:bolt://localhost:7687}")
     private String neo4jUri;
 
@@ -190,6 +314,130 @@ public class Config {
         return storageType;
     }
 
+    public long getSegmentMaxSegmentBytes() {
+        return segmentMaxSegmentBytes;
+    }
+
+    public long getSegmentFsyncIntervalMs() {
+        return segmentFsyncIntervalMs;
+    }
+
+    public double getSegmentCompactionRatio() {
+        return segmentCompactionRatio;
+    }
+
+    public long getSegmentCompactionMinBytes() {
+        return segmentCompactionMinBytes;
+    }
+
+    public long getSegmentCompactionIntervalMs() {
+        return segmentCompactionIntervalMs;
+    }
+
+    public boolean isSegmentImportLegacy() {
+        return segmentImportLegacy;
+    }
+
+    public int getLinkBatchSize() {
+        return linkBatchSize;
+    }
+
+    public int getLinkSyncBatchSize() {
+        return linkSyncBatchSize;
+    }
+
+    public boolean isInstanceCacheEnabled() {
+        return instanceCacheEnabled;
+    }
+
+    public int getInstanceCacheMaxEntries() {
+        return instanceCacheMaxEntries;
+    }
+
+    public long getInstanceCacheTtlMs() {
+        return instanceCacheTtlMs;
+    }
+
+    public long getInstanceCacheNegativeTtlMs() {
+        return instanceCacheNegativeTtlMs;
+    }
+
+    public int getImportChunkSize() {
+        return importChunkSize;
+    }
+
+    public int getImportParallelism() {
+        return importParallelism;
+    }
+
+    public int getImportErrorSampleSize() {
+        return importErrorSampleSize;
+    }
+
+    public int getExtractFetchSize() {
+        return extractFetchSize;
+    }
+
+    public int getExtractBatchSize() {
+        return extractBatchSize;
+    }
+
+    public int getExtractWriters() {
+        return extractWriters;
+    }
+
+    public int getExtractQueueCapacity() {
+        return extractQueueCapacity;
+    }
+
+    public boolean isGraphSchemaAutoCreate() {
+        return graphSchemaAutoCreate;
+    }
+
+    public int getGraphSyncBatchSize() {
+        return graphSyncBatchSize;
+    }
+
+    public int getGraphSyncParallelism() {
+        return graphSyncParallelism;
+    }
+
+    public int getGraphSyncMaxParallelism() {
+        return graphSyncMaxParallelism;
+    }
+
+    public long getGraphSyncTargetLatencyMs() {
+        return graphSyncTargetLatencyMs;
+    }
+
+    public int getGraphSyncMaxRetries() {
+        return graphSyncMaxRetries;
+    }
+
+    public int getGraphSyncIncrementalMaxRows() {
+        return graphSyncIncrementalMaxRows;
+    }
+
+    public boolean isGraphOutboxEnabled() {
+        return graphOutboxEnabled;
+    }
+
+    public int getGraphOutboxBatchSize() {
+        return graphOutboxBatchSize;
+    }
+
+    public long getGraphOutboxFlushIntervalMs() {
+        return graphOutboxFlushIntervalMs;
+    }
+
+    public long getGraphOutboxRetryBackoffMs() {
+        return graphOutboxRetryBackoffMs;
+    }
+
+    public long getGraphOutboxMaxBackoffMs() {
+        return graphOutboxMaxBackoffMs;
+    }
+
     public String getNeo4jUri() {
         return neo4jUri;
     }
@@ -39,6 +39,49 @@ public class DatabaseController {
         }
     }
 
+    /**
+     * 只读副本状态：各数据源副本的健康、复制延迟、路由次数及回退主库次数
+     */
+    @GetMapping("/read-replicas")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getReadReplicaStatus() {
+        return ResponseEntity.ok(ApiResponse.success(databaseMetadataService.getReadReplicaStatus()));
+    }
+
+    /**
+     * 元数据缓存统计：条目数、命中、未命中、合并的并发加载、后台刷新次数
+     */
+    @GetMapping("/metadata-cache")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getMetadataCacheStats() {
+        return ResponseEntity.ok(ApiResponse.success(databaseMetadataService.getMetadataCacheStats()));
+    }
+
+    /**
+     * 刷新元数据缓存：失效数据库（或指定表）的缓存并立即重新加载表列表（或该表的列）
+     */
+    @PostMapping("/metadata-cache/refresh")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> refreshMetadataCache(
+            @RequestParam(required = false) String databaseId,
+            @RequestParam(required = false) String tableName) {
+        try {
+            if (databaseId == null || databaseId.isEmpty()) {
+                databaseId = databaseService.getOrCreateDefaultDatabase();
+            }
+            Map<String, Object> result = new java.util.LinkedHashMap<>();
+            result.put("database_id", databaseId);
+            result.put("invalidated", databaseMetadataService.invalidateMetadata(databaseId, tableName));
+            if (tableName == null || tableName.isEmpty()) {
+                result.put("tables", databaseMetadataService.getTables(databaseId).size());
+            } else {
+                result.put("table_name", tableName);
+                result.put("columns", databaseMetadataService.getColumns(databaseId, tableName).size());
+            }
+            return ResponseEntity.ok(ApiResponse.success(result));
+        } catch (SQLException | IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ApiResponse.error(500, "Failed to refresh metadata cache: " + e.getMessage()));
+        }
+    }
+
     @GetMapping("/list")
     public ResponseEntity<ApiResponse<List<Map<String, Object>>>> listDatabases() {
         try {
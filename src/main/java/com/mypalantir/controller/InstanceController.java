@@ -3,13 +3,20 @@ package com.mypalantir.controller;
 import com.mypalantir.meta.Loader;
 import com.mypalantir.service.DataValidator;
 import com.mypalantir.service.InstanceService;
+import com.mypalantir.service.InstanceExportService;
+import com.mypalantir.service.InstanceImportService;
 import com.mypalantir.service.InstanceOntologySyncService;
 import com.mypalantir.service.MappedDataService;
+import com.mypalantir.repository.HybridInstanceStorage;
 import com.mypalantir.repository.InstanceStorage;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
@@ -30,10 +37,134 @@ public class InstanceController {
     @Autowired
     private InstanceOntologySyncService instanceOntologySyncService;
 
+    @Autowired(required = false)
+    private HybridInstanceStorage hybridInstanceStorage;
+
+    @Autowired
+    private InstanceExportService instanceExportService;
+
+    @Autowired
+    private InstanceImportService instanceImportService;
+
     public InstanceController(InstanceService instanceService) {
         this.instanceService = instanceService;
     }
 
+    /**
+     * 混合存储实例读穿缓存的按类型命中统计
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<ApiResponse<Map<String, Map<String, Object>>>> getCacheStats() {
+        Map<String, Map<String, Object>> stats = hybridInstanceStorage != null
+            ? hybridInstanceStorage.getCacheStats() : new HashMap<>();
+        return ResponseEntity.ok(ApiResponse.success(stats));
+    }
+
+    /**
+     * 混合存储图摘要写后队列状态：待刷新数、重试中的行数、复制延迟（lag_ms）
+     */
+    @GetMapping("/graph-outbox/stats")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getGraphOutboxStats() {
+        try {
+            Map<String, Object> stats = hybridInstanceStorage != null ? hybridInstanceStorage.getGraphOutboxStats() : null;
+            if (stats == null) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(409, "Graph outbox is not enabled"));
+            }
+            return ResponseEntity.ok(ApiResponse.success(stats));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ApiResponse.error(500, e.getMessage()));
+        }
+    }
+
+    /**
+     * 流式导出对象类型的全部实例（format=ndjson | arrow | parquet，列式格式每 batchSize 行一批）
+     */
+    @GetMapping("/{objectType}/export")
+    public ResponseEntity<?> exportInstances(
+            @PathVariable String objectType,
+            @RequestParam(defaultValue = InstanceExportService.FORMAT_NDJSON) String format,
+            @RequestParam(defaultValue = "1024") int batchSize) {
+        if (!InstanceExportService.isSupportedFormat(format)) {
+            return ResponseEntity.badRequest()
+                .body(ApiResponse.error(400, "Unsupported export format: " + format));
+        }
+        try {
+            instanceExportService.checkObjectType(objectType);
+            StreamingResponseBody body = out -> instanceExportService.exportInstances(objectType, format, out, batchSize);
+            return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(InstanceExportService.contentType(format)))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                    "attachment; filename=\"" + objectType + InstanceExportService.fileExtension(format) + "\"")
+                .body(body);
+        } catch (Loader.NotFoundException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(400, e.getMessage()));
+        }
+    }
+
+    /**
+     * 提交流式批量导入任务（CSV 首行为表头，或 NDJSON），立即返回任务，进度通过 import-jobs 查询
+     */
+    @PostMapping("/{objectType}/import")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> importInstances(
+            @PathVariable String objectType,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) String format,
+            @RequestParam(required = false) Integer chunkSize,
+            @RequestParam(required = false) Integer parallelism,
+            @RequestParam(required = false) String idField) {
+        try (java.io.InputStream content = file.getInputStream()) {
+            InstanceImportService.ImportJob job = instanceImportService.submit(objectType, content,
+                file.getOriginalFilename(), format, chunkSize, parallelism, idField);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(ApiResponse.success(instanceImportService.getJob(job.getId())));
+        } catch (Loader.NotFoundException | IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(400, e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ApiResponse.error(500, "Failed to submit import: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/import-jobs")
+    public ResponseEntity<ApiResponse<List<Map<String, Object>>>> listImportJobs() {
+        return ResponseEntity.ok(ApiResponse.success(instanceImportService.listJobs()));
+    }
+
+    /**
+     * 导入任务进度：已读记录数、检查点、写入/失败行数、错误样本、吞吐
+     */
+    @GetMapping("/import-jobs/{jobId}")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getImportJob(@PathVariable String jobId) {
+        Map<String, Object> job = instanceImportService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(ApiResponse.error(404, "import job not found: " + jobId));
+        }
+        return ResponseEntity.ok(ApiResponse.success(job));
+    }
+
+    /**
+     * 从检查点继续失败的导入任务
+     */
+    @PostMapping("/import-jobs/{jobId}/resume")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> resumeImportJob(@PathVariable String jobId) {
+        try {
+            instanceImportService.resume(jobId);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(ApiResponse.success(instanceImportService.getJob(jobId)));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiResponse.error(409, e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(ApiResponse.error(404, e.getMessage()));
+        }
+    }
+
     @PostMapping("/{objectType}")
     public ResponseEntity<ApiResponse<Map<String, String>>> createInstance(
             @PathVariable String objectType,
@@ -213,12 +344,14 @@ public class InstanceController {
     public ResponseEntity<ApiResponse<Map<String, Object>>> syncFromMapping(
             @PathVariable String objectType,
             @PathVariable String mappingId,
-            @RequestParam(required = false) String targetDatabaseId) {
+            @RequestParam(required = false) String targetDatabaseId,
+            @RequestParam(defaultValue = "false") boolean fullRefresh) {
         try {
             // 默认使用同步抽取方法（构建表+抽取数据）
             // targetDatabaseId为null时，使用源数据库作为目标数据库
+            // 映射配置了增量模式时只抽取新增/变化的行，fullRefresh=true 时重建检查点
             MappedDataService.SyncExtractResult result = mappedDataService.syncExtractWithTable(
-                objectType, mappingId, targetDatabaseId);
+                objectType, mappingId, targetDatabaseId, fullRefresh);
             return ResponseEntity.ok(ApiResponse.success(result.toMap()));
         } catch (Loader.NotFoundException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -229,6 +362,30 @@ public class InstanceController {
         }
     }
 
+    /**
+     * 将同步表流式同步到图数据库（混合存储模式）
+     * 上次同步失败时从检查点续传，restart=true 时从头同步
+     */
+    @PostMapping("/{objectType}/sync-to-graph")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> syncToGraph(
+            @PathVariable String objectType,
+            @RequestParam(required = false) String targetDatabaseId,
+            @RequestParam(defaultValue = "false") boolean restart) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success(
+                mappedDataService.syncTableToGraph(objectType, targetDatabaseId, restart)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(ApiResponse.error(404, e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiResponse.error(409, e.getMessage()));
+        } catch (IOException | SQLException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ApiResponse.error(500, "Failed to sync to graph: " + e.getMessage()));
+        }
+    }
+
     /**
      * 批量获取实例
      * @param objectType 对象类型
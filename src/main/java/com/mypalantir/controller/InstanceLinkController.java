@@ -39,6 +39,32 @@ public class InstanceLinkController {
         }
     }
 
+    /**
+     * K 跳邻域子图：linkTypes 以逗号分隔，为空表示全部关系类型
+     */
+    @GetMapping("/{objectType}/{id}/neighborhood")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getNeighborhood(
+            @PathVariable String objectType,
+            @PathVariable String id,
+            @RequestParam(defaultValue = "2") int depth,
+            @RequestParam(required = false) List<String> linkTypes,
+            @RequestParam(defaultValue = "both") String direction,
+            @RequestParam(defaultValue = "50") int fanOut,
+            @RequestParam(defaultValue = "500") int maxNodes,
+            @RequestParam(defaultValue = "false") boolean includeProperties) {
+        try {
+            Map<String, Object> neighborhood = linkService.getNeighborhood(objectType, id, depth, linkTypes,
+                direction, fanOut, maxNodes, includeProperties);
+            return ResponseEntity.ok(ApiResponse.success(neighborhood));
+        } catch (Loader.NotFoundException | IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(400, e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ApiResponse.error(500, "Failed to expand neighborhood: " + e.getMessage()));
+        }
+    }
+
     @GetMapping("/{objectType}/{id}/connected/{linkType}")
     public ResponseEntity<ApiResponse<List<Map<String, Object>>>> getConnectedInstances(
             @PathVariable String objectType,
@@ -37,30 +37,36 @@ public class MappingController {
             System.out.println("[MappingController.createMapping] Received primary_key_column: " + primaryKeyColumn);
             
             // 如果提供了新格式的数组，使用它；否则使用旧格式的单个字符串
+            String mappingId;
             if (primaryKeyColumns != null && !primaryKeyColumns.isEmpty()) {
                 System.out.println("[MappingController.createMapping] Using primary_key_columns array: " + primaryKeyColumns);
-                String mappingId = mappingService.createMapping(objectType, tableId, columnPropertyMappings, primaryKeyColumns);
-                Map<String, String> result = new HashMap<>();
-                result.put("id", mappingId);
-                return ResponseEntity.ok(ApiResponse.success(result));
+                mappingId = mappingService.createMapping(objectType, tableId, columnPropertyMappings, primaryKeyColumns);
             } else if (primaryKeyColumn != null && !primaryKeyColumn.isEmpty()) {
                 // 兼容旧格式：单个主键列转换为数组
-                String mappingId = mappingService.createMapping(objectType, tableId, columnPropertyMappings, java.util.Arrays.asList(primaryKeyColumn));
-                Map<String, String> result = new HashMap<>();
-                result.put("id", mappingId);
-                return ResponseEntity.ok(ApiResponse.success(result));
+                mappingId = mappingService.createMapping(objectType, tableId, columnPropertyMappings, java.util.Arrays.asList(primaryKeyColumn));
             } else {
-                String mappingId = mappingService.createMapping(objectType, tableId, columnPropertyMappings, null);
-                Map<String, String> result = new HashMap<>();
-                result.put("id", mappingId);
-                return ResponseEntity.ok(ApiResponse.success(result));
+                mappingId = mappingService.createMapping(objectType, tableId, columnPropertyMappings, null);
             }
-        } catch (Loader.NotFoundException | IOException e) {
+            applyIncrementalConfig(mappingId, request);
+            Map<String, String> result = new HashMap<>();
+            result.put("id", mappingId);
+            return ResponseEntity.ok(ApiResponse.success(result));
+        } catch (Loader.NotFoundException | IOException | IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                 .body(ApiResponse.error(400, e.getMessage()));
         }
     }
 
+    /**
+     * 请求中带有 incremental_mode 时更新映射的增量抽取配置（full | watermark | row_hash，watermark 需 watermark_column）
+     */
+    private void applyIncrementalConfig(String mappingId, Map<String, Object> request) throws IOException {
+        if (request.containsKey("incremental_mode")) {
+            mappingService.updateIncrementalConfig(mappingId,
+                (String) request.get("incremental_mode"), (String) request.get("watermark_column"));
+        }
+    }
+
     @GetMapping("/{mappingId}")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getMapping(
             @PathVariable String mappingId) {
@@ -124,7 +130,11 @@ public class MappingController {
             } else {
                 mappingService.updateMapping(mappingId, columnPropertyMappings, null);
             }
+            applyIncrementalConfig(mappingId, request);
             return ResponseEntity.ok(ApiResponse.success(null));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(400, e.getMessage()));
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(ApiResponse.error(500, "Failed to update mapping: " + e.getMessage()));
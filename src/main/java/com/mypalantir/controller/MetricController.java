@@ -2,13 +2,20 @@ package com.mypalantir.controller;
 
 import com.mypalantir.metric.*;
 import com.mypalantir.service.AtomicMetricService;
+import com.mypalantir.service.MetricBatchService;
 import com.mypalantir.service.MetricCalculator;
+import com.mypalantir.service.MetricDependencyPlanner;
+import com.mypalantir.service.MetricResultCache;
+import com.mypalantir.service.MetricRollupStore;
 import com.mypalantir.service.MetricService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +30,18 @@ public class MetricController {
     private final MetricService metricService;
     private final MetricCalculator metricCalculator;
 
+    @Autowired(required = false)
+    private MetricResultCache metricResultCache;
+
+    @Autowired(required = false)
+    private MetricBatchService metricBatchService;
+
+    @Autowired(required = false)
+    private MetricRollupStore metricRollupStore;
+
+    @Autowired(required = false)
+    private MetricDependencyPlanner metricDependencyPlanner;
+
     public MetricController(AtomicMetricService atomicMetricService, MetricService metricService, MetricCalculator metricCalculator) {
         this.atomicMetricService = atomicMetricService;
         this.metricService = metricService;
@@ -247,6 +266,26 @@ public class MetricController {
         }
     }
 
+    /**
+     * 指标的依赖 DAG：拓扑序、各节点版本与直接依赖、共享节点
+     */
+    @GetMapping("/definitions/{id}/plan")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getMetricPlan(@PathVariable String id) {
+        if (metricDependencyPlanner == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(409, "Metric dependency planner is not available"));
+        }
+        try {
+            return ResponseEntity.ok(ApiResponse.success(metricDependencyPlanner.plan(id).toMap()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(400, e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(404, e.getMessage()));
+        }
+    }
+
     @PutMapping("/definitions/{id}")
     public ResponseEntity<ApiResponse<Void>> updateMetricDefinition(@PathVariable String id, @RequestBody Map<String, Object> data) {
         try {
@@ -324,43 +363,138 @@ public class MetricController {
         }
     }
 
+    /**
+     * 批量查询指标：查询项并行执行，批内相同的指标及基础指标计算只执行一次；
+     * 整批截止时间（timeout_ms）到期时已完成的项正常返回，未完成或失败的项在 error 中给出原因
+     */
     @PostMapping("/query/batch")
     public ResponseEntity<ApiResponse<List<MetricResult>>> batchQueryMetrics(@RequestBody Map<String, Object> request) {
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> queries = (List<Map<String, Object>>) request.get("queries");
+        if (queries == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(400, "queries is required"));
+        }
+        if (metricBatchService == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(409, "Metric batch execution is not available"));
+        }
+        Object timeout = request.get("timeout_ms");
+        Long timeoutMs = timeout instanceof Number ? ((Number) timeout).longValue() : null;
+        MetricBatchService.BatchResult result = metricBatchService.execute(queries, timeoutMs);
+        return ResponseEntity.ok(ApiResponse.success(result.getResults()));
+    }
+
+    /**
+     * 指标结果缓存统计：条目数（其中已关闭周期条目）、命中、未命中、淘汰、失效次数
+     */
+    @GetMapping("/result-cache")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getResultCacheStats() {
+        if (metricResultCache == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(409, "Metric result cache is not available"));
+        }
+        return ResponseEntity.ok(ApiResponse.success(metricResultCache.stats()));
+    }
+
+    /**
+     * 清空指标结果缓存；指定 metric_id 时只失效依赖该指标的结果
+     */
+    @PostMapping("/result-cache/invalidate")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> invalidateResultCache(
+            @RequestParam(name = "metric_id", required = false) String metricId) {
+        if (metricResultCache == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(409, "Metric result cache is not available"));
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("invalidated", metricId == null || metricId.isEmpty()
+                ? metricResultCache.clear() : metricResultCache.invalidateMetric(metricId));
+        return ResponseEntity.ok(ApiResponse.success(result));
+    }
+
+    // ==================== 指标汇总 API ====================
+
+    @GetMapping("/rollups")
+    public ResponseEntity<ApiResponse<List<Map<String, Object>>>> listRollups() {
+        if (metricRollupStore == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(409, "Metric rollup store is not available"));
+        }
+        try {
+            return ResponseEntity.ok(ApiResponse.success(metricRollupStore.list()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error(500, e.getMessage()));
+        }
+    }
+
+    /**
+     * 注册汇总：atomic_metric_id、time_dimension、dimensions
+     */
+    @PostMapping("/rollups")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> registerRollup(@RequestBody Map<String, Object> request) {
+        if (metricRollupStore == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(409, "Metric rollup store is not available"));
+        }
         try {
             @SuppressWarnings("unchecked")
-            List<Map<String, Object>> queries = (List<Map<String, Object>>) request.get("queries");
-            List<MetricResult> results = new java.util.ArrayList<>();
-
-            for (Map<String, Object> queryMap : queries) {
-                String metricId = (String) queryMap.get("metric_id");
-                MetricDefinition metricDefinition = metricService.getMetricDefinition(metricId);
-
-                MetricQuery query = new MetricQuery();
-                query.setMetricId(metricId);
-
-                @SuppressWarnings("unchecked")
-                Map<String, Object> timeRangeMap = (Map<String, Object>) queryMap.get("time_range");
-                if (timeRangeMap != null) {
-                    MetricQuery.TimeRange timeRange = new MetricQuery.TimeRange(
-                            (String) timeRangeMap.get("start"),
-                            (String) timeRangeMap.get("end")
-                    );
-                    query.setTimeRange(timeRange);
-                }
+            List<String> dimensions = (List<String>) request.get("dimensions");
+            return ResponseEntity.ok(ApiResponse.success(metricRollupStore.register(
+                    (String) request.get("atomic_metric_id"), (String) request.get("time_dimension"), dimensions)));
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(400, e.getMessage()));
+        }
+    }
 
-                @SuppressWarnings("unchecked")
-                Map<String, Object> dimensions = (Map<String, Object>) queryMap.get("dimensions");
-                query.setDimensions(dimensions);
+    /**
+     * 向前回填到 from（yyyy-MM-dd）
+     */
+    @PostMapping("/rollups/{id}/backfill")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> backfillRollup(@PathVariable String id, @RequestParam String from) {
+        if (metricRollupStore == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(409, "Metric rollup store is not available"));
+        }
+        try {
+            return ResponseEntity.ok(ApiResponse.success(metricRollupStore.backfill(id, LocalDate.parse(from))));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(400, "Invalid date: " + from));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error(500, e.getMessage()));
+        }
+    }
 
-                MetricResult result = metricCalculator.calculateMetric(metricDefinition, query);
-                results.add(result);
-            }
+    @PostMapping("/rollups/{id}/rebuild")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> rebuildRollup(@PathVariable String id) {
+        if (metricRollupStore == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(409, "Metric rollup store is not available"));
+        }
+        try {
+            return ResponseEntity.ok(ApiResponse.success(metricRollupStore.rebuild(id)));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error(500, e.getMessage()));
+        }
+    }
 
-            return ResponseEntity.ok(ApiResponse.success(results));
-        } catch (Exception e) {
-            e.printStackTrace();
+    @DeleteMapping("/rollups/{id}")
+    public ResponseEntity<ApiResponse<Void>> deleteRollup(@PathVariable String id) {
+        if (metricRollupStore == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(409, "Metric rollup store is not available"));
+        }
+        try {
+            metricRollupStore.delete(id);
+            return ResponseEntity.ok(ApiResponse.success(null));
+        } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(ApiResponse.error(500, "Failed to batch query metrics: " + e.getMessage()));
+                    .body(ApiResponse.error(500, e.getMessage()));
         }
     }
 }
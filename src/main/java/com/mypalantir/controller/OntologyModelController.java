@@ -4,6 +4,7 @@ import com.mypalantir.config.Config;
 import com.mypalantir.meta.DataSourceMapping;
 import com.mypalantir.meta.ObjectType;
 import com.mypalantir.meta.Validator;
+import com.mypalantir.repository.GraphSchemaManager;
 import com.mypalantir.service.MappingService;
 import com.mypalantir.service.OntologyModelService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,6 +30,9 @@ public class OntologyModelController {
     @Autowired
     private MappingService mappingService;
 
+    @Autowired(required = false)
+    private GraphSchemaManager graphSchemaManager;
+
     public OntologyModelController(OntologyModelService modelService, Config config) {
         this.modelService = modelService;
         this.config = config;
@@ -182,5 +186,33 @@ public class OntologyModelController {
                 .body(ApiResponse.error(500, "Failed to switch model: " + e.getMessage()));
         }
     }
-}
 
+    /**
+     * 图数据库约束与索引现状：当前本体所需项中已存在与缺失的清单
+     */
+    @GetMapping("/graph-schema")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getGraphSchema() {
+        return graphSchemaAction(false);
+    }
+
+    /**
+     * 幂等创建当前本体所需、图数据库中缺失的约束与索引
+     */
+    @PostMapping("/graph-schema/ensure")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> ensureGraphSchema() {
+        return graphSchemaAction(true);
+    }
+
+    private ResponseEntity<ApiResponse<Map<String, Object>>> graphSchemaAction(boolean ensure) {
+        if (graphSchemaManager == null || !graphSchemaManager.isAvailable()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiResponse.error(409, "Graph database is not configured"));
+        }
+        try {
+            return ResponseEntity.ok(ApiResponse.success(ensure ? graphSchemaManager.ensureSchema() : graphSchemaManager.report()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ApiResponse.error(500, "Failed to inspect graph schema: " + e.getMessage()));
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package com.mypalantir.controller;
 
+import com.mypalantir.query.OntologyQuery;
 import com.mypalantir.query.QueryExecutor;
+import com.mypalantir.service.DimensionHotTier;
+import com.mypalantir.service.InstanceExportService;
 import com.mypalantir.service.QueryService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.Map;
 
@@ -18,6 +25,12 @@ public class QueryController {
     private static final Logger logger = LoggerFactory.getLogger(QueryController.class);
     private final QueryService queryService;
 
+    @Autowired
+    private InstanceExportService instanceExportService;
+
+    @Autowired(required = false)
+    private DimensionHotTier hotTier;
+
     public QueryController(QueryService queryService) {
         this.queryService = queryService;
     }
@@ -53,5 +66,62 @@ public class QueryController {
                 .body(ApiResponse.error(500, "Query execution failed: " + errorMessage));
         }
     }
-}
 
+    /**
+     * 执行查询并流式导出结果（format=ndjson | arrow | parquet，行从数据库游标逐行写出，列式格式每 batchSize 行一批）
+     */
+    @PostMapping("/export")
+    public ResponseEntity<?> exportQuery(@RequestBody Map<String, Object> queryRequest,
+                                         @RequestParam(defaultValue = InstanceExportService.FORMAT_NDJSON) String format,
+                                         @RequestParam(defaultValue = "1024") int batchSize) {
+        if (!InstanceExportService.isSupportedFormat(format)) {
+            return ResponseEntity.badRequest()
+                .body(ApiResponse.error(400, "Unsupported export format: " + format));
+        }
+        try {
+            OntologyQuery query = queryService.parseQuery(queryRequest);
+            StreamingResponseBody body = out -> instanceExportService.exportQuery(query, format, out, batchSize);
+            return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(InstanceExportService.contentType(format)))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                    "attachment; filename=\"query" + InstanceExportService.fileExtension(format) + "\"")
+                .body(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(ApiResponse.error(400, e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Query export failed", e);
+            return ResponseEntity.status(500)
+                .body(ApiResponse.error(500, "Query export failed: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 小维度类型内存热层状态：常驻类型、行数、加载时间与最近错误
+     */
+    @GetMapping("/hot-tier")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getHotTierStatus() {
+        if (hotTier == null) {
+            return ResponseEntity.status(409).body(ApiResponse.error(409, "Hot tier is not enabled"));
+        }
+        return ResponseEntity.ok(ApiResponse.success(hotTier.getStatus()));
+    }
+
+    /**
+     * 立即重新加载一个常驻类型
+     */
+    @PostMapping("/hot-tier/{objectType}/refresh")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> refreshHotTier(@PathVariable String objectType) {
+        if (hotTier == null) {
+            return ResponseEntity.status(409).body(ApiResponse.error(409, "Hot tier is not enabled"));
+        }
+        try {
+            return ResponseEntity.ok(ApiResponse.success(hotTier.refresh(objectType)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(400, e.getMessage()));
+        } catch (java.io.IOException e) {
+            return ResponseEntity.status(500)
+                .body(ApiResponse.error(500, "Hot tier refresh failed: " + e.getMessage()));
+        }
+    }
+}
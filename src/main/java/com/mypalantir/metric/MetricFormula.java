@@ -0,0 +1,260 @@
+package com.mypalantir.metric;
+
+import java.util.*;
+
+/**
+ * 复合指标公式（编译后的四则运算表达式）
+ * 公式格式：{metric_id_1} / {metric_id_2} * 100，支持 + - * / %、一元负号与括号。
+ * 编译一次后可对每个数据点重复求值，不再逐点做字符串替换和脚本引擎求值。
+ */
+public final class MetricFormula {
+
+    /**
+     * 遍历编译后的表达式树（如把公式翻译为 SQL 表达式）
+     */
+    public interface Visitor<R> {
+        R constant(double value);
+
+        R variable(String metricId);
+
+        R negate(R operand);
+
+        /** operator 为 + - * / % 之一 */
+        R binary(char operator, R left, R right);
+    }
+
+    private interface Node {
+        Double eval(Map<String, Number> values);
+
+        <R> R accept(Visitor<R> visitor);
+    }
+
+    private record Constant(double value) implements Node {
+        public Double eval(Map<String, Number> values) {
+            return value;
+        }
+
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.constant(value);
+        }
+    }
+
+    private record Variable(String id) implements Node {
+        public Double eval(Map<String, Number> values) {
+            Number v = values.get(id);
+            return v == null ? null : v.doubleValue();
+        }
+
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.variable(id);
+        }
+    }
+
+    private record Negate(Node operand) implements Node {
+        public Double eval(Map<String, Number> values) {
+            Double v = operand.eval(values);
+            return v == null ? null : -v;
+        }
+
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.negate(operand.accept(visitor));
+        }
+    }
+
+    private record Binary(char operator, Node left, Node right) implements Node {
+        public Double eval(Map<String, Number> values) {
+            Double a = left.eval(values);
+            if (a == null) {
+                return null;
+            }
+            Double b = right.eval(values);
+            if (b == null) {
+                return null;
+            }
+            switch (operator) {
+                case '+':
+                    return a + b;
+                case '-':
+                    return a - b;
+                case '*':
+                    return a * b;
+                case '/':
+                    return b == 0 ? null : a / b;
+                default:
+                    return b == 0 ? null : a % b;
+            }
+        }
+
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.binary(operator, left.accept(visitor), right.accept(visitor));
+        }
+    }
+
+    private final String source;
+    private final Node root;
+    private final Set<String> variables;
+
+    private MetricFormula(String source, Node root, Set<String> variables) {
+        this.source = source;
+        this.root = root;
+        this.variables = Collections.unmodifiableSet(variables);
+    }
+
+    /**
+     * 编译公式，语法错误时抛出 IllegalArgumentException
+     */
+    public static MetricFormula compile(String formula) {
+        if (formula == null || formula.trim().isEmpty()) {
+            throw new IllegalArgumentException("Formula is empty");
+        }
+        Parser parser = new Parser(formula);
+        Node root = parser.parseExpression();
+        parser.skipSpaces();
+        if (parser.pos < formula.length()) {
+            throw new IllegalArgumentException("Unexpected '" + formula.charAt(parser.pos) + "' at position " + parser.pos + " in formula: " + formula);
+        }
+        return new MetricFormula(formula, root, parser.variables);
+    }
+
+    /**
+     * 求值；引用的指标缺值、除数为 0 或结果不是有限数时返回 null
+     */
+    public Double evaluate(Map<String, Number> values) {
+        Double result = root.eval(values);
+        return result == null || result.isNaN() || result.isInfinite() ? null : result;
+    }
+
+    /**
+     * 自底向上遍历表达式树
+     */
+    public <R> R accept(Visitor<R> visitor) {
+        return root.accept(visitor);
+    }
+
+    /**
+     * 公式中引用的指标 ID
+     */
+    public Set<String> getVariables() {
+        return variables;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    private static final class Parser {
+        private final String text;
+        private final Set<String> variables = new LinkedHashSet<>();
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        // expression := term (('+' | '-') term)*
+        Node parseExpression() {
+            Node left = parseTerm();
+            while (true) {
+                char op = peek();
+                if (op != '+' && op != '-') {
+                    return left;
+                }
+                pos++;
+                left = new Binary(op, left, parseTerm());
+            }
+        }
+
+        // term := unary (('*' | '/' | '%') unary)*
+        Node parseTerm() {
+            Node left = parseUnary();
+            while (true) {
+                char op = peek();
+                if (op != '*' && op != '/' && op != '%') {
+                    return left;
+                }
+                pos++;
+                left = new Binary(op, left, parseUnary());
+            }
+        }
+
+        // unary := ('-' | '+') unary | primary
+        Node parseUnary() {
+            char c = peek();
+            if (c == '-' || c == '+') {
+                pos++;
+                Node operand = parseUnary();
+                return c == '+' ? operand : new Negate(operand);
+            }
+            return parsePrimary();
+        }
+
+        // primary := number | '{' metric_id '}' | '(' expression ')'
+        Node parsePrimary() {
+            char c = peek();
+            if (c == '(') {
+                pos++;
+                Node inner = parseExpression();
+                expect(')');
+                return inner;
+            }
+            if (c == '{') {
+                int close = text.indexOf('}', pos + 1);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed '{' at position " + pos + " in formula: " + text);
+                }
+                String id = text.substring(pos + 1, close).trim();
+                if (id.isEmpty()) {
+                    throw new IllegalArgumentException("Empty metric reference at position " + pos + " in formula: " + text);
+                }
+                pos = close + 1;
+                variables.add(id);
+                return new Variable(id);
+            }
+            if (Character.isDigit(c) || c == '.') {
+                int start = pos;
+                while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                    pos++;
+                }
+                if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+                    pos++;
+                    if (pos < text.length() && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+                        pos++;
+                    }
+                    while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                        pos++;
+                    }
+                }
+                String literal = text.substring(start, pos);
+                double constant;
+                try {
+                    constant = Double.parseDouble(literal);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number '" + literal + "' in formula: " + text);
+                }
+                return new Constant(constant);
+            }
+            if (c == 0) {
+                throw new IllegalArgumentException("Unexpected end of formula: " + text);
+            }
+            throw new IllegalArgumentException("Unexpected '" + c + "' at position " + pos + " in formula: " + text);
+        }
+
+        void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        char peek() {
+            skipSpaces();
+            return pos < text.length() ? text.charAt(pos) : 0;
+        }
+
+        void expect(char expected) {
+            if (peek() != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at position " + pos + " in formula: " + text);
+            }
+            pos++;
+        }
+    }
+}
@@ -59,6 +59,8 @@ public class MetricQuery {
     public static class TimeRange {
         private String start;
         private String end;
+        /** 为 true 时不包含 end（时间维度 < end），用于按天切分时间戳维度的查询 */
+        private boolean endExclusive;
 
         public TimeRange() {
         }
@@ -68,6 +70,12 @@ public class MetricQuery {
             this.end = end;
         }
 
+        public TimeRange(String start, String end, boolean endExclusive) {
+            this.start = start;
+            this.end = end;
+            this.endExclusive = endExclusive;
+        }
+
         public String getStart() {
             return start;
         }
@@ -83,5 +91,13 @@ public class MetricQuery {
         public void setEnd(String end) {
             this.end = end;
         }
+
+        public boolean isEndExclusive() {
+            return endExclusive;
+        }
+
+        public void setEndExclusive(boolean endExclusive) {
+            this.endExclusive = endExclusive;
+        }
     }
 }
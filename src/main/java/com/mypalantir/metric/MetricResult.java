@@ -17,6 +17,8 @@ public class MetricResult {
     private List<String> columns;
     private LocalDateTime calculatedAt;
     private String sql;
+    // 批量查询中该项失败或超时的原因，成功时为 null
+    private String error;
 
     public MetricResult() {
     }
@@ -77,6 +79,14 @@ public class MetricResult {
         this.sql = sql;
     }
 
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
     /**
      * @deprecated 保留此类仅为向后兼容，建议直接使用 results 字段
      * 指标数据点（已废弃，保留用于向后兼容）
@@ -75,7 +75,7 @@ public class ExecutionRouter {
             Map<String, Object> mappingData = mappings.get(0);
             String tableId = (String) mappingData.get("table_id");
             if (tableId != null) {
-                Map<String, Object> table = instanceStorage.getInstance("table", tableId);
+                Map<String, Object> table = mappingService.getTableInstance(tableId);
                 if (table != null) {
                     String databaseId = (String) table.get("database_id");
                     if (databaseId != null) {
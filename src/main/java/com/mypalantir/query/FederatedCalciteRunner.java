@@ -6,6 +6,7 @@ import com.mypalantir.meta.ObjectType;
 import com.mypalantir.meta.Property;
 import com.mypalantir.repository.IInstanceStorage;
 import com.mypalantir.service.DatabaseMetadataService;
+import com.mypalantir.service.DimensionHotTier;
 import com.mypalantir.service.MappingService;
 import org.apache.calcite.adapter.jdbc.JdbcSchema;
 import org.apache.calcite.jdbc.CalciteConnection;
@@ -38,17 +39,45 @@ public class FederatedCalciteRunner {
     private final MappingService mappingService;
     private final DatabaseMetadataService databaseMetadataService;
     private final RelNodeBuilder relNodeBuilder;
+    /** 小维度类型的内存热层，为 null 时所有类型都访问远端 */
+    private final DimensionHotTier hotTier;
 
     public FederatedCalciteRunner(Loader loader, IInstanceStorage instanceStorage,
                                   MappingService mappingService, DatabaseMetadataService databaseMetadataService) {
+        this(loader, instanceStorage, mappingService, databaseMetadataService, null);
+    }
+
+    public FederatedCalciteRunner(Loader loader, IInstanceStorage instanceStorage,
+                                  MappingService mappingService, DatabaseMetadataService databaseMetadataService,
+                                  DimensionHotTier hotTier) {
         this.loader = loader;
         this.instanceStorage = instanceStorage;
         this.mappingService = mappingService;
         this.databaseMetadataService = databaseMetadataService;
+        this.hotTier = hotTier;
         this.relNodeBuilder = new RelNodeBuilder(loader, instanceStorage, mappingService, databaseMetadataService);
     }
 
     public QueryExecutor.QueryResult execute(OntologyQuery query) throws Exception {
+        QueryExecutor.RowCollector collector = new QueryExecutor.RowCollector();
+        String sql = run(query, collector);
+        return collector.toResult(sql);
+    }
+
+    /**
+     * 流式执行联邦查询：逐行回调，不在内存中累积结果
+     * @return 读取的行数
+     */
+    public long stream(OntologyQuery query, QueryExecutor.RowConsumer consumer) throws Exception {
+        QueryExecutor.RowCounter counter = new QueryExecutor.RowCounter(consumer);
+        run(query, counter);
+        return counter.rows;
+    }
+
+    /**
+     * @return 执行的 SQL
+     */
+    private String run(OntologyQuery query, QueryExecutor.RowConsumer consumer) throws Exception {
         // 1. 分析查询涉及的所有 ObjectType，获取它们对应的 DatabaseId
         Set<String> databaseIds = new HashSet<>();
         Map<String, DataSourceMapping> objectTypeMappings = new HashMap<>();
@@ -73,9 +102,31 @@ public class FederatedCalciteRunner {
         CalciteConnection calciteConnection = connection.unwrap(CalciteConnection.class);
         SchemaPlus rootSchema = calciteConnection.getRootSchema();
 
+        // 已加载到内存热层的维度类型读本地副本，只被这些类型引用的数据源不再挂载
+        Map<String, String> hotTables = new HashMap<>();
+        if (hotTier != null) {
+            for (String objectTypeName : objectTypeMappings.keySet()) {
+                String hotTable = hotTier.getLoadedTable(objectTypeName);
+                if (hotTable != null) {
+                    hotTables.put(objectTypeName, hotTable);
+                }
+            }
+        }
+        if (!hotTables.isEmpty()) {
+            databaseIds = new HashSet<>();
+            for (Map.Entry<String, DataSourceMapping> entry : objectTypeMappings.entrySet()) {
+                if (!hotTables.containsKey(entry.getKey())) {
+                    databaseIds.add(entry.getValue().getConnectionId());
+                }
+            }
+            rootSchema.add(DimensionHotTier.SCHEMA_NAME,
+                JdbcSchema.create(rootSchema, DimensionHotTier.SCHEMA_NAME, hotTier.getDataSource(), null, null));
+            System.out.println("Hot tier object types: " + hotTables.keySet());
+        }
+
         // 3. 挂载 JdbcSchema (DB_<id>)
         for (String dbId : databaseIds) {
-            DataSource dataSource = databaseMetadataService.getDataSourceForDatabase(dbId);
+            DataSource dataSource = databaseMetadataService.getReadDataSourceForDatabase(dbId);
             // 使用 Calcite 的 JdbcSchema
             // 注意：这里假设数据库方言会自动识别，或者需要手动指定 dialect
             org.apache.calcite.schema.Schema dbSchema = JdbcSchema.create(rootSchema, "DB_" + dbId, dataSource, null, null);
@@ -88,8 +139,11 @@ public class FederatedCalciteRunner {
             DataSourceMapping mapping = entry.getValue();
             String dbId = mapping.getConnectionId();
             
-            // 构建 View SQL
-            String viewSql = buildViewSql("DB_" + dbId, mapping, objectTypeName);
+            // 构建 View SQL（热层表的列名即属性名）
+            String hotTable = hotTables.get(objectTypeName);
+            String viewSql = hotTable != null
+                ? "SELECT * FROM \"" + DimensionHotTier.SCHEMA_NAME + "\".\"" + hotTable + "\""
+                : buildViewSql("DB_" + dbId, mapping, objectTypeName);
             
             // 添加 View 到 rootSchema
             // ViewTable.viewMacro 需要 list of schema path, view sql, schema, boolean modifiable
@@ -125,23 +179,23 @@ public class FederatedCalciteRunner {
         try (Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
-            List<Map<String, Object>> rows = new ArrayList<>();
             List<String> columns = new ArrayList<>();
             int columnCount = rs.getMetaData().getColumnCount();
             
             for (int i = 1; i <= columnCount; i++) {
                 columns.add(rs.getMetaData().getColumnLabel(i));
             }
+            consumer.columns(columns);
             
             while (rs.next()) {
                 Map<String, Object> row = new HashMap<>();
                 for (String col : columns) {
                     row.put(col, rs.getObject(col));
                 }
-                rows.add(row);
+                consumer.accept(row);
             }
             
-            return new QueryExecutor.QueryResult(rows, columns, sql);
+            return sql;
         }
     }
 
@@ -158,7 +212,7 @@ public class FederatedCalciteRunner {
             
             Map<String, Object> mappingData = mappings.get(0);
             String tableId = (String) mappingData.get("table_id");
-            Map<String, Object> table = instanceStorage.getInstance("table", tableId);
+            Map<String, Object> table = mappingService.getTableInstance(tableId);
             String databaseId = (String) table.get("database_id");
             String tableName = (String) table.get("name");
             
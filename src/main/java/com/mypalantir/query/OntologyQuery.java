@@ -50,6 +50,12 @@ public class OntologyQuery {
      * 例如：[["sum", "hasTollRecords.amount", "total_fee"]]
      */
     private List<Object> metrics;
+
+    /**
+     * 聚合后的计算列，引用聚合指标别名的四则运算公式（除数为 0 时结果为 NULL）
+     * 例如：[["avg_fee", "{sum_fee} / {count_star}"]]
+     */
+    private List<Object> computed;
     
     /**
      * 限制返回数量
@@ -171,6 +177,14 @@ public class OntologyQuery {
         this.metrics = metrics;
     }
 
+    public List<Object> getComputed() {
+        return computed;
+    }
+
+    public void setComputed(List<Object> computed) {
+        this.computed = computed;
+    }
+
     /**
      * 关联查询
      */
@@ -262,7 +262,7 @@ public class OntologyRelToSqlConverter extends RelToSqlConverter {
                     String databaseId = mapping.getConnectionId();
                     if (!databaseId.equals("default")) {
                         try {
-                            Map<String, Object> database = instanceStorage.getInstance("database", databaseId);
+                            Map<String, Object> database = mappingService.getDatabaseInstance(databaseId);
                             String databaseType = (String) database.get("type");
                             if (databaseType == null || databaseType.isEmpty()) {
                                 // 尝试从 JDBC URL 判断
@@ -347,7 +347,7 @@ public class OntologyRelToSqlConverter extends RelToSqlConverter {
         
         if (mapping.getConnectionId() != null && !mapping.getConnectionId().equals("default")) {
             try {
-                Map<String, Object> database = instanceStorage.getInstance("database", mapping.getConnectionId());
+                Map<String, Object> database = mappingService.getDatabaseInstance(mapping.getConnectionId());
                 String databaseType = (String) database.get("type");
                 if (databaseType == null || databaseType.isEmpty()) {
                     // 尝试从 JDBC URL 判断
@@ -519,7 +519,7 @@ public class OntologyRelToSqlConverter extends RelToSqlConverter {
             // System.out.println("[getDataSourceMappingFromMapping] table_id: " + tableId);
             
             // 获取表信息
-            Map<String, Object> table = instanceStorage.getInstance("table", tableId);
+            Map<String, Object> table = mappingService.getTableInstance(tableId);
             String tableName = (String) table.get("name");
             String databaseId = (String) table.get("database_id");
             
@@ -539,7 +539,7 @@ public class OntologyRelToSqlConverter extends RelToSqlConverter {
             String databaseType = null;
             if (databaseId != null) {
                 try {
-                    Map<String, Object> database = instanceStorage.getInstance("database", databaseId);
+                    Map<String, Object> database = mappingService.getDatabaseInstance(databaseId);
                     databaseType = (String) database.get("type");
                     if (databaseType == null || databaseType.isEmpty()) {
                         // 如果没有 type 字段，尝试从 JDBC URL 判断
@@ -29,6 +29,8 @@ import java.util.regex.Pattern;
  */
 public class QueryExecutor {
     private static final Logger logger = LoggerFactory.getLogger(QueryExecutor.class);
+    /** 非 MySQL 驱动流式读取时每次从游标取的行数 */
+    private static final int STREAM_FETCH_SIZE = 1000;
     private final Loader loader;
     private final IInstanceStorage instanceStorage;
     private final MappingService mappingService;
@@ -95,7 +97,23 @@ public class QueryExecutor {
         }
         
         // 执行 RelNode（传入原始查询以便回退）
-        return executeRelNode(relNode, query);
+        RowCollector collector = new RowCollector();
+        String sql = executeRelNode(relNode, query, collector, false);
+        return collector.toResult(sql);
+    }
+
+    /**
+     * 流式执行查询：逐行回调，不在内存中累积结果（MySQL 驱动按行从游标读取）
+     * @return 读取的行数
+     */
+    public long stream(OntologyQuery query, RowConsumer consumer) throws Exception {
+        if (rootSchema == null) {
+            initialize();
+        }
+        org.apache.calcite.rel.RelNode relNode = relNodeBuilder.buildRelNode(query);
+        RowCounter counter = new RowCounter(consumer);
+        executeRelNode(relNode, query, counter, true);
+        return counter.rows;
     }
     
     /**
@@ -146,7 +164,8 @@ public class QueryExecutor {
      * 
      * 所以流程是：OntologyQuery → RelNode（逻辑计划）→ SQL（执行计划）→ 执行
      */
-    private QueryResult executeRelNode(org.apache.calcite.rel.RelNode relNode, OntologyQuery originalQuery) throws Exception {
+    private String executeRelNode(org.apache.calcite.rel.RelNode relNode, OntologyQuery originalQuery,
+                                  RowConsumer consumer, boolean streaming) throws Exception {
         // 将 RelNode 转换回 SQL 执行
         // 使用自定义的 UnicodeH2SqlDialect，它正确处理 Unicode 字符（如中文）
         UnicodeH2SqlDialect unicodeDialect = UnicodeH2SqlDialect.DEFAULT;
@@ -193,9 +212,8 @@ public class QueryExecutor {
         
         // 执行 SQL（这是 Calcite 的标准执行方式）
         // 注意：需要将结果中的数据库列名映射回属性名
-        QueryResult result = executeSql(sql, originalQuery, objectType, dataSourceMapping);
-        result.setSql(sql);
-        return result;
+        executeSql(sql, originalQuery, objectType, dataSourceMapping, consumer, streaming);
+        return sql;
     }
     
     /**
@@ -224,7 +242,7 @@ public class QueryExecutor {
             }
             
             // 获取表信息
-            Map<String, Object> table = instanceStorage.getInstance("table", tableId);
+            Map<String, Object> table = mappingService.getTableInstance(tableId);
             if (table == null) {
                 throw new IllegalArgumentException(
                     "Table with id '" + tableId + "' not found for object type '" + objectType.getName() + "'."
@@ -321,11 +339,13 @@ public class QueryExecutor {
     
     /**
      * 执行 SQL 查询，并将数据库列名映射回属性名（支持 JOIN 查询）
+     * @param streaming 为 true 时让驱动按行从游标读取（MySQL 需 fetchSize = Integer.MIN_VALUE），用于流式导出
      */
-    private QueryResult executeSql(String sql, OntologyQuery query, 
-                                    com.mypalantir.meta.ObjectType objectType, 
-                                    com.mypalantir.meta.DataSourceMapping dataSourceMapping) throws SQLException {
-        // 根据 mapping 获取实际的数据库连接（从 HikariCP 连接池获取，必须 close 归还池）
+    private void executeSql(String sql, OntologyQuery query,
+                            com.mypalantir.meta.ObjectType objectType,
+                            com.mypalantir.meta.DataSourceMapping dataSourceMapping,
+                            RowConsumer consumer, boolean streaming) throws SQLException, IOException {
+        // 根据 mapping 获取实际的数据库连接（从 HikariCP 连接池获取，必须 close 归还池；只读工作负载可路由到只读副本）
         String databaseId = dataSourceMapping != null ? dataSourceMapping.getConnectionId() : null;
         if (databaseId == null || databaseId.isEmpty() || databaseId.equals("default")) {
             databaseId = null;
@@ -333,7 +353,7 @@ public class QueryExecutor {
         
         Connection dbConnection;
         try {
-            dbConnection = databaseMetadataService.getConnectionForDatabase(databaseId);
+            dbConnection = databaseMetadataService.getReadConnectionForDatabase(databaseId);
         } catch (IOException e) {
             throw new SQLException("Failed to get database connection: " + e.getMessage(), e);
         }
@@ -342,12 +362,14 @@ public class QueryExecutor {
         System.out.println("[executeSql] Executing SQL: " + sql);
         
         try (Connection conn = dbConnection;
-             Statement stmt = conn.createStatement()) {
+             Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
             stmt.setQueryTimeout(databaseMetadataService.getQueryTimeoutSeconds());
+            if (streaming) {
+                String product = conn.getMetaData().getDatabaseProductName();
+                stmt.setFetchSize(product != null && product.toUpperCase().contains("MYSQL") ? Integer.MIN_VALUE : STREAM_FETCH_SIZE);
+            }
             try (ResultSet rs = stmt.executeQuery(sql)) {
                 
-                List<Map<String, Object>> rows = new ArrayList<>();
-                
                 // 获取列信息
                 int columnCount = rs.getMetaData().getColumnCount();
                 List<String> propertyNames = new ArrayList<>();  // 使用属性名而不是列名
@@ -394,6 +416,8 @@ public class QueryExecutor {
                     }
                 }
                 
+                consumer.columns(propertyNames);
+
                 // 读取数据
                 while (rs.next()) {
                     Map<String, Object> row = new java.util.HashMap<>();
@@ -418,9 +442,8 @@ public class QueryExecutor {
                     
                     row.put(propertyName, value);
                     }
-                    rows.add(row);
+                    consumer.accept(row);
                 }
-                return new QueryResult(rows, propertyNames);
             }
         }
     }
@@ -523,6 +546,62 @@ public class QueryExecutor {
         }
     }
 
+    /**
+     * 查询结果行回调（流式导出）：先给出列名，再逐行回调
+     */
+    @FunctionalInterface
+    public interface RowConsumer {
+        default void columns(List<String> columns) throws IOException {
+        }
+
+        void accept(Map<String, Object> row) throws IOException;
+    }
+
+    /**
+     * 将回调的行收集为 QueryResult（非流式查询）
+     */
+    static class RowCollector implements RowConsumer {
+        private final List<Map<String, Object>> rows = new ArrayList<>();
+        private List<String> columns = new ArrayList<>();
+
+        @Override
+        public void columns(List<String> columns) {
+            this.columns = columns;
+        }
+
+        @Override
+        public void accept(Map<String, Object> row) {
+            rows.add(row);
+        }
+
+        QueryResult toResult(String sql) {
+            return new QueryResult(rows, columns, sql);
+        }
+    }
+
+    /**
+     * 转发并计数
+     */
+    static class RowCounter implements RowConsumer {
+        private final RowConsumer delegate;
+        long rows;
+
+        RowCounter(RowConsumer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void columns(List<String> columns) throws IOException {
+            delegate.columns(columns);
+        }
+
+        @Override
+        public void accept(Map<String, Object> row) throws IOException {
+            delegate.accept(row);
+            rows++;
+        }
+    }
+
     /**
      * 查询结果
      */
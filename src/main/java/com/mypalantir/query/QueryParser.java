@@ -86,6 +86,12 @@ public class QueryParser {
             List<Object> metrics = (List<Object>) map.get("metrics");
             query.setMetrics(metrics);
         }
+
+        if (map.containsKey("computed") && map.get("computed") != null) {
+            @SuppressWarnings("unchecked")
+            List<Object> computed = (List<Object>) map.get("computed");
+            query.setComputed(computed);
+        }
         
         if (map.containsKey("limit")) {
             Object limit = map.get("limit");
@@ -6,6 +6,7 @@ import com.mypalantir.meta.Loader;
 import com.mypalantir.meta.ObjectType;
 import com.mypalantir.meta.Property;
 import com.mypalantir.meta.TransformationMapping;
+import com.mypalantir.metric.MetricFormula;
 import com.mypalantir.query.schema.OntologySchemaFactory;
 import com.mypalantir.repository.IInstanceStorage;
 import com.mypalantir.service.MappingService;
@@ -146,7 +147,14 @@ public class RelNodeBuilder {
         if ((query.getGroupBy() != null && !query.getGroupBy().isEmpty()) || 
             (query.getMetrics() != null && !query.getMetrics().isEmpty())) {
             scan = buildAggregate(scan, query.getGroupBy(), query.getMetrics(), objectType, query.getLinks());
+            // 4.1 聚合后的计算列（如复合指标公式）
+            if (query.getComputed() != null && !query.getComputed().isEmpty()) {
+                scan = buildComputed(scan, query.getComputed());
+            }
         } else {
+            if (query.getComputed() != null && !query.getComputed().isEmpty()) {
+                throw new IllegalArgumentException("Computed columns require metrics or group_by");
+            }
             // 5. 构建 Project（SELECT）- 仅在非聚合查询时执行
             // 注意：如果有 JOIN，需要处理来自多个表的字段
             // 收集所有要选择的字段：主表的字段 + 关联表的字段
@@ -2071,6 +2079,78 @@ public class RelNodeBuilder {
         return relBuilder.build();
     }
 
+    /**
+     * 构建聚合后的计算列：保留全部分组列与聚合列，追加公式列
+     * 公式中的 {别名} 引用聚合列（转为 DOUBLE 计算），除数为 0 时结果为 NULL，与复合指标在内存中求值的语义一致
+     */
+    private RelNode buildComputed(RelNode input, List<Object> computed) {
+        relBuilder.clear();
+        relBuilder.push(input);
+        RexBuilder rexBuilder = relBuilder.getRexBuilder();
+        RelDataTypeFactory typeFactory = relBuilder.getTypeFactory();
+        RelDataType doubleType = typeFactory.createTypeWithNullability(typeFactory.createSqlType(SqlTypeName.DOUBLE), true);
+        List<String> inputNames = input.getRowType().getFieldNames();
+
+        List<RexNode> projects = new ArrayList<>(relBuilder.fields());
+        List<String> names = new ArrayList<>(inputNames);
+        for (Object entryObj : computed) {
+            if (!(entryObj instanceof List<?> entry) || entry.size() < 2 || entry.get(0) == null || entry.get(1) == null) {
+                throw new IllegalArgumentException("Computed column must be [alias, formula]: " + entryObj);
+            }
+            MetricFormula formula = MetricFormula.compile(entry.get(1).toString());
+            RexNode expression = formula.accept(new MetricFormula.Visitor<RexNode>() {
+                @Override
+                public RexNode constant(double value) {
+                    return rexBuilder.makeApproxLiteral(java.math.BigDecimal.valueOf(value));
+                }
+
+                @Override
+                public RexNode variable(String alias) {
+                    int index = inputNames.indexOf(alias);
+                    for (int i = 0; index < 0 && i < inputNames.size(); i++) {
+                        if (inputNames.get(i).equalsIgnoreCase(alias)) {
+                            index = i;
+                        }
+                    }
+                    if (index < 0) {
+                        throw new IllegalArgumentException("Computed column references unknown metric '" + alias + "'");
+                    }
+                    return rexBuilder.makeCast(doubleType, rexBuilder.makeInputRef(input, index));
+                }
+
+                @Override
+                public RexNode negate(RexNode operand) {
+                    return rexBuilder.makeCall(org.apache.calcite.sql.fun.SqlStdOperatorTable.UNARY_MINUS, operand);
+                }
+
+                @Override
+                public RexNode binary(char operator, RexNode left, RexNode right) {
+                    switch (operator) {
+                        case '+':
+                            return rexBuilder.makeCall(org.apache.calcite.sql.fun.SqlStdOperatorTable.PLUS, left, right);
+                        case '-':
+                            return rexBuilder.makeCall(org.apache.calcite.sql.fun.SqlStdOperatorTable.MINUS, left, right);
+                        case '*':
+                            return rexBuilder.makeCall(org.apache.calcite.sql.fun.SqlStdOperatorTable.MULTIPLY, left, right);
+                        case '/':
+                            // CASE WHEN right = 0 THEN NULL ELSE left / right END
+                            return rexBuilder.makeCall(org.apache.calcite.sql.fun.SqlStdOperatorTable.CASE,
+                                rexBuilder.makeCall(org.apache.calcite.sql.fun.SqlStdOperatorTable.EQUALS, right,
+                                    rexBuilder.makeApproxLiteral(java.math.BigDecimal.ZERO)),
+                                rexBuilder.makeNullLiteral(doubleType),
+                                rexBuilder.makeCall(org.apache.calcite.sql.fun.SqlStdOperatorTable.DIVIDE, left, right));
+                        default:
+                            throw new IllegalArgumentException("Operator '" + operator + "' is not supported in computed columns");
+                    }
+                }
+            });
+            projects.add(expression);
+            names.add(entry.get(0).toString());
+        }
+        relBuilder.project(projects, names, true);
+        return relBuilder.build();
+    }
+
     /**
      * 根据查询的 dataSourceType 获取数据源映射：sync=同步表，否则=映射的原始表
      */
@@ -2146,7 +2226,7 @@ public class RelNodeBuilder {
             }
             
             // 获取表信息
-            Map<String, Object> table = instanceStorage.getInstance("table", tableId);
+            Map<String, Object> table = mappingService.getTableInstance(tableId);
             if (table == null) {
                 throw new IllegalArgumentException(
                     "Table with id '" + tableId + "' not found for object type '" + objectType.getName() + "'."
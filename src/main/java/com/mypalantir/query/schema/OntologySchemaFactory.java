@@ -252,7 +252,7 @@ public class OntologySchemaFactory {
             }
             
             // 获取表信息
-            Map<String, Object> table = instanceStorage.getInstance("table", tableId);
+            Map<String, Object> table = mappingService.getTableInstance(tableId);
             String tableName = (String) table.get("name");
             String databaseId = (String) table.get("database_id");
             
@@ -316,7 +316,8 @@ public class OntologySchemaFactory {
      */
     private OntologyTable createSyncTable(ObjectType objectType) {
         try {
-            javax.sql.DataSource defaultDs = databaseMetadataService.getDataSourceForDatabase(null);
+            // 按查询线程的工作负载路由，只读查询可使用默认数据库的只读副本
+            javax.sql.DataSource defaultDs = databaseMetadataService.getReadDataSourceForDatabase(null);
             if (defaultDs == null) {
                 return null;
             }
@@ -358,7 +359,7 @@ public class OntologySchemaFactory {
         
         try {
             // 获取数据库实例信息
-            Map<String, Object> database = instanceStorage.getInstance("database", databaseId);
+            Map<String, Object> database = mappingService.getDatabaseInstance(databaseId);
             String host = (String) database.get("host");
             Integer port = database.get("port") instanceof Number 
                 ? ((Number) database.get("port")).intValue() 
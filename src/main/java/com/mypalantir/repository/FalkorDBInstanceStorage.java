@@ -120,7 +120,7 @@ public class FalkorDBInstanceStorage implements IInstanceStorage {
                     return nodeToMap((Node) val);
                 }
             }
-            throw new IOException("instance not found");
+            throw new InstanceNotFoundException();
         } catch (IOException e) {
             throw e;
         } catch (Exception e) {
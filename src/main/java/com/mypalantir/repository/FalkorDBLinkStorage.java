@@ -11,6 +11,7 @@ import com.mypalantir.meta.Loader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
@@ -44,6 +45,10 @@ public class FalkorDBLinkStorage implements ILinkStorage {
     @Autowired(required = false)
     private Environment environment;
 
+    /** 批量关系操作单条 UNWIND 语句的最大条目数 */
+    @Value("${storage.link.batch-size:1000}")
+    private int batchSize = 1000;
+
     @Override
     public String createLink(String linkType, String sourceID, String targetID, Map<String, Object> properties) throws IOException {
         if (falkordbGraph == null) throw new IOException("FalkorDB graph is not initialized");
@@ -180,6 +185,45 @@ public class FalkorDBLinkStorage implements ILinkStorage {
         return queryLinks(cypher, Collections.singletonMap("targetId", targetID), null, targetID);
     }
 
+    /**
+     * 每层前沿（按对象类型、方向）一次批量 Cypher
+     */
+    @Override
+    public NeighborhoodResult expandNeighborhood(NeighborhoodQuery query) throws IOException {
+        if (falkordbGraph == null) throw new IOException("FalkorDB graph is not initialized");
+
+        return query.execute((objectType, ids, outgoing, incoming, fanOut) -> {
+            List<NeighborhoodQuery.Hop> hops = new ArrayList<>();
+            String label = normalizeLabel(objectType);
+            expandFrontier(label, ids, outgoing, true, fanOut, hops);
+            expandFrontier(label, ids, incoming, false, fanOut, hops);
+            return hops;
+        });
+    }
+
+    private void expandFrontier(String label, List<String> ids, List<String> linkTypes, boolean outgoing,
+                                int fanOut, List<NeighborhoodQuery.Hop> hops) throws IOException {
+        if (linkTypes.isEmpty()) return;
+        Map<String, String> byRelType = new HashMap<>();
+        for (String linkType : linkTypes) {
+            byRelType.put(normalizeRelType(linkType), linkType);
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("ids", ids);
+        params.put("fanOut", fanOut);
+        try {
+            for (Record r : falkordbGraph.query(NeighborhoodQuery.frontierCypher(label, byRelType.keySet(), outgoing), params)) {
+                String nodeId = NeighborhoodQuery.stringValue(r.getValue("nid"));
+                String other = NeighborhoodQuery.stringValue(r.getValue("other"));
+                String linkType = byRelType.get(NeighborhoodQuery.stringValue(r.getValue("type")));
+                hops.add(new NeighborhoodQuery.Hop(nodeId, linkType, NeighborhoodQuery.stringValue(r.getValue("id")),
+                    outgoing ? nodeId : other, outgoing ? other : nodeId, outgoing));
+            }
+        } catch (Exception e) {
+            throw new IOException("Failed to expand neighborhood: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public InstanceStorage.ListResult listLinks(String linkType, int offset, int limit) throws IOException {
         if (falkordbGraph == null) throw new IOException("FalkorDB graph is not initialized");
@@ -201,6 +245,164 @@ public class FalkorDBLinkStorage implements ILinkStorage {
         return new InstanceStorage.ListResult(links, total);
     }
 
+    @Override
+    public LinkBatchResult createLinksBatch(String linkType, List<Map<String, Object>> links) throws IOException {
+        return writeLinksBatch(linkType, links, false);
+    }
+
+    @Override
+    public LinkBatchResult upsertLinksBatch(String linkType, List<Map<String, Object>> links) throws IOException {
+        return writeLinksBatch(linkType, links, true);
+    }
+
+    @Override
+    public LinkBatchResult deleteLinksBatch(String linkType, List<String> ids) throws IOException {
+        if (falkordbGraph == null) throw new IOException("FalkorDB graph is not initialized");
+
+        LinkBatchResult result = new LinkBatchResult(ids.size());
+        String relType = normalizeRelType(linkType);
+        String cypher = "UNWIND $ids AS id MATCH ()-[r:" + relType + " {id: id}]->() DELETE r RETURN DISTINCT id";
+        for (int start = 0; start < ids.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, ids.size());
+            try {
+                Set<String> deleted = new HashSet<>();
+                for (Record r : falkordbGraph.query(cypher, Collections.singletonMap("ids", new ArrayList<>(ids.subList(start, end))))) {
+                    deleted.add(String.valueOf((Object) r.getValue("id")));
+                }
+                for (int i = start; i < end; i++) {
+                    if (deleted.contains(ids.get(i))) {
+                        result.addSuccess(i, ids.get(i));
+                    } else {
+                        result.addFailure(i, "link not found");
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Failed to delete link batch [{}, {}) of type {} in FalkorDB: {}", start, end, linkType, e.getMessage());
+                for (int i = start; i < end; i++) {
+                    result.addFailure(i, e.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量创建/upsert：按块执行 UNWIND ... CREATE/MERGE，每块一次往返
+     */
+    private LinkBatchResult writeLinksBatch(String linkType, List<Map<String, Object>> links, boolean upsert) throws IOException {
+        if (falkordbGraph == null) throw new IOException("FalkorDB graph is not initialized");
+
+        String sourceType = loader != null ? getSourceType(linkType) : null;
+        String targetType = loader != null ? getTargetType(linkType) : null;
+        if (sourceType == null || targetType == null) {
+            // 未定义的关系类型无法确定标签，退回逐条写入
+            return upsert ? ILinkStorage.super.upsertLinksBatch(linkType, links)
+                          : ILinkStorage.super.createLinksBatch(linkType, links);
+        }
+        String sourceLabel = normalizeLabel(sourceType);
+        String targetLabel = normalizeLabel(targetType);
+        String relType = normalizeRelType(linkType);
+        LinkBatchResult result = new LinkBatchResult(links.size());
+
+        String now = Instant.now().toString();
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < links.size(); i++) {
+            Map<String, Object> link = links.get(i);
+            try {
+                Map<String, Object> props = ILinkStorage.linkProperties(link);
+                props.put("updated_at", now);
+                Map<String, Object> row = new HashMap<>();
+                row.put("idx", i);
+                row.put("source_id", ILinkStorage.endpoint(link, "source_id"));
+                row.put("target_id", ILinkStorage.endpoint(link, "target_id"));
+                row.put("id", UUID.randomUUID().toString());
+                row.put("now", now);
+                row.put("props", props);
+                rows.add(row);
+            } catch (IOException e) {
+                result.addFailure(i, e.getMessage());
+            }
+        }
+
+        String cypher = "UNWIND $rows AS row " +
+            "MATCH (source:" + sourceLabel + " {id: row.source_id}) " +
+            "MATCH (target:" + targetLabel + " {id: row.target_id}) " +
+            (upsert
+                ? "MERGE (source)-[r:" + relType + "]->(target) ON CREATE SET r.id = row.id, r.created_at = row.now "
+                : "CREATE (source)-[r:" + relType + " {id: row.id, created_at: row.now}]->(target) ") +
+            "SET r += row.props " +
+            "RETURN row.idx AS idx, r.id AS id";
+
+        for (int start = 0; start < rows.size(); start += batchSize) {
+            List<Map<String, Object>> chunk = rows.subList(start, Math.min(start + batchSize, rows.size()));
+            // 端点检查与写入均在块内：任一步失败只影响本块，块内每条关系单独记录错误
+            List<Map<String, Object>> writable = new ArrayList<>(chunk.size());
+            try {
+                Map<String, String> missing = new HashMap<>();
+                missing.putAll(ensureNodesExist(chunk, "source_id", sourceLabel, sourceType));
+                missing.putAll(ensureNodesExist(chunk, "target_id", targetLabel, targetType));
+                for (Map<String, Object> row : chunk) {
+                    String error = missing.containsKey(sourceLabel + ":" + row.get("source_id"))
+                        ? missing.get(sourceLabel + ":" + row.get("source_id"))
+                        : missing.get(targetLabel + ":" + row.get("target_id"));
+                    if (error != null) {
+                        result.addFailure((Integer) row.get("idx"), error);
+                    } else {
+                        writable.add(row);
+                    }
+                }
+                if (writable.isEmpty()) continue;
+
+                Set<Integer> written = new HashSet<>();
+                for (Record r : falkordbGraph.query(cypher, Collections.singletonMap("rows", writable))) {
+                    int idx = ((Number) r.getValue("idx")).intValue();
+                    written.add(idx);
+                    result.addSuccess(idx, String.valueOf((Object) r.getValue("id")));
+                }
+                for (Map<String, Object> row : writable) {
+                    int idx = (Integer) row.get("idx");
+                    if (!written.contains(idx)) result.addFailure(idx, "source or target node not found");
+                }
+            } catch (Exception e) {
+                // 端点检查失败时整块未写入；写入语句失败时已筛出的关系均未写入
+                List<Map<String, Object>> failedRows = writable.isEmpty() ? chunk : writable;
+                logger.error("Failed to write link batch of type {} in FalkorDB ({} links): {}", linkType, failedRows.size(), e.getMessage());
+                for (Map<String, Object> row : failedRows) {
+                    result.addFailure((Integer) row.get("idx"), e.getMessage());
+                }
+            }
+        }
+        logger.info("Batch {} {} links of type {} in FalkorDB: succeeded={}, failed={}",
+            upsert ? "upserted" : "created", links.size(), linkType, result.getSuccessCount(), result.getFailureCount());
+        return result;
+    }
+
+    /**
+     * 批量检查端点节点，缺失的逐个补建
+     * @return label:节点ID -> 补建失败原因
+     */
+    private Map<String, String> ensureNodesExist(List<Map<String, Object>> rows, String field, String label, String objectType) {
+        Set<String> nodeIds = new LinkedHashSet<>();
+        for (Map<String, Object> row : rows) nodeIds.add((String) row.get(field));
+
+        Set<String> existing = new HashSet<>();
+        String cypher = "UNWIND $ids AS id MATCH (n:" + label + " {id: id}) RETURN DISTINCT id";
+        for (Record r : falkordbGraph.query(cypher, Collections.singletonMap("ids", new ArrayList<>(nodeIds)))) {
+            existing.add(String.valueOf((Object) r.getValue("id")));
+        }
+
+        Map<String, String> failed = new HashMap<>();
+        for (String nodeId : nodeIds) {
+            if (existing.contains(nodeId)) continue;
+            try {
+                ensureNodeExists(nodeId, label, objectType);
+            } catch (Exception e) {
+                failed.put(label + ":" + nodeId, e.getMessage() != null ? e.getMessage() : e.toString());
+            }
+        }
+        return failed;
+    }
+
     private List<Map<String, Object>> queryLinks(String cypher, Map<String, Object> params, String defaultSourceId, String defaultTargetId) throws IOException {
         List<Map<String, Object>> links = new ArrayList<>();
         ResultSet rs = falkordbGraph.query(cypher, params);
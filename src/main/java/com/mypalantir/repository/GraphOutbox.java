@@ -0,0 +1,468 @@
+package com.mypalantir.repository;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 图摘要写后队列（outbox）：混合模式下实例写入只把图摘要变更记录到默认数据库的 outbox 表，
+ * 由后台线程按对象类型 UNWIND 批量合并到图数据库。
+ * 同一实例的多次变更合并为一行（摘要字段合并，删除覆盖之前的写入，删除后再写入合并为先删后写的 replace），失败按指数退避重试，
+ * 未刷新的变更随 outbox 表持久化，重启后继续刷新。
+ */
+public class GraphOutbox {
+    private static final Logger logger = LoggerFactory.getLogger(GraphOutbox.class);
+
+    static final String TABLE = "mp_graph_outbox";
+    static final String OP_UPSERT = "upsert";
+    static final String OP_DELETE = "delete";
+    /** 未刷新的删除之后又写入：刷新时先删除图节点再 MERGE，旧节点上的摘要字段不会残留 */
+    static final String OP_REPLACE = "replace";
+
+    /**
+     * 默认数据库连接来源
+     */
+    public interface ConnectionSource {
+        Connection get() throws SQLException, IOException;
+    }
+
+    private final ConnectionSource connections;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long retryBackoffMs;
+    private final long maxBackoffMs;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private volatile boolean tableReady;
+    private volatile ScheduledExecutorService flusher;
+    private volatile IInstanceStorage graphStorage;
+    private volatile BiConsumer<String, List<String>> onFlushed;
+    /** 入队与刷新使用不同的锁，图数据库慢或不可用时不阻塞写入 */
+    private final Object enqueueLock = new Object();
+    private final Object flushLock = new Object();
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private volatile long lastFlushAt;
+    private volatile String lastError;
+
+    public GraphOutbox(ConnectionSource connections, int batchSize, long flushIntervalMs, long retryBackoffMs, long maxBackoffMs) {
+        this.connections = connections;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = flushIntervalMs;
+        this.retryBackoffMs = Math.max(0, retryBackoffMs);
+        this.maxBackoffMs = Math.max(this.retryBackoffMs, maxBackoffMs);
+    }
+
+    /**
+     * 启动后台刷新（flushIntervalMs <= 0 时只能手动 {@link #drain()}）
+     *
+     * @param onFlushed 每批刷新成功后回调（对象类型、实例 ID），用于使缓存失效，可为 null
+     */
+    public synchronized void start(IInstanceStorage graphStorage, BiConsumer<String, List<String>> onFlushed) {
+        this.graphStorage = graphStorage;
+        this.onFlushed = onFlushed;
+        if (flusher != null || flushIntervalMs <= 0) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "graph-outbox-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                drain();
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                logger.warn("[GraphOutbox] Flush failed: {}", e.getMessage());
+            }
+        }, 0, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+    }
+
+    public void enqueueUpsert(String objectType, String id, Map<String, Object> summary) throws IOException {
+        enqueue(objectType, id, OP_UPSERT, summary);
+    }
+
+    public void enqueueDelete(String objectType, String id) throws IOException {
+        enqueue(objectType, id, OP_DELETE, null);
+    }
+
+    /**
+     * 未刷新的变更（读己之写、更新前的存在性检查使用）
+     */
+    public static final class Pending {
+        private final String op;
+        private final Map<String, Object> summary;
+
+        Pending(String op, Map<String, Object> summary) {
+            this.op = op;
+            this.summary = summary;
+        }
+
+        public boolean isDelete() {
+            return OP_DELETE.equals(op);
+        }
+
+        /** 为 true 时图中已有节点将先被删除，摘要只以 {@link #getSummary()} 为准 */
+        public boolean isReplace() {
+            return OP_REPLACE.equals(op);
+        }
+
+        /** 待写入的摘要字段，删除时为 null */
+        public Map<String, Object> getSummary() {
+            return summary;
+        }
+    }
+
+    /**
+     * 查询实例未刷新的变更，没有时返回 null
+     */
+    public Pending pending(String objectType, String id) throws IOException {
+        try (Connection conn = connections.get()) {
+            ensureTable(conn);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT op, payload FROM " + TABLE + " WHERE object_type = ? AND instance_id = ?")) {
+                ps.setString(1, objectType);
+                ps.setString(2, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    String op = rs.getString("op");
+                    String payload = rs.getString("payload");
+                    return new Pending(op, payload != null ? readPayload(payload) : null);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read graph outbox for " + objectType + "/" + id + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 写入或合并 outbox 行：已有未刷新行时更新 op/payload 并递增 version，保留最早入队时间（用于计算复制延迟）
+     */
+    private void enqueue(String objectType, String id, String op, Map<String, Object> summary) throws IOException {
+        synchronized (enqueueLock) {
+            enqueueLocked(objectType, id, op, summary);
+        }
+    }
+
+    private void enqueueLocked(String objectType, String id, String op, Map<String, Object> summary) throws IOException {
+        long now = System.currentTimeMillis();
+        try (Connection conn = connections.get()) {
+            ensureTable(conn);
+            String existingOp = null;
+            String existingPayload = null;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT op, payload FROM " + TABLE + " WHERE object_type = ? AND instance_id = ?")) {
+                ps.setString(1, objectType);
+                ps.setString(2, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        existingOp = rs.getString("op");
+                        existingPayload = rs.getString("payload");
+                    }
+                }
+            }
+
+            Map<String, Object> payload = null;
+            if (OP_UPSERT.equals(op)) {
+                payload = new LinkedHashMap<>();
+                if (OP_DELETE.equals(existingOp) || OP_REPLACE.equals(existingOp)) {
+                    // 删除尚未刷新：保留先删后写的顺序
+                    op = OP_REPLACE;
+                }
+                if (!OP_DELETE.equals(existingOp) && existingPayload != null) {
+                    payload.putAll(readPayload(existingPayload));
+                }
+                payload.putAll(summary);
+                payload.put("id", id);
+            }
+            String json = payload != null ? objectMapper.writeValueAsString(payload) : null;
+
+            if (existingOp != null) {
+                try (PreparedStatement ps = conn.prepareStatement("UPDATE " + TABLE
+                        + " SET op = ?, payload = ?, version = version + 1, attempts = 0, next_attempt_at = ?, last_error = NULL"
+                        + " WHERE object_type = ? AND instance_id = ?")) {
+                    ps.setString(1, op);
+                    ps.setString(2, json);
+                    ps.setLong(3, now);
+                    ps.setString(4, objectType);
+                    ps.setString(5, id);
+                    if (ps.executeUpdate() > 0) {
+                        coalesced.incrementAndGet();
+                        enqueued.incrementAndGet();
+                        return;
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + TABLE
+                    + " (object_type, instance_id, op, payload, version, enqueued_at, attempts, next_attempt_at)"
+                    + " VALUES (?, ?, ?, ?, 1, ?, 0, ?)")) {
+                ps.setString(1, objectType);
+                ps.setString(2, id);
+                ps.setString(3, op);
+                ps.setString(4, json);
+                ps.setLong(5, now);
+                ps.setLong(6, now);
+                ps.executeUpdate();
+            }
+            enqueued.incrementAndGet();
+        } catch (SQLException e) {
+            throw new IOException("Failed to enqueue graph summary for " + objectType + "/" + id + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 刷新全部到期的 outbox 行，返回成功写入图数据库的行数
+     */
+    public int drain() throws IOException {
+        int total = 0;
+        while (true) {
+            FlushRound round = flushOnce();
+            total += round.flushed;
+            if (round.selected < batchSize || round.flushed == 0) {
+                return total;
+            }
+        }
+    }
+
+    private static final class FlushRound {
+        int selected;
+        int flushed;
+    }
+
+    private static final class Entry {
+        String objectType;
+        String id;
+        String op;
+        String payload;
+        long version;
+        int attempts;
+    }
+
+    /**
+     * 取出一批到期行，按对象类型分组：upsert 一次 batchMergeInstances（UNWIND），delete 逐条删除，
+     * replace 先逐条删除再随 upsert 一起合并；
+     * 成功的行按 version 删除（刷新期间被再次修改的行保留到下一轮），失败的行记录错误并退避
+     */
+    private FlushRound flushOnce() throws IOException {
+        synchronized (flushLock) {
+            return flushOnceLocked();
+        }
+    }
+
+    private FlushRound flushOnceLocked() throws IOException {
+        FlushRound round = new FlushRound();
+        if (graphStorage == null) {
+            return round;
+        }
+        long now = System.currentTimeMillis();
+        try (Connection conn = connections.get()) {
+            ensureTable(conn);
+            List<Entry> due = new ArrayList<>();
+            try (PreparedStatement ps = conn.prepareStatement("SELECT object_type, instance_id, op, payload, version, attempts FROM "
+                    + TABLE + " WHERE next_attempt_at <= ? ORDER BY enqueued_at")) {
+                ps.setMaxRows(batchSize);
+                ps.setLong(1, now);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Entry entry = new Entry();
+                        entry.objectType = rs.getString("object_type");
+                        entry.id = rs.getString("instance_id");
+                        entry.op = rs.getString("op");
+                        entry.payload = rs.getString("payload");
+                        entry.version = rs.getLong("version");
+                        entry.attempts = rs.getInt("attempts");
+                        due.add(entry);
+                    }
+                }
+            }
+            round.selected = due.size();
+            if (due.isEmpty()) {
+                return round;
+            }
+
+            Map<String, List<Entry>> byType = new LinkedHashMap<>();
+            for (Entry entry : due) {
+                byType.computeIfAbsent(entry.objectType, k -> new ArrayList<>()).add(entry);
+            }
+            for (Map.Entry<String, List<Entry>> group : byType.entrySet()) {
+                String objectType = group.getKey();
+                List<Entry> done = new ArrayList<>();
+                List<Entry> upserts = new ArrayList<>();
+                List<Map<String, Object>> rows = new ArrayList<>();
+                for (Entry entry : group.getValue()) {
+                    if (OP_DELETE.equals(entry.op) || OP_REPLACE.equals(entry.op)) {
+                        try {
+                            deleteFromGraph(objectType, entry.id);
+                        } catch (IOException e) {
+                            fail(conn, List.of(entry), e.getMessage(), now);
+                            continue;
+                        }
+                    }
+                    if (OP_DELETE.equals(entry.op)) {
+                        done.add(entry);
+                    } else {
+                        upserts.add(entry);
+                        rows.add(readPayload(entry.payload));
+                    }
+                }
+                if (!rows.isEmpty()) {
+                    try {
+                        graphStorage.batchMergeInstances(objectType, rows);
+                        batches.incrementAndGet();
+                        done.addAll(upserts);
+                    } catch (IOException e) {
+                        fail(conn, upserts, e.getMessage(), now);
+                    }
+                }
+                if (!done.isEmpty()) {
+                    complete(conn, done);
+                    round.flushed += done.size();
+                    flushed.addAndGet(done.size());
+                    if (onFlushed != null) {
+                        onFlushed.accept(objectType, done.stream().map(e -> e.id).toList());
+                    }
+                }
+            }
+            lastFlushAt = System.currentTimeMillis();
+            return round;
+        } catch (SQLException e) {
+            throw new IOException("Failed to flush graph outbox: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 删除图节点，节点已不存在视为成功
+     */
+    private void deleteFromGraph(String objectType, String id) throws IOException {
+        try {
+            graphStorage.deleteInstance(objectType, id);
+        } catch (IOException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("not found")) {
+                throw e;
+            }
+        }
+    }
+
+    private void complete(Connection conn, List<Entry> entries) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "DELETE FROM " + TABLE + " WHERE object_type = ? AND instance_id = ? AND version = ?")) {
+            for (Entry entry : entries) {
+                ps.setString(1, entry.objectType);
+                ps.setString(2, entry.id);
+                ps.setLong(3, entry.version);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void fail(Connection conn, List<Entry> entries, String error, long now) throws SQLException {
+        lastError = error;
+        retries.addAndGet(entries.size());
+        logger.warn("[GraphOutbox] Failed to flush {} graph summaries of type {}, will retry: {}",
+            entries.size(), entries.get(0).objectType, error);
+        String message = error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE " + TABLE
+                + " SET attempts = attempts + 1, next_attempt_at = ?, last_error = ?"
+                + " WHERE object_type = ? AND instance_id = ? AND version = ?")) {
+            for (Entry entry : entries) {
+                ps.setLong(1, now + backoff(entry.attempts));
+                ps.setString(2, message);
+                ps.setString(3, entry.objectType);
+                ps.setString(4, entry.id);
+                ps.setLong(5, entry.version);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * 第 attempts 次失败后的等待时间：retryBackoffMs * 2^attempts，上限 maxBackoffMs
+     */
+    long backoff(int attempts) {
+        long delay = retryBackoffMs << Math.min(attempts, 20);
+        return Math.min(delay, maxBackoffMs);
+    }
+
+    /**
+     * 队列状态：待刷新行数、失败重试中的行数、复制延迟（最早未刷新变更的入队时长）及累计计数
+     */
+    public Map<String, Object> stats() throws IOException {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        try (Connection conn = connections.get()) {
+            ensureTable(conn);
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) AS pending, MIN(enqueued_at) AS oldest, "
+                     + "SUM(CASE WHEN attempts > 0 THEN 1 ELSE 0 END) AS failing, MAX(attempts) AS max_attempts FROM " + TABLE)) {
+                rs.next();
+                long pending = rs.getLong("pending");
+                long oldest = rs.getLong("oldest");
+                boolean empty = rs.wasNull() || pending == 0;
+                stats.put("pending", pending);
+                stats.put("failing", rs.getLong("failing"));
+                stats.put("max_attempts", rs.getInt("max_attempts"));
+                stats.put("lag_ms", empty ? 0L : Math.max(0L, now - oldest));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read graph outbox stats: " + e.getMessage(), e);
+        }
+        stats.put("enqueued_total", enqueued.get());
+        stats.put("coalesced_total", coalesced.get());
+        stats.put("flushed_total", flushed.get());
+        stats.put("flush_batches", batches.get());
+        stats.put("retries", retries.get());
+        stats.put("last_flush_at", lastFlushAt > 0 ? lastFlushAt : null);
+        stats.put("last_error", lastError);
+        return stats;
+    }
+
+    private void ensureTable(Connection conn) throws SQLException {
+        if (tableReady) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                + "object_type VARCHAR(255) NOT NULL, "
+                + "instance_id VARCHAR(255) NOT NULL, "
+                + "op VARCHAR(16) NOT NULL, "
+                + "payload TEXT, "
+                + "version BIGINT NOT NULL, "
+                + "enqueued_at BIGINT NOT NULL, "
+                + "attempts INT NOT NULL, "
+                + "next_attempt_at BIGINT NOT NULL, "
+                + "last_error VARCHAR(1000), "
+                + "PRIMARY KEY (object_type, instance_id))");
+        }
+        tableReady = true;
+    }
+
+    private Map<String, Object> readPayload(String json) throws IOException {
+        return objectMapper.readValue(json, new TypeReference<LinkedHashMap<String, Object>>() {});
+    }
+}
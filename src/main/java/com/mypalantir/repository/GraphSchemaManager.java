@@ -0,0 +1,390 @@
+package com.mypalantir.repository;
+
+import com.falkordb.Graph;
+import com.falkordb.Record;
+import com.mypalantir.meta.LinkType;
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.meta.OntologySchema;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * 图数据库（Neo4j/FalkorDB）约束与索引管理
+ * 按当前本体推导所需的约束与索引：每个对象类型标签的 id 唯一约束、storage.neo4j.fields.* 配置字段索引、
+ * 关系 property_mappings 两端的关联键索引、关系类型的 id 索引。
+ * 启动时与切换模型后幂等创建缺失项（已存在的按 标签+属性 识别，不依赖名称），并可查询现状报告。
+ */
+public class GraphSchemaManager {
+    private static final Logger logger = LoggerFactory.getLogger(GraphSchemaManager.class);
+
+    /** 可作为 Cypher 属性名直接引用的字段名，其余配置字段跳过 */
+    private static final Pattern PROPERTY_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    /** 节点 id 唯一约束 */
+    public static final String KIND_NODE_UNIQUE = "node_unique";
+    /** 节点属性索引 */
+    public static final String KIND_NODE_INDEX = "node_index";
+    /** 关系属性索引 */
+    public static final String KIND_REL_INDEX = "relationship_index";
+
+    /**
+     * 一项约束或索引
+     */
+    public static final class IndexSpec {
+        private final String kind;
+        private final String label;
+        private final String property;
+
+        public IndexSpec(String kind, String label, String property) {
+            this.kind = kind;
+            this.label = label;
+            this.property = property;
+        }
+
+        public String getKind() { return kind; }
+        public String getLabel() { return label; }
+        public String getProperty() { return property; }
+
+        /** 由本系统创建时使用的名称 */
+        public String getName() {
+            String prefix = KIND_NODE_UNIQUE.equals(kind) ? "mp_uq_" : KIND_REL_INDEX.equals(kind) ? "mp_rel_" : "mp_idx_";
+            return prefix + label.toLowerCase() + "_" + property.toLowerCase();
+        }
+
+        String key() {
+            return kind + ":" + label + "." + property;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("kind", kind);
+            map.put("label", label);
+            map.put("property", property);
+            map.put("name", getName());
+            return map;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IndexSpec && key().equals(((IndexSpec) o).key());
+        }
+
+        @Override
+        public int hashCode() {
+            return key().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key();
+        }
+    }
+
+    /**
+     * 图数据库方言：读取已有约束/索引、创建单项
+     */
+    interface Backend {
+        String name();
+
+        /**
+         * @return 已存在的约束与索引；唯一约束同时视为同属性上的索引
+         */
+        Set<IndexSpec> existing() throws IOException;
+
+        void create(IndexSpec spec) throws IOException;
+    }
+
+    private final Backend backend;
+    private final Loader loader;
+    private final Function<String, List<String>> graphFields;
+    private final boolean autoCreate;
+    private volatile Map<String, Object> lastEnsure;
+
+    /**
+     * @param backend 图数据库方言，未配置图数据库时为 null
+     * @param graphFields 对象类型 -> 写入图数据库的字段（storage.neo4j.fields.*）
+     * @param autoCreate 启动时是否自动创建缺失项
+     */
+    public GraphSchemaManager(Backend backend, Loader loader, Function<String, List<String>> graphFields, boolean autoCreate) {
+        this.backend = backend;
+        this.loader = loader;
+        this.graphFields = graphFields;
+        this.autoCreate = autoCreate;
+    }
+
+    public boolean isAvailable() {
+        return backend != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureOnStartup() {
+        if (!autoCreate || backend == null) {
+            return;
+        }
+        try {
+            ensureSchema();
+        } catch (Exception e) {
+            logger.warn("[GraphSchemaManager] Failed to ensure graph constraints/indexes at startup: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 幂等创建当前本体所需、图数据库中缺失的约束与索引；单项失败（如存量数据 id 重复）记入报告，不中断其余项
+     */
+    public synchronized Map<String, Object> ensureSchema() throws IOException {
+        requireBackend();
+        List<IndexSpec> required = requiredSpecs(loader.getSchema(), graphFields);
+        Set<IndexSpec> existing = backend.existing();
+        List<Map<String, Object>> created = new ArrayList<>();
+        List<Map<String, Object>> failed = new ArrayList<>();
+        for (IndexSpec spec : required) {
+            if (existing.contains(spec)) {
+                continue;
+            }
+            try {
+                backend.create(spec);
+                created.add(spec.toMap());
+            } catch (IOException e) {
+                Map<String, Object> failure = spec.toMap();
+                failure.put("error", e.getMessage());
+                failed.add(failure);
+                logger.warn("[GraphSchemaManager] Failed to create {}: {}", spec, e.getMessage());
+            }
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("backend", backend.name());
+        report.put("required", required.size());
+        report.put("already_present", required.size() - created.size() - failed.size());
+        report.put("created", created);
+        report.put("failed", failed);
+        report.put("ensured_at", Instant.now().toString());
+        lastEnsure = report;
+        logger.info("[GraphSchemaManager] {} required={}, created={}, failed={}",
+            backend.name(), required.size(), created.size(), failed.size());
+        return report;
+    }
+
+    /**
+     * 现状报告：所需项中已存在/缺失的清单，以及上次 ensure 的结果
+     */
+    public Map<String, Object> report() throws IOException {
+        requireBackend();
+        List<IndexSpec> required = requiredSpecs(loader.getSchema(), graphFields);
+        Set<IndexSpec> existing = backend.existing();
+        List<Map<String, Object>> present = new ArrayList<>();
+        List<Map<String, Object>> missing = new ArrayList<>();
+        for (IndexSpec spec : required) {
+            (existing.contains(spec) ? present : missing).add(spec.toMap());
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("backend", backend.name());
+        report.put("required", required.size());
+        report.put("present", present);
+        report.put("missing", missing);
+        report.put("last_ensure", lastEnsure);
+        return report;
+    }
+
+    private void requireBackend() {
+        if (backend == null) {
+            throw new IllegalStateException("Graph database is not configured");
+        }
+    }
+
+    /**
+     * 按本体推导所需约束与索引（去重，保持推导顺序）
+     */
+    static List<IndexSpec> requiredSpecs(OntologySchema schema, Function<String, List<String>> graphFields) {
+        Set<IndexSpec> specs = new LinkedHashSet<>();
+        if (schema == null) {
+            return new ArrayList<>();
+        }
+        if (schema.getObjectTypes() != null) {
+            for (ObjectType objectType : schema.getObjectTypes()) {
+                String label = normalizeLabel(objectType.getName());
+                specs.add(new IndexSpec(KIND_NODE_UNIQUE, label, "id"));
+                for (String field : graphFields.apply(objectType.getName())) {
+                    addNodeIndex(specs, label, field);
+                }
+            }
+        }
+        if (schema.getLinkTypes() != null) {
+            for (LinkType linkType : schema.getLinkTypes()) {
+                specs.add(new IndexSpec(KIND_REL_INDEX, normalizeRelType(linkType.getName()), "id"));
+                if (linkType.getSourceType() == null || linkType.getTargetType() == null) {
+                    continue;
+                }
+                // 关系端点按 id 匹配；按 property_mappings 关联两端实例时查找关联键
+                String sourceLabel = normalizeLabel(linkType.getSourceType());
+                String targetLabel = normalizeLabel(linkType.getTargetType());
+                specs.add(new IndexSpec(KIND_NODE_UNIQUE, sourceLabel, "id"));
+                specs.add(new IndexSpec(KIND_NODE_UNIQUE, targetLabel, "id"));
+                if (linkType.getPropertyMappings() != null) {
+                    for (Map.Entry<String, String> mapping : linkType.getPropertyMappings().entrySet()) {
+                        addNodeIndex(specs, sourceLabel, mapping.getKey());
+                        addNodeIndex(specs, targetLabel, mapping.getValue());
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(specs);
+    }
+
+    private static void addNodeIndex(Set<IndexSpec> specs, String label, String property) {
+        if (property == null || "id".equals(property) || !PROPERTY_NAME.matcher(property).matches()) {
+            return;
+        }
+        specs.add(new IndexSpec(KIND_NODE_INDEX, label, property));
+    }
+
+    /** 与 Neo4jInstanceStorage / FalkorDBInstanceStorage 的标签规则一致 */
+    static String normalizeLabel(String objectType) {
+        return objectType.replaceAll("[^a-zA-Z0-9]", "");
+    }
+
+    /** 与 Neo4jLinkStorage / FalkorDBLinkStorage 的关系类型规则一致 */
+    static String normalizeRelType(String linkType) {
+        return linkType.replaceAll("[^a-zA-Z0-9]", "_").toUpperCase();
+    }
+
+    /**
+     * Neo4j 5：CREATE CONSTRAINT / INDEX ... IF NOT EXISTS，SHOW CONSTRAINTS / INDEXES 读取现状
+     */
+    static final class Neo4jBackend implements Backend {
+        private final Driver driver;
+
+        Neo4jBackend(Driver driver) {
+            this.driver = driver;
+        }
+
+        @Override
+        public String name() {
+            return "neo4j";
+        }
+
+        @Override
+        public Set<IndexSpec> existing() throws IOException {
+            Set<IndexSpec> existing = new HashSet<>();
+            try (Session session = driver.session()) {
+                session.run("SHOW CONSTRAINTS YIELD type, entityType, labelsOrTypes, properties").forEachRemaining(record -> {
+                    if (record.get("labelsOrTypes").isNull() || record.get("properties").isNull()) {
+                        return;
+                    }
+                    List<Object> labels = record.get("labelsOrTypes").asList();
+                    List<Object> properties = record.get("properties").asList();
+                    if ("NODE".equals(record.get("entityType").asString()) && record.get("type").asString().contains("UNIQUE")
+                            && labels.size() == 1 && properties.size() == 1) {
+                        existing.add(new IndexSpec(KIND_NODE_UNIQUE, labels.get(0).toString(), properties.get(0).toString()));
+                        existing.add(new IndexSpec(KIND_NODE_INDEX, labels.get(0).toString(), properties.get(0).toString()));
+                    }
+                });
+                session.run("SHOW INDEXES YIELD type, entityType, labelsOrTypes, properties").forEachRemaining(record -> {
+                    if ("LOOKUP".equals(record.get("type").asString())
+                            || record.get("labelsOrTypes").isNull() || record.get("properties").isNull()) {
+                        return;
+                    }
+                    List<Object> labels = record.get("labelsOrTypes").asList();
+                    List<Object> properties = record.get("properties").asList();
+                    if (labels.size() != 1 || properties.size() != 1) {
+                        return;
+                    }
+                    String kind = "RELATIONSHIP".equals(record.get("entityType").asString()) ? KIND_REL_INDEX : KIND_NODE_INDEX;
+                    existing.add(new IndexSpec(kind, labels.get(0).toString(), properties.get(0).toString()));
+                });
+            } catch (Exception e) {
+                throw new IOException("Failed to read Neo4j constraints/indexes: " + e.getMessage(), e);
+            }
+            return existing;
+        }
+
+        @Override
+        public void create(IndexSpec spec) throws IOException {
+            String cypher;
+            if (KIND_NODE_UNIQUE.equals(spec.getKind())) {
+                cypher = "CREATE CONSTRAINT " + spec.getName() + " IF NOT EXISTS FOR (n:" + spec.getLabel()
+                    + ") REQUIRE n.`" + spec.getProperty() + "` IS UNIQUE";
+            } else if (KIND_REL_INDEX.equals(spec.getKind())) {
+                cypher = "CREATE INDEX " + spec.getName() + " IF NOT EXISTS FOR ()-[r:" + spec.getLabel()
+                    + "]-() ON (r.`" + spec.getProperty() + "`)";
+            } else {
+                cypher = "CREATE INDEX " + spec.getName() + " IF NOT EXISTS FOR (n:" + spec.getLabel()
+                    + ") ON (n.`" + spec.getProperty() + "`)";
+            }
+            try (Session session = driver.session()) {
+                session.run(cypher).consume();
+            } catch (Exception e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * FalkorDB：CREATE INDEX FOR ... ON ...，CALL db.indexes() 读取现状。
+     * 唯一约束需通过 GRAPH.CONSTRAINT 命令创建（驱动未提供），此处以 id 精确匹配索引代替，不强制唯一。
+     */
+    static final class FalkorDBBackend implements Backend {
+        private final Graph graph;
+
+        FalkorDBBackend(Graph graph) {
+            this.graph = graph;
+        }
+
+        @Override
+        public String name() {
+            return "falkordb";
+        }
+
+        @Override
+        public Set<IndexSpec> existing() throws IOException {
+            Set<IndexSpec> existing = new HashSet<>();
+            try {
+                for (Record record : graph.query("CALL db.indexes()")) {
+                    String label = String.valueOf(record.getValue("label"));
+                    Object properties = record.getValue("properties");
+                    boolean relationship = "RELATIONSHIP".equalsIgnoreCase(String.valueOf(record.getValue("entitytype")));
+                    if (!(properties instanceof List)) {
+                        continue;
+                    }
+                    for (Object property : (List<?>) properties) {
+                        if (relationship) {
+                            existing.add(new IndexSpec(KIND_REL_INDEX, label, property.toString()));
+                        } else {
+                            existing.add(new IndexSpec(KIND_NODE_INDEX, label, property.toString()));
+                            existing.add(new IndexSpec(KIND_NODE_UNIQUE, label, property.toString()));
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                throw new IOException("Failed to read FalkorDB indexes: " + e.getMessage(), e);
+            }
+            return existing;
+        }
+
+        @Override
+        public void create(IndexSpec spec) throws IOException {
+            String cypher = KIND_REL_INDEX.equals(spec.getKind())
+                ? "CREATE INDEX FOR ()-[r:" + spec.getLabel() + "]-() ON (r." + spec.getProperty() + ")"
+                : "CREATE INDEX FOR (n:" + spec.getLabel() + ") ON (n." + spec.getProperty() + ")";
+            try {
+                graph.query(cypher);
+            } catch (Exception e) {
+                // 并发创建或已存在：视为成功
+                if (e.getMessage() != null && e.getMessage().contains("already indexed")) {
+                    return;
+                }
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -7,6 +7,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
@@ -34,6 +36,52 @@ public class HybridInstanceStorage implements IInstanceStorage {
     @Autowired
     private Environment environment;
 
+    /** 读穿缓存，由 StorageFactory 按 storage.cache.* 配置注入；为 null 时不缓存 */
+    private InstanceCache instanceCache;
+
+    public void setInstanceCache(InstanceCache instanceCache) {
+        this.instanceCache = instanceCache;
+    }
+
+    public InstanceCache getInstanceCache() {
+        return instanceCache;
+    }
+
+    /** 图摘要写后队列，由 StorageFactory 按 storage.graph-outbox.* 配置注入；为 null 时同步写图数据库 */
+    private GraphOutbox graphOutbox;
+
+    public void setGraphOutbox(GraphOutbox graphOutbox) {
+        this.graphOutbox = graphOutbox;
+    }
+
+    /**
+     * 启动后开始刷新写后队列（包括上次运行遗留的未刷新变更）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startGraphOutbox() {
+        if (graphOutbox != null && graphStorage != null) {
+            graphOutbox.start(graphStorage, (objectType, ids) -> {
+                if (instanceCache != null) {
+                    instanceCache.invalidateAll(objectType, ids);
+                }
+            });
+        }
+    }
+
+    /**
+     * 写后队列状态（待刷新数、复制延迟等），未启用时返回 null
+     */
+    public Map<String, Object> getGraphOutboxStats() throws IOException {
+        return graphOutbox != null ? graphOutbox.stats() : null;
+    }
+
+    /**
+     * 已映射同步表的业务对象类型的图摘要走写后队列；系统对象类型和只存在于图数据库的类型仍同步写入
+     */
+    private boolean isWriteBehind(String objectType) {
+        return graphOutbox != null && !isSystemObjectType(objectType) && hasRelationalMapping(objectType);
+    }
+
     /**
      * 获取需要存储在Neo4j的字段列表
      * 优先级：
@@ -168,7 +216,13 @@ public class HybridInstanceStorage implements IInstanceStorage {
         // 1. 提取关键字段
         Map<String, Object> summaryFields = extractSummaryFields(objectType, data);
         
-        // 2. 关键字段存储到Neo4j
+        // 2. 关键字段存储到Neo4j（写后队列模式下本地生成 ID 并入队）
+        if (isWriteBehind(objectType)) {
+            String id = UUID.randomUUID().toString();
+            graphOutbox.enqueueUpsert(objectType, id, summaryFields);
+            invalidate(objectType, id);
+            return id;
+        }
         String id = graphStorage.createInstance(objectType, summaryFields);
         
         // 3. 详细数据应该通过ETL或直接SQL插入到关系型数据库
@@ -186,8 +240,14 @@ public class HybridInstanceStorage implements IInstanceStorage {
         // 2. 确保id在summaryFields中
         summaryFields.put("id", id);
         
-        // 3. 关键字段存储到Neo4j
+        // 3. 关键字段存储到Neo4j（写后队列模式下按 MERGE 语义入队）
+        if (isWriteBehind(objectType)) {
+            graphOutbox.enqueueUpsert(objectType, id, summaryFields);
+            invalidate(objectType, id);
+            return id;
+        }
         String createdId = graphStorage.createInstanceWithId(objectType, id, summaryFields);
+        invalidate(objectType, createdId);
         
         // 4. 详细数据应该通过ETL或直接SQL插入到关系型数据库
         // 这里不直接插入，由ETL系统处理
@@ -198,6 +258,30 @@ public class HybridInstanceStorage implements IInstanceStorage {
 
     @Override
     public Map<String, Object> getInstance(String objectType, String id) throws IOException {
+        if (instanceCache == null || !instanceCache.isCached(objectType)) {
+            return loadInstance(objectType, id);
+        }
+        InstanceCache.Lookup cached = instanceCache.get(objectType, id);
+        if (cached.isAbsent()) {
+            throw new InstanceNotFoundException();
+        }
+        if (cached.isHit()) {
+            return cached.getValue();
+        }
+        long generation = instanceCache.generation(objectType);
+        try {
+            Map<String, Object> instance = loadInstance(objectType, id);
+            instanceCache.put(objectType, id, instance, generation);
+            return instance;
+        } catch (IOException e) {
+            if (isNotFound(e)) {
+                instanceCache.put(objectType, id, null, generation);
+            }
+            throw e;
+        }
+    }
+
+    private Map<String, Object> loadInstance(String objectType, String id) throws IOException {
         // logger.info("[HybridInstanceStorage] ========== getInstance (hybrid模式) ==========");
         // logger.info("[HybridInstanceStorage] getInstance called for objectType: {}, id: {}", objectType, id);
         // logger.info("[HybridInstanceStorage] Storage mode: HYBRID (reading from relational DB and Neo4j, NOT from file storage)");
@@ -223,7 +307,7 @@ public class HybridInstanceStorage implements IInstanceStorage {
             
             // 合并Neo4j中的关键字段（用于图展示）
             try {
-                Map<String, Object> neo4jInstance = graphStorage.getInstance(objectType, id);
+                Map<String, Object> neo4jInstance = getGraphInstance(objectType, id);
                 // 如果关系型数据库中没有某些字段，从Neo4j补充
                 for (Map.Entry<String, Object> entry : neo4jInstance.entrySet()) {
                     if (!instance.containsKey(entry.getKey())) {
@@ -243,10 +327,9 @@ public class HybridInstanceStorage implements IInstanceStorage {
         } catch (IOException e) {
             // 实例存储查询失败（如联合主键在同步表未命中、或同步表不存在）
             // 若错误为 instance not found，尝试从 Neo4j 读取（兼容列表来自 Neo4j 而详情请求同一 id 的场景）
-            boolean isNotFound = e.getMessage() != null && (e.getMessage().contains("instance not found") || e.getMessage().contains("not found"));
-            if (isNotFound) {
+            if (e.getMessage() != null && e.getMessage().contains("not found")) {
                 try {
-                    Map<String, Object> neo4jInstance = graphStorage.getInstance(objectType, id);
+                    Map<String, Object> neo4jInstance = getGraphInstance(objectType, id);
                     // logger.info("[HybridInstanceStorage] Instance {} of type {} not in sync table, returned from Neo4j", id, objectType);
                     // logger.info("[HybridInstanceStorage] ========== getInstance END ==========");
                     return neo4jInstance;
@@ -260,13 +343,44 @@ public class HybridInstanceStorage implements IInstanceStorage {
         }
     }
 
+    /**
+     * 图数据库中的实例摘要；写后队列模式下叠加未刷新的变更（读己之写），未刷新的删除视为不存在
+     */
+    private Map<String, Object> getGraphInstance(String objectType, String id) throws IOException {
+        GraphOutbox.Pending pending = isWriteBehind(objectType) ? graphOutbox.pending(objectType, id) : null;
+        if (pending == null) {
+            return graphStorage.getInstance(objectType, id);
+        }
+        if (pending.isDelete()) {
+            throw new InstanceNotFoundException();
+        }
+        Map<String, Object> instance = new HashMap<>();
+        if (!pending.isReplace()) {
+            try {
+                instance.putAll(graphStorage.getInstance(objectType, id));
+            } catch (IOException e) {
+                if (e.getMessage() == null || !e.getMessage().contains("not found")) {
+                    throw e;
+                }
+            }
+        }
+        instance.putAll(pending.getSummary());
+        return instance;
+    }
+
     @Override
     public void updateInstance(String objectType, String id, Map<String, Object> data) throws IOException {
         // 1. 提取关键字段
         Map<String, Object> summaryFields = extractSummaryFields(objectType, data);
         
-        // 2. 更新Neo4j中的关键字段
-        graphStorage.updateInstance(objectType, id, summaryFields);
+        // 2. 更新Neo4j中的关键字段（写后队列按 MERGE 语义刷新，入队前确认实例存在，与同步 MATCH 更新一致）
+        if (isWriteBehind(objectType)) {
+            getGraphInstance(objectType, id);
+            graphOutbox.enqueueUpsert(objectType, id, summaryFields);
+        } else {
+            graphStorage.updateInstance(objectType, id, summaryFields);
+        }
+        invalidate(objectType, id);
         
         // 3. 详细数据的更新应该通过ETL或直接SQL更新
         // 这里不直接更新，由ETL系统处理
@@ -276,6 +390,14 @@ public class HybridInstanceStorage implements IInstanceStorage {
 
     @Override
     public void deleteInstance(String objectType, String id) throws IOException {
+        try {
+            deleteFromGraph(objectType, id);
+        } finally {
+            invalidate(objectType, id);
+        }
+    }
+
+    private void deleteFromGraph(String objectType, String id) throws IOException {
         // 系统对象类型（table, database, mapping等）只存储在 Neo4j 中，直接删除
         if (isSystemObjectType(objectType)) {
             logger.info("[HybridInstanceStorage] System object type {} detected, deleting from Neo4j only", objectType);
@@ -286,6 +408,10 @@ public class HybridInstanceStorage implements IInstanceStorage {
         
         // 对于有关系型数据库映射的对象类型，只从 Neo4j 删除（关系型数据库的删除应该通过ETL或直接SQL删除）
         // 这里不直接删除关系型数据库中的数据，由ETL系统处理
+        if (isWriteBehind(objectType)) {
+            graphOutbox.enqueueDelete(objectType, id);
+            return;
+        }
         try {
             graphStorage.deleteInstance(objectType, id);
             logger.debug("Deleted instance {} of type {} from hybrid storage (Neo4j only, relational DB should be handled by ETL)", id, objectType);
@@ -414,6 +540,34 @@ public class HybridInstanceStorage implements IInstanceStorage {
 
     @Override
     public Map<String, Map<String, Object>> getInstancesBatch(String objectType, List<String> ids) throws IOException {
+        if (instanceCache == null || !instanceCache.isCached(objectType)) {
+            return loadInstancesBatch(objectType, ids);
+        }
+        // 先查缓存，只对未命中的 ID 回源
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            InstanceCache.Lookup cached = instanceCache.get(objectType, id);
+            if (cached.isHit()) {
+                result.put(id, cached.getValue());
+            } else {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        long generation = instanceCache.generation(objectType);
+        Map<String, Map<String, Object>> loaded = loadInstancesBatch(objectType, missing);
+        for (Map.Entry<String, Map<String, Object>> entry : loaded.entrySet()) {
+            // 值为 null 表示存储层确认不存在，按负缓存记录；查询失败的 ID 不在结果中，不会被缓存
+            instanceCache.put(objectType, entry.getKey(), entry.getValue(), generation);
+        }
+        result.putAll(loaded);
+        return result;
+    }
+
+    private Map<String, Map<String, Object>> loadInstancesBatch(String objectType, List<String> ids) throws IOException {
         logger.info("[HybridInstanceStorage] getInstancesBatch called for objectType: {}, ids count: {}", objectType, ids.size());
         
         // 系统对象类型（table, database, mapping等）直接使用 Neo4j，避免递归调用
@@ -489,6 +643,79 @@ public class HybridInstanceStorage implements IInstanceStorage {
         return result;
     }
 
+    /**
+     * 批量 MERGE：完整字段写入同步表，关键字段写入图数据库（写后队列模式下入队），并使涉及的缓存条目失效
+     * 系统对象类型只存在于图数据库，直接 MERGE 到图
+     * @return 两侧都写入的行数
+     */
+    @Override
+    public int batchMergeInstances(String objectType, List<Map<String, Object>> rows) throws IOException {
+        if (rows == null || rows.isEmpty()) {
+            return 0;
+        }
+        try {
+            if (isSystemObjectType(objectType)) {
+                return graphStorage.batchMergeInstances(objectType, rows);
+            }
+            int written = relationalStorage.batchMergeInstances(objectType, rows);
+            List<Map<String, Object>> summaries = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                if (row.get("id") != null) {
+                    summaries.add(extractSummaryFields(objectType, row));
+                }
+            }
+            if (isWriteBehind(objectType)) {
+                for (Map<String, Object> summary : summaries) {
+                    graphOutbox.enqueueUpsert(objectType, String.valueOf(summary.get("id")), summary);
+                }
+                return written;
+            }
+            return Math.min(written, graphStorage.batchMergeInstances(objectType, summaries));
+        } finally {
+            if (instanceCache != null) {
+                List<String> ids = new ArrayList<>(rows.size());
+                for (Map<String, Object> row : rows) {
+                    if (row.get("id") != null) {
+                        ids.add(String.valueOf(row.get("id")));
+                    }
+                }
+                instanceCache.invalidateAll(objectType, ids);
+            }
+        }
+    }
+
+    /**
+     * 使单个实例的缓存失效
+     */
+    private void invalidate(String objectType, String id) {
+        if (instanceCache != null) {
+            instanceCache.invalidate(objectType, id);
+        }
+    }
+
+    /**
+     * 使对象类型的全部缓存失效（同步表被 ETL 整体重写后调用）
+     */
+    public void invalidateType(String objectType) {
+        if (instanceCache != null) {
+            instanceCache.invalidateType(objectType);
+        }
+    }
+
+    /**
+     * 按类型的缓存命中统计，未启用缓存时返回空
+     */
+    public Map<String, Map<String, Object>> getCacheStats() {
+        return instanceCache != null ? instanceCache.getStats() : Collections.emptyMap();
+    }
+
+    /**
+     * 仅存储层确认实例不存在时写入空值缓存；对象类型不存在、同步表查询失败等错误不缓存
+     */
+    private static boolean isNotFound(IOException e) {
+        return e instanceof InstanceNotFoundException;
+    }
+
     /**
      * 获取实例摘要（只包含关键字段，用于图展示）
      */
@@ -55,8 +55,8 @@ public interface IInstanceStorage {
     Map<String, Map<String, Object>> getInstancesBatchMultiType(Map<String, List<String>> typeIdMap) throws IOException;
 
     /**
-     * 批量 MERGE 节点到图存储（Neo4j/FalkorDB）
-     * 非图存储实现返回 0
+     * 批量 MERGE：按 id 新建或合并属性（Neo4j/FalkorDB、分段日志、文件存储、同步表、混合存储实现）
+     * @return 写入的行数（含 id 的输入行，同一 id 出现多次按次数计）；未实现的存储返回 0，调用方应按写入数判断是否全部写入
      */
     default int batchMergeInstances(String objectType, List<Map<String, Object>> rows) throws IOException {
         return 0;
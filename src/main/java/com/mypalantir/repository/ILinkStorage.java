@@ -1,6 +1,7 @@
 package com.mypalantir.repository;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -43,4 +44,99 @@ public interface ILinkStorage {
      * 列出关系
      */
     InstanceStorage.ListResult listLinks(String linkType, int offset, int limit) throws IOException;
+
+    /**
+     * 批量创建关系
+     * 每条输入包含 source_id、target_id，其余字段作为关系属性；单条失败不影响其他条目
+     * 默认实现逐条调用 createLink，各存储实现应以原生批量方式覆盖
+     */
+    default LinkBatchResult createLinksBatch(String linkType, List<Map<String, Object>> links) throws IOException {
+        LinkBatchResult result = new LinkBatchResult(links.size());
+        for (int i = 0; i < links.size(); i++) {
+            Map<String, Object> link = links.get(i);
+            try {
+                result.addSuccess(i, createLink(linkType, endpoint(link, "source_id"), endpoint(link, "target_id"),
+                    linkProperties(link)));
+            } catch (Exception e) {
+                result.addFailure(i, e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量删除关系，不存在的关系记为失败（link not found）
+     */
+    default LinkBatchResult deleteLinksBatch(String linkType, List<String> ids) throws IOException {
+        LinkBatchResult result = new LinkBatchResult(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            try {
+                deleteLink(linkType, ids.get(i));
+                result.addSuccess(i, ids.get(i));
+            } catch (Exception e) {
+                result.addFailure(i, e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量 upsert 关系：同一 source_id -> target_id 的关系已存在时更新属性，否则创建
+     */
+    default LinkBatchResult upsertLinksBatch(String linkType, List<Map<String, Object>> links) throws IOException {
+        LinkBatchResult result = new LinkBatchResult(links.size());
+        for (int i = 0; i < links.size(); i++) {
+            Map<String, Object> link = links.get(i);
+            try {
+                String sourceId = endpoint(link, "source_id");
+                String targetId = endpoint(link, "target_id");
+                String existingId = null;
+                for (Map<String, Object> existing : getLinksBySource(linkType, sourceId)) {
+                    if (targetId.equals(String.valueOf(existing.get("target_id")))) {
+                        existingId = String.valueOf(existing.get("id"));
+                        break;
+                    }
+                }
+                if (existingId != null) {
+                    updateLink(linkType, existingId, linkProperties(link));
+                    result.addSuccess(i, existingId);
+                } else {
+                    result.addSuccess(i, createLink(linkType, sourceId, targetId, linkProperties(link)));
+                }
+            } catch (Exception e) {
+                result.addFailure(i, e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * K 跳邻域展开。默认逐节点按邻接索引读取（文件/分段日志存储），图数据库存储可覆盖为每层一次批量查询
+     */
+    default NeighborhoodResult expandNeighborhood(NeighborhoodQuery query) throws IOException {
+        return query.execute((objectType, ids, outgoing, incoming, fanOut) ->
+            NeighborhoodQuery.expandByLookup(this, ids, outgoing, incoming, fanOut));
+    }
+
+    /**
+     * 读取批量输入中的端点 ID，缺失时抛出 IOException
+     */
+    static String endpoint(Map<String, Object> link, String field) throws IOException {
+        Object value = link != null ? link.get(field) : null;
+        if (value == null || value.toString().isEmpty()) {
+            throw new IOException(field + " is required");
+        }
+        return value.toString();
+    }
+
+    /**
+     * 批量输入中除 id / source_id / target_id 以外的字段
+     */
+    static Map<String, Object> linkProperties(Map<String, Object> link) {
+        Map<String, Object> properties = new HashMap<>(link);
+        properties.remove("id");
+        properties.remove("source_id");
+        properties.remove("target_id");
+        return properties;
+    }
 }
@@ -0,0 +1,256 @@
+package com.mypalantir.repository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * 实例读穿缓存（按对象类型分区）
+ * 每个类型一个访问有序的 LRU 分区，条目数上限、TTL、负缓存 TTL 可按类型配置；
+ * 负缓存记录“实例不存在”，避免对不存在的 ID 反复查库。缓存值在读写时复制，调用方修改返回结果不会污染缓存。
+ */
+public class InstanceCache {
+
+    /**
+     * 单个类型的缓存配置
+     * @param maxEntries 条目数上限，0 表示该类型不缓存
+     * @param ttlMillis 命中条目的存活时间
+     * @param negativeTtlMillis 负缓存存活时间，0 表示不做负缓存
+     */
+    public record TypeConfig(int maxEntries, long ttlMillis, long negativeTtlMillis) {
+        public boolean enabled() {
+            return maxEntries > 0 && ttlMillis > 0;
+        }
+    }
+
+    /**
+     * 查询结果：命中（含负缓存命中）或未命中
+     */
+    public static final class Lookup {
+        private static final Lookup MISS = new Lookup(false, null);
+        private static final Lookup ABSENT = new Lookup(true, null);
+
+        private final boolean hit;
+        private final Map<String, Object> value;
+
+        private Lookup(boolean hit, Map<String, Object> value) {
+            this.hit = hit;
+            this.value = value;
+        }
+
+        public boolean isHit() {
+            return hit;
+        }
+
+        /** 负缓存命中：实例已确认不存在 */
+        public boolean isAbsent() {
+            return hit && value == null;
+        }
+
+        public Map<String, Object> getValue() {
+            return value;
+        }
+    }
+
+    private static final class Entry {
+        final Map<String, Object> value;
+        final long expiresAt;
+
+        Entry(Map<String, Object> value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Partition {
+        final TypeConfig config;
+        final LinkedHashMap<String, Entry> entries;
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong negativeHits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong evictions = new AtomicLong();
+        final AtomicLong invalidations = new AtomicLong();
+        /** 每次失效递增，读穿回填时比对，避免回源期间发生的写入被旧值覆盖 */
+        long generation;
+
+        Partition(TypeConfig config) {
+            this.config = config;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    if (size() > Partition.this.config.maxEntries()) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    private final Function<String, TypeConfig> configResolver;
+    private final LongSupplier clock;
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * @param configResolver 对象类型 -> 缓存配置
+     */
+    public InstanceCache(Function<String, TypeConfig> configResolver) {
+        this(configResolver, System::currentTimeMillis);
+    }
+
+    InstanceCache(Function<String, TypeConfig> configResolver, LongSupplier clock) {
+        this.configResolver = configResolver;
+        this.clock = clock;
+    }
+
+    private Partition partition(String objectType) {
+        return partitions.computeIfAbsent(objectType, type -> new Partition(configResolver.apply(type)));
+    }
+
+    /**
+     * 该类型是否启用缓存
+     */
+    public boolean isCached(String objectType) {
+        return partition(objectType).config.enabled();
+    }
+
+    public Lookup get(String objectType, String id) {
+        Partition partition = partition(objectType);
+        if (!partition.config.enabled()) {
+            return Lookup.MISS;
+        }
+        Entry entry;
+        synchronized (partition) {
+            entry = partition.entries.get(id);
+            if (entry != null && entry.expiresAt <= clock.getAsLong()) {
+                partition.entries.remove(id);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            partition.misses.incrementAndGet();
+            return Lookup.MISS;
+        }
+        if (entry.value == null) {
+            partition.negativeHits.incrementAndGet();
+            return Lookup.ABSENT;
+        }
+        partition.hits.incrementAndGet();
+        return new Lookup(true, new HashMap<>(entry.value));
+    }
+
+    /**
+     * 当前失效代数，回源前获取，回填时传给 {@link #put(String, String, Map, long)}
+     */
+    public long generation(String objectType) {
+        Partition partition = partition(objectType);
+        synchronized (partition) {
+            return partition.generation;
+        }
+    }
+
+    /**
+     * 回填缓存，value 为 null 时记录负缓存
+     * @param generation 回源前获取的失效代数，期间发生过失效则放弃回填
+     */
+    public void put(String objectType, String id, Map<String, Object> value, long generation) {
+        Partition partition = partition(objectType);
+        if (!partition.config.enabled()) {
+            return;
+        }
+        long ttl = value != null ? partition.config.ttlMillis() : partition.config.negativeTtlMillis();
+        if (ttl <= 0) {
+            return;
+        }
+        Entry entry = new Entry(value != null ? new HashMap<>(value) : null, clock.getAsLong() + ttl);
+        synchronized (partition) {
+            if (partition.generation == generation) {
+                partition.entries.put(id, entry);
+            }
+        }
+    }
+
+    public void invalidate(String objectType, String id) {
+        Partition partition = partitions.get(objectType);
+        if (partition == null) {
+            return;
+        }
+        synchronized (partition) {
+            partition.generation++;
+            if (partition.entries.remove(id) != null) {
+                partition.invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public void invalidateAll(String objectType, Collection<String> ids) {
+        Partition partition = partitions.get(objectType);
+        if (partition == null) {
+            return;
+        }
+        synchronized (partition) {
+            partition.generation++;
+            for (String id : ids) {
+                if (partition.entries.remove(id) != null) {
+                    partition.invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * 清空某个类型的全部缓存（同步表被整体重写等场景）
+     */
+    public void invalidateType(String objectType) {
+        Partition partition = partitions.get(objectType);
+        if (partition == null) {
+            return;
+        }
+        synchronized (partition) {
+            partition.generation++;
+            partition.invalidations.addAndGet(partition.entries.size());
+            partition.entries.clear();
+        }
+    }
+
+    public void clear() {
+        for (String objectType : partitions.keySet()) {
+            invalidateType(objectType);
+        }
+    }
+
+    /**
+     * 按类型的命中统计：hits / negative_hits / misses / hit_rate / evictions / invalidations / size
+     */
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new TreeMap<>();
+        for (Map.Entry<String, Partition> e : partitions.entrySet()) {
+            Partition partition = e.getValue();
+            if (!partition.config.enabled()) {
+                continue;
+            }
+            long hits = partition.hits.get();
+            long negativeHits = partition.negativeHits.get();
+            long misses = partition.misses.get();
+            long lookups = hits + negativeHits + misses;
+            int size;
+            synchronized (partition) {
+                size = partition.entries.size();
+            }
+            Map<String, Object> typeStats = new LinkedHashMap<>();
+            typeStats.put("hits", hits);
+            typeStats.put("negative_hits", negativeHits);
+            typeStats.put("misses", misses);
+            typeStats.put("hit_rate", lookups == 0 ? 0.0 : (double) (hits + negativeHits) / lookups);
+            typeStats.put("evictions", partition.evictions.get());
+            typeStats.put("invalidations", partition.invalidations.get());
+            typeStats.put("size", size);
+            typeStats.put("max_entries", partition.config.maxEntries());
+            stats.put(e.getKey(), typeStats);
+        }
+        return stats;
+    }
+}
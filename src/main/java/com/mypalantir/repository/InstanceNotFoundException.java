@@ -0,0 +1,18 @@
+package com.mypalantir.repository;
+
+import java.io.IOException;
+
+/**
+ * 实例不存在：存储层确认按 ID 查不到该实例时抛出
+ * 消息保持 "instance not found"，与按消息判断的既有调用方兼容；表不存在、SQL 失败等其他错误不使用此异常
+ */
+public class InstanceNotFoundException extends IOException {
+
+    public InstanceNotFoundException() {
+        super("instance not found");
+    }
+
+    public InstanceNotFoundException(Throwable cause) {
+        super("instance not found", cause);
+    }
+}
@@ -85,13 +85,54 @@ public class InstanceStorage implements IInstanceStorage {
         }
     }
 
+    /**
+     * 批量按 id 合并：已存在的实例合并属性，不存在的新建；整批持有一次写锁
+     */
+    @Override
+    public int batchMergeInstances(String objectType, List<Map<String, Object>> rows) throws IOException {
+        if (rows == null || rows.isEmpty()) {
+            return 0;
+        }
+        lock.writeLock().lock();
+        try {
+            Files.createDirectories(Paths.get(pathManager.getInstanceDir(objectType)));
+            String now = Instant.now().toString();
+            int merged = 0;
+            for (Map<String, Object> row : rows) {
+                Object idValue = row.get("id");
+                if (idValue == null) {
+                    continue;
+                }
+                String id = String.valueOf(idValue);
+                File file = new File(pathManager.getInstancePath(objectType, id));
+                Map<String, Object> instance;
+                if (file.exists()) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> existing = objectMapper.readValue(file, Map.class);
+                    instance = existing;
+                } else {
+                    instance = new HashMap<>();
+                    instance.put("created_at", now);
+                }
+                instance.putAll(row);
+                instance.put("id", id);
+                instance.put("updated_at", now);
+                objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, instance);
+                merged++;
+            }
+            return merged;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     public Map<String, Object> getInstance(String objectType, String id) throws IOException {
         lock.readLock().lock();
         try {
             String filePath = pathManager.getInstancePath(objectType, id);
             File file = new File(filePath);
             if (!file.exists()) {
-                throw new IOException("instance not found");
+                throw new InstanceNotFoundException();
             }
             @SuppressWarnings("unchecked")
             Map<String, Object> result = objectMapper.readValue(file, Map.class);
@@ -108,7 +149,7 @@ public class InstanceStorage implements IInstanceStorage {
             String filePath = pathManager.getInstancePath(objectType, id);
             File file = new File(filePath);
             if (!file.exists()) {
-                throw new IOException("instance not found");
+                throw new InstanceNotFoundException();
             }
             @SuppressWarnings("unchecked")
             Map<String, Object> existing = objectMapper.readValue(file, Map.class);
@@ -130,7 +171,7 @@ public class InstanceStorage implements IInstanceStorage {
             String filePath = pathManager.getInstancePath(objectType, id);
             File file = new File(filePath);
             if (!file.exists()) {
-                throw new IOException("instance not found");
+                throw new InstanceNotFoundException();
             }
             Files.delete(Paths.get(filePath));
         } finally {
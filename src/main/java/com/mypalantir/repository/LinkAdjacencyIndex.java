@@ -0,0 +1,279 @@
+package com.mypalantir.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * 文件模式关系存储的邻接索引（单个关系类型）
+ * 内存中维护 source_id -> 关系ID、target_id -> 关系ID，持久化为追加写日志文件：
+ * 每行一条 JSON 数组，["+", id, source_id, target_id] 表示新增，["-", id] 表示删除。
+ * 加载时若索引条目数与关系文件数不一致（索引缺失、外部修改数据目录等），扫描关系文件重建。
+ */
+class LinkAdjacencyIndex {
+    private static final Logger logger = LoggerFactory.getLogger(LinkAdjacencyIndex.class);
+
+    private static final String OP_ADD = "+";
+    private static final String OP_REMOVE = "-";
+
+    private final Path indexFile;
+    private final ObjectMapper objectMapper;
+
+    /** 关系ID -> [source_id, target_id] */
+    private final Map<String, String[]> endpoints = new HashMap<>();
+    private final Map<String, Set<String>> bySource = new HashMap<>();
+    private final Map<String, Set<String>> byTarget = new HashMap<>();
+    private int journalLines;
+
+    private LinkAdjacencyIndex(Path indexFile, ObjectMapper objectMapper) {
+        this.indexFile = indexFile;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 加载关系类型的邻接索引，必要时从关系文件重建
+     * @param linkDir 关系文件目录
+     * @param indexFile 索引日志文件
+     */
+    static LinkAdjacencyIndex load(Path linkDir, Path indexFile, ObjectMapper objectMapper) throws IOException {
+        LinkAdjacencyIndex index = new LinkAdjacencyIndex(indexFile, objectMapper);
+        boolean replayed = Files.exists(indexFile) && index.replay();
+        int fileCount = countLinkFiles(linkDir);
+        if (!replayed || index.endpoints.size() != fileCount) {
+            if (replayed) {
+                logger.warn("[LinkAdjacencyIndex] Index {} has {} entries but {} link files exist, rebuilding",
+                    indexFile, index.endpoints.size(), fileCount);
+            }
+            index.rebuild(linkDir);
+            if (Files.isDirectory(linkDir) || Files.exists(indexFile)) {
+                index.writeSnapshot();
+            }
+        } else if (index.journalLines > 2 * Math.max(index.endpoints.size(), 1024)) {
+            // 删除较多时重写快照，避免日志无限增长
+            index.writeSnapshot();
+        }
+        return index;
+    }
+
+    private boolean replay() {
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                journalLines++;
+                List<?> entry = objectMapper.readValue(line, List.class);
+                String op = String.valueOf(entry.get(0));
+                String id = String.valueOf(entry.get(1));
+                if (OP_ADD.equals(op) && entry.size() >= 4) {
+                    addInMemory(id, stringOrNull(entry.get(2)), stringOrNull(entry.get(3)));
+                } else if (OP_REMOVE.equals(op)) {
+                    removeInMemory(id);
+                }
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // 残缺或损坏的索引直接丢弃，由调用方重建
+            logger.warn("[LinkAdjacencyIndex] Failed to replay {}: {}", indexFile, e.getMessage());
+            clear();
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rebuild(Path linkDir) throws IOException {
+        clear();
+        if (!Files.isDirectory(linkDir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.list(linkDir)) {
+            for (Path p : (Iterable<Path>) paths.filter(LinkAdjacencyIndex::isLinkFile)::iterator) {
+                try {
+                    Map<String, Object> link = objectMapper.readValue(p.toFile(), Map.class);
+                    String fileName = p.getFileName().toString();
+                    String id = fileName.substring(0, fileName.length() - ".json".length());
+                    addInMemory(id, stringOrNull(link.get("source_id")), stringOrNull(link.get("target_id")));
+                } catch (IOException e) {
+                    // 忽略读取失败的文件
+                }
+            }
+        }
+        logger.info("[LinkAdjacencyIndex] Rebuilt {} from {} link files", indexFile, endpoints.size());
+    }
+
+    private void writeSnapshot() throws IOException {
+        Files.createDirectories(indexFile.getParent());
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String[]> entry : endpoints.entrySet()) {
+                writer.write(objectMapper.writeValueAsString(
+                    Arrays.asList(OP_ADD, entry.getKey(), entry.getValue()[0], entry.getValue()[1])));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journalLines = endpoints.size();
+    }
+
+    void add(String id, String sourceId, String targetId) throws IOException {
+        addInMemory(id, sourceId, targetId);
+        append(Arrays.asList(OP_ADD, id, sourceId, targetId));
+    }
+
+    void remove(String id) throws IOException {
+        if (removeInMemory(id)) {
+            append(Arrays.asList(OP_REMOVE, id));
+        }
+    }
+
+    /**
+     * 批量新增，日志一次写入
+     * @param entries 每项为 [id, source_id, target_id]
+     */
+    void addAll(List<String[]> entries) throws IOException {
+        List<List<String>> lines = new ArrayList<>(entries.size());
+        for (String[] entry : entries) {
+            addInMemory(entry[0], entry[1], entry[2]);
+            lines.add(Arrays.asList(OP_ADD, entry[0], entry[1], entry[2]));
+        }
+        appendAll(lines);
+    }
+
+    /**
+     * 批量删除，日志一次写入
+     */
+    void removeAll(Collection<String> ids) throws IOException {
+        List<List<String>> lines = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            if (removeInMemory(id)) {
+                lines.add(Arrays.asList(OP_REMOVE, id));
+            }
+        }
+        appendAll(lines);
+    }
+
+    /**
+     * 查找 source_id -> target_id 的关系ID，不存在返回 null
+     */
+    String find(String sourceId, String targetId) {
+        Set<String> ids = bySource.get(sourceId);
+        if (ids == null) {
+            return null;
+        }
+        for (String id : ids) {
+            if (Objects.equals(endpoints.get(id)[1], targetId)) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    Set<String> getBySource(String sourceId) {
+        return idsOf(bySource, sourceId);
+    }
+
+    Set<String> getByTarget(String targetId) {
+        return idsOf(byTarget, targetId);
+    }
+
+    int size() {
+        return endpoints.size();
+    }
+
+    private void append(List<String> entry) throws IOException {
+        Files.createDirectories(indexFile.getParent());
+        String line = objectMapper.writeValueAsString(entry) + "\n";
+        Files.write(indexFile, line.getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        journalLines++;
+    }
+
+    private void appendAll(List<List<String>> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(indexFile.getParent());
+        StringBuilder sb = new StringBuilder();
+        for (List<String> entry : entries) {
+            sb.append(objectMapper.writeValueAsString(entry)).append('\n');
+        }
+        Files.write(indexFile, sb.toString().getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        journalLines += entries.size();
+    }
+
+    private void addInMemory(String id, String sourceId, String targetId) {
+        removeInMemory(id);
+        endpoints.put(id, new String[]{sourceId, targetId});
+        if (sourceId != null) {
+            bySource.computeIfAbsent(sourceId, k -> new LinkedHashSet<>()).add(id);
+        }
+        if (targetId != null) {
+            byTarget.computeIfAbsent(targetId, k -> new LinkedHashSet<>()).add(id);
+        }
+    }
+
+    private boolean removeInMemory(String id) {
+        String[] ends = endpoints.remove(id);
+        if (ends == null) {
+            return false;
+        }
+        removeFrom(bySource, ends[0], id);
+        removeFrom(byTarget, ends[1], id);
+        return true;
+    }
+
+    private void clear() {
+        endpoints.clear();
+        bySource.clear();
+        byTarget.clear();
+        journalLines = 0;
+    }
+
+    private static void removeFrom(Map<String, Set<String>> index, String key, String id) {
+        if (key == null) {
+            return;
+        }
+        Set<String> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static Set<String> idsOf(Map<String, Set<String>> index, String key) {
+        Set<String> ids = index.get(key);
+        return ids != null ? new LinkedHashSet<>(ids) : Collections.emptySet();
+    }
+
+    private static String stringOrNull(Object value) {
+        return value != null ? String.valueOf(value) : null;
+    }
+
+    private static boolean isLinkFile(Path p) {
+        return Files.isRegularFile(p) && p.toString().endsWith(".json");
+    }
+
+    private static int countLinkFiles(Path linkDir) throws IOException {
+        if (!Files.isDirectory(linkDir)) {
+            return 0;
+        }
+        try (Stream<Path> paths = Files.list(linkDir)) {
+            return (int) paths.filter(LinkAdjacencyIndex::isLinkFile).count();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.mypalantir.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 关系批量操作结果
+ * 结果按输入顺序对齐：ids 中第 i 项为第 i 条输入对应的关系ID（失败为 null），失败原因逐条记录
+ */
+public class LinkBatchResult {
+    private final List<String> ids;
+    private final List<Failure> failures = new ArrayList<>();
+
+    public LinkBatchResult(int size) {
+        this.ids = new ArrayList<>(Collections.nCopies(size, null));
+    }
+
+    public void addSuccess(int index, String id) {
+        ids.set(index, id);
+    }
+
+    public void addFailure(int index, String error) {
+        ids.set(index, null);
+        failures.add(new Failure(index, error));
+    }
+
+    /**
+     * 与输入顺序一致的关系ID，失败项为 null
+     */
+    public List<String> getIds() {
+        return ids;
+    }
+
+    public List<Failure> getFailures() {
+        return failures;
+    }
+
+    public int getSuccessCount() {
+        return ids.size() - failures.size();
+    }
+
+    public int getFailureCount() {
+        return failures.size();
+    }
+
+    /**
+     * 单条失败：输入下标 + 原因
+     */
+    public static class Failure {
+        private final int index;
+        private final String error;
+
+        public Failure(int index, String error) {
+            this.index = index;
+            this.error = error;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.mypalantir.repository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
@@ -11,17 +13,30 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Stream;
 
 public class LinkStorage implements ILinkStorage {
+    private static final Logger logger = LoggerFactory.getLogger(LinkStorage.class);
+
     private final PathManager pathManager;
     private final ObjectMapper objectMapper;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** 关系类型 -> 邻接索引，首次访问（或启动时 loadAdjacencyIndexes）加载 */
+    private final Map<String, LinkAdjacencyIndex> adjacencyIndexes = new ConcurrentHashMap<>();
+
+    /** 批量写入时每批条目数：每批获取一次写锁、追加一次邻接索引日志 */
+    private final int batchSize;
 
     public LinkStorage(PathManager pathManager) {
+        this(pathManager, 1000);
+    }
+
+    public LinkStorage(PathManager pathManager, int batchSize) {
         this.pathManager = pathManager;
+        this.batchSize = batchSize > 0 ? batchSize : 1000;
         this.objectMapper = new ObjectMapper();
         // 注册 Java 8 时间类型支持模块
         this.objectMapper.registerModule(new JavaTimeModule());
@@ -29,29 +44,45 @@ public class LinkStorage implements ILinkStorage {
         this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     }
 
+    /**
+     * 启动时加载关系类型的邻接索引（索引缺失或与关系文件不一致时重建）
+     */
+    public void loadAdjacencyIndexes(Collection<String> linkTypes) {
+        for (String linkType : linkTypes) {
+            try {
+                adjacencyIndex(linkType);
+            } catch (IOException e) {
+                logger.warn("[LinkStorage] Failed to load adjacency index for {}: {}", linkType, e.getMessage());
+            }
+        }
+    }
+
+    private LinkAdjacencyIndex adjacencyIndex(String linkType) throws IOException {
+        LinkAdjacencyIndex index = adjacencyIndexes.get(linkType);
+        if (index != null) {
+            return index;
+        }
+        synchronized (adjacencyIndexes) {
+            index = adjacencyIndexes.get(linkType);
+            if (index == null) {
+                index = LinkAdjacencyIndex.load(Paths.get(pathManager.getLinkDir(linkType)),
+                    Paths.get(pathManager.getLinkIndexPath(linkType)), objectMapper);
+                adjacencyIndexes.put(linkType, index);
+            }
+            return index;
+        }
+    }
+
     public String createLink(String linkType, String sourceID, String targetID, Map<String, Object> properties) throws IOException {
         lock.writeLock().lock();
         try {
-            String id = UUID.randomUUID().toString();
-            String now = Instant.now().toString();
-
-            Map<String, Object> link = new HashMap<>();
-            link.put("id", id);
-            link.put("source_id", sourceID);
-            link.put("target_id", targetID);
-            link.put("created_at", now);
-            link.put("updated_at", now);
-            if (properties != null) {
-                link.putAll(properties);
-            }
-
             // 确保目录存在
             String dir = pathManager.getLinkDir(linkType);
             Files.createDirectories(Paths.get(dir));
 
             // 写入文件
-            String filePath = pathManager.getLinkPath(linkType, id);
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(filePath), link);
+            String id = writeNewLink(linkType, sourceID, targetID, properties);
+            adjacencyIndex(linkType).add(id, sourceID, targetID);
 
             return id;
         } finally {
@@ -110,11 +141,142 @@ public class LinkStorage implements ILinkStorage {
                 throw new IOException("link not found");
             }
             Files.delete(Paths.get(filePath));
+            adjacencyIndex(linkType).remove(id);
         } finally {
             lock.writeLock().unlock();
         }
     }
 
+    /**
+     * 批量创建关系：每批一次写锁，关系文件逐个写入，邻接索引日志整批追加
+     */
+    @Override
+    public LinkBatchResult createLinksBatch(String linkType, List<Map<String, Object>> links) throws IOException {
+        LinkBatchResult result = new LinkBatchResult(links.size());
+        Files.createDirectories(Paths.get(pathManager.getLinkDir(linkType)));
+        for (int start = 0; start < links.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, links.size());
+            lock.writeLock().lock();
+            try {
+                List<String[]> indexEntries = new ArrayList<>();
+                for (int i = start; i < end; i++) {
+                    Map<String, Object> input = links.get(i);
+                    try {
+                        String sourceID = ILinkStorage.endpoint(input, "source_id");
+                        String targetID = ILinkStorage.endpoint(input, "target_id");
+                        String id = writeNewLink(linkType, sourceID, targetID, ILinkStorage.linkProperties(input));
+                        indexEntries.add(new String[]{id, sourceID, targetID});
+                        result.addSuccess(i, id);
+                    } catch (IOException e) {
+                        result.addFailure(i, e.getMessage());
+                    }
+                }
+                adjacencyIndex(linkType).addAll(indexEntries);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量 upsert：通过邻接索引定位 source_id -> target_id 的已有关系，存在则合并属性，否则创建
+     */
+    @Override
+    public LinkBatchResult upsertLinksBatch(String linkType, List<Map<String, Object>> links) throws IOException {
+        LinkBatchResult result = new LinkBatchResult(links.size());
+        Files.createDirectories(Paths.get(pathManager.getLinkDir(linkType)));
+        for (int start = 0; start < links.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, links.size());
+            lock.writeLock().lock();
+            try {
+                LinkAdjacencyIndex index = adjacencyIndex(linkType);
+                List<String[]> indexEntries = new ArrayList<>();
+                Map<String, String> createdInBatch = new HashMap<>();
+                for (int i = start; i < end; i++) {
+                    Map<String, Object> input = links.get(i);
+                    try {
+                        String sourceID = ILinkStorage.endpoint(input, "source_id");
+                        String targetID = ILinkStorage.endpoint(input, "target_id");
+                        Map<String, Object> properties = ILinkStorage.linkProperties(input);
+                        String existingId = index.find(sourceID, targetID);
+                        if (existingId == null) {
+                            existingId = createdInBatch.get(sourceID + "\u0000" + targetID);
+                        }
+                        File file = existingId != null ? new File(pathManager.getLinkPath(linkType, existingId)) : null;
+                        if (file != null && file.exists()) {
+                            @SuppressWarnings("unchecked")
+                            Map<String, Object> existing = objectMapper.readValue(file, Map.class);
+                            existing.putAll(properties);
+                            existing.put("updated_at", Instant.now().toString());
+                            objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, existing);
+                            result.addSuccess(i, existingId);
+                        } else {
+                            String id = writeNewLink(linkType, sourceID, targetID, properties);
+                            indexEntries.add(new String[]{id, sourceID, targetID});
+                            createdInBatch.put(sourceID + "\u0000" + targetID, id);
+                            result.addSuccess(i, id);
+                        }
+                    } catch (IOException e) {
+                        result.addFailure(i, e.getMessage());
+                    }
+                }
+                index.addAll(indexEntries);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public LinkBatchResult deleteLinksBatch(String linkType, List<String> ids) throws IOException {
+        LinkBatchResult result = new LinkBatchResult(ids.size());
+        for (int start = 0; start < ids.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, ids.size());
+            lock.writeLock().lock();
+            try {
+                List<String> deleted = new ArrayList<>();
+                for (int i = start; i < end; i++) {
+                    String id = ids.get(i);
+                    try {
+                        if (!Files.deleteIfExists(Paths.get(pathManager.getLinkPath(linkType, id)))) {
+                            throw new IOException("link not found");
+                        }
+                        deleted.add(id);
+                        result.addSuccess(i, id);
+                    } catch (IOException e) {
+                        result.addFailure(i, e.getMessage());
+                    }
+                }
+                adjacencyIndex(linkType).removeAll(deleted);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 写入新关系文件（调用方持有写锁，目录已存在）
+     */
+    private String writeNewLink(String linkType, String sourceID, String targetID, Map<String, Object> properties) throws IOException {
+        String id = UUID.randomUUID().toString();
+        String now = Instant.now().toString();
+
+        Map<String, Object> link = new HashMap<>();
+        link.put("id", id);
+        link.put("source_id", sourceID);
+        link.put("target_id", targetID);
+        link.put("created_at", now);
+        link.put("updated_at", now);
+        if (properties != null) {
+            link.putAll(properties);
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(pathManager.getLinkPath(linkType, id)), link);
+        return id;
+    }
+
     public List<Map<String, Object>> getLinksBySource(String linkType, String sourceID) throws IOException {
         return getLinksByField(linkType, "source_id", sourceID);
     }
@@ -123,30 +285,30 @@ public class LinkStorage implements ILinkStorage {
         return getLinksByField(linkType, "target_id", targetID);
     }
 
+    /**
+     * 通过邻接索引定位关系ID，只读取命中的关系文件
+     */
     private List<Map<String, Object>> getLinksByField(String linkType, String field, String value) throws IOException {
         lock.readLock().lock();
         try {
-            String dir = pathManager.getLinkDir(linkType);
-            Path dirPath = Paths.get(dir);
-            if (!Files.exists(dirPath)) {
-                return List.of();
-            }
+            LinkAdjacencyIndex index = adjacencyIndex(linkType);
+            Set<String> ids = "source_id".equals(field) ? index.getBySource(value) : index.getByTarget(value);
 
-            List<Map<String, Object>> results = new ArrayList<>();
-            try (Stream<Path> paths = Files.walk(dirPath)) {
-                paths.filter(Files::isRegularFile)
-                    .filter(p -> p.toString().endsWith(".json"))
-                    .forEach(p -> {
-                        try {
-                            @SuppressWarnings("unchecked")
-                            Map<String, Object> link = objectMapper.readValue(p.toFile(), Map.class);
-                            if (value.equals(link.get(field))) {
-                                results.add(link);
-                            }
-                        } catch (IOException e) {
-                            // 忽略读取失败的文件
-                        }
-                    });
+            List<Map<String, Object>> results = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                File file = new File(pathManager.getLinkPath(linkType, id));
+                if (!file.exists()) {
+                    continue;
+                }
+                try {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> link = objectMapper.readValue(file, Map.class);
+                    if (value.equals(link.get(field))) {
+                        results.add(link);
+                    }
+                } catch (IOException e) {
+                    // 忽略读取失败的文件
+                }
             }
 
             return results;
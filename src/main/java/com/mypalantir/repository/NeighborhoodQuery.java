@@ -0,0 +1,191 @@
+package com.mypalantir.repository;
+
+import com.mypalantir.meta.LinkType;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * K 跳邻域展开请求：从根实例出发按层（BFS）展开，每层对整个前沿批量查询一次，
+ * 按深度、关系类型、方向、单节点扇出上限和节点预算裁剪，结果为去重后的子图。
+ * 各关系存储只需实现"批量展开一层前沿"（{@link FrontierExpander}），裁剪与去重在此统一完成。
+ */
+public class NeighborhoodQuery {
+    public static final String DIRECTION_OUTGOING = "outgoing";
+    public static final String DIRECTION_INCOMING = "incoming";
+    public static final String DIRECTION_BOTH = "both";
+
+    /**
+     * 前沿中的一条关系
+     */
+    public static final class Hop {
+        final String fromId;
+        final String linkType;
+        final String linkId;
+        final String sourceId;
+        final String targetId;
+        /** true 表示前沿节点为关系源端 */
+        final boolean outgoing;
+
+        public Hop(String fromId, String linkType, String linkId, String sourceId, String targetId, boolean outgoing) {
+            this.fromId = fromId;
+            this.linkType = linkType;
+            this.linkId = linkId;
+            this.sourceId = sourceId;
+            this.targetId = targetId;
+            this.outgoing = outgoing;
+        }
+    }
+
+    /**
+     * 展开同一对象类型的一批前沿节点
+     */
+    public interface FrontierExpander {
+        /**
+         * @param outgoing 该类型作为源端的关系类型
+         * @param incoming 该类型作为目标端的关系类型
+         * @param fanOut 每个节点每个方向最多返回的关系数
+         */
+        List<Hop> expand(String objectType, List<String> ids, List<String> outgoing, List<String> incoming, int fanOut)
+            throws IOException;
+    }
+
+    private final String objectType;
+    private final String id;
+    private final int depth;
+    private final String direction;
+    private final int fanOut;
+    private final int maxNodes;
+    private final Map<String, LinkType> linkTypes = new LinkedHashMap<>();
+
+    /**
+     * @param linkTypes 参与展开的关系类型定义（需含 source_type / target_type）
+     */
+    public NeighborhoodQuery(String objectType, String id, int depth, List<LinkType> linkTypes,
+                             String direction, int fanOut, int maxNodes) {
+        this.objectType = objectType;
+        this.id = id;
+        this.depth = depth;
+        this.direction = direction == null || direction.isEmpty() ? DIRECTION_BOTH : direction;
+        this.fanOut = fanOut;
+        this.maxNodes = maxNodes;
+        for (LinkType linkType : linkTypes) {
+            if (linkType.getSourceType() != null && linkType.getTargetType() != null) {
+                this.linkTypes.put(linkType.getName(), linkType);
+            }
+        }
+    }
+
+    public String getObjectType() { return objectType; }
+    public String getId() { return id; }
+    public int getDepth() { return depth; }
+    public String getDirection() { return direction; }
+    public int getFanOut() { return fanOut; }
+    public int getMaxNodes() { return maxNodes; }
+
+    /**
+     * 按层展开：每层每个对象类型调用一次 expander；节点数达到预算后不再加入新节点（truncated）
+     */
+    public NeighborhoodResult execute(FrontierExpander expander) throws IOException {
+        NeighborhoodResult result = new NeighborhoodResult(objectType, id);
+        result.addNode(objectType, id, 0);
+        Map<String, List<String>> frontier = new LinkedHashMap<>();
+        frontier.put(objectType, new ArrayList<>(List.of(id)));
+
+        for (int level = 1; level <= depth && !frontier.isEmpty(); level++) {
+            Map<String, List<String>> next = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> entry : frontier.entrySet()) {
+                List<String> outgoing = new ArrayList<>();
+                List<String> incoming = new ArrayList<>();
+                for (LinkType linkType : linkTypes.values()) {
+                    if (!DIRECTION_INCOMING.equals(direction) && entry.getKey().equals(linkType.getSourceType())) {
+                        outgoing.add(linkType.getName());
+                    }
+                    if (!DIRECTION_OUTGOING.equals(direction) && entry.getKey().equals(linkType.getTargetType())) {
+                        incoming.add(linkType.getName());
+                    }
+                }
+                if (outgoing.isEmpty() && incoming.isEmpty()) {
+                    continue;
+                }
+                // fanOut 按节点、方向分别计数：出边与入边各自最多 fanOut 条
+                Map<String, Integer> perNodeDirection = new HashMap<>();
+                for (Hop hop : expander.expand(entry.getKey(), entry.getValue(), outgoing, incoming, fanOut)) {
+                    LinkType linkType = linkTypes.get(hop.linkType);
+                    if (linkType == null) {
+                        continue;
+                    }
+                    if (perNodeDirection.merge((hop.outgoing ? ">" : "<") + hop.fromId, 1, Integer::sum) > fanOut) {
+                        result.fanOutCapped++;
+                        continue;
+                    }
+                    String neighborType = hop.outgoing ? linkType.getTargetType() : linkType.getSourceType();
+                    String neighborId = hop.outgoing ? hop.targetId : hop.sourceId;
+                    if (neighborId == null) {
+                        continue;
+                    }
+                    if (!result.hasNode(neighborType, neighborId)) {
+                        if (result.nodeCount() >= maxNodes) {
+                            result.truncated = true;
+                            continue;
+                        }
+                        result.addNode(neighborType, neighborId, level);
+                        next.computeIfAbsent(neighborType, k -> new ArrayList<>()).add(neighborId);
+                    }
+                    result.addEdge(hop.linkType, hop.linkId, hop.sourceId, hop.targetId);
+                }
+            }
+            if (!next.isEmpty()) {
+                result.depthReached = level;
+            }
+            frontier = next;
+        }
+        return result;
+    }
+
+    /**
+     * 逐节点读取关系的展开方式（文件/分段日志存储，按内存邻接索引查找）
+     */
+    static List<Hop> expandByLookup(ILinkStorage storage, List<String> ids, List<String> outgoing,
+                                    List<String> incoming, int fanOut) throws IOException {
+        List<Hop> hops = new ArrayList<>();
+        for (String nodeId : ids) {
+            int count = 0;
+            for (String linkType : outgoing) {
+                for (Map<String, Object> link : storage.getLinksBySource(linkType, nodeId)) {
+                    if (count++ >= fanOut) {
+                        break;
+                    }
+                    hops.add(new Hop(nodeId, linkType, stringValue(link.get("id")), nodeId,
+                        stringValue(link.get("target_id")), true));
+                }
+            }
+            count = 0;
+            for (String linkType : incoming) {
+                for (Map<String, Object> link : storage.getLinksByTarget(linkType, nodeId)) {
+                    if (count++ >= fanOut) {
+                        break;
+                    }
+                    hops.add(new Hop(nodeId, linkType, stringValue(link.get("id")), stringValue(link.get("source_id")),
+                        nodeId, false));
+                }
+            }
+        }
+        return hops;
+    }
+
+    /**
+     * 图数据库的一层前沿查询：UNWIND 整个前沿，按节点收集关系并截取前 fanOut 条
+     */
+    static String frontierCypher(String label, Collection<String> relTypes, boolean outgoing) {
+        String rel = "[r:" + String.join("|", relTypes) + "]";
+        String pattern = outgoing ? "-" + rel + "->" : "<-" + rel + "-";
+        return "UNWIND $ids AS nid MATCH (n:" + label + " {id: nid})" + pattern + "(m) "
+            + "WITH nid, collect({id: r.id, type: type(r), other: m.id})[..$fanOut] AS rels "
+            + "UNWIND rels AS rel RETURN nid, rel.id AS id, rel.type AS type, rel.other AS other";
+    }
+
+    static String stringValue(Object value) {
+        return value != null ? value.toString() : null;
+    }
+}
@@ -0,0 +1,82 @@
+package com.mypalantir.repository;
+
+import java.util.*;
+
+/**
+ * K 跳邻域子图：节点按 对象类型+id 去重（记录首次到达的深度），关系按 关系类型+关系id 去重
+ */
+public class NeighborhoodResult {
+    private final String rootType;
+    private final String rootId;
+    private final Map<String, Map<String, Object>> nodes = new LinkedHashMap<>();
+    private final Map<String, Map<String, Object>> edges = new LinkedHashMap<>();
+    int depthReached;
+    boolean truncated;
+    int fanOutCapped;
+
+    public NeighborhoodResult(String rootType, String rootId) {
+        this.rootType = rootType;
+        this.rootId = rootId;
+    }
+
+    void addNode(String objectType, String id, int depth) {
+        Map<String, Object> node = new LinkedHashMap<>();
+        node.put("id", id);
+        node.put("object_type", objectType);
+        node.put("depth", depth);
+        nodes.put(objectType + ":" + id, node);
+    }
+
+    boolean hasNode(String objectType, String id) {
+        return nodes.containsKey(objectType + ":" + id);
+    }
+
+    int nodeCount() {
+        return nodes.size();
+    }
+
+    void addEdge(String linkType, String linkId, String sourceId, String targetId) {
+        String key = linkType + ":" + (linkId != null ? linkId : sourceId + "->" + targetId);
+        if (edges.containsKey(key)) {
+            return;
+        }
+        Map<String, Object> edge = new LinkedHashMap<>();
+        edge.put("id", linkId);
+        edge.put("link_type", linkType);
+        edge.put("source_id", sourceId);
+        edge.put("target_id", targetId);
+        edges.put(key, edge);
+    }
+
+    /**
+     * 节点（id、object_type、depth），调用方可追加实例属性
+     */
+    public Collection<Map<String, Object>> getNodes() {
+        return nodes.values();
+    }
+
+    public Collection<Map<String, Object>> getEdges() {
+        return edges.values();
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public int getDepthReached() {
+        return depthReached;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("root", Map.of("object_type", rootType, "id", rootId));
+        map.put("nodes", new ArrayList<>(nodes.values()));
+        map.put("edges", new ArrayList<>(edges.values()));
+        map.put("node_count", nodes.size());
+        map.put("edge_count", edges.size());
+        map.put("depth_reached", depthReached);
+        map.put("truncated", truncated);
+        map.put("fan_out_capped", fanOutCapped);
+        return map;
+    }
+}
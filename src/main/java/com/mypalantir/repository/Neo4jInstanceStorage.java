@@ -20,6 +20,9 @@ import java.util.stream.Collectors;
 public class Neo4jInstanceStorage implements IInstanceStorage {
     private static final Logger logger = LoggerFactory.getLogger(Neo4jInstanceStorage.class);
 
+    /** 批量查询时单条 UNWIND 语句的最大 ID 数 */
+    private static final int BATCH_FETCH_SIZE = 1000;
+
     @Autowired(required = false)
     private Driver neo4jDriver;
 
@@ -153,7 +156,7 @@ public class Neo4jInstanceStorage implements IInstanceStorage {
             
             var result = session.run(cypher, Values.parameters("id", id));
             if (!result.hasNext()) {
-                throw new IOException("instance not found");
+                throw new InstanceNotFoundException();
             }
 
             var node = result.single().get("n").asNode();
@@ -164,7 +167,7 @@ public class Neo4jInstanceStorage implements IInstanceStorage {
             
             return instance;
         } catch (org.neo4j.driver.exceptions.NoSuchRecordException e) {
-            throw new IOException("instance not found", e);
+            throw new InstanceNotFoundException(e);
         } catch (IOException e) {
             // 如果是 "instance not found"，直接抛出，不记录错误日志
             if ("instance not found".equals(e.getMessage())) {
@@ -210,7 +213,7 @@ public class Neo4jInstanceStorage implements IInstanceStorage {
             var result = session.run(cypher, params);
             if (result.consume().counters().nodesCreated() == 0 && 
                 result.consume().counters().propertiesSet() == 0) {
-                throw new IOException("instance not found");
+                throw new InstanceNotFoundException();
             }
             
             logger.debug("Updated instance {} of type {} in Neo4j", id, objectType);
@@ -600,6 +603,9 @@ public class Neo4jInstanceStorage implements IInstanceStorage {
         }
     }
 
+    /**
+     * 批量获取实例：按块执行 UNWIND $ids MATCH，每块一次往返，不存在的 ID 对应 null
+     */
     @Override
     public Map<String, Map<String, Object>> getInstancesBatch(String objectType, List<String> ids) throws IOException {
         if (neo4jDriver == null) {
@@ -607,16 +613,19 @@ public class Neo4jInstanceStorage implements IInstanceStorage {
         }
 
         Map<String, Map<String, Object>> result = new HashMap<>();
-        
-        for (String id : ids) {
-            try {
-                Map<String, Object> instance = getInstance(objectType, id);
-                result.put(id, instance);
-            } catch (IOException e) {
-                result.put(id, null);
-            }
+        if (ids == null || ids.isEmpty()) {
+            return result;
         }
-        
+
+        verifyAndRetryConnection();
+
+        try (Session session = neo4jDriver.session()) {
+            fetchBatch(session, objectType, ids, result);
+        } catch (Exception e) {
+            logger.error("Failed to batch get instances from Neo4j: {}", e.getMessage(), e);
+            throw new IOException("Failed to batch get instances: " + e.getMessage(), e);
+        }
+
         return result;
     }
 
@@ -627,21 +636,54 @@ public class Neo4jInstanceStorage implements IInstanceStorage {
         }
 
         Map<String, Map<String, Object>> result = new HashMap<>();
-        
-        for (Map.Entry<String, List<String>> entry : typeIdMap.entrySet()) {
-            String objectType = entry.getKey();
-            List<String> ids = entry.getValue();
-            
-            Map<String, Map<String, Object>> instances = getInstancesBatch(objectType, ids);
-            for (Map.Entry<String, Map<String, Object>> instanceEntry : instances.entrySet()) {
-                String key = objectType + ":" + instanceEntry.getKey();
-                result.put(key, instanceEntry.getValue());
+        if (typeIdMap == null || typeIdMap.isEmpty()) {
+            return result;
+        }
+
+        verifyAndRetryConnection();
+
+        // 标签不能参数化，每个类型一条语句，共用一个 session
+        try (Session session = neo4jDriver.session()) {
+            for (Map.Entry<String, List<String>> entry : typeIdMap.entrySet()) {
+                String objectType = entry.getKey();
+                Map<String, Map<String, Object>> instances = new HashMap<>();
+                fetchBatch(session, objectType, entry.getValue(), instances);
+                for (Map.Entry<String, Map<String, Object>> instanceEntry : instances.entrySet()) {
+                    String key = objectType + ":" + instanceEntry.getKey();
+                    result.put(key, instanceEntry.getValue());
+                }
             }
+        } catch (Exception e) {
+            logger.error("Failed to batch get instances from Neo4j: {}", e.getMessage(), e);
+            throw new IOException("Failed to batch get instances: " + e.getMessage(), e);
         }
-        
+
         return result;
     }
 
+    private void fetchBatch(Session session, String objectType, List<String> ids, Map<String, Map<String, Object>> result) {
+        if (ids == null) {
+            return;
+        }
+        for (String id : ids) {
+            result.put(id, null);
+        }
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        distinctIds.remove(null);
+
+        String label = normalizeLabel(objectType);
+        String cypher = "UNWIND $ids AS id MATCH (n:" + label + " {id: id}) RETURN id, n";
+        for (int start = 0; start < distinctIds.size(); start += BATCH_FETCH_SIZE) {
+            List<String> chunk = distinctIds.subList(start, Math.min(start + BATCH_FETCH_SIZE, distinctIds.size()));
+            var records = session.run(cypher, Values.parameters("ids", chunk)).list();
+            for (var record : records) {
+                Map<String, Object> instance = new HashMap<>();
+                record.get("n").asNode().asMap().forEach((key, value) -> instance.put(key, convertValue(value)));
+                result.put(record.get("id").asString(), instance);
+            }
+        }
+    }
+
     /**
      * 验证并重试连接（如果连接失败）
      */
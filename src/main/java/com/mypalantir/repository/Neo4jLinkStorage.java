@@ -37,6 +37,10 @@ public class Neo4jLinkStorage implements ILinkStorage {
     @Autowired(required = false)
     private Environment environment; // 用于读取Neo4j字段配置
 
+    /** 批量关系操作单条 UNWIND 语句的最大条目数 */
+    @org.springframework.beans.factory.annotation.Value("${storage.link.batch-size:1000}")
+    private int batchSize = 1000;
+
     /**
      * 验证并重试连接（如果连接失败）
      */
@@ -433,6 +437,241 @@ public class Neo4jLinkStorage implements ILinkStorage {
         }
     }
 
+    /**
+     * 批量创建关系：先批量补齐缺失的端点节点，再按块执行 UNWIND ... CREATE
+     */
+    @Override
+    public LinkBatchResult createLinksBatch(String linkType, List<Map<String, Object>> links) throws IOException {
+        return writeLinksBatch(linkType, links, false);
+    }
+
+    /**
+     * 批量 upsert 关系：按 source -> target 端点 MERGE，已存在时合并属性
+     */
+    @Override
+    public LinkBatchResult upsertLinksBatch(String linkType, List<Map<String, Object>> links) throws IOException {
+        return writeLinksBatch(linkType, links, true);
+    }
+
+    @Override
+    public LinkBatchResult deleteLinksBatch(String linkType, List<String> ids) throws IOException {
+        if (neo4jDriver == null) {
+            throw new IOException("Neo4j driver is not initialized");
+        }
+        LinkBatchResult result = new LinkBatchResult(ids.size());
+        String relType = normalizeRelType(linkType);
+        String cypher = "UNWIND $ids AS id MATCH ()-[r:" + relType + " {id: id}]->() DELETE r RETURN DISTINCT id";
+
+        try (Session session = neo4jDriver.session()) {
+            for (int start = 0; start < ids.size(); start += batchSize) {
+                int end = Math.min(start + batchSize, ids.size());
+                List<String> chunk = ids.subList(start, end);
+                try {
+                    Set<String> deleted = new HashSet<>();
+                    for (var record : session.run(cypher, Values.parameters("ids", chunk)).list()) {
+                        deleted.add(record.get("id").asString());
+                    }
+                    for (int i = start; i < end; i++) {
+                        if (deleted.contains(ids.get(i))) {
+                            result.addSuccess(i, ids.get(i));
+                        } else {
+                            result.addFailure(i, "link not found");
+                        }
+                    }
+                } catch (Exception e) {
+                    logger.error("[Neo4jLinkStorage] Failed to delete link batch [{}, {}) of type {}: {}", start, end, linkType, e.getMessage());
+                    for (int i = start; i < end; i++) {
+                        result.addFailure(i, e.getMessage());
+                    }
+                }
+            }
+        }
+        logger.debug("[Neo4jLinkStorage] Batch deleted {}/{} links of type {}", result.getSuccessCount(), ids.size(), linkType);
+        return result;
+    }
+
+    /**
+     * 每层前沿（按对象类型、方向）一次批量 Cypher，整个展开复用同一会话
+     */
+    @Override
+    public NeighborhoodResult expandNeighborhood(NeighborhoodQuery query) throws IOException {
+        if (neo4jDriver == null) {
+            throw new IOException("Neo4j driver is not initialized");
+        }
+        try (Session session = neo4jDriver.session()) {
+            return query.execute((objectType, ids, outgoing, incoming, fanOut) -> {
+                List<NeighborhoodQuery.Hop> hops = new ArrayList<>();
+                String label = normalizeLabel(objectType);
+                expandFrontier(session, label, ids, outgoing, true, fanOut, hops);
+                expandFrontier(session, label, ids, incoming, false, fanOut, hops);
+                return hops;
+            });
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("[Neo4jLinkStorage] Failed to expand neighborhood of {}/{}: {}", query.getObjectType(), query.getId(), e.getMessage());
+            throw new IOException("Failed to expand neighborhood: " + e.getMessage(), e);
+        }
+    }
+
+    private void expandFrontier(Session session, String label, List<String> ids, List<String> linkTypes,
+                                boolean outgoing, int fanOut, List<NeighborhoodQuery.Hop> hops) {
+        if (linkTypes.isEmpty()) {
+            return;
+        }
+        Map<String, String> byRelType = new HashMap<>();
+        for (String linkType : linkTypes) {
+            byRelType.put(normalizeRelType(linkType), linkType);
+        }
+        String cypher = NeighborhoodQuery.frontierCypher(label, byRelType.keySet(), outgoing);
+        for (var record : session.run(cypher, Values.parameters("ids", ids, "fanOut", fanOut)).list()) {
+            String nodeId = record.get("nid").asString();
+            String other = record.get("other").isNull() ? null : record.get("other").asObject().toString();
+            String linkId = record.get("id").isNull() ? null : record.get("id").asObject().toString();
+            String linkType = byRelType.get(record.get("type").asString());
+            hops.add(new NeighborhoodQuery.Hop(nodeId, linkType, linkId,
+                outgoing ? nodeId : other, outgoing ? other : nodeId, outgoing));
+        }
+    }
+
+    private LinkBatchResult writeLinksBatch(String linkType, List<Map<String, Object>> links, boolean upsert) throws IOException {
+        if (neo4jDriver == null) {
+            throw new IOException("Neo4j driver is not initialized");
+        }
+
+        // 批量写入需要端点类型确定标签；未定义的关系类型退回逐条写入（逐条按节点查询标签）
+        LinkType linkTypeDef = null;
+        if (loader != null) {
+            try {
+                linkTypeDef = loader.getLinkType(linkType);
+            } catch (Loader.NotFoundException e) {
+                logger.warn("[Neo4jLinkStorage] LinkType '{}' not found, falling back to per-link writes", linkType);
+            }
+        }
+        if (linkTypeDef == null) {
+            return upsert ? ILinkStorage.super.upsertLinksBatch(linkType, links)
+                          : ILinkStorage.super.createLinksBatch(linkType, links);
+        }
+
+        String sourceType = linkTypeDef.getSourceType();
+        String targetType = linkTypeDef.getTargetType();
+        String sourceLabel = normalizeLabel(sourceType);
+        String targetLabel = normalizeLabel(targetType);
+        String relType = normalizeRelType(linkType);
+        LinkBatchResult result = new LinkBatchResult(links.size());
+
+        // 1. 校验输入，组装参数行
+        String now = Instant.now().toString();
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < links.size(); i++) {
+            Map<String, Object> link = links.get(i);
+            try {
+                Map<String, Object> props = ILinkStorage.linkProperties(link);
+                props.put("updated_at", now);
+                Map<String, Object> row = new HashMap<>();
+                row.put("idx", i);
+                row.put("source_id", ILinkStorage.endpoint(link, "source_id"));
+                row.put("target_id", ILinkStorage.endpoint(link, "target_id"));
+                row.put("id", UUID.randomUUID().toString());
+                row.put("now", now);
+                row.put("props", props);
+                rows.add(row);
+            } catch (IOException e) {
+                result.addFailure(i, e.getMessage());
+            }
+        }
+
+        String cypher = "UNWIND $rows AS row " +
+            "MATCH (source:" + sourceLabel + " {id: row.source_id}) " +
+            "MATCH (target:" + targetLabel + " {id: row.target_id}) " +
+            (upsert
+                ? "MERGE (source)-[r:" + relType + "]->(target) " +
+                  "ON CREATE SET r.id = row.id, r.created_at = row.now "
+                : "CREATE (source)-[r:" + relType + " {id: row.id, created_at: row.now}]->(target) ") +
+            "SET r += row.props " +
+            "RETURN row.idx AS idx, r.id AS id";
+
+        try (Session session = neo4jDriver.session()) {
+            for (int start = 0; start < rows.size(); start += batchSize) {
+                List<Map<String, Object>> chunk = rows.subList(start, Math.min(start + batchSize, rows.size()));
+
+                // 2. 批量确认端点节点存在，缺失的从同步表补建；补建失败的端点对应的关系记为失败
+                // 3. 一条 UNWIND 语句写入整块；任一步失败只影响本块，块内每条关系单独记录错误
+                List<Map<String, Object>> writable = new ArrayList<>(chunk.size());
+                try {
+                    Map<String, String> missingSources = ensureNodesExist(session, chunk, "source_id", sourceType, sourceLabel);
+                    Map<String, String> missingTargets = ensureNodesExist(session, chunk, "target_id", targetType, targetLabel);
+                    for (Map<String, Object> row : chunk) {
+                        int idx = (Integer) row.get("idx");
+                        String sourceError = missingSources.get((String) row.get("source_id"));
+                        String targetError = missingTargets.get((String) row.get("target_id"));
+                        if (sourceError != null || targetError != null) {
+                            result.addFailure(idx, sourceError != null ? sourceError : targetError);
+                        } else {
+                            writable.add(row);
+                        }
+                    }
+                    if (writable.isEmpty()) {
+                        continue;
+                    }
+
+                    Set<Integer> written = new HashSet<>();
+                    for (var record : session.run(cypher, Values.parameters("rows", writable)).list()) {
+                        int idx = record.get("idx").asInt();
+                        written.add(idx);
+                        result.addSuccess(idx, record.get("id").asString());
+                    }
+                    for (Map<String, Object> row : writable) {
+                        int idx = (Integer) row.get("idx");
+                        if (!written.contains(idx)) {
+                            result.addFailure(idx, "source or target node not found");
+                        }
+                    }
+                } catch (Exception e) {
+                    // 端点检查失败时整块未写入；写入语句失败时已筛出的关系均未写入
+                    List<Map<String, Object>> failedRows = writable.isEmpty() ? chunk : writable;
+                    logger.error("[Neo4jLinkStorage] Failed to write link batch of type {} ({} links): {}", linkType, failedRows.size(), e.getMessage());
+                    for (Map<String, Object> row : failedRows) {
+                        result.addFailure((Integer) row.get("idx"), e.getMessage());
+                    }
+                }
+            }
+        }
+        logger.info("[Neo4jLinkStorage] Batch {} {} links of type {}: succeeded={}, failed={}",
+            upsert ? "upserted" : "created", links.size(), linkType, result.getSuccessCount(), result.getFailureCount());
+        return result;
+    }
+
+    /**
+     * 批量检查端点节点是否存在，缺失的逐个从同步表补建
+     * @return 补建失败的节点ID -> 错误信息
+     */
+    private Map<String, String> ensureNodesExist(Session session, List<Map<String, Object>> rows, String field,
+                                                 String objectType, String label) {
+        Set<String> nodeIds = new LinkedHashSet<>();
+        for (Map<String, Object> row : rows) {
+            nodeIds.add((String) row.get(field));
+        }
+        Set<String> existing = new HashSet<>();
+        String cypher = "UNWIND $ids AS id MATCH (n:" + label + " {id: id}) RETURN DISTINCT id";
+        for (var record : session.run(cypher, Values.parameters("ids", new ArrayList<>(nodeIds))).list()) {
+            existing.add(record.get("id").asString());
+        }
+
+        Map<String, String> failed = new HashMap<>();
+        for (String nodeId : nodeIds) {
+            if (existing.contains(nodeId)) {
+                continue;
+            }
+            try {
+                ensureNodeExists(session, nodeId, objectType, label);
+            } catch (Exception e) {
+                failed.put(nodeId, e.getMessage() != null ? e.getMessage() : e.toString());
+            }
+        }
+        return failed;
+    }
+
     /**
      * 规范化关系类型名称（Neo4j 关系类型不能包含特殊字符）
      */
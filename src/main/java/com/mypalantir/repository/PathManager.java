@@ -35,6 +35,44 @@ public class PathManager {
         return String.format("%s/%s/links/%s", dataRoot, this.namespace, normalizedType);
     }
 
+    /**
+     * 文件模式关系存储的邻接索引文件（source_id/target_id -> 关系ID）
+     */
+    public String getLinkIndexPath(String linkType) {
+        String normalizedType = normalizeName(linkType);
+        return String.format("%s/%s/link_index/%s.adj", dataRoot, this.namespace, normalizedType);
+    }
+
+    /**
+     * 分段日志存储（storage.type=segment）中对象类型的段文件目录
+     */
+    public String getSegmentDir(String objectType) {
+        String normalizedType = normalizeName(objectType);
+        return String.format("%s/%s/segments/%s", dataRoot, this.namespace, normalizedType);
+    }
+
+    /**
+     * 分段日志存储（storage.type=segment）中关系类型的段文件目录
+     */
+    public String getLinkSegmentDir(String linkType) {
+        String normalizedType = normalizeName(linkType);
+        return String.format("%s/%s/segments/links/%s", dataRoot, this.namespace, normalizedType);
+    }
+
+    /**
+     * 批量导入任务目录（任务状态 JSON 与上传文件暂存）
+     */
+    public String getImportJobDir() {
+        return String.format("%s/%s/import_jobs", dataRoot, this.namespace);
+    }
+
+    /**
+     * 映射增量抽取检查点目录（水位线 JSON 与行哈希文件）
+     */
+    public String getExtractCheckpointDir() {
+        return String.format("%s/%s/extract_checkpoints", dataRoot, this.namespace);
+    }
+
     private String normalizeNamespace(String namespace) {
         if (namespace == null || namespace.isEmpty()) {
             return "default";
@@ -1,5 +1,6 @@
 package com.mypalantir.repository;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mypalantir.meta.Loader;
 import com.mypalantir.meta.ObjectType;
 import com.mypalantir.service.DatabaseMetadataService;
@@ -8,7 +9,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
@@ -17,6 +20,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.*;
 
 /**
@@ -26,6 +30,7 @@ import java.util.*;
 @Component
 public class RelationalInstanceStorage implements IInstanceStorage {
     private static final Logger logger = LoggerFactory.getLogger(RelationalInstanceStorage.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
 
     @Autowired
     private Loader loader;
@@ -45,6 +50,73 @@ public class RelationalInstanceStorage implements IInstanceStorage {
     @Value("${storage.composite-key.separator:_}")
     private String compositeKeySeparator;
 
+    /** 批量查询单条 SQL 的最大 ID 数，实际值还受数据库绑定参数上限约束（见 maxBindParameters） */
+    @Value("${storage.relational.batch-fetch-size:1000}")
+    private int batchFetchSize = 1000;
+
+    /** 同步表目录缓存开关：关闭时每次查询重新读取表元数据（外部直接修改同步表结构时使用） */
+    @Value("${storage.relational.catalog-cache.enabled:true}")
+    private boolean catalogCacheEnabled = true;
+
+    /** 不存在的同步表在目录缓存中的保留时间（毫秒），期间直接判定表不存在 */
+    @Value("${storage.relational.catalog-cache.missing-ttl-ms:30000}")
+    private long catalogMissingTtlMs = 30000;
+
+    private volatile SyncTableCatalog syncTableCatalog;
+
+    /**
+     * 启动后预热同步表目录：一次性读取默认数据库的表、列、主键元数据（仅 hybrid 模式使用关系型存储）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpSyncTableCatalog() {
+        if (!catalogCacheEnabled || !"hybrid".equalsIgnoreCase(environment.getProperty("storage.type", "file"))) {
+            return;
+        }
+        try (Connection conn = databaseMetadataService.getConnectionForDatabase(null)) {
+            int count = catalog().loadAll(conn);
+            logger.info("[RelationalInstanceStorage] Sync table catalog loaded: {} tables", count);
+        } catch (Exception e) {
+            logger.warn("[RelationalInstanceStorage] Failed to warm up sync table catalog, tables will be resolved on demand: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 同步表被创建或结构变更后调用，下次查询重新读取该表元数据
+     */
+    public void refreshSyncTable(String tableName) {
+        if (tableName != null) {
+            catalog().invalidate(tableName);
+        }
+    }
+
+    private SyncTableCatalog catalog() {
+        SyncTableCatalog catalog = syncTableCatalog;
+        if (catalog == null) {
+            synchronized (this) {
+                if (syncTableCatalog == null) {
+                    syncTableCatalog = new SyncTableCatalog(catalogMissingTtlMs);
+                }
+                catalog = syncTableCatalog;
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * 从目录缓存解析同步表（表名大小写不敏感），表不存在时抛出 SQLException，由调用方按空结果处理
+     */
+    private SyncTableCatalog.TableInfo resolveSyncTable(Connection conn, String tableName) throws SQLException {
+        SyncTableCatalog catalog = catalog();
+        if (!catalogCacheEnabled) {
+            catalog.invalidate(tableName);
+        }
+        SyncTableCatalog.TableInfo table = catalog.get(conn, tableName);
+        if (table == null) {
+            throw new SQLException("sync table not found: " + tableName);
+        }
+        return table;
+    }
+
     @Override
     public String createInstance(String objectType, Map<String, Object> data) throws IOException {
         // 关系型数据库的创建应该通过ETL或直接SQL插入
@@ -75,7 +147,7 @@ public class RelationalInstanceStorage implements IInstanceStorage {
 
     @Override
     public Map<String, Object> getInstance(String objectType, String id) throws IOException {
-        logger.info("[RelationalInstanceStorage] getInstance called for objectType: {}, id: {}", objectType, id);
+        logger.debug("[RelationalInstanceStorage] getInstance called for objectType: {}, id: {}", objectType, id);
         
         // 系统对象类型不应该通过 RelationalInstanceStorage 查询，避免递归调用
         if (isSystemObjectType(objectType)) {
@@ -88,7 +160,7 @@ public class RelationalInstanceStorage implements IInstanceStorage {
             
             // 1. 优先尝试查询同步表（表名 = 模型名，在默认数据库中）
             String syncTableName = objectType.toLowerCase();
-            logger.info("[RelationalInstanceStorage] Attempting to query sync table: tableName = {}, databaseId = null (using default database from application.properties: host={}, port={}, name={})", 
+            logger.debug("[RelationalInstanceStorage] Attempting to query sync table: tableName = {}, databaseId = null (using default database from application.properties: host={}, port={}, name={})", 
                 syncTableName,
                 environment.getProperty("db.host", "localhost"),
                 environment.getProperty("db.port", "3306"),
@@ -96,18 +168,18 @@ public class RelationalInstanceStorage implements IInstanceStorage {
             
             try {
                 Map<String, Object> instance = getInstanceFromSyncTable(syncTableName, id, objectTypeDef);
-                logger.info("[RelationalInstanceStorage] Successfully retrieved instance from sync table {}", syncTableName);
+                logger.debug("[RelationalInstanceStorage] Successfully retrieved instance from sync table {}", syncTableName);
                 return instance;
             } catch (SQLException e) {
                 // 如果查询失败（表不存在或其他SQL错误），直接返回空结果，不查询映射表
                 // 同步表不存在或查询结果为空是正常情况，不需要回退到映射表
-                logger.info("[RelationalInstanceStorage] Failed to query sync table {} for instance {} (table may not exist or query returned empty): {}, returning empty result", 
+                logger.debug("[RelationalInstanceStorage] Failed to query sync table {} for instance {} (table may not exist or query returned empty): {}, returning empty result", 
                     syncTableName, id, e.getMessage());
                 throw new IOException("instance not found");
             } catch (IOException e) {
                 // getInstanceFromSyncTable 内部可能抛出 IOException（instance not found）
                 // 这也是正常情况，直接抛出
-                logger.info("[RelationalInstanceStorage] Instance not found in sync table {}: {}", syncTableName, e.getMessage());
+                logger.debug("[RelationalInstanceStorage] Instance not found in sync table {}: {}", syncTableName, e.getMessage());
                 throw e;
             } catch (Exception e) {
                 // 其他异常也直接返回空结果，不查询映射表
@@ -146,11 +218,11 @@ public class RelationalInstanceStorage implements IInstanceStorage {
      */
     @Override
     public InstanceStorage.ListResult listInstances(String objectType, int offset, int limit) throws IOException {
-        logger.info("[RelationalInstanceStorage] ========== INSTANCE STORAGE QUERY (同步数据查询) ==========");
-        logger.info("[RelationalInstanceStorage] Query mode: INSTANCE_STORAGE (同步表查询)");
-        logger.info("[RelationalInstanceStorage] listInstances called for objectType: {}, offset: {}, limit: {}", 
+        logger.debug("[RelationalInstanceStorage] ========== INSTANCE STORAGE QUERY (同步数据查询) ==========");
+        logger.debug("[RelationalInstanceStorage] Query mode: INSTANCE_STORAGE (同步表查询)");
+        logger.debug("[RelationalInstanceStorage] listInstances called for objectType: {}, offset: {}, limit: {}", 
             objectType, offset, limit);
-        logger.info("[RelationalInstanceStorage] Data source: SYNC TABLE (同步表) only, NOT querying ORIGINAL TABLE (原始表)");
+        logger.debug("[RelationalInstanceStorage] Data source: SYNC TABLE (同步表) only, NOT querying ORIGINAL TABLE (原始表)");
         
         try {
             ObjectType objectTypeDef = loader.getObjectType(objectType);
@@ -159,7 +231,7 @@ public class RelationalInstanceStorage implements IInstanceStorage {
             // 不查询原始表（原始表查询应该通过 MappedDataService.queryMappedInstances() 进行）
             // 使用 null 表示默认数据库，会从 application.properties 的 db.* 配置读取
             String syncTableName = objectType.toLowerCase();
-            logger.info("[RelationalInstanceStorage] Querying SYNC TABLE: tableName = {}, databaseId = null (using default database from application.properties: host={}, port={}, name={})", 
+            logger.debug("[RelationalInstanceStorage] Querying SYNC TABLE: tableName = {}, databaseId = null (using default database from application.properties: host={}, port={}, name={})", 
                 syncTableName,
                 environment.getProperty("db.host", "localhost"),
                 environment.getProperty("db.port", "3306"),
@@ -169,38 +241,38 @@ public class RelationalInstanceStorage implements IInstanceStorage {
             // 不查询原始表（映射表）
             try {
                 InstanceStorage.ListResult result = listInstancesFromSyncTable(syncTableName, objectTypeDef, offset, limit);
-                logger.info("[RelationalInstanceStorage] Successfully queried SYNC TABLE {}, returned {} instances (items: {}, total: {})", 
+                logger.debug("[RelationalInstanceStorage] Successfully queried SYNC TABLE {}, returned {} instances (items: {}, total: {})", 
                     syncTableName, result.getItems().size(), result.getItems().size(), result.getTotal());
                 
                 // 详细分析返回的数据
                 if (result.getItems().isEmpty()) {
-                    logger.info("[RelationalInstanceStorage] DATA SOURCE ANALYSIS: SYNC TABLE {} is EMPTY for objectType={} - no data in sync table", 
+                    logger.debug("[RelationalInstanceStorage] DATA SOURCE ANALYSIS: SYNC TABLE {} is EMPTY for objectType={} - no data in sync table", 
                         syncTableName, objectType);
                 } else {
-                    logger.info("[RelationalInstanceStorage] DATA SOURCE ANALYSIS: SYNC TABLE {} has {} instances for objectType={} - data EXISTS in sync table, first instance id={}", 
+                    logger.debug("[RelationalInstanceStorage] DATA SOURCE ANALYSIS: SYNC TABLE {} has {} instances for objectType={} - data EXISTS in sync table, first instance id={}", 
                         syncTableName, result.getItems().size(), objectType,
                         result.getItems().isEmpty() ? "N/A" : result.getItems().get(0).get("id"));
                 }
-                logger.info("[RelationalInstanceStorage] ========== INSTANCE STORAGE QUERY END ==========");
+                logger.debug("[RelationalInstanceStorage] ========== INSTANCE STORAGE QUERY END ==========");
                 
                 return result;
             } catch (SQLException e) {
                 // 如果查询失败（表不存在或其他SQL错误），直接返回空结果
                 // 严格查询界限：不查询原始表（映射表）
                 // 同步表不存在或查询结果为空是正常情况，不需要回退到原始表
-                logger.info("[RelationalInstanceStorage] Failed to query SYNC TABLE {} (table may not exist or query returned empty): {}, returning empty result", 
+                logger.debug("[RelationalInstanceStorage] Failed to query SYNC TABLE {} (table may not exist or query returned empty): {}, returning empty result", 
                     syncTableName, e.getMessage());
-                logger.info("[RelationalInstanceStorage] DATA SOURCE ANALYSIS: SYNC TABLE {} does NOT EXIST or query failed for objectType={}, returning EMPTY result, NOT querying ORIGINAL TABLE", 
+                logger.debug("[RelationalInstanceStorage] DATA SOURCE ANALYSIS: SYNC TABLE {} does NOT EXIST or query failed for objectType={}, returning EMPTY result, NOT querying ORIGINAL TABLE", 
                     syncTableName, objectType);
-                logger.info("[RelationalInstanceStorage] ========== INSTANCE STORAGE QUERY END ==========");
+                logger.debug("[RelationalInstanceStorage] ========== INSTANCE STORAGE QUERY END ==========");
                 return new InstanceStorage.ListResult(new ArrayList<>(), 0);
             } catch (Exception e) {
                 // 其他异常也直接返回空结果，不查询原始表
                 logger.warn("[RelationalInstanceStorage] Error querying SYNC TABLE {}: {}, returning empty result", 
                     syncTableName, e.getMessage());
-                logger.info("[RelationalInstanceStorage] DATA SOURCE ANALYSIS: Exception querying SYNC TABLE {} for objectType={}, returning EMPTY result, NOT querying ORIGINAL TABLE", 
+                logger.debug("[RelationalInstanceStorage] DATA SOURCE ANALYSIS: Exception querying SYNC TABLE {} for objectType={}, returning EMPTY result, NOT querying ORIGINAL TABLE", 
                     syncTableName, objectType);
-                logger.info("[RelationalInstanceStorage] ========== INSTANCE STORAGE QUERY END ==========");
+                logger.debug("[RelationalInstanceStorage] ========== INSTANCE STORAGE QUERY END ==========");
                 return new InstanceStorage.ListResult(new ArrayList<>(), 0);
             }
         } catch (Loader.NotFoundException e) {
@@ -215,14 +287,14 @@ public class RelationalInstanceStorage implements IInstanceStorage {
 
     @Override
     public List<Map<String, Object>> searchInstances(String objectType, Map<String, Object> filters) throws IOException {
-        logger.info("[RelationalInstanceStorage] searchInstances called for objectType: {}, filters: {}", objectType, filters);
+        logger.debug("[RelationalInstanceStorage] searchInstances called for objectType: {}, filters: {}", objectType, filters);
         
         try {
             ObjectType objectTypeDef = loader.getObjectType(objectType);
             
             // 1. 优先尝试查询同步表（表名 = 模型名，在默认数据库中）
             String syncTableName = objectType.toLowerCase();
-            logger.info("[RelationalInstanceStorage] Attempting to search sync table: tableName = {}, databaseId = null (using default database from application.properties: host={}, port={}, name={})", 
+            logger.debug("[RelationalInstanceStorage] Attempting to search sync table: tableName = {}, databaseId = null (using default database from application.properties: host={}, port={}, name={})", 
                 syncTableName,
                 environment.getProperty("db.host", "localhost"),
                 environment.getProperty("db.port", "3306"),
@@ -230,13 +302,13 @@ public class RelationalInstanceStorage implements IInstanceStorage {
             
             try {
                 List<Map<String, Object>> results = searchInstancesFromSyncTable(syncTableName, objectTypeDef, filters);
-                logger.info("[RelationalInstanceStorage] Successfully searched sync table {}, returned {} instances", 
+                logger.debug("[RelationalInstanceStorage] Successfully searched sync table {}, returned {} instances", 
                     syncTableName, results.size());
                 return results;
             } catch (SQLException e) {
                 // 如果查询失败（表不存在或其他SQL错误），直接返回空结果，不查询映射表
                 // 同步表不存在或查询结果为空是正常情况，不需要回退到映射表
-                logger.info("[RelationalInstanceStorage] Failed to search sync table {} (table may not exist or query returned empty): {}, returning empty result", 
+                logger.debug("[RelationalInstanceStorage] Failed to search sync table {} (table may not exist or query returned empty): {}, returning empty result", 
                     syncTableName, e.getMessage());
                 return new ArrayList<>();
             } catch (Exception e) {
@@ -254,19 +326,42 @@ public class RelationalInstanceStorage implements IInstanceStorage {
         }
     }
 
+    /**
+     * 批量获取实例：按 ID 分块执行 WHERE pk IN (...)，每块一次查询。
+     * 确认不存在的 ID 对应 null；同步表不存在或查询失败的块中的 ID 不包含在结果中，调用方不应把它们当作不存在缓存
+     */
     @Override
     public Map<String, Map<String, Object>> getInstancesBatch(String objectType, List<String> ids) throws IOException {
         Map<String, Map<String, Object>> result = new HashMap<>();
-        
-        for (String id : ids) {
-            try {
-                Map<String, Object> instance = getInstance(objectType, id);
-                result.put(id, instance);
-            } catch (IOException e) {
-                result.put(id, null);
-            }
+        if (ids == null || ids.isEmpty()) {
+            return result;
+        }
+
+        if (isSystemObjectType(objectType)) {
+            logger.warn("[RelationalInstanceStorage] System object type {} should not be queried through RelationalInstanceStorage, returning empty batch result", objectType);
+            ids.forEach(id -> result.put(id, null));
+            return result;
+        }
+
+        ObjectType objectTypeDef;
+        try {
+            objectTypeDef = loader.getObjectType(objectType);
+        } catch (Loader.NotFoundException e) {
+            logger.error("[RelationalInstanceStorage] Object type not found: {}", objectType);
+            ids.forEach(id -> result.put(id, null));
+            return result;
+        }
+
+        String syncTableName = objectType.toLowerCase();
+        try {
+            result.putAll(getInstancesFromSyncTable(syncTableName, new LinkedHashSet<>(ids), objectTypeDef));
+        } catch (SQLException e) {
+            // 同步表不存在或无法查询：与单条查询一致，不作为“实例不存在”返回
+            logger.debug("[RelationalInstanceStorage] Failed to batch query sync table {} ({} ids): {}, returning empty result",
+                syncTableName, ids.size(), e.getMessage());
+        } catch (IOException e) {
+            logger.debug("[RelationalInstanceStorage] Batch query on sync table {} returned no instances: {}", syncTableName, e.getMessage());
         }
-        
         return result;
     }
 
@@ -288,6 +383,131 @@ public class RelationalInstanceStorage implements IInstanceStorage {
         return result;
     }
 
+    /**
+     * 批量 MERGE 到同步表（表名 = 模型名小写，默认数据库）：按主键 upsert，已存在的行只覆盖本次给出的列
+     * Doris 不支持 ON DUPLICATE KEY UPDATE，直接 INSERT 由唯一键模型覆盖；同步表中不存在的字段忽略。
+     * 列组合相同的行合成一批语句，整批在一个事务中写入，失败时全部回滚。
+     * @return 写入的行数（含 id 的行）
+     */
+    @Override
+    public int batchMergeInstances(String objectType, List<Map<String, Object>> rows) throws IOException {
+        if (rows == null || rows.isEmpty()) {
+            return 0;
+        }
+        String tableName = objectType.toLowerCase();
+        boolean isDoris = "doris".equals(databaseMetadataService.getDatabaseType(null));
+        Connection conn = null;
+        SyncTableCatalog.TableInfo table = null;
+        try {
+            conn = databaseMetadataService.getConnectionForDatabase(null); // 默认数据库
+            table = resolveSyncTable(conn, tableName);
+            String updatedAtColumn = table.column("updated_at");
+            // 列组合（按列名排序）-> 各行取值
+            Map<List<String>, List<Object[]>> groups = new LinkedHashMap<>();
+            int written = 0;
+            for (Map<String, Object> row : rows) {
+                if (row.get("id") == null) {
+                    continue;
+                }
+                TreeMap<String, Object> values = new TreeMap<>();
+                for (Map.Entry<String, Object> entry : row.entrySet()) {
+                    String column = table.column(entry.getKey());
+                    if (column != null && !column.equals(updatedAtColumn)) {
+                        values.put(column, toJdbcValue(entry.getValue()));
+                    }
+                }
+                if (values.isEmpty()) {
+                    continue;
+                }
+                groups.computeIfAbsent(new ArrayList<>(values.keySet()), k -> new ArrayList<>())
+                    .add(values.values().toArray());
+                written++;
+            }
+            if (groups.isEmpty()) {
+                return 0;
+            }
+
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                for (Map.Entry<List<String>, List<Object[]>> group : groups.entrySet()) {
+                    String sql = buildMergeSql(table, group.getKey(), updatedAtColumn, isDoris);
+                    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                        for (Object[] values : group.getValue()) {
+                            for (int i = 0; i < values.length; i++) {
+                                pstmt.setObject(i + 1, values[i]);
+                            }
+                            pstmt.addBatch();
+                        }
+                        pstmt.executeBatch();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+            logger.debug("[RelationalInstanceStorage] Batch merged {} rows into sync table {}", written, tableName);
+            return written;
+        } catch (SQLException e) {
+            invalidateOnFailure(table);
+            throw new IOException("Failed to batch merge into sync table " + tableName + ": " + e.getMessage(), e);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    logger.warn("[RelationalInstanceStorage] Failed to close connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static String buildMergeSql(SyncTableCatalog.TableInfo table, List<String> columns,
+                                        String updatedAtColumn, boolean isDoris) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table.qualifiedName).append(" (");
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+                placeholders.append(", ");
+            }
+            sql.append("`").append(columns.get(i)).append("`");
+            placeholders.append("?");
+        }
+        sql.append(") VALUES (").append(placeholders).append(")");
+        if (isDoris) {
+            return sql.toString();
+        }
+        List<String> assignments = new ArrayList<>();
+        for (String column : columns) {
+            if (!table.primaryKeyColumns.contains(column)) {
+                assignments.add("`" + column + "` = VALUES(`" + column + "`)");
+            }
+        }
+        if (updatedAtColumn != null) {
+            assignments.add("`" + updatedAtColumn + "` = CURRENT_TIMESTAMP");
+        }
+        if (assignments.isEmpty()) {
+            // 只有主键列：重复行保持不变
+            String first = columns.get(0);
+            assignments.add("`" + first + "` = `" + first + "`");
+        }
+        return sql.append(" ON DUPLICATE KEY UPDATE ").append(String.join(", ", assignments)).toString();
+    }
+
+    /**
+     * 嵌套对象/数组以 JSON 文本写入
+     */
+    private static Object toJdbcValue(Object value) throws IOException {
+        if (value instanceof Map || value instanceof Collection) {
+            return JSON.writeValueAsString(value);
+        }
+        return value;
+    }
+
 
     /**
      * 从同步表获取单个实例
@@ -295,65 +515,32 @@ public class RelationalInstanceStorage implements IInstanceStorage {
      */
     private Map<String, Object> getInstanceFromSyncTable(String tableName, String id, ObjectType objectTypeDef) 
             throws IOException, SQLException {
-        logger.info("[RelationalInstanceStorage] getInstanceFromSyncTable: tableName = {}, id = {}, databaseId = null (default database)", 
+        logger.debug("[RelationalInstanceStorage] getInstanceFromSyncTable: tableName = {}, id = {}, databaseId = null (default database)", 
             tableName, id);
         
         Connection conn = databaseMetadataService.getConnectionForDatabase(null); // 默认数据库
-        logger.info("[RelationalInstanceStorage] Got connection to default database for sync table query");
+        logger.debug("[RelationalInstanceStorage] Got connection to default database for sync table query");
         
+        SyncTableCatalog.TableInfo table = null;
         try {
-            // 动态获取主键列名（支持多个主键列）
-            List<String> primaryKeyColumns = getPrimaryKeyColumns(objectTypeDef);
-            String primaryKeyColumn = null; // 用于 WHERE 子句（单个主键列时）
-            
-            if (primaryKeyColumns == null || primaryKeyColumns.isEmpty()) {
-                // 优先从表结构获取全部主键列（支持联合主键），再回退到单列或 id
-                List<String> fromTable = databaseMetadataService.getPrimaryKeyColumns(null, tableName);
-                if (fromTable != null && !fromTable.isEmpty()) {
-                    primaryKeyColumns = fromTable;
-                    primaryKeyColumn = primaryKeyColumns.get(0);
-                    logger.info("[RelationalInstanceStorage] Using primary key column(s) from table metadata: {}", primaryKeyColumns);
-                } else {
-                    primaryKeyColumn = getPrimaryKeyColumnFromTable(null, tableName);
-                    if (primaryKeyColumn == null || primaryKeyColumn.isEmpty()) {
-                        primaryKeyColumn = "id";
-                        primaryKeyColumns = java.util.Arrays.asList("id");
-                        logger.warn("[RelationalInstanceStorage] Could not determine primary key column for table {}, using default 'id'", tableName);
-                    } else {
-                        primaryKeyColumns = java.util.Arrays.asList(primaryKeyColumn);
-                        logger.info("[RelationalInstanceStorage] Using primary key column from table metadata: {}", primaryKeyColumn);
-                    }
-                }
-            } else {
-                primaryKeyColumn = primaryKeyColumns.get(0); // 用于单主键 WHERE 子句
-                logger.info("[RelationalInstanceStorage] Using primary key columns from mapping: {}", primaryKeyColumns);
-            }
-            
-            // 同步表列名使用属性名（property name），mapping 中的 primary_key_columns 是源表列名，需转换为同步表列名
-            Map<String, String> columnToPropertyMap = buildColumnToPropertyMap(objectTypeDef, tableName);
-            List<String> syncTablePkColumns = resolveSyncTablePrimaryKeyColumns(primaryKeyColumns, columnToPropertyMap);
-            String syncTablePkColumnSingle = syncTablePkColumns.isEmpty() ? primaryKeyColumn : syncTablePkColumns.get(0);
+            table = resolveSyncTable(conn, tableName);
+            SyncTableKey key = resolveSyncTableKey(table, objectTypeDef);
             
             // 构建 WHERE 子句：支持单主键与联合主键（联合主键时 id 格式为 "val1_sep_val2"，按 mapping.primary_key_columns 拆解成多参数）
             String sql;
             List<String> idPartsForWhere = null;
-            if (syncTablePkColumns != null && syncTablePkColumns.size() > 1) {
-                String sep = (compositeKeySeparator != null && !compositeKeySeparator.isEmpty()) ? compositeKeySeparator : "_";
-                idPartsForWhere = new ArrayList<>(java.util.Arrays.asList(id.split(java.util.regex.Pattern.quote(sep), -1)));
-                if (idPartsForWhere.size() != syncTablePkColumns.size()) {
+            if (key.isComposite()) {
+                idPartsForWhere = splitCompositeId(id);
+                if (idPartsForWhere.size() != key.syncTablePkColumns.size()) {
                     logger.warn("[RelationalInstanceStorage] Composite key mismatch: id has {} parts (split by '{}'), but primary key has {} columns for table {}",
-                        idPartsForWhere.size(), sep, syncTablePkColumns.size(), tableName);
-                    throw new IOException("instance not found");
-                }
-                List<String> whereClauses = new ArrayList<>();
-                for (int i = 0; i < syncTablePkColumns.size(); i++) {
-                    whereClauses.add("`" + syncTablePkColumns.get(i) + "` = ?");
+                        idPartsForWhere.size(), compositeSeparator(), key.syncTablePkColumns.size(), tableName);
+                    throw new InstanceNotFoundException();
                 }
-                sql = "SELECT * FROM `" + tableName + "` WHERE " + String.join(" AND ", whereClauses);
-                logger.info("[RelationalInstanceStorage] Executing SQL (composite key): {} with id parts = {}", sql, idPartsForWhere);
+                sql = "SELECT * FROM " + table.qualifiedName + " WHERE " + compositeKeyPredicate(key.syncTablePkColumns);
+                logger.debug("[RelationalInstanceStorage] Executing SQL (composite key): {} with id parts = {}", sql, idPartsForWhere);
             } else {
-                sql = "SELECT * FROM `" + tableName + "` WHERE `" + syncTablePkColumnSingle + "` = ?";
-                logger.info("[RelationalInstanceStorage] Executing SQL: {} with parameter id = {}", sql, id);
+                sql = "SELECT * FROM " + table.qualifiedName + " WHERE `" + key.singlePkColumn() + "` = ?";
+                logger.debug("[RelationalInstanceStorage] Executing SQL: {} with parameter id = {}", sql, id);
             }
             
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -367,171 +554,529 @@ public class RelationalInstanceStorage implements IInstanceStorage {
                 }
                 try (ResultSet rs = pstmt.executeQuery()) {
                     if (rs.next()) {
-                        Map<String, Object> instance = new HashMap<>();
-                        // 获取所有列
-                        java.sql.ResultSetMetaData metaData = rs.getMetaData();
-                        int columnCount = metaData.getColumnCount();
-                        logger.info("[RelationalInstanceStorage] ResultSet has {} columns", columnCount);
-                        
-                        for (int i = 1; i <= columnCount; i++) {
-                            String columnName = metaData.getColumnName(i);
-                            Object value = rs.getObject(i);
-                            
-                            // 将列名转换为属性名
-                            String propertyName = convertColumnNameToPropertyName(columnName, columnToPropertyMap, objectTypeDef);
-                            instance.put(propertyName, value);
-                        }
-                        
-                        // 如果 ID 不存在或为空，优先通过 mapping 设置的主键作为 ID
-                        Object idValue = instance.get("id");
-                        if (idValue == null || (idValue instanceof String && ((String) idValue).trim().isEmpty())) {
-                            String idFromPrimaryKey = getIdFromPrimaryKey(instance, primaryKeyColumns, columnToPropertyMap);
-                            if (idFromPrimaryKey != null && !idFromPrimaryKey.trim().isEmpty()) {
-                                instance.put("id", idFromPrimaryKey);
-                                logger.info("[RelationalInstanceStorage] ID not found in instance data, using primary key columns '{}' value as ID: {}", 
-                                    primaryKeyColumns, idFromPrimaryKey);
-                            } else {
-                                // 如果主键列也无法获取ID，使用查询参数中的id
-                                instance.put("id", id);
-                                logger.info("[RelationalInstanceStorage] ID not found in instance data and primary key, using query parameter as ID: {}", id);
-                            }
-                        }
-                        
-                        logger.info("[RelationalInstanceStorage] Successfully retrieved instance from sync table {} with id {}", 
+                        Map<String, Object> instance = readSyncTableRow(rs, key, objectTypeDef, id);
+                        logger.debug("[RelationalInstanceStorage] Successfully retrieved instance from sync table {} with id {}", 
                             tableName, instance.get("id"));
                         return instance;
                     } else {
                         logger.warn("[RelationalInstanceStorage] Instance not found in sync table {} with id {}", tableName, id);
-                        throw new IOException("instance not found");
+                        throw new InstanceNotFoundException();
                     }
                 }
             }
+        } catch (SQLException e) {
+            invalidateOnFailure(table);
+            throw e;
         } finally {
             if (conn != null && !conn.isClosed()) {
                 conn.close();
-                logger.info("[RelationalInstanceStorage] Closed connection to default database");
+                logger.debug("[RelationalInstanceStorage] Closed connection to default database");
             }
         }
     }
-    
+
     /**
-     * 从数据库表元数据中获取主键列名
-     * @param databaseId 数据库ID（null表示默认数据库）
-     * @param tableName 表名
-     * @return 主键列名，如果不存在或无法获取则返回 null
+     * 从同步表批量获取实例：一个连接，按分块大小执行 WHERE pk IN (...)（联合主键为 (a = ? AND b = ?) OR ...）
+     * @return 请求 ID -> 实例；查询成功但未找到的 ID 对应 null，查询失败的块中的 ID 不包含在结果中
+     * @throws SQLException 同步表不存在或无法获取连接
      */
-    private String getPrimaryKeyColumnFromTable(String databaseId, String tableName) {
+    private Map<String, Map<String, Object>> getInstancesFromSyncTable(String tableName, Collection<String> ids, ObjectType objectTypeDef)
+            throws IOException, SQLException {
+        Map<String, Map<String, Object>> found = new HashMap<>();
+        Connection conn = databaseMetadataService.getConnectionForDatabase(null); // 默认数据库
+        SyncTableCatalog.TableInfo table = null;
         try {
-            List<Map<String, Object>> columns = databaseMetadataService.getColumns(databaseId, tableName);
-            for (Map<String, Object> column : columns) {
-                Boolean isPrimaryKey = (Boolean) column.get("is_primary_key");
-                if (isPrimaryKey != null && isPrimaryKey) {
-                    String columnName = (String) column.get("name");
-                    logger.debug("[RelationalInstanceStorage] Found primary key column: {} for table {}", columnName, tableName);
-                    return columnName;
+            table = resolveSyncTable(conn, tableName);
+            SyncTableKey key = resolveSyncTableKey(table, objectTypeDef);
+            int pkCount = key.isComposite() ? key.syncTablePkColumns.size() : 1;
+            int chunkSize = Math.max(1, Math.min(batchFetchSize, maxBindParameters(conn) / pkCount));
+
+            // 请求 ID 与结果行都按主键列的 JDBC 类型规范化后匹配（数值精度、日期时间格式、CHAR 补齐的空格）；
+            // 联合主键预先拆分 ID，格式不匹配或无法转换为列类型的 ID 直接视为不存在
+            int[] keyTypes = keyColumnTypes(table, key);
+            List<String> queryIds = new ArrayList<>();
+            Map<String, List<String>> idParts = new HashMap<>();
+            Map<String, String> requestKeys = new HashMap<>();
+            for (String id : ids) {
+                if (id == null) {
+                    continue;
+                }
+                List<String> parts = key.isComposite() ? splitCompositeId(id) : List.of(id);
+                String requestKey = parts.size() == pkCount ? normalizeKey(parts, keyTypes) : null;
+                if (requestKey == null) {
+                    found.put(id, null);
+                    continue;
+                }
+                if (key.isComposite()) {
+                    idParts.put(id, parts);
                 }
+                requestKeys.put(id, requestKey);
+                queryIds.add(id);
+            }
+
+            for (int start = 0; start < queryIds.size(); start += chunkSize) {
+                List<String> chunk = queryIds.subList(start, Math.min(start + chunkSize, queryIds.size()));
+                String sql;
+                if (key.isComposite()) {
+                    String predicate = "(" + compositeKeyPredicate(key.syncTablePkColumns) + ")";
+                    sql = "SELECT * FROM " + table.qualifiedName + " WHERE " + String.join(" OR ", Collections.nCopies(chunk.size(), predicate));
+                } else {
+                    sql = "SELECT * FROM " + table.qualifiedName + " WHERE `" + key.singlePkColumn() + "` IN ("
+                        + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                }
+                logger.debug("[RelationalInstanceStorage] Executing batch SQL on {} for {} ids", tableName, chunk.size());
+
+                Map<String, Map<String, Object>> chunkFound = new HashMap<>();
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setQueryTimeout(databaseMetadataService.getQueryTimeoutSeconds());
+                    int index = 1;
+                    for (String id : chunk) {
+                        if (key.isComposite()) {
+                            for (String part : idParts.get(id)) {
+                                pstmt.setString(index++, part);
+                            }
+                        } else {
+                            pstmt.setString(index++, id);
+                        }
+                    }
+                    Map<String, List<String>> requestedByKey = new HashMap<>();
+                    for (String id : chunk) {
+                        requestedByKey.computeIfAbsent(requestKeys.get(id), k -> new ArrayList<>()).add(id);
+                    }
+                    Set<String> foldedRowKeys = new HashSet<>();
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            String rowKey = rowKey(rs, key, keyTypes);
+                            if (rowKey == null) {
+                                continue;
+                            }
+                            foldedRowKeys.add(foldKey(rowKey));
+                            for (String requestedId : requestedByKey.getOrDefault(rowKey, List.of())) {
+                                chunkFound.put(requestedId, readSyncTableRow(rs, key, objectTypeDef, requestedId));
+                            }
+                        }
+                        // 排序规则可能不区分大小写、重音或尾部空格：未匹配且折叠后与某个结果行相同的请求 ID
+                        // 逐个按主键查询，由数据库按列的排序规则判断是否相等
+                        for (String id : chunk) {
+                            if (!chunkFound.containsKey(id) && foldedRowKeys.contains(foldKey(requestKeys.get(id)))) {
+                                Map<String, Object> instance = getSyncTableRowByKey(conn, table, key, objectTypeDef, id, idParts.get(id));
+                                if (instance != null) {
+                                    chunkFound.put(id, instance);
+                                }
+                            }
+                        }
+                    }
+                } catch (SQLException e) {
+                    // 本块结果未知：不记录这些 ID，其余块照常查询
+                    logger.warn("[RelationalInstanceStorage] Batch chunk on {} failed ({} ids): {}", tableName, chunk.size(), e.getMessage());
+                    invalidateOnFailure(table);
+                    continue;
+                }
+                for (String id : chunk) {
+                    found.put(id, chunkFound.get(id));
+                }
+            }
+            logger.debug("[RelationalInstanceStorage] Batch retrieved {}/{} instances from sync table {} (chunk size {})",
+                found.values().stream().filter(Objects::nonNull).count(), ids.size(), tableName, chunkSize);
+            return found;
+        } catch (SQLException e) {
+            invalidateOnFailure(table);
+            throw e;
+        } finally {
+            if (conn != null && !conn.isClosed()) {
+                conn.close();
             }
-            logger.debug("[RelationalInstanceStorage] No primary key column found for table {}", tableName);
-            return null;
-        } catch (Exception e) {
-            logger.warn("[RelationalInstanceStorage] Failed to get primary key column from table {}: {}", tableName, e.getMessage());
-            return null;
         }
     }
 
     /**
-     * 从同步表列表查询实例
-     * 严格查询界限：只查询同步表，不查询原始表
+     * 同步表行回调（流式导出）
      */
-    private InstanceStorage.ListResult listInstancesFromSyncTable(String tableName, ObjectType objectTypeDef, 
-                                                                  int offset, int limit) 
+    @FunctionalInterface
+    public interface SyncRowConsumer {
+        void accept(Map<String, Object> instance) throws IOException;
+    }
+
+    /**
+     * 流式读取整张同步表：单条 SELECT，按 fetchSize 从游标分批取行并逐行回调，不在内存中累积结果
+     * @return 读取的行数
+     * @throws SQLException 同步表不存在或查询失败
+     */
+    public long streamSyncTable(String objectType, int fetchSize, SyncRowConsumer consumer)
             throws IOException, SQLException {
-        logger.info("[RelationalInstanceStorage] ========== listInstancesFromSyncTable START ==========");
-        logger.info("[RelationalInstanceStorage] listInstancesFromSyncTable: tableName = {}, offset = {}, limit = {}", 
-            tableName, offset, limit);
-        logger.info("[RelationalInstanceStorage] STRICT QUERY BOUNDARY: Querying SYNC TABLE only, NOT querying ORIGINAL TABLE");
-        logger.info("[RelationalInstanceStorage] Sync table name: {} (derived from objectType: {})", 
-            tableName, objectTypeDef != null ? objectTypeDef.getName() : "unknown");
-        logger.info("[RelationalInstanceStorage] Database: default database (from application.properties)");
-        
+        ObjectType objectTypeDef;
+        try {
+            objectTypeDef = loader.getObjectType(objectType);
+        } catch (Loader.NotFoundException e) {
+            throw new IOException("Object type not found: " + objectType, e);
+        }
+        String tableName = objectType.toLowerCase();
         Connection conn = databaseMetadataService.getConnectionForDatabase(null); // 默认数据库
-        logger.info("[RelationalInstanceStorage] Got connection to default database for sync table query");
-        
-        // 记录当前连接的数据库信息，用于诊断
-        String currentDb = null;
+        SyncTableCatalog.TableInfo table = null;
         try {
-            currentDb = conn.getCatalog();
-            logger.info("[RelationalInstanceStorage] Current database (catalog): {}", currentDb);
+            table = resolveSyncTable(conn, tableName);
+            SyncTableKey key = resolveSyncTableKey(table, objectTypeDef);
+            long rows = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM " + table.qualifiedName,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // MySQL/Doris 驱动仅在 fetchSize = Integer.MIN_VALUE 时逐行流式读取，否则一次性加载全部结果
+                String product = conn.getMetaData().getDatabaseProductName();
+                pstmt.setFetchSize(product != null && product.toUpperCase().contains("MYSQL") ? Integer.MIN_VALUE : fetchSize);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    java.sql.ResultSetMetaData metaData = rs.getMetaData();
+                    int columnCount = metaData.getColumnCount();
+                    // 列名 -> 属性名只计算一次
+                    String[] propertyNames = new String[columnCount];
+                    for (int i = 1; i <= columnCount; i++) {
+                        propertyNames[i - 1] = convertColumnNameToPropertyName(metaData.getColumnName(i), key.columnToPropertyMap, objectTypeDef);
+                    }
+                    while (rs.next()) {
+                        Map<String, Object> instance = new HashMap<>();
+                        for (int i = 1; i <= columnCount; i++) {
+                            instance.put(propertyNames[i - 1], rs.getObject(i));
+                        }
+                        Object idValue = instance.get("id");
+                        if (idValue == null || (idValue instanceof String && ((String) idValue).trim().isEmpty())) {
+                            String idFromPrimaryKey = getIdFromPrimaryKey(instance, key.primaryKeyColumns, key.columnToPropertyMap);
+                            if (idFromPrimaryKey != null && !idFromPrimaryKey.trim().isEmpty()) {
+                                instance.put("id", idFromPrimaryKey);
+                            }
+                        }
+                        consumer.accept(instance);
+                        rows++;
+                    }
+                }
+            }
+            logger.debug("[RelationalInstanceStorage] Streamed {} rows from sync table {}", rows, tableName);
+            return rows;
         } catch (SQLException e) {
-            logger.warn("[RelationalInstanceStorage] Failed to get current database: {}", e.getMessage());
+            invalidateOnFailure(table);
+            throw e;
+        } finally {
+            if (conn != null && !conn.isClosed()) {
+                conn.close();
+            }
+        }
+    }
+
+    /**
+     * 同步表主键信息
+     */
+    private static class SyncTableKey {
+        /** 主键列名（mapping 中为源表列名，来自表元数据则为同步表列名），用于回填 id */
+        final List<String> primaryKeyColumns;
+        /** 同步表中的主键列名（属性名），用于 WHERE 子句 */
+        final List<String> syncTablePkColumns;
+        final String primaryKeyColumn;
+        final Map<String, String> columnToPropertyMap;
+
+        SyncTableKey(List<String> primaryKeyColumns, List<String> syncTablePkColumns, String primaryKeyColumn,
+                     Map<String, String> columnToPropertyMap) {
+            this.primaryKeyColumns = primaryKeyColumns;
+            this.syncTablePkColumns = syncTablePkColumns;
+            this.primaryKeyColumn = primaryKeyColumn;
+            this.columnToPropertyMap = columnToPropertyMap;
         }
+
+        boolean isComposite() {
+            return syncTablePkColumns != null && syncTablePkColumns.size() > 1;
+        }
+
+        String singlePkColumn() {
+            return syncTablePkColumns == null || syncTablePkColumns.isEmpty() ? primaryKeyColumn : syncTablePkColumns.get(0);
+        }
+    }
+
+    /**
+     * 解析同步表主键：优先 mapping 配置，其次表元数据（目录缓存），最后默认 id
+     */
+    private SyncTableKey resolveSyncTableKey(SyncTableCatalog.TableInfo table, ObjectType objectTypeDef) {
+        String tableName = table.name;
+        // 动态获取主键列名（支持多个主键列）
+        List<String> primaryKeyColumns = getPrimaryKeyColumns(objectTypeDef);
+        String primaryKeyColumn = null; // 用于 WHERE 子句（单个主键列时）
         
-        // 确保在正确的数据库中查询（显式使用 USE DATABASE）
-        if (currentDb != null && !currentDb.isEmpty()) {
-            try {
-                try (java.sql.Statement stmt = conn.createStatement()) {
-                    stmt.execute("USE `" + currentDb + "`");
-                    logger.info("[RelationalInstanceStorage] Explicitly switched to database: {}", currentDb);
-                }
-            } catch (SQLException e) {
-                logger.warn("[RelationalInstanceStorage] Failed to switch to database {}: {}", currentDb, e.getMessage());
+        if (primaryKeyColumns == null || primaryKeyColumns.isEmpty()) {
+            // 从表结构获取全部主键列（支持联合主键），再回退到 id
+            if (!table.primaryKeyColumns.isEmpty()) {
+                primaryKeyColumns = table.primaryKeyColumns;
+                primaryKeyColumn = primaryKeyColumns.get(0);
+                logger.debug("[RelationalInstanceStorage] Using primary key column(s) from table metadata: {}", primaryKeyColumns);
+            } else {
+                primaryKeyColumn = "id";
+                primaryKeyColumns = java.util.Arrays.asList("id");
+                logger.warn("[RelationalInstanceStorage] Could not determine primary key column for table {}, using default 'id'", tableName);
             }
+        } else {
+            primaryKeyColumn = primaryKeyColumns.get(0); // 用于单主键 WHERE 子句
+            logger.debug("[RelationalInstanceStorage] Using primary key columns from mapping: {}", primaryKeyColumns);
         }
         
-        // 诊断：检查表是否存在（尝试不同的表名大小写组合）
-        try {
-            try (java.sql.Statement stmt = conn.createStatement()) {
-                // 检查表是否存在（使用 SHOW TABLES）
-                String showTablesSql = "SHOW TABLES LIKE '" + tableName + "'";
-                logger.info("[RelationalInstanceStorage] Checking if table exists: {}", showTablesSql);
-                try (java.sql.ResultSet rs = stmt.executeQuery(showTablesSql)) {
-                    if (rs.next()) {
-                        String actualTableName = rs.getString(1);
-                        logger.info("[RelationalInstanceStorage] Table found with name: {} (requested: {})", actualTableName, tableName);
-                        // 如果实际表名与请求的表名不同（大小写不同），使用实际表名
-                        if (!actualTableName.equals(tableName)) {
-                            logger.warn("[RelationalInstanceStorage] Table name case mismatch! Using actual table name: {}", actualTableName);
-                            tableName = actualTableName;
-                        }
-                    } else {
-                        logger.warn("[RelationalInstanceStorage] Table '{}' not found in database '{}' using SHOW TABLES", tableName, currentDb);
-                        // 尝试查找所有表（用于诊断）
-                        try (java.sql.ResultSet allTables = stmt.executeQuery("SHOW TABLES")) {
-                            java.util.List<String> existingTables = new java.util.ArrayList<>();
-                            while (allTables.next()) {
-                                existingTables.add(allTables.getString(1));
-                            }
-                            logger.warn("[RelationalInstanceStorage] Existing tables in database '{}': {}", currentDb, existingTables);
-                        }
+        // 同步表列名使用属性名（property name），mapping 中的 primary_key_columns 是源表列名，需转换为同步表列名
+        Map<String, String> columnToPropertyMap = buildColumnToPropertyMap(objectTypeDef, tableName);
+        List<String> syncTablePkColumns = resolveSyncTablePrimaryKeyColumns(primaryKeyColumns, columnToPropertyMap);
+        return new SyncTableKey(primaryKeyColumns, syncTablePkColumns, primaryKeyColumn, columnToPropertyMap);
+    }
+
+    /**
+     * 将同步表当前行转换为实例（列名转属性名，缺失 id 时按主键或请求 ID 回填）
+     */
+    private Map<String, Object> readSyncTableRow(ResultSet rs, SyncTableKey key, ObjectType objectTypeDef, String requestedId)
+            throws SQLException {
+        Map<String, Object> instance = new HashMap<>();
+        java.sql.ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        for (int i = 1; i <= columnCount; i++) {
+            String columnName = metaData.getColumnName(i);
+            Object value = rs.getObject(i);
+            
+            // 将列名转换为属性名
+            String propertyName = convertColumnNameToPropertyName(columnName, key.columnToPropertyMap, objectTypeDef);
+            instance.put(propertyName, value);
+        }
+        
+        // 如果 ID 不存在或为空，优先通过 mapping 设置的主键作为 ID
+        Object idValue = instance.get("id");
+        if (idValue == null || (idValue instanceof String && ((String) idValue).trim().isEmpty())) {
+            String idFromPrimaryKey = getIdFromPrimaryKey(instance, key.primaryKeyColumns, key.columnToPropertyMap);
+            if (idFromPrimaryKey != null && !idFromPrimaryKey.trim().isEmpty()) {
+                instance.put("id", idFromPrimaryKey);
+                logger.debug("[RelationalInstanceStorage] ID not found in instance data, using primary key columns '{}' value as ID: {}", 
+                    key.primaryKeyColumns, idFromPrimaryKey);
+            } else {
+                // 如果主键列也无法获取ID，使用查询参数中的id
+                instance.put("id", requestedId);
+                logger.debug("[RelationalInstanceStorage] ID not found in instance data and primary key, using query parameter as ID: {}", requestedId);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 按单个请求 ID 查询同步表（WHERE pk = ?），比较方式完全由数据库列的排序规则决定
+     */
+    private Map<String, Object> getSyncTableRowByKey(Connection conn, SyncTableCatalog.TableInfo table, SyncTableKey key,
+                                                     ObjectType objectTypeDef, String id, List<String> parts) throws SQLException {
+        String sql = key.isComposite()
+            ? "SELECT * FROM " + table.qualifiedName + " WHERE " + compositeKeyPredicate(key.syncTablePkColumns)
+            : "SELECT * FROM " + table.qualifiedName + " WHERE `" + key.singlePkColumn() + "` = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setQueryTimeout(databaseMetadataService.getQueryTimeoutSeconds());
+            if (key.isComposite()) {
+                for (int i = 0; i < parts.size(); i++) {
+                    pstmt.setString(i + 1, parts.get(i));
+                }
+            } else {
+                pstmt.setString(1, id);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? readSyncTableRow(rs, key, objectTypeDef, id) : null;
+            }
+        }
+    }
+
+    /**
+     * 主键各列的 JDBC 类型（来自同步表目录，目录中没有的列按 VARCHAR 处理）
+     */
+    private static int[] keyColumnTypes(SyncTableCatalog.TableInfo table, SyncTableKey key) {
+        List<String> columns = key.isComposite() ? key.syncTablePkColumns : List.of(key.singlePkColumn());
+        int[] types = new int[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            types[i] = table.sqlType(columns.get(i));
+        }
+        return types;
+    }
+
+    /**
+     * 当前行的规范化主键值（联合主键各列以 NUL 字符连接）
+     */
+    private String rowKey(ResultSet rs, SyncTableKey key, int[] keyTypes) throws SQLException {
+        List<String> columns = key.isComposite() ? key.syncTablePkColumns : List.of(key.singlePkColumn());
+        List<String> parts = new ArrayList<>(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            String part = normalizeKeyValue(rs.getObject(columns.get(i)), keyTypes[i]);
+            if (part == null) {
+                return null;
+            }
+            parts.add(part);
+        }
+        return String.join("\u0000", parts);
+    }
+
+    /**
+     * 请求 ID（联合主键为拆分后的各部分）按主键列类型规范化后的值；无法转换为列类型（如数值列的非数字 ID）时返回 null
+     */
+    private static String normalizeKey(List<String> parts, int[] keyTypes) {
+        List<String> normalized = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            String part = normalizeKeyValue(parts.get(i), i < keyTypes.length ? keyTypes[i] : Types.VARCHAR);
+            if (part == null) {
+                return null;
+            }
+            normalized.add(part);
+        }
+        return String.join("\u0000", normalized);
+    }
+
+    /**
+     * 按列的 JDBC 类型规范化主键值（结果行的值与请求 ID 文本使用同一规则）：
+     * 数值去掉末尾的 0（1 与 1.00 相同），日期/时间统一为 ISO 格式，CHAR 去掉补齐的尾部空格，其余按文本
+     */
+    static String normalizeKeyValue(Object value, int sqlType) {
+        if (value == null) {
+            return null;
+        }
+        switch (sqlType) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT,
+                 Types.DECIMAL, Types.NUMERIC, Types.FLOAT, Types.REAL, Types.DOUBLE -> {
+                try {
+                    java.math.BigDecimal number = value instanceof java.math.BigDecimal decimal
+                        ? decimal : new java.math.BigDecimal(value.toString().trim());
+                    return number.signum() == 0 ? "0" : number.stripTrailingZeros().toPlainString();
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            case Types.DATE -> {
+                if (value instanceof java.sql.Date date) {
+                    return date.toLocalDate().toString();
+                }
+                try {
+                    return java.time.LocalDate.parse(value.toString().trim()).toString();
+                } catch (java.time.format.DateTimeParseException e) {
+                    return null;
+                }
+            }
+            case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> {
+                if (value instanceof java.sql.Timestamp timestamp) {
+                    return timestamp.toLocalDateTime().toString();
+                }
+                if (value instanceof java.time.LocalDateTime dateTime) {
+                    return dateTime.toString();
+                }
+                if (value instanceof java.time.OffsetDateTime dateTime) {
+                    return dateTime.toLocalDateTime().toString();
+                }
+                String text = value.toString().trim().replace(' ', 'T');
+                try {
+                    return java.time.LocalDateTime.parse(text).toString();
+                } catch (java.time.format.DateTimeParseException e) {
+                    try {
+                        return java.time.OffsetDateTime.parse(text).toLocalDateTime().toString();
+                    } catch (java.time.format.DateTimeParseException ex) {
+                        return null;
                     }
                 }
             }
+            case Types.CHAR, Types.NCHAR -> {
+                return value.toString().replaceAll(" +$", "");
+            }
+            default -> {
+                return String.valueOf(value);
+            }
+        }
+    }
+
+    /**
+     * 折叠主键值，用于找出可能被数据库排序规则视为相等的请求 ID：去掉尾部空格、去掉重音、转小写
+     */
+    static String foldKey(String value) {
+        String stripped = value.replaceAll(" +(?=\u0000|$)", "");
+        String decomposed = java.text.Normalizer.normalize(stripped, java.text.Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return decomposed.toLowerCase(Locale.ROOT);
+    }
+
+    private String compositeSeparator() {
+        return (compositeKeySeparator != null && !compositeKeySeparator.isEmpty()) ? compositeKeySeparator : "_";
+    }
+
+    private List<String> splitCompositeId(String id) {
+        return new ArrayList<>(java.util.Arrays.asList(id.split(java.util.regex.Pattern.quote(compositeSeparator()), -1)));
+    }
+
+    private String compositeKeyPredicate(List<String> pkColumns) {
+        List<String> whereClauses = new ArrayList<>();
+        for (String column : pkColumns) {
+            whereClauses.add("`" + column + "` = ?");
+        }
+        return String.join(" AND ", whereClauses);
+    }
+
+    /**
+     * 单条语句可用的绑定参数上限（按数据库方言）
+     * SQL Server 2100，Oracle IN 列表 1000 项，PostgreSQL 32767，MySQL/H2 等取 65535
+     */
+    private int maxBindParameters(Connection conn) {
+        String product;
+        try {
+            product = conn.getMetaData().getDatabaseProductName();
         } catch (SQLException e) {
-            logger.debug("[RelationalInstanceStorage] Failed to check table existence: {}", e.getMessage());
+            return 1000;
+        }
+        String upper = product != null ? product.toUpperCase() : "";
+        if (upper.contains("ORACLE")) {
+            return 1000;
+        }
+        if (upper.contains("SQL SERVER")) {
+            return 2000;
         }
+        if (upper.contains("POSTGRES")) {
+            return 32767;
+        }
+        return 65535;
+    }
+    
+    /**
+     * 查询失败时丢弃该表的目录缓存（表可能已被外部删除或修改），下次查询重新读取元数据
+     */
+    private void invalidateOnFailure(SyncTableCatalog.TableInfo table) {
+        if (table != null) {
+            catalog().invalidate(table.name);
+        }
+    }
+
+    /**
+     * 从同步表列表查询实例
+     * 严格查询界限：只查询同步表，不查询原始表
+     */
+    private InstanceStorage.ListResult listInstancesFromSyncTable(String tableName, ObjectType objectTypeDef, 
+                                                                  int offset, int limit) 
+            throws IOException, SQLException {
+        logger.debug("[RelationalInstanceStorage] ========== listInstancesFromSyncTable START ==========");
+        logger.debug("[RelationalInstanceStorage] listInstancesFromSyncTable: tableName = {}, offset = {}, limit = {}", 
+            tableName, offset, limit);
+        logger.debug("[RelationalInstanceStorage] STRICT QUERY BOUNDARY: Querying SYNC TABLE only, NOT querying ORIGINAL TABLE");
+        logger.debug("[RelationalInstanceStorage] Sync table name: {} (derived from objectType: {})", 
+            tableName, objectTypeDef != null ? objectTypeDef.getName() : "unknown");
+        logger.debug("[RelationalInstanceStorage] Database: default database (from application.properties)");
         
+        Connection conn = databaseMetadataService.getConnectionForDatabase(null); // 默认数据库
+        logger.debug("[RelationalInstanceStorage] Got connection to default database for sync table query");
+        
+        SyncTableCatalog.TableInfo table = null;
         try {
             // 查询数据（严格查询界限：只查询同步表）
-            // 使用实际表名（可能已根据大小写调整）
-            String sql = "SELECT * FROM `" + tableName + "` LIMIT ? OFFSET ?";
-            logger.info("[RelationalInstanceStorage] Executing SQL on SYNC TABLE: {}", sql);
-            logger.info("[RelationalInstanceStorage] Table name verification: {} (should match objectType.toLowerCase())", tableName);
+            // 表是否存在、实际表名（大小写）及全限定名来自目录缓存，不再执行 USE / SHOW TABLES
+            table = resolveSyncTable(conn, tableName);
+            String sql = "SELECT * FROM " + table.qualifiedName + " LIMIT ? OFFSET ?";
+            logger.debug("[RelationalInstanceStorage] Executing SQL on SYNC TABLE: {}", sql);
+            logger.debug("[RelationalInstanceStorage] Table name verification: {} (should match objectType.toLowerCase())", tableName);
             
             // 打印最终执行的SQL（参数替换后）
-            String finalSql = "SELECT * FROM `" + tableName + "` LIMIT " + limit + " OFFSET " + offset;
-            logger.info("[RelationalInstanceStorage] Final executed SQL (for verification): {}", finalSql);
+            String finalSql = "SELECT * FROM " + table.qualifiedName + " LIMIT " + limit + " OFFSET " + offset;
+            logger.debug("[RelationalInstanceStorage] Final executed SQL (for verification): {}", finalSql);
             
             List<Map<String, Object>> instances = new ArrayList<>();
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                 pstmt.setQueryTimeout(databaseMetadataService.getQueryTimeoutSeconds());
                 pstmt.setInt(1, limit);
                 pstmt.setInt(2, offset);
-                logger.info("[RelationalInstanceStorage] PreparedStatement parameters: limit = {}, offset = {}", limit, offset);
+                logger.debug("[RelationalInstanceStorage] PreparedStatement parameters: limit = {}, offset = {}", limit, offset);
                 
                 try (ResultSet rs = pstmt.executeQuery()) {
                     java.sql.ResultSetMetaData metaData = rs.getMetaData();
                     int columnCount = metaData.getColumnCount();
-                    logger.info("[RelationalInstanceStorage] ResultSet has {} columns from SYNC TABLE {}", columnCount, tableName);
+                    logger.debug("[RelationalInstanceStorage] ResultSet has {} columns from SYNC TABLE {}", columnCount, tableName);
                     
                     // 构建列名到属性名的映射
                     Map<String, String> columnToPropertyMap = buildColumnToPropertyMap(objectTypeDef, tableName);
@@ -567,37 +1112,40 @@ public class RelationalInstanceStorage implements IInstanceStorage {
                         instances.add(instance);
                         rowCount++;
                     }
-                    logger.info("[RelationalInstanceStorage] Retrieved {} rows from SYNC TABLE {}", rowCount, tableName);
+                    logger.debug("[RelationalInstanceStorage] Retrieved {} rows from SYNC TABLE {}", rowCount, tableName);
                     
                     // 详细分析查询结果
                     if (rowCount == 0) {
-                        logger.info("[RelationalInstanceStorage] DATA SOURCE ANALYSIS: SYNC TABLE {} query returned 0 rows - table exists but is EMPTY", tableName);
-                        logger.info("[RelationalInstanceStorage] DATA SOURCE VERIFICATION: No data in SYNC TABLE {}, will return empty result", tableName);
+                        logger.debug("[RelationalInstanceStorage] DATA SOURCE ANALYSIS: SYNC TABLE {} query returned 0 rows - table exists but is EMPTY", tableName);
+                        logger.debug("[RelationalInstanceStorage] DATA SOURCE VERIFICATION: No data in SYNC TABLE {}, will return empty result", tableName);
                     } else {
-                        logger.info("[RelationalInstanceStorage] DATA SOURCE ANALYSIS: SYNC TABLE {} query returned {} rows - DATA EXISTS in sync table, first row id={}", 
+                        logger.debug("[RelationalInstanceStorage] DATA SOURCE ANALYSIS: SYNC TABLE {} query returned {} rows - DATA EXISTS in sync table, first row id={}", 
                             tableName, rowCount, instances.isEmpty() ? "N/A" : instances.get(0).get("id"));
-                        logger.info("[RelationalInstanceStorage] DATA SOURCE VERIFICATION: Data confirmed from SYNC TABLE {}, NOT from ORIGINAL TABLE", tableName);
+                        logger.debug("[RelationalInstanceStorage] DATA SOURCE VERIFICATION: Data confirmed from SYNC TABLE {}, NOT from ORIGINAL TABLE", tableName);
                     }
                 }
             }
             
             // 获取总数（严格查询界限：只查询同步表，复用当前连接避免同时占用两个连接）
-            logger.info("[RelationalInstanceStorage] Getting total count from SYNC TABLE {}", tableName);
-            long total = getTotalCountFromSyncTable(conn, tableName);
-            logger.info("[RelationalInstanceStorage] Total count from SYNC TABLE {}: {} (retrieved instances: {})", 
+            logger.debug("[RelationalInstanceStorage] Getting total count from SYNC TABLE {}", tableName);
+            long total = getTotalCountFromSyncTable(conn, table.qualifiedName);
+            logger.debug("[RelationalInstanceStorage] Total count from SYNC TABLE {}: {} (retrieved instances: {})", 
                 tableName, total, instances.size());
             
             // 最终数据源分析
-            logger.info("[RelationalInstanceStorage] DATA SOURCE ANALYSIS FINAL: objectType={}, syncTable={}, instancesRetrieved={}, totalCount={}, dataSource=SYNC_TABLE_ONLY", 
+            logger.debug("[RelationalInstanceStorage] DATA SOURCE ANALYSIS FINAL: objectType={}, syncTable={}, instancesRetrieved={}, totalCount={}, dataSource=SYNC_TABLE_ONLY", 
                 objectTypeDef != null ? objectTypeDef.getName() : "unknown", tableName, instances.size(), total);
-            logger.info("[RelationalInstanceStorage] DATA SOURCE VERIFICATION: All data from SYNC TABLE {}, NOT from ORIGINAL TABLE", tableName);
-            logger.info("[RelationalInstanceStorage] ========== listInstancesFromSyncTable END ==========");
+            logger.debug("[RelationalInstanceStorage] DATA SOURCE VERIFICATION: All data from SYNC TABLE {}, NOT from ORIGINAL TABLE", tableName);
+            logger.debug("[RelationalInstanceStorage] ========== listInstancesFromSyncTable END ==========");
             
             return new InstanceStorage.ListResult(instances, total);
+        } catch (SQLException e) {
+            invalidateOnFailure(table);
+            throw e;
         } finally {
             if (conn != null && !conn.isClosed()) {
                 conn.close();
-                logger.info("[RelationalInstanceStorage] Closed connection to default database");
+                logger.debug("[RelationalInstanceStorage] Closed connection to default database");
             }
         }
     }
@@ -608,29 +1156,36 @@ public class RelationalInstanceStorage implements IInstanceStorage {
     private List<Map<String, Object>> searchInstancesFromSyncTable(String tableName, ObjectType objectTypeDef, 
                                                                      Map<String, Object> filters) 
             throws IOException, SQLException {
-        logger.info("[RelationalInstanceStorage] searchInstancesFromSyncTable: tableName = {}, filters = {}, databaseId = null (default database)", 
+        logger.debug("[RelationalInstanceStorage] searchInstancesFromSyncTable: tableName = {}, filters = {}, databaseId = null (default database)", 
             tableName, filters);
         
         Connection conn = databaseMetadataService.getConnectionForDatabase(null); // 默认数据库
-        logger.info("[RelationalInstanceStorage] Got connection to default database for sync table search");
+        logger.debug("[RelationalInstanceStorage] Got connection to default database for sync table search");
         
+        SyncTableCatalog.TableInfo table = null;
         try {
-            StringBuilder sql = new StringBuilder("SELECT * FROM `").append(tableName).append("`");
+            table = resolveSyncTable(conn, tableName);
+            StringBuilder sql = new StringBuilder("SELECT * FROM ").append(table.qualifiedName);
             
-            // 构建WHERE条件
+            // 构建WHERE条件（过滤列不在同步表中时不可能有匹配行，直接返回空结果）
             if (filters != null && !filters.isEmpty()) {
                 sql.append(" WHERE ");
                 List<String> conditions = new ArrayList<>();
-                int paramIndex = 1;
                 for (Map.Entry<String, Object> entry : filters.entrySet()) {
-                    conditions.add("`" + entry.getKey() + "` = ?");
+                    String column = table.column(entry.getKey());
+                    if (column == null) {
+                        logger.debug("[RelationalInstanceStorage] Filter column {} not found in sync table {}, returning empty result",
+                            entry.getKey(), tableName);
+                        return new ArrayList<>();
+                    }
+                    conditions.add("`" + column + "` = ?");
                 }
                 sql.append(String.join(" AND ", conditions));
             }
             
             sql.append(" LIMIT 10000"); // 搜索时限制最大数量
             
-            logger.info("[RelationalInstanceStorage] Executing SQL: {}", sql.toString());
+            logger.debug("[RelationalInstanceStorage] Executing SQL: {}", sql.toString());
             
             List<Map<String, Object>> instances = new ArrayList<>();
             try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
@@ -640,14 +1195,14 @@ public class RelationalInstanceStorage implements IInstanceStorage {
                     int paramIndex = 1;
                     for (Map.Entry<String, Object> entry : filters.entrySet()) {
                         pstmt.setObject(paramIndex++, entry.getValue());
-                        logger.info("[RelationalInstanceStorage] Set parameter {}: {} = {}", paramIndex - 1, entry.getKey(), entry.getValue());
+                        logger.debug("[RelationalInstanceStorage] Set parameter {}: {} = {}", paramIndex - 1, entry.getKey(), entry.getValue());
                     }
                 }
                 
                 try (ResultSet rs = pstmt.executeQuery()) {
                     java.sql.ResultSetMetaData metaData = rs.getMetaData();
                     int columnCount = metaData.getColumnCount();
-                    logger.info("[RelationalInstanceStorage] ResultSet has {} columns", columnCount);
+                    logger.debug("[RelationalInstanceStorage] ResultSet has {} columns", columnCount);
                     
                     // 构建列名到属性名的映射
                     Map<String, String> columnToPropertyMap = buildColumnToPropertyMap(objectTypeDef, tableName);
@@ -683,15 +1238,18 @@ public class RelationalInstanceStorage implements IInstanceStorage {
                         instances.add(instance);
                         rowCount++;
                     }
-                    logger.info("[RelationalInstanceStorage] Retrieved {} rows from sync table {} with filters", rowCount, tableName);
+                    logger.debug("[RelationalInstanceStorage] Retrieved {} rows from sync table {} with filters", rowCount, tableName);
                 }
             }
             
             return instances;
+        } catch (SQLException e) {
+            invalidateOnFailure(table);
+            throw e;
         } finally {
             if (conn != null && !conn.isClosed()) {
                 conn.close();
-                logger.info("[RelationalInstanceStorage] Closed connection to default database");
+                logger.debug("[RelationalInstanceStorage] Closed connection to default database");
             }
         }
     }
@@ -699,17 +1257,18 @@ public class RelationalInstanceStorage implements IInstanceStorage {
     /**
      * 获取同步表的总记录数（复用已有连接，避免同时占用多个连接导致池耗尽）
      * @param conn 已有的数据库连接，调用方负责关闭
+     * @param qualifiedTableName 目录缓存中的全限定表名
      */
-    private long getTotalCountFromSyncTable(Connection conn, String tableName) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM `" + tableName + "`";
-        logger.info("[RelationalInstanceStorage] getTotalCountFromSyncTable: executing SQL: {}", sql);
+    private long getTotalCountFromSyncTable(Connection conn, String qualifiedTableName) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM " + qualifiedTableName;
+        logger.debug("[RelationalInstanceStorage] getTotalCountFromSyncTable: executing SQL: {}", sql);
         
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setQueryTimeout(databaseMetadataService.getQueryTimeoutSeconds());
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
                     long count = rs.getLong(1);
-                    logger.info("[RelationalInstanceStorage] getTotalCountFromSyncTable: count = {}", count);
+                    logger.debug("[RelationalInstanceStorage] getTotalCountFromSyncTable: count = {}", count);
                     return count;
                 }
                 logger.warn("[RelationalInstanceStorage] getTotalCountFromSyncTable: no result returned");
@@ -753,14 +1312,14 @@ public class RelationalInstanceStorage implements IInstanceStorage {
                         columnToPropertyMap.put(columnName, propertyName);
                     }
                     
-                    logger.info("[RelationalInstanceStorage] Built column to property map with {} entries for objectType {}", 
+                    logger.debug("[RelationalInstanceStorage] Built column to property map with {} entries for objectType {}", 
                         columnToPropertyMap.size(), objectTypeDef.getName());
                 } else {
-                    logger.info("[RelationalInstanceStorage] No column_property_mappings found in mapping for objectType {}", 
+                    logger.debug("[RelationalInstanceStorage] No column_property_mappings found in mapping for objectType {}", 
                         objectTypeDef.getName());
                 }
             } else {
-                logger.info("[RelationalInstanceStorage] No mappings found for objectType {}", objectTypeDef.getName());
+                logger.debug("[RelationalInstanceStorage] No mappings found for objectType {}", objectTypeDef.getName());
             }
         } catch (Exception e) {
             logger.warn("[RelationalInstanceStorage] Failed to build column to property map: {}", e.getMessage());
@@ -0,0 +1,697 @@
+package com.mypalantir.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * 追加写分段日志（每个对象类型/关系类型一份）
+ *
+ * <p>记录以 NDJSON 行追加到 {@code segment-NNNNNN.log}，内存中维护：
+ * <ul>
+ *   <li>主键索引：id -> 记录在段文件中的位置，按插入顺序保存，分页直接在索引上完成</li>
+ *   <li>二级索引（可选）：字段值 -> id 集合，用于等值搜索</li>
+ * </ul>
+ * 打开时重放全部段文件重建索引；最后一段末尾不完整的记录（崩溃时只写了一半）会被截断。
+ * 失效记录（被覆盖或删除）占比超过阈值时由 {@link #compact()} 将存活记录复制到新段并删除旧段。
+ */
+public class SegmentLog implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentLog.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String OP_PUT = "put";
+    private static final String OP_DELETE = "del";
+
+    private final Path dir;
+    private final Options options;
+    private final Set<String> indexedFields;
+    private final ObjectMapper objectMapper;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, RecordPointer> primaryIndex = new LinkedHashMap<>();
+    private final Map<String, Map<String, Set<String>>> secondaryIndexes = new HashMap<>();
+    private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+
+    private int activeSegment;
+    private long activeSize;
+    private long totalBytes;
+    private long liveBytes;
+    private boolean unsynced;
+
+    private SegmentLog(Path dir, Options options, Set<String> indexedFields, ObjectMapper objectMapper) {
+        this.dir = dir;
+        this.options = options;
+        this.indexedFields = indexedFields != null ? new LinkedHashSet<>(indexedFields) : Collections.emptySet();
+        this.objectMapper = objectMapper;
+        for (String field : this.indexedFields) {
+            secondaryIndexes.put(field, new HashMap<>());
+        }
+    }
+
+    /**
+     * 打开（或创建）日志目录并从段文件重建索引
+     */
+    public static SegmentLog open(Path dir, Options options, Set<String> indexedFields, ObjectMapper objectMapper) throws IOException {
+        SegmentLog log = new SegmentLog(dir, options, indexedFields, objectMapper);
+        log.recover();
+        return log;
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(dir);
+        List<Integer> numbers = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(dir)) {
+            paths.map(p -> p.getFileName().toString())
+                .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                .forEach(name -> {
+                    try {
+                        numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        logger.warn("[SegmentLog] Ignoring unexpected file {} in {}", name, dir);
+                    }
+                });
+        }
+        Collections.sort(numbers);
+
+        for (int i = 0; i < numbers.size(); i++) {
+            replaySegment(numbers.get(i), i == numbers.size() - 1);
+        }
+
+        if (segments.isEmpty()) {
+            openSegment(1);
+        } else {
+            activeSegment = segments.lastKey();
+            activeSize = segments.get(activeSegment).size();
+        }
+        logger.info("[SegmentLog] Opened {}: segments={}, records={}, totalBytes={}, liveBytes={}",
+            dir, segments.size(), primaryIndex.size(), totalBytes, liveBytes);
+    }
+
+    private void replaySegment(int number, boolean last) throws IOException {
+        Path file = segmentPath(number);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(number, channel);
+
+        long offset = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                byte[] body = line.toByteArray();
+                line.reset();
+                try {
+                    applyRecord(number, offset, body);
+                } catch (IOException e) {
+                    logger.warn("[SegmentLog] Skipping unreadable record in {} at offset {}: {}", file, offset, e.getMessage());
+                }
+                offset += body.length + 1;
+                totalBytes += body.length + 1;
+            }
+            if (line.size() > 0) {
+                // 没有换行符结尾的残缺记录：崩溃时写了一半，截断丢弃
+                if (last) {
+                    logger.warn("[SegmentLog] Truncating torn tail of {} ({} bytes at offset {})", file, line.size(), offset);
+                    channel.truncate(offset);
+                    channel.force(true);
+                } else {
+                    logger.warn("[SegmentLog] Ignoring {} trailing bytes without newline in {}", line.size(), file);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void applyRecord(int segment, long offset, byte[] body) throws IOException {
+        Map<String, Object> record = objectMapper.readValue(body, Map.class);
+        String id = (String) record.get("id");
+        if (id == null) {
+            throw new IOException("record without id");
+        }
+        if (OP_DELETE.equals(record.get("op"))) {
+            removeFromIndexes(id);
+        } else {
+            Map<String, Object> data = (Map<String, Object>) record.get("data");
+            addToIndexes(id, new RecordPointer(segment, offset, body.length, extractIndexedValues(data)));
+        }
+    }
+
+    // ==================== 读 ====================
+
+    public Map<String, Object> get(String id) throws IOException {
+        lock.readLock().lock();
+        try {
+            RecordPointer pointer = primaryIndex.get(id);
+            return pointer != null ? readData(pointer) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return primaryIndex.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return primaryIndex.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按插入顺序分页读取，只读取当前页的记录
+     */
+    public List<Map<String, Object>> list(int offset, int limit) throws IOException {
+        lock.readLock().lock();
+        try {
+            List<Map<String, Object>> results = new ArrayList<>();
+            if (offset >= primaryIndex.size() || limit <= 0) {
+                return results;
+            }
+            int index = 0;
+            for (RecordPointer pointer : primaryIndex.values()) {
+                if (index++ < offset) {
+                    continue;
+                }
+                results.add(readData(pointer));
+                if (results.size() >= limit) {
+                    break;
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 等值过滤：命中二级索引的字段先求 id 交集，再读取候选记录校验其余条件；无可用索引时全量扫描
+     */
+    public List<Map<String, Object>> find(Map<String, Object> filters, int limit) throws IOException {
+        if (filters == null || filters.isEmpty()) {
+            return list(0, limit);
+        }
+        lock.readLock().lock();
+        try {
+            Collection<String> candidates = null;
+            for (Map.Entry<String, Object> filter : filters.entrySet()) {
+                Map<String, Set<String>> index = secondaryIndexes.get(filter.getKey());
+                if (index == null || filter.getValue() == null) {
+                    continue;
+                }
+                Set<String> ids = index.getOrDefault(String.valueOf(filter.getValue()), Collections.emptySet());
+                if (candidates == null) {
+                    candidates = new LinkedHashSet<>(ids);
+                } else {
+                    candidates.retainAll(ids);
+                }
+                if (candidates.isEmpty()) {
+                    return new ArrayList<>();
+                }
+            }
+            if (candidates == null) {
+                candidates = primaryIndex.keySet();
+            }
+
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (String id : candidates) {
+                RecordPointer pointer = primaryIndex.get(id);
+                if (pointer == null) {
+                    continue;
+                }
+                Map<String, Object> data = readData(pointer);
+                if (matches(data, filters)) {
+                    results.add(data);
+                    if (results.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 通过二级索引查找 id（字段未建索引时返回 null）
+     */
+    public Set<String> lookup(String field, Object value) {
+        lock.readLock().lock();
+        try {
+            Map<String, Set<String>> index = secondaryIndexes.get(field);
+            if (index == null) {
+                return null;
+            }
+            return new LinkedHashSet<>(index.getOrDefault(String.valueOf(value), Collections.emptySet()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean matches(Map<String, Object> data, Map<String, Object> filters) {
+        for (Map.Entry<String, Object> filter : filters.entrySet()) {
+            if (!Objects.equals(data.get(filter.getKey()), filter.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readData(RecordPointer pointer) throws IOException {
+        Map<String, Object> record = objectMapper.readValue(readRaw(pointer), Map.class);
+        return (Map<String, Object>) record.get("data");
+    }
+
+    private byte[] readRaw(RecordPointer pointer) throws IOException {
+        FileChannel channel = segments.get(pointer.segment);
+        if (channel == null) {
+            throw new IOException("segment " + pointer.segment + " is missing in " + dir);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(pointer.length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, pointer.offset + buffer.position());
+            if (read < 0) {
+                throw new IOException("unexpected end of segment " + pointer.segment + " in " + dir);
+            }
+        }
+        return buffer.array();
+    }
+
+    // ==================== 写 ====================
+
+    public void put(String id, Map<String, Object> data) throws IOException {
+        lock.writeLock().lock();
+        try {
+            appendPut(id, data);
+            syncIfImmediate();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 读取-修改-写入的更新函数
+     */
+    public interface Updater {
+        /**
+         * @param id 记录 id
+         * @param current 当前数据，不存在时为 null
+         * @return 要写入的数据，返回 null 表示不写入
+         */
+        Map<String, Object> apply(String id, Map<String, Object> current) throws IOException;
+    }
+
+    /**
+     * 在写锁内读取当前记录并写入更新函数的结果：存在性检查与写入是一个原子步骤
+     * @return 写入的数据（未写入时为 null）
+     */
+    public Map<String, Object> compute(String id, Updater updater) throws IOException {
+        lock.writeLock().lock();
+        try {
+            RecordPointer pointer = primaryIndex.get(id);
+            Map<String, Object> data = updater.apply(id, pointer != null ? readData(pointer) : null);
+            if (data != null) {
+                appendPut(id, data);
+                syncIfImmediate();
+            }
+            return data;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 批量 {@link #compute}：整批在一次写锁内完成，只做一次 fsync
+     */
+    public void computeAll(Collection<String> ids, Updater updater) throws IOException {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                RecordPointer pointer = primaryIndex.get(id);
+                Map<String, Object> data = updater.apply(id, pointer != null ? readData(pointer) : null);
+                if (data != null) {
+                    appendPut(id, data);
+                }
+            }
+            syncIfImmediate();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 批量写入，整批只做一次 fsync
+     */
+    public void putAll(Map<String, Map<String, Object>> records) throws IOException {
+        if (records == null || records.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<String, Map<String, Object>> entry : records.entrySet()) {
+                appendPut(entry.getKey(), entry.getValue());
+            }
+            syncIfImmediate();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 追加删除标记
+     * @return 记录是否存在
+     */
+    public boolean delete(String id) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!primaryIndex.containsKey(id)) {
+                return false;
+            }
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("op", OP_DELETE);
+            record.put("id", id);
+            appendLine(objectMapper.writeValueAsBytes(record));
+            removeFromIndexes(id);
+            syncIfImmediate();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void appendPut(String id, Map<String, Object> data) throws IOException {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("op", OP_PUT);
+        record.put("id", id);
+        record.put("data", data);
+        byte[] body = objectMapper.writeValueAsBytes(record);
+        long offset = appendLine(body);
+        addToIndexes(id, new RecordPointer(activeSegment, offset, body.length, extractIndexedValues(data)));
+    }
+
+    /**
+     * 追加一行到活动段，超过段大小上限时先滚动到新段
+     * @return 记录在活动段中的起始偏移
+     */
+    private long appendLine(byte[] body) throws IOException {
+        if (activeSize > 0 && activeSize + body.length + 1 > options.getMaxSegmentBytes()) {
+            rollSegment();
+        }
+        FileChannel channel = segments.get(activeSegment);
+        ByteBuffer buffer = ByteBuffer.allocate(body.length + 1);
+        buffer.put(body).put((byte) '\n').flip();
+        long offset = activeSize;
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        activeSize = position;
+        totalBytes += body.length + 1;
+        unsynced = true;
+        return offset;
+    }
+
+    private void rollSegment() throws IOException {
+        segments.get(activeSegment).force(false);
+        unsynced = false;
+        openSegment(activeSegment + 1);
+    }
+
+    private void openSegment(int number) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(number),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(number, channel);
+        activeSegment = number;
+        activeSize = channel.size();
+    }
+
+    private void syncIfImmediate() throws IOException {
+        if (options.getFsyncIntervalMs() <= 0) {
+            segments.get(activeSegment).force(false);
+            unsynced = false;
+        }
+    }
+
+    /**
+     * 将活动段刷盘（批量 fsync，由后台线程按 fsync 间隔调用）
+     */
+    public void sync() throws IOException {
+        FileChannel channel;
+        lock.writeLock().lock();
+        try {
+            if (!unsynced) {
+                return;
+            }
+            unsynced = false;
+            channel = segments.get(activeSegment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // 段已被压缩替换，压缩过程中已刷盘
+        }
+    }
+
+    // ==================== 压缩 ====================
+
+    public boolean needsCompaction() {
+        lock.readLock().lock();
+        try {
+            if (totalBytes < options.getCompactionMinBytes() || totalBytes == 0) {
+                return false;
+            }
+            double garbageRatio = 1.0 - (double) liveBytes / totalBytes;
+            return garbageRatio >= options.getCompactionRatio();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 将存活记录复制到新段并删除旧段
+     * 新段编号大于所有旧段，压缩中途崩溃时重放旧段 + 部分新段得到的结果与压缩前一致
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            long before = totalBytes;
+            List<Integer> oldSegments = new ArrayList<>(segments.keySet());
+            Map<String, RecordPointer> relocated = new LinkedHashMap<>();
+
+            openSegment(activeSegment + 1);
+            totalBytes = 0;
+            liveBytes = 0;
+            for (Map.Entry<String, RecordPointer> entry : primaryIndex.entrySet()) {
+                RecordPointer pointer = entry.getValue();
+                byte[] body = readRaw(pointer);
+                long offset = appendLine(body);
+                relocated.put(entry.getKey(), new RecordPointer(activeSegment, offset, body.length, pointer.indexedValues));
+                liveBytes += body.length + 1;
+            }
+            segments.get(activeSegment).force(true);
+            unsynced = false;
+
+            primaryIndex.clear();
+            primaryIndex.putAll(relocated);
+
+            for (Integer number : oldSegments) {
+                FileChannel channel = segments.remove(number);
+                channel.close();
+                Files.deleteIfExists(segmentPath(number));
+            }
+            logger.info("[SegmentLog] Compacted {}: {} -> {} bytes, {} live records, {} segments",
+                dir, before, totalBytes, primaryIndex.size(), segments.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getTotalBytes() {
+        lock.readLock().lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getLiveBytes() {
+        lock.readLock().lock();
+        try {
+            return liveBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (FileChannel channel : segments.values()) {
+                if (channel.isOpen()) {
+                    channel.force(false);
+                    channel.close();
+                }
+            }
+            segments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== 索引维护 ====================
+
+    private void addToIndexes(String id, RecordPointer pointer) {
+        RecordPointer previous = primaryIndex.put(id, pointer);
+        if (previous != null) {
+            liveBytes -= previous.length + 1;
+            removeSecondary(id, previous);
+        }
+        liveBytes += pointer.length + 1;
+        for (Map.Entry<String, String> entry : pointer.indexedValues.entrySet()) {
+            secondaryIndexes.get(entry.getKey())
+                .computeIfAbsent(entry.getValue(), k -> new LinkedHashSet<>())
+                .add(id);
+        }
+    }
+
+    private void removeFromIndexes(String id) {
+        RecordPointer previous = primaryIndex.remove(id);
+        if (previous != null) {
+            liveBytes -= previous.length + 1;
+            removeSecondary(id, previous);
+        }
+    }
+
+    private void removeSecondary(String id, RecordPointer pointer) {
+        for (Map.Entry<String, String> entry : pointer.indexedValues.entrySet()) {
+            Map<String, Set<String>> index = secondaryIndexes.get(entry.getKey());
+            Set<String> ids = index.get(entry.getValue());
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    index.remove(entry.getValue());
+                }
+            }
+        }
+    }
+
+    private Map<String, String> extractIndexedValues(Map<String, Object> data) {
+        if (indexedFields.isEmpty() || data == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> values = new HashMap<>();
+        for (String field : indexedFields) {
+            Object value = data.get(field);
+            if (value != null) {
+                values.put(field, String.valueOf(value));
+            }
+        }
+        return values;
+    }
+
+    private Path segmentPath(int number) {
+        return dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static final class RecordPointer {
+        private final int segment;
+        private final long offset;
+        private final int length;
+        private final Map<String, String> indexedValues;
+
+        private RecordPointer(int segment, long offset, int length, Map<String, String> indexedValues) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.indexedValues = indexedValues;
+        }
+    }
+
+    /**
+     * 分段日志参数
+     */
+    public static class Options {
+        private final long maxSegmentBytes;
+        private final long fsyncIntervalMs;
+        private final double compactionRatio;
+        private final long compactionMinBytes;
+        private final long compactionIntervalMs;
+
+        /**
+         * @param maxSegmentBytes 单个段文件大小上限，超过后滚动到新段
+         * @param fsyncIntervalMs 批量 fsync 间隔，0 表示每次写入后立即 fsync
+         * @param compactionRatio 失效字节占比达到该值时触发压缩
+         * @param compactionMinBytes 日志总字节数低于该值时不压缩
+         * @param compactionIntervalMs 压缩检查间隔
+         */
+        public Options(long maxSegmentBytes, long fsyncIntervalMs, double compactionRatio,
+                       long compactionMinBytes, long compactionIntervalMs) {
+            this.maxSegmentBytes = maxSegmentBytes;
+            this.fsyncIntervalMs = fsyncIntervalMs;
+            this.compactionRatio = compactionRatio;
+            this.compactionMinBytes = compactionMinBytes;
+            this.compactionIntervalMs = compactionIntervalMs;
+        }
+
+        public long getMaxSegmentBytes() {
+            return maxSegmentBytes;
+        }
+
+        public long getFsyncIntervalMs() {
+            return fsyncIntervalMs;
+        }
+
+        public double getCompactionRatio() {
+            return compactionRatio;
+        }
+
+        public long getCompactionMinBytes() {
+            return compactionMinBytes;
+        }
+
+        public long getCompactionIntervalMs() {
+            return compactionIntervalMs;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.mypalantir.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分段日志管理器
+ * 按目录持有已打开的 {@link SegmentLog}，并在后台线程中执行批量 fsync 和定期压缩
+ */
+public class SegmentLogManager implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentLogManager.class);
+
+    /** 初始化回调成功后写入日志目录的标记文件，之后重启不再执行回调 */
+    static final String INITIALIZED_MARKER = ".initialized";
+
+    private final SegmentLog.Options options;
+    private final ObjectMapper objectMapper;
+    private final Map<String, SegmentLog> logs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService maintenance;
+
+    public SegmentLogManager(SegmentLog.Options options, ObjectMapper objectMapper) {
+        this.options = options;
+        this.objectMapper = objectMapper;
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "segment-log-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        if (options.getFsyncIntervalMs() > 0) {
+            maintenance.scheduleWithFixedDelay(this::syncAll,
+                options.getFsyncIntervalMs(), options.getFsyncIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+        if (options.getCompactionIntervalMs() > 0) {
+            maintenance.scheduleWithFixedDelay(this::compactIfNeeded,
+                options.getCompactionIntervalMs(), options.getCompactionIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 获取目录对应的日志，首次访问时打开并重放
+     * @param onCreate 日志首次创建时的回调（例如导入旧的单文件数据），可为 null；
+     *                 成功后在目录中写入标记文件，之后重新打开（包括重启）不再执行，
+     *                 避免已在日志中删除的记录被旧文件重新导入
+     */
+    public SegmentLog getOrOpen(String dir, Set<String> indexedFields, LogInitializer onCreate) throws IOException {
+        SegmentLog existing = logs.get(dir);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (logs) {
+            existing = logs.get(dir);
+            if (existing != null) {
+                return existing;
+            }
+            Path path = Paths.get(dir);
+            SegmentLog log = SegmentLog.open(path, options, indexedFields, objectMapper);
+            Path marker = path.resolve(INITIALIZED_MARKER);
+            if (onCreate != null && !Files.exists(marker)) {
+                onCreate.initialize(log);
+                log.sync();
+                Files.createFile(marker);
+            }
+            logs.put(dir, log);
+            return log;
+        }
+    }
+
+    public void syncAll() {
+        for (SegmentLog log : logs.values()) {
+            try {
+                log.sync();
+            } catch (IOException e) {
+                logger.error("[SegmentLogManager] Failed to fsync {}: {}", log.getDir(), e.getMessage(), e);
+            }
+        }
+    }
+
+    public void compactIfNeeded() {
+        for (SegmentLog log : logs.values()) {
+            if (!log.needsCompaction()) {
+                continue;
+            }
+            try {
+                log.compact();
+            } catch (IOException e) {
+                logger.error("[SegmentLogManager] Failed to compact {}: {}", log.getDir(), e.getMessage(), e);
+            }
+        }
+    }
+
+    public List<SegmentLog> getOpenLogs() {
+        return new ArrayList<>(logs.values());
+    }
+
+    @Override
+    public void close() {
+        maintenance.shutdown();
+        for (SegmentLog log : logs.values()) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                logger.warn("[SegmentLogManager] Failed to close {}: {}", log.getDir(), e.getMessage());
+            }
+        }
+        logs.clear();
+    }
+
+    /**
+     * 日志首次打开时的初始化回调
+     */
+    @FunctionalInterface
+    public interface LogInitializer {
+        void initialize(SegmentLog log) throws IOException;
+    }
+}
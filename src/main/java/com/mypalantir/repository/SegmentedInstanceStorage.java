@@ -0,0 +1,253 @@
+package com.mypalantir.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 分段日志实例存储（storage.type=segment）
+ * 每个对象类型一组追加写段文件，主键索引和二级索引常驻内存，列表/搜索不再逐个解析 JSON 文件
+ */
+public class SegmentedInstanceStorage implements IInstanceStorage, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedInstanceStorage.class);
+
+    private static final int SEARCH_LIMIT = 10000;
+
+    private final PathManager pathManager;
+    private final SegmentLogManager logManager;
+    private final ObjectMapper objectMapper;
+    private final Function<String, Set<String>> indexedFieldsResolver;
+    private final boolean importLegacy;
+
+    /**
+     * @param indexedFieldsResolver 对象类型 -> 需要建立二级索引的字段
+     * @param importLegacy 类型日志首次创建时是否导入旧的单文件（InstanceStorage）数据
+     */
+    public SegmentedInstanceStorage(PathManager pathManager, SegmentLog.Options options,
+                                    Function<String, Set<String>> indexedFieldsResolver, boolean importLegacy) {
+        this.pathManager = pathManager;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JavaTimeModule());
+        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.logManager = new SegmentLogManager(options, objectMapper);
+        this.indexedFieldsResolver = indexedFieldsResolver;
+        this.importLegacy = importLegacy;
+    }
+
+    /**
+     * 启动时预先打开对象类型的日志并重建索引，避免首个请求承担重放开销
+     */
+    public void preload(Collection<String> objectTypes) {
+        for (String objectType : objectTypes) {
+            try {
+                log(objectType);
+            } catch (IOException e) {
+                logger.warn("[SegmentedInstanceStorage] Failed to open segment log for {}: {}", objectType, e.getMessage());
+            }
+        }
+    }
+
+    private SegmentLog log(String objectType) throws IOException {
+        Set<String> indexedFields = indexedFieldsResolver != null ? indexedFieldsResolver.apply(objectType) : null;
+        return logManager.getOrOpen(pathManager.getSegmentDir(objectType), indexedFields,
+            importLegacy ? log -> importLegacyFiles(objectType, log) : null);
+    }
+
+    @Override
+    public String createInstance(String objectType, Map<String, Object> data) throws IOException {
+        return createInstanceWithId(objectType, UUID.randomUUID().toString(), data);
+    }
+
+    @Override
+    public String createInstanceWithId(String objectType, String id, Map<String, Object> data) throws IOException {
+        log(objectType).compute(id, (key, current) -> {
+            if (current != null) {
+                throw new IOException("instance with id '" + id + "' already exists");
+            }
+            String now = Instant.now().toString();
+            Map<String, Object> instance = new HashMap<>();
+            instance.put("id", id);
+            instance.put("created_at", now);
+            instance.put("updated_at", now);
+            instance.putAll(data);
+            return toPlain(instance);
+        });
+        return id;
+    }
+
+    @Override
+    public Map<String, Object> getInstance(String objectType, String id) throws IOException {
+        Map<String, Object> instance = log(objectType).get(id);
+        if (instance == null) {
+            throw new InstanceNotFoundException();
+        }
+        return instance;
+    }
+
+    @Override
+    public void updateInstance(String objectType, String id, Map<String, Object> data) throws IOException {
+        log(objectType).compute(id, (key, existing) -> {
+            if (existing == null) {
+                throw new InstanceNotFoundException();
+            }
+            existing.putAll(data);
+            existing.put("updated_at", Instant.now().toString());
+            return toPlain(existing);
+        });
+    }
+
+    @Override
+    public void deleteInstance(String objectType, String id) throws IOException {
+        if (!log(objectType).delete(id)) {
+            throw new InstanceNotFoundException();
+        }
+    }
+
+    @Override
+    public InstanceStorage.ListResult listInstances(String objectType, int offset, int limit) throws IOException {
+        SegmentLog log = log(objectType);
+        return new InstanceStorage.ListResult(log.list(offset, limit), log.size());
+    }
+
+    @Override
+    public List<Map<String, Object>> searchInstances(String objectType, Map<String, Object> filters) throws IOException {
+        return log(objectType).find(filters, SEARCH_LIMIT);
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> getInstancesBatch(String objectType, List<String> ids) throws IOException {
+        SegmentLog log = log(objectType);
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        for (String id : ids) {
+            result.put(id, log.get(id));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> getInstancesBatchMultiType(Map<String, List<String>> typeIdMap) throws IOException {
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : typeIdMap.entrySet()) {
+            Map<String, Map<String, Object>> instances = getInstancesBatch(entry.getKey(), entry.getValue());
+            for (Map.Entry<String, Map<String, Object>> instanceEntry : instances.entrySet()) {
+                result.put(entry.getKey() + ":" + instanceEntry.getKey(), instanceEntry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量 MERGE：已存在的实例合并字段，不存在的创建，整批只做一次 fsync
+     */
+    @Override
+    public int batchMergeInstances(String objectType, List<Map<String, Object>> rows) throws IOException {
+        if (rows == null || rows.isEmpty()) {
+            return 0;
+        }
+        String now = Instant.now().toString();
+        // 同一 id 的多行按顺序合并，再在日志写锁内与当前记录合并写入
+        Map<String, List<Map<String, Object>>> rowsById = new LinkedHashMap<>();
+        int applied = 0;
+        for (Map<String, Object> row : rows) {
+            Object idValue = row.get("id");
+            if (idValue == null) {
+                continue;
+            }
+            applied++;
+            rowsById.computeIfAbsent(String.valueOf(idValue), k -> new ArrayList<>()).add(row);
+        }
+        log(objectType).computeAll(rowsById.keySet(), (id, current) -> {
+            Map<String, Object> instance = current;
+            if (instance == null) {
+                instance = new HashMap<>();
+                instance.put("created_at", now);
+            }
+            for (Map<String, Object> row : rowsById.get(id)) {
+                for (Map.Entry<String, Object> e : row.entrySet()) {
+                    if (e.getValue() != null) {
+                        instance.put(e.getKey(), e.getValue());
+                    }
+                }
+            }
+            instance.put("id", id);
+            instance.put("updated_at", now);
+            return toPlain(instance);
+        });
+        return applied;
+    }
+
+    /**
+     * 将旧的单文件数据（{@link InstanceStorage} 目录）导入该类型的日志
+     * @return 导入的实例数
+     */
+    public int importFromFileStorage(String objectType) throws IOException {
+        return importLegacyFiles(objectType, log(objectType));
+    }
+
+    private int importLegacyFiles(String objectType, SegmentLog log) throws IOException {
+        Path legacyDir = Paths.get(pathManager.getInstanceDir(objectType));
+        if (!Files.isDirectory(legacyDir)) {
+            return 0;
+        }
+        Map<String, Map<String, Object>> records = readJsonFiles(legacyDir, objectMapper);
+        records.keySet().removeIf(log::contains);
+        log.putAll(records);
+        if (!records.isEmpty()) {
+            logger.info("[SegmentedInstanceStorage] Imported {} instances of type {} from {}", records.size(), objectType, legacyDir);
+        }
+        return records.size();
+    }
+
+    /**
+     * 读取目录下的 JSON 文件（id 取自记录中的 id 字段，缺失时取文件名）
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Map<String, Object>> readJsonFiles(Path dir, ObjectMapper objectMapper) throws IOException {
+        Map<String, Map<String, Object>> records = new LinkedHashMap<>();
+        try (Stream<Path> paths = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) paths.filter(Files::isRegularFile).filter(f -> f.toString().endsWith(".json"))::iterator) {
+                try {
+                    Map<String, Object> record = objectMapper.readValue(p.toFile(), Map.class);
+                    Object id = record.get("id");
+                    if (id == null) {
+                        String fileName = p.getFileName().toString();
+                        id = fileName.substring(0, fileName.length() - ".json".length());
+                        record.put("id", id);
+                    }
+                    records.put(String.valueOf(id), record);
+                } catch (IOException e) {
+                    logger.warn("[SegmentedInstanceStorage] Skipping unreadable file {}: {}", p, e.getMessage());
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 转换为可直接 JSON 序列化/反序列化的普通结构，保证写入后读出的值与写入时一致（时间类型转为 ISO 字符串）
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> toPlain(Map<String, Object> instance) {
+        return objectMapper.convertValue(instance, Map.class);
+    }
+
+    public SegmentLogManager getLogManager() {
+        return logManager;
+    }
+
+    @Override
+    public void close() {
+        logManager.close();
+    }
+}
@@ -0,0 +1,265 @@
+package com.mypalantir.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * 分段日志关系存储（storage.type=segment）
+ * 每个关系类型一组追加写段文件，source_id / target_id 始终建立二级索引，按端点查询关系只读取命中的记录
+ */
+public class SegmentedLinkStorage implements ILinkStorage, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedLinkStorage.class);
+
+    private static final Set<String> ENDPOINT_FIELDS = Set.of("source_id", "target_id");
+
+    private final PathManager pathManager;
+    private final SegmentLogManager logManager;
+    private final ObjectMapper objectMapper;
+    private final boolean importLegacy;
+
+    /**
+     * @param importLegacy 类型日志首次创建时是否导入旧的单文件（LinkStorage）数据
+     */
+    public SegmentedLinkStorage(PathManager pathManager, SegmentLog.Options options, boolean importLegacy) {
+        this.pathManager = pathManager;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JavaTimeModule());
+        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.logManager = new SegmentLogManager(options, objectMapper);
+        this.importLegacy = importLegacy;
+    }
+
+    /**
+     * 启动时预先打开关系类型的日志并重建索引
+     */
+    public void preload(Collection<String> linkTypes) {
+        for (String linkType : linkTypes) {
+            try {
+                log(linkType);
+            } catch (IOException e) {
+                logger.warn("[SegmentedLinkStorage] Failed to open segment log for {}: {}", linkType, e.getMessage());
+            }
+        }
+    }
+
+    private SegmentLog log(String linkType) throws IOException {
+        return logManager.getOrOpen(pathManager.getLinkSegmentDir(linkType), ENDPOINT_FIELDS,
+            importLegacy ? log -> importLegacyFiles(linkType, log) : null);
+    }
+
+    @Override
+    public String createLink(String linkType, String sourceID, String targetID, Map<String, Object> properties) throws IOException {
+        String id = UUID.randomUUID().toString();
+        String now = Instant.now().toString();
+
+        Map<String, Object> link = new HashMap<>();
+        link.put("id", id);
+        link.put("source_id", sourceID);
+        link.put("target_id", targetID);
+        link.put("created_at", now);
+        link.put("updated_at", now);
+        if (properties != null) {
+            link.putAll(properties);
+        }
+
+        log(linkType).put(id, toPlain(link));
+        return id;
+    }
+
+    @Override
+    public Map<String, Object> getLink(String linkType, String id) throws IOException {
+        Map<String, Object> link = log(linkType).get(id);
+        if (link == null) {
+            throw new IOException("link not found");
+        }
+        return link;
+    }
+
+    @Override
+    public void updateLink(String linkType, String id, Map<String, Object> properties) throws IOException {
+        SegmentLog log = log(linkType);
+        Map<String, Object> existing = log.get(id);
+        if (existing == null) {
+            throw new IOException("link not found");
+        }
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            String key = entry.getKey();
+            if (!"source_id".equals(key) && !"target_id".equals(key) && !"id".equals(key)) {
+                existing.put(key, entry.getValue());
+            }
+        }
+        existing.put("updated_at", Instant.now().toString());
+        log.put(id, toPlain(existing));
+    }
+
+    @Override
+    public void deleteLink(String linkType, String id) throws IOException {
+        if (!log(linkType).delete(id)) {
+            throw new IOException("link not found");
+        }
+    }
+
+    @Override
+    public List<Map<String, Object>> getLinksBySource(String linkType, String sourceID) throws IOException {
+        return getLinksByEndpoint(linkType, "source_id", sourceID);
+    }
+
+    @Override
+    public List<Map<String, Object>> getLinksByTarget(String linkType, String targetID) throws IOException {
+        return getLinksByEndpoint(linkType, "target_id", targetID);
+    }
+
+    private List<Map<String, Object>> getLinksByEndpoint(String linkType, String field, String value) throws IOException {
+        SegmentLog log = log(linkType);
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (String id : log.lookup(field, value)) {
+            Map<String, Object> link = log.get(id);
+            if (link != null) {
+                results.add(link);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public InstanceStorage.ListResult listLinks(String linkType, int offset, int limit) throws IOException {
+        SegmentLog log = log(linkType);
+        return new InstanceStorage.ListResult(log.list(offset, limit), log.size());
+    }
+
+    /**
+     * 批量创建关系：整批一次追加写入、一次 fsync
+     */
+    @Override
+    public LinkBatchResult createLinksBatch(String linkType, List<Map<String, Object>> links) throws IOException {
+        return writeLinksBatch(linkType, links, false);
+    }
+
+    /**
+     * 批量 upsert：通过 source_id 索引定位已有关系，存在则合并属性
+     */
+    @Override
+    public LinkBatchResult upsertLinksBatch(String linkType, List<Map<String, Object>> links) throws IOException {
+        return writeLinksBatch(linkType, links, true);
+    }
+
+    @Override
+    public LinkBatchResult deleteLinksBatch(String linkType, List<String> ids) throws IOException {
+        SegmentLog log = log(linkType);
+        LinkBatchResult result = new LinkBatchResult(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            try {
+                if (log.delete(ids.get(i))) {
+                    result.addSuccess(i, ids.get(i));
+                } else {
+                    result.addFailure(i, "link not found");
+                }
+            } catch (IOException e) {
+                result.addFailure(i, e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private LinkBatchResult writeLinksBatch(String linkType, List<Map<String, Object>> links, boolean upsert) throws IOException {
+        SegmentLog log = log(linkType);
+        LinkBatchResult result = new LinkBatchResult(links.size());
+        String now = Instant.now().toString();
+        Map<String, Map<String, Object>> records = new LinkedHashMap<>();
+        Map<String, String> pending = new HashMap<>();
+        for (int i = 0; i < links.size(); i++) {
+            Map<String, Object> input = links.get(i);
+            try {
+                String sourceID = ILinkStorage.endpoint(input, "source_id");
+                String targetID = ILinkStorage.endpoint(input, "target_id");
+                Map<String, Object> properties = ILinkStorage.linkProperties(input);
+
+                Map<String, Object> link = null;
+                if (upsert) {
+                    String endpointKey = sourceID + "\u0000" + targetID;
+                    String existingId = pending.get(endpointKey);
+                    if (existingId == null) {
+                        existingId = findByEndpoints(log, sourceID, targetID);
+                    }
+                    if (existingId != null) {
+                        link = records.containsKey(existingId) ? records.get(existingId) : log.get(existingId);
+                    }
+                }
+                if (link == null) {
+                    link = new HashMap<>();
+                    link.put("id", UUID.randomUUID().toString());
+                    link.put("source_id", sourceID);
+                    link.put("target_id", targetID);
+                    link.put("created_at", now);
+                }
+                link.putAll(properties);
+                link.put("updated_at", now);
+
+                String id = String.valueOf(link.get("id"));
+                records.put(id, toPlain(link));
+                pending.put(sourceID + "\u0000" + targetID, id);
+                result.addSuccess(i, id);
+            } catch (IOException e) {
+                result.addFailure(i, e.getMessage());
+            }
+        }
+        log.putAll(records);
+        return result;
+    }
+
+    private String findByEndpoints(SegmentLog log, String sourceID, String targetID) throws IOException {
+        for (String id : log.lookup("source_id", sourceID)) {
+            Map<String, Object> link = log.get(id);
+            if (link != null && targetID.equals(String.valueOf(link.get("target_id")))) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 将旧的单文件数据（{@link LinkStorage} 目录）导入该关系类型的日志
+     * @return 导入的关系数
+     */
+    public int importFromFileStorage(String linkType) throws IOException {
+        return importLegacyFiles(linkType, log(linkType));
+    }
+
+    private int importLegacyFiles(String linkType, SegmentLog log) throws IOException {
+        Path legacyDir = Paths.get(pathManager.getLinkDir(linkType));
+        if (!Files.isDirectory(legacyDir)) {
+            return 0;
+        }
+        Map<String, Map<String, Object>> records = SegmentedInstanceStorage.readJsonFiles(legacyDir, objectMapper);
+        records.keySet().removeIf(log::contains);
+        log.putAll(records);
+        if (!records.isEmpty()) {
+            logger.info("[SegmentedLinkStorage] Imported {} links of type {} from {}", records.size(), linkType, legacyDir);
+        }
+        return records.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> toPlain(Map<String, Object> link) {
+        return objectMapper.convertValue(link, Map.class);
+    }
+
+    public SegmentLogManager getLogManager() {
+        return logManager;
+    }
+
+    @Override
+    public void close() {
+        logManager.close();
+    }
+}
@@ -1,6 +1,10 @@
 package com.mypalantir.repository;
 
 import com.mypalantir.config.Config;
+import com.mypalantir.meta.LinkType;
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.service.DatabaseMetadataService;
 import com.falkordb.Graph;
 import org.neo4j.driver.Driver;
 import org.slf4j.Logger;
@@ -10,11 +14,20 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 存储工厂
- * 根据配置选择文件存储、Neo4j 存储或 FalkorDB 存储
+ * 根据配置选择文件存储、分段日志存储、Neo4j 存储或 FalkorDB 存储
  */
 @Configuration
 public class StorageFactory {
@@ -29,6 +42,9 @@ public class StorageFactory {
     @Autowired(required = false)
     private Graph falkordbGraph;
 
+    @Autowired
+    private Environment environment;
+
     @Bean
     @ConditionalOnProperty(name = "storage.graph.type", havingValue = "neo4j", matchIfMissing = true)
     public Neo4jInstanceStorage neo4jInstanceStorage() {
@@ -47,8 +63,62 @@ public class StorageFactory {
     }
 
     @Bean
-    public HybridInstanceStorage hybridInstanceStorage() {
-        return new HybridInstanceStorage();
+    public HybridInstanceStorage hybridInstanceStorage(@Lazy DatabaseMetadataService databaseMetadataService) {
+        HybridInstanceStorage storage = new HybridInstanceStorage();
+        if (config.isInstanceCacheEnabled()) {
+            storage.setInstanceCache(new InstanceCache(this::getInstanceCacheConfig));
+        }
+        // 图摘要写后队列：outbox 表位于默认数据库，仅 hybrid 模式启用
+        if (config.isGraphOutboxEnabled() && "hybrid".equalsIgnoreCase(config.getStorageType())) {
+            storage.setGraphOutbox(new GraphOutbox(() -> databaseMetadataService.getConnectionForDatabase(null),
+                config.getGraphOutboxBatchSize(), config.getGraphOutboxFlushIntervalMs(),
+                config.getGraphOutboxRetryBackoffMs(), config.getGraphOutboxMaxBackoffMs()));
+        }
+        return storage;
+    }
+
+    /** 分段日志实例存储：仅 storage.type=segment 时创建 */
+    @Bean
+    @ConditionalOnProperty(name = "storage.type", havingValue = "segment")
+    public SegmentedInstanceStorage segmentedInstanceStorage(PathManager pathManager, @Lazy Loader loader) {
+        SegmentedInstanceStorage storage = new SegmentedInstanceStorage(pathManager, segmentOptions(),
+            this::getSegmentIndexedFields, config.isSegmentImportLegacy());
+        List<ObjectType> objectTypes = loader.getSchema() != null ? loader.getSchema().getObjectTypes() : null;
+        if (objectTypes != null) {
+            storage.preload(objectTypes.stream().map(ObjectType::getName).collect(Collectors.toList()));
+        }
+        return storage;
+    }
+
+    /** 分段日志关系存储：仅 storage.type=segment 时创建 */
+    @Bean
+    @ConditionalOnProperty(name = "storage.type", havingValue = "segment")
+    public SegmentedLinkStorage segmentedLinkStorage(PathManager pathManager, @Lazy Loader loader) {
+        SegmentedLinkStorage storage = new SegmentedLinkStorage(pathManager, segmentOptions(), config.isSegmentImportLegacy());
+        List<LinkType> linkTypes = loader.getSchema() != null ? loader.getSchema().getLinkTypes() : null;
+        if (linkTypes != null) {
+            storage.preload(linkTypes.stream().map(LinkType::getName).collect(Collectors.toList()));
+        }
+        return storage;
+    }
+
+    /**
+     * 图数据库约束与索引管理：按当前图数据库类型选择方言，未配置图数据库时不可用；
+     * storage.type 为 neo4j/hybrid 且开启 storage.graph.schema.auto-create 时启动后自动创建缺失项
+     */
+    @Bean
+    public GraphSchemaManager graphSchemaManager(@Lazy Loader loader) {
+        GraphSchemaManager.Backend backend = null;
+        if ("falkordb".equalsIgnoreCase(config.getStorageGraphType())) {
+            if (falkordbGraph != null) {
+                backend = new GraphSchemaManager.FalkorDBBackend(falkordbGraph);
+            }
+        } else if (neo4jDriver != null) {
+            backend = new GraphSchemaManager.Neo4jBackend(neo4jDriver);
+        }
+        String storageType = config.getStorageType();
+        boolean graphStorage = "neo4j".equalsIgnoreCase(storageType) || "hybrid".equalsIgnoreCase(storageType);
+        return new GraphSchemaManager(backend, loader, this::getGraphFields, graphStorage && config.isGraphSchemaAutoCreate());
     }
 
     /** 图实例存储：Neo4j 或 FalkorDB，供 HybridInstanceStorage 和 DatabaseMetadataService 使用 */
@@ -83,6 +153,8 @@ public class StorageFactory {
                                            RelationalInstanceStorage relationalStorage,
                                            HybridInstanceStorage hybridStorage,
                                            @org.springframework.beans.factory.annotation.Autowired(required = false)
+                                           SegmentedInstanceStorage segmentedStorage,
+                                           @org.springframework.beans.factory.annotation.Autowired(required = false)
                                            @org.springframework.beans.factory.annotation.Qualifier("graphInstanceStorage")
                                            IInstanceStorage graphStorage) {
         String storageType = config.getStorageType();
@@ -106,6 +178,9 @@ public class StorageFactory {
                 logger.info("Using Neo4j instance storage");
             }
             return graphStorage;
+        } else if ("segment".equalsIgnoreCase(storageType) && segmentedStorage != null) {
+            logger.info("Using segmented append-log instance storage");
+            return segmentedStorage;
         } else {
             logger.info("Using file instance storage");
             return fileStorage;
@@ -115,6 +190,8 @@ public class StorageFactory {
     @Bean
     @Primary
     public ILinkStorage linkStorage(PathManager pathManager, LinkStorage fileStorage,
+                                   @org.springframework.beans.factory.annotation.Autowired(required = false)
+                                   SegmentedLinkStorage segmentedLink,
                                    @org.springframework.beans.factory.annotation.Autowired(required = false)
                                    @org.springframework.beans.factory.annotation.Qualifier("graphLinkStorage")
                                    ILinkStorage graphLink) {
@@ -127,12 +204,63 @@ public class StorageFactory {
             }
             logger.info("Using " + config.getStorageGraphType() + " link storage");
             return graphLink;
+        } else if ("segment".equalsIgnoreCase(storageType) && segmentedLink != null) {
+            logger.info("Using segmented append-log link storage");
+            return segmentedLink;
         } else {
             logger.info("Using file link storage");
             return fileStorage;
         }
     }
 
+    private SegmentLog.Options segmentOptions() {
+        return new SegmentLog.Options(
+            config.getSegmentMaxSegmentBytes(),
+            config.getSegmentFsyncIntervalMs(),
+            config.getSegmentCompactionRatio(),
+            config.getSegmentCompactionMinBytes(),
+            config.getSegmentCompactionIntervalMs());
+    }
+
+    /**
+     * 分段日志二级索引字段：storage.segment.index.{objectType}=field1,field2
+     */
+    private Set<String> getSegmentIndexedFields(String objectType) {
+        String fieldsConfig = environment.getProperty("storage.segment.index." + objectType.toLowerCase());
+        if (fieldsConfig == null || fieldsConfig.trim().isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Arrays.stream(fieldsConfig.split(","))
+            .map(String::trim)
+            .filter(f -> !f.isEmpty())
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * 写入图数据库的字段：storage.neo4j.fields.{objectType}，未配置时使用 storage.neo4j.fields.default
+     */
+    private List<String> getGraphFields(String objectType) {
+        String fieldsConfig = environment.getProperty("storage.neo4j.fields." + objectType.toLowerCase());
+        if (fieldsConfig == null || fieldsConfig.trim().isEmpty()) {
+            fieldsConfig = environment.getProperty("storage.neo4j.fields.default", "id,name,display_name");
+        }
+        return Arrays.stream(fieldsConfig.split(","))
+            .map(String::trim)
+            .filter(f -> !f.isEmpty())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * 实例缓存配置：全局 storage.cache.*，按类型覆盖 storage.cache.type.{objectType}.max-entries / ttl-ms / negative-ttl-ms
+     */
+    private InstanceCache.TypeConfig getInstanceCacheConfig(String objectType) {
+        String prefix = "storage.cache.type." + objectType.toLowerCase() + ".";
+        return new InstanceCache.TypeConfig(
+            environment.getProperty(prefix + "max-entries", Integer.class, config.getInstanceCacheMaxEntries()),
+            environment.getProperty(prefix + "ttl-ms", Long.class, config.getInstanceCacheTtlMs()),
+            environment.getProperty(prefix + "negative-ttl-ms", Long.class, config.getInstanceCacheNegativeTtlMs()));
+    }
+
     private String buildGraphStorageError(String prefix) {
         return prefix + "\nFor Neo4j: storage.graph.type=neo4j, set NEO4J_URI, NEO4J_USER, NEO4J_PASSWORD.\n" +
             "For FalkorDB: storage.graph.type=falkordb, set FALKORDB_HOST (default localhost), FALKORDB_PORT (default 6379).";
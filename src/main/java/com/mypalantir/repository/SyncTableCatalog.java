@@ -0,0 +1,254 @@
+package com.mypalantir.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * 默认数据库同步表目录缓存
+ * 缓存同步表的实际名称、全限定名、列类型和主键列，查询前不再执行 USE / SHOW TABLES / 列元数据查询。
+ * 启动时整库加载一次；未命中的表按需读取一次 JDBC 元数据，不存在的表在 missingTtlMillis 内直接判定不存在；
+ * 同步表被创建或修改后调用 {@link #invalidate(String)}。
+ */
+class SyncTableCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(SyncTableCatalog.class);
+
+    private static final String[] TABLE_TYPES = {"TABLE", "VIEW"};
+
+    /**
+     * 同步表元数据
+     */
+    static final class TableInfo {
+        /** 数据库中的实际表名 */
+        final String name;
+        /** 带库名（及 schema）的全限定名，已加引号，可直接拼入 SQL */
+        final String qualifiedName;
+        /** 列名（实际大小写） -> JDBC 类型名，保持列顺序 */
+        final Map<String, String> columnTypes;
+        /** 主键列，按 KEY_SEQ 排序 */
+        final List<String> primaryKeyColumns;
+        private final Map<String, String> columnsByLowerName;
+        /** 列名（实际大小写） -> java.sql.Types 类型码 */
+        private final Map<String, Integer> sqlTypes;
+
+        TableInfo(String name, String qualifiedName, Map<String, String> columnTypes, Map<String, Integer> sqlTypes,
+                  List<String> primaryKeyColumns) {
+            this.name = name;
+            this.qualifiedName = qualifiedName;
+            this.columnTypes = Collections.unmodifiableMap(columnTypes);
+            this.sqlTypes = Collections.unmodifiableMap(sqlTypes);
+            this.primaryKeyColumns = Collections.unmodifiableList(primaryKeyColumns);
+            Map<String, String> byLower = new HashMap<>();
+            for (String column : columnTypes.keySet()) {
+                byLower.put(column.toLowerCase(), column);
+            }
+            this.columnsByLowerName = byLower;
+        }
+
+        /**
+         * 按列名（大小写不敏感）返回实际列名，不存在返回 null
+         */
+        String column(String name) {
+            return name != null ? columnsByLowerName.get(name.toLowerCase()) : null;
+        }
+
+        /**
+         * 按列名（大小写不敏感）返回 java.sql.Types 类型码，列不存在时按 VARCHAR
+         */
+        int sqlType(String name) {
+            String column = column(name);
+            Integer type = column != null ? sqlTypes.get(column) : null;
+            return type != null ? type : Types.VARCHAR;
+        }
+    }
+
+    private final Map<String, TableInfo> tables = new ConcurrentHashMap<>();
+    /** 不存在的表名（小写） -> 过期时间 */
+    private final Map<String, Long> missing = new ConcurrentHashMap<>();
+    private final long missingTtlMillis;
+    private final LongSupplier clock;
+
+    SyncTableCatalog(long missingTtlMillis) {
+        this(missingTtlMillis, System::currentTimeMillis);
+    }
+
+    SyncTableCatalog(long missingTtlMillis, LongSupplier clock) {
+        this.missingTtlMillis = missingTtlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * 整库加载：一次 getTables + 一次 getColumns + 每表一次 getPrimaryKeys
+     * @return 加载的表数量
+     */
+    int loadAll(Connection conn) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        String catalog = conn.getCatalog();
+        String schema = currentSchema(conn);
+        Map<String, String[]> locations = new HashMap<>();
+        try (ResultSet rs = metaData.getTables(catalog, schema, "%", TABLE_TYPES)) {
+            while (rs.next()) {
+                String name = rs.getString("TABLE_NAME");
+                locations.put(name, new String[]{rs.getString("TABLE_CAT"), rs.getString("TABLE_SCHEM")});
+            }
+        }
+        Map<String, Map<String, String>> columnsByTable = new HashMap<>();
+        Map<String, Map<String, Integer>> sqlTypesByTable = new HashMap<>();
+        try (ResultSet rs = metaData.getColumns(catalog, schema, "%", "%")) {
+            while (rs.next()) {
+                String table = rs.getString("TABLE_NAME");
+                if (locations.containsKey(table)) {
+                    columnsByTable.computeIfAbsent(table, k -> new LinkedHashMap<>())
+                        .put(rs.getString("COLUMN_NAME"), rs.getString("TYPE_NAME"));
+                    sqlTypesByTable.computeIfAbsent(table, k -> new HashMap<>())
+                        .put(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"));
+                }
+            }
+        }
+        Map<String, TableInfo> loaded = new HashMap<>();
+        for (Map.Entry<String, String[]> entry : locations.entrySet()) {
+            String name = entry.getKey();
+            String[] location = entry.getValue();
+            List<String> primaryKeys = readPrimaryKeys(metaData, location[0], location[1], name);
+            Map<String, String> columns = columnsByTable.getOrDefault(name, new LinkedHashMap<>());
+            loaded.put(name.toLowerCase(), new TableInfo(name, qualify(location[0], location[1], name), columns,
+                sqlTypesByTable.getOrDefault(name, new HashMap<>()), primaryKeys));
+        }
+        tables.clear();
+        tables.putAll(loaded);
+        missing.clear();
+        return loaded.size();
+    }
+
+    /**
+     * 获取同步表元数据（表名大小写不敏感），表不存在返回 null
+     * @param conn 调用方已打开的默认数据库连接，缓存未命中时用于读取元数据
+     */
+    TableInfo get(Connection conn, String tableName) throws SQLException {
+        String key = tableName.toLowerCase();
+        TableInfo info = tables.get(key);
+        if (info != null) {
+            return info;
+        }
+        Long missingUntil = missing.get(key);
+        if (missingUntil != null && missingUntil > clock.getAsLong()) {
+            return null;
+        }
+        info = loadTable(conn, tableName);
+        if (info != null) {
+            tables.put(key, info);
+            missing.remove(key);
+        } else if (missingTtlMillis > 0) {
+            missing.put(key, clock.getAsLong() + missingTtlMillis);
+        }
+        return info;
+    }
+
+    /**
+     * 同步表被创建、修改或删除后调用，下次访问重新读取元数据
+     */
+    void invalidate(String tableName) {
+        String key = tableName.toLowerCase();
+        tables.remove(key);
+        missing.remove(key);
+    }
+
+    void invalidateAll() {
+        tables.clear();
+        missing.clear();
+    }
+
+    int size() {
+        return tables.size();
+    }
+
+    private TableInfo loadTable(Connection conn, String tableName) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        String catalog = conn.getCatalog();
+        String schema = currentSchema(conn);
+        // 先按表名精确匹配，大小写不一致时（如 lower_case_table_names=0）再扫描整库
+        String[] location = findTable(metaData, catalog, schema, tableName, tableName);
+        if (location == null) {
+            location = findTable(metaData, catalog, schema, "%", tableName);
+        }
+        if (location == null) {
+            logger.debug("[SyncTableCatalog] Table {} not found in catalog {}", tableName, catalog);
+            return null;
+        }
+        String name = location[0];
+        String tableCat = location[1];
+        String tableSchem = location[2];
+        Map<String, String> columns = new LinkedHashMap<>();
+        Map<String, Integer> sqlTypes = new HashMap<>();
+        try (ResultSet rs = metaData.getColumns(tableCat, tableSchem, name, "%")) {
+            while (rs.next()) {
+                columns.put(rs.getString("COLUMN_NAME"), rs.getString("TYPE_NAME"));
+                sqlTypes.put(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"));
+            }
+        }
+        List<String> primaryKeys = readPrimaryKeys(metaData, tableCat, tableSchem, name);
+        logger.debug("[SyncTableCatalog] Loaded table {} ({} columns, primary key {})", name, columns.size(), primaryKeys);
+        return new TableInfo(name, qualify(tableCat, tableSchem, name), columns, sqlTypes, primaryKeys);
+    }
+
+    /**
+     * @return {实际表名, TABLE_CAT, TABLE_SCHEM}，未找到返回 null；大小写完全一致的表优先
+     */
+    private static String[] findTable(DatabaseMetaData metaData, String catalog, String schema, String pattern,
+                                      String tableName) throws SQLException {
+        String[] match = null;
+        try (ResultSet rs = metaData.getTables(catalog, schema, pattern, TABLE_TYPES)) {
+            while (rs.next()) {
+                String candidate = rs.getString("TABLE_NAME");
+                if (candidate.equals(tableName) || (match == null && candidate.equalsIgnoreCase(tableName))) {
+                    match = new String[]{candidate, rs.getString("TABLE_CAT"), rs.getString("TABLE_SCHEM")};
+                    if (candidate.equals(tableName)) {
+                        break;
+                    }
+                }
+            }
+        }
+        return match;
+    }
+
+    private static List<String> readPrimaryKeys(DatabaseMetaData metaData, String catalog, String schema, String table)
+            throws SQLException {
+        TreeMap<Integer, String> ordered = new TreeMap<>();
+        try (ResultSet rs = metaData.getPrimaryKeys(catalog, schema, table)) {
+            while (rs.next()) {
+                ordered.put(rs.getInt("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+            }
+        }
+        return new ArrayList<>(ordered.values());
+    }
+
+    private static String currentSchema(Connection conn) {
+        try {
+            return conn.getSchema();
+        } catch (SQLException | AbstractMethodError e) {
+            return null;
+        }
+    }
+
+    /**
+     * MySQL/Doris：`db`.`table`；H2 等区分 catalog 与 schema 的库：`db`.`schema`.`table`
+     */
+    static String qualify(String catalog, String schema, String table) {
+        StringBuilder sb = new StringBuilder();
+        if (catalog != null && !catalog.isEmpty()) {
+            sb.append('`').append(catalog).append("`.");
+        }
+        if (schema != null && !schema.isEmpty()) {
+            sb.append('`').append(schema).append("`.");
+        }
+        return sb.append('`').append(table).append('`').toString();
+    }
+}
@@ -0,0 +1,246 @@
+package com.mypalantir.service;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Arrow IPC 流式导出（Arrow streaming format，application/vnd.apache.arrow.stream）
+ * 每 batchSize 行一个 record batch。低基数字符串列（首批中不同值不超过 maxDictionarySize 且不超过行数一半）
+ * 按 int32 下标字典编码：字典跨批累积，变化时由 ArrowStreamWriter 在下一批前重发；
+ * 累积字典将超过 maxDictionarySize 时改为只含当前批的值，字典内存始终有界。
+ */
+public class ArrowExportWriter extends ColumnarExportWriter {
+    private final OutputStream out;
+    private final int maxDictionarySize;
+
+    private BufferAllocator allocator;
+    private VectorSchemaRoot root;
+    private ArrowStreamWriter writer;
+    private final DictionaryProvider.MapDictionaryProvider dictionaryProvider = new DictionaryProvider.MapDictionaryProvider();
+    /** 列下标 -> 字典状态，不在其中的字符串列按 plain 写出 */
+    private final Map<Integer, DictionaryColumn> dictionaryColumns = new HashMap<>();
+
+    private static class DictionaryColumn {
+        final VarCharVector vector;
+        final Map<String, Integer> indexOf = new HashMap<>();
+
+        DictionaryColumn(VarCharVector vector) {
+            this.vector = vector;
+        }
+    }
+
+    public ArrowExportWriter(OutputStream out, List<Column> columns, int batchSize, int maxDictionarySize) {
+        super(columns, batchSize);
+        this.out = out;
+        this.maxDictionarySize = maxDictionarySize;
+    }
+
+    /**
+     * 导出时字典编码的列名（首批写出后确定）
+     */
+    public Set<String> getDictionaryEncodedColumns() {
+        Set<String> names = new LinkedHashSet<>();
+        for (Integer index : new TreeSet<>(dictionaryColumns.keySet())) {
+            names.add(columns.get(index).getName());
+        }
+        return names;
+    }
+
+    @Override
+    protected void start(Object[][] firstBatch, int rows) throws IOException {
+        allocator = new RootAllocator();
+        List<Field> fields = new ArrayList<>();
+        long dictionaryId = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            if (TYPE_STRING.equals(column.getType()) && isLowCardinality(firstBatch[i], rows)) {
+                DictionaryEncoding encoding = new DictionaryEncoding(dictionaryId++, false, new ArrowType.Int(32, true));
+                VarCharVector dictionaryVector = new VarCharVector(
+                    new Field(column.getName(), FieldType.nullable(ArrowType.Utf8.INSTANCE), null), allocator);
+                dictionaryVector.allocateNew();
+                dictionaryVector.setValueCount(0);
+                dictionaryProvider.put(new Dictionary(dictionaryVector, encoding));
+                dictionaryColumns.put(i, new DictionaryColumn(dictionaryVector));
+                fields.add(new Field(column.getName(), new FieldType(true, encoding.getIndexType(), encoding), null));
+            } else {
+                fields.add(new Field(column.getName(), FieldType.nullable(arrowType(column)), null));
+            }
+        }
+        root = VectorSchemaRoot.create(new Schema(fields), allocator);
+        writer = new ArrowStreamWriter(root, dictionaryProvider, Channels.newChannel(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                // 输出流由调用方关闭
+                flush();
+            }
+        }));
+        writer.start();
+    }
+
+    private boolean isLowCardinality(Object[] values, int rows) {
+        if (maxDictionarySize <= 0 || rows == 0) {
+            return false;
+        }
+        Set<String> distinct = new HashSet<>();
+        for (int r = 0; r < rows; r++) {
+            if (values[r] != null && distinct.add(values[r].toString()) && distinct.size() > maxDictionarySize) {
+                return false;
+            }
+        }
+        return distinct.size() * 2 <= rows;
+    }
+
+    private static ArrowType arrowType(Column column) {
+        switch (column.getType()) {
+            case TYPE_INT64:
+                return new ArrowType.Int(64, true);
+            case TYPE_FLOAT64:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case TYPE_DECIMAL:
+                return new ArrowType.Decimal(DECIMAL_PRECISION, column.getScale(), 128);
+            case TYPE_BOOL:
+                return ArrowType.Bool.INSTANCE;
+            case TYPE_DATE:
+                return new ArrowType.Date(DateUnit.DAY);
+            case TYPE_TIMESTAMP:
+                return new ArrowType.Timestamp(TimeUnit.MILLISECOND, null);
+            default:
+                return ArrowType.Utf8.INSTANCE;
+        }
+    }
+
+    @Override
+    protected void writeBatch(Object[][] values, int rows) throws IOException {
+        root.clear();
+        for (int i = 0; i < columns.size(); i++) {
+            FieldVector vector = root.getVector(i);
+            vector.allocateNew();
+            DictionaryColumn dictionary = dictionaryColumns.get(i);
+            if (dictionary != null) {
+                writeDictionaryIndices(dictionary, (IntVector) vector, values[i], rows);
+            } else {
+                writeValues(vector, columns.get(i).getType(), values[i], rows);
+            }
+            vector.setValueCount(rows);
+        }
+        root.setRowCount(rows);
+        writer.writeBatch();
+    }
+
+    private void writeDictionaryIndices(DictionaryColumn dictionary, IntVector indices, Object[] values, int rows) {
+        int added = 0;
+        Set<String> batchValues = new HashSet<>();
+        for (int r = 0; r < rows; r++) {
+            if (values[r] != null && batchValues.add((String) values[r]) && !dictionary.indexOf.containsKey(values[r])) {
+                added++;
+            }
+        }
+        if (dictionary.indexOf.size() + added > maxDictionarySize) {
+            // 字典已满：替换为只含本批取值的新字典
+            dictionary.indexOf.clear();
+            dictionary.vector.reset();
+        }
+        int size = dictionary.indexOf.size();
+        for (int r = 0; r < rows; r++) {
+            String value = (String) values[r];
+            if (value == null) {
+                indices.setNull(r);
+                continue;
+            }
+            Integer index = dictionary.indexOf.get(value);
+            if (index == null) {
+                index = size++;
+                dictionary.indexOf.put(value, index);
+                dictionary.vector.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+            }
+            indices.setSafe(r, index);
+        }
+        dictionary.vector.setValueCount(size);
+    }
+
+    private static void writeValues(FieldVector vector, String type, Object[] values, int rows) {
+        for (int r = 0; r < rows; r++) {
+            Object value = values[r];
+            if (value == null) {
+                continue;
+            }
+            switch (type) {
+                case TYPE_INT64:
+                    ((BigIntVector) vector).setSafe(r, (Long) value);
+                    break;
+                case TYPE_FLOAT64:
+                    ((Float8Vector) vector).setSafe(r, (Double) value);
+                    break;
+                case TYPE_DECIMAL:
+                    ((DecimalVector) vector).setSafe(r, (BigDecimal) value);
+                    break;
+                case TYPE_BOOL:
+                    ((BitVector) vector).setSafe(r, (Boolean) value ? 1 : 0);
+                    break;
+                case TYPE_DATE:
+                    ((DateDayVector) vector).setSafe(r, (Integer) value);
+                    break;
+                case TYPE_TIMESTAMP:
+                    ((TimeStampMilliVector) vector).setSafe(r, (Long) value);
+                    break;
+                default:
+                    ((VarCharVector) vector).setSafe(r, value.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        writer.end();
+    }
+
+    @Override
+    protected void release() {
+        if (writer != null) {
+            writer.close();
+        }
+        if (root != null) {
+            root.close();
+        }
+        for (DictionaryColumn dictionary : dictionaryColumns.values()) {
+            dictionary.vector.close();
+        }
+        if (allocator != null) {
+            allocator.close();
+        }
+    }
+}
@@ -4,6 +4,8 @@ import com.mypalantir.meta.Loader;
 import com.mypalantir.metric.AtomicMetric;
 import com.mypalantir.repository.IInstanceStorage;
 import com.mypalantir.repository.InstanceStorage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -20,6 +22,15 @@ public class AtomicMetricService {
     private DataValidator validator;
     private LinkService linkService;
 
+    /** 原子指标变更后失效依赖它的指标结果缓存 */
+    @Autowired(required = false)
+    private MetricResultCache resultCache;
+
+    /** 定义变更后失效依赖规划中的节点 */
+    @Autowired(required = false)
+    @Lazy
+    private MetricDependencyPlanner dependencyPlanner;
+
     public AtomicMetricService(IInstanceStorage storage, Loader loader) {
         this.storage = storage;
         this.loader = loader;
@@ -104,6 +115,12 @@ public class AtomicMetricService {
 
         // 更新实例
         storage.updateInstance("AtomicMetric", id, data);
+        if (resultCache != null) {
+            resultCache.invalidateMetric(id);
+        }
+        if (dependencyPlanner != null) {
+            dependencyPlanner.invalidate(id);
+        }
     }
 
     /**
@@ -111,6 +128,12 @@ public class AtomicMetricService {
      */
     public void deleteAtomicMetric(String id) throws IOException {
         storage.deleteInstance("AtomicMetric", id);
+        if (resultCache != null) {
+            resultCache.invalidateMetric(id);
+        }
+        if (dependencyPlanner != null) {
+            dependencyPlanner.invalidate(id);
+        }
     }
 
     /**
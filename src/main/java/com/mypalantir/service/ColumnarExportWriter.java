@@ -0,0 +1,396 @@
+package com.mypalantir.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * 列式导出写入器基类（Arrow IPC / Parquet）
+ * 按 batchSize 缓冲原始行值，每满一批按列转换为列类型后交给子类写出，内存占用只与批大小相关。
+ * 列类型由本体属性 data_type 决定；类型未知的列（如查询结果中的表达式列）按首批数据的首个非空值推断。
+ * 子类在首批写出前收到 {@link #start(Object[][], int)}，可据此决定字典编码等列级参数。
+ */
+public abstract class ColumnarExportWriter implements Closeable {
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    public static final int DEFAULT_MAX_DICTIONARY_SIZE = 256;
+
+    public static final String TYPE_STRING = "string";
+    public static final String TYPE_INT64 = "int64";
+    public static final String TYPE_FLOAT64 = "float64";
+    public static final String TYPE_DECIMAL = "decimal";
+    public static final String TYPE_BOOL = "bool";
+    public static final String TYPE_DATE = "date";
+    public static final String TYPE_TIMESTAMP = "timestamp";
+    public static final String TYPE_JSON = "json";
+
+    /** decimal 列精度固定为 38，小数位取首批数据的最大小数位（至少 2，至多 18） */
+    public static final int DECIMAL_PRECISION = 38;
+    private static final int MIN_DECIMAL_SCALE = 2;
+    private static final int MAX_DECIMAL_SCALE = 18;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .registerModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    /**
+     * 导出列定义，type 为 null 表示按首批数据推断
+     */
+    public static class Column {
+        private final String name;
+        private String type;
+        private int scale;
+
+        public Column(String name, String type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * decimal 列的小数位
+         */
+        public int getScale() {
+            return scale;
+        }
+    }
+
+    protected final List<Column> columns;
+    protected final int batchSize;
+    private final Object[][] buffers;
+    private int buffered;
+    private long totalRows;
+    private long conversionErrors;
+    private boolean started;
+    private boolean closed;
+
+    protected ColumnarExportWriter(List<Column> columns, int batchSize) {
+        this.columns = new ArrayList<>(columns);
+        this.batchSize = Math.max(1, batchSize);
+        this.buffers = new Object[this.columns.size()][this.batchSize];
+    }
+
+    /**
+     * 本体属性数据类型 -> 导出列类型
+     */
+    public static String typeOf(String dataType) {
+        if (dataType == null) {
+            return TYPE_STRING;
+        }
+        switch (dataType.toLowerCase()) {
+            case "int":
+            case "integer":
+            case "long":
+                return TYPE_INT64;
+            case "float":
+            case "double":
+            case "number":
+                return TYPE_FLOAT64;
+            case "bigdecimal":
+            case "decimal":
+                return TYPE_DECIMAL;
+            case "bool":
+            case "boolean":
+                return TYPE_BOOL;
+            case "date":
+                return TYPE_DATE;
+            case "datetime":
+            case "timestamp":
+                return TYPE_TIMESTAMP;
+            case "json":
+                return TYPE_JSON;
+            default:
+                return TYPE_STRING;
+        }
+    }
+
+    static String typeOfValue(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte || value instanceof BigInteger) {
+            return TYPE_INT64;
+        }
+        if (value instanceof Float || value instanceof Double) {
+            return TYPE_FLOAT64;
+        }
+        if (value instanceof BigDecimal) {
+            return TYPE_DECIMAL;
+        }
+        if (value instanceof Boolean) {
+            return TYPE_BOOL;
+        }
+        if (value instanceof java.sql.Date || value instanceof LocalDate) {
+            return TYPE_DATE;
+        }
+        if (value instanceof Date || value instanceof LocalDateTime || value instanceof OffsetDateTime
+                || value instanceof ZonedDateTime || value instanceof Instant) {
+            return TYPE_TIMESTAMP;
+        }
+        if (value instanceof Map || value instanceof Collection) {
+            return TYPE_JSON;
+        }
+        return TYPE_STRING;
+    }
+
+    /**
+     * 写入一行（按列名取值，缺失列为 null），满一批时写出
+     */
+    public void writeRow(Map<String, Object> row) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            buffers[i][buffered] = row.get(columns.get(i).getName());
+        }
+        buffered++;
+        totalRows++;
+        if (buffered == batchSize) {
+            flush();
+        }
+    }
+
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    /**
+     * 无法转换为列类型而写为 null 的值个数
+     */
+    public long getConversionErrors() {
+        return conversionErrors;
+    }
+
+    public List<Column> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * 写出剩余行并结束输出（零行时也写出 schema），不关闭底层输出流
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (buffered > 0 || !started) {
+                flush();
+            }
+            finish();
+        } finally {
+            release();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (!started) {
+            resolveColumns();
+            start(buffers, buffered);
+            started = true;
+        }
+        if (buffered == 0) {
+            return;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            Object[] values = buffers[i];
+            for (int r = 0; r < buffered; r++) {
+                values[r] = convert(values[r], column);
+            }
+        }
+        writeBatch(buffers, buffered);
+        for (Object[] values : buffers) {
+            Arrays.fill(values, 0, buffered, null);
+        }
+        buffered = 0;
+    }
+
+    /**
+     * 补全首批数据推断的列类型与 decimal 小数位
+     */
+    private void resolveColumns() {
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            if (column.type == null) {
+                Object sample = null;
+                for (int r = 0; r < buffered && sample == null; r++) {
+                    sample = buffers[i][r];
+                }
+                column.type = typeOfValue(sample);
+            }
+            if (TYPE_DECIMAL.equals(column.type)) {
+                int scale = MIN_DECIMAL_SCALE;
+                for (int r = 0; r < buffered; r++) {
+                    try {
+                        BigDecimal value = toBigDecimal(buffers[i][r]);
+                        if (value != null) {
+                            scale = Math.max(scale, value.stripTrailingZeros().scale());
+                        }
+                    } catch (RuntimeException e) {
+                        // 转换失败的值写出时计入 conversionErrors
+                    }
+                }
+                column.scale = Math.min(scale, MAX_DECIMAL_SCALE);
+            }
+        }
+    }
+
+    /**
+     * 首批写出前调用，列类型已确定
+     * @param firstBatch 首批原始值（按列），可用于决定字典编码
+     * @param rows 首批行数，可能为 0
+     */
+    protected abstract void start(Object[][] firstBatch, int rows) throws IOException;
+
+    /**
+     * 写出一批已转换的值：int64 为 Long，float64 为 Double，decimal 为按列小数位取整的 BigDecimal，
+     * bool 为 Boolean，date 为纪元日（Integer），timestamp 为纪元毫秒（Long，本地时间按 UTC 计），
+     * string / json 为 String；null 表示空值
+     */
+    protected abstract void writeBatch(Object[][] values, int rows) throws IOException;
+
+    /**
+     * 写出结束标记（Arrow 流结束符 / Parquet footer）
+     */
+    protected abstract void finish() throws IOException;
+
+    /**
+     * 释放子类持有的资源，写出失败时同样调用
+     */
+    protected void release() {
+    }
+
+    private Object convert(Object value, Column column) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            switch (column.type) {
+                case TYPE_INT64:
+                    if (value instanceof Number && !(value instanceof BigDecimal) && !(value instanceof Double)
+                            && !(value instanceof Float)) {
+                        return ((Number) value).longValue();
+                    }
+                    return toBigDecimal(value).longValueExact();
+                case TYPE_FLOAT64:
+                    if (value instanceof Number) {
+                        return ((Number) value).doubleValue();
+                    }
+                    return Double.parseDouble(value.toString().trim());
+                case TYPE_DECIMAL:
+                    BigDecimal decimal = toBigDecimal(value).setScale(column.scale, RoundingMode.HALF_UP);
+                    if (decimal.precision() > DECIMAL_PRECISION) {
+                        throw new ArithmeticException("decimal overflow: " + decimal);
+                    }
+                    return decimal;
+                case TYPE_BOOL:
+                    if (value instanceof Boolean) {
+                        return value;
+                    }
+                    if (value instanceof Number) {
+                        return ((Number) value).intValue() != 0;
+                    }
+                    String text = value.toString().trim();
+                    if ("true".equalsIgnoreCase(text) || "1".equals(text)) {
+                        return Boolean.TRUE;
+                    }
+                    if ("false".equalsIgnoreCase(text) || "0".equals(text)) {
+                        return Boolean.FALSE;
+                    }
+                    throw new IllegalArgumentException("not a boolean: " + text);
+                case TYPE_DATE:
+                    return (int) toLocalDate(value).toEpochDay();
+                case TYPE_TIMESTAMP:
+                    return toLocalDateTime(value).toInstant(ZoneOffset.UTC).toEpochMilli();
+                case TYPE_JSON:
+                    return value instanceof String ? value : MAPPER.writeValueAsString(value);
+                default:
+                    return value.toString();
+            }
+        } catch (RuntimeException | JsonProcessingException e) {
+            conversionErrors++;
+            return null;
+        }
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        return new BigDecimal(value.toString().trim());
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        if (value instanceof Date || value instanceof LocalDateTime || value instanceof OffsetDateTime
+                || value instanceof ZonedDateTime || value instanceof Instant) {
+            return toLocalDateTime(value).toLocalDate();
+        }
+        String text = value.toString().trim();
+        return LocalDate.parse(text.length() > 10 ? text.substring(0, 10) : text);
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        if (value instanceof java.sql.Timestamp) {
+            return ((java.sql.Timestamp) value).toLocalDateTime();
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate().atStartOfDay();
+        }
+        if (value instanceof Date) {
+            return LocalDateTime.ofInstant(((Date) value).toInstant(), ZoneId.systemDefault());
+        }
+        if (value instanceof LocalDate) {
+            return ((LocalDate) value).atStartOfDay();
+        }
+        if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        }
+        if (value instanceof ZonedDateTime) {
+            return ((ZonedDateTime) value).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        }
+        if (value instanceof Instant) {
+            return LocalDateTime.ofInstant((Instant) value, ZoneId.systemDefault());
+        }
+        String text = value.toString().trim();
+        if (text.length() == 10) {
+            return LocalDate.parse(text).atStartOfDay();
+        }
+        return LocalDateTime.parse(text.replace(' ', 'T'));
+    }
+}
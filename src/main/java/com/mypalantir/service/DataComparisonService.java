@@ -68,7 +68,7 @@ public class DataComparisonService {
 
         // 从 databaseMetadataService 获取该库的实际数据库名（用作 Calcite catalog）
         String catalogName = databaseMetadataService.getDatabaseNameById(databaseId);
-        DataSource dataSource = databaseMetadataService.getDataSourceForDatabase(databaseId);
+        DataSource dataSource = databaseMetadataService.getReadDataSourceForDatabase(databaseId, ReadRouting.COMPARISON);
 
         Connection calciteConnection = null;
         try {
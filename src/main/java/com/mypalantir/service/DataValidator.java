@@ -7,6 +7,8 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -50,6 +52,80 @@ public class DataValidator {
         }
     }
 
+    /**
+     * 预编译对象类型的校验规则（属性列表、类型、正则约束），批量导入时每行复用，
+     * 不再逐行查找对象类型和编译正则；校验语义与 {@link #validateInstanceData} 一致
+     */
+    public CompiledRules compile(String objectTypeName) throws Loader.NotFoundException {
+        ObjectType objectType = loader.getObjectType(objectTypeName);
+        List<CompiledProperty> properties = new ArrayList<>();
+        if (objectType.getProperties() != null) {
+            for (Property prop : objectType.getProperties()) {
+                Pattern pattern = null;
+                if (prop.getConstraints() != null && prop.getConstraints().get("pattern") instanceof String) {
+                    pattern = Pattern.compile((String) prop.getConstraints().get("pattern"));
+                }
+                properties.add(new CompiledProperty(prop, pattern));
+            }
+        }
+        return new CompiledRules(properties);
+    }
+
+    private static class CompiledProperty {
+        final Property property;
+        final Pattern pattern;
+
+        CompiledProperty(Property property, Pattern pattern) {
+            this.property = property;
+            this.pattern = pattern;
+        }
+    }
+
+    /**
+     * 预编译的对象类型校验规则，线程安全，可在多个导入线程间共享
+     */
+    public class CompiledRules {
+        private final List<CompiledProperty> properties;
+
+        private CompiledRules(List<CompiledProperty> properties) {
+            this.properties = properties;
+        }
+
+        public List<Property> getProperties() {
+            List<Property> result = new ArrayList<>(properties.size());
+            for (CompiledProperty compiled : properties) {
+                result.add(compiled.property);
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+        /**
+         * 校验实例数据（与 validateInstanceData 相同：补齐默认值、检查必填、类型与约束）
+         */
+        public void validate(Map<String, Object> data) throws ValidationException {
+            for (CompiledProperty compiled : properties) {
+                Property prop = compiled.property;
+                if (!data.containsKey(prop.getName())) {
+                    if (prop.getDefaultValue() != null) {
+                        data.put(prop.getName(), prop.getDefaultValue());
+                    } else if (prop.isRequired()) {
+                        throw new ValidationException("required field '" + prop.getName() + "' is missing");
+                    }
+                }
+            }
+            for (CompiledProperty compiled : properties) {
+                Property prop = compiled.property;
+                if (data.containsKey(prop.getName())) {
+                    Object value = data.get(prop.getName());
+                    validateType(prop.getDataType(), value);
+                    if (prop.getConstraints() != null) {
+                        validateConstraints(prop, value, compiled.pattern);
+                    }
+                }
+            }
+        }
+    }
+
     public void validateLinkData(String linkTypeName, String sourceID, String targetID, Map<String, Object> properties) throws ValidationException, Loader.NotFoundException {
         LinkType linkType = loader.getLinkType(linkTypeName);
 
@@ -88,7 +164,7 @@ public class DataValidator {
 
         // 约束验证
         if (prop.getConstraints() != null) {
-            validateConstraints(prop, value);
+            validateConstraints(prop, value, null);
         }
     }
 
@@ -105,7 +181,7 @@ public class DataValidator {
             return;
         }
 
-        switch (dataType) {
+        switch (normalizeDataType(dataType)) {
             case "string":
                 if (!(value instanceof String)) {
                     throw new ValidationException("expected string type");
@@ -154,9 +230,31 @@ public class DataValidator {
         }
     }
 
-    private void validateConstraints(Property prop, Object value) throws ValidationException {
+    /**
+     * 本体中常用的类型别名归一到校验类型：integer/long -> int，double/number/bigdecimal -> float，boolean -> bool
+     */
+    static String normalizeDataType(String dataType) {
+        switch (dataType) {
+            case "integer":
+            case "long":
+                return "int";
+            case "double":
+            case "number":
+            case "bigdecimal":
+                return "float";
+            case "boolean":
+                return "bool";
+            default:
+                return dataType;
+        }
+    }
+
+    /**
+     * @param compiledPattern 预编译的 pattern 约束，为 null 时按需编译
+     */
+    private void validateConstraints(Property prop, Object value, Pattern compiledPattern) throws ValidationException {
         Map<String, Object> constraints = prop.getConstraints();
-        String dataType = prop.getDataType();
+        String dataType = prop.getDataType() != null ? normalizeDataType(prop.getDataType()) : null;
 
         if ("string".equals(dataType) && value instanceof String) {
             String str = (String) value;
@@ -182,7 +280,7 @@ public class DataValidator {
             if (constraints.containsKey("pattern")) {
                 Object patternObj = constraints.get("pattern");
                 if (patternObj instanceof String) {
-                    Pattern pattern = Pattern.compile((String) patternObj);
+                    Pattern pattern = compiledPattern != null ? compiledPattern : Pattern.compile((String) patternObj);
                     if (!pattern.matcher(str).matches()) {
                         throw new ValidationException("string does not match pattern");
                     }
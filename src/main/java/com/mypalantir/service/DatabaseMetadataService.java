@@ -15,6 +15,8 @@ import java.io.IOException;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 @Service
@@ -52,23 +54,71 @@ public class DatabaseMetadataService {
     @Value("${db.dynamic-pool.leak-detection-threshold:0}")
     private long leakDetectionThresholdMs;
 
+    /** 只读副本路由开关：关闭时所有读写都使用主库 */
+    @Value("${db.read-replica.enabled:true}")
+    private boolean readReplicaEnabled = true;
+    /** 可以路由到只读副本的工作负载（见 ReadRouting） */
+    @Value("${db.read-replica.workloads:query,metric,comparison}")
+    private List<String> readReplicaWorkloads = List.of(ReadRouting.QUERY, ReadRouting.METRIC, ReadRouting.COMPARISON);
+    /** 副本默认允许的最大复制延迟（毫秒），可由副本配置的 max_lag_ms 覆盖 */
+    @Value("${db.read-replica.max-lag-ms:10000}")
+    private long readReplicaMaxLagMs = 10000;
+    /** 副本延迟探测间隔（毫秒） */
+    @Value("${db.read-replica.lag-check-interval-ms:5000}")
+    private long readReplicaLagCheckIntervalMs = 5000;
+    /** 默认数据库的只读副本 JDBC URL（逗号分隔，使用默认数据库的用户名密码） */
+    @Value("${db.read-replicas:}")
+    private List<String> defaultReadReplicaUrls = List.of();
+
+    /** 元数据缓存开关：关闭时每次调用都查询 DatabaseMetaData / Oracle 字典 */
+    @Value("${db.metadata-cache.enabled:true}")
+    private boolean metadataCacheEnabled = true;
+    /** 元数据缓存有效期（毫秒） */
+    @Value("${db.metadata-cache.ttl-ms:600000}")
+    private long metadataCacheTtlMs = 600000;
+    /** 距离过期不足该时长（毫秒）的条目在返回旧值的同时后台重新加载，0 表示不提前刷新 */
+    @Value("${db.metadata-cache.refresh-ahead-ms:120000}")
+    private long metadataCacheRefreshAheadMs = 120000;
+
+    private volatile MetadataCache metadataCache;
+    private volatile ExecutorService metadataRefresher;
+
     /** 按 databaseId 缓存的 HikariCP 数据源，避免重复创建连接池 */
     private final Map<String, DataSource> dataSourceCache = new ConcurrentHashMap<>();
 
+    /** 按 databaseId 缓存的主库 + 只读副本 */
+    private final Map<String, ReadReplicaRouter.ReplicaSet> replicaSetCache = new ConcurrentHashMap<>();
+    private volatile ReadReplicaRouter readReplicaRouter;
+
     // 线程本地变量，用于防止递归调用
     private static final ThreadLocal<Boolean> isGettingDatabaseInstance = ThreadLocal.withInitial(() -> false);
 
     public List<Map<String, Object>> getTables(String databaseId) throws SQLException, IOException {
+        if (metadataCacheEnabled) {
+            return copyRows(metadataCache().get(cacheKeyOf(databaseId), MetadataCache.TABLES, null, null,
+                conn -> loadTables(conn, databaseId)));
+        }
         try (Connection conn = getConnectionForDatabase(databaseId)) {
-            return getTables(conn, databaseId);
+            return loadTables(conn, databaseId);
         }
     }
 
     /**
-     * 使用已有连接获取表列表（供批量同步时复用连接）。
-     * Oracle 使用 ALL_TABLES/ALL_VIEWS 直接 SQL，比 DatabaseMetaData 快得多。
+     * 使用已有连接获取表列表（供批量同步时复用连接），命中元数据缓存时不访问数据库
      */
     public List<Map<String, Object>> getTables(Connection conn, String databaseId) throws SQLException, IOException {
+        if (metadataCacheEnabled) {
+            return copyRows(metadataCache().get(cacheKeyOf(databaseId), MetadataCache.TABLES, null, conn,
+                c -> loadTables(c, databaseId)));
+        }
+        return loadTables(conn, databaseId);
+    }
+
+    /**
+     * 查询表列表。
+     * Oracle 使用 ALL_TABLES/ALL_VIEWS 直接 SQL，比 DatabaseMetaData 快得多。
+     */
+    private List<Map<String, Object>> loadTables(Connection conn, String databaseId) throws SQLException, IOException {
         List<Map<String, Object>> tables = new ArrayList<>();
         String product = conn.getMetaData().getDatabaseProductName();
         boolean isOracle = product != null && product.toUpperCase().contains("ORACLE");
@@ -111,15 +161,30 @@ public class DatabaseMetadataService {
     }
 
     public List<Map<String, Object>> getColumns(String databaseId, String tableName) throws SQLException, IOException {
+        if (metadataCacheEnabled) {
+            return copyRows(metadataCache().get(cacheKeyOf(databaseId), MetadataCache.COLUMNS, tableName, null,
+                conn -> loadColumns(conn, databaseId, tableName)));
+        }
         try (Connection conn = getConnectionForDatabase(databaseId)) {
-            return getColumns(conn, databaseId, tableName);
+            return loadColumns(conn, databaseId, tableName);
         }
     }
 
     /**
-     * 使用已有连接获取单表列信息（供批量同步时复用连接）。
+     * 使用已有连接获取单表列信息（供批量同步时复用连接），命中元数据缓存时不访问数据库
      */
     public List<Map<String, Object>> getColumns(Connection conn, String databaseId, String tableName) throws SQLException, IOException {
+        if (metadataCacheEnabled) {
+            return copyRows(metadataCache().get(cacheKeyOf(databaseId), MetadataCache.COLUMNS, tableName, conn,
+                c -> loadColumns(c, databaseId, tableName)));
+        }
+        return loadColumns(conn, databaseId, tableName);
+    }
+
+    /**
+     * 查询单表列信息（列名、类型、可空、主键标记）
+     */
+    private List<Map<String, Object>> loadColumns(Connection conn, String databaseId, String tableName) throws SQLException, IOException {
         List<Map<String, Object>> columns = new ArrayList<>();
         DatabaseMetaData metaData = conn.getMetaData();
         String catalog = getDatabaseName(databaseId);
@@ -162,6 +227,23 @@ public class DatabaseMetadataService {
         if (tables == null || tables.isEmpty()) {
             return Collections.emptyMap();
         }
+        if (!metadataCacheEnabled) {
+            return loadAllColumnsBatch(conn, databaseId, tables);
+        }
+        // 以表查找键集合区分批次：同一数据库重复同步同一批表时命中缓存
+        TreeSet<String> tableKeys = new TreeSet<>();
+        for (Map<String, Object> t : tables) {
+            String schema = (String) t.get("schema");
+            tableKeys.add((schema != null && !schema.isEmpty()) ? schema + "." + t.get("name") : (String) t.get("name"));
+        }
+        Map<String, List<Map<String, Object>>> cached = metadataCache().get(cacheKeyOf(databaseId),
+            MetadataCache.ALL_COLUMNS, String.join(",", tableKeys), conn, c -> loadAllColumnsBatch(c, databaseId, tables));
+        Map<String, List<Map<String, Object>>> result = new HashMap<>();
+        cached.forEach((key, columns) -> result.put(key, copyRows(columns)));
+        return result;
+    }
+
+    private Map<String, List<Map<String, Object>>> loadAllColumnsBatch(Connection conn, String databaseId, List<Map<String, Object>> tables) throws SQLException, IOException {
         List<String> tableNames = new ArrayList<>();
         for (Map<String, Object> t : tables) {
             tableNames.add((String) t.get("name"));
@@ -177,7 +259,7 @@ public class DatabaseMetadataService {
             String tableName = (String) t.get("name");
             String schema = (String) t.get("schema");
             String key = (schema != null && !schema.isEmpty()) ? schema + "." + tableName : tableName;
-            result.put(key, getColumns(conn, databaseId, tableName));
+            result.put(key, loadColumns(conn, databaseId, tableName));
         }
         return result;
     }
@@ -270,27 +352,41 @@ public class DatabaseMetadataService {
      * @return 主键列名列表，无主键或失败时返回空列表
      */
     public List<String> getPrimaryKeyColumns(String databaseId, String tableName) {
-        List<String> ordered = new ArrayList<>();
-        try (Connection conn = getConnectionForDatabase(databaseId)) {
-            DatabaseMetaData metaData = conn.getMetaData();
-            String catalog = getDatabaseName(databaseId);
-            if (metaData.getDatabaseProductName() != null && metaData.getDatabaseProductName().toUpperCase().contains("ORACLE")) {
-                catalog = null;
+        try {
+            if (metadataCacheEnabled) {
+                return new ArrayList<>(metadataCache().get(cacheKeyOf(databaseId), MetadataCache.PRIMARY_KEYS, tableName,
+                    null, conn -> loadPrimaryKeyColumns(conn, databaseId, tableName)));
             }
-            try (ResultSet pkRs = metaData.getPrimaryKeys(catalog, null, tableName)) {
-                List<Object[]> rows = new ArrayList<>();
-                while (pkRs.next()) {
-                    int keySeq = pkRs.getInt("KEY_SEQ");
-                    String columnName = pkRs.getString("COLUMN_NAME");
-                    rows.add(new Object[]{ Integer.valueOf(keySeq), columnName });
-                }
-                rows.sort((a, b) -> ((Integer) a[0]).compareTo((Integer) b[0]));
-                for (Object[] row : rows) {
-                    ordered.add((String) row[1]);
-                }
+            try (Connection conn = getConnectionForDatabase(databaseId)) {
+                return loadPrimaryKeyColumns(conn, databaseId, tableName);
             }
         } catch (SQLException | IOException e) {
             // 返回空列表，调用方会回退到默认 id 列
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 查询主键列，按 KEY_SEQ 排序
+     */
+    private List<String> loadPrimaryKeyColumns(Connection conn, String databaseId, String tableName) throws SQLException, IOException {
+        List<String> ordered = new ArrayList<>();
+        DatabaseMetaData metaData = conn.getMetaData();
+        String catalog = getDatabaseName(databaseId);
+        if (metaData.getDatabaseProductName() != null && metaData.getDatabaseProductName().toUpperCase().contains("ORACLE")) {
+            catalog = null;
+        }
+        try (ResultSet pkRs = metaData.getPrimaryKeys(catalog, null, tableName)) {
+            List<Object[]> rows = new ArrayList<>();
+            while (pkRs.next()) {
+                int keySeq = pkRs.getInt("KEY_SEQ");
+                String columnName = pkRs.getString("COLUMN_NAME");
+                rows.add(new Object[]{ Integer.valueOf(keySeq), columnName });
+            }
+            rows.sort((a, b) -> ((Integer) a[0]).compareTo((Integer) b[0]));
+            for (Object[] row : rows) {
+                ordered.add((String) row[1]);
+            }
         }
         return ordered;
     }
@@ -318,24 +414,28 @@ public class DatabaseMetadataService {
              Statement stmt = conn.createStatement()) {
             stmt.setQueryTimeout(getQueryTimeoutSeconds());
             try (ResultSet rs = stmt.executeQuery(sql)) {
-                ResultSetMetaData metaData = rs.getMetaData();
-                int columnCount = metaData.getColumnCount();
-                while (rs.next()) {
-                    Map<String, Object> row = new HashMap<>();
-                    for (int i = 1; i <= columnCount; i++) {
-                        String columnName = metaData.getColumnName(i);
-                        Object value = rs.getObject(i);
-                        value = convertSqlValue(value);
-                        row.put(columnName, value);
-                    }
-                    results.add(row);
-                }
+                readRows(rs, results);
             }
         }
         
         return results;
     }
 
+    private void readRows(ResultSet rs, List<Map<String, Object>> results) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        while (rs.next()) {
+            Map<String, Object> row = new HashMap<>();
+            for (int i = 1; i <= columnCount; i++) {
+                String columnName = metaData.getColumnName(i);
+                Object value = rs.getObject(i);
+                value = convertSqlValue(value);
+                row.put(columnName, value);
+            }
+            results.add(row);
+        }
+    }
+
     /**
      * 获取数据库类型（mysql、doris、oracle、postgresql 等），用于生成兼容的 DDL。
      * 默认数据库使用 Config.db.type，动态数据源从实例的 type 字段读取。
@@ -388,6 +488,204 @@ public class DatabaseMetadataService {
         return ds;
     }
 
+    /**
+     * 获取只读连接：当前线程的工作负载（ReadRouting）允许时路由到延迟在阈值内的只读副本，否则使用主库。
+     * 写入和同步表 upsert 使用 {@link #getConnectionForDatabase(String)}，始终连接主库。
+     */
+    public Connection getReadConnectionForDatabase(String databaseId) throws SQLException, IOException {
+        ReadReplicaRouter.ReplicaSet set = getReplicaSet(databaseId);
+        if (set == null) {
+            return getConnectionForDatabase(databaseId);
+        }
+        return router().getConnection(set, ReadRouting.current());
+    }
+
+    /**
+     * 获取只读数据源：每次取连接时按当前线程的工作负载路由（Calcite JdbcSchema 等持有 DataSource 的场景）
+     */
+    public DataSource getReadDataSourceForDatabase(String databaseId) throws IOException {
+        ReadReplicaRouter.ReplicaSet set = getReplicaSet(databaseId);
+        return set != null ? router().routingDataSource(set, ReadRouting::current) : getDataSourceForDatabase(databaseId);
+    }
+
+    /**
+     * 获取固定工作负载的只读数据源（不依赖调用线程的标记）
+     */
+    public DataSource getReadDataSourceForDatabase(String databaseId, String workload) throws IOException {
+        ReadReplicaRouter.ReplicaSet set = getReplicaSet(databaseId);
+        return set != null ? router().routingDataSource(set, () -> workload) : getDataSourceForDatabase(databaseId);
+    }
+
+    /**
+     * 失效元数据缓存：tableName 为空时失效整个数据库，否则失效该表的列、主键及数据库的表列表
+     * @return 移除的条目数
+     */
+    public int invalidateMetadata(String databaseId, String tableName) {
+        MetadataCache cache = metadataCache;
+        if (cache == null) {
+            return 0;
+        }
+        return tableName == null || tableName.isEmpty()
+            ? cache.invalidate(cacheKeyOf(databaseId))
+            : cache.invalidateTable(cacheKeyOf(databaseId), tableName);
+    }
+
+    /**
+     * 元数据缓存统计：条目数、命中、未命中、合并的并发加载、后台刷新次数
+     */
+    public Map<String, Object> getMetadataCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", metadataCacheEnabled);
+        if (metadataCacheEnabled) {
+            stats.putAll(metadataCache().stats());
+        }
+        return stats;
+    }
+
+    private MetadataCache metadataCache() {
+        MetadataCache cache = metadataCache;
+        if (cache == null) {
+            synchronized (this) {
+                if (metadataCache == null) {
+                    metadataRefresher = Executors.newFixedThreadPool(2, r -> {
+                        Thread thread = new Thread(r, "metadata-cache-refresher");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    metadataCache = new MetadataCache(metadataCacheTtlMs, metadataCacheRefreshAheadMs,
+                        id -> getConnectionForDatabase(DEFAULT_DB_KEY.equals(id) ? null : id), metadataRefresher);
+                }
+                cache = metadataCache;
+            }
+        }
+        return cache;
+    }
+
+    private static String cacheKeyOf(String databaseId) {
+        return (databaseId == null || databaseId.isEmpty()) ? DEFAULT_DB_KEY : databaseId;
+    }
+
+    /**
+     * 缓存中的行由多个调用方共享，返回副本避免调用方修改（如补充 table_id）影响缓存
+     */
+    private static List<Map<String, Object>> copyRows(List<Map<String, Object>> rows) {
+        List<Map<String, Object>> copy = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            copy.add(new HashMap<>(row));
+        }
+        return copy;
+    }
+
+    /**
+     * 各数据源只读副本的状态（健康、延迟、路由次数、回退主库次数），只包含已配置副本且已被访问过的数据源
+     */
+    public Map<String, Object> getReadReplicaStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", readReplicaEnabled);
+        status.put("workloads", readReplicaWorkloads);
+        Map<String, Object> databases = new TreeMap<>();
+        replicaSetCache.forEach((key, set) -> {
+            if (set.hasReplicas()) {
+                databases.put(key, set.toMap());
+            }
+        });
+        status.put("databases", databases);
+        return status;
+    }
+
+    private ReadReplicaRouter router() {
+        ReadReplicaRouter router = readReplicaRouter;
+        if (router == null) {
+            synchronized (this) {
+                if (readReplicaRouter == null) {
+                    readReplicaRouter = new ReadReplicaRouter(readReplicaWorkloads, readReplicaLagCheckIntervalMs);
+                }
+                router = readReplicaRouter;
+            }
+        }
+        return router;
+    }
+
+    /**
+     * 主库与副本集合，未启用或未配置副本时返回 null
+     */
+    private ReadReplicaRouter.ReplicaSet getReplicaSet(String databaseId) throws IOException {
+        if (!readReplicaEnabled) {
+            return null;
+        }
+        String cacheKey = (databaseId == null || databaseId.isEmpty()) ? DEFAULT_DB_KEY : databaseId;
+        ReadReplicaRouter.ReplicaSet set = replicaSetCache.get(cacheKey);
+        if (set == null) {
+            synchronized (replicaSetCache) {
+                set = replicaSetCache.get(cacheKey);
+                if (set == null) {
+                    set = new ReadReplicaRouter.ReplicaSet(getDataSourceForDatabase(databaseId), createReplicas(cacheKey));
+                    replicaSetCache.put(cacheKey, set);
+                }
+            }
+        }
+        return set.hasReplicas() ? set : null;
+    }
+
+    /**
+     * 按配置创建副本连接池（只读连接）：默认数据库读取 db.read-replicas，其他数据源读取 database 实例的 read_replicas
+     */
+    private List<ReadReplicaRouter.Replica> createReplicas(String cacheKey) throws IOException {
+        List<ReadReplicaRouter.Replica> replicas = new ArrayList<>();
+        if (DEFAULT_DB_KEY.equals(cacheKey)) {
+            String dbType = connectionManager.getConfig().getDbType() != null
+                    ? connectionManager.getConfig().getDbType().toLowerCase() : "mysql";
+            int index = 0;
+            for (String url : defaultReadReplicaUrls) {
+                if (url == null || url.isBlank()) {
+                    continue;
+                }
+                String name = cacheKey + "-replica-" + index++;
+                DataSource ds = newPooledDataSource(appendJdbcTimeoutParams(url.trim()), connectionManager.getConfig().getDbUser(),
+                        connectionManager.getConfig().getDbPassword(), dbType, "mypalantir-ds-" + name, true);
+                replicas.add(new ReadReplicaRouter.Replica(name, ds, dbType, readReplicaMaxLagMs, null));
+            }
+            return replicas;
+        }
+
+        Map<String, Object> database = loadDatabaseInstance(cacheKey);
+        List<ReadReplicaRouter.ReplicaSpec> specs = ReadReplicaRouter.parseSpecs(database.get("read_replicas"));
+        String dbType = database.get("type") != null ? database.get("type").toString().toLowerCase() : "mysql";
+        int index = 0;
+        for (ReadReplicaRouter.ReplicaSpec spec : specs) {
+            String url = spec.getUrl();
+            if (url == null) {
+                int port = spec.getPort() != null ? spec.getPort()
+                        : database.get("port") instanceof Number ? ((Number) database.get("port")).intValue() : 3306;
+                String dbName = spec.getDatabaseName() != null ? spec.getDatabaseName() : (String) database.get("database_name");
+                url = buildJdbcUrlForType(spec.getHost(), port, dbName, dbType);
+            }
+            String username = spec.getUsername() != null ? spec.getUsername() : (String) database.get("username");
+            String password = spec.getPassword() != null ? spec.getPassword()
+                    : database.get("password") != null ? database.get("password").toString() : connectionManager.getConfig().getDbPassword();
+            String name = cacheKey + "-replica-" + index++;
+            DataSource ds = newPooledDataSource(appendJdbcTimeoutParams(url), username, password, dbType, "mypalantir-ds-" + name, true);
+            replicas.add(new ReadReplicaRouter.Replica(name, ds, dbType,
+                    spec.getMaxLagMs() != null ? spec.getMaxLagMs() : readReplicaMaxLagMs, spec.getLagQuery()));
+        }
+        return replicas;
+    }
+
+    /**
+     * 读取 database 实例（防递归）
+     */
+    private Map<String, Object> loadDatabaseInstance(String cacheKey) throws IOException {
+        if (isGettingDatabaseInstance.get()) {
+            throw new IOException("Recursive call detected while getting database instance: " + cacheKey);
+        }
+        try {
+            isGettingDatabaseInstance.set(true);
+            return (graphInstanceStorage != null ? graphInstanceStorage : instanceStorage).getInstance("database", cacheKey);
+        } finally {
+            isGettingDatabaseInstance.set(false);
+        }
+    }
+
     /**
      * 创建 HikariCP 连接池数据源
      */
@@ -404,16 +702,7 @@ public class DatabaseMetadataService {
             String configuredType = connectionManager.getConfig().getDbType();
             if (configuredType != null) dbType = configuredType.toLowerCase();
         } else {
-            if (isGettingDatabaseInstance.get()) {
-                throw new IOException("Recursive call detected while getting database instance: " + cacheKey);
-            }
-            Map<String, Object> database;
-            try {
-                isGettingDatabaseInstance.set(true);
-                database = (graphInstanceStorage != null ? graphInstanceStorage : instanceStorage).getInstance("database", cacheKey);
-            } finally {
-                isGettingDatabaseInstance.set(false);
-            }
+            Map<String, Object> database = loadDatabaseInstance(cacheKey);
 
             String host = (String) database.get("host");
             Integer port = database.get("port") instanceof Number
@@ -430,7 +719,11 @@ public class DatabaseMetadataService {
         }
 
         url = appendJdbcTimeoutParams(url);
+        return newPooledDataSource(url, username, password, dbType, "mypalantir-ds-" + cacheKey, false);
+    }
 
+    private DataSource newPooledDataSource(String url, String username, String password, String dbType,
+                                           String poolName, boolean readOnly) {
         HikariConfig config = new HikariConfig();
         config.setJdbcUrl(url);
         config.setUsername(username);
@@ -447,7 +740,8 @@ public class DatabaseMetadataService {
         if ("mysql".equals(dbType) || "doris".equals(dbType)) {
             config.setConnectionInitSql("SET NAMES utf8mb4 COLLATE utf8mb4_unicode_ci");
         }
-        config.setPoolName("mypalantir-ds-" + cacheKey);
+        config.setReadOnly(readOnly);
+        config.setPoolName(poolName);
         return new HikariDataSource(config);
     }
 
@@ -459,6 +753,14 @@ public class DatabaseMetadataService {
             }
         }
         dataSourceCache.clear();
+        for (ReadReplicaRouter.ReplicaSet set : replicaSetCache.values()) {
+            set.close();
+        }
+        replicaSetCache.clear();
+        ExecutorService refresher = metadataRefresher;
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
     }
 
     /**
@@ -489,11 +791,11 @@ public class DatabaseMetadataService {
 
     /**
      * 在 JDBC URL 后追加 socket/connect 超时参数，防止 MySQL 无响应时无限阻塞占用连接。
-     * Oracle 使用不同机制，不追加此类参数。
+     * Oracle 使用不同机制，H2（本地测试库）不支持这些参数，均不追加。
      */
     private String appendJdbcTimeoutParams(String url) {
         if (url == null) return url;
-        if (url.startsWith("jdbc:oracle:")) {
+        if (url.startsWith("jdbc:oracle:") || url.startsWith("jdbc:h2:")) {
             return url;
         }
         String sep = url.contains("?") ? "&" : "?";
@@ -543,9 +845,19 @@ public class DatabaseMetadataService {
              Statement stmt = conn.createStatement()) {
             stmt.setQueryTimeout(getQueryTimeoutSeconds());
             return stmt.executeUpdate(sql);
+        } finally {
+            // 建表、改表、删表后表列表和列信息已变化
+            if (isDdl(sql)) {
+                invalidateMetadata(databaseId, null);
+            }
         }
     }
 
+    private static boolean isDdl(String sql) {
+        String head = sql == null ? "" : sql.stripLeading().toUpperCase();
+        return head.startsWith("CREATE ") || head.startsWith("ALTER ") || head.startsWith("DROP ") || head.startsWith("RENAME ");
+    }
+
     /**
      * 检查表是否存在
      * MySQL/PostgreSQL: 使用 INFORMATION_SCHEMA
@@ -613,7 +925,7 @@ public class DatabaseMetadataService {
     /**
      * 将 SQL 类型转换为基本类型，以便保存到 Neo4j
      */
-    private Object convertSqlValue(Object value) {
+    static Object convertSqlValue(Object value) {
         if (value == null) {
             return null;
         }
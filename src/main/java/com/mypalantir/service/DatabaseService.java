@@ -22,6 +22,9 @@ public class DatabaseService {
     @Autowired
     private Loader loader;
 
+    @Autowired(required = false)
+    private MetadataRegistry metadataRegistry;
+
     public String getOrCreateDefaultDatabase() throws IOException {
         // 查找是否已存在默认数据库
         Map<String, Object> filters = new HashMap<>();
@@ -42,7 +45,11 @@ public class DatabaseService {
         dbData.put("username", config.getDbUser());
         // 不存储密码到实例中，从配置读取
 
-        return instanceStorage.createInstance("database", dbData);
+        String databaseId = instanceStorage.createInstance("database", dbData);
+        if (metadataRegistry != null) {
+            metadataRegistry.refresh(MetadataRegistry.DATABASE, databaseId);
+        }
+        return databaseId;
     }
 
     public Map<String, Object> getDatabase(String databaseId) throws IOException {
@@ -56,7 +63,11 @@ public class DatabaseService {
         if (schemaName != null) {
             tableData.put("schema_name", schemaName);
         }
-        return instanceStorage.createInstance("table", tableData);
+        String tableId = instanceStorage.createInstance("table", tableData);
+        if (metadataRegistry != null) {
+            metadataRegistry.refresh(MetadataRegistry.TABLE, tableId);
+        }
+        return tableId;
     }
 
     public String getOrCreateTable(String databaseId, String tableName, String schemaName) throws IOException {
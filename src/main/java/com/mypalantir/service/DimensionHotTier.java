@@ -0,0 +1,404 @@
+package com.mypalantir.service;
+
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.meta.Property;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 小维度对象类型的内存热层
+ * 将配置的对象类型（收费站、门架、路段、车型等数据量小且几乎不变的维度）按映射整表加载到嵌入式 H2 内存库，
+ * 联邦查询规划时这些类型的视图指向本地副本，只需维度查找的跨源查询不再访问远端数据源。
+ * 定时（query.hot-tier.refresh-interval-ms）或映射抽取完成后重新加载；每次加载写入新表后原子切换，
+ * 上一代表保留到下次切换再删除，避免正在执行的查询读到被删除的表。
+ */
+@Service
+public class DimensionHotTier {
+    private static final Logger logger = LoggerFactory.getLogger(DimensionHotTier.class);
+
+    /** 联邦查询中热层挂载的 schema 名 */
+    public static final String SCHEMA_NAME = "HOT_TIER";
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final AtomicLong INSTANCES = new AtomicLong();
+
+    @Autowired
+    private MappingService mappingService;
+
+    @Autowired
+    private DatabaseMetadataService databaseMetadataService;
+
+    @Autowired
+    private Loader loader;
+
+    /** 常驻内存的对象类型（逗号分隔） */
+    @Value("${query.hot-tier.types:}")
+    private List<String> types = List.of();
+
+    /** 定时重新加载间隔（毫秒），0 表示只在映射抽取后或手动刷新时加载 */
+    @Value("${query.hot-tier.refresh-interval-ms:600000}")
+    private long refreshIntervalMs = 600000;
+
+    /** 单个类型的行数上限，超过则放弃加载，查询继续访问远端 */
+    @Value("${query.hot-tier.max-rows:100000}")
+    private long maxRows = 100000;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final String url = "jdbc:h2:mem:mypalantir_hot_tier_" + INSTANCES.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+    private volatile HikariDataSource dataSource;
+
+    /**
+     * 一个对象类型的加载状态
+     */
+    static final class Entry {
+        final String table;
+        final String retiredTable;
+        final String databaseId;
+        final String sourceTable;
+        final long rows;
+        final long loadedAt;
+        final long loadMs;
+        volatile String error;
+        volatile long lastAttemptAt;
+
+        Entry(String table, String retiredTable, String databaseId, String sourceTable, long rows,
+              long loadedAt, long loadMs) {
+            this.table = table;
+            this.retiredTable = retiredTable;
+            this.databaseId = databaseId;
+            this.sourceTable = sourceTable;
+            this.rows = rows;
+            this.loadedAt = loadedAt;
+            this.loadMs = loadMs;
+            this.lastAttemptAt = loadedAt;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("loaded", table != null);
+            map.put("rows", rows);
+            map.put("source_database_id", databaseId);
+            map.put("source_table", sourceTable);
+            map.put("loaded_at", loadedAt > 0 ? loadedAt : null);
+            map.put("load_ms", loadMs);
+            map.put("error", error);
+            return map;
+        }
+    }
+
+    public boolean isPinned(String objectType) {
+        return objectType != null && types.contains(objectType);
+    }
+
+    /**
+     * 已加载的热层表名；未配置、尚未加载或加载失败时返回 null（查询回退远端）
+     */
+    public String getLoadedTable(String objectType) {
+        if (!isPinned(objectType)) {
+            return null;
+        }
+        Entry entry = entries.get(objectType);
+        return entry != null ? entry.table : null;
+    }
+
+    /**
+     * 热层 H2 内存库的数据源（联邦查询以 JdbcSchema 挂载）
+     */
+    public DataSource getDataSource() {
+        HikariDataSource ds = dataSource;
+        if (ds == null) {
+            synchronized (this) {
+                if (dataSource == null) {
+                    HikariConfig config = new HikariConfig();
+                    config.setJdbcUrl(url);
+                    config.setUsername("sa");
+                    config.setPassword("");
+                    config.setMaximumPoolSize(8);
+                    config.setMinimumIdle(1);
+                    config.setPoolName("mypalantir-hot-tier");
+                    dataSource = new HikariDataSource(config);
+                }
+                ds = dataSource;
+            }
+        }
+        return ds;
+    }
+
+    /**
+     * 定时检查：未加载或超过刷新间隔的类型重新加载
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void scheduledRefresh() {
+        long now = System.currentTimeMillis();
+        for (String objectType : types) {
+            Entry entry = entries.get(objectType);
+            boolean due = entry == null
+                || (entry.table == null && now - entry.lastAttemptAt >= 30000)
+                || (refreshIntervalMs > 0 && now - entry.loadedAt >= refreshIntervalMs);
+            if (due) {
+                try {
+                    refresh(objectType);
+                } catch (IOException e) {
+                    // 错误已记录在状态中
+                }
+            }
+        }
+    }
+
+    /**
+     * 映射抽取完成后调用：常驻类型重新加载
+     */
+    public void onMappingSynced(String objectType) {
+        if (!isPinned(objectType)) {
+            return;
+        }
+        try {
+            refresh(objectType);
+        } catch (IOException e) {
+            // 错误已记录在状态中，查询继续使用上一代数据
+        }
+    }
+
+    /**
+     * 重新加载一个常驻类型：写入新表后切换，失败时保留上一代数据并记录错误
+     */
+    public Map<String, Object> refresh(String objectType) throws IOException {
+        if (!isPinned(objectType)) {
+            throw new IllegalArgumentException("Object type '" + objectType + "' is not configured in query.hot-tier.types");
+        }
+        synchronized (loadLocks.computeIfAbsent(objectType, k -> new Object())) {
+            Entry previous = entries.get(objectType);
+            try {
+                Entry loaded = load(objectType, previous);
+                entries.put(objectType, loaded);
+                if (previous != null && previous.retiredTable != null) {
+                    dropTable(previous.retiredTable);
+                }
+                logger.info("[DimensionHotTier] Loaded {} rows of {} into {} in {}ms",
+                    loaded.rows, objectType, loaded.table, loaded.loadMs);
+                return loaded.toMap();
+            } catch (IOException | SQLException e) {
+                Entry failed = previous != null ? previous : new Entry(null, null, null, null, 0, 0, 0);
+                if (!Objects.equals(failed.error, e.getMessage())) {
+                    logger.warn("[DimensionHotTier] Failed to load {}, queries keep using {}: {}", objectType,
+                        failed.table != null ? "previous copy" : "remote source", e.getMessage());
+                }
+                failed.error = e.getMessage();
+                failed.lastAttemptAt = System.currentTimeMillis();
+                entries.put(objectType, failed);
+                throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    private Entry load(String objectType, Entry previous) throws IOException, SQLException {
+        long start = System.currentTimeMillis();
+        List<Map<String, Object>> mappings = mappingService.getMappingsByObjectType(objectType);
+        if (mappings == null || mappings.isEmpty()) {
+            throw new IOException("Object type '" + objectType + "' does not have a mapping configured");
+        }
+        Map<String, Object> mapping = mappings.get(0);
+        Map<String, Object> table = mappingService.getTableInstance((String) mapping.get("table_id"));
+        if (table == null || table.get("name") == null) {
+            throw new IOException("Mapped table of '" + objectType + "' not found");
+        }
+        String sourceTable = (String) table.get("name");
+        String databaseId = (String) table.get("database_id");
+
+        // 与联邦查询视图一致：只加载映射了列的属性，列名为属性名
+        @SuppressWarnings("unchecked")
+        Map<String, String> columnPropertyMappings = (Map<String, String>) mapping.get("column_property_mappings");
+        Map<String, String> propertyColumns = new LinkedHashMap<>();
+        if (columnPropertyMappings != null) {
+            ObjectType type;
+            try {
+                type = loader.getObjectType(objectType);
+            } catch (Loader.NotFoundException e) {
+                throw new IOException("Object type '" + objectType + "' not found");
+            }
+            Map<String, String> columnsByProperty = new HashMap<>();
+            for (Map.Entry<String, String> e : columnPropertyMappings.entrySet()) {
+                columnsByProperty.put(e.getValue(), e.getKey());
+            }
+            if (type.getProperties() != null) {
+                for (Property prop : type.getProperties()) {
+                    String column = columnsByProperty.get(prop.getName());
+                    if (column != null) {
+                        propertyColumns.put(prop.getName(), column);
+                    }
+                }
+            }
+        }
+        if (propertyColumns.isEmpty()) {
+            throw new IOException("Mapping of '" + objectType + "' has no property columns");
+        }
+
+        String dbType = databaseMetadataService.getDatabaseType(databaseId);
+        StringBuilder select = new StringBuilder("SELECT ");
+        int i = 0;
+        for (String column : propertyColumns.values()) {
+            select.append(i++ > 0 ? ", " : "").append(quoteSource(column, dbType));
+        }
+        select.append(" FROM ").append(quoteSource(sourceTable, dbType));
+
+        String hotTable = "hot_" + generation.incrementAndGet();
+        List<String> properties = new ArrayList<>(propertyColumns.keySet());
+        long rows = 0;
+        boolean created = false;
+        try (Connection source = databaseMetadataService.getConnectionForDatabase(databaseId);
+             Statement stmt = source.createStatement()) {
+            stmt.setQueryTimeout(databaseMetadataService.getQueryTimeoutSeconds());
+            stmt.setMaxRows((int) Math.min(Integer.MAX_VALUE, maxRows + 1));
+            try (ResultSet rs = stmt.executeQuery(select.toString());
+                 Connection hot = getDataSource().getConnection()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                try (Statement ddl = hot.createStatement()) {
+                    ddl.execute(buildCreateTable(hotTable, properties, meta));
+                }
+                created = true;
+                StringBuilder insert = new StringBuilder("INSERT INTO ").append(quote(hotTable)).append(" VALUES (");
+                for (int c = 0; c < properties.size(); c++) {
+                    insert.append(c > 0 ? ", ?" : "?");
+                }
+                insert.append(")");
+                try (PreparedStatement ps = hot.prepareStatement(insert.toString())) {
+                    int pending = 0;
+                    while (rs.next()) {
+                        if (++rows > maxRows) {
+                            throw new IOException("Object type '" + objectType + "' has more than " + maxRows
+                                + " rows, too large for the hot tier");
+                        }
+                        for (int c = 1; c <= properties.size(); c++) {
+                            ps.setObject(c, rs.getObject(c));
+                        }
+                        ps.addBatch();
+                        if (++pending >= INSERT_BATCH_SIZE) {
+                            ps.executeBatch();
+                            pending = 0;
+                        }
+                    }
+                    if (pending > 0) {
+                        ps.executeBatch();
+                    }
+                }
+            }
+        } catch (IOException | SQLException e) {
+            if (created) {
+                dropTable(hotTable);
+            }
+            throw e;
+        }
+        String retired = previous != null ? previous.table : null;
+        long now = System.currentTimeMillis();
+        return new Entry(hotTable, retired, databaseId, sourceTable, rows, now, now - start);
+    }
+
+    /**
+     * 热层表 DDL：按源结果集的 JDBC 类型映射到 H2 类型，列名为属性名
+     */
+    static String buildCreateTable(String table, List<String> properties, ResultSetMetaData meta) throws SQLException {
+        StringBuilder ddl = new StringBuilder("CREATE TABLE ").append(quote(table)).append(" (");
+        for (int c = 1; c <= properties.size(); c++) {
+            ddl.append(c > 1 ? ", " : "").append(quote(properties.get(c - 1))).append(' ')
+                .append(h2Type(meta.getColumnType(c), meta.getPrecision(c), meta.getScale(c)));
+        }
+        return ddl.append(")").toString();
+    }
+
+    static String h2Type(int sqlType, int precision, int scale) {
+        switch (sqlType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return "BOOLEAN";
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return "INTEGER";
+            case Types.BIGINT:
+                return "BIGINT";
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return "DOUBLE PRECISION";
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return precision > 0 && precision <= 100000
+                    ? "DECIMAL(" + precision + ", " + Math.max(0, Math.min(scale, precision)) + ")" : "DECIMAL";
+            case Types.DATE:
+                return "DATE";
+            case Types.TIME:
+                return "TIME";
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return "TIMESTAMP";
+            default:
+                return "VARCHAR";
+        }
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String quoteSource(String identifier, String dbType) {
+        if ("mysql".equals(dbType) || "doris".equals(dbType)) {
+            return "`" + identifier.replace("`", "``") + "`";
+        }
+        return quote(identifier);
+    }
+
+    private void dropTable(String table) {
+        try (Connection hot = getDataSource().getConnection(); Statement stmt = hot.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + quote(table));
+        } catch (SQLException e) {
+            logger.warn("[DimensionHotTier] Failed to drop {}: {}", table, e.getMessage());
+        }
+    }
+
+    /**
+     * 热层状态：每个常驻类型的行数、加载时间与最近错误
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("types", types);
+        status.put("refresh_interval_ms", refreshIntervalMs);
+        status.put("max_rows", maxRows);
+        Map<String, Object> byType = new LinkedHashMap<>();
+        for (String objectType : types) {
+            Entry entry = entries.get(objectType);
+            byType.put(objectType, entry != null ? entry.toMap() : Map.of("loaded", false));
+        }
+        status.put("entries", byType);
+        return status;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        HikariDataSource ds = dataSource;
+        if (ds != null) {
+            try (Connection conn = ds.getConnection(); Statement stmt = conn.createStatement()) {
+                stmt.execute("SHUTDOWN");
+            } catch (SQLException e) {
+                logger.debug("[DimensionHotTier] Shutdown of in-memory database failed: {}", e.getMessage());
+            }
+            ds.close();
+        }
+    }
+}
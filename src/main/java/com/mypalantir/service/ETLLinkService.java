@@ -4,6 +4,7 @@ import com.mypalantir.meta.LinkType;
 import com.mypalantir.meta.Loader;
 import com.mypalantir.repository.ILinkStorage;
 import com.mypalantir.repository.InstanceStorage;
+import com.mypalantir.repository.LinkBatchResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -60,14 +61,29 @@ public class ETLLinkService {
         // 验证关系类型
         LinkType linkTypeDef = loader.getLinkType(linkType);
         
+        List<Map<String, Object>> links = new ArrayList<>(requests.size());
         for (LinkCreateRequest request : requests) {
-            try {
-                String linkId = linkStorage.createLink(linkType, request.getSourceId(), request.getTargetId(), 
-                                                       request.getProperties() != null ? request.getProperties() : new HashMap<>());
-                result.addSuccess(linkId, request.getSourceId(), request.getTargetId());
-            } catch (Exception e) {
-                result.addFailure(request.getSourceId(), request.getTargetId(), e.getMessage());
-                logger.warn("Failed to create link from {} to {}: {}", request.getSourceId(), request.getTargetId(), e.getMessage());
+            Map<String, Object> link = new HashMap<>();
+            if (request.getProperties() != null) {
+                link.putAll(request.getProperties());
+            }
+            link.put("source_id", request.getSourceId());
+            link.put("target_id", request.getTargetId());
+            links.add(link);
+        }
+
+        LinkBatchResult batchResult = linkStorage.createLinksBatch(linkType, links);
+        Map<Integer, String> errors = new HashMap<>();
+        for (LinkBatchResult.Failure failure : batchResult.getFailures()) {
+            errors.put(failure.getIndex(), failure.getError());
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            LinkCreateRequest request = requests.get(i);
+            if (errors.containsKey(i)) {
+                result.addFailure(request.getSourceId(), request.getTargetId(), errors.get(i));
+                logger.warn("Failed to create link from {} to {}: {}", request.getSourceId(), request.getTargetId(), errors.get(i));
+            } else {
+                result.addSuccess(batchResult.getIds().get(i), request.getSourceId(), request.getTargetId());
             }
         }
         
@@ -115,13 +131,18 @@ public class ETLLinkService {
         // 验证关系类型
         loader.getLinkType(linkType);
         
-        for (String linkId : linkIds) {
-            try {
-                linkStorage.deleteLink(linkType, linkId);
+        LinkBatchResult batchResult = linkStorage.deleteLinksBatch(linkType, linkIds);
+        Map<Integer, String> errors = new HashMap<>();
+        for (LinkBatchResult.Failure failure : batchResult.getFailures()) {
+            errors.put(failure.getIndex(), failure.getError());
+        }
+        for (int i = 0; i < linkIds.size(); i++) {
+            String linkId = linkIds.get(i);
+            if (errors.containsKey(i)) {
+                result.addFailure(linkId, errors.get(i));
+                logger.warn("Failed to delete link {}: {}", linkId, errors.get(i));
+            } else {
                 result.addSuccess(linkId);
-            } catch (Exception e) {
-                result.addFailure(linkId, e.getMessage());
-                logger.warn("Failed to delete link {}: {}", linkId, e.getMessage());
             }
         }
         
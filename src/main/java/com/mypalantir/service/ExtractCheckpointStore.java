@@ -0,0 +1,209 @@
+package com.mypalantir.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mypalantir.repository.PathManager;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 映射增量抽取检查点存储
+ * 每个映射一个 {mappingId}.json（模式、水位线、上次运行统计）；行哈希模式另有 {mappingId}.hashes（每行 id\thash）。
+ * 均先写临时文件再原子替换，抽取失败时保留上一次成功的检查点。
+ * 同步表 -> 图数据库的续传检查点按对象类型保存在 graph/{objectType}.json，同步完成后删除。
+ */
+@Service
+public class ExtractCheckpointStore {
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final PathManager pathManager;
+
+    public ExtractCheckpointStore(PathManager pathManager) {
+        this.pathManager = pathManager;
+    }
+
+    /**
+     * 增量抽取检查点
+     */
+    public static class Checkpoint {
+        private String mappingId;
+        private String mode;
+        private String watermarkColumn;
+        /** 已抽取的最大水位线值（文本形式），首次运行前为 null */
+        private String watermark;
+        /** 水位线值类型：number | timestamp | date | string，决定绑定参数时的 JDBC 类型 */
+        private String watermarkType;
+        private String targetTable;
+        private String targetDatabaseId;
+        private String lastRunAt;
+        private long rowsRead;
+        private long rowsWritten;
+        private long runs;
+
+        public String getMappingId() { return mappingId; }
+        public void setMappingId(String mappingId) { this.mappingId = mappingId; }
+        public String getMode() { return mode; }
+        public void setMode(String mode) { this.mode = mode; }
+        public String getWatermarkColumn() { return watermarkColumn; }
+        public void setWatermarkColumn(String watermarkColumn) { this.watermarkColumn = watermarkColumn; }
+        public String getWatermark() { return watermark; }
+        public void setWatermark(String watermark) { this.watermark = watermark; }
+        public String getWatermarkType() { return watermarkType; }
+        public void setWatermarkType(String watermarkType) { this.watermarkType = watermarkType; }
+        public String getTargetTable() { return targetTable; }
+        public void setTargetTable(String targetTable) { this.targetTable = targetTable; }
+        public String getTargetDatabaseId() { return targetDatabaseId; }
+        public void setTargetDatabaseId(String targetDatabaseId) { this.targetDatabaseId = targetDatabaseId; }
+        public String getLastRunAt() { return lastRunAt; }
+        public void setLastRunAt(String lastRunAt) { this.lastRunAt = lastRunAt; }
+        public long getRowsRead() { return rowsRead; }
+        public void setRowsRead(long rowsRead) { this.rowsRead = rowsRead; }
+        public long getRowsWritten() { return rowsWritten; }
+        public void setRowsWritten(long rowsWritten) { this.rowsWritten = rowsWritten; }
+        public long getRuns() { return runs; }
+        public void setRuns(long runs) { this.runs = runs; }
+    }
+
+    /**
+     * 同步表 -> 图数据库同步检查点：已连续同步到的最后一个 id
+     */
+    public static class GraphSyncCheckpoint {
+        private String objectType;
+        private String targetTable;
+        private String targetDatabaseId;
+        private String lastId;
+        private long rowsSynced;
+        /** RUNNING | FAILED */
+        private String status;
+        private String error;
+        private String updatedAt;
+
+        public String getObjectType() { return objectType; }
+        public void setObjectType(String objectType) { this.objectType = objectType; }
+        public String getTargetTable() { return targetTable; }
+        public void setTargetTable(String targetTable) { this.targetTable = targetTable; }
+        public String getTargetDatabaseId() { return targetDatabaseId; }
+        public void setTargetDatabaseId(String targetDatabaseId) { this.targetDatabaseId = targetDatabaseId; }
+        public String getLastId() { return lastId; }
+        public void setLastId(String lastId) { this.lastId = lastId; }
+        public long getRowsSynced() { return rowsSynced; }
+        public void setRowsSynced(long rowsSynced) { this.rowsSynced = rowsSynced; }
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+        public String getUpdatedAt() { return updatedAt; }
+        public void setUpdatedAt(String updatedAt) { this.updatedAt = updatedAt; }
+    }
+
+    /**
+     * @return 映射的检查点，不存在时返回 null
+     */
+    public Checkpoint load(String mappingId) throws IOException {
+        Path file = checkpointPath(mappingId);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return objectMapper.readValue(file.toFile(), Checkpoint.class);
+    }
+
+    public void save(Checkpoint checkpoint) throws IOException {
+        writeAtomically(checkpointPath(checkpoint.getMappingId()), checkpoint);
+    }
+
+    /**
+     * @return 对象类型未完成的图同步检查点，不存在时返回 null
+     */
+    public GraphSyncCheckpoint loadGraphSync(String objectType) throws IOException {
+        Path file = graphSyncPath(objectType);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return objectMapper.readValue(file.toFile(), GraphSyncCheckpoint.class);
+    }
+
+    public void saveGraphSync(GraphSyncCheckpoint checkpoint) throws IOException {
+        writeAtomically(graphSyncPath(checkpoint.getObjectType()), checkpoint);
+    }
+
+    public void clearGraphSync(String objectType) throws IOException {
+        Files.deleteIfExists(graphSyncPath(objectType));
+    }
+
+    private void writeAtomically(Path file, Object value) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        objectMapper.writeValue(tmp.toFile(), value);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 删除检查点与行哈希，下次抽取为全量
+     */
+    public void reset(String mappingId) throws IOException {
+        Files.deleteIfExists(checkpointPath(mappingId));
+        Files.deleteIfExists(hashesPath(mappingId));
+    }
+
+    /**
+     * @return 行 id -> 上次抽取时的行哈希，不存在时返回空 Map
+     */
+    public Map<String, Long> loadRowHashes(String mappingId) throws IOException {
+        Map<String, Long> hashes = new HashMap<>();
+        Path file = hashesPath(mappingId);
+        if (!Files.exists(file)) {
+            return hashes;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    hashes.put(line.substring(0, tab), Long.parseUnsignedLong(line.substring(tab + 1), 16));
+                }
+            }
+        }
+        return hashes;
+    }
+
+    public void saveRowHashes(String mappingId, Map<String, Long> hashes) throws IOException {
+        Path file = hashesPath(mappingId);
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> entry : hashes.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(Long.toHexString(entry.getValue()));
+                writer.write('\n');
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path checkpointPath(String mappingId) {
+        return Paths.get(pathManager.getExtractCheckpointDir(), safeName(mappingId) + ".json");
+    }
+
+    private Path hashesPath(String mappingId) {
+        return Paths.get(pathManager.getExtractCheckpointDir(), safeName(mappingId) + ".hashes");
+    }
+
+    private Path graphSyncPath(String objectType) {
+        return Paths.get(pathManager.getExtractCheckpointDir(), "graph", safeName(objectType) + ".json");
+    }
+
+    private static String safeName(String mappingId) {
+        return mappingId.replaceAll("[^a-zA-Z0-9_-]", "_");
+    }
+}
@@ -0,0 +1,313 @@
+package com.mypalantir.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 跨库抽取流水线：读取线程以流式游标读取源表，按批放入有界队列，多个写入线程并发写入目标表。
+ * 队列满时读取线程阻塞（背压），内存占用只与 batchSize × (queueCapacity + writers) 相关。
+ * 目标为 MySQL 协议数据库（MySQL/Doris/H2）时使用多行 INSERT，其余数据库使用 JDBC 批量执行。
+ * 每个写入线程每批单独提交；失败时已提交的批次保留，由调用方的 upsert 语义保证重跑幂等。
+ */
+class ExtractPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(ExtractPipeline.class);
+
+    /** 单条多行 INSERT 的占位符上限（MySQL 协议限制 65535） */
+    private static final int MAX_PLACEHOLDERS = 65535;
+    private static final List<Object[]> END = Collections.emptyList();
+
+    /**
+     * 源行转换为目标行（按目标列顺序），返回 null 表示跳过该行；在读取线程中调用
+     */
+    interface RowMapper {
+        Object[] map(Map<String, Object> sourceRow);
+    }
+
+    /**
+     * 各阶段计数
+     */
+    static final class Stats {
+        final AtomicLong rowsRead = new AtomicLong();
+        final AtomicLong rowsSkipped = new AtomicLong();
+        final AtomicLong rowsWritten = new AtomicLong();
+        final AtomicLong batchesWritten = new AtomicLong();
+        /** 读取线程读取与转换耗时 */
+        final AtomicLong readNanos = new AtomicLong();
+        /** 读取线程因队列满等待的耗时（背压） */
+        final AtomicLong readBlockedNanos = new AtomicLong();
+        /** 所有写入线程执行写入与提交的累计耗时 */
+        final AtomicLong writeNanos = new AtomicLong();
+        /** 所有写入线程等待数据的累计耗时 */
+        final AtomicLong writeIdleNanos = new AtomicLong();
+        long elapsedNanos;
+        int writers;
+
+        long getRowsRead() { return rowsRead.get(); }
+        long getRowsWritten() { return rowsWritten.get(); }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("rows_read", rowsRead.get());
+            map.put("rows_skipped", rowsSkipped.get());
+            map.put("rows_written", rowsWritten.get());
+            map.put("batches_written", batchesWritten.get());
+            map.put("writers", writers);
+            map.put("elapsed_ms", elapsedNanos / 1_000_000);
+            map.put("read_rows_per_sec", perSecond(rowsRead.get(), readNanos.get()));
+            map.put("write_rows_per_sec", perSecond(rowsWritten.get(), writers > 0 ? writeNanos.get() / writers : 0));
+            map.put("overall_rows_per_sec", perSecond(rowsWritten.get(), elapsedNanos));
+            map.put("reader_blocked_ms", readBlockedNanos.get() / 1_000_000);
+            map.put("writer_idle_ms", writeIdleNanos.get() / 1_000_000);
+            return map;
+        }
+
+        private static long perSecond(long rows, long nanos) {
+            return nanos > 0 ? Math.round(rows * 1_000_000_000.0 / nanos) : 0;
+        }
+    }
+
+    private final DatabaseMetadataService databaseMetadataService;
+    private final int fetchSize;
+    private final int batchSize;
+    private final int writers;
+    private final int queueCapacity;
+
+    ExtractPipeline(DatabaseMetadataService databaseMetadataService, int fetchSize, int batchSize, int writers, int queueCapacity) {
+        this.databaseMetadataService = databaseMetadataService;
+        this.fetchSize = Math.max(1, fetchSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.writers = Math.max(1, writers);
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * 执行抽取
+     * @param selectSql 源表查询，? 按顺序绑定 params
+     * @param insertPrefix 目标 INSERT 的 "INSERT INTO `t` (`c1`, ...) VALUES " 部分
+     * @param insertSuffix VALUES 之后的部分（如 ON DUPLICATE KEY UPDATE ...），可为空串
+     * @param columnCount 目标列数
+     */
+    Stats run(String sourceDatabaseId, String selectSql, List<Object> params,
+              String targetDatabaseId, String insertPrefix, String insertSuffix, int columnCount,
+              RowMapper mapper) throws SQLException, IOException {
+        Stats stats = new Stats();
+        stats.writers = writers;
+        long start = System.nanoTime();
+        BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        List<Thread> writerThreads = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            Thread thread = new Thread(() -> writeLoop(queue, failure, stats, targetDatabaseId, insertPrefix, insertSuffix, columnCount),
+                "extract-writer-" + i);
+            thread.setDaemon(true);
+            writerThreads.add(thread);
+            thread.start();
+        }
+
+        try {
+            read(sourceDatabaseId, selectSql, params, mapper, queue, failure, stats);
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            try {
+                signalEnd(queue, writerThreads);
+                for (Thread thread : writerThreads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            }
+        }
+        stats.elapsedNanos = System.nanoTime() - start;
+
+        Exception error = failure.get();
+        if (error instanceof SQLException) {
+            throw (SQLException) error;
+        }
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error != null) {
+            throw new IOException("Extract pipeline failed: " + error.getMessage(), error);
+        }
+        logger.info("[ExtractPipeline] {}", stats.toMap());
+        return stats;
+    }
+
+    /**
+     * 每个写入线程投递一个结束标记；写入线程均已退出（失败）时不再等待队列空位
+     */
+    private void signalEnd(BlockingQueue<List<Object[]>> queue, List<Thread> writerThreads) throws InterruptedException {
+        for (int i = 0; i < writerThreads.size(); i++) {
+            while (!queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                if (writerThreads.stream().noneMatch(Thread::isAlive)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void read(String sourceDatabaseId, String selectSql, List<Object> params, RowMapper mapper,
+                      BlockingQueue<List<Object[]>> queue, AtomicReference<Exception> failure, Stats stats)
+            throws SQLException, IOException, InterruptedException {
+        try (Connection conn = databaseMetadataService.getConnectionForDatabase(sourceDatabaseId)) {
+            String product = conn.getMetaData().getDatabaseProductName();
+            String productUpper = product != null ? product.toUpperCase() : "";
+            // PostgreSQL 仅在事务内按 fetchSize 使用游标，否则一次性加载全部结果
+            boolean restoreAutoCommit = productUpper.contains("POSTGRES") && conn.getAutoCommit();
+            if (restoreAutoCommit) {
+                conn.setAutoCommit(false);
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(selectSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // MySQL/Doris 驱动仅在 fetchSize = Integer.MIN_VALUE 时逐行流式读取
+                pstmt.setFetchSize(productUpper.contains("MYSQL") ? Integer.MIN_VALUE : fetchSize);
+                for (int i = 0; i < params.size(); i++) {
+                    pstmt.setObject(i + 1, params.get(i));
+                }
+                long readStart = System.nanoTime();
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    int sourceColumns = metaData.getColumnCount();
+                    String[] names = new String[sourceColumns];
+                    for (int i = 1; i <= sourceColumns; i++) {
+                        names[i - 1] = metaData.getColumnLabel(i);
+                    }
+                    List<Object[]> batch = new ArrayList<>(batchSize);
+                    while (failure.get() == null && rs.next()) {
+                        Map<String, Object> row = new HashMap<>(sourceColumns * 2);
+                        for (int i = 1; i <= sourceColumns; i++) {
+                            row.put(names[i - 1], rs.getObject(i));
+                        }
+                        stats.rowsRead.incrementAndGet();
+                        Object[] values = mapper.map(row);
+                        if (values == null) {
+                            stats.rowsSkipped.incrementAndGet();
+                            continue;
+                        }
+                        batch.add(values);
+                        if (batch.size() == batchSize) {
+                            stats.readNanos.addAndGet(System.nanoTime() - readStart);
+                            enqueue(queue, batch, failure, stats);
+                            batch = new ArrayList<>(batchSize);
+                            readStart = System.nanoTime();
+                        }
+                    }
+                    stats.readNanos.addAndGet(System.nanoTime() - readStart);
+                    if (!batch.isEmpty() && failure.get() == null) {
+                        enqueue(queue, batch, failure, stats);
+                    }
+                }
+            } finally {
+                if (restoreAutoCommit) {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
+            }
+        }
+    }
+
+    private void enqueue(BlockingQueue<List<Object[]>> queue, List<Object[]> batch,
+                         AtomicReference<Exception> failure, Stats stats) throws InterruptedException {
+        long waitStart = System.nanoTime();
+        while (failure.get() == null && !queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            // 队列满：等待写入线程消费
+        }
+        stats.readBlockedNanos.addAndGet(System.nanoTime() - waitStart);
+    }
+
+    private void writeLoop(BlockingQueue<List<Object[]>> queue, AtomicReference<Exception> failure, Stats stats,
+                           String targetDatabaseId, String insertPrefix, String insertSuffix, int columnCount) {
+        Connection conn = null;
+        try {
+            conn = databaseMetadataService.getConnectionForDatabase(targetDatabaseId);
+            conn.setAutoCommit(false);
+            String product = conn.getMetaData().getDatabaseProductName();
+            String productUpper = product != null ? product.toUpperCase() : "";
+            boolean multiRow = productUpper.contains("MYSQL") || productUpper.contains("H2");
+            int rowsPerStatement = multiRow ? Math.max(1, Math.min(batchSize, MAX_PLACEHOLDERS / Math.max(1, columnCount))) : 1;
+            Map<Integer, String> sqlCache = new HashMap<>();
+
+            while (true) {
+                long idleStart = System.nanoTime();
+                List<Object[]> batch = queue.take();
+                stats.writeIdleNanos.addAndGet(System.nanoTime() - idleStart);
+                if (batch == END || failure.get() != null) {
+                    return;
+                }
+                long writeStart = System.nanoTime();
+                if (multiRow) {
+                    for (int from = 0; from < batch.size(); from += rowsPerStatement) {
+                        int to = Math.min(batch.size(), from + rowsPerStatement);
+                        String sql = sqlCache.computeIfAbsent(to - from,
+                            rows -> insertPrefix + String.join(", ", Collections.nCopies(rows, tuple(columnCount))) + insertSuffix);
+                        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                            int index = 1;
+                            for (int r = from; r < to; r++) {
+                                for (Object value : batch.get(r)) {
+                                    pstmt.setObject(index++, value);
+                                }
+                            }
+                            pstmt.executeUpdate();
+                        }
+                    }
+                } else {
+                    try (PreparedStatement pstmt = conn.prepareStatement(insertPrefix + tuple(columnCount) + insertSuffix)) {
+                        for (Object[] values : batch) {
+                            for (int i = 0; i < values.length; i++) {
+                                pstmt.setObject(i + 1, values[i]);
+                            }
+                            pstmt.addBatch();
+                        }
+                        pstmt.executeBatch();
+                    }
+                }
+                conn.commit();
+                stats.writeNanos.addAndGet(System.nanoTime() - writeStart);
+                stats.rowsWritten.addAndGet(batch.size());
+                stats.batchesWritten.incrementAndGet();
+            }
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ignored) {
+                    // 连接已不可用
+                }
+            }
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) {
+                    logger.warn("[ExtractPipeline] Failed to release target connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static String tuple(int columnCount) {
+        return "(" + String.join(", ", Collections.nCopies(columnCount, "?")) + ")";
+    }
+}
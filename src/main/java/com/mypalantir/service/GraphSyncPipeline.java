@@ -0,0 +1,428 @@
+package com.mypalantir.service;
+
+import com.mypalantir.repository.IInstanceStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 同步表 -> 图数据库（Neo4j/FalkorDB）流式同步：按 id 顺序以游标读取同步表，提取摘要字段后按批并发 MERGE。
+ * 在途批次数由自适应并发上限控制（AIMD）：批次耗时低于目标延迟时并发 +1/limit，超过目标或失败时减半，
+ * 读取线程在上限已满时阻塞（背压），内存占用只与 batchSize × maxParallelism 相关。
+ * 批次可乱序完成，检查点只推进到连续完成的最后一批的末尾 id，失败后从该 id 之后续传。
+ */
+class GraphSyncPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(GraphSyncPipeline.class);
+
+    /**
+     * 检查点推进回调（在完成批次的写入线程中串行调用）
+     */
+    interface CheckpointListener {
+        void committed(String lastId, long rowsSynced) throws IOException;
+    }
+
+    /**
+     * 同步计数与并发变化
+     */
+    static final class Stats {
+        final AtomicLong rowsRead = new AtomicLong();
+        final AtomicLong rowsSkipped = new AtomicLong();
+        final AtomicLong rowsSynced = new AtomicLong();
+        final AtomicLong batchesSynced = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        /** 所有批次 MERGE 的累计耗时 */
+        final AtomicLong batchNanos = new AtomicLong();
+        /** 读取线程因在途批次已满等待的耗时（背压） */
+        final AtomicLong readBlockedNanos = new AtomicLong();
+        String resumedAfter;
+        String lastId;
+        int minParallelism;
+        int maxParallelism;
+        int finalParallelism;
+        long elapsedNanos;
+
+        long getRowsSynced() { return rowsSynced.get(); }
+        String getLastId() { return lastId; }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("rows_read", rowsRead.get());
+            map.put("rows_skipped", rowsSkipped.get());
+            map.put("rows_synced", rowsSynced.get());
+            map.put("batches", batchesSynced.get());
+            map.put("retries", retries.get());
+            if (resumedAfter != null) {
+                map.put("resumed_after", resumedAfter);
+            }
+            map.put("last_id", lastId);
+            map.put("parallelism_min", minParallelism);
+            map.put("parallelism_max", maxParallelism);
+            map.put("parallelism_final", finalParallelism);
+            long batches = batchesSynced.get();
+            map.put("avg_batch_ms", batches > 0 ? batchNanos.get() / batches / 1_000_000 : 0);
+            map.put("reader_blocked_ms", readBlockedNanos.get() / 1_000_000);
+            map.put("elapsed_ms", elapsedNanos / 1_000_000);
+            map.put("rows_per_sec", elapsedNanos > 0 ? Math.round(rowsSynced.get() * 1_000_000_000.0 / elapsedNanos) : 0);
+            return map;
+        }
+    }
+
+    /**
+     * 自适应并发上限：加性增、乘性减。同一拥塞窗口内（上次减半之前开始的批次）的慢批次不重复减半。
+     */
+    static final class AdaptiveLimit {
+        private final int max;
+        private final long targetNanos;
+        private double limit;
+        private int inFlight;
+        private long lastDecreaseAt;
+        private int observedMin;
+        private int observedMax;
+
+        AdaptiveLimit(int initial, int max, long targetNanos) {
+            this.max = Math.max(1, max);
+            this.targetNanos = targetNanos;
+            this.limit = Math.max(1, Math.min(initial, this.max));
+            this.lastDecreaseAt = System.nanoTime();
+            this.observedMin = (int) limit;
+            this.observedMax = (int) limit;
+        }
+
+        synchronized void acquire() throws InterruptedException {
+            while (inFlight >= (int) limit) {
+                wait();
+            }
+            inFlight++;
+        }
+
+        synchronized void release() {
+            inFlight--;
+            notifyAll();
+        }
+
+        /**
+         * 记录一次批次写入结果并调整上限
+         * @param startedAt 批次开始时间（System.nanoTime）
+         */
+        synchronized void record(long startedAt, long latencyNanos, boolean success) {
+            if (!success || latencyNanos > targetNanos) {
+                if (startedAt > lastDecreaseAt) {
+                    limit = Math.max(1, limit / 2);
+                    lastDecreaseAt = System.nanoTime();
+                }
+            } else if (limit < max) {
+                limit = Math.min(max, limit + 1.0 / limit);
+            }
+            observedMin = Math.min(observedMin, (int) limit);
+            observedMax = Math.max(observedMax, (int) limit);
+            notifyAll();
+        }
+
+        synchronized int current() {
+            return (int) limit;
+        }
+
+        synchronized int observedMin() {
+            return observedMin;
+        }
+
+        synchronized int observedMax() {
+            return observedMax;
+        }
+    }
+
+    private final DatabaseMetadataService databaseMetadataService;
+    private final IInstanceStorage graphStorage;
+    private final int fetchSize;
+    private final int batchSize;
+    private final int initialParallelism;
+    private final int maxParallelism;
+    private final long targetLatencyNanos;
+    private final int maxRetries;
+    private final long retryBackoffMs;
+
+    GraphSyncPipeline(DatabaseMetadataService databaseMetadataService, IInstanceStorage graphStorage,
+                      int fetchSize, int batchSize, int initialParallelism, int maxParallelism,
+                      long targetLatencyMs, int maxRetries, long retryBackoffMs) {
+        this.databaseMetadataService = databaseMetadataService;
+        this.graphStorage = graphStorage;
+        this.fetchSize = Math.max(1, fetchSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxParallelism = Math.max(1, maxParallelism);
+        this.initialParallelism = Math.max(1, Math.min(initialParallelism, this.maxParallelism));
+        this.targetLatencyNanos = Math.max(1, targetLatencyMs) * 1_000_000L;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBackoffMs = Math.max(0, retryBackoffMs);
+    }
+
+    /**
+     * 流式同步整张同步表
+     * @param afterId 上次检查点，非 null 时只同步 id 大于该值的行
+     * @param summarizer 同步表行 -> 图节点摘要字段（须含 id）
+     * @param listener 检查点推进回调，可为 null
+     */
+    Stats syncTable(String objectType, String tableName, String databaseId, String afterId,
+                    Function<Map<String, Object>, Map<String, Object>> summarizer,
+                    CheckpointListener listener) throws IOException, SQLException {
+        String sql = "SELECT * FROM `" + tableName + "`" + (afterId != null ? " WHERE `id` > ?" : "") + " ORDER BY `id`";
+        Run run = new Run(objectType, listener);
+        run.stats.resumedAfter = afterId;
+        run.stats.lastId = afterId;
+        try {
+            try (Connection conn = databaseMetadataService.getConnectionForDatabase(databaseId)) {
+                String product = conn.getMetaData().getDatabaseProductName();
+                String productUpper = product != null ? product.toUpperCase() : "";
+                // PostgreSQL 仅在事务内按 fetchSize 使用游标，否则一次性加载全部结果
+                boolean restoreAutoCommit = productUpper.contains("POSTGRES") && conn.getAutoCommit();
+                if (restoreAutoCommit) {
+                    conn.setAutoCommit(false);
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    // MySQL/Doris 驱动仅在 fetchSize = Integer.MIN_VALUE 时逐行流式读取
+                    pstmt.setFetchSize(productUpper.contains("MYSQL") ? Integer.MIN_VALUE : fetchSize);
+                    if (afterId != null) {
+                        pstmt.setString(1, afterId);
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        ResultSetMetaData metaData = rs.getMetaData();
+                        int columns = metaData.getColumnCount();
+                        String[] names = new String[columns];
+                        for (int i = 1; i <= columns; i++) {
+                            names[i - 1] = metaData.getColumnLabel(i);
+                        }
+                        // 同步表行原样读取，JDBC 时间/数值类型转换为图数据库驱动可接受的值
+                        run.consume(new Iterator<>() {
+                            private Boolean hasNext;
+
+                            @Override
+                            public boolean hasNext() {
+                                if (hasNext == null) {
+                                    try {
+                                        hasNext = rs.next();
+                                    } catch (SQLException e) {
+                                        throw new IllegalStateException(e);
+                                    }
+                                }
+                                return hasNext;
+                            }
+
+                            @Override
+                            public Map<String, Object> next() {
+                                hasNext();
+                                hasNext = null;
+                                Map<String, Object> row = new HashMap<>(columns * 2);
+                                try {
+                                    for (int i = 1; i <= columns; i++) {
+                                        row.put(names[i - 1], DatabaseMetadataService.convertSqlValue(rs.getObject(i)));
+                                    }
+                                } catch (SQLException e) {
+                                    throw new IllegalStateException(e);
+                                }
+                                return row;
+                            }
+                        }, summarizer);
+                    }
+                } finally {
+                    if (restoreAutoCommit) {
+                        conn.rollback();
+                        conn.setAutoCommit(true);
+                    }
+                }
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            run.fail(e);
+        }
+        return run.finish();
+    }
+
+    /**
+     * 同步给定的行（增量抽取写入的行），不记录检查点
+     */
+    Stats syncRows(String objectType, List<Map<String, Object>> rows,
+                   Function<Map<String, Object>, Map<String, Object>> summarizer) throws IOException, SQLException {
+        Run run = new Run(objectType, null);
+        run.consume(rows.iterator(), summarizer);
+        return run.finish();
+    }
+
+    /**
+     * 单次同步的运行状态：读取线程（调用方线程）按批提交，写入线程池执行 MERGE 并推进检查点
+     */
+    private final class Run {
+        private final String objectType;
+        private final CheckpointListener listener;
+        private final Stats stats = new Stats();
+        private final AdaptiveLimit limit = new AdaptiveLimit(initialParallelism, maxParallelism, targetLatencyNanos);
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private final ExecutorService executor;
+        private final long start = System.nanoTime();
+        /** 已完成但尚未连续的批次：序号 -> 批次末尾 id */
+        private final TreeMap<Long, String> completed = new TreeMap<>();
+        private long nextToCommit;
+        private long committedRows;
+        private final Map<Long, Integer> batchRows = new HashMap<>();
+
+        Run(String objectType, CheckpointListener listener) {
+            this.objectType = objectType;
+            this.listener = listener;
+            AtomicInteger threadIndex = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(maxParallelism, runnable -> {
+                Thread thread = new Thread(runnable, "graph-sync-" + threadIndex.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        void consume(Iterator<Map<String, Object>> rows, Function<Map<String, Object>, Map<String, Object>> summarizer) {
+            long sequence = 0;
+            List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+            try {
+                while (failure.get() == null && rows.hasNext()) {
+                    Map<String, Object> row = rows.next();
+                    stats.rowsRead.incrementAndGet();
+                    Map<String, Object> summary = summarizer.apply(row);
+                    if (summary == null || summary.get("id") == null) {
+                        stats.rowsSkipped.incrementAndGet();
+                        continue;
+                    }
+                    batch.add(summary);
+                    if (batch.size() == batchSize) {
+                        submit(sequence++, batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty() && failure.get() == null) {
+                    submit(sequence, batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            } catch (RuntimeException e) {
+                // 游标读取失败包装为 IllegalStateException
+                failure.compareAndSet(null, e instanceof IllegalStateException && e.getCause() instanceof SQLException
+                    ? (SQLException) e.getCause() : e);
+            }
+        }
+
+        private void submit(long sequence, List<Map<String, Object>> batch) throws InterruptedException {
+            long waitStart = System.nanoTime();
+            limit.acquire();
+            stats.readBlockedNanos.addAndGet(System.nanoTime() - waitStart);
+            String lastId = String.valueOf(batch.get(batch.size() - 1).get("id"));
+            try {
+                executor.execute(() -> {
+                    try {
+                        if (failure.get() == null) {
+                            int synced = mergeWithRetry(batch);
+                            commit(sequence, lastId, synced);
+                        }
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        limit.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                limit.release();
+                throw e;
+            }
+        }
+
+        private int mergeWithRetry(List<Map<String, Object>> batch) throws IOException, InterruptedException {
+            for (int attempt = 0; ; attempt++) {
+                long startedAt = System.nanoTime();
+                try {
+                    int synced = graphStorage.batchMergeInstances(objectType, batch);
+                    long latency = System.nanoTime() - startedAt;
+                    limit.record(startedAt, latency, true);
+                    stats.batchNanos.addAndGet(latency);
+                    return synced;
+                } catch (IOException | RuntimeException e) {
+                    limit.record(startedAt, System.nanoTime() - startedAt, false);
+                    if (attempt >= maxRetries || failure.get() != null) {
+                        throw e;
+                    }
+                    stats.retries.incrementAndGet();
+                    logger.warn("[GraphSyncPipeline] Batch merge failed for {} (attempt {}), retrying: {}",
+                        objectType, attempt + 1, e.getMessage());
+                    Thread.sleep(retryBackoffMs * (attempt + 1));
+                }
+            }
+        }
+
+        /**
+         * 批次完成后按序号推进检查点，只有此前所有批次均完成时才前移
+         */
+        private synchronized void commit(long sequence, String lastId, int synced) throws IOException {
+            stats.rowsSynced.addAndGet(synced);
+            stats.batchesSynced.incrementAndGet();
+            completed.put(sequence, lastId);
+            batchRows.put(sequence, synced);
+            String advancedTo = null;
+            while (!completed.isEmpty() && completed.firstKey() == nextToCommit) {
+                advancedTo = completed.pollFirstEntry().getValue();
+                committedRows += batchRows.remove(nextToCommit);
+                nextToCommit++;
+            }
+            if (advancedTo != null) {
+                stats.lastId = advancedTo;
+                if (listener != null) {
+                    listener.committed(advancedTo, committedRows);
+                }
+            }
+        }
+
+        void fail(Exception e) {
+            failure.compareAndSet(null, e);
+        }
+
+        Stats finish() throws IOException, SQLException {
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(100, TimeUnit.MILLISECONDS)) {
+                    // 等待在途批次完成，检查点推进到最后一个连续完成的批次
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            }
+            stats.elapsedNanos = System.nanoTime() - start;
+            stats.minParallelism = limit.observedMin();
+            stats.maxParallelism = limit.observedMax();
+            stats.finalParallelism = limit.current();
+
+            Exception error = failure.get();
+            if (error instanceof SQLException) {
+                throw (SQLException) error;
+            }
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            if (error != null) {
+                throw new IOException("Graph sync failed for " + objectType + ": " + error.getMessage(), error);
+            }
+            logger.info("[GraphSyncPipeline] {} {}", objectType, stats.toMap());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.mypalantir.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量导入记录读取器：逐条解析 CSV（首行为表头，RFC 4180 引号规则）或 NDJSON（每行一个 JSON 对象），
+ * 不把整个文件读入内存
+ */
+abstract class ImportRecordReader implements Closeable {
+    static final String FORMAT_CSV = "csv";
+    static final String FORMAT_NDJSON = "ndjson";
+
+    /**
+     * 单条记录：解析成功时 data 非空，解析失败时 error 非空（不影响后续记录）
+     */
+    static final class Record {
+        final long number;
+        final Map<String, Object> data;
+        final String error;
+
+        Record(long number, Map<String, Object> data, String error) {
+            this.number = number;
+            this.data = data;
+            this.error = error;
+        }
+    }
+
+    protected final BufferedReader reader;
+    protected long recordNumber;
+
+    protected ImportRecordReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    static ImportRecordReader open(Path file, String format) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        try {
+            if (FORMAT_CSV.equals(format)) {
+                return new Csv(reader);
+            }
+            if (FORMAT_NDJSON.equals(format)) {
+                return new NdJson(reader);
+            }
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        reader.close();
+        throw new IllegalArgumentException("Unsupported import format: " + format);
+    }
+
+    /**
+     * 按格式参数或文件扩展名确定导入格式，无法确定时返回 null
+     */
+    static String resolveFormat(String format, String filename) {
+        String value = format;
+        if (value == null || value.isEmpty()) {
+            if (filename == null) {
+                return null;
+            }
+            int dot = filename.lastIndexOf('.');
+            value = dot >= 0 ? filename.substring(dot + 1) : "";
+        }
+        switch (value.toLowerCase()) {
+            case "csv":
+                return FORMAT_CSV;
+            case "ndjson":
+            case "jsonl":
+            case "json":
+                return FORMAT_NDJSON;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return 下一条记录，文件结束返回 null
+     */
+    abstract Record next() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private static final class Csv extends ImportRecordReader {
+        private final List<String> header;
+
+        Csv(BufferedReader reader) throws IOException {
+            super(reader);
+            List<String> fields = readFields();
+            if (fields == null) {
+                throw new IOException("CSV file is empty");
+            }
+            header = new ArrayList<>();
+            for (String field : fields) {
+                header.add(field.trim());
+            }
+            // 去掉 UTF-8 BOM
+            if (!header.isEmpty() && header.get(0).startsWith("\uFEFF")) {
+                header.set(0, header.get(0).substring(1));
+            }
+        }
+
+        @Override
+        Record next() throws IOException {
+            List<String> fields;
+            try {
+                fields = readFields();
+            } catch (MalformedRecordException e) {
+                return new Record(++recordNumber, null, e.getMessage());
+            }
+            if (fields == null) {
+                return null;
+            }
+            long number = ++recordNumber;
+            if (fields.size() != header.size()) {
+                return new Record(number, null, "expected " + header.size() + " fields but found " + fields.size());
+            }
+            Map<String, Object> data = new LinkedHashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                // 空字段视为未提供，交给默认值与必填校验处理
+                if (!fields.get(i).isEmpty()) {
+                    data.put(header.get(i), fields.get(i));
+                }
+            }
+            return new Record(number, data, null);
+        }
+
+        /**
+         * 读取一条 CSV 记录（引号内可含逗号、换行和 "" 转义），跳过空行，文件结束返回 null
+         */
+        private List<String> readFields() throws IOException {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean inQuotes = false;
+            boolean any = false;
+            int c;
+            while ((c = reader.read()) != -1) {
+                any = true;
+                char ch = (char) c;
+                if (inQuotes) {
+                    if (ch == '"') {
+                        reader.mark(1);
+                        int peek = reader.read();
+                        if (peek == '"') {
+                            field.append('"');
+                        } else {
+                            inQuotes = false;
+                            if (peek != -1) {
+                                reader.reset();
+                            }
+                        }
+                    } else {
+                        field.append(ch);
+                    }
+                } else if (ch == '"' && field.length() == 0) {
+                    inQuotes = true;
+                } else if (ch == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (ch == '\n' || ch == '\r') {
+                    if (ch == '\r') {
+                        reader.mark(1);
+                        if (reader.read() != '\n') {
+                            reader.reset();
+                        }
+                    }
+                    if (fields.isEmpty() && field.length() == 0) {
+                        // 空行
+                        any = false;
+                        continue;
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append(ch);
+                }
+            }
+            if (inQuotes) {
+                throw new MalformedRecordException("unterminated quoted field at end of file");
+            }
+            if (!any) {
+                return null;
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    private static final class NdJson extends ImportRecordReader {
+        private static final ObjectMapper MAPPER = new ObjectMapper();
+
+        NdJson(BufferedReader reader) {
+            super(reader);
+        }
+
+        @Override
+        Record next() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                long number = ++recordNumber;
+                try {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> data = MAPPER.readValue(line, LinkedHashMap.class);
+                    return new Record(number, data, null);
+                } catch (JsonProcessingException e) {
+                    return new Record(number, null, "invalid JSON: " + e.getOriginalMessage());
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class MalformedRecordException extends IOException {
+        MalformedRecordException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.mypalantir.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.meta.Property;
+import com.mypalantir.query.OntologyQuery;
+import com.mypalantir.query.QueryExecutor;
+import com.mypalantir.repository.IInstanceStorage;
+import com.mypalantir.repository.InstanceStorage;
+import com.mypalantir.repository.RelationalInstanceStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 实例与查询结果流式导出：NDJSON（每行一个 JSON 对象）、Arrow IPC 流、Parquet 文件
+ * hybrid 模式下直接从同步表游标流式读取，其余存储按页读取；查询结果从 ResultSet 逐行写出，
+ * 列式格式按 batchSize 行缓冲成批，内存占用与结果集大小无关。
+ * 列式格式的列类型取自本体属性 data_type，查询结果中不是本体属性的列按首批数据推断。
+ */
+@Service
+public class InstanceExportService {
+    private static final Logger logger = LoggerFactory.getLogger(InstanceExportService.class);
+
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_ARROW = "arrow";
+    public static final String FORMAT_PARQUET = "parquet";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+        .registerModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Autowired
+    private Loader loader;
+
+    @Autowired
+    private IInstanceStorage instanceStorage;
+
+    @Autowired(required = false)
+    private RelationalInstanceStorage relationalInstanceStorage;
+
+    @Autowired
+    private QueryService queryService;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${export.columnar.max-dictionary-size:" + ColumnarExportWriter.DEFAULT_MAX_DICTIONARY_SIZE + "}")
+    private int maxDictionarySize = ColumnarExportWriter.DEFAULT_MAX_DICTIONARY_SIZE;
+
+    @Value("${export.parquet.row-group-size-mb:32}")
+    private int parquetRowGroupSizeMb = 32;
+
+    public static boolean isSupportedFormat(String format) {
+        return FORMAT_NDJSON.equalsIgnoreCase(format) || FORMAT_ARROW.equalsIgnoreCase(format)
+            || FORMAT_PARQUET.equalsIgnoreCase(format);
+    }
+
+    public static String contentType(String format) {
+        switch (format.toLowerCase(Locale.ROOT)) {
+            case FORMAT_ARROW:
+                return "application/vnd.apache.arrow.stream";
+            case FORMAT_PARQUET:
+                return "application/vnd.apache.parquet";
+            default:
+                return "application/x-ndjson";
+        }
+    }
+
+    public static String fileExtension(String format) {
+        switch (format.toLowerCase(Locale.ROOT)) {
+            case FORMAT_ARROW:
+                return ".arrows";
+            case FORMAT_PARQUET:
+                return ".parquet";
+            default:
+                return ".ndjson";
+        }
+    }
+
+    /**
+     * 导出前校验对象类型，使错误在开始写响应前返回
+     */
+    public void checkObjectType(String objectType) throws Loader.NotFoundException {
+        loader.getObjectType(objectType);
+    }
+
+    /**
+     * 实例导出列：id 与本体属性，类型由属性 data_type 决定
+     */
+    List<ColumnarExportWriter.Column> instanceColumns(String objectType) throws IOException {
+        ObjectType objectTypeDef;
+        try {
+            objectTypeDef = loader.getObjectType(objectType);
+        } catch (Loader.NotFoundException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        List<ColumnarExportWriter.Column> columns = new ArrayList<>();
+        columns.add(new ColumnarExportWriter.Column("id", ColumnarExportWriter.TYPE_STRING));
+        if (objectTypeDef.getProperties() != null) {
+            for (Property property : objectTypeDef.getProperties()) {
+                if (!"id".equals(property.getName())) {
+                    columns.add(new ColumnarExportWriter.Column(property.getName(),
+                        ColumnarExportWriter.typeOf(property.getDataType())));
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * 以 NDJSON 导出对象类型的全部实例
+     * @return 导出的行数
+     */
+    public long exportInstances(String objectType, OutputStream out, int batchSize) throws IOException {
+        return exportInstances(objectType, FORMAT_NDJSON, out, batchSize);
+    }
+
+    /**
+     * 导出对象类型的全部实例
+     * @param format ndjson / arrow / parquet
+     * @return 导出的行数
+     */
+    public long exportInstances(String objectType, String format, OutputStream out, int batchSize) throws IOException {
+        RowSink writer = FORMAT_NDJSON.equalsIgnoreCase(format)
+            ? new RowWriter(out)
+            : new ColumnarSink(columnarWriter(format, out, instanceColumns(objectType), batchSize));
+        if (!streamFromSyncTable(objectType, writer, batchSize)) {
+            // 非 hybrid 模式或同步表不存在：按页读取实例存储
+            int offset = 0;
+            while (true) {
+                InstanceStorage.ListResult page = instanceStorage.listInstances(objectType, offset, batchSize);
+                for (Map<String, Object> instance : page.getItems()) {
+                    writer.write(instance);
+                }
+                offset += page.getItems().size();
+                if (page.getItems().size() < batchSize || offset >= page.getTotal()) {
+                    break;
+                }
+            }
+        }
+        writer.close();
+        out.flush();
+        logger.info("[InstanceExportService] Exported {} instances of {} as {}", writer.rows(), objectType, format);
+        return writer.rows();
+    }
+
+    /**
+     * 执行查询并以 NDJSON 逐行导出结果
+     */
+    public long exportQuery(OntologyQuery query, OutputStream out) throws IOException {
+        return exportQuery(query, FORMAT_NDJSON, out, ColumnarExportWriter.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * 执行查询并导出结果，行从 ResultSet 直接写出（列式格式按 batchSize 行成批），不加载完整结果
+     * @param query {@link QueryService#parseQuery(Map)} 的结果
+     * @param format ndjson / arrow / parquet
+     * @return 导出的行数
+     */
+    public long exportQuery(OntologyQuery query, String format, OutputStream out, int batchSize) throws IOException {
+        QuerySink sink = new QuerySink(query, format, out, batchSize);
+        try {
+            queryService.streamQuery(query, sink);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Query export failed after " + sink.rows() + " rows: " + e.getMessage(), e);
+        }
+        sink.close();
+        out.flush();
+        logger.info("[InstanceExportService] Exported {} query rows as {}", sink.rows(), format);
+        return sink.rows();
+    }
+
+    private ColumnarExportWriter columnarWriter(String format, OutputStream out, List<ColumnarExportWriter.Column> columns,
+                                                int batchSize) {
+        if (FORMAT_PARQUET.equalsIgnoreCase(format)) {
+            return new ParquetExportWriter(out, columns, batchSize, parquetRowGroupSizeMb * 1024L * 1024L);
+        }
+        return new ArrowExportWriter(out, columns, batchSize, maxDictionarySize);
+    }
+
+    /**
+     * 查询结果列：查询主对象类型的本体属性按 data_type 定型，其余列（关联对象字段、聚合、表达式）由首批数据推断
+     */
+    private List<ColumnarExportWriter.Column> queryColumns(OntologyQuery query, List<String> names) {
+        Map<String, String> propertyTypes = new HashMap<>();
+        try {
+            ObjectType objectTypeDef = query.getFrom() != null ? loader.getObjectType(query.getFrom()) : null;
+            if (objectTypeDef != null && objectTypeDef.getProperties() != null) {
+                for (Property property : objectTypeDef.getProperties()) {
+                    propertyTypes.put(property.getName(), ColumnarExportWriter.typeOf(property.getDataType()));
+                }
+            }
+        } catch (Loader.NotFoundException e) {
+            logger.debug("[InstanceExportService] Object type {} not found, inferring export column types", query.getFrom());
+        }
+        boolean aggregated = query.getGroupBy() != null && !query.getGroupBy().isEmpty()
+            || query.getMetrics() != null && !query.getMetrics().isEmpty();
+        List<ColumnarExportWriter.Column> columns = new ArrayList<>();
+        for (String name : names) {
+            // 聚合查询中与属性同名的列可能是聚合值，同样按数据推断
+            String type = aggregated && (query.getGroupBy() == null || !query.getGroupBy().contains(name))
+                ? null : propertyTypes.get(name);
+            columns.add(new ColumnarExportWriter.Column(name, type));
+        }
+        return columns;
+    }
+
+    /**
+     * @return 是否已从同步表完成导出；同步表不可用时返回 false，由调用方回退到实例存储
+     */
+    private boolean streamFromSyncTable(String objectType, RowSink writer, int batchSize) throws IOException {
+        if (relationalInstanceStorage == null
+                || !"hybrid".equalsIgnoreCase(environment.getProperty("storage.type", "file"))) {
+            return false;
+        }
+        try {
+            relationalInstanceStorage.streamSyncTable(objectType, batchSize, writer::write);
+            return true;
+        } catch (SQLException e) {
+            if (writer.rows() > 0) {
+                throw new IOException("Export of " + objectType + " failed after " + writer.rows() + " rows: " + e.getMessage(), e);
+            }
+            logger.info("[InstanceExportService] Sync table for {} not available ({}), exporting from instance storage",
+                objectType, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 导出行的写出目标
+     */
+    interface RowSink extends Closeable {
+        void write(Map<String, Object> row) throws IOException;
+
+        long rows();
+    }
+
+    /**
+     * 每行写一个 JSON 对象并换行
+     */
+    static class RowWriter implements RowSink {
+        private final OutputStream out;
+        private long rows;
+
+        RowWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(Map<String, Object> row) throws IOException {
+            out.write(objectMapper.writeValueAsBytes(row));
+            out.write('\n');
+            rows++;
+        }
+
+        @Override
+        public long rows() {
+            return rows;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static class ColumnarSink implements RowSink {
+        private final ColumnarExportWriter writer;
+
+        ColumnarSink(ColumnarExportWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(Map<String, Object> row) throws IOException {
+            writer.writeRow(row);
+        }
+
+        @Override
+        public long rows() {
+            return writer.getTotalRows();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+            if (writer.getConversionErrors() > 0) {
+                logger.warn("[InstanceExportService] {} values could not be converted to their column type and were exported as null",
+                    writer.getConversionErrors());
+            }
+        }
+    }
+
+    /**
+     * 查询结果写出：收到列名后再创建列式写入器
+     */
+    private class QuerySink implements QueryExecutor.RowConsumer, RowSink {
+        private final OntologyQuery query;
+        private final String format;
+        private final OutputStream out;
+        private final int batchSize;
+        private RowSink delegate;
+
+        QuerySink(OntologyQuery query, String format, OutputStream out, int batchSize) {
+            this.query = query;
+            this.format = format;
+            this.out = out;
+            this.batchSize = batchSize;
+            if (FORMAT_NDJSON.equalsIgnoreCase(format)) {
+                delegate = new RowWriter(out);
+            }
+        }
+
+        @Override
+        public void columns(List<String> columns) {
+            if (delegate == null) {
+                delegate = new ColumnarSink(columnarWriter(format, out, queryColumns(query, columns), batchSize));
+            }
+        }
+
+        @Override
+        public void accept(Map<String, Object> row) throws IOException {
+            if (delegate == null) {
+                columns(new ArrayList<>(row.keySet()));
+            }
+            delegate.write(row);
+        }
+
+        @Override
+        public void write(Map<String, Object> row) throws IOException {
+            accept(row);
+        }
+
+        @Override
+        public long rows() {
+            return delegate != null ? delegate.rows() : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (delegate == null) {
+                columns(query.getSelect() != null ? query.getSelect() : List.of());
+            }
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package com.mypalantir.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mypalantir.config.Config;
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.Property;
+import com.mypalantir.repository.IInstanceStorage;
+import com.mypalantir.repository.PathManager;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * 流式批量导入实例
+ * 上传文件先落盘，再由后台任务逐条解析（CSV/NDJSON），按块并行校验并通过 batchMergeInstances 写入。
+ * 任务状态（进度、错误样本、吞吐、检查点）持久化到 import_jobs 目录；失败或进程重启后可从检查点继续，
+ * 检查点之后的块会重新写入（按 id 合并，幂等）。
+ */
+@Service
+public class InstanceImportService {
+    private static final Logger logger = LoggerFactory.getLogger(InstanceImportService.class);
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    /** 检查点持久化的最小间隔，避免每块写一次任务文件 */
+    private static final long PERSIST_INTERVAL_MS = 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final ExecutorService jobRunner = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "instance-import-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    private IInstanceStorage instanceStorage;
+
+    @Autowired
+    private DataValidator dataValidator;
+
+    @Autowired
+    private PathManager pathManager;
+
+    @Autowired
+    private Config config;
+
+    /**
+     * 导入任务状态
+     */
+    public static class ImportJob {
+        private String id;
+        private String objectType;
+        private String format;
+        private String fileName;
+        private String idField;
+        private int chunkSize;
+        private int parallelism;
+        private String status;
+        private String error;
+        /** 已解析的记录数 */
+        private long recordsRead;
+        /** 检查点：此记录号（含）之前的记录已全部处理并提交 */
+        private long checkpoint;
+        private long rowsWritten;
+        private long rowsFailed;
+        private List<Map<String, Object>> errorSample = new ArrayList<>();
+        private String createdAt;
+        private String startedAt;
+        private String finishedAt;
+        /** 本次运行开始时的检查点，用于计算吞吐 */
+        private long runStartCheckpoint;
+        private int attempts;
+
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+        public String getObjectType() { return objectType; }
+        public void setObjectType(String objectType) { this.objectType = objectType; }
+        public String getFormat() { return format; }
+        public void setFormat(String format) { this.format = format; }
+        public String getFileName() { return fileName; }
+        public void setFileName(String fileName) { this.fileName = fileName; }
+        public String getIdField() { return idField; }
+        public void setIdField(String idField) { this.idField = idField; }
+        public int getChunkSize() { return chunkSize; }
+        public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+        public int getParallelism() { return parallelism; }
+        public void setParallelism(int parallelism) { this.parallelism = parallelism; }
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+        public long getRecordsRead() { return recordsRead; }
+        public void setRecordsRead(long recordsRead) { this.recordsRead = recordsRead; }
+        public long getCheckpoint() { return checkpoint; }
+        public void setCheckpoint(long checkpoint) { this.checkpoint = checkpoint; }
+        public long getRowsWritten() { return rowsWritten; }
+        public void setRowsWritten(long rowsWritten) { this.rowsWritten = rowsWritten; }
+        public long getRowsFailed() { return rowsFailed; }
+        public void setRowsFailed(long rowsFailed) { this.rowsFailed = rowsFailed; }
+        public List<Map<String, Object>> getErrorSample() { return errorSample; }
+        public void setErrorSample(List<Map<String, Object>> errorSample) { this.errorSample = errorSample; }
+        public String getCreatedAt() { return createdAt; }
+        public void setCreatedAt(String createdAt) { this.createdAt = createdAt; }
+        public String getStartedAt() { return startedAt; }
+        public void setStartedAt(String startedAt) { this.startedAt = startedAt; }
+        public String getFinishedAt() { return finishedAt; }
+        public void setFinishedAt(String finishedAt) { this.finishedAt = finishedAt; }
+        public long getRunStartCheckpoint() { return runStartCheckpoint; }
+        public void setRunStartCheckpoint(long runStartCheckpoint) { this.runStartCheckpoint = runStartCheckpoint; }
+        public int getAttempts() { return attempts; }
+        public void setAttempts(int attempts) { this.attempts = attempts; }
+
+        /**
+         * 本次运行的吞吐（已提交记录数/秒）
+         */
+        public double getRecordsPerSecond() {
+            if (startedAt == null) {
+                return 0;
+            }
+            long end = finishedAt != null ? Instant.parse(finishedAt).toEpochMilli() : System.currentTimeMillis();
+            long elapsed = end - Instant.parse(startedAt).toEpochMilli();
+            return elapsed > 0 ? (checkpoint - runStartCheckpoint) * 1000.0 / elapsed : 0;
+        }
+    }
+
+    /**
+     * 块处理结果
+     */
+    private static final class ChunkResult {
+        final long lastRecord;
+        final int written;
+        final List<Map<String, Object>> failures;
+
+        ChunkResult(long lastRecord, int written, List<Map<String, Object>> failures) {
+            this.lastRecord = lastRecord;
+            this.written = written;
+            this.failures = failures;
+        }
+    }
+
+    /**
+     * 启动时加载任务状态；上次进程退出时仍在运行的任务标记为失败，可通过 resume 继续
+     */
+    @PostConstruct
+    public void loadJobs() {
+        Path dir = Paths.get(pathManager.getImportJobDir());
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(".json")).forEach(file -> {
+                try {
+                    ImportJob job = objectMapper.readValue(file.toFile(), ImportJob.class);
+                    if (STATUS_RUNNING.equals(job.getStatus()) || STATUS_PENDING.equals(job.getStatus())) {
+                        job.setStatus(STATUS_FAILED);
+                        job.setError("interrupted by restart");
+                        persist(job);
+                    }
+                    jobs.put(job.getId(), job);
+                } catch (IOException e) {
+                    logger.warn("[InstanceImportService] Failed to load import job {}: {}", file, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("[InstanceImportService] Failed to list import jobs in {}: {}", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * 提交导入任务：上传内容流式写入任务目录后立即返回，后台解析与写入
+     * @param format csv | ndjson，为空时按文件扩展名判断
+     * @param idField 作为实例 id 的字段，为空时使用 id
+     */
+    public ImportJob submit(String objectType, InputStream content, String fileName, String format,
+                            Integer chunkSize, Integer parallelism, String idField)
+            throws IOException, Loader.NotFoundException {
+        String resolvedFormat = ImportRecordReader.resolveFormat(format, fileName);
+        if (resolvedFormat == null) {
+            throw new IllegalArgumentException("Unsupported import format, expected csv or ndjson");
+        }
+        dataValidator.compile(objectType);
+
+        ImportJob job = new ImportJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setObjectType(objectType);
+        job.setFormat(resolvedFormat);
+        job.setFileName(fileName);
+        job.setIdField(idField != null && !idField.isEmpty() ? idField : "id");
+        job.setChunkSize(chunkSize != null && chunkSize > 0 ? chunkSize : config.getImportChunkSize());
+        job.setParallelism(parallelism != null && parallelism > 0 ? parallelism : config.getImportParallelism());
+        job.setStatus(STATUS_PENDING);
+        job.setCreatedAt(Instant.now().toString());
+
+        Files.createDirectories(Paths.get(pathManager.getImportJobDir()));
+        Files.copy(content, dataPath(job.getId()), StandardCopyOption.REPLACE_EXISTING);
+        jobs.put(job.getId(), job);
+        persist(job);
+        jobRunner.submit(() -> run(job));
+        logger.info("[InstanceImportService] Submitted import job {} for {} ({}, chunk size {}, parallelism {})",
+            job.getId(), objectType, resolvedFormat, job.getChunkSize(), job.getParallelism());
+        return job;
+    }
+
+    /**
+     * 从检查点继续失败的任务
+     */
+    public ImportJob resume(String jobId) throws IOException {
+        ImportJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new IOException("import job not found: " + jobId);
+        }
+        synchronized (job) {
+            if (!STATUS_FAILED.equals(job.getStatus())) {
+                throw new IllegalStateException("only failed jobs can be resumed, current status: " + job.getStatus());
+            }
+            if (!Files.exists(dataPath(jobId))) {
+                throw new IOException("import data for job " + jobId + " is no longer available");
+            }
+            job.setStatus(STATUS_PENDING);
+            job.setError(null);
+            job.setFinishedAt(null);
+            persist(job);
+        }
+        jobRunner.submit(() -> run(job));
+        logger.info("[InstanceImportService] Resuming import job {} from record {}", jobId, job.getCheckpoint());
+        return job;
+    }
+
+    /**
+     * 任务状态快照
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getJob(String jobId) {
+        ImportJob job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        synchronized (job) {
+            return objectMapper.convertValue(job, Map.class);
+        }
+    }
+
+    public List<Map<String, Object>> listJobs() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (String jobId : jobs.keySet()) {
+            Map<String, Object> job = getJob(jobId);
+            if (job != null) {
+                result.add(job);
+            }
+        }
+        result.sort(Comparator.comparing(job -> String.valueOf(job.get("createdAt")), Comparator.reverseOrder()));
+        return result;
+    }
+
+    private void run(ImportJob job) {
+        long resumeFrom;
+        synchronized (job) {
+            resumeFrom = job.getCheckpoint();
+            job.setStatus(STATUS_RUNNING);
+            job.setStartedAt(Instant.now().toString());
+            job.setRunStartCheckpoint(job.getCheckpoint());
+            job.setRecordsRead(job.getCheckpoint());
+            job.setAttempts(job.getAttempts() + 1);
+            persistQuietly(job);
+        }
+        AtomicReference<String> failure = new AtomicReference<>();
+        ExecutorService writers = Executors.newFixedThreadPool(job.getParallelism(), r -> {
+            Thread thread = new Thread(r, "instance-import-writer-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 背压：在途块数上限，解析速度超过写入速度时阻塞读取线程
+        Semaphore inFlight = new Semaphore(job.getParallelism() * 2);
+        TreeMap<Long, ChunkResult> completed = new TreeMap<>();
+        long[] nextToCommit = {0};
+        long[] lastPersist = {System.currentTimeMillis()};
+
+        try (ImportRecordReader reader = ImportRecordReader.open(dataPath(job.getId()), job.getFormat())) {
+            DataValidator.CompiledRules rules = dataValidator.compile(job.getObjectType());
+            Map<String, String> dataTypes = new HashMap<>();
+            for (Property property : rules.getProperties()) {
+                dataTypes.put(property.getName(), property.getDataType());
+            }
+            long seq = 0;
+            List<ImportRecordReader.Record> chunk = new ArrayList<>(job.getChunkSize());
+            ImportRecordReader.Record record;
+            while (failure.get() == null && (record = reader.next()) != null) {
+                if (record.number <= resumeFrom) {
+                    continue;
+                }
+                chunk.add(record);
+                if (chunk.size() == job.getChunkSize()) {
+                    submitChunk(job, seq++, chunk, rules, dataTypes, writers, inFlight, failure, completed, nextToCommit, lastPersist);
+                    chunk = new ArrayList<>(job.getChunkSize());
+                }
+            }
+            if (!chunk.isEmpty() && failure.get() == null) {
+                submitChunk(job, seq, chunk, rules, dataTypes, writers, inFlight, failure, completed, nextToCommit, lastPersist);
+            }
+        } catch (Exception e) {
+            failure.compareAndSet(null, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        } finally {
+            writers.shutdown();
+            try {
+                writers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, "interrupted");
+            }
+        }
+
+        // 先删除落盘数据再标记完成，轮询到 COMPLETED 的调用方不会再看到临时文件
+        if (failure.get() == null) {
+            try {
+                Files.deleteIfExists(dataPath(job.getId()));
+            } catch (IOException e) {
+                logger.warn("[InstanceImportService] Failed to delete import data for job {}: {}", job.getId(), e.getMessage());
+            }
+        }
+        synchronized (job) {
+            job.setFinishedAt(Instant.now().toString());
+            if (failure.get() != null) {
+                job.setStatus(STATUS_FAILED);
+                job.setError(failure.get());
+                logger.warn("[InstanceImportService] Import job {} failed at checkpoint {}: {}", job.getId(), job.getCheckpoint(), failure.get());
+            } else {
+                job.setStatus(STATUS_COMPLETED);
+                logger.info("[InstanceImportService] Import job {} completed: {} written, {} failed, {} records/s",
+                    job.getId(), job.getRowsWritten(), job.getRowsFailed(), String.format("%.0f", job.getRecordsPerSecond()));
+            }
+            persistQuietly(job);
+        }
+    }
+
+    private void submitChunk(ImportJob job, long seq, List<ImportRecordReader.Record> chunk,
+                             DataValidator.CompiledRules rules, Map<String, String> dataTypes,
+                             ExecutorService writers, Semaphore inFlight, AtomicReference<String> failure,
+                             TreeMap<Long, ChunkResult> completed, long[] nextToCommit, long[] lastPersist)
+            throws InterruptedException {
+        inFlight.acquire();
+        synchronized (job) {
+            job.setRecordsRead(chunk.get(chunk.size() - 1).number);
+        }
+        writers.submit(() -> {
+            try {
+                if (failure.get() != null) {
+                    return;
+                }
+                ChunkResult result = processChunk(job, chunk, rules, dataTypes);
+                synchronized (job) {
+                    // 按块序号顺序推进检查点，乱序完成的块先暂存
+                    completed.put(seq, result);
+                    while (!completed.isEmpty() && completed.firstKey() == nextToCommit[0]) {
+                        ChunkResult next = completed.pollFirstEntry().getValue();
+                        job.setCheckpoint(next.lastRecord);
+                        job.setRowsWritten(job.getRowsWritten() + next.written);
+                        job.setRowsFailed(job.getRowsFailed() + next.failures.size());
+                        for (Map<String, Object> error : next.failures) {
+                            if (job.getErrorSample().size() >= config.getImportErrorSampleSize()) {
+                                break;
+                            }
+                            job.getErrorSample().add(error);
+                        }
+                        nextToCommit[0]++;
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now - lastPersist[0] >= PERSIST_INTERVAL_MS) {
+                        lastPersist[0] = now;
+                        persistQuietly(job);
+                    }
+                }
+            } catch (Exception e) {
+                failure.compareAndSet(null, "chunk starting at record " + chunk.get(0).number + ": " + e.getMessage());
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * 转换、校验并批量写入一块记录；校验失败的记录跳过并计入错误，写入失败或写入行数少于提交行数时抛出异常使任务失败
+     */
+    private ChunkResult processChunk(ImportJob job, List<ImportRecordReader.Record> chunk,
+                                     DataValidator.CompiledRules rules, Map<String, String> dataTypes) throws IOException {
+        List<Map<String, Object>> rows = new ArrayList<>(chunk.size());
+        List<Map<String, Object>> failures = new ArrayList<>();
+        for (ImportRecordReader.Record record : chunk) {
+            if (record.error != null) {
+                failures.add(error(record.number, record.error));
+                continue;
+            }
+            Map<String, Object> row = record.data;
+            for (Map.Entry<String, Object> entry : row.entrySet()) {
+                entry.setValue(coerce(entry.getValue(), dataTypes.get(entry.getKey())));
+            }
+            Object id = row.get(job.getIdField());
+            if (id == null || String.valueOf(id).isEmpty()) {
+                failures.add(error(record.number, "missing id field '" + job.getIdField() + "'"));
+                continue;
+            }
+            row.put("id", String.valueOf(id));
+            try {
+                rules.validate(row);
+            } catch (DataValidator.ValidationException e) {
+                failures.add(error(record.number, e.getMessage()));
+                continue;
+            }
+            rows.add(row);
+        }
+        int written = 0;
+        if (!rows.isEmpty()) {
+            written = instanceStorage.batchMergeInstances(job.getObjectType(), rows);
+            if (written < rows.size()) {
+                // 存储未实现批量写入或只写入了部分行：使任务失败，检查点停在上一块，可从此处恢复
+                throw new IOException("storage wrote " + written + " of " + rows.size() + " rows");
+            }
+        }
+        return new ChunkResult(chunk.get(chunk.size() - 1).number, written, failures);
+    }
+
+    private static Map<String, Object> error(long record, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("record", record);
+        error.put("message", message);
+        return error;
+    }
+
+    /**
+     * 将文本值按属性类型转换（CSV 字段均为文本），无法转换时保留原值交给校验报错
+     */
+    static Object coerce(Object value, String dataType) {
+        if (!(value instanceof String) || dataType == null) {
+            return value;
+        }
+        String text = ((String) value).trim();
+        try {
+            switch (dataType) {
+                case "int":
+                case "integer":
+                case "long":
+                    return Long.parseLong(text);
+                case "float":
+                case "double":
+                case "number":
+                    return Double.parseDouble(text);
+                case "bigdecimal":
+                    return new BigDecimal(text);
+                case "bool":
+                case "boolean":
+                    if ("true".equalsIgnoreCase(text) || "1".equals(text)) {
+                        return Boolean.TRUE;
+                    }
+                    if ("false".equalsIgnoreCase(text) || "0".equals(text)) {
+                        return Boolean.FALSE;
+                    }
+                    return value;
+                default:
+                    return value;
+            }
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+
+    private Path dataPath(String jobId) {
+        return Paths.get(pathManager.getImportJobDir(), jobId + ".data");
+    }
+
+    private void persist(ImportJob job) throws IOException {
+        Path dir = Paths.get(pathManager.getImportJobDir());
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(job.getId() + ".json.tmp");
+        objectMapper.writeValue(tmp.toFile(), job);
+        Files.move(tmp, dir.resolve(job.getId() + ".json"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void persistQuietly(ImportJob job) {
+        try {
+            persist(job);
+        } catch (IOException e) {
+            logger.warn("[InstanceImportService] Failed to persist import job {}: {}", job.getId(), e.getMessage());
+        }
+    }
+}
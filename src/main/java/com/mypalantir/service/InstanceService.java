@@ -4,6 +4,7 @@ import com.mypalantir.meta.Loader;
 import com.mypalantir.meta.ObjectType;
 import com.mypalantir.query.QueryExecutor;
 import com.mypalantir.repository.IInstanceStorage;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +22,10 @@ public class InstanceService {
     private final QueryService queryService;
     private static final Logger logger = LoggerFactory.getLogger(InstanceService.class);
 
+    /** 映射/表/数据库实例经通用接口修改时同步元数据注册表 */
+    @Autowired(required = false)
+    private MetadataRegistry metadataRegistry;
+
     public InstanceService(IInstanceStorage storage, Loader loader, DataValidator validator, QueryService queryService) {
         this.storage = storage;
         this.loader = loader;
@@ -36,7 +41,11 @@ public class InstanceService {
         validator.validateInstanceData(objectType, data);
 
         // 创建实例
-        return storage.createInstance(objectType, data);
+        String id = storage.createInstance(objectType, data);
+        if (metadataRegistry != null) {
+            metadataRegistry.refresh(objectType, id);
+        }
+        return id;
     }
 
     public Map<String, Object> getInstance(String objectType, String id) throws IOException {
@@ -87,10 +96,16 @@ public class InstanceService {
 
         // 更新实例
         storage.updateInstance(objectType, id, data);
+        if (metadataRegistry != null) {
+            metadataRegistry.refresh(objectType, id);
+        }
     }
 
     public void deleteInstance(String objectType, String id) throws IOException {
         storage.deleteInstance(objectType, id);
+        if (metadataRegistry != null) {
+            metadataRegistry.remove(objectType, id);
+        }
     }
 
     /**
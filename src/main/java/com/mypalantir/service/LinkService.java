@@ -5,16 +5,24 @@ import com.mypalantir.meta.Loader;
 import com.mypalantir.repository.IInstanceStorage;
 import com.mypalantir.repository.ILinkStorage;
 import com.mypalantir.repository.InstanceStorage;
+import com.mypalantir.repository.LinkBatchResult;
+import com.mypalantir.repository.NeighborhoodQuery;
+import com.mypalantir.repository.NeighborhoodResult;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 @Service
 public class LinkService {
+    static final int MAX_NEIGHBORHOOD_DEPTH = 5;
+    static final int MAX_NEIGHBORHOOD_FAN_OUT = 1000;
+    static final int MAX_NEIGHBORHOOD_NODES = 5000;
+
     private final ILinkStorage storage;
     private final IInstanceStorage instanceStorage;
     private final Loader loader;
@@ -38,6 +46,70 @@ public class LinkService {
         return storage.createLink(linkType, sourceID, targetID, properties);
     }
 
+    /**
+     * 批量创建关系：逐条校验（不合法的记为失败），合法的交给存储层一次批量写入
+     * 每条输入包含 source_id、target_id，其余字段为关系属性
+     */
+    public LinkBatchResult createLinksBatch(String linkType, List<Map<String, Object>> links) throws Loader.NotFoundException, IOException {
+        return writeLinksBatch(linkType, links, false);
+    }
+
+    /**
+     * 批量 upsert 关系：同一 source_id -> target_id 已存在时更新属性，否则创建
+     */
+    public LinkBatchResult upsertLinksBatch(String linkType, List<Map<String, Object>> links) throws Loader.NotFoundException, IOException {
+        return writeLinksBatch(linkType, links, true);
+    }
+
+    public LinkBatchResult deleteLinksBatch(String linkType, List<String> ids) throws IOException {
+        return storage.deleteLinksBatch(linkType, ids);
+    }
+
+    private LinkBatchResult writeLinksBatch(String linkType, List<Map<String, Object>> links, boolean upsert) throws Loader.NotFoundException, IOException {
+        // 验证关系类型存在
+        loader.getLinkType(linkType);
+
+        LinkBatchResult result = new LinkBatchResult(links.size());
+        List<Map<String, Object>> valid = new ArrayList<>(links.size());
+        List<Integer> validIndexes = new ArrayList<>(links.size());
+        for (int i = 0; i < links.size(); i++) {
+            Map<String, Object> link = new HashMap<>(links.get(i));
+            Object sourceID = link.get("source_id");
+            Object targetID = link.get("target_id");
+            Map<String, Object> properties = new HashMap<>(link);
+            properties.remove("source_id");
+            properties.remove("target_id");
+            try {
+                validator.validateLinkData(linkType, sourceID != null ? sourceID.toString() : null,
+                    targetID != null ? targetID.toString() : null, properties);
+                properties.put("source_id", sourceID.toString());
+                properties.put("target_id", targetID.toString());
+                valid.add(properties);
+                validIndexes.add(i);
+            } catch (DataValidator.ValidationException e) {
+                result.addFailure(i, e.getMessage());
+            }
+        }
+        if (valid.isEmpty()) {
+            return result;
+        }
+
+        LinkBatchResult stored = upsert ? storage.upsertLinksBatch(linkType, valid) : storage.createLinksBatch(linkType, valid);
+        Map<Integer, String> storageErrors = new HashMap<>();
+        for (LinkBatchResult.Failure failure : stored.getFailures()) {
+            storageErrors.put(failure.getIndex(), failure.getError());
+        }
+        for (int j = 0; j < valid.size(); j++) {
+            int index = validIndexes.get(j);
+            if (storageErrors.containsKey(j)) {
+                result.addFailure(index, storageErrors.get(j));
+            } else {
+                result.addSuccess(index, stored.getIds().get(j));
+            }
+        }
+        return result;
+    }
+
     public Map<String, Object> getLink(String linkType, String id) throws IOException {
         return storage.getLink(linkType, id);
     }
@@ -117,6 +189,64 @@ public class LinkService {
         return instances;
     }
 
+    /**
+     * K 跳邻域：在关系存储中按层批量展开，返回去重后的子图
+     *
+     * @param linkTypes 参与展开的关系类型，为空表示全部
+     * @param fanOut 单个节点每个方向（出边、入边）最多展开的关系数
+     * @param maxNodes 子图节点预算，达到后停止加入新节点并标记 truncated
+     */
+    public Map<String, Object> getNeighborhood(String objectType, String id, int depth, List<String> linkTypes,
+                                               String direction, int fanOut, int maxNodes, boolean includeProperties)
+            throws Loader.NotFoundException, IOException {
+        loader.getObjectType(objectType);
+        if (depth < 1 || depth > MAX_NEIGHBORHOOD_DEPTH) {
+            throw new IllegalArgumentException("depth must be between 1 and " + MAX_NEIGHBORHOOD_DEPTH);
+        }
+        String dir = direction == null || direction.isEmpty() ? NeighborhoodQuery.DIRECTION_BOTH : direction;
+        if (!List.of(NeighborhoodQuery.DIRECTION_OUTGOING, NeighborhoodQuery.DIRECTION_INCOMING,
+                NeighborhoodQuery.DIRECTION_BOTH).contains(dir)) {
+            throw new IllegalArgumentException("direction must be outgoing, incoming or both");
+        }
+        List<LinkType> linkTypeDefs = new ArrayList<>();
+        if (linkTypes == null || linkTypes.isEmpty()) {
+            linkTypeDefs.addAll(loader.listLinkTypes());
+        } else {
+            for (String linkType : linkTypes) {
+                linkTypeDefs.add(loader.getLinkType(linkType));
+            }
+        }
+
+        NeighborhoodQuery query = new NeighborhoodQuery(objectType, id, depth, linkTypeDefs, dir,
+            Math.max(1, Math.min(fanOut, MAX_NEIGHBORHOOD_FAN_OUT)), Math.max(1, Math.min(maxNodes, MAX_NEIGHBORHOOD_NODES)));
+        NeighborhoodResult result = storage.expandNeighborhood(query);
+
+        if (includeProperties) {
+            Map<String, List<String>> idsByType = new LinkedHashMap<>();
+            for (Map<String, Object> node : result.getNodes()) {
+                idsByType.computeIfAbsent((String) node.get("object_type"), k -> new ArrayList<>()).add((String) node.get("id"));
+            }
+            Map<String, Map<String, Map<String, Object>>> instances = new HashMap<>();
+            for (Map.Entry<String, List<String>> entry : idsByType.entrySet()) {
+                instances.put(entry.getKey(), instanceStorage.getInstancesBatch(entry.getKey(), entry.getValue()));
+            }
+            for (Map<String, Object> node : result.getNodes()) {
+                Map<String, Map<String, Object>> byId = instances.get(node.get("object_type"));
+                Map<String, Object> instance = byId != null ? byId.get(node.get("id")) : null;
+                if (instance != null) {
+                    node.put("properties", instance);
+                }
+            }
+        }
+
+        Map<String, Object> response = result.toMap();
+        response.put("depth", depth);
+        response.put("direction", dir);
+        response.put("fan_out", query.getFanOut());
+        response.put("max_nodes", query.getMaxNodes());
+        return response;
+    }
+
     public com.mypalantir.repository.InstanceStorage.ListResult listLinks(String linkType, int offset, int limit) throws Loader.NotFoundException, IOException {
         loader.getLinkType(linkType);
         return storage.listLinks(linkType, offset, limit);
@@ -1,10 +1,12 @@
 package com.mypalantir.service;
 
+import com.mypalantir.config.Config;
 import com.mypalantir.meta.LinkType;
 import com.mypalantir.meta.Loader;
 import com.mypalantir.repository.IInstanceStorage;
 import com.mypalantir.repository.ILinkStorage;
 import com.mypalantir.repository.InstanceStorage;
+import com.mypalantir.repository.LinkBatchResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,8 +24,6 @@ public class LinkSyncService {
 
     /** 并发线程数（可按需调整） */
     private static final int THREAD_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
-    /** 每批处理的源实例数量 */
-    private static final int BATCH_SIZE = 200;
     /** 单次全量加载的最大实例数（超出则分页） */
     private static final int MAX_LOAD_SIZE = 100_000;
 
@@ -39,6 +39,9 @@ public class LinkSyncService {
     @Autowired
     private Loader loader;
 
+    @Autowired
+    private Config config;
+
     /**
      * 根据模型定义同步关系（多线程批量优化版）
      *
@@ -119,17 +122,27 @@ public class LinkSyncService {
         ExecutorService executor = Executors.newFixedThreadPool(writeConcurrency);
         List<Future<?>> futures = new ArrayList<>();
 
-        List<List<String[]>> batches = partition(toCreate, BATCH_SIZE);
+        List<List<String[]>> batches = partition(toCreate, batchSize());
         for (List<String[]> batch : batches) {
             futures.add(executor.submit(() -> {
+                List<Map<String, Object>> links = new ArrayList<>(batch.size());
                 for (String[] pair : batch) {
-                    try {
-                        linkService.createLink(linkTypeName, pair[0], pair[1], new HashMap<>());
-                        linksCreated.incrementAndGet();
-                    } catch (Exception e) {
-                        errors.incrementAndGet();
-                        log.debug("[LinkSync] Failed to create link {}->{}: {}", pair[0], pair[1], e.getMessage());
+                    Map<String, Object> link = new HashMap<>();
+                    link.put("source_id", pair[0]);
+                    link.put("target_id", pair[1]);
+                    links.add(link);
+                }
+                try {
+                    LinkBatchResult batchResult = linkService.createLinksBatch(linkTypeName, links);
+                    linksCreated.addAndGet(batchResult.getSuccessCount());
+                    errors.addAndGet(batchResult.getFailureCount());
+                    for (LinkBatchResult.Failure failure : batchResult.getFailures()) {
+                        String[] pair = batch.get(failure.getIndex());
+                        log.debug("[LinkSync] Failed to create link {}->{}: {}", pair[0], pair[1], failure.getError());
                     }
+                } catch (Exception e) {
+                    errors.addAndGet(batch.size());
+                    log.warn("[LinkSync] Failed to create link batch of {} for {}: {}", batch.size(), linkTypeName, e.getMessage());
                 }
             }));
         }
@@ -365,6 +378,13 @@ public class LinkSyncService {
         }
     }
 
+    /**
+     * 每批写入的关系数量（一批对应存储层一次 createLinksBatch），取自 link.sync.batch-size
+     */
+    private int batchSize() {
+        return config != null ? Math.max(1, config.getLinkSyncBatchSize()) : 1000;
+    }
+
     /**
      * 将列表均匀分成若干批次
      */
@@ -1,8 +1,11 @@
 package com.mypalantir.service;
 
+import com.mypalantir.config.Config;
 import com.mypalantir.meta.Loader;
 import com.mypalantir.meta.ObjectType;
+import com.mypalantir.repository.HybridInstanceStorage;
 import com.mypalantir.repository.IInstanceStorage;
+import com.mypalantir.repository.RelationalInstanceStorage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,7 +17,6 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.*;
-import java.util.concurrent.*;
 
 @Service
 public class MappedDataService {
@@ -40,6 +42,34 @@ public class MappedDataService {
     @Autowired(required = false)
     private Environment environment;
 
+    /** 默认数据库中同步表的查询存储，建表后刷新其同步表目录缓存 */
+    @Autowired(required = false)
+    private RelationalInstanceStorage relationalInstanceStorage;
+
+    @Autowired(required = false)
+    private ExtractCheckpointStore checkpointStore;
+
+    /** 常驻内存热层的维度类型在抽取完成后重新加载 */
+    @Autowired(required = false)
+    private DimensionHotTier hotTier;
+
+    /** 同步表重写后失效读取该类型的指标结果缓存 */
+    @Autowired(required = false)
+    private MetricResultCache metricResultCache;
+
+    /** 同步完成后刷新读取该类型的指标汇总：增量同步只重新填充写入行所在日期，全量同步标记为过期 */
+    @Autowired(required = false)
+    private MetricRollupStore metricRollupStore;
+
+    /** 映射增量抽取模式（mapping.incremental_mode）：全量、按水位线列、按行哈希比对 */
+    public static final String EXTRACT_MODE_FULL = "full";
+    public static final String EXTRACT_MODE_WATERMARK = "watermark";
+    public static final String EXTRACT_MODE_ROW_HASH = "row_hash";
+
+    /** 跨库抽取流水线参数（未注入 Config 时使用默认值） */
+    @Autowired(required = false)
+    private Config config;
+
     /**
      * 查询映射数据（原始数据）
      * 严格查询界限：只查询根据mapping映射的原始表，不查询同步表
@@ -255,6 +285,16 @@ public class MappedDataService {
      */
     public SyncExtractResult syncExtractWithTable(String objectType, String mappingId, String targetDatabaseId) 
             throws IOException, SQLException, Loader.NotFoundException {
+        return syncExtractWithTable(objectType, mappingId, targetDatabaseId, false);
+    }
+
+    /**
+     * 同步抽取；映射配置了增量模式（incremental_mode = watermark | row_hash）时只抽取新增或变化的行
+     * @param fullRefresh 为 true 时丢弃增量检查点，重新全量抽取并建立检查点
+     */
+    public SyncExtractResult syncExtractWithTable(String objectType, String mappingId, String targetDatabaseId,
+                                                  boolean fullRefresh)
+            throws IOException, SQLException, Loader.NotFoundException {
         SyncExtractResult result = new SyncExtractResult();
         
         // 1. 获取映射关系
@@ -299,6 +339,9 @@ public class MappedDataService {
             tableCreated = true;
             result.tableCreated = true;
             logger.info("Created sync table: {}", targetTableName);
+            if (targetDatabaseId == null && relationalInstanceStorage != null) {
+                relationalInstanceStorage.refreshSyncTable(targetTableName);
+            }
         } else {
             logger.info("Sync table already exists: {}", targetTableName);
         }
@@ -336,16 +379,26 @@ public class MappedDataService {
         }
         
         int rowsInserted;
+        String extractMode = extractModeOf(mapping);
+        boolean incremental = !EXTRACT_MODE_FULL.equals(extractMode);
+        // 增量抽取写入的行（混合存储模式用于同步图数据库，启用指标汇总时用于只刷新写入行所在日期）
+        List<Map<String, Object>> incrementalRows = incremental && (graphInstanceStorage != null || metricRollupStore != null)
+            ? new ArrayList<>() : null;
         
         // 判断是否需要跨数据库抽取
         // targetDatabaseId为null表示使用默认数据库（项目配置的db.*）
         boolean isCrossDatabase = (sourceDatabaseId != null && !sourceDatabaseId.isEmpty()) && 
                                   (targetDatabaseId == null || !sourceDatabaseId.equals(targetDatabaseId));
         
-        if (isCrossDatabase) {
+        if (incremental) {
+            // 增量抽取：只读取/写入新增或变化的行，写入使用按 id 覆盖的 upsert
+            rowsInserted = extractIncremental(extractMode, mappingId, mapping, sourceTableName, sourceDatabaseId,
+                targetTableName, targetDatabaseId, columnPropertyMappings, primaryKeyColumns, primaryKeyColumn,
+                fullRefresh || tableCreated, incrementalRows, result);
+        } else if (isCrossDatabase) {
             // 跨数据库抽取：先从源数据库查询，再插入到目标数据库（默认数据库）
             rowsInserted = extractDataCrossDatabase(sourceTableName, targetTableName, 
-                sourceDatabaseId, targetDatabaseId, columnPropertyMappings, primaryKeyColumns, primaryKeyColumn);
+                sourceDatabaseId, targetDatabaseId, columnPropertyMappings, primaryKeyColumns, primaryKeyColumn, result);
         } else {
             // 同数据库抽取：使用INSERT INTO ... SELECT ... FROM（Doris 不支持 ON DUPLICATE KEY UPDATE）
             String extractSql = buildExtractSql(sourceTableName, targetTableName, columnPropertyMappings, primaryKeyColumns, primaryKeyColumn, targetDatabaseId);
@@ -369,11 +422,35 @@ public class MappedDataService {
         // 12. 混合存储模式：同步到图数据库（Neo4j/FalkorDB，按 storage.neo4j.fields 配置建立节点）
         if (graphInstanceStorage != null && rowsInserted > 0) {
             try {
-                int graphSynced = syncSyncTableToGraph(objectType, targetTableName, targetDatabaseId);
-                result.neo4jNodesSynced = graphSynced;
-                logger.info("Synced {} rows to graph DB for object type {}", graphSynced, objectType);
+                // 增量抽取只同步本次写入的行；写入行超过上限时（未完整收集）流式同步整张同步表
+                GraphSyncPipeline.Stats graphStats = incrementalRows != null && incrementalRows.size() <= graphSyncIncrementalMaxRows()
+                    ? mergeRowsToGraph(objectType, incrementalRows)
+                    : syncSyncTableToGraph(objectType, targetTableName, targetDatabaseId, false);
+                result.neo4jNodesSynced = (int) graphStats.getRowsSynced();
+                result.graphSyncStats = graphStats.toMap();
+                logger.info("Synced {} rows to graph DB for object type {}", result.neo4jNodesSynced, objectType);
             } catch (Exception e) {
-                logger.warn("Failed to sync to graph DB (sync table data is OK): {}", e.getMessage());
+                result.graphSyncError = e.getMessage();
+                logger.warn("Failed to sync to graph DB (sync table data is OK, resume via sync-to-graph): {}", e.getMessage());
+            }
+        }
+
+        // 13. 同步表已整体重写，清空该类型的实例读穿缓存
+        if (instanceStorage instanceof HybridInstanceStorage hybridStorage) {
+            hybridStorage.invalidateType(objectType);
+        }
+        if (hotTier != null) {
+            hotTier.onMappingSynced(objectType);
+        }
+        if (metricResultCache != null) {
+            metricResultCache.invalidateObjectType(objectType);
+        }
+        if (metricRollupStore != null) {
+            // 未完整收集写入行（全量抽取或超过上限）时整体重建
+            if (incrementalRows != null && incrementalRows.size() <= graphSyncIncrementalMaxRows()) {
+                metricRollupStore.onRowsSynced(objectType, incrementalRows);
+            } else {
+                metricRollupStore.onObjectTypeSynced(objectType);
             }
         }
         
@@ -596,23 +673,258 @@ public class MappedDataService {
 
     /**
      * 跨数据库数据抽取
-     * 先从源数据库查询数据，再插入到目标数据库
+     * 源表以流式游标读取，经有界队列交给并发写入线程批量写入目标数据库（见 ExtractPipeline），不在内存中缓存整表
      * 支持组合主键：如果配置了多个主键列，使用下划线连接它们的值作为ID
      */
     private int extractDataCrossDatabase(String sourceTableName, String targetTableName,
                                          String sourceDatabaseId, String targetDatabaseId,
                                          Map<String, String> columnPropertyMappings,
-                                         List<String> primaryKeyColumns, String primaryKeyColumn) throws SQLException, IOException {
-        // 1. 从源数据库查询数据（确保包含所有主键列）
+                                         List<String> primaryKeyColumns, String primaryKeyColumn,
+                                         SyncExtractResult result) throws SQLException, IOException {
+        // 确保查询包含所有主键列
         String selectSql = buildSelectSql(sourceTableName, columnPropertyMappings, primaryKeyColumns);
-        List<Map<String, Object>> sourceRows = databaseMetadataService.executeQuery(selectSql, sourceDatabaseId);
-        
-        if (sourceRows.isEmpty()) {
+        List<String> targetColumns = buildTargetColumns(columnPropertyMappings);
+        ExtractPipeline.Stats stats = runExtractPipeline(sourceDatabaseId, selectSql, Collections.emptyList(),
+            targetTableName, targetDatabaseId, targetColumns, false,
+            row -> toTargetValues(toTargetRow(row, columnPropertyMappings, primaryKeyColumns, primaryKeyColumn, targetColumns), targetColumns));
+        result.pipelineStats = stats.toMap();
+        if (stats.getRowsRead() == 0) {
             logger.info("No data to extract from source table: {}", sourceTableName);
-            return 0;
         }
-        
-        // 2. 构建插入SQL（去重：多个源列映射到同一目标属性时只保留一次）
+        return (int) stats.getRowsWritten();
+    }
+
+    /**
+     * 执行跨库抽取流水线
+     * Doris 不支持 ON DUPLICATE KEY UPDATE，使用普通 INSERT；其余数据库 updateValues 为 false 时重复行只刷新 updated_at，
+     * 为 true 时（增量抽取）用源行的值覆盖已有行
+     */
+    private ExtractPipeline.Stats runExtractPipeline(String sourceDatabaseId, String selectSql, List<Object> params,
+                                                     String targetTableName, String targetDatabaseId,
+                                                     List<String> targetColumns, boolean updateValues,
+                                                     ExtractPipeline.RowMapper mapper) throws SQLException, IOException {
+        ExtractPipeline pipeline = config != null
+            ? new ExtractPipeline(databaseMetadataService, config.getExtractFetchSize(), config.getExtractBatchSize(),
+                config.getExtractWriters(), config.getExtractQueueCapacity())
+            : new ExtractPipeline(databaseMetadataService, 1000, 1000, 2, 4);
+        boolean isDoris = "doris".equals(databaseMetadataService.getDatabaseType(targetDatabaseId));
+        String suffix = isDoris ? "" : buildOnDuplicateKeyClause(targetColumns, updateValues);
+        return pipeline.run(sourceDatabaseId, selectSql, params, targetDatabaseId,
+            buildInsertPrefix(targetTableName, targetColumns), suffix, targetColumns.size(), mapper);
+    }
+
+    /**
+     * 映射的增量抽取模式，未配置时为全量
+     */
+    static String extractModeOf(Map<String, Object> mapping) {
+        Object mode = mapping.get("incremental_mode");
+        if (mode == null || mode.toString().isEmpty()) {
+            return EXTRACT_MODE_FULL;
+        }
+        return mode.toString().toLowerCase();
+    }
+
+    /**
+     * 增量抽取
+     * watermark：读取 (上次水位线, 本次开始时源表最大值] 区间内的行，水位线列须为时间戳或单调递增 id；
+     *            本次上界在读取前确定，运行期间新写入的行留给下次，早于水位线补录的行不会被抽取（用 row_hash 模式兜底）。
+     * row_hash：读取全部源行，与上次记录的行哈希比对，只写入新增或变化的行。
+     * 写入成功后才保存检查点；目标表新建、fullRefresh、模式/水位线列/目标表变化时检查点作废，本次为全量。
+     * 目标为 Doris（DUPLICATE KEY 模型）时变化行以追加方式写入。
+     * @param writtenRows 输出：本次写入的目标行（用于增量同步图数据库与刷新指标汇总），为 null 时不收集，最多收集 graph.sync.incremental-max-rows + 1 行
+     * @return 写入的行数
+     */
+    private int extractIncremental(String mode, String mappingId, Map<String, Object> mapping,
+                                   String sourceTableName, String sourceDatabaseId,
+                                   String targetTableName, String targetDatabaseId,
+                                   Map<String, String> columnPropertyMappings,
+                                   List<String> primaryKeyColumns, String primaryKeyColumn,
+                                   boolean resetCheckpoint, List<Map<String, Object>> writtenRows,
+                                   SyncExtractResult result) throws SQLException, IOException {
+        if (checkpointStore == null) {
+            throw new IOException("Incremental extraction requires ExtractCheckpointStore");
+        }
+        String watermarkColumn = (String) mapping.get("watermark_column");
+        if (EXTRACT_MODE_WATERMARK.equals(mode) && (watermarkColumn == null || watermarkColumn.isEmpty())) {
+            throw new IOException("Mapping " + mappingId + " uses watermark mode but has no watermark_column");
+        }
+        if (!EXTRACT_MODE_WATERMARK.equals(mode) && !EXTRACT_MODE_ROW_HASH.equals(mode)) {
+            throw new IOException("Unsupported incremental_mode '" + mode + "' for mapping " + mappingId);
+        }
+        String targetKey = targetDatabaseId == null ? "default" : targetDatabaseId;
+
+        ExtractCheckpointStore.Checkpoint checkpoint = resetCheckpoint ? null : checkpointStore.load(mappingId);
+        if (checkpoint != null && (!mode.equals(checkpoint.getMode())
+                || !targetTableName.equals(checkpoint.getTargetTable())
+                || !targetKey.equals(checkpoint.getTargetDatabaseId())
+                || (EXTRACT_MODE_WATERMARK.equals(mode) && !watermarkColumn.equalsIgnoreCase(checkpoint.getWatermarkColumn())))) {
+            logger.info("[MappedDataService] Extract checkpoint of mapping {} no longer matches its configuration, running full extract", mappingId);
+            checkpoint = null;
+        }
+        if (checkpoint == null) {
+            checkpointStore.reset(mappingId);
+            checkpoint = new ExtractCheckpointStore.Checkpoint();
+            checkpoint.setMappingId(mappingId);
+            checkpoint.setMode(mode);
+            checkpoint.setWatermarkColumn(EXTRACT_MODE_WATERMARK.equals(mode) ? watermarkColumn : null);
+            checkpoint.setTargetTable(targetTableName);
+            checkpoint.setTargetDatabaseId(targetKey);
+        }
+
+        String selectSql = buildSelectSql(sourceTableName, columnPropertyMappings, primaryKeyColumns);
+        List<String> targetColumns = buildTargetColumns(columnPropertyMappings);
+        String previous = EXTRACT_MODE_WATERMARK.equals(mode) ? checkpoint.getWatermark() : null;
+        Object upper = null;
+        List<Object> params = new ArrayList<>();
+        Map<String, Long> previousHashes = null;
+        Map<String, Long> currentHashes = null;
+
+        if (EXTRACT_MODE_WATERMARK.equals(mode)) {
+            String column = "`" + watermarkColumn + "`";
+            Object lower = previous != null ? watermarkParam(previous, checkpoint.getWatermarkType()) : null;
+            upper = queryWatermark(sourceDatabaseId, "SELECT MAX(" + column + ") FROM `" + sourceTableName + "`"
+                + (lower != null ? " WHERE " + column + " > ?" : ""), lower);
+            StringBuilder where = new StringBuilder(" WHERE ");
+            if (lower != null) {
+                where.append(column).append(" > ? AND ");
+                params.add(lower);
+            }
+            where.append(column).append(" <= ?");
+            params.add(upper);
+            selectSql += where;
+        } else {
+            previousHashes = checkpointStore.loadRowHashes(mappingId);
+            currentHashes = new HashMap<>(Math.max(16, previousHashes.size() * 4 / 3));
+        }
+
+        long rowsRead = 0;
+        long written = 0;
+        // 水位线模式下源表没有新行时不再读取
+        if (upper != null || EXTRACT_MODE_ROW_HASH.equals(mode)) {
+            Map<String, Long> before = previousHashes;
+            Map<String, Long> after = currentHashes;
+            ExtractPipeline.Stats stats = runExtractPipeline(sourceDatabaseId, selectSql, params,
+                targetTableName, targetDatabaseId, targetColumns, true, row -> {
+                    Map<String, Object> targetRow = toTargetRow(row, columnPropertyMappings, primaryKeyColumns, primaryKeyColumn, targetColumns);
+                    Object id = targetRow.get("id");
+                    // 行哈希模式跳过未变化的行；无法识别 id 的行不跟踪，每次都写入（与全量一致）
+                    if (after != null && id != null) {
+                        String key = String.valueOf(id);
+                        long hash = rowHash(row);
+                        after.put(key, hash);
+                        Long previousHash = before.get(key);
+                        if (previousHash != null && previousHash == hash) {
+                            return null;
+                        }
+                    }
+                    // 最多收集上限 + 1 行，超出即表示改为整表同步
+                    if (writtenRows != null && writtenRows.size() <= graphSyncIncrementalMaxRows()) {
+                        writtenRows.add(targetRow);
+                    }
+                    return toTargetValues(targetRow, targetColumns);
+                });
+            rowsRead = stats.getRowsRead();
+            written = stats.getRowsWritten();
+            result.pipelineStats = stats.toMap();
+        }
+
+        // 写入成功后推进检查点
+        if (upper != null) {
+            checkpoint.setWatermark(watermarkText(upper));
+            checkpoint.setWatermarkType(watermarkType(upper));
+        }
+        if (currentHashes != null) {
+            checkpointStore.saveRowHashes(mappingId, currentHashes);
+        }
+        checkpoint.setLastRunAt(java.time.Instant.now().toString());
+        checkpoint.setRowsRead(rowsRead);
+        checkpoint.setRowsWritten(written);
+        checkpoint.setRuns(checkpoint.getRuns() + 1);
+        checkpointStore.save(checkpoint);
+
+        result.extractMode = mode;
+        result.rowsRead = rowsRead;
+        result.checkpoint = EXTRACT_MODE_WATERMARK.equals(mode) ? checkpoint.getWatermark() : currentHashes.size();
+        logger.info("[MappedDataService] Incremental extract ({}) of mapping {} from {}: checkpoint {} -> {}, rows read {}, rows written {}",
+            mode, mappingId, sourceTableName,
+            EXTRACT_MODE_WATERMARK.equals(mode) ? previous : "-", result.checkpoint, rowsRead, written);
+        return (int) written;
+    }
+
+    /**
+     * 查询水位线上界，保留 JDBC 原始类型（不经过 executeQuery 的时间转换）
+     */
+    private Object queryWatermark(String databaseId, String sql, Object param) throws SQLException, IOException {
+        try (Connection conn = databaseMetadataService.getConnectionForDatabase(databaseId);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setQueryTimeout(databaseMetadataService.getQueryTimeoutSeconds());
+            if (param != null) {
+                pstmt.setObject(1, param);
+            }
+            try (java.sql.ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getObject(1) : null;
+            }
+        }
+    }
+
+    private static String watermarkType(Object value) {
+        if (value instanceof Number) {
+            return "number";
+        }
+        if (value instanceof java.sql.Timestamp || value instanceof java.time.LocalDateTime) {
+            return "timestamp";
+        }
+        if (value instanceof java.sql.Date || value instanceof java.time.LocalDate) {
+            return "date";
+        }
+        return "string";
+    }
+
+    private static String watermarkText(Object value) {
+        if (value instanceof java.time.LocalDateTime) {
+            return java.sql.Timestamp.valueOf((java.time.LocalDateTime) value).toString();
+        }
+        return value.toString();
+    }
+
+    /**
+     * 检查点中的水位线文本按类型还原为 JDBC 参数
+     */
+    static Object watermarkParam(String text, String type) {
+        if (type == null) {
+            return text;
+        }
+        switch (type) {
+            case "number":
+                return new java.math.BigDecimal(text);
+            case "timestamp":
+                return java.sql.Timestamp.valueOf(text);
+            case "date":
+                return java.sql.Date.valueOf(text);
+            default:
+                return text;
+        }
+    }
+
+    /**
+     * 源行的 64 位 FNV-1a 哈希（按列名排序，区分 null 与空串）
+     */
+    static long rowHash(Map<String, Object> row) {
+        long hash = 0xcbf29ce484222325L;
+        for (Map.Entry<String, Object> entry : new TreeMap<>(row).entrySet()) {
+            String value = entry.getKey() + (entry.getValue() == null ? "\u0000" : "=" + entry.getValue()) + "\u0001";
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 目标同步表列：id + 映射属性（去重：多个源列映射到同一目标属性时只保留一次）
+     */
+    private List<String> buildTargetColumns(Map<String, String> columnPropertyMappings) {
         List<String> targetColumns = new ArrayList<>();
         targetColumns.add("id");
         java.util.Set<String> seen = new java.util.LinkedHashSet<>();
@@ -622,45 +934,7 @@ public class MappedDataService {
                 targetColumns.add(propertyName);
             }
         }
-        
-        // 3. 批量插入到目标数据库（Doris 不支持 ON DUPLICATE KEY UPDATE，使用普通 INSERT）
-        int rowsInserted = 0;
-        boolean isDoris = "doris".equals(databaseMetadataService.getDatabaseType(targetDatabaseId));
-        String insertSql = isDoris ? buildInsertSql(targetTableName, targetColumns) : buildInsertOrUpdateSql(targetTableName, targetColumns);
-        final int BATCH_SIZE = 1000;
-        
-        Connection targetConn = databaseMetadataService.getConnectionForDatabase(targetDatabaseId);
-        try {
-            targetConn.setAutoCommit(false);
-            try (PreparedStatement pstmt = targetConn.prepareStatement(insertSql)) {
-                int batchCount = 0;
-                for (Map<String, Object> row : sourceRows) {
-                    setInsertParameters(pstmt, row, columnPropertyMappings, primaryKeyColumns, primaryKeyColumn, targetColumns);
-                    pstmt.addBatch();
-                    batchCount++;
-                    if (batchCount >= BATCH_SIZE) {
-                        int[] counts = pstmt.executeBatch();
-                        for (int c : counts) rowsInserted += (c > 0 ? 1 : 0);
-                        batchCount = 0;
-                    }
-                }
-                if (batchCount > 0) {
-                    int[] counts = pstmt.executeBatch();
-                    for (int c : counts) rowsInserted += (c > 0 ? 1 : 0);
-                }
-            }
-            targetConn.commit();
-        } catch (SQLException e) {
-            if (targetConn != null) targetConn.rollback();
-            throw e;
-        } finally {
-            if (targetConn != null) {
-                targetConn.setAutoCommit(true);
-                if (!targetConn.isClosed()) targetConn.close();
-            }
-        }
-        
-        return rowsInserted;
+        return targetColumns;
     }
 
     /**
@@ -694,41 +968,48 @@ public class MappedDataService {
     }
 
     /**
-     * 构建INSERT SQL
+     * 构建 "INSERT INTO `t` (`c1`, ...) VALUES " 前缀，VALUES 元组由 ExtractPipeline 按行数拼接
      */
-    private String buildInsertSql(String tableName, List<String> columns) {
+    private String buildInsertPrefix(String tableName, List<String> columns) {
         StringBuilder sql = new StringBuilder("INSERT INTO `").append(tableName).append("` (");
         sql.append(String.join(", ", columns.stream().map(c -> "`" + c + "`").toArray(String[]::new)));
-        sql.append(") VALUES (");
-        sql.append(String.join(", ", java.util.Collections.nCopies(columns.size(), "?")));
-        sql.append(")");
-        
+        sql.append(") VALUES ");
         return sql.toString();
     }
 
     /**
-     * 构建INSERT ... ON DUPLICATE KEY UPDATE SQL
+     * 构建 ON DUPLICATE KEY UPDATE 子句：updateValues 为 true 时重复行用新值覆盖（增量抽取），否则只刷新 updated_at
      */
-    private String buildInsertOrUpdateSql(String tableName, List<String> columns) {
-        StringBuilder sql = new StringBuilder("INSERT INTO `").append(tableName).append("` (");
-        sql.append(String.join(", ", columns.stream().map(c -> "`" + c + "`").toArray(String[]::new)));
-        sql.append(") VALUES (");
-        sql.append(String.join(", ", java.util.Collections.nCopies(columns.size(), "?")));
-        sql.append(") ON DUPLICATE KEY UPDATE `updated_at` = CURRENT_TIMESTAMP");
-        
+    private String buildOnDuplicateKeyClause(List<String> columns, boolean updateValues) {
+        StringBuilder sql = new StringBuilder(" ON DUPLICATE KEY UPDATE ");
+        if (updateValues) {
+            for (String column : columns) {
+                if (!"id".equals(column)) {
+                    sql.append("`").append(column).append("` = VALUES(`").append(column).append("`), ");
+                }
+            }
+        }
+        sql.append("`updated_at` = CURRENT_TIMESTAMP");
         return sql.toString();
     }
 
+    private static Object[] toTargetValues(Map<String, Object> targetRow, List<String> targetColumns) {
+        Object[] values = new Object[targetColumns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = targetRow.get(targetColumns.get(i));
+        }
+        return values;
+    }
+
     /**
-     * 设置INSERT参数
+     * 源行转换为目标行（目标列 -> 值）
      * 支持组合主键：如果配置了多个主键列，使用下划线连接它们的值作为ID
      */
-    private void setInsertParameters(PreparedStatement pstmt, Map<String, Object> row,
-                                    Map<String, String> columnPropertyMappings,
-                                    List<String> primaryKeyColumns, String primaryKeyColumn,
-                                    List<String> targetColumns) throws SQLException {
-        int paramIndex = 1;
-        
+    private Map<String, Object> toTargetRow(Map<String, Object> row,
+                                            Map<String, String> columnPropertyMappings,
+                                            List<String> primaryKeyColumns, String primaryKeyColumn,
+                                            List<String> targetColumns) {
+        Map<String, Object> targetRow = new LinkedHashMap<>();
         for (String targetColumn : targetColumns) {
             Object value = null;
             
@@ -795,8 +1076,9 @@ public class MappedDataService {
                 }
             }
             
-            pstmt.setObject(paramIndex++, value);
+            targetRow.put(targetColumn, value);
         }
+        return targetRow;
     }
 
     /**
@@ -937,68 +1219,149 @@ public class MappedDataService {
         public int neo4jNodesSynced = 0;
         public String targetTableName;
         public String targetDatabaseId;
+        public String extractMode = EXTRACT_MODE_FULL;
+        /** 增量抽取从源表读取的行数（全量模式为 -1） */
+        public long rowsRead = -1;
+        /** 增量抽取本次运行后的检查点（水位线值，行哈希模式为已跟踪行数） */
+        public Object checkpoint;
+        /** 跨库抽取流水线各阶段计数与吞吐 */
+        public Map<String, Object> pipelineStats;
+        /** 图数据库同步计数与并发变化 */
+        public Map<String, Object> graphSyncStats;
+        /** 图数据库同步失败原因（同步表数据不受影响，可续传） */
+        public String graphSyncError;
 
         public Map<String, Object> toMap() {
             Map<String, Object> result = new HashMap<>();
             result.put("table_created", tableCreated);
             result.put("rows_extracted", rowsExtracted);
+            result.put("extract_mode", extractMode);
+            if (!EXTRACT_MODE_FULL.equals(extractMode)) {
+                result.put("rows_read", rowsRead);
+                result.put("checkpoint", checkpoint);
+            }
+            if (pipelineStats != null) {
+                result.put("pipeline", pipelineStats);
+            }
             result.put("neo4j_nodes_synced", neo4jNodesSynced);
+            if (graphSyncStats != null) {
+                result.put("graph_sync", graphSyncStats);
+            }
+            if (graphSyncError != null) {
+                result.put("graph_sync_error", graphSyncError);
+            }
             result.put("target_table_name", targetTableName);
             result.put("target_database_id", targetDatabaseId);
             return result;
         }
     }
 
-    private static final int NEO4J_BATCH_SIZE = 500;
-    private static final int NEO4J_PARALLEL_THREADS = 4;
+    /** 单批图写入失败后的重试退避基数（毫秒），第 n 次重试等待 n 倍 */
+    private static final long GRAPH_SYNC_RETRY_BACKOFF_MS = 200;
+    private static final String GRAPH_SYNC_RUNNING = "RUNNING";
+    private static final String GRAPH_SYNC_FAILED = "FAILED";
 
     /**
-     * 将同步表数据同步到图数据库（混合存储模式，Neo4j/FalkorDB）
-     * 批量 MERGE + 多线程并行，按 storage.neo4j.fields 提取字段建立节点
+     * 将同步表流式同步到图数据库（混合存储模式，或手动续传）
+     * @param targetDatabaseId 同步表所在数据库，null 或 "default" 表示默认数据库
+     * @param restart true 时忽略未完成的检查点，从头同步
      */
-    private int syncSyncTableToGraph(String objectType, String targetTableName, String targetDatabaseId) throws IOException, SQLException {
-        String selectSql = "SELECT * FROM `" + targetTableName + "`";
-        List<Map<String, Object>> rows = databaseMetadataService.executeQuery(selectSql, targetDatabaseId);
-        if (rows.isEmpty()) return 0;
-        List<String> neo4jFields = getNeo4jFields(objectType);
-        List<Map<String, Object>> summaries = new ArrayList<>(rows.size());
-        for (Map<String, Object> row : rows) {
-            Map<String, Object> summary = extractSummaryFields(objectType, new HashMap<>(row), neo4jFields);
-            if (summary.get("id") != null) summaries.add(summary);
+    public Map<String, Object> syncTableToGraph(String objectType, String targetDatabaseId, boolean restart)
+            throws IOException, SQLException {
+        if (graphInstanceStorage == null) {
+            throw new IllegalStateException("Graph sync requires storage.type=hybrid");
+        }
+        String databaseId = targetDatabaseId == null || targetDatabaseId.isEmpty() || "default".equals(targetDatabaseId)
+            ? null : targetDatabaseId;
+        String targetTableName = objectType.toLowerCase();
+        if (!databaseMetadataService.tableExists(databaseId, targetTableName)) {
+            throw new IllegalArgumentException("Sync table not found: " + targetTableName);
         }
-        if (summaries.isEmpty()) return 0;
+        GraphSyncPipeline.Stats stats = syncSyncTableToGraph(objectType, targetTableName, databaseId, !restart);
+        Map<String, Object> result = new LinkedHashMap<>(stats.toMap());
+        result.put("object_type", objectType);
+        result.put("target_table_name", targetTableName);
+        result.put("target_database_id", databaseId == null ? "default" : databaseId);
+        return result;
+    }
 
-        ExecutorService executor = Executors.newFixedThreadPool(NEO4J_PARALLEL_THREADS);
-        try {
-            List<List<Map<String, Object>>> batches = new ArrayList<>();
-            for (int i = 0; i < summaries.size(); i += NEO4J_BATCH_SIZE) {
-                batches.add(new ArrayList<>(summaries.subList(i, Math.min(i + NEO4J_BATCH_SIZE, summaries.size()))));
+    /**
+     * 将同步表数据同步到图数据库（Neo4j/FalkorDB），按 storage.neo4j.fields 提取字段建立节点
+     * 按 id 顺序流式读取，检查点随连续完成的批次推进；失败时保留检查点（FAILED），resume 时从检查点之后续传。
+     * 同步完成后删除检查点。
+     * @param resume 是否从同一同步表未完成的检查点续传；false 时从头同步（同步表已整体重写）
+     */
+    private GraphSyncPipeline.Stats syncSyncTableToGraph(String objectType, String targetTableName, String targetDatabaseId,
+                                                         boolean resume) throws IOException, SQLException {
+        ExtractCheckpointStore.GraphSyncCheckpoint checkpoint = null;
+        if (checkpointStore != null) {
+            ExtractCheckpointStore.GraphSyncCheckpoint previous = checkpointStore.loadGraphSync(objectType);
+            if (resume && previous != null && targetTableName.equals(previous.getTargetTable())
+                    && Objects.equals(targetDatabaseId, previous.getTargetDatabaseId())) {
+                checkpoint = previous;
+                logger.info("[MappedDataService] Resuming graph sync of {} after id {} ({} rows already synced)",
+                    objectType, previous.getLastId(), previous.getRowsSynced());
+            } else {
+                checkpoint = new ExtractCheckpointStore.GraphSyncCheckpoint();
+                checkpoint.setObjectType(objectType);
+                checkpoint.setTargetTable(targetTableName);
+                checkpoint.setTargetDatabaseId(targetDatabaseId);
             }
-            List<Future<Integer>> futures = new ArrayList<>();
-            for (List<Map<String, Object>> batch : batches) {
-                futures.add(executor.submit(() -> {
-                    try {
-                        return graphInstanceStorage.batchMergeInstances(objectType, batch);
-                    } catch (IOException e) {
-                        throw new CompletionException(e);
-                    }
-                }));
+            checkpoint.setStatus(GRAPH_SYNC_RUNNING);
+            checkpoint.setError(null);
+            checkpoint.setUpdatedAt(java.time.Instant.now().toString());
+            checkpointStore.saveGraphSync(checkpoint);
+        }
+
+        ExtractCheckpointStore.GraphSyncCheckpoint current = checkpoint;
+        long rowsBefore = current != null ? current.getRowsSynced() : 0;
+        GraphSyncPipeline.CheckpointListener listener = current == null ? null : (lastId, rowsSynced) -> {
+            current.setLastId(lastId);
+            current.setRowsSynced(rowsBefore + rowsSynced);
+            current.setUpdatedAt(java.time.Instant.now().toString());
+            checkpointStore.saveGraphSync(current);
+        };
+        List<String> neo4jFields = getNeo4jFields(objectType);
+        try {
+            GraphSyncPipeline.Stats stats = newGraphSyncPipeline().syncTable(objectType, targetTableName, targetDatabaseId,
+                current != null ? current.getLastId() : null,
+                row -> extractSummaryFields(objectType, row, neo4jFields), listener);
+            if (current != null) {
+                checkpointStore.clearGraphSync(objectType);
             }
-            int synced = 0;
-            for (Future<Integer> f : futures) {
-                synced += f.get();
+            return stats;
+        } catch (IOException | SQLException e) {
+            if (current != null) {
+                current.setStatus(GRAPH_SYNC_FAILED);
+                current.setError(e.getMessage());
+                current.setUpdatedAt(java.time.Instant.now().toString());
+                checkpointStore.saveGraphSync(current);
             }
-            return synced;
-        } catch (ExecutionException e) {
-            Throwable cause = e.getCause();
-            if (cause instanceof IOException) throw (IOException) cause;
-            throw new IOException("Graph DB batch sync failed", cause);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("Graph DB sync interrupted", e);
-        } finally {
-            executor.shutdown();
+            throw e;
+        }
+    }
+
+    /**
+     * 按 storage.neo4j.fields 提取摘要字段后批量并行 MERGE 到图数据库（增量抽取写入的行，不记录检查点）
+     */
+    private GraphSyncPipeline.Stats mergeRowsToGraph(String objectType, List<Map<String, Object>> rows)
+            throws IOException, SQLException {
+        List<String> neo4jFields = getNeo4jFields(objectType);
+        return newGraphSyncPipeline().syncRows(objectType, rows, row -> extractSummaryFields(objectType, row, neo4jFields));
+    }
+
+    private GraphSyncPipeline newGraphSyncPipeline() {
+        if (config == null) {
+            return new GraphSyncPipeline(databaseMetadataService, graphInstanceStorage, 1000, 500, 4, 8, 1000, 2,
+                GRAPH_SYNC_RETRY_BACKOFF_MS);
         }
+        return new GraphSyncPipeline(databaseMetadataService, graphInstanceStorage, config.getExtractFetchSize(),
+            config.getGraphSyncBatchSize(), config.getGraphSyncParallelism(), config.getGraphSyncMaxParallelism(),
+            config.getGraphSyncTargetLatencyMs(), config.getGraphSyncMaxRetries(), GRAPH_SYNC_RETRY_BACKOFF_MS);
+    }
+
+    private int graphSyncIncrementalMaxRows() {
+        return config != null ? config.getGraphSyncIncrementalMaxRows() : 100_000;
     }
 
     private List<String> getNeo4jFields(String objectType) {
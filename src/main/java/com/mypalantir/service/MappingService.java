@@ -4,6 +4,7 @@ import com.mypalantir.meta.Loader;
 import com.mypalantir.repository.IInstanceStorage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -18,12 +19,21 @@ public class MappingService {
     @Autowired
     private Loader loader;
 
+    /** 映射/表/数据库元数据注册表，查询规划读取元数据走内存 */
+    @Autowired(required = false)
+    private MetadataRegistry metadataRegistry;
+
+    /** 映射增删后清除指标执行器按对象类型解析的数据源 */
+    @Autowired(required = false)
+    @Lazy
+    private MetricTaskExecutor metricTaskExecutor;
+
     public String createMapping(String objectType, String tableId, Map<String, String> columnPropertyMappings, List<String> primaryKeyColumns) throws Loader.NotFoundException, IOException {
         // 验证对象类型存在
         loader.getObjectType(objectType);
 
         // 获取表信息以获取表名
-        Map<String, Object> table = instanceStorage.getInstance("table", tableId);
+        Map<String, Object> table = getTableInstance(tableId);
         String tableName = (String) table.get("name");
 
         Map<String, Object> mappingData = new HashMap<>();
@@ -42,6 +52,12 @@ public class MappingService {
         }
 
         String mappingId = instanceStorage.createInstance("mapping", mappingData);
+        if (metadataRegistry != null) {
+            metadataRegistry.refresh(MetadataRegistry.MAPPING, mappingId);
+        }
+        if (metricTaskExecutor != null) {
+            metricTaskExecutor.forgetDataSource(objectType);
+        }
         
         // 验证保存的数据
         try {
@@ -56,16 +72,25 @@ public class MappingService {
     }
 
     public Map<String, Object> getMapping(String mappingId) throws IOException {
+        if (metadataRegistry != null) {
+            return metadataRegistry.get(MetadataRegistry.MAPPING, mappingId);
+        }
         return instanceStorage.getInstance("mapping", mappingId);
     }
 
     public List<Map<String, Object>> getMappingsByObjectType(String objectType) throws IOException {
+        if (metadataRegistry != null) {
+            return metadataRegistry.getMappingsByObjectType(objectType);
+        }
         Map<String, Object> filters = new HashMap<>();
         filters.put("object_type", objectType);
         return instanceStorage.searchInstances("mapping", filters);
     }
 
     public List<Map<String, Object>> getMappingsByTable(String tableNameOrId) throws IOException {
+        if (metadataRegistry != null) {
+            return metadataRegistry.getMappingsByTable(tableNameOrId);
+        }
         Map<String, Object> filters = new HashMap<>();
         // 先尝试按table_name查询
         filters.put("table_name", tableNameOrId);
@@ -83,9 +108,22 @@ public class MappingService {
      * 通过 tableId 获取 table 实例（包含 database_id、name 等字段）
      */
     public Map<String, Object> getTableInstance(String tableId) throws IOException {
+        if (metadataRegistry != null) {
+            return metadataRegistry.get(MetadataRegistry.TABLE, tableId);
+        }
         return instanceStorage.getInstance("table", tableId);
     }
 
+    /**
+     * 通过 databaseId 获取 database 实例（包含 type、host、jdbc_url 等字段）
+     */
+    public Map<String, Object> getDatabaseInstance(String databaseId) throws IOException {
+        if (metadataRegistry != null) {
+            return metadataRegistry.get(MetadataRegistry.DATABASE, databaseId);
+        }
+        return instanceStorage.getInstance("database", databaseId);
+    }
+
     public void updateMapping(String mappingId, Map<String, String> columnPropertyMappings, List<String> primaryKeyColumns) throws IOException {
         Map<String, Object> updateData = new HashMap<>();
         updateData.put("column_property_mappings", columnPropertyMappings);
@@ -102,6 +140,9 @@ public class MappingService {
             System.out.println("[MappingService.updateMapping] Clearing primary key columns");
         }
         instanceStorage.updateInstance("mapping", mappingId, updateData);
+        if (metadataRegistry != null) {
+            metadataRegistry.refresh(MetadataRegistry.MAPPING, mappingId);
+        }
         
         // 验证更新的数据
         try {
@@ -113,7 +154,45 @@ public class MappingService {
         }
     }
 
+    /**
+     * 更新映射的增量抽取配置
+     * @param mode full | watermark | row_hash，为空视为 full
+     * @param watermarkColumn watermark 模式的水位线列（时间戳或单调递增 id）
+     */
+    public void updateIncrementalConfig(String mappingId, String mode, String watermarkColumn) throws IOException {
+        String normalized = mode == null || mode.isEmpty() ? MappedDataService.EXTRACT_MODE_FULL : mode.toLowerCase();
+        if (!MappedDataService.EXTRACT_MODE_FULL.equals(normalized)
+                && !MappedDataService.EXTRACT_MODE_WATERMARK.equals(normalized)
+                && !MappedDataService.EXTRACT_MODE_ROW_HASH.equals(normalized)) {
+            throw new IllegalArgumentException("incremental_mode must be one of full, watermark, row_hash");
+        }
+        if (MappedDataService.EXTRACT_MODE_WATERMARK.equals(normalized) && (watermarkColumn == null || watermarkColumn.isEmpty())) {
+            throw new IllegalArgumentException("watermark_column is required for watermark mode");
+        }
+        Map<String, Object> updateData = new HashMap<>();
+        updateData.put("incremental_mode", normalized);
+        updateData.put("watermark_column", MappedDataService.EXTRACT_MODE_WATERMARK.equals(normalized) ? watermarkColumn : null);
+        instanceStorage.updateInstance("mapping", mappingId, updateData);
+        if (metadataRegistry != null) {
+            metadataRegistry.refresh(MetadataRegistry.MAPPING, mappingId);
+        }
+    }
+
     public void deleteMapping(String mappingId) throws IOException {
+        String objectType = null;
+        if (metricTaskExecutor != null) {
+            try {
+                objectType = (String) getMapping(mappingId).get("object_type");
+            } catch (IOException e) {
+                // 映射不存在时由下面的删除报错
+            }
+        }
         instanceStorage.deleteInstance("mapping", mappingId);
+        if (metadataRegistry != null) {
+            metadataRegistry.remove(MetadataRegistry.MAPPING, mappingId);
+        }
+        if (objectType != null) {
+            metricTaskExecutor.forgetDataSource(objectType);
+        }
     }
 }
@@ -0,0 +1,259 @@
+package com.mypalantir.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 数据源元数据缓存（表、列、主键、列类型），按 数据库 + 类别 + 键 缓存字典扫描结果
+ * 条目在 ttl 内直接返回；距离过期不足 refresh-ahead 时返回旧值并在后台重新加载；
+ * 同一键同时只有一个加载在执行，并发请求等待同一次加载的结果（Oracle 字典扫描一次可能数秒）。
+ */
+public class MetadataCache {
+    private static final Logger logger = LoggerFactory.getLogger(MetadataCache.class);
+
+    public static final String TABLES = "tables";
+    public static final String COLUMNS = "columns";
+    public static final String PRIMARY_KEYS = "primary_keys";
+    public static final String ALL_COLUMNS = "all_columns";
+
+    public interface MetadataLoader<T> {
+        T load(Connection conn) throws SQLException, IOException;
+    }
+
+    public interface ConnectionSource {
+        Connection open(String databaseId) throws SQLException, IOException;
+    }
+
+    private static final class Key {
+        final String databaseId;
+        final String kind;
+        final String name;
+
+        Key(String databaseId, String kind, String name) {
+            this.databaseId = databaseId;
+            this.kind = kind;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return databaseId.equals(other.databaseId) && kind.equals(other.kind) && Objects.equals(name, other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(databaseId, kind, name);
+        }
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long loadedAt;
+
+        Entry(Object value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final long ttlMs;
+    private final long refreshAheadMs;
+    private final ConnectionSource connections;
+    private final Executor refresher;
+    private final LongSupplier clock;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Key, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
+
+    /** 失效时递增，失效前开始的加载结果不再写入缓存 */
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong backgroundRefreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+
+    public MetadataCache(long ttlMs, long refreshAheadMs, ConnectionSource connections, Executor refresher) {
+        this(ttlMs, refreshAheadMs, connections, refresher, System::currentTimeMillis);
+    }
+
+    MetadataCache(long ttlMs, long refreshAheadMs, ConnectionSource connections, Executor refresher, LongSupplier clock) {
+        this.ttlMs = ttlMs;
+        this.refreshAheadMs = Math.min(Math.max(0, refreshAheadMs), ttlMs);
+        this.connections = connections;
+        this.refresher = refresher;
+        this.clock = clock;
+    }
+
+    /**
+     * 读取缓存；未命中或已过期时用 conn（为 null 时自行取连接）加载，同一键的并发加载合并为一次
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String databaseId, String kind, String name, Connection conn, MetadataLoader<T> loader)
+            throws SQLException, IOException {
+        Key key = new Key(databaseId, kind, name);
+        long now = clock.getAsLong();
+        Entry entry = entries.get(key);
+        if (entry != null && now - entry.loadedAt < ttlMs) {
+            hits.incrementAndGet();
+            if (refreshAheadMs > 0 && now - entry.loadedAt >= ttlMs - refreshAheadMs) {
+                refreshInBackground(key, loader);
+            }
+            return (T) entry.value;
+        }
+        misses.incrementAndGet();
+        return (T) load(key, conn, loader);
+    }
+
+    private Object load(Key key, Connection conn, MetadataLoader<?> loader) throws SQLException, IOException {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inflight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+        long generation = invalidations.get();
+        try {
+            Object value;
+            if (conn != null) {
+                value = loader.load(conn);
+            } else {
+                try (Connection own = connections.open(key.databaseId)) {
+                    value = loader.load(own);
+                }
+            }
+            store(key, value, generation);
+            flight.complete(value);
+            return value;
+        } catch (SQLException | IOException | RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, flight);
+        }
+    }
+
+    private void refreshInBackground(Key key, MetadataLoader<?> loader) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        if (inflight.putIfAbsent(key, flight) != null) {
+            return;
+        }
+        backgroundRefreshes.incrementAndGet();
+        long generation = invalidations.get();
+        try {
+            refresher.execute(() -> {
+                try (Connection own = connections.open(key.databaseId)) {
+                    Object value = loader.load(own);
+                    store(key, value, generation);
+                    flight.complete(value);
+                } catch (Exception e) {
+                    // 保留旧值直到过期，过期后由前台请求重新加载
+                    refreshFailures.incrementAndGet();
+                    logger.warn("[MetadataCache] Background refresh of {} {} for database {} failed: {}",
+                        key.kind, key.name != null ? key.name : "", key.databaseId, e.getMessage());
+                    flight.completeExceptionally(e);
+                } finally {
+                    inflight.remove(key, flight);
+                }
+            });
+        } catch (RuntimeException e) {
+            inflight.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+    }
+
+    private void store(Key key, Object value, long generation) {
+        if (invalidations.get() == generation) {
+            entries.put(key, new Entry(value, clock.getAsLong()));
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> flight) throws SQLException, IOException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for metadata load", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 失效一个数据库的全部元数据
+     */
+    public int invalidate(String databaseId) {
+        invalidations.incrementAndGet();
+        int removed = 0;
+        for (Iterator<Key> it = entries.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().databaseId.equals(databaseId)) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 失效一张表的列、主键，以及该数据库的表列表和批量列信息
+     */
+    public int invalidateTable(String databaseId, String tableName) {
+        invalidations.incrementAndGet();
+        int removed = 0;
+        for (Iterator<Key> it = entries.keySet().iterator(); it.hasNext(); ) {
+            Key key = it.next();
+            if (!key.databaseId.equals(databaseId)) {
+                continue;
+            }
+            boolean tableEntry = (COLUMNS.equals(key.kind) || PRIMARY_KEYS.equals(key.kind))
+                && tableName.equalsIgnoreCase(key.name);
+            if (tableEntry || TABLES.equals(key.kind) || ALL_COLUMNS.equals(key.kind)) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ttl_ms", ttlMs);
+        stats.put("refresh_ahead_ms", refreshAheadMs);
+        stats.put("entries", entries.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("background_refreshes", backgroundRefreshes.get());
+        stats.put("refresh_failures", refreshFailures.get());
+        Map<String, Integer> byDatabase = new TreeMap<>();
+        for (Key key : entries.keySet()) {
+            byDatabase.merge(key.databaseId, 1, Integer::sum);
+        }
+        stats.put("entries_by_database", byDatabase);
+        return stats;
+    }
+}
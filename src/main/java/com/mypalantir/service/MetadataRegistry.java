@@ -0,0 +1,343 @@
+package com.mypalantir.service;
+
+import com.mypalantir.repository.IInstanceStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 映射元数据注册表
+ * 首次访问时一次性加载全部 mapping / table / database 实例到内存，之后查询规划读取元数据不再访问存储；
+ * 映射、表、数据库的写入路径调用 {@link #refresh(String, String)} / {@link #remove(String, String)} 保持最新，
+ * 每次变更生成新的不可变快照并递增版本号。其他节点的修改由定时全量重载兜底（metadata.registry.refresh-interval-ms）。
+ */
+@Service
+public class MetadataRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(MetadataRegistry.class);
+
+    public static final String MAPPING = "mapping";
+    public static final String TABLE = "table";
+    public static final String DATABASE = "database";
+
+    private static final Set<String> TRACKED_TYPES = Set.of(MAPPING, TABLE, DATABASE);
+
+    @Autowired
+    @Qualifier("instanceStorage")
+    private IInstanceStorage instanceStorage;
+
+    @Value("${metadata.registry.enabled:true}")
+    private boolean enabled;
+
+    /** 全量重载间隔（毫秒），0 表示只依赖写路径维护 */
+    @Value("${metadata.registry.refresh-interval-ms:300000}")
+    private long refreshIntervalMs;
+
+    private final AtomicLong version = new AtomicLong();
+    private final Object writeLock = new Object();
+    private volatile Snapshot snapshot;
+    private volatile long loadedAt;
+    /** 最近一次加载失败的时间，失败后短时间内直接回退存储，不反复全量加载 */
+    private volatile long lastLoadFailureAt;
+
+    private static final long LOAD_RETRY_BACKOFF_MS = 5000;
+
+    /**
+     * 不可变元数据快照
+     */
+    static final class Snapshot {
+        final long version;
+        final Map<String, Map<String, Object>> mappings;
+        final Map<String, Map<String, Object>> tables;
+        final Map<String, Map<String, Object>> databases;
+        final Map<String, List<Map<String, Object>>> mappingsByObjectType;
+        final Map<String, List<Map<String, Object>>> mappingsByTableName;
+        final Map<String, List<Map<String, Object>>> mappingsByTableId;
+        /** 映射ID -> {属性名: 列名}（column_property_mappings 反转） */
+        final Map<String, Map<String, String>> fieldMappings;
+
+        Snapshot(long version, Map<String, Map<String, Object>> mappings,
+                 Map<String, Map<String, Object>> tables, Map<String, Map<String, Object>> databases) {
+            this.version = version;
+            this.mappings = mappings;
+            this.tables = tables;
+            this.databases = databases;
+            Map<String, List<Map<String, Object>>> byObjectType = new HashMap<>();
+            Map<String, List<Map<String, Object>>> byTableName = new HashMap<>();
+            Map<String, List<Map<String, Object>>> byTableId = new HashMap<>();
+            Map<String, Map<String, String>> fields = new HashMap<>();
+            for (Map.Entry<String, Map<String, Object>> entry : mappings.entrySet()) {
+                Map<String, Object> mapping = entry.getValue();
+                addTo(byObjectType, mapping.get("object_type"), mapping);
+                addTo(byTableName, mapping.get("table_name"), mapping);
+                addTo(byTableId, mapping.get("table_id"), mapping);
+                fields.put(entry.getKey(), invertColumnMappings(mapping.get("column_property_mappings")));
+            }
+            this.mappingsByObjectType = byObjectType;
+            this.mappingsByTableName = byTableName;
+            this.mappingsByTableId = byTableId;
+            this.fieldMappings = fields;
+        }
+
+        private static void addTo(Map<String, List<Map<String, Object>>> index, Object key, Map<String, Object> mapping) {
+            if (key != null) {
+                index.computeIfAbsent(String.valueOf(key), k -> new ArrayList<>()).add(mapping);
+            }
+        }
+
+        private static Map<String, String> invertColumnMappings(Object value) {
+            Map<String, String> fieldMapping = new HashMap<>();
+            if (value instanceof Map<?, ?> columnPropertyMappings) {
+                for (Map.Entry<?, ?> e : columnPropertyMappings.entrySet()) {
+                    if (e.getKey() != null && e.getValue() != null) {
+                        fieldMapping.put(String.valueOf(e.getValue()), String.valueOf(e.getKey()));
+                    }
+                }
+            }
+            return Collections.unmodifiableMap(fieldMapping);
+        }
+
+        Map<String, Map<String, Object>> byType(String objectType) {
+            switch (objectType) {
+                case MAPPING: return mappings;
+                case TABLE: return tables;
+                default: return databases;
+            }
+        }
+    }
+
+    public static boolean isTracked(String objectType) {
+        return objectType != null && TRACKED_TYPES.contains(objectType.toLowerCase());
+    }
+
+    /**
+     * 确保注册表已加载；未启用或加载失败时返回 null，调用方回退到直接查询存储
+     */
+    private Snapshot current() {
+        if (!enabled) {
+            return null;
+        }
+        Snapshot s = snapshot;
+        if (s != null) {
+            return s;
+        }
+        if (System.currentTimeMillis() - lastLoadFailureAt < LOAD_RETRY_BACKOFF_MS) {
+            return null;
+        }
+        try {
+            return load(false);
+        } catch (IOException e) {
+            lastLoadFailureAt = System.currentTimeMillis();
+            logger.warn("[MetadataRegistry] Failed to load metadata, falling back to storage: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 从存储全量重载 mapping / table / database
+     */
+    public void reload() throws IOException {
+        load(true);
+    }
+
+    private Snapshot load(boolean force) throws IOException {
+        synchronized (writeLock) {
+            if (!force && snapshot != null) {
+                return snapshot;
+            }
+            long start = System.currentTimeMillis();
+            Map<String, Map<String, Object>> mappings = loadAll(MAPPING);
+            Map<String, Map<String, Object>> tables = loadAll(TABLE);
+            Map<String, Map<String, Object>> databases = loadAll(DATABASE);
+            Snapshot s = new Snapshot(version.incrementAndGet(), mappings, tables, databases);
+            snapshot = s;
+            loadedAt = System.currentTimeMillis();
+            logger.info("[MetadataRegistry] Loaded {} mappings, {} tables, {} databases in {} ms (version {})",
+                mappings.size(), tables.size(), databases.size(), loadedAt - start, s.version);
+            return s;
+        }
+    }
+
+    private Map<String, Map<String, Object>> loadAll(String objectType) throws IOException {
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        for (Map<String, Object> instance : instanceStorage.searchInstances(objectType, new HashMap<>())) {
+            Object id = instance.get("id");
+            if (id != null) {
+                result.put(String.valueOf(id), Collections.unmodifiableMap(new HashMap<>(instance)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 定时全量重载，覆盖其他节点或绕过写路径的修改
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void scheduledReload() {
+        if (!enabled || refreshIntervalMs <= 0 || snapshot == null
+                || System.currentTimeMillis() - loadedAt < refreshIntervalMs) {
+            return;
+        }
+        try {
+            reload();
+        } catch (IOException e) {
+            logger.warn("[MetadataRegistry] Scheduled reload failed, keeping version {}: {}", getVersion(), e.getMessage());
+        }
+    }
+
+    /**
+     * 实例创建或更新后调用：从存储读取该实例并替换快照中的条目
+     */
+    public void refresh(String objectType, String id) {
+        if (!isTracked(objectType) || id == null || snapshot == null) {
+            return;
+        }
+        try {
+            Map<String, Object> instance = instanceStorage.getInstance(objectType.toLowerCase(), id);
+            apply(objectType.toLowerCase(), id, instance);
+        } catch (IOException e) {
+            // 读取失败时丢弃快照，下次访问重新全量加载，避免继续提供过期数据
+            logger.warn("[MetadataRegistry] Failed to refresh {} {}, invalidating registry: {}", objectType, id, e.getMessage());
+            invalidate();
+        }
+    }
+
+    /**
+     * 实例删除后调用
+     */
+    public void remove(String objectType, String id) {
+        if (!isTracked(objectType) || id == null || snapshot == null) {
+            return;
+        }
+        apply(objectType.toLowerCase(), id, null);
+    }
+
+    /**
+     * 丢弃快照，下次访问时全量加载
+     */
+    public void invalidate() {
+        synchronized (writeLock) {
+            snapshot = null;
+            version.incrementAndGet();
+        }
+    }
+
+    private void apply(String objectType, String id, Map<String, Object> instance) {
+        synchronized (writeLock) {
+            Snapshot s = snapshot;
+            if (s == null) {
+                return;
+            }
+            Map<String, Map<String, Object>> mappings = s.mappings;
+            Map<String, Map<String, Object>> tables = s.tables;
+            Map<String, Map<String, Object>> databases = s.databases;
+            Map<String, Map<String, Object>> changed = new HashMap<>(s.byType(objectType));
+            if (instance != null) {
+                changed.put(id, Collections.unmodifiableMap(new HashMap<>(instance)));
+            } else {
+                changed.remove(id);
+            }
+            switch (objectType) {
+                case MAPPING: mappings = changed; break;
+                case TABLE: tables = changed; break;
+                default: databases = changed; break;
+            }
+            snapshot = new Snapshot(version.incrementAndGet(), mappings, tables, databases);
+        }
+    }
+
+    /**
+     * 当前元数据版本号，每次变更递增；查询计划等派生缓存可以此判断是否过期
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * 对象类型的映射列表（副本）
+     */
+    public List<Map<String, Object>> getMappingsByObjectType(String objectType) throws IOException {
+        Snapshot s = current();
+        if (s == null) {
+            Map<String, Object> filters = new HashMap<>();
+            filters.put("object_type", objectType);
+            return instanceStorage.searchInstances(MAPPING, filters);
+        }
+        return copyOf(s.mappingsByObjectType.get(objectType));
+    }
+
+    /**
+     * 按表名（优先）或表ID查找映射（副本）
+     */
+    public List<Map<String, Object>> getMappingsByTable(String tableNameOrId) throws IOException {
+        Snapshot s = current();
+        if (s == null) {
+            Map<String, Object> filters = new HashMap<>();
+            filters.put("table_name", tableNameOrId);
+            List<Map<String, Object>> result = instanceStorage.searchInstances(MAPPING, filters);
+            if (result.isEmpty()) {
+                filters.clear();
+                filters.put("table_id", tableNameOrId);
+                result = instanceStorage.searchInstances(MAPPING, filters);
+            }
+            return result;
+        }
+        List<Map<String, Object>> byName = s.mappingsByTableName.get(tableNameOrId);
+        return copyOf(byName != null ? byName : s.mappingsByTableId.get(tableNameOrId));
+    }
+
+    /**
+     * 映射的 {属性名: 列名}（column_property_mappings 反转），映射不存在时返回 null
+     */
+    public Map<String, String> getFieldMapping(String mappingId) throws IOException {
+        Snapshot s = current();
+        if (s == null) {
+            Map<String, Object> mapping = instanceStorage.getInstance(MAPPING, mappingId);
+            return Snapshot.invertColumnMappings(mapping.get("column_property_mappings"));
+        }
+        return s.fieldMappings.get(mappingId);
+    }
+
+    /**
+     * 获取 mapping / table / database 实例（副本）
+     * 快照中不存在时回源读取一次并补入快照（其他节点新建的元数据），仍不存在则抛出 instance not found
+     */
+    public Map<String, Object> get(String objectType, String id) throws IOException {
+        Snapshot s = current();
+        if (s == null || !isTracked(objectType)) {
+            return instanceStorage.getInstance(objectType, id);
+        }
+        Map<String, Object> instance = s.byType(objectType.toLowerCase()).get(id);
+        if (instance != null) {
+            return new HashMap<>(instance);
+        }
+        Map<String, Object> loaded = instanceStorage.getInstance(objectType, id);
+        if (loaded == null) {
+            throw new IOException("instance not found");
+        }
+        apply(objectType.toLowerCase(), id, loaded);
+        return loaded;
+    }
+
+    private static List<Map<String, Object>> copyOf(List<Map<String, Object>> instances) {
+        if (instances == null) {
+            return new ArrayList<>();
+        }
+        List<Map<String, Object>> result = new ArrayList<>(instances.size());
+        for (Map<String, Object> instance : instances) {
+            result.add(new HashMap<>(instance));
+        }
+        return result;
+    }
+}
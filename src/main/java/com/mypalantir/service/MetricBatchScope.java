@@ -0,0 +1,86 @@
+package com.mypalantir.service;
+
+import com.mypalantir.metric.MetricResult;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次批量指标查询内共享的计算表
+ * 相同计算标识（指标 + 定义版本 + 时间范围 + 维度）的指标与基础指标在批内只计算一次，
+ * 其他查询项（包括在其他线程上并行执行的）等待同一次计算的结果。
+ */
+public final class MetricBatchScope {
+
+    private static final ThreadLocal<MetricBatchScope> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, CompletableFuture<MetricResult>> computations = new ConcurrentHashMap<>();
+    private final AtomicLong computed = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * 当前线程所属的批量查询，不在批量查询中时为 null
+     */
+    public static MetricBatchScope current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 在指定批量查询范围内执行，结束后恢复外层范围
+     */
+    public static <T> T call(MetricBatchScope scope, MetricTaskExecutor.Task<T> task) throws Exception {
+        MetricBatchScope previous = CURRENT.get();
+        CURRENT.set(scope);
+        try {
+            return task.call();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 返回该计算的结果：批内第一次出现时执行，之后（含并发）的请求复用同一结果或同一次失败
+     */
+    public MetricResult computeIfAbsent(String key, MetricTaskExecutor.Task<MetricResult> computation) throws Exception {
+        CompletableFuture<MetricResult> flight = new CompletableFuture<>();
+        CompletableFuture<MetricResult> existing = computations.putIfAbsent(key, flight);
+        if (existing != null) {
+            shared.incrementAndGet();
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+        computed.incrementAndGet();
+        try {
+            MetricResult result = computation.call();
+            flight.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /** 实际执行的计算数 */
+    public long getComputed() {
+        return computed.get();
+    }
+
+    /** 复用已有计算（未重复执行）的次数 */
+    public long getShared() {
+        return shared.get();
+    }
+}
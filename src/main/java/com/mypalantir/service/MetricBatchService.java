@@ -0,0 +1,194 @@
+package com.mypalantir.service;
+
+import com.mypalantir.metric.AtomicMetric;
+import com.mypalantir.metric.MetricDefinition;
+import com.mypalantir.metric.MetricQuery;
+import com.mypalantir.metric.MetricResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 批量指标查询（看板一次提交 20~40 个指标）
+ * 查询项在 MetricTaskExecutor 上并行执行；同一批内相同的指标计算与基础指标子计算经 MetricBatchScope 只执行一次。
+ * 整批共享一个截止时间，到期未完成或失败的查询项单独返回错误，不影响其他查询项的结果。
+ */
+@Service
+public class MetricBatchService {
+    private static final Logger logger = LoggerFactory.getLogger(MetricBatchService.class);
+
+    private final MetricCalculator metricCalculator;
+    private final MetricService metricService;
+    private final AtomicMetricService atomicMetricService;
+    private final MetricTaskExecutor taskExecutor;
+
+    @Value("${metric.batch.timeout-ms:30000}")
+    private long defaultTimeoutMs = 30_000L;
+
+    @Value("${metric.batch.max-timeout-ms:120000}")
+    private long maxTimeoutMs = 120_000L;
+
+    public MetricBatchService(MetricCalculator metricCalculator, MetricService metricService,
+                              AtomicMetricService atomicMetricService, MetricTaskExecutor taskExecutor) {
+        this.metricCalculator = metricCalculator;
+        this.metricService = metricService;
+        this.atomicMetricService = atomicMetricService;
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * 批量查询结果：与请求顺序一致，失败项的 MetricResult 带 error
+     */
+    public static class BatchResult {
+        private final List<MetricResult> results;
+        private final int failed;
+        private final long computed;
+        private final long shared;
+        private final long elapsedMs;
+
+        BatchResult(List<MetricResult> results, int failed, long computed, long shared, long elapsedMs) {
+            this.results = results;
+            this.failed = failed;
+            this.computed = computed;
+            this.shared = shared;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public List<MetricResult> getResults() {
+            return results;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /** 实际执行的指标计算数（含基础指标） */
+        public long getComputed() {
+            return computed;
+        }
+
+        /** 批内复用、未重复执行的计算数 */
+        public long getShared() {
+            return shared;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+    }
+
+    /**
+     * 执行批量查询
+     * @param queries 查询项（metric_id、time_range、dimensions、cache）
+     * @param timeoutMs 整批截止时间，null 或非正数时使用 metric.batch.timeout-ms
+     */
+    public BatchResult execute(List<Map<String, Object>> queries, Long timeoutMs) {
+        long start = System.currentTimeMillis();
+        long timeout = timeoutMs != null && timeoutMs > 0 ? Math.min(timeoutMs, maxTimeoutMs) : defaultTimeoutMs;
+        long deadline = start + timeout;
+        MetricBatchScope scope = new MetricBatchScope();
+
+        List<Future<MetricResult>> futures = new ArrayList<>(queries.size());
+        List<String> metricIds = new ArrayList<>(queries.size());
+        for (Map<String, Object> queryMap : queries) {
+            String metricId = queryMap != null ? (String) queryMap.get("metric_id") : null;
+            metricIds.add(metricId);
+            if (metricId == null || metricId.isEmpty()) {
+                futures.add(CompletableFuture.failedFuture(new IllegalArgumentException("metric_id is required")));
+                continue;
+            }
+            MetricQuery query = toMetricQuery(metricId, queryMap);
+            try {
+                futures.add(MetricBatchScope.call(scope, () -> submit(metricId, query)));
+            } catch (Exception e) {
+                futures.add(CompletableFuture.failedFuture(e));
+            }
+        }
+
+        List<MetricResult> results = new ArrayList<>(queries.size());
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<MetricResult> future = futures.get(i);
+            try {
+                long remaining = deadline - System.currentTimeMillis();
+                results.add(future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                results.add(errorResult(metricIds.get(i), "Timed out after " + timeout + " ms"));
+                failed++;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                results.add(errorResult(metricIds.get(i), cause.getMessage() != null ? cause.getMessage() : cause.toString()));
+                failed++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                results.add(errorResult(metricIds.get(i), "Interrupted"));
+                failed++;
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        logger.debug("[MetricBatchService] {} queries, {} computations executed, {} shared", queries.size(), scope.getComputed(), scope.getShared());
+        if (failed > 0) {
+            logger.warn("[MetricBatchService] {} of {} metric queries failed or timed out ({} ms)", failed, queries.size(), elapsed);
+        }
+        return new BatchResult(results, failed, scope.getComputed(), scope.getShared(), elapsed);
+    }
+
+    private Future<MetricResult> submit(String metricId, MetricQuery query) throws IOException {
+        // 先按指标定义查找，不是指标定义时再按原子指标
+        MetricDefinition definition = null;
+        AtomicMetric atomicMetric = null;
+        try {
+            definition = metricService.getMetricDefinition(metricId);
+        } catch (IOException e) {
+            try {
+                atomicMetric = atomicMetricService.getAtomicMetric(metricId);
+            } catch (IOException ex) {
+                throw new IOException("指标不存在: " + metricId);
+            }
+        }
+        if (definition != null) {
+            MetricDefinition metricDefinition = definition;
+            String objectType = metricDefinition.getBusinessScope() != null
+                ? (String) metricDefinition.getBusinessScope().getOrDefault("base_object_type", metricDefinition.getBusinessScope().get("from"))
+                : null;
+            return taskExecutor.submit(() -> metricCalculator.calculateMetric(metricDefinition, query), taskExecutor.dataSourceOf(objectType));
+        }
+        AtomicMetric atomic = atomicMetric;
+        return taskExecutor.submit(() -> metricCalculator.calculateAtomicMetric(atomic, query),
+            taskExecutor.dataSourceOf(atomic.getBusinessProcess()));
+    }
+
+    private static MetricQuery toMetricQuery(String metricId, Map<String, Object> queryMap) {
+        MetricQuery query = new MetricQuery();
+        query.setMetricId(metricId);
+        query.setUseCache(Boolean.TRUE.equals(queryMap.get("cache")));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> timeRangeMap = (Map<String, Object>) queryMap.get("time_range");
+        if (timeRangeMap != null) {
+            query.setTimeRange(new MetricQuery.TimeRange((String) timeRangeMap.get("start"), (String) timeRangeMap.get("end")));
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> dimensions = (Map<String, Object>) queryMap.get("dimensions");
+        query.setDimensions(dimensions);
+        return query;
+    }
+
+    private static MetricResult errorResult(String metricId, String error) {
+        MetricResult result = new MetricResult();
+        result.setMetricId(metricId);
+        result.setResults(new ArrayList<>());
+        result.setCalculatedAt(LocalDateTime.now());
+        result.setError(error);
+        return result;
+    }
+}
@@ -3,6 +3,7 @@ package com.mypalantir.service;
 import com.mypalantir.metric.*;
 import com.mypalantir.query.OntologyQuery;
 import com.mypalantir.query.QueryExecutor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -22,6 +23,25 @@ public class MetricCalculator {
     private final MetricService metricService;
     private QueryExecutor queryExecutor;
 
+    /** MetricQuery.useCache 为 true 时读写的结果缓存 */
+    @Autowired(required = false)
+    private MetricResultCache resultCache;
+
+    /** 派生指标历史日期的预聚合汇总 */
+    @Autowired(required = false)
+    private MetricRollupStore rollupStore;
+
+    /** 复合指标的基础指标并行计算 */
+    @Autowired(required = false)
+    private MetricTaskExecutor taskExecutor;
+
+    /** 指标依赖 DAG：循环引用检测、共享节点与基础指标定义缓存 */
+    @Autowired(required = false)
+    private MetricDependencyPlanner dependencyPlanner;
+
+    /** 公式文本 -> 编译后的表达式 */
+    private final Map<String, MetricFormula> compiledFormulas = new java.util.concurrent.ConcurrentHashMap<>();
+
     public MetricCalculator(QueryService queryService, AtomicMetricService atomicMetricService, MetricService metricService) {
         this.queryService = queryService;
         this.atomicMetricService = atomicMetricService;
@@ -32,12 +52,40 @@ public class MetricCalculator {
      * 计算原子指标
      */
     public MetricResult calculateAtomicMetric(AtomicMetric atomicMetric, MetricQuery query) throws Exception {
+        MetricBatchScope scope = MetricBatchScope.current();
+        String computationKey = MetricResultCache.computationKey(MetricResultCache.KIND_ATOMIC, atomicMetric.getId(), atomicMetric.toMap(), query);
+        if (scope != null && computationKey != null) {
+            return scope.computeIfAbsent(computationKey, () -> calculateAtomicMetricCached(atomicMetric, query));
+        }
+        return calculateAtomicMetricCached(atomicMetric, query);
+    }
+
+    private MetricResult calculateAtomicMetricCached(AtomicMetric atomicMetric, MetricQuery query) throws Exception {
+        String cacheKey = cacheKeyOf(MetricResultCache.KIND_ATOMIC, atomicMetric.getId(), atomicMetric.toMap(), query);
+        if (cacheKey == null) {
+            return computeAtomicMetric(atomicMetric, query);
+        }
+        MetricResult cached = resultCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = resultCache.generation();
+        MetricResult result = computeAtomicMetric(atomicMetric, query);
+        Set<String> objectTypes = new HashSet<>();
+        if (atomicMetric.getBusinessProcess() != null) {
+            objectTypes.add(atomicMetric.getBusinessProcess());
+        }
+        resultCache.put(cacheKey, result, query, generation, Set.of(atomicMetric.getId()), objectTypes);
+        return result;
+    }
+
+    private MetricResult computeAtomicMetric(AtomicMetric atomicMetric, MetricQuery query) throws Exception {
         // 构建OntologyQuery（原子指标没有时间粒度、维度等配置）
         OntologyQuery ontologyQuery = buildAtomicMetricQuery(atomicMetric, query);
 
         // 执行查询
         Map<String, Object> queryMap = ontologyQueryToMap(ontologyQuery);
-        QueryExecutor.QueryResult queryResult = queryService.executeQuery(queryMap);
+        QueryExecutor.QueryResult queryResult = ReadRouting.call(ReadRouting.METRIC, () -> queryService.executeQuery(queryMap));
 
         // 转换为MetricResult
         MetricResult result = convertAtomicMetricToResult(queryResult, atomicMetric);
@@ -49,6 +97,131 @@ public class MetricCalculator {
      * 计算指标
      */
     public MetricResult calculateMetric(MetricDefinition metricDefinition, MetricQuery query) throws Exception {
+        MetricBatchScope scope = MetricBatchScope.current();
+        if (dependencyPlanner != null && "composite".equals(metricDefinition.getMetricType())) {
+            // 计算前先规划依赖 DAG，存在循环引用时直接失败；
+            // DAG 中有被多个指标引用的节点时，本次请求内共享节点只计算一次
+            MetricDependencyPlanner.MetricPlan plan = dependencyPlanner.plan(metricDefinition);
+            if (scope == null && !plan.getShared().isEmpty()) {
+                return MetricBatchScope.call(new MetricBatchScope(), () -> calculateMetric(metricDefinition, query));
+            }
+        }
+        // 批量查询内相同的指标计算只执行一次
+        String computationKey = MetricResultCache.computationKey(MetricResultCache.KIND_DEFINITION, metricDefinition.getId(), metricDefinition.toMap(), query);
+        if (scope != null && computationKey != null) {
+            return scope.computeIfAbsent(computationKey, () -> calculateMetricCached(metricDefinition, query));
+        }
+        return calculateMetricCached(metricDefinition, query);
+    }
+
+    private MetricResult calculateMetricCached(MetricDefinition metricDefinition, MetricQuery query) throws Exception {
+        String cacheKey = cacheKeyOf(MetricResultCache.KIND_DEFINITION, metricDefinition.getId(), metricDefinition.toMap(), query);
+        if (cacheKey == null) {
+            return computeMetric(metricDefinition, query);
+        }
+        LocalDate openStart = resultCache.openPeriodStart(query);
+        if (openStart != null && metricDefinition.getTimeGranularity() != null && metricDefinition.getTimeDimension() != null) {
+            return calculateSplitAtOpenPeriod(metricDefinition, query, openStart);
+        }
+        MetricResult cached = resultCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = resultCache.generation();
+        MetricResult result = computeMetric(metricDefinition, query);
+        Set<String> metricIds = new HashSet<>();
+        Set<String> objectTypes = new HashSet<>();
+        collectDependencies(metricDefinition, metricIds, objectTypes);
+        resultCache.put(cacheKey, result, query, generation, metricIds, objectTypes);
+        return result;
+    }
+
+    /**
+     * 跨越今天的时间序列：[开始, 今天) 与 [今天, 结束] 分别计算并缓存（前者按已关闭周期长期保留，后者只缓存 open-ttl-ms），
+     * 再按时间顺序拼接。前者右开，时间维度为时间戳时昨天 00:00:00 之后的记录不会落在两段之间。数据点按时间维度原值分组（见 getTimeGroupField），不会跨越切分日期，与 readFromRollup 的切分一致。
+     */
+    private MetricResult calculateSplitAtOpenPeriod(MetricDefinition metricDefinition, MetricQuery query, LocalDate openStart) throws Exception {
+        MetricResult closed = calculateMetricCached(metricDefinition,
+            subRangeQuery(query, new MetricQuery.TimeRange(query.getTimeRange().getStart(), openStart.toString(), true)));
+        MetricResult open = calculateMetricCached(metricDefinition,
+            subRangeQuery(query, new MetricQuery.TimeRange(openStart.toString(), query.getTimeRange().getEnd(),
+                query.getTimeRange().isEndExclusive())));
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        if (closed.getResults() != null) {
+            rows.addAll(closed.getResults());
+        }
+        if (open.getResults() != null) {
+            rows.addAll(open.getResults());
+        }
+        open.setResults(rows);
+        if (open.getColumns() == null || open.getColumns().isEmpty()) {
+            open.setColumns(closed.getColumns());
+        }
+        return open;
+    }
+
+    private static MetricQuery subRangeQuery(MetricQuery query, MetricQuery.TimeRange timeRange) {
+        MetricQuery subQuery = new MetricQuery();
+        subQuery.setMetricId(query.getMetricId());
+        subQuery.setDimensions(query.getDimensions());
+        subQuery.setUseCache(query.isUseCache());
+        subQuery.setTimeRange(timeRange);
+        return subQuery;
+    }
+
+    private String cacheKeyOf(String kind, String metricId, Map<String, Object> definition, MetricQuery query) {
+        if (resultCache == null || query == null || !query.isUseCache()) {
+            return null;
+        }
+        return resultCache.keyOf(kind, metricId, definition, query);
+    }
+
+    /**
+     * 收集指标结果依赖的指标 ID 与对象类型（复合指标递归到基础指标、原子指标），用于缓存失效
+     */
+    private void collectDependencies(MetricDefinition metricDefinition, Set<String> metricIds, Set<String> objectTypes) {
+        if (!metricIds.add(metricDefinition.getId())) {
+            return;
+        }
+        Map<String, Object> businessScope = metricDefinition.getBusinessScope();
+        if (businessScope != null) {
+            Object from = "multi".equals(businessScope.get("type")) ? businessScope.get("from") : businessScope.get("base_object_type");
+            if (from != null) {
+                objectTypes.add(from.toString());
+            }
+        }
+        if (metricDefinition.getAtomicMetricId() != null) {
+            metricIds.add(metricDefinition.getAtomicMetricId());
+            try {
+                String businessProcess = atomicMetricService.getAtomicMetric(metricDefinition.getAtomicMetricId()).getBusinessProcess();
+                if (businessProcess != null) {
+                    objectTypes.add(businessProcess);
+                }
+            } catch (IOException ignored) {
+                // 原子指标已删除时仅按 ID 失效
+            }
+        }
+        if (metricDefinition.getBaseMetricIds() != null) {
+            for (String baseId : metricDefinition.getBaseMetricIds()) {
+                try {
+                    collectDependencies(metricService.getMetricDefinition(baseId), metricIds, objectTypes);
+                } catch (IOException e) {
+                    metricIds.add(baseId);
+                    try {
+                        String businessProcess = atomicMetricService.getAtomicMetric(baseId).getBusinessProcess();
+                        if (businessProcess != null) {
+                            objectTypes.add(businessProcess);
+                        }
+                    } catch (IOException ignored) {
+                        // 基础指标不存在时仅按 ID 失效
+                    }
+                }
+            }
+        }
+    }
+
+    private MetricResult computeMetric(MetricDefinition metricDefinition, MetricQuery query) throws Exception {
         if ("derived".equals(metricDefinition.getMetricType())) {
             return calculateDerivedMetric(metricDefinition, query);
         } else if ("composite".equals(metricDefinition.getMetricType())) {
@@ -69,14 +242,33 @@ public class MetricCalculator {
         // 获取原子指标
         AtomicMetric atomicMetric = atomicMetricService.getAtomicMetric(metricDefinition.getAtomicMetricId());
         System.out.println("[calculateDerivedMetric] Atomic metric: " + atomicMetric.getName());
+
+        // 历史日期优先从预聚合汇总读取，不满足条件时查询原始数据
+        MetricResult result = rollupStore != null ? readFromRollup(metricDefinition, atomicMetric, query) : null;
+        if (result == null) {
+            result = queryDerivedSeries(metricDefinition, atomicMetric, query);
+        }
     
+        // 计算对比指标（同比、环比）
+        if (metricDefinition.getComparisonType() != null && !metricDefinition.getComparisonType().isEmpty()) {
+            result = addComparisons(result, metricDefinition, query);
+        }
+            
+        System.out.println("[calculateDerivedMetric] Calculation completed successfully");
+        return result;
+    }
+
+    /**
+     * 查询原始数据计算派生指标的时间序列
+     */
+    private MetricResult queryDerivedSeries(MetricDefinition metricDefinition, AtomicMetric atomicMetric, MetricQuery query) throws Exception {
         // 构建 OntologyQuery
         OntologyQuery ontologyQuery = buildOntologyQuery(metricDefinition, atomicMetric, query);
     
         // 执行查询
         Map<String, Object> queryMap = ontologyQueryToMap(ontologyQuery);
         System.out.println("[calculateDerivedMetric] Executing query for object: " + ontologyQuery.getFrom());
-        QueryExecutor.QueryResult queryResult = queryService.executeQuery(queryMap);
+        QueryExecutor.QueryResult queryResult = ReadRouting.call(ReadRouting.METRIC, () -> queryService.executeQuery(queryMap));
         System.out.println("[calculateDerivedMetric] Query returned " + queryResult.getRows().size() + " rows");
     
         // 转换为 MetricResult
@@ -86,60 +278,103 @@ public class MetricCalculator {
         if (metricDefinition.getTimeGranularity() != null) {
             result = applyTimeGranularity(result, metricDefinition);
         }
-    
-        // 计算对比指标（同比、环比）
-        if (metricDefinition.getComparisonType() != null && !metricDefinition.getComparisonType().isEmpty()) {
-            result = addComparisons(result, metricDefinition, query);
+        return result;
+    }
+
+    /**
+     * 从汇总读取已关闭的日期，查询范围包含今天时只对 [今天, 结束日期] 查询原始数据并追加在后面；
+     * 没有可用汇总时返回 null
+     */
+    private MetricResult readFromRollup(MetricDefinition metricDefinition, AtomicMetric atomicMetric, MetricQuery query) throws Exception {
+        MetricRollupStore.RollupRead read = rollupStore.tryRead(metricDefinition, atomicMetric, query);
+        if (read == null) {
+            return null;
         }
-            
-        System.out.println("[calculateDerivedMetric] Calculation completed successfully");
+        List<Map<String, Object>> rows = new ArrayList<>(read.getRows());
+        if (read.getOpenStart() != null) {
+            MetricQuery openQuery = new MetricQuery();
+            openQuery.setMetricId(query.getMetricId());
+            openQuery.setTimeRange(new MetricQuery.TimeRange(read.getOpenStart().toString(), query.getTimeRange().getEnd(),
+                query.getTimeRange().isEndExclusive()));
+            openQuery.setDimensions(query.getDimensions());
+            rows.addAll(queryDerivedSeries(metricDefinition, atomicMetric, openQuery).getResults());
+        }
+        System.out.println("[calculateDerivedMetric] Read " + read.getRows().size() + " rows from rollup " + read.getRollupId()
+            + (read.getOpenStart() != null ? ", open period from " + read.getOpenStart() : ""));
+
+        MetricResult result = new MetricResult();
+        result.setMetricId(metricDefinition.getId());
+        result.setMetricName(metricDefinition.getDisplayName() != null ? metricDefinition.getDisplayName() : metricDefinition.getName());
+        result.setTimeGranularity(metricDefinition.getTimeGranularity());
+        result.setCalculatedAt(LocalDateTime.now());
+        result.setResults(rows);
+        result.setColumns(read.getColumns());
         return result;
     }
 
     /**
      * 计算复合指标
+     * 基础指标经 MetricTaskExecutor 并行计算（按数据源限制并发），结果按 baseMetricIds 顺序排列
      */
     private MetricResult calculateCompositeMetric(MetricDefinition metricDefinition, MetricQuery query) throws Exception {
-        // 获取基础指标并计算结果
-        List<MetricResult> baseResults = new ArrayList<>();
+        // 基础指标读取同一对象类型且过滤、分组一致时合并为一条聚合 SQL
+        MetricResult pushedDown = calculateCompositePushdown(metricDefinition, query);
+        if (pushedDown != null) {
+            return pushedDown;
+        }
+
+        List<MetricTaskExecutor.Task<MetricResult>> tasks = new ArrayList<>();
+        List<String> dataSources = new ArrayList<>();
         for (String id : metricDefinition.getBaseMetricIds()) {
+            MetricQuery baseQuery = new MetricQuery();
+            baseQuery.setMetricId(id);
+            baseQuery.setTimeRange(query.getTimeRange());
+            baseQuery.setDimensions(query.getDimensions());
+            baseQuery.setUseCache(query.isUseCache());
+
+            // 先尝试获取指标定义，不是指标定义时再尝试原子指标
+            MetricTaskExecutor.Task<MetricResult> task;
+            String objectType;
+            MetricDependencyPlanner.Node node;
             try {
-                // 先尝试获取指标定义
-                MetricResult result;
+                node = baseNodeOf(id);
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            if (node.getDefinition() != null) {
+                MetricDefinition baseMetric = node.getDefinition();
+                task = () -> calculateMetric(baseMetric, baseQuery);
+                objectType = sourceObjectTypeOf(baseMetric);
+            } else {
+                AtomicMetric atomicMetric = node.getAtomicMetric();
+                task = () -> calculateAtomicMetric(atomicMetric, baseQuery);
+                objectType = atomicMetric.getBusinessProcess();
+            }
+            MetricTaskExecutor.Task<MetricResult> calculation = task;
+            tasks.add(() -> {
                 try {
-                    MetricDefinition baseMetric = metricService.getMetricDefinition(id);
-                    // 对于派生指标，需要传递时间范围和维度参数
-                    MetricQuery baseQuery = new MetricQuery();
-                    baseQuery.setMetricId(id);
-                    baseQuery.setTimeRange(query.getTimeRange());
-                    baseQuery.setDimensions(query.getDimensions());
-                    baseQuery.setUseCache(query.isUseCache());
-                    result = calculateMetric(baseMetric, baseQuery);
-                } catch (IOException e) {
-                    // 如果不是指标定义，尝试获取原子指标
-                    try {
-                        AtomicMetric atomicMetric = atomicMetricService.getAtomicMetric(id);
-                        // 原子指标也需要传递查询参数
-                        MetricQuery baseQuery = new MetricQuery();
-                        baseQuery.setMetricId(id);
-                        baseQuery.setTimeRange(query.getTimeRange());
-                        baseQuery.setDimensions(query.getDimensions());
-                        baseQuery.setUseCache(query.isUseCache());
-                        result = calculateAtomicMetric(atomicMetric, baseQuery);
-                    } catch (IOException ex) {
-                        throw new RuntimeException("无法获取基础指标: " + id + " (既不是指标定义也不是原子指标)", ex);
-                    }
+                    return calculation.call();
+                } catch (RuntimeException e) {
+                    // 重新抛出 RuntimeException
+                    throw e;
+                } catch (Exception e) {
+                    // 将其他检查异常包装为 RuntimeException，并添加更详细的错误信息
+                    System.err.println("[calculateCompositeMetric] Failed to calculate base metric: " + id);
+                    System.err.println("[calculateCompositeMetric] Query: " + query);
+                    e.printStackTrace();
+                    throw new RuntimeException("无法计算基础指标: " + id + ", 错误: " + e.getMessage(), e);
                 }
-                baseResults.add(result);
-            } catch (RuntimeException e) {
-                // 重新抛出 RuntimeException
-                throw e;
-            } catch (Exception e) {
-                // 将其他检查异常包装为 RuntimeException，并添加更详细的错误信息
-                System.err.println("[calculateCompositeMetric] Failed to calculate base metric: " + id);
-                System.err.println("[calculateCompositeMetric] Query: " + query);
-                e.printStackTrace();
-                throw new RuntimeException("无法计算基础指标: " + id + ", 错误: " + e.getMessage(), e);
+            });
+            dataSources.add(taskExecutor != null ? taskExecutor.dataSourceOf(objectType) : null);
+        }
+
+        List<MetricResult> baseResults;
+        if (taskExecutor != null) {
+            baseResults = taskExecutor.invokeAll(tasks, dataSources);
+        } else {
+            baseResults = new ArrayList<>();
+            for (MetricTaskExecutor.Task<MetricResult> task : tasks) {
+                baseResults.add(task.call());
             }
         }
 
@@ -147,6 +382,212 @@ public class MetricCalculator {
         return calculateByFormula(metricDefinition, baseResults);
     }
 
+    /**
+     * 复合指标下推：所有基础指标都是直接聚合（原子指标或无关联的派生指标），读取同一对象类型（即同一数据源），
+     * 过滤条件与分组一致，且分组正好是复合指标的 时间维度 + 维度 时，合并为一个查询：
+     * 各基础指标作为聚合列，公式作为计算列 metric_value，只执行一条 SQL。
+     * 不满足条件时返回 null，走逐个基础指标计算再按 时间 + 维度 对齐的路径；下推查询执行失败时同样回退。
+     */
+    private MetricResult calculateCompositePushdown(MetricDefinition metricDefinition, MetricQuery query) {
+        String formulaText = metricDefinition.getDerivedFormula();
+        List<String> baseMetricIds = metricDefinition.getBaseMetricIds();
+        if (formulaText == null || formulaText.trim().isEmpty() || baseMetricIds == null || baseMetricIds.isEmpty()) {
+            return null;
+        }
+        MetricFormula formula;
+        try {
+            formula = compiledFormulas.computeIfAbsent(formulaText, MetricFormula::compile);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        // % 在 SQL 中只支持整数操作数，保留在内存中求值
+        if (!baseMetricIds.containsAll(formula.getVariables()) || formulaText.contains("%")) {
+            return null;
+        }
+
+        OntologyQuery fused = null;
+        List<Object> metrics = new ArrayList<>();
+        Map<String, String> aliasByMetricId = new HashMap<>();
+        for (String id : baseMetricIds) {
+            OntologyQuery baseQuery = aggregateQueryOf(id, query);
+            if (baseQuery == null || baseQuery.getLinks() != null && !baseQuery.getLinks().isEmpty()) {
+                return null;
+            }
+            if (fused == null) {
+                fused = baseQuery;
+            } else if (!sameScope(fused, baseQuery)) {
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            List<Object> metric = new ArrayList<>((List<Object>) baseQuery.getMetrics().get(0));
+            String alias = aggregateAliasOf(metric);
+            metric.set(2, alias);
+            // 相同的聚合（同一函数、同一字段）只计算一次
+            if (!aliasByMetricId.containsValue(alias)) {
+                metrics.add(metric);
+            }
+            aliasByMetricId.put(id, alias);
+        }
+
+        Set<String> pointKeys = new HashSet<>();
+        if (metricDefinition.getTimeDimension() != null) {
+            pointKeys.add(metricDefinition.getTimeDimension());
+        }
+        if (metricDefinition.getDimensions() != null) {
+            pointKeys.addAll(metricDefinition.getDimensions());
+        }
+        if (!pointKeys.equals(new HashSet<>(fused.getGroupBy() != null ? fused.getGroupBy() : List.of()))) {
+            return null;
+        }
+
+        fused.setMetrics(metrics);
+        fused.setComputed(List.of(Arrays.asList("metric_value", formula.accept(new FormulaRewriter(aliasByMetricId)))));
+        try {
+            Map<String, Object> queryMap = ontologyQueryToMap(fused);
+            QueryExecutor.QueryResult queryResult = ReadRouting.call(ReadRouting.METRIC, () -> queryService.executeQuery(queryMap));
+
+            // 与内存求值一致：公式无结果（缺值、除数为 0）的数据点不输出；
+            // 数据点只保留 时间 + 维度 与 metric_value，被其他复合指标引用时取值不会取到中间聚合列
+            List<String> columns = new ArrayList<>(fused.getGroupBy() != null ? fused.getGroupBy() : List.of());
+            columns.add("metric_value");
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (Map<String, Object> row : queryResult.getRows()) {
+                Object value = getValueIgnoreCase(row, "metric_value");
+                if (value instanceof Number) {
+                    Map<String, Object> point = new LinkedHashMap<>();
+                    for (String column : columns) {
+                        point.put(column, getValueIgnoreCase(row, column));
+                    }
+                    rows.add(point);
+                }
+            }
+            System.out.println("[calculateCompositeMetric] Pushed down " + baseMetricIds.size() + " base metrics of "
+                + metricDefinition.getId() + " into one query, " + rows.size() + " rows");
+
+            MetricResult result = new MetricResult();
+            result.setMetricId(metricDefinition.getId());
+            result.setMetricName(metricDefinition.getDisplayName() != null ? metricDefinition.getDisplayName() : metricDefinition.getName());
+            result.setTimeGranularity(metricDefinition.getTimeGranularity());
+            result.setCalculatedAt(LocalDateTime.now());
+            result.setSql(queryResult.getSql());
+            result.setColumns(columns);
+            result.setResults(rows);
+            return result;
+        } catch (Exception e) {
+            System.out.println("[calculateCompositeMetric] Pushdown of " + metricDefinition.getId()
+                + " failed, calculating base metrics separately: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 基础指标对应的单个聚合查询：原子指标，或业务范围内无关联的派生指标；其他（复合指标等）返回 null
+     */
+    private OntologyQuery aggregateQueryOf(String metricId, MetricQuery query) {
+        MetricQuery baseQuery = new MetricQuery();
+        baseQuery.setMetricId(metricId);
+        baseQuery.setTimeRange(query.getTimeRange());
+        baseQuery.setDimensions(query.getDimensions());
+        try {
+            MetricDependencyPlanner.Node node = baseNodeOf(metricId);
+            MetricDefinition baseMetric = node.getDefinition();
+            if (baseMetric == null) {
+                return buildAtomicMetricQuery(node.getAtomicMetric(), baseQuery);
+            }
+            if (!"derived".equals(baseMetric.getMetricType())) {
+                return null;
+            }
+            return buildOntologyQuery(baseMetric, atomicMetricService.getAtomicMetric(baseMetric.getAtomicMetricId()), baseQuery);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 基础指标的定义：有依赖规划器时取其缓存的节点，否则直接查找（先按指标定义，再按原子指标）
+     */
+    private MetricDependencyPlanner.Node baseNodeOf(String metricId) throws IOException {
+        if (dependencyPlanner != null) {
+            return dependencyPlanner.resolve(metricId);
+        }
+        return MetricDependencyPlanner.load(metricService, atomicMetricService, metricId);
+    }
+
+    /**
+     * 两个聚合查询读取同一对象类型，过滤条件（不计顺序）与分组相同
+     */
+    private static boolean sameScope(OntologyQuery a, OntologyQuery b) {
+        return Objects.equals(a.getFrom(), b.getFrom())
+            && Objects.equals(a.getWhere(), b.getWhere())
+            && Objects.equals(a.getFilter() != null ? new HashSet<>(a.getFilter()) : null,
+                              b.getFilter() != null ? new HashSet<>(b.getFilter()) : null)
+            && Objects.equals(a.getGroupBy(), b.getGroupBy());
+    }
+
+    /**
+     * 与查询层默认别名一致的聚合列名（count_star、sum_fee 等）
+     */
+    private static String aggregateAliasOf(List<Object> metric) {
+        String function = String.valueOf(metric.get(0)).toLowerCase();
+        String field = String.valueOf(metric.get(1));
+        if ("*".equals(field)) {
+            return function + "_star";
+        }
+        return function + "_" + field.replaceAll("\\W", "_");
+    }
+
+    /**
+     * 把公式中的 {基础指标 ID} 改写为 {聚合列别名}
+     */
+    private static final class FormulaRewriter implements MetricFormula.Visitor<String> {
+        private final Map<String, String> aliasByMetricId;
+
+        FormulaRewriter(Map<String, String> aliasByMetricId) {
+            this.aliasByMetricId = aliasByMetricId;
+        }
+
+        @Override
+        public String constant(double value) {
+            return Double.toString(value);
+        }
+
+        @Override
+        public String variable(String metricId) {
+            return "{" + aliasByMetricId.get(metricId) + "}";
+        }
+
+        @Override
+        public String negate(String operand) {
+            return "(-" + operand + ")";
+        }
+
+        @Override
+        public String binary(char operator, String left, String right) {
+            return "(" + left + " " + operator + " " + right + ")";
+        }
+    }
+
+    /**
+     * 指标读取的对象类型：派生指标取业务范围的主对象类型，未配置时取原子指标的业务过程；复合指标返回 null
+     */
+    private String sourceObjectTypeOf(MetricDefinition metricDefinition) {
+        Map<String, Object> businessScope = metricDefinition.getBusinessScope();
+        if (businessScope != null) {
+            Object from = "multi".equals(businessScope.get("type")) ? businessScope.get("from") : businessScope.get("base_object_type");
+            if (from != null) {
+                return from.toString();
+            }
+        }
+        if (metricDefinition.getAtomicMetricId() != null) {
+            try {
+                return atomicMetricService.getAtomicMetric(metricDefinition.getAtomicMetricId()).getBusinessProcess();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     /**
      * 构建原子指标的OntologyQuery
      */
@@ -320,7 +761,7 @@ public class MetricCalculator {
             }
         }
         
-        // 添加时间范围条件（使用 >= 和 <= 操作符）
+        // 添加时间范围条件（使用 >= 和 <= 操作符，右开区间使用 <）
         if (query.getTimeRange() != null && metricDefinition.getTimeDimension() != null) {
             String timeField = metricDefinition.getTimeDimension();
             String startDate = query.getTimeRange().getStart();
@@ -330,7 +771,7 @@ public class MetricCalculator {
                 filterExpressions.add(java.util.Arrays.asList(">=", timeField, startDate));
             }
             if (endDate != null && !endDate.trim().isEmpty()) {
-                filterExpressions.add(java.util.Arrays.asList("<=", timeField, endDate));
+                filterExpressions.add(java.util.Arrays.asList(query.getTimeRange().isEndExclusive() ? "<" : "<=", timeField, endDate));
             }
         }
         
@@ -461,68 +902,135 @@ public class MetricCalculator {
 
     /**
      * 添加对比数据
+     * 每种对比类型只额外计算一次：把结果中所有时间点平移后的日期范围作为一次查询，再按 时间 + 维度 在内存中对齐
      */
     private MetricResult addComparisons(MetricResult result, MetricDefinition metricDefinition, MetricQuery query) throws Exception {
-        for (Map<String, Object> point : result.getResults()) {
-            Map<String, MetricResult.ComparisonValue> comparisons = new HashMap<>();
-            
-            for (String comparisonType : metricDefinition.getComparisonType()) {
-                MetricResult.ComparisonValue comparison = calculateComparison(point, metricDefinition, comparisonType, query);
+        List<Map<String, Object>> points = result.getResults();
+        if (points == null || points.isEmpty()) {
+            return result;
+        }
+        List<Map<String, MetricResult.ComparisonValue>> comparisonsByPoint = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            comparisonsByPoint.add(new HashMap<>());
+        }
+        for (String comparisonType : metricDefinition.getComparisonType()) {
+            // 当前点 -> 对比日期
+            List<LocalDate> compareDates = new ArrayList<>(points.size());
+            LocalDate minDate = null;
+            LocalDate maxDate = null;
+            for (Map<String, Object> point : points) {
+                LocalDate compareDate = compareDateOf(point, metricDefinition, comparisonType);
+                compareDates.add(compareDate);
+                if (compareDate != null) {
+                    minDate = minDate == null || compareDate.isBefore(minDate) ? compareDate : minDate;
+                    maxDate = maxDate == null || compareDate.isAfter(maxDate) ? compareDate : maxDate;
+                }
+            }
+            if (minDate == null) {
+                continue;
+            }
+
+            Map<String, Number> compareValues = queryComparisonValues(metricDefinition, minDate, maxDate, query);
+            for (int i = 0; i < points.size(); i++) {
+                LocalDate compareDate = compareDates.get(i);
+                if (compareDate == null) {
+                    continue;
+                }
+                Map<String, Object> point = points.get(i);
+                Number compareValue = compareValues.get(comparisonKey(compareDate, point, metricDefinition));
+                MetricResult.ComparisonValue comparison = buildComparison(point, metricDefinition, comparisonType, compareValue);
                 if (comparison != null) {
-                    comparisons.put(comparisonType, comparison);
+                    comparisonsByPoint.get(i).put(comparisonType, comparison);
                 }
             }
-            
-            point.put("comparisons", comparisons);
         }
-        
+
+        for (int i = 0; i < points.size(); i++) {
+            points.get(i).put("comparisons", comparisonsByPoint.get(i));
+        }
         return result;
     }
 
     /**
-     * 计算对比值
+     * 计算数据点在指定对比类型下的对比日期，不支持的类型或无时间值时返回 null
      */
-    private MetricResult.ComparisonValue calculateComparison(Map<String, Object> point, MetricDefinition metricDefinition, String comparisonType, MetricQuery query) throws Exception {
-        String timeValue = (String) point.get(metricDefinition.getTimeDimension());
+    private LocalDate compareDateOf(Map<String, Object> point, MetricDefinition metricDefinition, String comparisonType) {
+        Object timeValue = point.get(metricDefinition.getTimeDimension());
         if (timeValue == null) {
             return null;
         }
-
-        LocalDate currentDate = parseTimeValue(timeValue, metricDefinition.getTimeGranularity());
-        LocalDate compareDate = null;
+        LocalDate currentDate = parseTimeValue(timeValue.toString(), metricDefinition.getTimeGranularity());
 
         if ("YoY".equals(comparisonType)) {
-            compareDate = currentDate.minusYears(1);
+            return currentDate.minusYears(1);
         } else if ("MoM".equals(comparisonType)) {
             if ("day".equals(metricDefinition.getTimeGranularity())) {
-                compareDate = currentDate.minusDays(1);
+                return currentDate.minusDays(1);
             } else if ("week".equals(metricDefinition.getTimeGranularity())) {
-                compareDate = currentDate.minusWeeks(1);
+                return currentDate.minusWeeks(1);
             } else if ("month".equals(metricDefinition.getTimeGranularity())) {
-                compareDate = currentDate.minusMonths(1);
+                return currentDate.minusMonths(1);
             }
         } else if ("WoW".equals(comparisonType)) {
-            compareDate = currentDate.minusWeeks(1);
+            return currentDate.minusWeeks(1);
         } else if ("QoQ".equals(comparisonType)) {
-            compareDate = currentDate.minusMonths(3);
+            return currentDate.minusMonths(3);
         }
+        return null;
+    }
 
-        if (compareDate == null) {
-            return null;
+    /**
+     * 一次查询平移后的日期范围，返回 对比键（日期 + 维度值）-> 指标值
+     */
+    private Map<String, Number> queryComparisonValues(MetricDefinition metricDefinition, LocalDate start, LocalDate end, MetricQuery originalQuery) throws Exception {
+        MetricQuery compareQuery = new MetricQuery();
+        compareQuery.setMetricId(metricDefinition.getId());
+        compareQuery.setDimensions(originalQuery.getDimensions());
+        compareQuery.setTimeRange(new MetricQuery.TimeRange(
+            start.format(DateTimeFormatter.ISO_LOCAL_DATE), end.format(DateTimeFormatter.ISO_LOCAL_DATE)));
+        // 对比周期多为已关闭的历史周期，沿用原查询的缓存设置
+        compareQuery.setUseCache(originalQuery.isUseCache());
+
+        // 对比序列本身不再计算对比
+        MetricDefinition seriesDefinition = new MetricDefinition(metricDefinition.toMap());
+        seriesDefinition.setComparisonType(null);
+        MetricResult compareResult = calculateMetric(seriesDefinition, compareQuery);
+
+        Map<String, Number> values = new HashMap<>();
+        if (compareResult.getResults() == null) {
+            return values;
+        }
+        for (Map<String, Object> row : compareResult.getResults()) {
+            Object timeValue = row.get(metricDefinition.getTimeDimension());
+            Number value = extractMetricValue(row, metricDefinition);
+            if (timeValue == null || value == null) {
+                continue;
+            }
+            LocalDate date = parseTimeValue(timeValue.toString(), metricDefinition.getTimeGranularity());
+            values.putIfAbsent(comparisonKey(date, row, metricDefinition), value);
         }
+        return values;
+    }
 
-        // 构建维度值映射
-        Map<String, Object> dimensionValues = new HashMap<>();
+    /**
+     * 对比键：日期 + 指标维度值（按维度名排序）
+     */
+    private String comparisonKey(LocalDate date, Map<String, Object> row, MetricDefinition metricDefinition) {
+        StringBuilder key = new StringBuilder(date.toString());
         if (metricDefinition.getDimensions() != null) {
-            for (String dim : metricDefinition.getDimensions()) {
-                if (point.containsKey(dim)) {
-                    dimensionValues.put(dim, point.get(dim));
-                }
+            List<String> sortedDims = new ArrayList<>(metricDefinition.getDimensions());
+            Collections.sort(sortedDims);
+            for (String dim : sortedDims) {
+                key.append('|').append(dim).append(':').append(row.get(dim));
             }
         }
+        return key.toString();
+    }
 
-        // 查询对比时间的数据
-        Number compareValue = queryMetricValue(metricDefinition, compareDate, dimensionValues, query);
+    /**
+     * 根据当前值与对比值计算增长率
+     */
+    private MetricResult.ComparisonValue buildComparison(Map<String, Object> point, MetricDefinition metricDefinition, String comparisonType, Number compareValue) {
         if (compareValue == null || compareValue.doubleValue() == 0) {
             return null;
         }
@@ -532,17 +1040,17 @@ public class MetricCalculator {
         for (Map.Entry<String, Object> entry : point.entrySet()) {
             String key = entry.getKey();
             // 跳过时间和维度字段，找到聚合指标字段
-            if (!key.equals(metricDefinition.getTimeDimension()) && 
+            if (!key.equals(metricDefinition.getTimeDimension()) &&
                 (metricDefinition.getDimensions() == null || !metricDefinition.getDimensions().contains(key))) {
                 metricValueObj = entry.getValue();
                 break;
             }
         }
-        
+
         if (metricValueObj == null || !(metricValueObj instanceof Number)) {
             return null;
         }
-        
+
         // 计算增长率
         double currentValue = ((Number) metricValueObj).doubleValue();
         double changeRate = (currentValue - compareValue.doubleValue()) / compareValue.doubleValue();
@@ -553,38 +1061,6 @@ public class MetricCalculator {
 
         return new MetricResult.ComparisonValue(changeRate, String.format("%+.2f%%", changeRate * 100), description);
     }
-
-    /**
-     * 查询指标值
-     */
-    private Number queryMetricValue(MetricDefinition metricDefinition, LocalDate date, Map<String, Object> dimensions, MetricQuery originalQuery) throws Exception {
-        // 创建新的查询，查询指定日期的数据
-        MetricQuery compareQuery = new MetricQuery();
-        compareQuery.setMetricId(metricDefinition.getId());
-        compareQuery.setDimensions(dimensions);
-        
-        String dateStr = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
-        MetricQuery.TimeRange timeRange = new MetricQuery.TimeRange(dateStr, dateStr);
-        compareQuery.setTimeRange(timeRange);
-
-        MetricResult result = calculateMetric(metricDefinition, compareQuery);
-        if (result.getResults() != null && !result.getResults().isEmpty()) {
-            Map<String, Object> row = result.getResults().get(0);
-            // 获取聚合字段的值（跳过时间和维度字段）
-            for (Map.Entry<String, Object> entry : row.entrySet()) {
-                String key = entry.getKey();
-                if (!key.equals(metricDefinition.getTimeDimension()) && 
-                    (metricDefinition.getDimensions() == null || !metricDefinition.getDimensions().contains(key))) {
-                    Object value = entry.getValue();
-                    if (value instanceof Number) {
-                        return (Number) value;
-                    }
-                }
-            }
-        }
-        return null;
-    }
-
     /**
      * 解析时间值
      */
@@ -800,10 +1276,7 @@ public class MetricCalculator {
             }
 
             // 计算公式值
-            System.out.println("[CompositeMetric] Evaluating formula for data point: " + entry.getKey());
-            System.out.println("[CompositeMetric] Metric values: " + metricValues);
             Number calculatedValue = evaluateFormula(formula, metricValues, baseMetricIds);
-            System.out.println("[CompositeMetric] Calculated value: " + calculatedValue);
             
             if (calculatedValue != null) {
                 Map<String, Object> calculatedPoint = new HashMap<>(pointData);
@@ -899,6 +1372,10 @@ public class MetricCalculator {
      * 从行中提取指标值（跳过时间和维度字段）
      */
     private Number extractMetricValue(Map<String, Object> row, MetricDefinition metricDefinition) {
+        // 基础指标本身是复合指标时取其公式结果，而不是其基础指标的聚合列
+        if (row.get("metric_value") instanceof Number value) {
+            return value;
+        }
         for (Map.Entry<String, Object> entry : row.entrySet()) {
             String key = entry.getKey();
             // 跳过时间和维度字段
@@ -941,145 +1418,22 @@ public class MetricCalculator {
     /**
      * 计算公式值
      * 公式格式：{metric_id_1} + {metric_id_2} 或 {metric_id_1} / {metric_id_2} 等
+     * 公式按文本编译一次并缓存，逐数据点只做表达式树求值
      */
     private Number evaluateFormula(String formula, Map<String, Number> metricValues, List<String> baseMetricIds) {
         if (formula == null || formula.trim().isEmpty()) {
-            System.out.println("[CompositeMetric] Formula is empty, returning null");
             return null;
         }
-
-        System.out.println("[CompositeMetric] Evaluating formula: " + formula);
-        System.out.println("[CompositeMetric] Available metric values: " + metricValues);
-        System.out.println("[CompositeMetric] Base metric IDs: " + baseMetricIds);
-
-        // 替换公式中的 {metric_id} 为实际值
-        String expression = formula;
+        // 任一基础指标缺值时该数据点不输出
         for (String metricId : baseMetricIds) {
-            String placeholder = "{" + metricId + "}";
-            Number value = metricValues.get(metricId);
-            if (value != null) {
-                String valueStr = String.valueOf(value.doubleValue());
-                expression = expression.replace(placeholder, valueStr);
-                System.out.println("[CompositeMetric] Replaced " + placeholder + " with " + valueStr);
-            } else {
-                // 如果某个基础指标的值缺失，返回 null
-                System.out.println("[CompositeMetric] Missing value for metric ID: " + metricId + ", returning null");
+            if (metricValues.get(metricId) == null) {
                 return null;
             }
         }
-
-        System.out.println("[CompositeMetric] Expression after replacement: " + expression);
-
-        // 简单的表达式求值（支持 +, -, *, /, %）
         try {
-            // 使用 ScriptEngine 或简单的解析器
-            // 这里使用简单的字符串替换和计算
-            Number result = evaluateSimpleExpression(expression);
-            System.out.println("[CompositeMetric] Formula evaluation result: " + result);
-            return result;
-        } catch (Exception e) {
-            System.err.println("[CompositeMetric] Failed to evaluate formula: " + formula + ", expression: " + expression + ", error: " + e.getMessage());
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-    /**
-     * 简单的表达式求值（仅支持基本运算符）
-     */
-    private Number evaluateSimpleExpression(String expression) {
-        expression = expression.trim();
-        
-        // 移除所有空格
-        expression = expression.replaceAll("\\s+", "");
-        
-        // 使用 ScriptEngineManager 和 JavaScript 引擎
-        try {
-            javax.script.ScriptEngineManager manager = new javax.script.ScriptEngineManager();
-            javax.script.ScriptEngine engine = manager.getEngineByName("JavaScript");
-            Object result = engine.eval(expression);
-            if (result instanceof Number) {
-                return (Number) result;
-            } else if (result instanceof Double) {
-                return (Double) result;
-            } else {
-                return Double.parseDouble(result.toString());
-            }
-        } catch (Exception e) {
-            // 如果 ScriptEngine 不可用，使用简单的递归下降解析器
-            return parseAndEvaluate(expression);
-        }
-    }
-
-    /**
-     * 简单的递归下降解析器（处理 +, -, *, /）
-     */
-    private Number parseAndEvaluate(String expression) {
-        try {
-            // 移除所有空格
-            expression = expression.replaceAll("\\s+", "");
-            
-            // 处理乘除
-            int mulIndex = expression.indexOf('*');
-            int divIndex = expression.indexOf('/');
-            if (mulIndex > 0 || divIndex > 0) {
-                int opIndex = -1;
-                if (mulIndex > 0 && divIndex > 0) {
-                    opIndex = Math.min(mulIndex, divIndex);
-                } else if (mulIndex > 0) {
-                    opIndex = mulIndex;
-                } else {
-                    opIndex = divIndex;
-                }
-                
-                String left = expression.substring(0, opIndex);
-                char op = expression.charAt(opIndex);
-                String right = expression.substring(opIndex + 1);
-                
-                Number leftVal = parseAndEvaluate(left);
-                Number rightVal = parseAndEvaluate(right);
-                
-                if (op == '*') {
-                    return leftVal.doubleValue() * rightVal.doubleValue();
-                } else {
-                    if (rightVal.doubleValue() == 0) {
-                        return null;
-                    }
-                    return leftVal.doubleValue() / rightVal.doubleValue();
-                }
-            }
-            
-            // 处理加减
-            int addIndex = expression.lastIndexOf('+');
-            int subIndex = expression.lastIndexOf('-');
-            if (addIndex > 0 || (subIndex > 0 && subIndex < expression.length() - 1)) {
-                int opIndex = -1;
-                if (addIndex > 0 && subIndex > 0) {
-                    opIndex = Math.max(addIndex, subIndex);
-                } else if (addIndex > 0) {
-                    opIndex = addIndex;
-                } else {
-                    opIndex = subIndex;
-                }
-                
-                String left = expression.substring(0, opIndex);
-                char op = expression.charAt(opIndex);
-                String right = expression.substring(opIndex + 1);
-                
-                Number leftVal = parseAndEvaluate(left);
-                Number rightVal = parseAndEvaluate(right);
-                
-                if (op == '+') {
-                    return leftVal.doubleValue() + rightVal.doubleValue();
-                } else {
-                    return leftVal.doubleValue() - rightVal.doubleValue();
-                }
-            }
-            
-            // 解析数字
-            return Double.parseDouble(expression);
-        } catch (Exception e) {
-            System.err.println("Failed to parse expression: " + expression + ", error: " + e.getMessage());
+            return compiledFormulas.computeIfAbsent(formula, MetricFormula::compile).evaluate(metricValues);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[CompositeMetric] Failed to evaluate formula: " + formula + ", error: " + e.getMessage());
             return null;
         }
     }
@@ -1107,6 +1461,9 @@ public class MetricCalculator {
         if (query.getMetrics() != null && !query.getMetrics().isEmpty()) {
             map.put("metrics", query.getMetrics());
         }
+        if (query.getComputed() != null && !query.getComputed().isEmpty()) {
+            map.put("computed", query.getComputed());
+        }
         if (query.getLinks() != null) {
             List<Map<String, Object>> links = new ArrayList<>();
             for (OntologyQuery.LinkQuery link : query.getLinks()) {
@@ -0,0 +1,357 @@
+package com.mypalantir.service;
+
+import com.mypalantir.metric.AtomicMetric;
+import com.mypalantir.metric.MetricDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 指标依赖规划
+ * 复合指标可多层引用其他指标（复合 → 复合 / 派生 → 原子）。规划器按 ID 缓存指标节点（定义及其版本），
+ * 为根指标构建依赖 DAG：构建时检测循环引用，按拓扑序（依赖在前）排列节点，并标出被多个指标引用的共享节点。
+ * 规划按 根指标 + 定义版本 缓存，所含节点未变化时直接复用。
+ * 指标、原子指标经 MetricService / AtomicMetricService 修改或删除时失效对应节点及包含它的规划；
+ * 绕过这两个服务修改的定义在 metric.plan.ttl-ms 后重新读取。
+ */
+@Service
+public class MetricDependencyPlanner {
+    private static final Logger logger = LoggerFactory.getLogger(MetricDependencyPlanner.class);
+
+    public static final String TYPE_ATOMIC = "atomic";
+
+    private static final String METRIC_PREFIX = "metric:";
+    private static final String ATOMIC_PREFIX = "atomic:";
+
+    private final MetricService metricService;
+    private final AtomicMetricService atomicMetricService;
+
+    @Value("${metric.plan.ttl-ms:300000}")
+    private long ttlMs = 300_000L;
+
+    /** 节点键（metric:ID / atomic:ID）-> 节点 */
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+    /** 被引用的指标 ID -> 解析到的节点（先按指标定义，再按原子指标） */
+    private final Map<String, Node> references = new ConcurrentHashMap<>();
+    /** 根节点键 + 版本 -> 规划 */
+    private final Map<String, MetricPlan> plans = new ConcurrentHashMap<>();
+
+    public MetricDependencyPlanner(MetricService metricService, AtomicMetricService atomicMetricService) {
+        this.metricService = metricService;
+        this.atomicMetricService = atomicMetricService;
+    }
+
+    /**
+     * 依赖图中的一个指标：指标定义（派生、复合）或原子指标
+     */
+    public static final class Node {
+        private final String key;
+        private final String id;
+        private final String type;
+        private final String version;
+        private final MetricDefinition definition;
+        private final AtomicMetric atomicMetric;
+        private final long loadedAt;
+
+        private Node(MetricDefinition definition) {
+            this.key = METRIC_PREFIX + definition.getId();
+            this.id = definition.getId();
+            this.type = definition.getMetricType();
+            this.version = MetricResultCache.versionOf(definition.toMap());
+            this.definition = definition;
+            this.atomicMetric = null;
+            this.loadedAt = System.currentTimeMillis();
+        }
+
+        private Node(AtomicMetric atomicMetric) {
+            this.key = ATOMIC_PREFIX + atomicMetric.getId();
+            this.id = atomicMetric.getId();
+            this.type = TYPE_ATOMIC;
+            this.version = MetricResultCache.versionOf(atomicMetric.toMap());
+            this.definition = null;
+            this.atomicMetric = atomicMetric;
+            this.loadedAt = System.currentTimeMillis();
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /** atomic、derived 或 composite */
+        public String getType() {
+            return type;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        /** 指标定义，原子指标节点为 null */
+        public MetricDefinition getDefinition() {
+            return definition;
+        }
+
+        /** 原子指标，指标定义节点为 null */
+        public AtomicMetric getAtomicMetric() {
+            return atomicMetric;
+        }
+    }
+
+    /**
+     * 根指标的依赖 DAG：节点按拓扑序排列（依赖在前，根指标最后）
+     */
+    public static final class MetricPlan {
+        private final String rootKey;
+        private final String version;
+        private final LinkedHashMap<String, Node> order;
+        private final Map<String, List<String>> dependencies;
+        private final Map<String, Integer> referenceCounts;
+        private final long plannedAt;
+
+        private MetricPlan(String rootKey, LinkedHashMap<String, Node> order, Map<String, List<String>> dependencies,
+                           Map<String, Integer> referenceCounts) {
+            this.rootKey = rootKey;
+            this.order = order;
+            this.dependencies = dependencies;
+            this.referenceCounts = referenceCounts;
+            StringBuilder versions = new StringBuilder();
+            order.values().forEach(node -> versions.append(node.key).append('@').append(node.version).append(';'));
+            this.version = MetricResultCache.versionOf(Map.of("nodes", versions.toString()));
+            this.plannedAt = System.currentTimeMillis();
+        }
+
+        public Node getRoot() {
+            return order.get(rootKey);
+        }
+
+        /** 所有节点版本共同决定的规划版本 */
+        public String getVersion() {
+            return version;
+        }
+
+        /** 拓扑序：每个节点都排在引用它的指标之前 */
+        public List<Node> getOrder() {
+            return new ArrayList<>(order.values());
+        }
+
+        public List<String> getDependencies(String key) {
+            return dependencies.getOrDefault(key, List.of());
+        }
+
+        /** 被 DAG 中多个指标引用、应只计算一次的节点键 */
+        public Set<String> getShared() {
+            Set<String> shared = new LinkedHashSet<>();
+            for (String key : order.keySet()) {
+                if (referenceCounts.getOrDefault(key, 0) > 1) {
+                    shared.add(key);
+                }
+            }
+            return shared;
+        }
+
+        boolean contains(String key) {
+            return order.containsKey(key);
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("metric_id", getRoot().id);
+            map.put("version", version);
+            map.put("order", new ArrayList<>(order.keySet()));
+            List<Map<String, Object>> nodeMaps = new ArrayList<>();
+            for (Node node : order.values()) {
+                Map<String, Object> nodeMap = new LinkedHashMap<>();
+                nodeMap.put("key", node.key);
+                nodeMap.put("id", node.id);
+                nodeMap.put("type", node.type);
+                nodeMap.put("version", node.version);
+                nodeMap.put("depends_on", getDependencies(node.key));
+                nodeMap.put("referenced_by", referenceCounts.getOrDefault(node.key, 0));
+                nodeMaps.add(nodeMap);
+            }
+            map.put("nodes", nodeMaps);
+            map.put("shared", new ArrayList<>(getShared()));
+            return map;
+        }
+    }
+
+    /**
+     * 按 ID 规划已保存的指标（先按指标定义，再按原子指标）
+     */
+    public MetricPlan plan(String metricId) throws IOException {
+        return planOf(resolve(metricId));
+    }
+
+    /**
+     * 规划指标定义（可以是未保存的定义）；存在循环引用时抛出 IllegalArgumentException
+     */
+    public MetricPlan plan(MetricDefinition definition) throws IOException {
+        return planOf(new Node(definition));
+    }
+
+    private MetricPlan planOf(Node root) throws IOException {
+        String planKey = root.key + "@" + root.version;
+        MetricPlan cached = plans.get(planKey);
+        if (cached != null && isCurrent(cached, root)) {
+            return cached;
+        }
+        LinkedHashMap<String, Node> order = new LinkedHashMap<>();
+        Map<String, List<String>> dependencies = new HashMap<>();
+        Map<String, Integer> referenceCounts = new HashMap<>();
+        visit(root, new ArrayDeque<>(), order, dependencies, referenceCounts);
+        MetricPlan plan = new MetricPlan(root.key, order, dependencies, referenceCounts);
+        plans.put(planKey, plan);
+        logger.debug("[MetricDependencyPlanner] Planned {}: {} nodes, shared {}", root.key, order.size(), plan.getShared());
+        return plan;
+    }
+
+    /**
+     * 规划中除根节点外的节点仍是当前缓存的节点，且规划未超过有效期
+     */
+    private boolean isCurrent(MetricPlan plan, Node root) {
+        if (expired(plan.plannedAt)) {
+            return false;
+        }
+        for (Node node : plan.order.values()) {
+            if (!node.key.equals(root.key) && nodes.get(node.key) != node) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 深度优先遍历：后序加入 order 即为拓扑序；遍历路径上再次出现的节点说明存在循环引用
+     */
+    private void visit(Node node, Deque<String> path, LinkedHashMap<String, Node> order,
+                       Map<String, List<String>> dependencies, Map<String, Integer> referenceCounts) throws IOException {
+        if (path.contains(node.key)) {
+            List<String> cycle = new ArrayList<>();
+            boolean inCycle = false;
+            for (String key : path) {
+                inCycle |= key.equals(node.key);
+                if (inCycle) {
+                    cycle.add(key);
+                }
+            }
+            cycle.add(node.key);
+            throw new IllegalArgumentException("指标存在循环引用: " + String.join(" -> ", cycle));
+        }
+        if (order.containsKey(node.key)) {
+            return;
+        }
+        path.addLast(node.key);
+        List<String> keys = new ArrayList<>();
+        for (Node dependency : dependenciesOf(node)) {
+            if (keys.contains(dependency.key)) {
+                continue;
+            }
+            keys.add(dependency.key);
+            referenceCounts.merge(dependency.key, 1, Integer::sum);
+            visit(dependency, path, order, dependencies, referenceCounts);
+        }
+        path.removeLast();
+        dependencies.put(node.key, keys);
+        order.put(node.key, node);
+    }
+
+    /**
+     * 直接依赖：派生指标依赖其原子指标，复合指标依赖各基础指标
+     */
+    private List<Node> dependenciesOf(Node node) throws IOException {
+        MetricDefinition definition = node.definition;
+        if (definition == null) {
+            return List.of();
+        }
+        List<Node> result = new ArrayList<>();
+        if ("derived".equals(definition.getMetricType()) && definition.getAtomicMetricId() != null) {
+            result.add(atomicNode(definition.getAtomicMetricId()));
+        }
+        if ("composite".equals(definition.getMetricType()) && definition.getBaseMetricIds() != null) {
+            for (String baseId : definition.getBaseMetricIds()) {
+                result.add(resolve(baseId));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 被引用的指标：先按指标定义查找，不是指标定义时再按原子指标；解析结果与节点一同缓存
+     */
+    public Node resolve(String metricId) throws IOException {
+        Node cached = references.get(metricId);
+        if (cached != null && !expired(cached.loadedAt) && nodes.get(cached.key) == cached) {
+            return cached;
+        }
+        Node node;
+        try {
+            node = metricNode(metricId);
+        } catch (IOException e) {
+            try {
+                node = atomicNode(metricId);
+            } catch (IOException ex) {
+                throw new IOException("无法获取基础指标: " + metricId + " (既不是指标定义也不是原子指标)", ex);
+            }
+        }
+        references.put(metricId, node);
+        return node;
+    }
+
+    private Node metricNode(String metricId) throws IOException {
+        Node cached = nodes.get(METRIC_PREFIX + metricId);
+        if (cached != null && !expired(cached.loadedAt)) {
+            return cached;
+        }
+        Node node = new Node(metricService.getMetricDefinition(metricId));
+        nodes.put(node.key, node);
+        return node;
+    }
+
+    private Node atomicNode(String atomicMetricId) throws IOException {
+        Node cached = nodes.get(ATOMIC_PREFIX + atomicMetricId);
+        if (cached != null && !expired(cached.loadedAt)) {
+            return cached;
+        }
+        Node node = new Node(atomicMetricService.getAtomicMetric(atomicMetricId));
+        nodes.put(node.key, node);
+        return node;
+    }
+
+    /**
+     * 不经缓存读取被引用的指标（未注入规划器时使用）
+     */
+    public static Node load(MetricService metricService, AtomicMetricService atomicMetricService, String metricId) throws IOException {
+        try {
+            return new Node(metricService.getMetricDefinition(metricId));
+        } catch (IOException e) {
+            try {
+                return new Node(atomicMetricService.getAtomicMetric(metricId));
+            } catch (IOException ex) {
+                throw new IOException("无法获取基础指标: " + metricId + " (既不是指标定义也不是原子指标)", ex);
+            }
+        }
+    }
+
+    private boolean expired(long loadedAt) {
+        return ttlMs > 0 && System.currentTimeMillis() - loadedAt > ttlMs;
+    }
+
+    /**
+     * 指标定义或原子指标修改、删除后失效对应节点及包含它的规划
+     */
+    public void invalidate(String metricId) {
+        nodes.remove(METRIC_PREFIX + metricId);
+        nodes.remove(ATOMIC_PREFIX + metricId);
+        references.remove(metricId);
+        plans.values().removeIf(plan -> plan.contains(METRIC_PREFIX + metricId) || plan.contains(ATOMIC_PREFIX + metricId));
+    }
+}
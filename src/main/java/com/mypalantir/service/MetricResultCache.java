@@ -0,0 +1,319 @@
+package com.mypalantir.service;
+
+import com.mypalantir.metric.MetricQuery;
+import com.mypalantir.metric.MetricResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 指标计算结果缓存（MetricQuery.useCache 为 true 时生效）
+ * 键为 指标类型 + 指标 ID + 定义版本（定义内容摘要，含条件限定）+ 时间范围 + 维度；
+ * 时间范围在今天之前结束的结果属于已关闭周期，长期保留；覆盖当前周期的结果只缓存 open-ttl-ms。
+ * 跨越今天的时间序列由调用方按 {@link #openPeriodStart(MetricQuery)} 拆成已关闭部分与当前部分分别缓存，
+ * 过去的数据点不随当前周期的短 TTL 一起过期。
+ * 指标定义（及其依赖的基础指标、原子指标）变更或底层对象类型完成同步时按依赖失效。
+ */
+@Service
+public class MetricResultCache {
+    private static final Logger logger = LoggerFactory.getLogger(MetricResultCache.class);
+
+    public static final String KIND_ATOMIC = "atomic";
+    public static final String KIND_DEFINITION = "definition";
+
+    @Value("${metric.result-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${metric.result-cache.closed-ttl-ms:604800000}")
+    private long closedTtlMs = 604_800_000L;
+
+    @Value("${metric.result-cache.open-ttl-ms:60000}")
+    private long openTtlMs = 60_000L;
+
+    @Value("${metric.result-cache.max-entries:2000}")
+    private int maxEntries = 2000;
+
+    private Clock clock = Clock.systemDefaultZone();
+
+    private static final class Entry {
+        final MetricResult value;
+        final long expiresAt;
+        final boolean closed;
+        final Set<String> metricIds;
+        final Set<String> objectTypes;
+
+        Entry(MetricResult value, long expiresAt, boolean closed, Set<String> metricIds, Set<String> objectTypes) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.closed = closed;
+            this.metricIds = metricIds;
+            this.objectTypes = objectTypes;
+        }
+    }
+
+    /** 访问有序，超过 max-entries 时淘汰最久未用的条目 */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    /** 每次失效递增，计算开始前取得的代号与写入时不一致则不写入，避免失效期间算出的旧结果进入缓存 */
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public boolean isEnabled() {
+        return enabled && maxEntries > 0;
+    }
+
+    /**
+     * 构建缓存键；未启用或指标没有 ID（如校验未保存的定义）时返回 null
+     */
+    public String keyOf(String kind, String metricId, Map<String, Object> definition, MetricQuery query) {
+        if (!isEnabled()) {
+            return null;
+        }
+        return computationKey(kind, metricId, definition, query);
+    }
+
+    /**
+     * 一次指标计算的标识（不依赖缓存是否启用）：相同标识的计算结果相同，批量查询据此合并重复的子计算
+     */
+    public static String computationKey(String kind, String metricId, Map<String, Object> definition, MetricQuery query) {
+        if (metricId == null || metricId.isEmpty()) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder();
+        key.append(kind).append(':').append(metricId).append('@').append(versionOf(definition));
+        MetricQuery.TimeRange range = query != null ? query.getTimeRange() : null;
+        key.append("|range:");
+        if (range != null) {
+            key.append(range.getStart()).append('~').append(range.getEnd());
+            if (range.isEndExclusive()) {
+                key.append(')');
+            }
+        }
+        key.append("|dims:");
+        if (query != null && query.getDimensions() != null) {
+            key.append(canonical(query.getDimensions()));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 当前失效代号，计算前取得并在 put 时传回
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * 读取缓存结果（返回副本，调用方修改不影响缓存）；未命中或已过期返回 null
+     */
+    public MetricResult get(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt <= clock.millis()) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copyOf(entry.value);
+    }
+
+    /**
+     * 写入计算结果
+     * @param metricIds 结果依赖的指标 ID（含基础指标、原子指标），任一变更即失效
+     * @param objectTypes 结果读取的对象类型，这些类型完成同步即失效
+     */
+    public void put(String key, MetricResult result, MetricQuery query, long expectedGeneration,
+                    Set<String> metricIds, Set<String> objectTypes) {
+        boolean closed = isClosedRange(query);
+        long ttl = closed ? closedTtlMs : openTtlMs;
+        if (ttl <= 0) {
+            return;
+        }
+        Entry entry = new Entry(copyOf(result), clock.millis() + ttl, closed,
+            new HashSet<>(metricIds), new HashSet<>(objectTypes));
+        synchronized (this) {
+            if (generation != expectedGeneration) {
+                return;
+            }
+            entries.put(key, entry);
+            while (entries.size() > maxEntries) {
+                Iterator<String> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 查询范围开始于今天之前且包含今天时返回今天（当前周期的起点），否则返回 null
+     */
+    public LocalDate openPeriodStart(MetricQuery query) {
+        if (query == null || query.getTimeRange() == null) {
+            return null;
+        }
+        LocalDate start = dateOf(query.getTimeRange().getStart());
+        LocalDate end = lastDayOf(query.getTimeRange());
+        LocalDate today = LocalDate.now(clock);
+        if (start == null || end == null || !start.isBefore(today) || end.isBefore(today)) {
+            return null;
+        }
+        return today;
+    }
+
+    private static LocalDate dateOf(String value) {
+        if (value == null || value.trim().length() < 10) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value.trim().substring(0, 10));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 时间范围包含的最后一天：右开区间且结束值为整天（yyyy-MM-dd）时为其前一天
+     */
+    private static LocalDate lastDayOf(MetricQuery.TimeRange range) {
+        LocalDate end = dateOf(range.getEnd());
+        if (end != null && range.isEndExclusive() && range.getEnd().trim().length() == 10) {
+            return end.minusDays(1);
+        }
+        return end;
+    }
+
+    /**
+     * 时间范围在今天之前结束：所有周期均已关闭，结果不再变化（除非底层数据重新同步）
+     */
+    boolean isClosedRange(MetricQuery query) {
+        if (query == null || query.getTimeRange() == null) {
+            return false;
+        }
+        LocalDate endDate = lastDayOf(query.getTimeRange());
+        return endDate != null && endDate.isBefore(LocalDate.now(clock));
+    }
+
+    /**
+     * 指标定义或原子指标变更：失效依赖该指标的全部结果
+     */
+    public synchronized int invalidateMetric(String metricId) {
+        return removeIf(entry -> entry.metricIds.contains(metricId));
+    }
+
+    /**
+     * 对象类型的数据完成同步：失效读取该类型的全部结果
+     */
+    public synchronized int invalidateObjectType(String objectType) {
+        int removed = removeIf(entry -> entry.objectTypes.contains(objectType));
+        if (removed > 0) {
+            logger.info("[MetricResultCache] Invalidated {} cached metric results after sync of {}", removed, objectType);
+        }
+        return removed;
+    }
+
+    public synchronized int clear() {
+        return removeIf(entry -> true);
+    }
+
+    private int removeIf(java.util.function.Predicate<Entry> predicate) {
+        generation++;
+        invalidations.incrementAndGet();
+        int removed = 0;
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (predicate.test(it.next())) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("closed_ttl_ms", closedTtlMs);
+        stats.put("open_ttl_ms", openTtlMs);
+        stats.put("max_entries", maxEntries);
+        stats.put("entries", entries.size());
+        stats.put("closed_entries", entries.values().stream().filter(e -> e.closed).count());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    static String versionOf(Map<String, Object> definition) {
+        String canonical = definition != null ? canonical(definition) : "";
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(canonical.hashCode());
+        }
+    }
+
+    /**
+     * 键有序的文本形式，嵌套 Map 同样排序，保证相同内容得到相同版本
+     */
+    private static String canonical(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            StringBuilder sb = new StringBuilder("{");
+            Map<String, Object> sorted = new TreeMap<>();
+            map.forEach((k, v) -> sorted.put(String.valueOf(k), v));
+            for (Map.Entry<String, Object> e : sorted.entrySet()) {
+                sb.append(e.getKey()).append('=').append(canonical(e.getValue())).append(';');
+            }
+            return sb.append('}').toString();
+        }
+        if (value instanceof Collection<?> list) {
+            StringBuilder sb = new StringBuilder("[");
+            for (Object item : list) {
+                sb.append(canonical(item)).append(',');
+            }
+            return sb.append(']').toString();
+        }
+        return String.valueOf(value);
+    }
+
+    private static MetricResult copyOf(MetricResult source) {
+        MetricResult copy = new MetricResult();
+        copy.setMetricId(source.getMetricId());
+        copy.setMetricName(source.getMetricName());
+        copy.setTimeGranularity(source.getTimeGranularity());
+        copy.setCalculatedAt(source.getCalculatedAt());
+        copy.setSql(source.getSql());
+        if (source.getColumns() != null) {
+            copy.setColumns(new ArrayList<>(source.getColumns()));
+        }
+        if (source.getResults() != null) {
+            List<Map<String, Object>> rows = new ArrayList<>(source.getResults().size());
+            for (Map<String, Object> row : source.getResults()) {
+                rows.add(new LinkedHashMap<>(row));
+            }
+            copy.setResults(rows);
+        }
+        return copy;
+    }
+}
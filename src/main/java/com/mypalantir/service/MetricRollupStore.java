@@ -0,0 +1,1009 @@
+package com.mypalantir.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.meta.Property;
+import com.mypalantir.metric.AtomicMetric;
+import com.mypalantir.metric.MetricDefinition;
+import com.mypalantir.metric.MetricQuery;
+import com.mypalantir.query.QueryExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.sql.*;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 原子指标按天预聚合的汇总存储（rollup）
+ * 每个汇总定义为 原子指标 + 时间维度 + 一组维度，在默认数据库中按 天 × 维度组合 保存 sum / count / min / max，
+ * 可再聚合出 SUM、COUNT、MIN、MAX、AVG。定时任务只补齐新关闭（今天之前）的日期，
+ * 派生指标计算时历史日期从汇总读取，只有当天（未关闭）的部分查询原始数据。
+ * 增量同步只重新填充写入行所在的已填充日期；全量同步或原子指标定义变更后汇总标记为过期，
+ * 过期期间不参与计算，由定时任务逐段重建。
+ */
+@Service
+public class MetricRollupStore {
+    private static final Logger logger = LoggerFactory.getLogger(MetricRollupStore.class);
+
+    static final String DEF_TABLE = "mp_metric_rollup_def";
+    static final String VALUE_TABLE = "mp_metric_rollup";
+    static final String GRAIN_DAY = "day";
+
+    private static final Set<String> REAGGREGABLE = Set.of("SUM", "COUNT", "MIN", "MAX", "AVG");
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    private final QueryService queryService;
+    private final AtomicMetricService atomicMetricService;
+    private final DatabaseMetadataService databaseMetadataService;
+    private final Loader loader;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${metric.rollup.enabled:false}")
+    private boolean enabled = false;
+
+    /** 新汇总首次填充的天数（今天之前） */
+    @Value("${metric.rollup.initial-days:90}")
+    private int initialDays = 90;
+
+    /** 每次填充查询覆盖的最大天数 */
+    @Value("${metric.rollup.chunk-days:31}")
+    private int chunkDays = 31;
+
+    /** 填充失败后的重试间隔（毫秒） */
+    @Value("${metric.rollup.retry-interval-ms:600000}")
+    private long retryIntervalMs = 600_000L;
+
+    private Clock clock = Clock.systemDefaultZone();
+
+    private volatile boolean tableReady;
+    private volatile Map<String, Rollup> rollups;
+    private final Map<String, Object> fillLocks = new ConcurrentHashMap<>();
+
+    public MetricRollupStore(QueryService queryService, AtomicMetricService atomicMetricService,
+                             DatabaseMetadataService databaseMetadataService, Loader loader) {
+        this.queryService = queryService;
+        this.atomicMetricService = atomicMetricService;
+        this.databaseMetadataService = databaseMetadataService;
+        this.loader = loader;
+    }
+
+    /**
+     * 一个汇总定义及其已填充的日期区间 [filledFrom, filledThrough]
+     */
+    static final class Rollup {
+        final String id;
+        final String atomicMetricId;
+        final String objectType;
+        final String timeDimension;
+        final List<String> dimensions;
+        volatile String atomicVersion;
+        volatile LocalDate filledFrom;
+        volatile LocalDate filledThrough;
+        volatile boolean stale;
+        volatile long updatedAt;
+        volatile String lastError;
+        volatile long lastFailureAt;
+        /** 标记过期的次数（仅内存），重建期间再次过期时重建结束后保持过期 */
+        volatile long staleMarks;
+
+        Rollup(String id, String atomicMetricId, String objectType, String timeDimension, List<String> dimensions) {
+            this.id = id;
+            this.atomicMetricId = atomicMetricId;
+            this.objectType = objectType;
+            this.timeDimension = timeDimension;
+            this.dimensions = dimensions;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", id);
+            map.put("atomic_metric_id", atomicMetricId);
+            map.put("object_type", objectType);
+            map.put("time_dimension", timeDimension);
+            map.put("dimensions", dimensions);
+            map.put("grain", GRAIN_DAY);
+            map.put("filled_from", filledFrom != null ? filledFrom.toString() : null);
+            map.put("filled_through", filledThrough != null ? filledThrough.toString() : null);
+            map.put("stale", stale);
+            map.put("updated_at", updatedAt > 0 ? updatedAt : null);
+            map.put("last_error", lastError);
+            return map;
+        }
+    }
+
+    /**
+     * 从汇总读取的历史部分；openStart 不为 null 时 [openStart, 查询结束日期] 仍需查询原始数据
+     */
+    public static final class RollupRead {
+        private final String rollupId;
+        private final List<Map<String, Object>> rows;
+        private final List<String> columns;
+        private final LocalDate openStart;
+
+        RollupRead(String rollupId, List<Map<String, Object>> rows, List<String> columns, LocalDate openStart) {
+            this.rollupId = rollupId;
+            this.rows = rows;
+            this.columns = columns;
+            this.openStart = openStart;
+        }
+
+        public String getRollupId() {
+            return rollupId;
+        }
+
+        public List<Map<String, Object>> getRows() {
+            return rows;
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        public LocalDate getOpenStart() {
+            return openStart;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ==================== 汇总定义 ====================
+
+    /**
+     * 注册汇总定义（相同 原子指标 + 时间维度 + 维度 的定义只有一个），由定时任务填充
+     */
+    public Map<String, Object> register(String atomicMetricId, String timeDimension, List<String> dimensions) throws IOException {
+        if (timeDimension == null || timeDimension.isEmpty()) {
+            throw new IllegalArgumentException("time_dimension is required");
+        }
+        AtomicMetric atomic = atomicMetricService.getAtomicMetric(atomicMetricId);
+        if (!isReaggregable(atomic)) {
+            throw new IllegalArgumentException("Aggregation function " + atomic.getAggregationFunction()
+                + " cannot be rolled up (supported: SUM, COUNT, MIN, MAX, AVG)");
+        }
+        List<String> dims = dimensions != null ? new ArrayList<>(new TreeSet<>(dimensions)) : new ArrayList<>();
+        String id = rollupIdOf(atomicMetricId, timeDimension, dims);
+        Rollup existing = rollups().get(id);
+        if (existing != null) {
+            return existing.toMap();
+        }
+        Rollup rollup = new Rollup(id, atomicMetricId, atomic.getBusinessProcess(), timeDimension, dims);
+        rollup.atomicVersion = MetricResultCache.versionOf(atomic.toMap());
+        rollup.updatedAt = clock.millis();
+        try (Connection conn = connection()) {
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + DEF_TABLE
+                    + " (rollup_id, atomic_metric_id, object_type, time_dimension, dimensions, grain, atomic_version,"
+                    + " filled_from, filled_through, stale, updated_at, last_error) VALUES (?, ?, ?, ?, ?, ?, ?, NULL, NULL, 0, ?, NULL)")) {
+                ps.setString(1, id);
+                ps.setString(2, atomicMetricId);
+                ps.setString(3, rollup.objectType);
+                ps.setString(4, timeDimension);
+                ps.setString(5, objectMapper.writeValueAsString(dims));
+                ps.setString(6, GRAIN_DAY);
+                ps.setString(7, rollup.atomicVersion);
+                ps.setLong(8, rollup.updatedAt);
+                ps.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to register metric rollup: " + e.getMessage(), e);
+        }
+        rollups().put(id, rollup);
+        logger.info("[MetricRollupStore] Registered rollup {} for {} by {} {}", id, atomicMetricId, timeDimension, dims);
+        return rollup.toMap();
+    }
+
+    public List<Map<String, Object>> list() throws IOException {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Rollup rollup : rollups().values()) {
+            list.add(rollup.toMap());
+        }
+        list.sort(Comparator.comparing(m -> (String) m.get("id")));
+        return list;
+    }
+
+    public void delete(String rollupId) throws IOException {
+        Rollup rollup = require(rollupId);
+        synchronized (lockOf(rollupId)) {
+            try (Connection conn = connection()) {
+                conn.setAutoCommit(false);
+                try {
+                    deleteValues(conn, rollupId, null, null);
+                    try (PreparedStatement ps = conn.prepareStatement("DELETE FROM " + DEF_TABLE + " WHERE rollup_id = ?")) {
+                        ps.setString(1, rollupId);
+                        ps.executeUpdate();
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                throw new IOException("Failed to delete metric rollup: " + e.getMessage(), e);
+            }
+            rollups().remove(rollup.id);
+        }
+    }
+
+    // ==================== 填充 ====================
+
+    /**
+     * 定时检查：过期或原子指标已变更的汇总重建，其余补齐到昨天
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void scheduledFill() {
+        if (!enabled) {
+            return;
+        }
+        Collection<Rollup> all;
+        try {
+            all = new ArrayList<>(rollups().values());
+        } catch (IOException e) {
+            logger.warn("[MetricRollupStore] Cannot load rollup definitions: {}", e.getMessage());
+            return;
+        }
+        long now = clock.millis();
+        for (Rollup rollup : all) {
+            if (rollup.lastError != null && now - rollup.lastFailureAt < retryIntervalMs) {
+                continue;
+            }
+            try {
+                if (rollup.stale || !Objects.equals(rollup.atomicVersion, currentVersion(rollup))) {
+                    rebuild(rollup.id);
+                } else if (rollup.filledThrough == null || rollup.filledThrough.isBefore(yesterday())) {
+                    fillNewlyClosed(rollup.id);
+                }
+            } catch (Exception e) {
+                // 错误已记录在汇总状态中
+            }
+        }
+    }
+
+    /**
+     * 补齐 filledThrough 之后新关闭的日期（尚未填充过时从 initial-days 天前开始）
+     */
+    public Map<String, Object> fillNewlyClosed(String rollupId) throws IOException {
+        Rollup rollup = require(rollupId);
+        synchronized (lockOf(rollupId)) {
+            LocalDate from = rollup.filledThrough != null ? rollup.filledThrough.plusDays(1)
+                : yesterday().minusDays(Math.max(1, initialDays) - 1L);
+            return fillForward(rollup, from);
+        }
+    }
+
+    /**
+     * 向前回填到 from（不含已填充的日期）
+     */
+    public Map<String, Object> backfill(String rollupId, LocalDate from) throws IOException {
+        Rollup rollup = require(rollupId);
+        synchronized (lockOf(rollupId)) {
+            if (rollup.filledFrom == null) {
+                return fillForward(rollup, from);
+            }
+            AtomicMetric atomic = atomicOf(rollup);
+            long rows = 0;
+            int days = 0;
+            // 从已填充区间向前逐段回填，每段完成后推进 filledFrom，保持填充区间连续
+            LocalDate chunkEnd = rollup.filledFrom.minusDays(1);
+            while (!chunkEnd.isBefore(from)) {
+                LocalDate chunkStart = max(from, chunkEnd.minusDays(Math.max(1, chunkDays) - 1L));
+                rows += fillChunk(rollup, atomic, chunkStart, chunkEnd, chunkStart, rollup.filledThrough);
+                days += (int) (chunkEnd.toEpochDay() - chunkStart.toEpochDay() + 1);
+                chunkEnd = chunkStart.minusDays(1);
+            }
+            return fillSummary(rollup, days, rows);
+        }
+    }
+
+    /**
+     * 从原填充起点（或 initial-days 天前）逐段重新填充到昨天：每段在一个事务中替换该段日期的汇总值，
+     * 不预先清空全部汇总；全部完成后才更新定义版本并清除过期标记，重建期间读取仍回退原始数据
+     */
+    public Map<String, Object> rebuild(String rollupId) throws IOException {
+        Rollup rollup = require(rollupId);
+        synchronized (lockOf(rollupId)) {
+            long marks = rollup.staleMarks;
+            AtomicMetric atomic = atomicOf(rollup);
+            String version = MetricResultCache.versionOf(atomic.toMap());
+            LocalDate from = rollup.filledFrom != null ? rollup.filledFrom
+                : yesterday().minusDays(Math.max(1, initialDays) - 1L);
+            LocalDate to = yesterday();
+            logger.info("[MetricRollupStore] Rebuilding rollup {} from {}", rollup.id, from);
+            long rows = 0;
+            int days = 0;
+            LocalDate chunkStart = from;
+            while (!chunkStart.isAfter(to)) {
+                LocalDate chunkEnd = min(to, chunkStart.plusDays(Math.max(1, chunkDays) - 1L));
+                LocalDate filledThrough = rollup.filledThrough != null ? max(rollup.filledThrough, chunkEnd) : chunkEnd;
+                rows += fillChunk(rollup, atomic, chunkStart, chunkEnd, from, filledThrough);
+                days += (int) (chunkEnd.toEpochDay() - chunkStart.toEpochDay() + 1);
+                chunkStart = chunkEnd.plusDays(1);
+            }
+            try (Connection conn = connection()) {
+                rollup.atomicVersion = version;
+                rollup.stale = rollup.staleMarks != marks;
+                saveState(conn, rollup);
+            } catch (SQLException e) {
+                throw new IOException("Failed to update metric rollup: " + e.getMessage(), e);
+            }
+            return fillSummary(rollup, days, rows);
+        }
+    }
+
+    /**
+     * 对象类型完成全量同步：读取该类型的汇总标记为过期（历史数据可能被整体重写），由定时任务重建
+     */
+    public void onObjectTypeSynced(String objectType) {
+        if (!enabled || objectType == null) {
+            return;
+        }
+        try {
+            for (Rollup rollup : rollups().values()) {
+                if (objectType.equals(rollup.objectType) && !rollup.stale) {
+                    markStale(rollup);
+                    logger.info("[MetricRollupStore] Rollup {} is stale after sync of {}", rollup.id, objectType);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("[MetricRollupStore] Cannot mark rollups of {} stale: {}", objectType, e.getMessage());
+        }
+    }
+
+    /**
+     * 对象类型完成增量同步：只重新填充写入行（按汇总的时间维度）所在的已填充日期，连续日期合并为一段，
+     * 每段不超过 chunk-days；填充区间之后的日期由定时任务补齐。
+     * 行的时间维度缺失或无法解析、或重新填充失败时退回标记过期整体重建。
+     * 增量写入只包含行的新值：时间维度被修改的行，原所在日期在下一次全量同步后重建时更正。
+     */
+    public void onRowsSynced(String objectType, Collection<Map<String, Object>> rows) {
+        if (!enabled || objectType == null || rows == null || rows.isEmpty()) {
+            return;
+        }
+        Collection<Rollup> all;
+        try {
+            all = new ArrayList<>(rollups().values());
+        } catch (IOException e) {
+            logger.warn("[MetricRollupStore] Cannot load rollups of {}: {}", objectType, e.getMessage());
+            return;
+        }
+        for (Rollup rollup : all) {
+            if (!objectType.equals(rollup.objectType) || rollup.stale || rollup.filledFrom == null) {
+                continue;
+            }
+            try {
+                refillDays(rollup, touchedDays(rollup, rows));
+            } catch (Exception e) {
+                logger.warn("[MetricRollupStore] Incremental refill of rollup {} failed, marking stale: {}", rollup.id, e.getMessage());
+                try {
+                    markStale(rollup);
+                } catch (IOException ex) {
+                    logger.warn("[MetricRollupStore] Cannot mark rollup {} stale: {}", rollup.id, ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入行所在且已填充的日期；有行无法确定日期时抛出异常
+     */
+    private TreeSet<LocalDate> touchedDays(Rollup rollup, Collection<Map<String, Object>> rows) throws IOException {
+        TreeSet<LocalDate> days = new TreeSet<>();
+        for (Map<String, Object> row : rows) {
+            String day = dayOf(valueIgnoreCase(row, rollup.timeDimension));
+            if (day == null) {
+                throw new IOException("row without a valid " + rollup.timeDimension);
+            }
+            LocalDate date = LocalDate.parse(day);
+            if (!date.isBefore(rollup.filledFrom) && rollup.filledThrough != null && !date.isAfter(rollup.filledThrough)) {
+                days.add(date);
+            }
+        }
+        return days;
+    }
+
+    private void refillDays(Rollup rollup, TreeSet<LocalDate> days) throws IOException {
+        if (days.isEmpty()) {
+            return;
+        }
+        synchronized (lockOf(rollup.id)) {
+            AtomicMetric atomic = atomicOf(rollup);
+            if (rollup.stale || !MetricResultCache.versionOf(atomic.toMap()).equals(rollup.atomicVersion)) {
+                // 等待定时任务重建
+                return;
+            }
+            LocalDate rangeStart = null;
+            LocalDate rangeEnd = null;
+            for (LocalDate day : days) {
+                if (rangeStart != null && day.equals(rangeEnd.plusDays(1))
+                        && day.toEpochDay() - rangeStart.toEpochDay() < Math.max(1, chunkDays)) {
+                    rangeEnd = day;
+                    continue;
+                }
+                if (rangeStart != null) {
+                    fillChunk(rollup, atomic, rangeStart, rangeEnd, rollup.filledFrom, rollup.filledThrough);
+                }
+                rangeStart = day;
+                rangeEnd = day;
+            }
+            fillChunk(rollup, atomic, rangeStart, rangeEnd, rollup.filledFrom, rollup.filledThrough);
+            logger.info("[MetricRollupStore] Refilled {} day(s) of rollup {} after incremental sync", days.size(), rollup.id);
+        }
+    }
+
+    private Map<String, Object> fillForward(Rollup rollup, LocalDate from) throws IOException {
+        LocalDate to = yesterday();
+        AtomicMetric atomic = atomicOf(rollup);
+        long rows = 0;
+        int days = 0;
+        LocalDate chunkStart = from;
+        while (!chunkStart.isAfter(to)) {
+            LocalDate chunkEnd = min(to, chunkStart.plusDays(Math.max(1, chunkDays) - 1L));
+            LocalDate filledFrom = rollup.filledFrom != null ? rollup.filledFrom : chunkStart;
+            rows += fillChunk(rollup, atomic, chunkStart, chunkEnd, filledFrom, chunkEnd);
+            days += (int) (chunkEnd.toEpochDay() - chunkStart.toEpochDay() + 1);
+            chunkStart = chunkEnd.plusDays(1);
+        }
+        return fillSummary(rollup, days, rows);
+    }
+
+    /**
+     * 查询 [from, to] 的原始数据按 天 + 维度 聚合后替换这些日期的汇总值，并在同一事务中更新填充区间
+     */
+    private long fillChunk(Rollup rollup, AtomicMetric atomic, LocalDate from, LocalDate to,
+                           LocalDate filledFrom, LocalDate filledThrough) throws IOException {
+        long started = clock.millis();
+        try {
+            Map<String, Object> queryMap = buildFillQuery(rollup, atomic, from, to);
+            QueryExecutor.QueryResult result = ReadRouting.call(ReadRouting.METRIC, () -> queryService.executeQuery(queryMap));
+            Map<String, Bucket> buckets = aggregate(rollup, result.getRows());
+
+            try (Connection conn = connection()) {
+                conn.setAutoCommit(false);
+                try {
+                    deleteValues(conn, rollup.id, from.toString(), to.toString());
+                    insertValues(conn, rollup.id, buckets.values());
+                    rollup.filledFrom = filledFrom;
+                    rollup.filledThrough = filledThrough;
+                    rollup.lastError = null;
+                    saveState(conn, rollup);
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+            logger.debug("[MetricRollupStore] Filled rollup {} for {} ~ {}: {} rows in {}ms",
+                rollup.id, from, to, buckets.size(), clock.millis() - started);
+            return buckets.size();
+        } catch (Exception e) {
+            rollup.lastError = e.getMessage() != null ? e.getMessage() : e.toString();
+            rollup.lastFailureAt = clock.millis();
+            logger.warn("[MetricRollupStore] Failed to fill rollup {} for {} ~ {}: {}", rollup.id, from, to, rollup.lastError);
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            throw new IOException("Failed to fill metric rollup " + rollup.id + ": " + rollup.lastError, e);
+        }
+    }
+
+    private Map<String, Object> fillSummary(Rollup rollup, int days, long rows) {
+        Map<String, Object> summary = rollup.toMap();
+        summary.put("filled_days", days);
+        summary.put("written_rows", rows);
+        return summary;
+    }
+
+    private Map<String, Object> buildFillQuery(Rollup rollup, AtomicMetric atomic, LocalDate from, LocalDate to) {
+        List<Object> metrics = new ArrayList<>();
+        String field = atomic.getAggregationField();
+        if ("COUNT".equalsIgnoreCase(atomic.getAggregationFunction())) {
+            metrics.add(Arrays.asList("count", "*", "rollup_count"));
+        } else {
+            metrics.add(Arrays.asList("sum", field, "rollup_sum"));
+            metrics.add(Arrays.asList("count", field, "rollup_count"));
+            metrics.add(Arrays.asList("min", field, "rollup_min"));
+            metrics.add(Arrays.asList("max", field, "rollup_max"));
+        }
+        List<String> groupBy = new ArrayList<>();
+        groupBy.add(rollup.timeDimension);
+        groupBy.addAll(rollup.dimensions);
+
+        Map<String, Object> queryMap = new HashMap<>();
+        queryMap.put("from", atomic.getBusinessProcess());
+        queryMap.put("metrics", metrics);
+        queryMap.put("group_by", groupBy);
+        // 右开区间，时间维度为时间戳时当天的全部记录也落入该天
+        queryMap.put("filter", List.of(
+            Arrays.asList(">=", rollup.timeDimension, from.toString()),
+            Arrays.asList("<", rollup.timeDimension, to.plusDays(1).toString())));
+        return queryMap;
+    }
+
+    /** 一天一个维度组合的可再聚合值 */
+    private static final class Bucket {
+        final String day;
+        final Map<String, Object> dims;
+        double sum;
+        long count;
+        Double min;
+        Double max;
+
+        Bucket(String day, Map<String, Object> dims) {
+            this.day = day;
+            this.dims = dims;
+        }
+    }
+
+    private Map<String, Bucket> aggregate(Rollup rollup, List<Map<String, Object>> rows) throws IOException {
+        Map<String, Bucket> buckets = new LinkedHashMap<>();
+        for (Map<String, Object> row : rows) {
+            String day = dayOf(valueIgnoreCase(row, rollup.timeDimension));
+            if (day == null) {
+                continue;
+            }
+            Map<String, Object> dims = new TreeMap<>();
+            for (String dim : rollup.dimensions) {
+                dims.put(dim, valueIgnoreCase(row, dim));
+            }
+            String key = day + '|' + objectMapper.writeValueAsString(dims);
+            Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(day, dims));
+            Number sum = (Number) valueIgnoreCase(row, "rollup_sum");
+            Number count = (Number) valueIgnoreCase(row, "rollup_count");
+            Number min = (Number) valueIgnoreCase(row, "rollup_min");
+            Number max = (Number) valueIgnoreCase(row, "rollup_max");
+            if (sum != null) {
+                bucket.sum += sum.doubleValue();
+            }
+            if (count != null) {
+                bucket.count += count.longValue();
+            }
+            if (min != null && (bucket.min == null || min.doubleValue() < bucket.min)) {
+                bucket.min = min.doubleValue();
+            }
+            if (max != null && (bucket.max == null || max.doubleValue() > bucket.max)) {
+                bucket.max = max.doubleValue();
+            }
+        }
+        return buckets;
+    }
+
+    // ==================== 读取 ====================
+
+    /**
+     * 用汇总回答派生指标的历史部分；不满足条件（未启用、聚合不可再聚合、有关联、维度或过滤字段未被覆盖、
+     * 填充区间不覆盖查询范围、汇总已过期）时返回 null，由调用方查询原始数据
+     */
+    public RollupRead tryRead(MetricDefinition metricDefinition, AtomicMetric atomicMetric, MetricQuery query) {
+        if (!enabled || metricDefinition.getTimeDimension() == null || query == null || query.getTimeRange() == null
+                || !isReaggregable(atomicMetric) || !readsOnlyBusinessProcess(metricDefinition, atomicMetric)
+                || !isDateTyped(atomicMetric.getBusinessProcess(), metricDefinition.getTimeDimension())) {
+            return null;
+        }
+        // 只处理按天（yyyy-MM-dd）的时间范围，带时分秒的范围与原始查询的比较语义不同
+        LocalDate start = isDay(query.getTimeRange().getStart()) ? parseDay(query.getTimeRange().getStart()) : null;
+        LocalDate end = isDay(query.getTimeRange().getEnd()) ? parseDay(query.getTimeRange().getEnd()) : null;
+        if (end != null && query.getTimeRange().isEndExclusive()) {
+            end = end.minusDays(1);
+        }
+        LocalDate yesterday = yesterday();
+        if (start == null || end == null || start.isAfter(end) || start.isAfter(yesterday)) {
+            return null;
+        }
+        LocalDate closedEnd = min(end, yesterday);
+
+        Map<String, Object> equalities = new LinkedHashMap<>();
+        collectEqualities(metricDefinition.getFilterConditions(), equalities);
+        collectEqualities(query.getDimensions(), equalities);
+        Set<String> required = new HashSet<>(equalities.keySet());
+        if (metricDefinition.getDimensions() != null) {
+            required.addAll(metricDefinition.getDimensions());
+        }
+
+        try {
+            String version = MetricResultCache.versionOf(atomicMetric.toMap());
+            Rollup chosen = null;
+            for (Rollup rollup : rollups().values()) {
+                if (rollup.atomicMetricId.equals(atomicMetric.getId())
+                        && rollup.timeDimension.equals(metricDefinition.getTimeDimension())
+                        && !rollup.stale && version.equals(rollup.atomicVersion)
+                        && rollup.dimensions.containsAll(required)
+                        && rollup.filledFrom != null && !rollup.filledFrom.isAfter(start)
+                        && rollup.filledThrough != null && !rollup.filledThrough.isBefore(closedEnd)
+                        && (chosen == null || rollup.dimensions.size() < chosen.dimensions.size())) {
+                    chosen = rollup;
+                }
+            }
+            if (chosen == null) {
+                return null;
+            }
+            List<Map<String, Object>> rows = readRows(chosen, metricDefinition, atomicMetric, equalities, start, closedEnd);
+            List<String> columns = new ArrayList<>();
+            columns.add(metricDefinition.getTimeDimension());
+            if (metricDefinition.getDimensions() != null) {
+                columns.addAll(metricDefinition.getDimensions());
+            }
+            columns.add(valueColumnOf(atomicMetric));
+            return new RollupRead(chosen.id, rows, columns, end.isAfter(yesterday) ? max(start, yesterday.plusDays(1)) : null);
+        } catch (IOException | SQLException e) {
+            logger.debug("[MetricRollupStore] Rollup read failed, falling back to raw data: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 时间维度在本体中是否为 date：原始查询按时间维度原值分组，只有 date 列一天一组，与汇总的一天一行形状一致；
+     * datetime / timestamp 列按时间戳分组，读汇总会使结果形状取决于是否存在汇总
+     */
+    private boolean isDateTyped(String objectType, String timeDimension) {
+        try {
+            ObjectType type = loader.getObjectType(objectType);
+            if (type.getProperties() != null) {
+                for (Property property : type.getProperties()) {
+                    if (timeDimension.equals(property.getName())) {
+                        return "date".equalsIgnoreCase(property.getDataType());
+                    }
+                }
+            }
+        } catch (Loader.NotFoundException e) {
+            logger.debug("[MetricRollupStore] Object type {} not found: {}", objectType, e.getMessage());
+        }
+        return false;
+    }
+
+    private List<Map<String, Object>> readRows(Rollup rollup, MetricDefinition metricDefinition, AtomicMetric atomicMetric,
+                                               Map<String, Object> equalities, LocalDate start, LocalDate end)
+            throws IOException, SQLException {
+        List<String> groupDims = metricDefinition.getDimensions() != null ? metricDefinition.getDimensions() : List.of();
+        // 按 天 + 指标维度 再聚合，过滤条件在维度值上按等值比较
+        Map<String, Bucket> merged = new TreeMap<>();
+        try (Connection conn = connection();
+             PreparedStatement ps = conn.prepareStatement("SELECT bucket, dim_values, value_sum, value_count, value_min, value_max FROM "
+                 + VALUE_TABLE + " WHERE rollup_id = ? AND bucket >= ? AND bucket <= ?")) {
+            ps.setString(1, rollup.id);
+            ps.setString(2, start.toString());
+            ps.setString(3, end.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> dims = objectMapper.readValue(rs.getString("dim_values"),
+                        new TypeReference<LinkedHashMap<String, Object>>() {});
+                    if (!matches(dims, equalities)) {
+                        continue;
+                    }
+                    Map<String, Object> groupValues = new LinkedHashMap<>();
+                    for (String dim : groupDims) {
+                        groupValues.put(dim, dims.get(dim));
+                    }
+                    String day = rs.getString("bucket");
+                    String key = day + '|' + objectMapper.writeValueAsString(groupValues);
+                    Bucket bucket = merged.computeIfAbsent(key, k -> new Bucket(day, groupValues));
+                    bucket.sum += rs.getDouble("value_sum");
+                    bucket.count += rs.getLong("value_count");
+                    double min = rs.getDouble("value_min");
+                    if (!rs.wasNull() && (bucket.min == null || min < bucket.min)) {
+                        bucket.min = min;
+                    }
+                    double max = rs.getDouble("value_max");
+                    if (!rs.wasNull() && (bucket.max == null || max > bucket.max)) {
+                        bucket.max = max;
+                    }
+                }
+            }
+        }
+
+        String valueColumn = valueColumnOf(atomicMetric);
+        String function = atomicMetric.getAggregationFunction().toUpperCase();
+        List<Map<String, Object>> rows = new ArrayList<>(merged.size());
+        for (Bucket bucket : merged.values()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put(metricDefinition.getTimeDimension(), bucket.day);
+            row.putAll(bucket.dims);
+            switch (function) {
+                case "COUNT" -> row.put(valueColumn, bucket.count);
+                case "SUM" -> row.put(valueColumn, bucket.count > 0 ? bucket.sum : null);
+                case "AVG" -> row.put(valueColumn, bucket.count > 0 ? bucket.sum / bucket.count : null);
+                case "MIN" -> row.put(valueColumn, bucket.min);
+                default -> row.put(valueColumn, bucket.max);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * 与原始查询结果一致的聚合列名（count_star、sum_fee 等，字段名中的非单词字符替换为下划线）
+     */
+    static String valueColumnOf(AtomicMetric atomicMetric) {
+        if ("COUNT".equalsIgnoreCase(atomicMetric.getAggregationFunction())) {
+            return "count_star";
+        }
+        return atomicMetric.getAggregationFunction().toLowerCase() + "_" + atomicMetric.getAggregationField().replaceAll("\\W", "_");
+    }
+
+    private static boolean matches(Map<String, Object> dims, Map<String, Object> equalities) {
+        for (Map.Entry<String, Object> e : equalities.entrySet()) {
+            Object value = dims.get(e.getKey());
+            if (value == null || !String.valueOf(value).equals(String.valueOf(e.getValue()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void collectEqualities(Map<String, Object> conditions, Map<String, Object> equalities) {
+        if (conditions == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> e : conditions.entrySet()) {
+            Object value = e.getValue();
+            if (value != null && !(value instanceof String && ((String) value).trim().isEmpty())) {
+                equalities.putIfAbsent(e.getKey(), value);
+            }
+        }
+    }
+
+    private static boolean isReaggregable(AtomicMetric atomicMetric) {
+        String function = atomicMetric.getAggregationFunction();
+        if (function == null || !REAGGREGABLE.contains(function.toUpperCase())) {
+            return false;
+        }
+        String field = atomicMetric.getAggregationField();
+        return "COUNT".equalsIgnoreCase(function) || (field != null && !field.isEmpty() && !"-".equals(field.trim()));
+    }
+
+    /**
+     * 派生指标只读取原子指标的业务过程（无关联）时汇总才与原始查询等价
+     */
+    private static boolean readsOnlyBusinessProcess(MetricDefinition metricDefinition, AtomicMetric atomicMetric) {
+        Map<String, Object> scope = metricDefinition.getBusinessScope();
+        if (scope == null) {
+            return true;
+        }
+        Object links = scope.get("links");
+        if (links instanceof Collection<?> c && !c.isEmpty()) {
+            return false;
+        }
+        Object from = "multi".equals(scope.get("type")) ? scope.get("from") : scope.get("base_object_type");
+        return from == null || from.equals(atomicMetric.getBusinessProcess());
+    }
+
+    // ==================== 存储 ====================
+
+    private Map<String, Rollup> rollups() throws IOException {
+        Map<String, Rollup> current = rollups;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (rollups == null) {
+                Map<String, Rollup> loaded = new ConcurrentHashMap<>();
+                try (Connection conn = connection();
+                     Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT * FROM " + DEF_TABLE)) {
+                    while (rs.next()) {
+                        List<String> dims = objectMapper.readValue(rs.getString("dimensions"), new TypeReference<List<String>>() {});
+                        Rollup rollup = new Rollup(rs.getString("rollup_id"), rs.getString("atomic_metric_id"),
+                            rs.getString("object_type"), rs.getString("time_dimension"), dims);
+                        rollup.atomicVersion = rs.getString("atomic_version");
+                        rollup.filledFrom = parseDay(rs.getString("filled_from"));
+                        rollup.filledThrough = parseDay(rs.getString("filled_through"));
+                        rollup.stale = rs.getInt("stale") != 0;
+                        rollup.updatedAt = rs.getLong("updated_at");
+                        rollup.lastError = rs.getString("last_error");
+                        loaded.put(rollup.id, rollup);
+                    }
+                } catch (SQLException e) {
+                    throw new IOException("Failed to load metric rollups: " + e.getMessage(), e);
+                }
+                rollups = loaded;
+            }
+            return rollups;
+        }
+    }
+
+    private void markStale(Rollup rollup) throws IOException {
+        rollup.staleMarks++;
+        rollup.stale = true;
+        try (Connection conn = connection()) {
+            saveState(conn, rollup);
+        } catch (SQLException e) {
+            throw new IOException("Failed to update metric rollup: " + e.getMessage(), e);
+        }
+    }
+
+    private void saveState(Connection conn, Rollup rollup) throws SQLException {
+        rollup.updatedAt = clock.millis();
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE " + DEF_TABLE
+                + " SET atomic_version = ?, filled_from = ?, filled_through = ?, stale = ?, updated_at = ?, last_error = ?"
+                + " WHERE rollup_id = ?")) {
+            ps.setString(1, rollup.atomicVersion);
+            ps.setString(2, rollup.filledFrom != null ? rollup.filledFrom.toString() : null);
+            ps.setString(3, rollup.filledThrough != null ? rollup.filledThrough.toString() : null);
+            ps.setInt(4, rollup.stale ? 1 : 0);
+            ps.setLong(5, rollup.updatedAt);
+            ps.setString(6, rollup.lastError);
+            ps.setString(7, rollup.id);
+            ps.executeUpdate();
+        }
+    }
+
+    private void deleteValues(Connection conn, String rollupId, String from, String to) throws SQLException {
+        String sql = "DELETE FROM " + VALUE_TABLE + " WHERE rollup_id = ?" + (from != null ? " AND bucket >= ? AND bucket <= ?" : "");
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, rollupId);
+            if (from != null) {
+                ps.setString(2, from);
+                ps.setString(3, to);
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    private void insertValues(Connection conn, String rollupId, Collection<Bucket> buckets) throws SQLException, IOException {
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + VALUE_TABLE
+                + " (rollup_id, bucket, dim_hash, dim_values, value_sum, value_count, value_min, value_max)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            int pending = 0;
+            for (Bucket bucket : buckets) {
+                String dimValues = objectMapper.writeValueAsString(bucket.dims);
+                ps.setString(1, rollupId);
+                ps.setString(2, bucket.day);
+                ps.setString(3, MetricResultCache.versionOf(Map.of("dims", dimValues)));
+                ps.setString(4, dimValues);
+                ps.setDouble(5, bucket.sum);
+                ps.setLong(6, bucket.count);
+                setNullableDouble(ps, 7, bucket.min);
+                setNullableDouble(ps, 8, bucket.max);
+                ps.addBatch();
+                if (++pending >= INSERT_BATCH_SIZE) {
+                    ps.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    private static void setNullableDouble(PreparedStatement ps, int index, Double value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.DOUBLE);
+        } else {
+            ps.setDouble(index, value);
+        }
+    }
+
+    private Connection connection() throws SQLException, IOException {
+        Connection conn = databaseMetadataService.getConnectionForDatabase(null);
+        try {
+            ensureTables(conn);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    private void ensureTables(Connection conn) throws SQLException {
+        if (tableReady) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + DEF_TABLE + " ("
+                + "rollup_id VARCHAR(64) NOT NULL, "
+                + "atomic_metric_id VARCHAR(255) NOT NULL, "
+                + "object_type VARCHAR(255), "
+                + "time_dimension VARCHAR(255) NOT NULL, "
+                + "dimensions TEXT, "
+                + "grain VARCHAR(16) NOT NULL, "
+                + "atomic_version VARCHAR(64), "
+                + "filled_from VARCHAR(10), "
+                + "filled_through VARCHAR(10), "
+                + "stale INT NOT NULL, "
+                + "updated_at BIGINT NOT NULL, "
+                + "last_error VARCHAR(1000), "
+                + "PRIMARY KEY (rollup_id))");
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + VALUE_TABLE + " ("
+                + "rollup_id VARCHAR(64) NOT NULL, "
+                + "bucket VARCHAR(10) NOT NULL, "
+                + "dim_hash VARCHAR(64) NOT NULL, "
+                + "dim_values TEXT, "
+                + "value_sum DOUBLE, "
+                + "value_count BIGINT NOT NULL, "
+                + "value_min DOUBLE, "
+                + "value_max DOUBLE, "
+                + "PRIMARY KEY (rollup_id, bucket, dim_hash))");
+        }
+        tableReady = true;
+    }
+
+    // ==================== 工具 ====================
+
+    private Rollup require(String rollupId) throws IOException {
+        Rollup rollup = rollups().get(rollupId);
+        if (rollup == null) {
+            throw new IOException("Metric rollup not found: " + rollupId);
+        }
+        return rollup;
+    }
+
+    private Object lockOf(String rollupId) {
+        return fillLocks.computeIfAbsent(rollupId, k -> new Object());
+    }
+
+    private AtomicMetric atomicOf(Rollup rollup) throws IOException {
+        return atomicMetricService.getAtomicMetric(rollup.atomicMetricId);
+    }
+
+    private String currentVersion(Rollup rollup) throws IOException {
+        return MetricResultCache.versionOf(atomicOf(rollup).toMap());
+    }
+
+    private LocalDate yesterday() {
+        return LocalDate.now(clock).minusDays(1);
+    }
+
+    static String rollupIdOf(String atomicMetricId, String timeDimension, List<String> dimensions) {
+        Map<String, Object> spec = new LinkedHashMap<>();
+        spec.put("atomic_metric_id", atomicMetricId);
+        spec.put("time_dimension", timeDimension);
+        spec.put("dimensions", dimensions);
+        return "rollup_" + MetricResultCache.versionOf(spec);
+    }
+
+    /**
+     * 时间值所在的天（yyyy-MM-dd），支持日期、时间戳及其文本形式
+     */
+    private static String dayOf(Object timeValue) {
+        if (timeValue == null) {
+            return null;
+        }
+        String text = timeValue.toString().trim();
+        return parseDay(text) != null ? text.substring(0, 10) : null;
+    }
+
+    private static boolean isDay(String value) {
+        return value != null && value.trim().length() == 10;
+    }
+
+    private static LocalDate parseDay(String value) {
+        if (value == null || value.trim().length() < 10) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value.trim().substring(0, 10));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static Object valueIgnoreCase(Map<String, Object> row, String key) {
+        if (row.containsKey(key)) {
+            return row.get(key);
+        }
+        for (Map.Entry<String, Object> e : row.entrySet()) {
+            if (e.getKey().equalsIgnoreCase(key)) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+}
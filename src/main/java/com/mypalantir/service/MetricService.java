@@ -5,6 +5,8 @@ import com.mypalantir.metric.AtomicMetric;
 import com.mypalantir.metric.MetricDefinition;
 import com.mypalantir.repository.IInstanceStorage;
 import com.mypalantir.repository.InstanceStorage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -22,6 +24,15 @@ public class MetricService {
     private final AtomicMetricService atomicMetricService;
     private LinkService linkService;
 
+    /** 定义变更后失效依赖它的指标结果缓存 */
+    @Autowired(required = false)
+    private MetricResultCache resultCache;
+
+    /** 定义变更后失效依赖规划中的节点 */
+    @Autowired(required = false)
+    @Lazy
+    private MetricDependencyPlanner dependencyPlanner;
+
     public MetricService(IInstanceStorage storage, Loader loader, DataValidator validator, AtomicMetricService atomicMetricService) {
         this.storage = storage;
         this.loader = loader;
@@ -125,6 +136,12 @@ public class MetricService {
 
         // 更新实例
         storage.updateInstance("MetricDefinition", id, data);
+        if (resultCache != null) {
+            resultCache.invalidateMetric(id);
+        }
+        if (dependencyPlanner != null) {
+            dependencyPlanner.invalidate(id);
+        }
     }
 
     /**
@@ -132,6 +149,12 @@ public class MetricService {
      */
     public void deleteMetricDefinition(String id) throws IOException {
         storage.deleteInstance("MetricDefinition", id);
+        if (resultCache != null) {
+            resultCache.invalidateMetric(id);
+        }
+        if (dependencyPlanner != null) {
+            dependencyPlanner.invalidate(id);
+        }
     }
 
     /**
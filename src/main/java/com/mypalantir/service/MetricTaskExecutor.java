@@ -0,0 +1,244 @@
+package com.mypalantir.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 指标子计算并行执行器
+ * 线程池总并发受 max-threads 限制，同一数据源上同时执行的子计算不超过 per-datasource：
+ * 超出的任务在该数据源的等待队列中排队，不占用线程池线程，其他数据源的任务不受影响；
+ * 已在执行器线程内的嵌套提交（复合指标引用复合指标）直接在当前线程顺序执行，避免线程池耗尽互相等待。
+ */
+@Component
+public class MetricTaskExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(MetricTaskExecutor.class);
+
+    /** 无法确定数据源时使用的分组 */
+    public static final String DEFAULT_SOURCE = "default";
+
+    public interface Task<T> {
+        T call() throws Exception;
+    }
+
+    @Value("${metric.parallel.max-threads:8}")
+    private int maxThreads = 8;
+
+    @Value("${metric.parallel.per-datasource:4}")
+    private int perDataSource = 4;
+
+    @Autowired(required = false)
+    private MappingService mappingService;
+
+    private static final ThreadLocal<Boolean> IN_WORKER = new ThreadLocal<>();
+
+    private volatile ExecutorService pool;
+    private final Map<String, SourceQueue> queues = new ConcurrentHashMap<>();
+    private final Map<String, String> dataSourceByType = new ConcurrentHashMap<>();
+
+    /**
+     * 对象类型所在数据源（映射表的 database_id），未配置映射时归入默认分组
+     */
+    public String dataSourceOf(String objectType) {
+        if (objectType == null) {
+            return DEFAULT_SOURCE;
+        }
+        return dataSourceByType.computeIfAbsent(objectType, type -> {
+            if (mappingService == null) {
+                return DEFAULT_SOURCE;
+            }
+            try {
+                List<Map<String, Object>> mappings = mappingService.getMappingsByObjectType(type);
+                if (mappings != null && !mappings.isEmpty()) {
+                    Map<String, Object> table = mappingService.getTableInstance((String) mappings.get(0).get("table_id"));
+                    if (table != null && table.get("database_id") != null) {
+                        return table.get("database_id").toString();
+                    }
+                }
+            } catch (Exception e) {
+                logger.debug("[MetricTaskExecutor] Cannot resolve data source of {}: {}", type, e.getMessage());
+            }
+            return DEFAULT_SOURCE;
+        });
+    }
+
+    /**
+     * 单个数据源的运行计数与等待队列（以自身为锁）
+     */
+    private static final class SourceQueue {
+        private int running;
+        private final Deque<Runnable> pending = new ArrayDeque<>();
+    }
+
+    /**
+     * 映射变更后清除对象类型到数据源的解析结果（MappingService 增删映射时调用）
+     */
+    public void forgetDataSource(String objectType) {
+        dataSourceByType.remove(objectType);
+    }
+
+    /**
+     * 并行执行任务并按提交顺序返回结果；任一任务失败时取消其余任务并抛出按提交顺序第一个失败的异常
+     * @param dataSources 与 tasks 一一对应的数据源分组
+     */
+    public <T> List<T> invokeAll(List<Task<T>> tasks, List<String> dataSources) throws Exception {
+        if (tasks.size() <= 1 || Boolean.TRUE.equals(IN_WORKER.get()) || maxThreads <= 1) {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Task<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+        ExecutorService executor = pool();
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            Task<T> task = tasks.get(i);
+            String source = dataSources.get(i) != null ? dataSources.get(i) : DEFAULT_SOURCE;
+            futures.add(submit(executor, task, source));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            cancel(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * 异步提交单个任务（受数据源并发限制），由调用方决定等待多久
+     */
+    public <T> Future<T> submit(Task<T> task, String dataSource) {
+        return submit(pool(), task, dataSource != null ? dataSource : DEFAULT_SOURCE);
+    }
+
+    private <T> Future<T> submit(ExecutorService executor, Task<T> task, String source) {
+        // 工作负载标记与批量查询范围随任务传到执行线程
+        String workload = ReadRouting.current();
+        MetricBatchScope scope = MetricBatchScope.current();
+        FutureTask<T> future = new FutureTask<>(() -> runInWorker(workload, scope, task));
+        SourceQueue queue = queues.computeIfAbsent(source, k -> new SourceQueue());
+        Runnable job = () -> {
+            try {
+                future.run();
+            } finally {
+                runNext(executor, queue);
+            }
+        };
+        // 先占用数据源名额再提交到线程池；名额已满时排队，由同一数据源的任务结束时接力提交
+        synchronized (queue) {
+            if (queue.running >= Math.max(1, perDataSource)) {
+                queue.pending.add(job);
+                return future;
+            }
+            queue.running++;
+        }
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            synchronized (queue) {
+                queue.running--;
+            }
+            throw e;
+        }
+        return future;
+    }
+
+    private void runNext(ExecutorService executor, SourceQueue queue) {
+        Runnable next;
+        synchronized (queue) {
+            next = queue.pending.poll();
+            if (next == null) {
+                queue.running--;
+                return;
+            }
+        }
+        try {
+            executor.execute(next);
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭：丢弃剩余排队任务
+            synchronized (queue) {
+                queue.running--;
+                queue.pending.clear();
+            }
+        }
+    }
+
+    private <T> T runInWorker(String workload, MetricBatchScope scope, Task<T> task) throws Exception {
+        IN_WORKER.set(Boolean.TRUE);
+        try {
+            Task<T> scoped = scope != null ? () -> MetricBatchScope.call(scope, task) : task;
+            return workload != null ? ReadRouting.call(workload, scoped::call) : scoped.call();
+        } finally {
+            IN_WORKER.remove();
+        }
+    }
+
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private ExecutorService pool() {
+        ExecutorService current = pool;
+        if (current == null) {
+            synchronized (this) {
+                current = pool;
+                if (current == null) {
+                    AtomicInteger counter = new AtomicInteger();
+                    current = Executors.newFixedThreadPool(maxThreads, r -> {
+                        Thread thread = new Thread(r, "metric-eval-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    pool = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("max_threads", maxThreads);
+        stats.put("per_datasource", perDataSource);
+        Map<String, Integer> running = new TreeMap<>();
+        Map<String, Integer> queued = new TreeMap<>();
+        queues.forEach((source, queue) -> {
+            synchronized (queue) {
+                running.put(source, queue.running);
+                queued.put(source, queue.pending.size());
+            }
+        });
+        stats.put("running_by_datasource", running);
+        stats.put("queued_by_datasource", queued);
+        return stats;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        ExecutorService current = pool;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.mypalantir.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.mypalantir.meta.Loader;
@@ -7,6 +10,7 @@ import com.mypalantir.meta.ObjectType;
 import com.mypalantir.meta.OntologySchema;
 import com.mypalantir.meta.Parser;
 import com.mypalantir.meta.Validator;
+import com.mypalantir.repository.GraphSchemaManager;
 
 import java.io.File;
 import java.io.IOException;
@@ -19,11 +23,17 @@ import java.util.List;
  */
 @Service
 public class OntologyModelService {
+    private static final Logger logger = LoggerFactory.getLogger(OntologyModelService.class);
+
     private final String ontologyDir = "./ontology";
     private final Loader loader;
     private final OntologySummaryService ontologySummaryService;
     private String currentModelId;
     private String currentModelPath;
+
+    /** 切换模型后为新本体创建缺失的图约束与索引 */
+    @Autowired(required = false)
+    private GraphSchemaManager graphSchemaManager;
     
     public OntologyModelService(Loader loader, OntologySummaryService ontologySummaryService) {
         this.loader = loader;
@@ -94,6 +104,15 @@ public class OntologyModelService {
         
         // 清除OntologySummaryService的缓存，确保使用新的schema
         ontologySummaryService.clearCache();
+
+        // 新模型的对象/关系类型可能尚无图约束与索引；失败不影响模型切换
+        if (graphSchemaManager != null && graphSchemaManager.isAvailable()) {
+            try {
+                graphSchemaManager.ensureSchema();
+            } catch (Exception e) {
+                logger.warn("[OntologyModelService] Failed to ensure graph constraints/indexes for model {}: {}", modelId, e.getMessage());
+            }
+        }
     }
     
     /**
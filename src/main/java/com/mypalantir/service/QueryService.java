@@ -14,6 +14,7 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.*;
 
 /**
@@ -31,6 +32,10 @@ public class QueryService {
     private QueryExecutor executor;
     private FederatedCalciteRunner federatedRunner;
 
+    /** 小维度类型内存热层（联邦查询中替代远端维度表） */
+    @Autowired(required = false)
+    private DimensionHotTier hotTier;
+
     @Autowired
     public QueryService(Loader loader, @Lazy IInstanceStorage instanceStorage,
                        MappingService mappingService, DatabaseMetadataService databaseMetadataService,
@@ -53,8 +58,44 @@ public class QueryService {
 
     /**
      * 执行查询（直接使用 OntologyQuery，避免 Map → OntologyQuery 的信息丢失）
+     * 调用方未标记工作负载时按 OntologyQuery 只读查询处理，可路由到只读副本
      */
     public QueryExecutor.QueryResult executeQuery(OntologyQuery query) throws Exception {
+        if (ReadRouting.current() == null) {
+            return ReadRouting.call(ReadRouting.QUERY, () -> doExecuteQuery(query));
+        }
+        return doExecuteQuery(query);
+    }
+
+    /**
+     * 解析并校验查询（Map 形式的 DSL），用于在开始流式输出前发现错误
+     */
+    public OntologyQuery parseQuery(Map<String, Object> queryMap) throws Exception {
+        OntologyQuery query = parser.parseMap(queryMap);
+        validateQuery(query);
+        return query;
+    }
+
+    /**
+     * 流式执行查询：逐行回调，不在内存中累积结果，用于导出
+     * @return 读取的行数
+     */
+    public long streamQuery(OntologyQuery query, QueryExecutor.RowConsumer consumer) throws Exception {
+        if (ReadRouting.current() == null) {
+            return ReadRouting.call(ReadRouting.QUERY, () -> doStreamQuery(query, consumer));
+        }
+        return doStreamQuery(query, consumer);
+    }
+
+    private long doStreamQuery(OntologyQuery query, QueryExecutor.RowConsumer consumer) throws Exception {
+        validateQuery(query);
+        if (executionRouter.route(query) == ExecutionRouter.ExecutionMode.FEDERATED) {
+            return federatedRunner().stream(query, consumer);
+        }
+        return executor().stream(query, consumer);
+    }
+
+    private QueryExecutor.QueryResult doExecuteQuery(OntologyQuery query) throws Exception {
         if (logger.isDebugEnabled()) {
             logger.debug("Parsed OntologyQuery: object={}, select={}, filter={}, links={}, groupBy={}, metrics={}, limit={}",
                 query.getFrom(), query.getSelect(), query.getFilter(),
@@ -68,17 +109,25 @@ public class QueryService {
         ExecutionRouter.ExecutionMode mode = executionRouter.route(query);
 
         if (mode == ExecutionRouter.ExecutionMode.FEDERATED) {
-            if (federatedRunner == null) {
-                federatedRunner = new FederatedCalciteRunner(loader, instanceStorage, mappingService, databaseMetadataService);
-            }
-            return federatedRunner.execute(query);
+            return federatedRunner().execute(query);
         } else {
-            if (executor == null) {
-                executor = new QueryExecutor(loader, instanceStorage, mappingService, databaseMetadataService);
-                executor.initialize();
-            }
-            return executor.execute(query);
+            return executor().execute(query);
+        }
+    }
+
+    private FederatedCalciteRunner federatedRunner() {
+        if (federatedRunner == null) {
+            federatedRunner = new FederatedCalciteRunner(loader, instanceStorage, mappingService, databaseMetadataService, hotTier);
+        }
+        return federatedRunner;
+    }
+
+    private QueryExecutor executor() throws SQLException {
+        if (executor == null) {
+            executor = new QueryExecutor(loader, instanceStorage, mappingService, databaseMetadataService);
+            executor.initialize();
         }
+        return executor;
     }
 
     /**
@@ -122,8 +171,8 @@ public class QueryService {
         queryMap.put("limit", 1);
         queryMap.put("offset", 0);
 
-        // 执行查询
-        QueryExecutor.QueryResult result = executeQuery(queryMap);
+        // 执行查询（按 ID 读取实例需要读到刚写入的数据，固定使用主库）
+        QueryExecutor.QueryResult result = ReadRouting.call(ReadRouting.PRIMARY, () -> executeQuery(queryMap));
         
         if (result.getRows().isEmpty()) {
             throw new IOException("instance not found");
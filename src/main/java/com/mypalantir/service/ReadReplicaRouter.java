@@ -0,0 +1,374 @@
+package com.mypalantir.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 只读副本路由：按工作负载把读连接分配到延迟在阈值内的副本（轮询），
+ * 副本不可用、延迟超限或复制中断时回退主库。副本延迟按检查间隔惰性探测。
+ */
+public class ReadReplicaRouter {
+    private static final Logger logger = LoggerFactory.getLogger(ReadReplicaRouter.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 副本配置（database 实例的 read_replicas 项），未填写的字段沿用主库
+     */
+    public static final class ReplicaSpec {
+        String url;
+        String host;
+        Integer port;
+        String databaseName;
+        String username;
+        String password;
+        Long maxLagMs;
+        String lagQuery;
+
+        public String getUrl() { return url; }
+        public String getHost() { return host; }
+        public Integer getPort() { return port; }
+        public String getDatabaseName() { return databaseName; }
+        public String getUsername() { return username; }
+        public String getPassword() { return password; }
+        public Long getMaxLagMs() { return maxLagMs; }
+        public String getLagQuery() { return lagQuery; }
+    }
+
+    /**
+     * 单个只读副本及其最近一次探测状态
+     */
+    public static final class Replica {
+        final String name;
+        final DataSource dataSource;
+        final String dbType;
+        final long maxLagMs;
+        final String lagQuery;
+        volatile boolean healthy = true;
+        volatile long lagMs = -1;
+        volatile long checkedAt = Long.MIN_VALUE;
+        volatile String error;
+        final AtomicLong routed = new AtomicLong();
+
+        public Replica(String name, DataSource dataSource, String dbType, long maxLagMs, String lagQuery) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.dbType = dbType;
+            this.maxLagMs = maxLagMs;
+            this.lagQuery = lagQuery;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", name);
+            map.put("healthy", healthy);
+            map.put("lag_ms", lagMs >= 0 ? lagMs : null);
+            map.put("max_lag_ms", maxLagMs);
+            map.put("routed", routed.get());
+            map.put("error", error);
+            return map;
+        }
+    }
+
+    /**
+     * 一个数据源的主库与副本
+     */
+    public static final class ReplicaSet {
+        final DataSource primary;
+        final List<Replica> replicas;
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicLong primaryReads = new AtomicLong();
+        final AtomicLong fallbacks = new AtomicLong();
+
+        public ReplicaSet(DataSource primary, List<Replica> replicas) {
+            this.primary = primary;
+            this.replicas = replicas;
+        }
+
+        public boolean hasReplicas() {
+            return !replicas.isEmpty();
+        }
+
+        /**
+         * 关闭副本连接池（主库连接池由 DatabaseMetadataService 管理）
+         */
+        void close() {
+            for (Replica replica : replicas) {
+                if (replica.dataSource instanceof AutoCloseable) {
+                    try {
+                        ((AutoCloseable) replica.dataSource).close();
+                    } catch (Exception e) {
+                        logger.warn("[ReadReplicaRouter] Failed to close replica {}: {}", replica.name, e.getMessage());
+                    }
+                }
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("primary_reads", primaryReads.get());
+            map.put("fallbacks", fallbacks.get());
+            List<Map<String, Object>> list = new ArrayList<>();
+            for (Replica replica : replicas) {
+                list.add(replica.toMap());
+            }
+            map.put("replicas", list);
+            return map;
+        }
+    }
+
+    private final Set<String> workloads;
+    private final long checkIntervalMs;
+    private final LongSupplier clock;
+
+    public ReadReplicaRouter(Collection<String> workloads, long checkIntervalMs) {
+        this(workloads, checkIntervalMs, System::currentTimeMillis);
+    }
+
+    ReadReplicaRouter(Collection<String> workloads, long checkIntervalMs, LongSupplier clock) {
+        this.workloads = new HashSet<>(workloads);
+        this.checkIntervalMs = Math.max(0, checkIntervalMs);
+        this.clock = clock;
+    }
+
+    public boolean routes(String workload) {
+        return workload != null && workloads.contains(workload);
+    }
+
+    /**
+     * 获取读连接：工作负载允许时轮询选择可用副本，副本取连接失败则标记不可用并回退主库
+     */
+    public Connection getConnection(ReplicaSet set, String workload) throws SQLException {
+        if (routes(workload) && set.hasReplicas()) {
+            int size = set.replicas.size();
+            int start = Math.floorMod(set.next.getAndIncrement(), size);
+            for (int i = 0; i < size; i++) {
+                Replica replica = set.replicas.get((start + i) % size);
+                if (!isAvailable(replica)) {
+                    continue;
+                }
+                try {
+                    Connection conn = replica.dataSource.getConnection();
+                    replica.routed.incrementAndGet();
+                    return conn;
+                } catch (SQLException e) {
+                    markUnhealthy(replica, e.getMessage());
+                }
+            }
+            set.fallbacks.incrementAndGet();
+        }
+        set.primaryReads.incrementAndGet();
+        return set.primary.getConnection();
+    }
+
+    /**
+     * 包装为 DataSource，每次 getConnection 按 workload 提供的工作负载路由（供 Calcite JdbcSchema 等按需取连接的场景）
+     */
+    public DataSource routingDataSource(ReplicaSet set, Supplier<String> workload) {
+        return new RoutingDataSource(this, set, workload);
+    }
+
+    /**
+     * 副本是否可用：超过检查间隔时重新探测延迟
+     */
+    boolean isAvailable(Replica replica) {
+        long now = clock.getAsLong();
+        if (replica.checkedAt == Long.MIN_VALUE || now - replica.checkedAt >= checkIntervalMs) {
+            synchronized (replica) {
+                if (replica.checkedAt == Long.MIN_VALUE || now - replica.checkedAt >= checkIntervalMs) {
+                    check(replica, now);
+                }
+            }
+        }
+        return replica.healthy;
+    }
+
+    private void check(Replica replica, long now) {
+        replica.checkedAt = now;
+        try (Connection conn = replica.dataSource.getConnection()) {
+            Long lag = probeLagMs(conn, replica.dbType, replica.lagQuery);
+            if (lag == null) {
+                replica.lagMs = -1;
+                markUnhealthy(replica, "replication is not running");
+            } else if (lag > replica.maxLagMs) {
+                replica.lagMs = lag;
+                markUnhealthy(replica, "lag " + lag + "ms exceeds " + replica.maxLagMs + "ms");
+            } else {
+                replica.lagMs = lag;
+                replica.healthy = true;
+                replica.error = null;
+            }
+        } catch (SQLException e) {
+            markUnhealthy(replica, e.getMessage());
+        }
+    }
+
+    private void markUnhealthy(Replica replica, String error) {
+        if (replica.healthy) {
+            logger.warn("[ReadReplicaRouter] Replica {} unavailable, reads fall back to primary: {}", replica.name, error);
+        }
+        replica.healthy = false;
+        replica.error = error;
+        replica.checkedAt = clock.getAsLong();
+    }
+
+    /**
+     * 探测复制延迟（毫秒）：配置了 lag_query 时执行它（返回毫秒），否则按数据库类型读取复制状态；
+     * 返回 null 表示复制已中断，无法判断延迟的数据库视为 0
+     */
+    static Long probeLagMs(Connection conn, String dbType, String lagQuery) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setQueryTimeout(5);
+            if (lagQuery != null && !lagQuery.isEmpty()) {
+                try (ResultSet rs = stmt.executeQuery(lagQuery)) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    long lag = rs.getLong(1);
+                    return rs.wasNull() ? null : lag;
+                }
+            }
+            if ("mysql".equals(dbType) || "doris".equals(dbType)) {
+                // MySQL 8.0.22 起为 SHOW REPLICA STATUS，旧版本为 SHOW SLAVE STATUS
+                String sql = "SHOW REPLICA STATUS";
+                String column = "Seconds_Behind_Source";
+                ResultSet rs;
+                try {
+                    rs = stmt.executeQuery(sql);
+                } catch (SQLException e) {
+                    column = "Seconds_Behind_Master";
+                    rs = stmt.executeQuery("SHOW SLAVE STATUS");
+                }
+                try (ResultSet status = rs) {
+                    if (!status.next()) {
+                        return 0L;
+                    }
+                    long seconds = status.getLong(column);
+                    return status.wasNull() ? null : seconds * 1000;
+                }
+            }
+            if ("postgresql".equals(dbType) || "postgres".equals(dbType)) {
+                try (ResultSet rs = stmt.executeQuery("SELECT CASE WHEN pg_is_in_recovery() "
+                        + "THEN COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) ELSE 0 END")) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            }
+            return conn.isValid(5) ? 0L : null;
+        }
+    }
+
+    /**
+     * 解析 database 实例的 read_replicas（JSON 数组字符串或列表）
+     */
+    @SuppressWarnings("unchecked")
+    public static List<ReplicaSpec> parseSpecs(Object value) throws IOException {
+        if (value == null || (value instanceof String && ((String) value).isBlank())) {
+            return Collections.emptyList();
+        }
+        List<Object> items = value instanceof String
+            ? objectMapper.readValue((String) value, new TypeReference<List<Object>>() {})
+            : value instanceof List ? (List<Object>) value : List.of(value);
+        List<ReplicaSpec> specs = new ArrayList<>();
+        for (Object item : items) {
+            ReplicaSpec spec = new ReplicaSpec();
+            if (item instanceof String) {
+                spec.url = (String) item;
+            } else if (item instanceof Map) {
+                Map<String, Object> map = (Map<String, Object>) item;
+                spec.url = stringValue(map.get("url"));
+                spec.host = stringValue(map.get("host"));
+                spec.port = map.get("port") != null ? Integer.valueOf(map.get("port").toString()) : null;
+                spec.databaseName = stringValue(map.get("database_name"));
+                spec.username = stringValue(map.get("username"));
+                spec.password = stringValue(map.get("password"));
+                spec.maxLagMs = map.get("max_lag_ms") != null ? Long.valueOf(map.get("max_lag_ms").toString()) : null;
+                spec.lagQuery = stringValue(map.get("lag_query"));
+            } else {
+                throw new IOException("Invalid read replica entry: " + item);
+            }
+            if (spec.url == null && spec.host == null) {
+                throw new IOException("Read replica requires url or host");
+            }
+            specs.add(spec);
+        }
+        return specs;
+    }
+
+    private static String stringValue(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * 按工作负载路由的 DataSource，其余方法委托主库
+     */
+    private static final class RoutingDataSource implements DataSource {
+        private final ReadReplicaRouter router;
+        private final ReplicaSet set;
+        private final Supplier<String> workload;
+
+        RoutingDataSource(ReadReplicaRouter router, ReplicaSet set, Supplier<String> workload) {
+            this.router = router;
+            this.set = set;
+            this.workload = workload;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return router.getConnection(set, workload.get());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return set.primary.getConnection(username, password);
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return set.primary.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            set.primary.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            set.primary.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return set.primary.getLoginTimeout();
+        }
+
+        @Override
+        public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return set.primary.getParentLogger();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            if (iface.isInstance(this)) {
+                return iface.cast(this);
+            }
+            return set.primary.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return iface.isInstance(this) || set.primary.isWrapperFor(iface);
+        }
+    }
+}
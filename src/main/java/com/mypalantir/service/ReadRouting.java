@@ -0,0 +1,49 @@
+package com.mypalantir.service;
+
+/**
+ * 当前线程的只读工作负载标记，决定数据源读连接是否可以路由到只读副本。
+ * 未标记的读写（实例写入、同步表 upsert、抽取等）始终使用主库。
+ */
+public final class ReadRouting {
+    /** OntologyQuery 查询 */
+    public static final String QUERY = "query";
+    /** 指标计算 */
+    public static final String METRIC = "metric";
+    /** 数据对比 */
+    public static final String COMPARISON = "comparison";
+    /** 强制主库（按 ID 读取实例等需要读到刚写入数据的场景） */
+    public static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<String> WORKLOAD = new ThreadLocal<>();
+
+    public interface Action<T> {
+        T run() throws Exception;
+    }
+
+    private ReadRouting() {
+    }
+
+    /**
+     * 在指定工作负载下执行，结束后恢复外层标记
+     */
+    public static <T> T call(String workload, Action<T> action) throws Exception {
+        String previous = WORKLOAD.get();
+        WORKLOAD.set(workload);
+        try {
+            return action.run();
+        } finally {
+            if (previous == null) {
+                WORKLOAD.remove();
+            } else {
+                WORKLOAD.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 当前线程的工作负载，未标记时为 null
+     */
+    public static String current() {
+        return WORKLOAD.get();
+    }
+}
@@ -14,6 +14,7 @@ import java.util.Map;
 
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 class DatabaseControllerTest {
@@ -51,4 +52,16 @@ class DatabaseControllerTest {
             .andExpect(status().isOk())
             .andExpect(jsonPath("$.data[0].id").value("db1"));
     }
+
+    @Test
+    void refreshMetadataCache_invalidatesAndReloadsTables() throws Exception {
+        when(databaseMetadataService.invalidateMetadata("db1", null)).thenReturn(3);
+        when(databaseMetadataService.getTables("db1")).thenReturn(List.of(Map.of("name", "t1"), Map.of("name", "t2")));
+
+        mockMvc.perform(post("/api/v1/database/metadata-cache/refresh").param("databaseId", "db1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.data.invalidated").value(3))
+            .andExpect(jsonPath("$.data.tables").value(2));
+        verify(databaseMetadataService).invalidateMetadata("db1", null);
+    }
 }
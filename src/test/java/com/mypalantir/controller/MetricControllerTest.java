@@ -1,12 +1,15 @@
 package com.mypalantir.controller;
 
 import com.mypalantir.metric.AtomicMetric;
+import com.mypalantir.metric.MetricResult;
 import com.mypalantir.service.AtomicMetricService;
+import com.mypalantir.service.MetricBatchService;
 import com.mypalantir.service.MetricCalculator;
 import com.mypalantir.service.MetricService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
@@ -25,15 +28,17 @@ class MetricControllerTest {
     private AtomicMetricService atomicMetricService;
     private MetricService metricService;
     private MetricCalculator metricCalculator;
+    private MetricBatchService metricBatchService;
 
     @BeforeEach
     void setUp() {
         atomicMetricService = mock(AtomicMetricService.class);
         metricService = mock(MetricService.class);
         metricCalculator = mock(MetricCalculator.class);
-        mockMvc = MockMvcBuilders.standaloneSetup(
-            new MetricController(atomicMetricService, metricService, metricCalculator)
-        ).build();
+        metricBatchService = mock(MetricBatchService.class);
+        MetricController controller = new MetricController(atomicMetricService, metricService, metricCalculator);
+        ReflectionTestUtils.setField(controller, "metricBatchService", metricBatchService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
     }
 
     @Test
@@ -91,4 +96,25 @@ class MetricControllerTest {
         mockMvc.perform(delete("/api/v1/metrics/atomic-metrics/m1"))
             .andExpect(status().isOk());
     }
+
+    @Test
+    void batchQuery_returnsPerItemResultsAndErrors() throws Exception {
+        MetricResult ok = new MetricResult();
+        ok.setMetricId("m1");
+        ok.setResults(List.of(Map.of("total", 10)));
+        MetricResult failed = new MetricResult();
+        failed.setMetricId("m2");
+        failed.setResults(List.of());
+        failed.setError("Timed out after 500 ms");
+        MetricBatchService.BatchResult batch = mock(MetricBatchService.BatchResult.class);
+        when(batch.getResults()).thenReturn(List.of(ok, failed));
+        when(metricBatchService.execute(anyList(), eq(500L))).thenReturn(batch);
+
+        mockMvc.perform(post("/api/v1/metrics/query/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"timeout_ms\":500,\"queries\":[{\"metric_id\":\"m1\"},{\"metric_id\":\"m2\"}]}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.data[0].results[0].total").value(10))
+            .andExpect(jsonPath("$.data[1].error").value("Timed out after 500 ms"));
+    }
 }
@@ -0,0 +1,68 @@
+package com.mypalantir.metric;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricFormulaTest {
+
+    @Test
+    void evaluatesWithOperatorPrecedenceAndParentheses() {
+        MetricFormula formula = MetricFormula.compile("({fee} - {discount}) / {count} * 100 + -2");
+        assertEquals(Set.of("fee", "discount", "count"), formula.getVariables());
+        Map<String, Number> values = Map.of("fee", 1200, "discount", 200, "count", 50);
+        assertEquals(1998.0, formula.evaluate(values), 1e-9);
+
+        assertEquals(7.0, MetricFormula.compile("1 + 2 * 3").evaluate(Map.of()), 1e-9);
+        assertEquals(1.0, MetricFormula.compile("10 % 3").evaluate(Map.of()), 1e-9);
+        assertEquals(0.0, MetricFormula.compile("10 - 4 - 6").evaluate(Map.of()), 1e-9);
+        assertEquals(1.5e3, MetricFormula.compile("1.5e3").evaluate(Map.of()), 1e-9);
+    }
+
+    @Test
+    void returnsNullForMissingValuesAndDivisionByZero() {
+        MetricFormula ratio = MetricFormula.compile("{a} / {b}");
+        Map<String, Number> values = new HashMap<>();
+        values.put("a", 5);
+        assertNull(ratio.evaluate(values));
+        values.put("b", 0);
+        assertNull(ratio.evaluate(values));
+        values.put("b", 2.5);
+        assertEquals(2.0, ratio.evaluate(values), 1e-9);
+    }
+
+    @Test
+    void rejectsMalformedFormulas() {
+        assertThrows(IllegalArgumentException.class, () -> MetricFormula.compile("{a} +"));
+        assertThrows(IllegalArgumentException.class, () -> MetricFormula.compile("({a} + 1"));
+        assertThrows(IllegalArgumentException.class, () -> MetricFormula.compile("{a} ^ 2"));
+        assertThrows(IllegalArgumentException.class, () -> MetricFormula.compile("{a"));
+        assertThrows(IllegalArgumentException.class, () -> MetricFormula.compile(" "));
+    }
+
+    @Test
+    void visitorWalksCompiledTree() {
+        String rendered = MetricFormula.compile("-{a} + 2 * {b}").accept(new MetricFormula.Visitor<String>() {
+            public String constant(double value) {
+                return String.valueOf(value);
+            }
+
+            public String variable(String metricId) {
+                return metricId.toUpperCase();
+            }
+
+            public String negate(String operand) {
+                return "neg(" + operand + ")";
+            }
+
+            public String binary(char operator, String left, String right) {
+                return "(" + left + operator + right + ")";
+            }
+        });
+        assertEquals("(neg(A)+(2.0*B))", rendered);
+    }
+}
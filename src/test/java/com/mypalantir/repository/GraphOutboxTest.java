@@ -0,0 +1,225 @@
+package com.mypalantir.repository;
+
+import com.mypalantir.meta.DataSourceMapping;
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 图摘要写后队列（H2 MySQL 模式 outbox 表 + 模拟图存储）
+ */
+class GraphOutboxTest {
+
+    private static final String URL = "jdbc:h2:mem:graph_outbox;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private Connection connection;
+    private IInstanceStorage graphStorage;
+    private final Map<String, List<String>> flushedIds = new LinkedHashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        connection = DriverManager.getConnection(URL);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + GraphOutbox.TABLE);
+        }
+        graphStorage = mock(IInstanceStorage.class);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        connection.close();
+    }
+
+    private GraphOutbox outbox(long retryBackoffMs) {
+        GraphOutbox outbox = new GraphOutbox(() -> DriverManager.getConnection(URL), 100, 0, retryBackoffMs, 60_000);
+        outbox.start(graphStorage, (type, ids) -> flushedIds.computeIfAbsent(type, k -> new ArrayList<>()).addAll(ids));
+        return outbox;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void coalescesRepeatedChangesAndFlushesInOneBatchPerType() throws Exception {
+        GraphOutbox outbox = outbox(1_000);
+        outbox.enqueueUpsert("vehicle", "v1", Map.of("vlp", "A1"));
+        outbox.enqueueUpsert("vehicle", "v1", Map.of("vehicle_type", 2));
+        outbox.enqueueUpsert("vehicle", "v2", Map.of("vlp", "B2"));
+        outbox.enqueueUpsert("vehicle", "v3", Map.of("vlp", "C3"));
+        outbox.enqueueDelete("vehicle", "v3");
+
+        Map<String, Object> stats = outbox.stats();
+        assertEquals(3L, stats.get("pending"));
+        assertEquals(2L, stats.get("coalesced_total"));
+        assertTrue((Long) stats.get("lag_ms") >= 0);
+
+        when(graphStorage.batchMergeInstances(eq("vehicle"), anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(1)).size());
+        assertEquals(3, outbox.drain());
+
+        verify(graphStorage, times(1)).batchMergeInstances(eq("vehicle"), argThat(rows -> {
+            Map<String, Object> v1 = ((List<Map<String, Object>>) (List<?>) rows).get(0);
+            return rows.size() == 2 && "A1".equals(v1.get("vlp")) && Integer.valueOf(2).equals(v1.get("vehicle_type"))
+                && "v1".equals(v1.get("id"));
+        }));
+        verify(graphStorage).deleteInstance("vehicle", "v3");
+        assertEquals(Set.of("v1", "v2", "v3"), new HashSet<>(flushedIds.get("vehicle")));
+        assertEquals(0L, outbox.stats().get("pending"));
+        assertEquals(0L, outbox.stats().get("lag_ms"));
+    }
+
+    @Test
+    void failedBatchIsRetriedAfterBackoff() throws Exception {
+        GraphOutbox outbox = outbox(60_000);
+        outbox.enqueueUpsert("vehicle", "v1", Map.of("vlp", "A1"));
+        when(graphStorage.batchMergeInstances(eq("vehicle"), anyList())).thenThrow(new IOException("graph unavailable"));
+
+        assertEquals(0, outbox.drain());
+        Map<String, Object> stats = outbox.stats();
+        assertEquals(1L, stats.get("pending"));
+        assertEquals(1L, stats.get("failing"));
+        assertEquals("graph unavailable", stats.get("last_error"));
+
+        // 退避期内不再重试
+        outbox.drain();
+        verify(graphStorage, times(1)).batchMergeInstances(eq("vehicle"), anyList());
+
+        // 新的变更重置退避，立即重试
+        reset(graphStorage);
+        when(graphStorage.batchMergeInstances(eq("vehicle"), anyList())).thenReturn(1);
+        outbox.enqueueUpsert("vehicle", "v1", Map.of("vehicle_type", 1));
+        assertEquals(1, outbox.drain());
+        assertEquals(0L, outbox.stats().get("pending"));
+
+        assertEquals(60_000, outbox.backoff(0));
+        GraphOutbox quick = new GraphOutbox(() -> DriverManager.getConnection(URL), 10, 0, 100, 1_000);
+        assertEquals(400, quick.backoff(2));
+        assertEquals(1_000, quick.backoff(10));
+    }
+
+    @Test
+    void changeDuringFlushIsKeptForNextRound() throws Exception {
+        GraphOutbox outbox = outbox(0);
+        outbox.enqueueUpsert("vehicle", "v1", Map.of("vlp", "A1"));
+        List<Object> mergedPlates = new ArrayList<>();
+        when(graphStorage.batchMergeInstances(eq("vehicle"), anyList())).thenAnswer(inv -> {
+            List<Map<String, Object>> rows = inv.getArgument(1);
+            mergedPlates.add(rows.get(0).get("vlp"));
+            if (mergedPlates.size() == 1) {
+                outbox.enqueueUpsert("vehicle", "v1", Map.of("vlp", "A2"));
+            }
+            return rows.size();
+        });
+
+        outbox.drain();
+        assertEquals(1L, outbox.stats().get("pending"));
+        outbox.drain();
+        assertEquals(List.of("A1", "A2"), mergedPlates);
+        assertEquals(0L, outbox.stats().get("pending"));
+    }
+
+    @Test
+    void upsertAfterPendingDeleteFlushesAsDeleteThenMerge() throws Exception {
+        GraphOutbox outbox = outbox(1_000);
+        outbox.enqueueUpsert("vehicle", "v1", Map.of("vlp", "A1", "owner", "old"));
+        outbox.enqueueDelete("vehicle", "v1");
+        outbox.enqueueUpsert("vehicle", "v1", Map.of("vlp", "A2"));
+        outbox.enqueueUpsert("vehicle", "v1", Map.of("vehicle_type", 2));
+
+        GraphOutbox.Pending pending = outbox.pending("vehicle", "v1");
+        assertTrue(pending.isReplace());
+        assertEquals(Map.of("id", "v1", "vlp", "A2", "vehicle_type", 2), pending.getSummary());
+
+        doThrow(new InstanceNotFoundException()).when(graphStorage).deleteInstance("vehicle", "v1");
+        when(graphStorage.batchMergeInstances(eq("vehicle"), anyList())).thenReturn(1);
+        assertEquals(1, outbox.drain());
+
+        var order = inOrder(graphStorage);
+        order.verify(graphStorage).deleteInstance("vehicle", "v1");
+        order.verify(graphStorage).batchMergeInstances("vehicle", List.of(Map.of("id", "v1", "vlp", "A2", "vehicle_type", 2)));
+        assertNull(outbox.pending("vehicle", "v1"));
+    }
+
+    private HybridInstanceStorage writeBehindStorage(GraphOutbox outbox) throws Exception {
+        HybridInstanceStorage storage = new HybridInstanceStorage();
+        ReflectionTestUtils.setField(storage, "graphStorage", graphStorage);
+        Loader loader = mock(Loader.class);
+        ObjectType vehicle = new ObjectType();
+        DataSourceMapping mapping = new DataSourceMapping();
+        mapping.setConnectionId("db1");
+        mapping.setTable("vehicle");
+        mapping.setIdColumn("id");
+        vehicle.setDataSource(mapping);
+        when(loader.getObjectType("vehicle")).thenReturn(vehicle);
+        when(loader.getObjectType("mapping")).thenReturn(new ObjectType());
+        ReflectionTestUtils.setField(storage, "loader", loader);
+        ReflectionTestUtils.setField(storage, "environment",
+            new MockEnvironment().withProperty("storage.neo4j.fields.default", "id,vlp"));
+        storage.setGraphOutbox(outbox);
+        return storage;
+    }
+
+    @Test
+    void hybridStorage_writesMappedTypesBehindAndSystemTypesSynchronously() throws Exception {
+        GraphOutbox outbox = new GraphOutbox(() -> DriverManager.getConnection(URL), 100, 0, 0, 0);
+        HybridInstanceStorage storage = writeBehindStorage(outbox);
+        when(graphStorage.getInstance("vehicle", "v1")).thenReturn(new HashMap<>(Map.of("id", "v1", "vlp", "A0")));
+
+        storage.updateInstance("vehicle", "v1", Map.of("vlp", "A1", "detail", "not in graph"));
+        storage.deleteInstance("vehicle", "v2");
+        storage.updateInstance("mapping", "m1", Map.of("id", "m1"));
+        verify(graphStorage, never()).updateInstance(eq("vehicle"), anyString(), anyMap());
+        verify(graphStorage, never()).deleteInstance(anyString(), anyString());
+        verify(graphStorage).updateInstance(eq("mapping"), eq("m1"), anyMap());
+        assertEquals(2L, storage.getGraphOutboxStats().get("pending"));
+
+        storage.startGraphOutbox();
+        when(graphStorage.batchMergeInstances(eq("vehicle"), anyList())).thenReturn(1);
+        outbox.drain();
+        verify(graphStorage).batchMergeInstances("vehicle", List.of(Map.of("id", "v1", "vlp", "A1")));
+        verify(graphStorage).deleteInstance("vehicle", "v2");
+    }
+
+    @Test
+    void hybridStorage_updateOfMissingInstanceIsRejectedBeforeEnqueue() throws Exception {
+        GraphOutbox outbox = new GraphOutbox(() -> DriverManager.getConnection(URL), 100, 0, 0, 0);
+        HybridInstanceStorage storage = writeBehindStorage(outbox);
+        when(graphStorage.getInstance("vehicle", "ghost")).thenThrow(new InstanceNotFoundException());
+
+        assertThrows(InstanceNotFoundException.class, () -> storage.updateInstance("vehicle", "ghost", Map.of("vlp", "A1")));
+        assertEquals(0L, storage.getGraphOutboxStats().get("pending"));
+
+        // 删除未刷新时同样视为不存在
+        when(graphStorage.getInstance("vehicle", "v1")).thenReturn(new HashMap<>(Map.of("id", "v1")));
+        storage.deleteInstance("vehicle", "v1");
+        assertThrows(InstanceNotFoundException.class, () -> storage.updateInstance("vehicle", "v1", Map.of("vlp", "A1")));
+    }
+
+    @Test
+    void hybridStorage_readsPendingWritesBeforeFlush() throws Exception {
+        GraphOutbox outbox = new GraphOutbox(() -> DriverManager.getConnection(URL), 100, 0, 0, 0);
+        HybridInstanceStorage storage = writeBehindStorage(outbox);
+        RelationalInstanceStorage relationalStorage = mock(RelationalInstanceStorage.class);
+        when(relationalStorage.getInstance(eq("vehicle"), anyString())).thenThrow(new InstanceNotFoundException());
+        ReflectionTestUtils.setField(storage, "relationalStorage", relationalStorage);
+        when(graphStorage.getInstance(eq("vehicle"), anyString())).thenThrow(new InstanceNotFoundException());
+
+        String id = storage.createInstance("vehicle", Map.of("vlp", "A1"));
+        assertEquals("A1", storage.getInstance("vehicle", id).get("vlp"));
+
+        storage.updateInstance("vehicle", id, Map.of("vlp", "A2"));
+        assertEquals("A2", storage.getInstance("vehicle", id).get("vlp"));
+        verify(graphStorage, never()).createInstance(anyString(), anyMap());
+    }
+}
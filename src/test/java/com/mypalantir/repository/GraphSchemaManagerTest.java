@@ -0,0 +1,124 @@
+package com.mypalantir.repository;
+
+import com.mypalantir.meta.LinkType;
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.meta.OntologySchema;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class GraphSchemaManagerTest {
+
+    /**
+     * 内存中的图数据库方言：记录创建的约束/索引，指定项创建失败
+     */
+    private static class FakeBackend implements GraphSchemaManager.Backend {
+        final Set<GraphSchemaManager.IndexSpec> indexes = new HashSet<>();
+        final List<GraphSchemaManager.IndexSpec> createCalls = new ArrayList<>();
+        final Set<String> failing = new HashSet<>();
+
+        @Override
+        public String name() {
+            return "fake";
+        }
+
+        @Override
+        public Set<GraphSchemaManager.IndexSpec> existing() {
+            return new HashSet<>(indexes);
+        }
+
+        @Override
+        public void create(GraphSchemaManager.IndexSpec spec) throws IOException {
+            createCalls.add(spec);
+            if (failing.contains(spec.toString())) {
+                throw new IOException("duplicate ids");
+            }
+            indexes.add(spec);
+        }
+    }
+
+    private final FakeBackend backend = new FakeBackend();
+    private final OntologySchema schema = new OntologySchema();
+    private GraphSchemaManager manager;
+
+    @BeforeEach
+    void setUp() {
+        ObjectType vehicle = new ObjectType();
+        vehicle.setName("Vehicle");
+        ObjectType passage = new ObjectType();
+        passage.setName("Gantry-Passage");
+        schema.setObjectTypes(new ArrayList<>(List.of(vehicle, passage)));
+
+        LinkType link = new LinkType();
+        link.setName("passage-vehicle");
+        link.setSourceType("Gantry-Passage");
+        link.setTargetType("Vehicle");
+        link.setPropertyMappings(new LinkedHashMap<>(Map.of("vlp", "plate_num")));
+        schema.setLinkTypes(new ArrayList<>(List.of(link)));
+
+        Loader loader = mock(Loader.class);
+        when(loader.getSchema()).thenReturn(schema);
+        Map<String, List<String>> fields = Map.of("vehicle", List.of("id", "vlp", "vehicle_type", "bad field"));
+        manager = new GraphSchemaManager(backend, loader,
+            type -> fields.getOrDefault(type.toLowerCase(), List.of("id", "name")), true);
+    }
+
+    @Test
+    void requiredSpecs_coverLabelsFieldsLinkKeysAndRelationships() {
+        List<String> keys = GraphSchemaManager.requiredSpecs(schema,
+            type -> "Vehicle".equals(type) ? List.of("id", "vlp", "vehicle_type", "bad field") : List.of("id", "name"))
+            .stream().map(Object::toString).toList();
+
+        assertEquals(List.of(
+            "node_unique:Vehicle.id",
+            "node_index:Vehicle.vlp",
+            "node_index:Vehicle.vehicle_type",
+            "node_unique:GantryPassage.id",
+            "node_index:GantryPassage.name",
+            "relationship_index:PASSAGE_VEHICLE.id",
+            "node_index:GantryPassage.vlp",
+            "node_index:Vehicle.plate_num"), keys);
+    }
+
+    @Test
+    void ensureSchema_createsOnlyMissingAndIsIdempotent() throws Exception {
+        backend.indexes.add(new GraphSchemaManager.IndexSpec(GraphSchemaManager.KIND_NODE_UNIQUE, "Vehicle", "id"));
+        backend.failing.add("node_unique:GantryPassage.id");
+
+        Map<String, Object> first = manager.ensureSchema();
+        assertEquals(8, first.get("required"));
+        assertEquals(1, first.get("already_present"));
+        assertEquals(6, ((List<?>) first.get("created")).size());
+        List<?> failed = (List<?>) first.get("failed");
+        assertEquals(1, failed.size());
+        assertEquals("duplicate ids", ((Map<?, ?>) failed.get(0)).get("error"));
+
+        Map<String, Object> report = manager.report();
+        assertEquals(7, ((List<?>) report.get("present")).size());
+        List<?> missing = (List<?>) report.get("missing");
+        assertEquals("mp_uq_gantrypassage_id", ((Map<?, ?>) missing.get(0)).get("name"));
+        assertSame(first, report.get("last_ensure"));
+
+        // 再次执行只重试缺失项
+        backend.failing.clear();
+        backend.createCalls.clear();
+        Map<String, Object> second = manager.ensureSchema();
+        assertEquals(1, backend.createCalls.size());
+        assertEquals(7, second.get("already_present"));
+        assertTrue(manager.report().get("missing") instanceof List<?> list && list.isEmpty());
+    }
+
+    @Test
+    void unavailableWithoutBackend() {
+        GraphSchemaManager none = new GraphSchemaManager(null, mock(Loader.class), type -> List.of(), true);
+        assertFalse(none.isAvailable());
+        none.ensureOnStartup();
+        assertThrows(IllegalStateException.class, none::report);
+    }
+}
@@ -0,0 +1,182 @@
+package com.mypalantir.repository;
+
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * HybridInstanceStorage 读穿缓存
+ */
+class HybridInstanceStorageCacheTest {
+
+    private RelationalInstanceStorage relationalStorage;
+    private IInstanceStorage graphStorage;
+    private HybridInstanceStorage storage;
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        relationalStorage = mock(RelationalInstanceStorage.class);
+        graphStorage = mock(IInstanceStorage.class);
+        storage = new HybridInstanceStorage();
+        ReflectionTestUtils.setField(storage, "relationalStorage", relationalStorage);
+        ReflectionTestUtils.setField(storage, "graphStorage", graphStorage);
+        Loader loader = mock(Loader.class);
+        when(loader.getObjectType(anyString())).thenReturn(new ObjectType());
+        ReflectionTestUtils.setField(storage, "loader", loader);
+        ReflectionTestUtils.setField(storage, "environment",
+            new MockEnvironment().withProperty("storage.neo4j.fields.default", "id,name"));
+        storage.setInstanceCache(new InstanceCache(type -> "vehicle".equals(type)
+            ? new InstanceCache.TypeConfig(2, 1_000, 500)
+            : new InstanceCache.TypeConfig(0, 0, 0), now::get));
+    }
+
+    private static Map<String, Object> instance(String id, String name) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", id);
+        data.put("name", name);
+        return data;
+    }
+
+    @Test
+    void getInstance_systemType_servedFromCacheUntilUpdated() throws Exception {
+        storage.setInstanceCache(new InstanceCache(type -> new InstanceCache.TypeConfig(10, 1_000, 0), now::get));
+        when(graphStorage.getInstance("mapping", "m1")).thenReturn(instance("m1", "a"), instance("m1", "b"));
+
+        assertEquals("a", storage.getInstance("mapping", "m1").get("name"));
+        storage.getInstance("mapping", "m1").put("name", "mutated");
+        assertEquals("a", storage.getInstance("mapping", "m1").get("name"));
+        verify(graphStorage, times(1)).getInstance("mapping", "m1");
+
+        storage.updateInstance("mapping", "m1", Map.of("name", "b"));
+        assertEquals("b", storage.getInstance("mapping", "m1").get("name"));
+        verify(graphStorage, times(2)).getInstance("mapping", "m1");
+
+        Map<String, Object> stats = storage.getCacheStats().get("mapping");
+        assertEquals(2L, stats.get("hits"));
+        assertEquals(2L, stats.get("misses"));
+        assertEquals(0.5, (double) stats.get("hit_rate"), 1e-9);
+        assertEquals(1L, stats.get("invalidations"));
+    }
+
+    @Test
+    void getInstance_ttlAndLruBound() throws Exception {
+        when(relationalStorage.getInstance(eq("vehicle"), anyString()))
+            .thenAnswer(inv -> instance(inv.getArgument(1), "x"));
+        when(graphStorage.getInstance(eq("vehicle"), anyString())).thenThrow(new IOException("instance not found"));
+
+        storage.getInstance("vehicle", "v1");
+        storage.getInstance("vehicle", "v2");
+        storage.getInstance("vehicle", "v1");
+        storage.getInstance("vehicle", "v3");
+        // 上限 2：v2 最久未访问被淘汰
+        storage.getInstance("vehicle", "v1");
+        storage.getInstance("vehicle", "v2");
+        verify(relationalStorage, times(2)).getInstance("vehicle", "v2");
+        verify(relationalStorage, times(1)).getInstance("vehicle", "v1");
+
+        now.addAndGet(1_001);
+        storage.getInstance("vehicle", "v1");
+        verify(relationalStorage, times(2)).getInstance("vehicle", "v1");
+        assertEquals(2L, storage.getCacheStats().get("vehicle").get("evictions"));
+    }
+
+    @Test
+    void getInstance_negativeCacheUntilCreated() throws Exception {
+        when(relationalStorage.getInstance("vehicle", "v9")).thenThrow(new InstanceNotFoundException());
+        when(graphStorage.getInstance("vehicle", "v9")).thenThrow(new InstanceNotFoundException());
+
+        assertThrows(IOException.class, () -> storage.getInstance("vehicle", "v9"));
+        assertThrows(IOException.class, () -> storage.getInstance("vehicle", "v9"));
+        verify(relationalStorage, times(1)).getInstance("vehicle", "v9");
+        assertEquals(1L, storage.getCacheStats().get("vehicle").get("negative_hits"));
+
+        when(graphStorage.createInstanceWithId(eq("vehicle"), eq("v9"), anyMap())).thenReturn("v9");
+        storage.createInstanceWithId("vehicle", "v9", Map.of("name", "n"));
+        assertThrows(IOException.class, () -> storage.getInstance("vehicle", "v9"));
+        verify(relationalStorage, times(2)).getInstance("vehicle", "v9");
+    }
+
+    @Test
+    void getInstance_otherNotFoundErrorsAreNotCached() throws Exception {
+        when(relationalStorage.getInstance("vehicle", "v8")).thenThrow(new IOException("Object type not found: vehicle"));
+        when(graphStorage.getInstance("vehicle", "v8")).thenThrow(new InstanceNotFoundException());
+
+        assertThrows(IOException.class, () -> storage.getInstance("vehicle", "v8"));
+        assertThrows(IOException.class, () -> storage.getInstance("vehicle", "v8"));
+        verify(relationalStorage, times(2)).getInstance("vehicle", "v8");
+        assertEquals(0L, storage.getCacheStats().get("vehicle").get("negative_hits"));
+    }
+
+    @Test
+    void getInstancesBatch_onlyFetchesMissesAndBatchMergeInvalidates() throws Exception {
+        when(relationalStorage.getInstancesBatch(eq("vehicle"), anyList())).thenAnswer(inv -> {
+            Map<String, Map<String, Object>> result = new HashMap<>();
+            for (String id : inv.<List<String>>getArgument(1)) {
+                result.put(id, "missing".equals(id) ? null : instance(id, "x"));
+            }
+            return result;
+        });
+
+        Map<String, Map<String, Object>> first = storage.getInstancesBatch("vehicle", List.of("v1", "missing"));
+        assertNotNull(first.get("v1"));
+        assertTrue(first.containsKey("missing"));
+        assertNull(first.get("missing"));
+
+        storage.getInstancesBatch("vehicle", List.of("v1", "missing"));
+        verify(relationalStorage, times(1)).getInstancesBatch(eq("vehicle"), anyList());
+
+        when(graphStorage.batchMergeInstances(eq("vehicle"), anyList())).thenReturn(1);
+        storage.batchMergeInstances("vehicle", List.of(instance("v1", "y")));
+        storage.getInstancesBatch("vehicle", List.of("v1", "missing"));
+        verify(relationalStorage).getInstancesBatch("vehicle", List.of("v1"));
+    }
+
+    @Test
+    void getInstancesBatch_idsMissingFromResultAreNotNegativeCached() throws Exception {
+        // 查询失败的块不在结果中：下次仍需回源，而不是当作不存在
+        when(relationalStorage.getInstancesBatch(eq("vehicle"), anyList()))
+            .thenAnswer(inv -> new HashMap<>(Map.of("v1", instance("v1", "x"))));
+
+        assertNull(storage.getInstancesBatch("vehicle", List.of("v1", "v2")).get("v2"));
+        storage.getInstancesBatch("vehicle", List.of("v1", "v2"));
+        verify(relationalStorage).getInstancesBatch("vehicle", List.of("v1", "v2"));
+        verify(relationalStorage).getInstancesBatch("vehicle", List.of("v2"));
+    }
+
+    @Test
+    void batchMergeInstances_writesSyncTableAndGraphSummary() throws Exception {
+        List<Map<String, Object>> rows = List.of(instance("v1", "a"), instance("v2", "b"));
+        when(relationalStorage.batchMergeInstances("vehicle", rows)).thenReturn(2);
+        when(graphStorage.batchMergeInstances(eq("vehicle"), anyList())).thenReturn(2);
+        assertEquals(2, storage.batchMergeInstances("vehicle", rows));
+        verify(relationalStorage).batchMergeInstances("vehicle", rows);
+        verify(graphStorage).batchMergeInstances(eq("vehicle"), argThat(summaries -> summaries.size() == 2));
+
+        // 同步表只写入部分行时返回实际写入数
+        when(relationalStorage.batchMergeInstances("vehicle", rows)).thenReturn(1);
+        assertEquals(1, storage.batchMergeInstances("vehicle", rows));
+    }
+
+    @Test
+    void uncachedType_alwaysDelegates() throws Exception {
+        when(relationalStorage.getInstance("passage", "p1")).thenReturn(instance("p1", "x"));
+        when(graphStorage.getInstance("passage", "p1")).thenThrow(new IOException("instance not found"));
+
+        storage.getInstance("passage", "p1");
+        storage.getInstance("passage", "p1");
+        verify(relationalStorage, times(2)).getInstance("passage", "p1");
+        assertFalse(storage.getCacheStats().containsKey("passage"));
+    }
+}
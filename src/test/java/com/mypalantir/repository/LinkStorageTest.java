@@ -0,0 +1,182 @@
+package com.mypalantir.repository;
+
+import com.falkordb.Graph;
+import com.falkordb.Record;
+import com.falkordb.ResultSet;
+import com.mypalantir.meta.LinkType;
+import com.mypalantir.meta.Loader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class LinkStorageTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void adjacencyIndex_maintainedOnCreateAndDelete() throws Exception {
+        LinkStorage storage = new LinkStorage(new PathManager(tempDir.toString(), "test"));
+        String l1 = storage.createLink("owns", "p1", "v1", Map.of("weight", 1));
+        String l2 = storage.createLink("owns", "p1", "v2", null);
+        storage.createLink("owns", "p2", "v2", null);
+
+        assertEquals(2, storage.getLinksBySource("owns", "p1").size());
+        assertEquals(2, storage.getLinksByTarget("owns", "v2").size());
+        assertTrue(storage.getLinksBySource("owns", "missing").isEmpty());
+
+        storage.deleteLink("owns", l2);
+        List<Map<String, Object>> links = storage.getLinksBySource("owns", "p1");
+        assertEquals(1, links.size());
+        assertEquals(l1, links.get(0).get("id"));
+        assertEquals(1, storage.getLinksByTarget("owns", "v2").size());
+    }
+
+    @Test
+    void adjacencyIndex_loadedFromJournalAfterRestart() throws Exception {
+        PathManager pathManager = new PathManager(tempDir.toString(), "test");
+        LinkStorage storage = new LinkStorage(pathManager);
+        storage.createLink("owns", "p1", "v1", null);
+        String deleted = storage.createLink("owns", "p1", "v2", null);
+        storage.deleteLink("owns", deleted);
+        assertTrue(Files.exists(Paths.get(pathManager.getLinkIndexPath("owns"))));
+
+        LinkStorage restarted = new LinkStorage(pathManager);
+        restarted.loadAdjacencyIndexes(List.of("owns"));
+        assertEquals(1, restarted.getLinksBySource("owns", "p1").size());
+        assertTrue(restarted.getLinksByTarget("owns", "v2").isEmpty());
+    }
+
+    @Test
+    void adjacencyIndex_rebuiltWhenOutOfSyncWithLinkFiles() throws Exception {
+        PathManager pathManager = new PathManager(tempDir.toString(), "test");
+        LinkStorage storage = new LinkStorage(pathManager);
+        storage.createLink("owns", "p1", "v1", null);
+        storage.createLink("owns", "p1", "v2", null);
+
+        // 索引丢失：重启后从关系文件重建
+        Files.delete(Paths.get(pathManager.getLinkIndexPath("owns")));
+        LinkStorage restarted = new LinkStorage(pathManager);
+        assertEquals(2, restarted.getLinksBySource("owns", "p1").size());
+
+        // 外部新增关系文件：条目数不一致，重建
+        Files.writeString(Paths.get(pathManager.getLinkPath("owns", "external")),
+            "{\"id\":\"external\",\"source_id\":\"p1\",\"target_id\":\"v3\"}");
+        LinkStorage again = new LinkStorage(pathManager);
+        assertEquals(3, again.getLinksBySource("owns", "p1").size());
+        assertEquals(1, again.getLinksByTarget("owns", "v3").size());
+    }
+
+    @Test
+    void createLinksBatch_reportsPerLinkFailures() throws Exception {
+        LinkStorage storage = new LinkStorage(new PathManager(tempDir.toString(), "test"), 2);
+        List<Map<String, Object>> links = List.of(
+            Map.of("source_id", "p1", "target_id", "v1", "weight", 1),
+            Map.of("source_id", "p1"),
+            Map.of("source_id", "p2", "target_id", "v1"));
+
+        LinkBatchResult result = storage.createLinksBatch("owns", links);
+
+        assertEquals(2, result.getSuccessCount());
+        assertEquals(1, result.getFailureCount());
+        assertEquals(1, result.getFailures().get(0).getIndex());
+        assertNull(result.getIds().get(1));
+        assertEquals(1, storage.getLink("owns", result.getIds().get(0)).get("weight"));
+        assertEquals(2, storage.getLinksByTarget("owns", "v1").size());
+    }
+
+    @Test
+    void upsertAndDeleteLinksBatch() throws Exception {
+        LinkStorage storage = new LinkStorage(new PathManager(tempDir.toString(), "test"));
+        String existing = storage.createLink("owns", "p1", "v1", Map.of("weight", 1));
+
+        LinkBatchResult upserted = storage.upsertLinksBatch("owns", List.of(
+            Map.of("source_id", "p1", "target_id", "v1", "weight", 5),
+            Map.of("source_id", "p1", "target_id", "v2", "weight", 2),
+            Map.of("source_id", "p1", "target_id", "v2", "weight", 3)));
+
+        assertEquals(existing, upserted.getIds().get(0));
+        assertEquals(upserted.getIds().get(1), upserted.getIds().get(2));
+        assertEquals(5, storage.getLink("owns", existing).get("weight"));
+        assertEquals(3, storage.getLink("owns", upserted.getIds().get(1)).get("weight"));
+        assertEquals(2, storage.getLinksBySource("owns", "p1").size());
+
+        LinkBatchResult deleted = storage.deleteLinksBatch("owns", List.of(existing, "missing"));
+        assertEquals(1, deleted.getSuccessCount());
+        assertEquals("link not found", deleted.getFailures().get(0).getError());
+        assertEquals(1, storage.getLinksBySource("owns", "p1").size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void falkorDbBatch_endpointLookupFailureOnlyFailsItsChunk() throws Exception {
+        LinkType owns = new LinkType();
+        owns.setName("owns");
+        owns.setSourceType("Person");
+        owns.setTargetType("Vehicle");
+        Loader loader = mock(Loader.class);
+        when(loader.getLinkType("owns")).thenReturn(owns);
+
+        Graph graph = mock(Graph.class);
+        when(graph.query(anyString(), anyMap())).thenAnswer(inv -> {
+            String cypher = inv.getArgument(0);
+            Map<String, Object> params = inv.getArgument(1);
+            List<Map<String, Object>> records = new ArrayList<>();
+            if (cypher.startsWith("UNWIND $ids")) {
+                List<String> ids = (List<String>) params.get("ids");
+                if (ids.contains("p3")) {
+                    throw new IllegalStateException("lookup timed out");
+                }
+                ids.forEach(id -> records.add(Map.of("id", id)));
+            } else {
+                for (Map<String, Object> row : (List<Map<String, Object>>) params.get("rows")) {
+                    records.add(Map.of("idx", row.get("idx"), "id", row.get("id")));
+                }
+            }
+            return resultSet(records);
+        });
+
+        FalkorDBLinkStorage storage = new FalkorDBLinkStorage();
+        ReflectionTestUtils.setField(storage, "falkordbGraph", graph);
+        ReflectionTestUtils.setField(storage, "loader", loader);
+        ReflectionTestUtils.setField(storage, "batchSize", 2);
+
+        LinkBatchResult result = storage.createLinksBatch("owns", List.of(
+            Map.of("source_id", "p1", "target_id", "v1"),
+            Map.of("source_id", "p2", "target_id", "v2"),
+            Map.of("source_id", "p3", "target_id", "v3"),
+            Map.of("source_id", "p4", "target_id", "v4")));
+
+        // 第一块已写入，第二块端点检查失败只影响本块的两条关系
+        assertEquals(2, result.getSuccessCount());
+        assertEquals(2, result.getFailureCount());
+        assertNotNull(result.getIds().get(0));
+        assertNotNull(result.getIds().get(1));
+        assertEquals(List.of(2, 3), result.getFailures().stream().map(LinkBatchResult.Failure::getIndex).toList());
+        assertEquals("lookup timed out", result.getFailures().get(0).getError());
+    }
+
+    private static ResultSet resultSet(List<Map<String, Object>> rows) {
+        List<Record> records = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            Record record = mock(Record.class);
+            when(record.getValue(anyString())).thenAnswer(inv -> row.get((String) inv.getArgument(0)));
+            records.add(record);
+        }
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.iterator()).thenAnswer(inv -> records.iterator());
+        return resultSet;
+    }
+}
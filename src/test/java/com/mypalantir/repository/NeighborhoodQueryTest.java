@@ -0,0 +1,140 @@
+package com.mypalantir.repository;
+
+import com.mypalantir.meta.LinkType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * K 跳邻域展开（文件关系存储的邻接索引 + 模拟前沿查询）
+ */
+class NeighborhoodQueryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LinkStorage storage;
+    private final List<LinkType> linkTypes = List.of(linkType("owns", "Person", "Vehicle"),
+        linkType("passes", "Vehicle", "Gantry"));
+
+    private static LinkType linkType(String name, String source, String target) {
+        LinkType linkType = new LinkType();
+        linkType.setName(name);
+        linkType.setSourceType(source);
+        linkType.setTargetType(target);
+        return linkType;
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = new LinkStorage(new PathManager(tempDir.toString(), "test"));
+        storage.createLink("owns", "p1", "v1", null);
+        storage.createLink("owns", "p1", "v2", null);
+        storage.createLink("owns", "p1", "v3", null);
+        storage.createLink("owns", "p2", "v1", null);
+        storage.createLink("passes", "v1", "g1", null);
+    }
+
+    private NeighborhoodResult expand(int depth, List<LinkType> types, String direction, int fanOut, int maxNodes)
+            throws Exception {
+        return storage.expandNeighborhood(new NeighborhoodQuery("Person", "p1", depth, types, direction, fanOut, maxNodes));
+    }
+
+    private static Set<String> nodeKeys(NeighborhoodResult result) {
+        Set<String> keys = new TreeSet<>();
+        for (Map<String, Object> node : result.getNodes()) {
+            keys.add(node.get("object_type") + ":" + node.get("id") + "@" + node.get("depth"));
+        }
+        return keys;
+    }
+
+    @Test
+    void expandsBothDirectionsAndDeduplicatesCycles() throws Exception {
+        NeighborhoodResult oneHop = expand(1, linkTypes, "both", 50, 500);
+        assertEquals(Set.of("Person:p1@0", "Vehicle:v1@1", "Vehicle:v2@1", "Vehicle:v3@1"), nodeKeys(oneHop));
+        assertEquals(3, oneHop.getEdges().size());
+
+        // 第二层经 incoming owns 回到 p1 的关系不重复，p2 在第 2 层到达
+        NeighborhoodResult twoHops = expand(2, linkTypes, "both", 50, 500);
+        assertEquals(Set.of("Person:p1@0", "Vehicle:v1@1", "Vehicle:v2@1", "Vehicle:v3@1", "Gantry:g1@2", "Person:p2@2"),
+            nodeKeys(twoHops));
+        assertEquals(5, twoHops.getEdges().size());
+        assertEquals(2, twoHops.getDepthReached());
+        assertFalse(twoHops.isTruncated());
+    }
+
+    @Test
+    void honoursDirectionAndLinkTypeFilters() throws Exception {
+        NeighborhoodResult outgoing = expand(3, linkTypes, "outgoing", 50, 500);
+        assertEquals(5, outgoing.getNodes().size());
+        assertEquals(4, outgoing.getEdges().size());
+        assertEquals(2, outgoing.getDepthReached());
+
+        NeighborhoodResult ownsOnly = expand(2, List.of(linkTypes.get(0)), "both", 50, 500);
+        assertTrue(nodeKeys(ownsOnly).contains("Person:p2@2"));
+        assertFalse(nodeKeys(ownsOnly).contains("Gantry:g1@2"));
+    }
+
+    @Test
+    void capsFanOutAndNodeBudget() throws Exception {
+        NeighborhoodResult capped = expand(1, linkTypes, "both", 2, 500);
+        assertEquals(3, capped.getNodes().size());
+        assertEquals(2, capped.getEdges().size());
+
+        NeighborhoodResult budget = expand(2, linkTypes, "both", 50, 3);
+        assertEquals(3, budget.getNodes().size());
+        assertEquals(2, budget.getEdges().size());
+        assertTrue(budget.isTruncated());
+        assertEquals(true, budget.toMap().get("truncated"));
+    }
+
+    @Test
+    void capsFanOutPerDirection() throws Exception {
+        // v1 有两条入边（p1、p2 owns）和一条出边（passes g1）：fanOut=1 时每个方向各保留一条
+        NeighborhoodResult fromStorage = storage.expandNeighborhood(
+            new NeighborhoodQuery("Vehicle", "v1", 1, linkTypes, "both", 1, 500));
+        assertEquals(2, fromStorage.getEdges().size());
+        assertTrue(nodeKeys(fromStorage).contains("Gantry:g1@1"));
+
+        NeighborhoodQuery query = new NeighborhoodQuery("Vehicle", "v1", 1, linkTypes, "both", 1, 500);
+        NeighborhoodResult result = query.execute((objectType, ids, outgoing, incoming, fanOut) -> List.of(
+            new NeighborhoodQuery.Hop("v1", "passes", "x1", "v1", "g1", true),
+            new NeighborhoodQuery.Hop("v1", "passes", "x2", "v1", "g2", true),
+            new NeighborhoodQuery.Hop("v1", "owns", "o1", "p1", "v1", false),
+            new NeighborhoodQuery.Hop("v1", "owns", "o2", "p2", "v1", false)));
+        assertEquals(Set.of("Vehicle:v1@0", "Gantry:g1@1", "Person:p1@1"), nodeKeys(result));
+        assertEquals(2, result.toMap().get("fan_out_capped"));
+    }
+
+    @Test
+    void batchesFrontierPerTypeAndEnforcesFanOutOnExpanderResults() throws Exception {
+        List<String> calls = new ArrayList<>();
+        NeighborhoodQuery query = new NeighborhoodQuery("Person", "p1", 2, linkTypes, "outgoing", 2, 100);
+
+        NeighborhoodResult result = query.execute((objectType, ids, outgoing, incoming, fanOut) -> {
+            calls.add(objectType + ids);
+            List<NeighborhoodQuery.Hop> hops = new ArrayList<>();
+            if ("Person".equals(objectType)) {
+                // 忽略 fanOut 的实现返回过多关系时仍按节点截断
+                for (int i = 1; i <= 3; i++) {
+                    hops.add(new NeighborhoodQuery.Hop("p1", "owns", "o" + i, "p1", "v" + i, true));
+                }
+            } else {
+                for (String id : ids) {
+                    hops.add(new NeighborhoodQuery.Hop(id, "passes", "x" + id, id, "g1", true));
+                }
+            }
+            return hops;
+        });
+
+        assertEquals(List.of("Person[p1]", "Vehicle[v1, v2]"), calls);
+        assertEquals(1, result.toMap().get("fan_out_capped"));
+        assertEquals(Set.of("Person:p1@0", "Vehicle:v1@1", "Vehicle:v2@1", "Gantry:g1@2"), nodeKeys(result));
+        assertEquals(4, result.getEdges().size());
+    }
+}
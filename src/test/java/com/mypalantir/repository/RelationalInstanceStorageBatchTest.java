@@ -0,0 +1,296 @@
+package com.mypalantir.repository;
+
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.service.DatabaseMetadataService;
+import com.mypalantir.service.MappingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * RelationalInstanceStorage 批量查询（H2 MySQL 模式同步表）
+ */
+class RelationalInstanceStorageBatchTest {
+
+    private static final String URL = "jdbc:h2:mem:relational_batch;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private Connection keepAlive;
+    private RelationalInstanceStorage storage;
+    private DatabaseMetadataService databaseMetadataService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        keepAlive = DriverManager.getConnection(URL);
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS vehicle");
+            stmt.execute("DROP TABLE IF EXISTS passage");
+            stmt.execute("CREATE TABLE vehicle (id VARCHAR(64) PRIMARY KEY, vlp VARCHAR(64))");
+            stmt.execute("CREATE TABLE passage (station VARCHAR(32), seq VARCHAR(32), fee INT, PRIMARY KEY (station, seq))");
+        }
+
+        Loader loader = mock(Loader.class);
+        when(loader.getObjectType(anyString())).thenAnswer(inv -> {
+            ObjectType type = new ObjectType();
+            type.setName(inv.getArgument(0));
+            return type;
+        });
+        MappingService mappingService = mock(MappingService.class);
+        when(mappingService.getMappingsByObjectType("vehicle"))
+            .thenReturn(List.of(Map.of("primary_key_columns", List.of("id"))));
+        when(mappingService.getMappingsByObjectType("passage"))
+            .thenReturn(List.of(Map.of("primary_key_columns", List.of("station", "seq"))));
+
+        databaseMetadataService = mock(DatabaseMetadataService.class);
+        when(databaseMetadataService.getConnectionForDatabase(isNull())).thenAnswer(inv -> DriverManager.getConnection(URL));
+        when(databaseMetadataService.getQueryTimeoutSeconds()).thenReturn(30);
+
+        storage = new RelationalInstanceStorage();
+        ReflectionTestUtils.setField(storage, "loader", loader);
+        ReflectionTestUtils.setField(storage, "mappingService", mappingService);
+        ReflectionTestUtils.setField(storage, "databaseMetadataService", databaseMetadataService);
+        ReflectionTestUtils.setField(storage, "environment", new MockEnvironment());
+        ReflectionTestUtils.setField(storage, "compositeKeySeparator", "_");
+        ReflectionTestUtils.setField(storage, "batchFetchSize", 100);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        keepAlive.close();
+    }
+
+    private void insertVehicles(int count) throws Exception {
+        try (PreparedStatement ps = keepAlive.prepareStatement("INSERT INTO vehicle (id, vlp) VALUES (?, ?)")) {
+            for (int i = 0; i < count; i++) {
+                ps.setString(1, "v" + i);
+                ps.setString(2, "plate-" + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    @Test
+    void getInstancesBatch_singleKey_returnsFoundAndNullForMissing() throws Exception {
+        insertVehicles(250);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 250; i += 2) {
+            ids.add("v" + i);
+        }
+        ids.add("missing");
+
+        Map<String, Map<String, Object>> result = storage.getInstancesBatch("vehicle", ids);
+
+        assertEquals(ids.size(), result.size());
+        assertNull(result.get("missing"));
+        assertEquals("plate-10", result.get("v10").get("vlp"));
+        assertEquals("v248", result.get("v248").get("id"));
+        // 125 个 ID、分块 100：一个连接，两条语句
+        verify(databaseMetadataService, times(1)).getConnectionForDatabase(any());
+    }
+
+    @Test
+    void getInstancesBatch_compositeKey_splitsIdParts() throws Exception {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("INSERT INTO passage VALUES ('s1', '001', 10), ('s1', '002', 20), ('s2', '001', 30)");
+        }
+
+        Map<String, Map<String, Object>> result = storage.getInstancesBatch("passage", List.of("s1_002", "s2_001", "s3_001", "bad"));
+
+        assertEquals(20, result.get("s1_002").get("fee"));
+        assertEquals(30, result.get("s2_001").get("fee"));
+        assertEquals("s2_001", result.get("s2_001").get("id"));
+        assertNull(result.get("s3_001"));
+        assertNull(result.get("bad"));
+    }
+
+    @Test
+    void getInstancesBatch_caseInsensitiveKey_matchesRowsByCollation() throws Exception {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("DROP TABLE vehicle");
+            stmt.execute("CREATE TABLE vehicle (id VARCHAR_IGNORECASE(64) PRIMARY KEY, vlp VARCHAR(64))");
+            stmt.execute("INSERT INTO vehicle VALUES ('AAA', 'plate-0'), ('ABC-1', 'plate-a'), ('xyz', 'plate-x')");
+        }
+
+        Map<String, Map<String, Object>> result = storage.getInstancesBatch("vehicle", List.of("AAA", "aaa", "abc-1", "XYZ", "xyz", "missing"));
+
+        // 数据库按大小写不敏感比较找到的行，按请求 ID 返回
+        assertEquals("plate-a", result.get("abc-1").get("vlp"));
+        assertEquals("plate-0", result.get("aaa").get("vlp"));
+        assertEquals("plate-0", result.get("AAA").get("vlp"));
+        assertEquals("plate-x", result.get("XYZ").get("vlp"));
+        assertEquals("plate-x", result.get("xyz").get("vlp"));
+        assertNull(result.get("missing"));
+    }
+
+    @Test
+    void getInstancesBatch_caseSensitiveKey_doesNotFoldIds() throws Exception {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("INSERT INTO vehicle VALUES ('ABC', 'plate-a')");
+        }
+
+        Map<String, Map<String, Object>> result = storage.getInstancesBatch("vehicle", List.of("ABC", "abc"));
+
+        assertEquals("plate-a", result.get("ABC").get("vlp"));
+        assertNull(result.get("abc"));
+    }
+
+    @Test
+    void getInstancesBatch_numericKey_matchesByValue() throws Exception {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("DROP TABLE vehicle");
+            stmt.execute("CREATE TABLE vehicle (id DECIMAL(10, 2) PRIMARY KEY, vlp VARCHAR(64))");
+            stmt.execute("INSERT INTO vehicle VALUES (1.00, 'plate-1'), (2.50, 'plate-2'), (300, 'plate-3')");
+        }
+
+        Map<String, Map<String, Object>> result = storage.getInstancesBatch("vehicle", List.of("1", "2.5", "300.0", "4", "x"));
+
+        assertEquals("plate-1", result.get("1").get("vlp"));
+        assertEquals("plate-2", result.get("2.5").get("vlp"));
+        assertEquals("plate-3", result.get("300.0").get("vlp"));
+        assertNull(result.get("4"));
+        assertNull(result.get("x"));
+    }
+
+    @Test
+    void normalizeKeyValue_followsColumnType() {
+        assertEquals("1", RelationalInstanceStorage.normalizeKeyValue(new java.math.BigDecimal("1.00"), java.sql.Types.DECIMAL));
+        assertEquals("1", RelationalInstanceStorage.normalizeKeyValue("01", java.sql.Types.BIGINT));
+        assertEquals("2024-03-01", RelationalInstanceStorage.normalizeKeyValue(java.sql.Date.valueOf("2024-03-01"), java.sql.Types.DATE));
+        assertEquals(RelationalInstanceStorage.normalizeKeyValue(java.sql.Timestamp.valueOf("2024-03-01 10:00:00"), java.sql.Types.TIMESTAMP),
+            RelationalInstanceStorage.normalizeKeyValue("2024-03-01 10:00:00.0", java.sql.Types.TIMESTAMP));
+        assertEquals("ab", RelationalInstanceStorage.normalizeKeyValue("ab  ", java.sql.Types.CHAR));
+        assertEquals("ab  ", RelationalInstanceStorage.normalizeKeyValue("ab  ", java.sql.Types.VARCHAR));
+    }
+
+    @Test
+    void foldKey_ignoresCaseAccentsAndTrailingSpaces() {
+        assertEquals(RelationalInstanceStorage.foldKey("Cafe"), RelationalInstanceStorage.foldKey("CAFÉ  "));
+        assertEquals(RelationalInstanceStorage.foldKey("a\u0000b"), RelationalInstanceStorage.foldKey("A \u0000B"));
+        assertNotEquals(RelationalInstanceStorage.foldKey("ab"), RelationalInstanceStorage.foldKey("a b"));
+    }
+
+    @Test
+    void getInstancesBatch_missingTable_returnsNoConfirmedIds() throws Exception {
+        Map<String, Map<String, Object>> result = storage.getInstancesBatch("nosuchtable", List.of("a", "b"));
+        assertNull(result.get("a"));
+        assertNull(result.get("b"));
+        // 表不存在不等于实例不存在，不能作为负缓存依据
+        assertFalse(result.containsKey("a"));
+        assertFalse(result.containsKey("b"));
+    }
+
+    @Test
+    void getInstancesBatch_failedChunkIdsAreLeftOut() throws Exception {
+        insertVehicles(6);
+        ReflectionTestUtils.setField(storage, "batchFetchSize", 2);
+        AtomicInteger selects = new AtomicInteger();
+        when(databaseMetadataService.getConnectionForDatabase(isNull())).thenAnswer(inv -> {
+            Connection conn = spy(DriverManager.getConnection(URL));
+            doAnswer(call -> {
+                String sql = call.getArgument(0);
+                if (sql.contains(" IN (") && selects.incrementAndGet() == 2) {
+                    throw new SQLException("query timeout");
+                }
+                return call.callRealMethod();
+            }).when(conn).prepareStatement(anyString());
+            return conn;
+        });
+
+        Map<String, Map<String, Object>> result = storage.getInstancesBatch("vehicle",
+            List.of("v0", "nope", "v2", "v3", "v4", "gone"));
+
+        assertEquals("plate-0", result.get("v0").get("vlp"));
+        assertTrue(result.containsKey("nope"));
+        assertNull(result.get("nope"));
+        assertFalse(result.containsKey("v2"));
+        assertFalse(result.containsKey("v3"));
+        assertEquals("plate-4", result.get("v4").get("vlp"));
+        assertTrue(result.containsKey("gone"));
+        assertNull(result.get("gone"));
+    }
+
+    @Test
+    void getInstancesBatch_benchmarkAgainstPerIdLookup() throws Exception {
+        int count = 1000;
+        insertVehicles(count);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add("v" + i);
+        }
+
+        long start = System.nanoTime();
+        Map<String, Map<String, Object>> perId = new HashMap<>();
+        for (String id : ids) {
+            perId.put(id, storage.getInstance("vehicle", id));
+        }
+        long perIdMs = (System.nanoTime() - start) / 1_000_000;
+
+        clearInvocations(databaseMetadataService);
+        start = System.nanoTime();
+        Map<String, Map<String, Object>> batch = storage.getInstancesBatch("vehicle", ids);
+        long batchMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("[RelationalInstanceStorageBatchTest] %d ids: per-id lookup %d ms, batch %d ms%n", count, perIdMs, batchMs);
+        assertEquals(perId, batch);
+        verify(databaseMetadataService, times(1)).getConnectionForDatabase(any());
+    }
+
+    @Test
+    void batchMergeInstances_upsertsIntoSyncTable() throws Exception {
+        insertVehicles(2);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        rows.add(new HashMap<>(Map.of("id", "v1", "vlp", "changed", "unknown_field", "x")));
+        rows.add(new HashMap<>(Map.of("id", "v9", "vlp", "new")));
+        rows.add(new HashMap<>(Map.of("id", "v0")));
+        rows.add(new HashMap<>(Map.of("vlp", "no-id")));
+
+        assertEquals(3, storage.batchMergeInstances("vehicle", rows));
+        Map<String, Map<String, Object>> found = storage.getInstancesBatch("vehicle", List.of("v0", "v1", "v9"));
+        // 只给出 id 的行不覆盖其他列
+        assertEquals("plate-0", found.get("v0").get("vlp"));
+        assertEquals("changed", found.get("v1").get("vlp"));
+        assertEquals("new", found.get("v9").get("vlp"));
+        assertEquals(3, storage.listInstances("vehicle", 0, 10).getTotal());
+
+        IOException e = assertThrows(IOException.class,
+            () -> storage.batchMergeInstances("gantry", List.of(Map.of("id", "g1"))));
+        assertTrue(e.getMessage().contains("gantry"));
+    }
+
+    @Test
+    void batchMergeInstances_compositeKeyRollsBackOnFailure() throws Exception {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        rows.add(new HashMap<>(Map.of("id", "s1_1", "station", "s1", "seq", "1", "fee", 10)));
+        rows.add(new HashMap<>(Map.of("id", "s1_2", "station", "s1", "seq", "2", "fee", "not-a-number")));
+        assertThrows(IOException.class, () -> storage.batchMergeInstances("passage", rows));
+        try (Statement stmt = keepAlive.createStatement();
+             java.sql.ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM passage")) {
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+        }
+
+        rows.get(1).put("fee", 20);
+        assertEquals(2, storage.batchMergeInstances("passage", rows));
+        rows.get(0).put("fee", 15);
+        assertEquals(1, storage.batchMergeInstances("passage", rows.subList(0, 1)));
+        assertEquals(15, ((Number) storage.getInstance("passage", "s1_1").get("fee")).intValue());
+    }
+}
@@ -0,0 +1,168 @@
+package com.mypalantir.repository;
+
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.service.DatabaseMetadataService;
+import com.mypalantir.service.MappingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * RelationalInstanceStorage 同步表目录缓存（H2 MySQL 模式）
+ */
+class RelationalInstanceStorageCatalogTest {
+
+    private static final String URL = "jdbc:h2:mem:relational_catalog;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private Connection keepAlive;
+    private RelationalInstanceStorage storage;
+    private DatabaseMetadataService databaseMetadataService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        keepAlive = DriverManager.getConnection(URL);
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS vehicle");
+            stmt.execute("DROP TABLE IF EXISTS gantry");
+            stmt.execute("CREATE TABLE vehicle (id VARCHAR(64) PRIMARY KEY, vlp VARCHAR(64), vehicle_type INT)");
+        }
+        try (PreparedStatement ps = keepAlive.prepareStatement("INSERT INTO vehicle VALUES (?, ?, ?)")) {
+            for (int i = 0; i < 500; i++) {
+                ps.setString(1, "v" + i);
+                ps.setString(2, "plate-" + i);
+                ps.setInt(3, i % 4);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        Loader loader = mock(Loader.class);
+        when(loader.getObjectType(anyString())).thenAnswer(inv -> {
+            ObjectType type = new ObjectType();
+            type.setName(inv.getArgument(0));
+            return type;
+        });
+        // 未配置 mapping：主键需要从表元数据解析
+        MappingService mappingService = mock(MappingService.class);
+        when(mappingService.getMappingsByObjectType(anyString())).thenReturn(List.of());
+
+        databaseMetadataService = mock(DatabaseMetadataService.class);
+        when(databaseMetadataService.getConnectionForDatabase(isNull())).thenAnswer(inv -> DriverManager.getConnection(URL));
+        when(databaseMetadataService.getQueryTimeoutSeconds()).thenReturn(30);
+        // 与真实实现一样每次建连读取 JDBC 元数据
+        when(databaseMetadataService.getPrimaryKeyColumns(isNull(), anyString())).thenAnswer(inv -> {
+            List<String> columns = new ArrayList<>();
+            try (Connection conn = DriverManager.getConnection(URL);
+                 ResultSet rs = conn.getMetaData().getPrimaryKeys(null, null, inv.getArgument(1))) {
+                while (rs.next()) {
+                    columns.add(rs.getString("COLUMN_NAME"));
+                }
+            }
+            return columns;
+        });
+
+        storage = new RelationalInstanceStorage();
+        ReflectionTestUtils.setField(storage, "loader", loader);
+        ReflectionTestUtils.setField(storage, "mappingService", mappingService);
+        ReflectionTestUtils.setField(storage, "databaseMetadataService", databaseMetadataService);
+        ReflectionTestUtils.setField(storage, "environment", new MockEnvironment());
+        ReflectionTestUtils.setField(storage, "compositeKeySeparator", "_");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        keepAlive.close();
+    }
+
+    private long runWorkload(int rounds) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            storage.getInstance("vehicle", "v" + (i % 500));
+            storage.listInstances("vehicle", i % 400, 20);
+            storage.searchInstances("vehicle", Map.of("vehicle_type", i % 4));
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    void benchmark_requestThroughput() throws Exception {
+        runWorkload(50);
+        int rounds = 300;
+        long nanos = runWorkload(rounds);
+        double opsPerSecond = rounds * 3 / (nanos / 1e9);
+        System.out.printf("[RelationalInstanceStorageCatalogTest] %d requests in %d ms (%.0f req/s)%n",
+            rounds * 3, nanos / 1_000_000, opsPerSecond);
+        assertEquals("plate-7", storage.getInstance("vehicle", "v7").get("vlp"));
+    }
+
+    @Test
+    void syncTableMetadata_resolvedOnceAndReused() throws Exception {
+        assertEquals("plate-3", storage.getInstance("VEHICLE", "v3").get("vlp"));
+        assertEquals(500, storage.listInstances("vehicle", 0, 10).getTotal());
+        assertEquals(125, storage.searchInstances("vehicle", Map.of("VEHICLE_TYPE", 1)).size());
+        assertEquals(2, storage.getInstancesBatch("vehicle", List.of("v1", "v2", "nope")).values().stream()
+            .filter(Objects::nonNull).count());
+
+        // 主键与列信息来自目录缓存，不再逐次查询元数据服务
+        verify(databaseMetadataService, never()).getPrimaryKeyColumns(any(), anyString());
+        verify(databaseMetadataService, never()).getColumns(any(), anyString());
+        // 未知过滤列不发起查询，直接返回空
+        assertTrue(storage.searchInstances("vehicle", Map.of("no_such_column", 1)).isEmpty());
+    }
+
+    @Test
+    void missingTable_emptyUntilRefreshed() throws Exception {
+        assertEquals(0, storage.listInstances("gantry", 0, 10).getTotal());
+        assertThrows(IOException.class, () -> storage.getInstance("gantry", "g1"));
+
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("CREATE TABLE gantry (gantry_code VARCHAR(32) PRIMARY KEY, name VARCHAR(64))");
+            stmt.execute("INSERT INTO gantry VALUES ('g1', 'north')");
+        }
+        // 不存在的表在 TTL 内仍判定为不存在，建表后刷新即可见
+        assertEquals(0, storage.listInstances("gantry", 0, 10).getTotal());
+        storage.refreshSyncTable("gantry");
+        assertEquals("north", storage.getInstance("gantry", "g1").get("name"));
+        assertEquals(1, storage.listInstances("gantry", 0, 10).getTotal());
+    }
+
+    @Test
+    void warmUp_loadsAllTablesAndDroppedTableIsEvicted() throws Exception {
+        ReflectionTestUtils.setField(storage, "environment", new MockEnvironment().withProperty("storage.type", "hybrid"));
+        storage.warmUpSyncTableCatalog();
+        assertEquals(500, storage.listInstances("vehicle", 0, 1).getTotal());
+
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("DROP TABLE vehicle");
+        }
+        assertEquals(0, storage.listInstances("vehicle", 0, 1).getTotal());
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("CREATE TABLE vehicle (id VARCHAR(64) PRIMARY KEY, vlp VARCHAR(64), vehicle_type INT)");
+            stmt.execute("INSERT INTO vehicle VALUES ('v1', 'p', 1)");
+        }
+        // 查询失败后缓存条目已失效，重建的表无需手动刷新
+        assertEquals(1, storage.listInstances("vehicle", 0, 1).getTotal());
+    }
+
+    @Test
+    void streamSyncTable_readsAllRows() throws Exception {
+        Set<Object> ids = new HashSet<>();
+        long rows = storage.streamSyncTable("vehicle", 128, row -> ids.add(row.get("id")));
+        assertEquals(500, rows);
+        assertEquals(500, ids.size());
+        assertThrows(SQLException.class, () -> storage.streamSyncTable("gantry", 128, row -> { }));
+    }
+}
@@ -0,0 +1,202 @@
+package com.mypalantir.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private SegmentLog.Options options(long maxSegmentBytes) {
+        return new SegmentLog.Options(maxSegmentBytes, 0, 0.5, 0, 0);
+    }
+
+    private Map<String, Object> record(String id, String name, String type) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", id);
+        data.put("name", name);
+        data.put("type", type);
+        return data;
+    }
+
+    @Test
+    void putDelete_survivesReopen() throws Exception {
+        Path dir = tempDir.resolve("vehicle");
+        SegmentLog log = SegmentLog.open(dir, options(1 << 20), null, objectMapper);
+        log.put("v1", record("v1", "a", "car"));
+        log.put("v2", record("v2", "b", "truck"));
+        log.put("v1", record("v1", "a2", "car"));
+        assertTrue(log.delete("v2"));
+        assertFalse(log.delete("missing"));
+        log.close();
+
+        SegmentLog reopened = SegmentLog.open(dir, options(1 << 20), null, objectMapper);
+        assertEquals(1, reopened.size());
+        assertEquals("a2", reopened.get("v1").get("name"));
+        assertNull(reopened.get("v2"));
+        reopened.close();
+    }
+
+    @Test
+    void tornTail_isTruncatedOnRecovery() throws Exception {
+        Path dir = tempDir.resolve("vehicle");
+        SegmentLog log = SegmentLog.open(dir, options(1 << 20), null, objectMapper);
+        log.put("v1", record("v1", "a", "car"));
+        log.close();
+
+        Path segment;
+        try (var files = Files.list(dir)) {
+            segment = files.filter(p -> p.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        long sizeBefore = Files.size(segment);
+        Files.write(segment, "{\"op\":\"put\",\"id\":\"v2\",\"da".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        SegmentLog reopened = SegmentLog.open(dir, options(1 << 20), null, objectMapper);
+        assertEquals(1, reopened.size());
+        assertEquals(sizeBefore, Files.size(segment));
+        reopened.put("v3", record("v3", "c", "car"));
+        reopened.close();
+
+        SegmentLog again = SegmentLog.open(dir, options(1 << 20), null, objectMapper);
+        assertEquals(2, again.size());
+        assertNotNull(again.get("v3"));
+        again.close();
+    }
+
+    @Test
+    void secondaryIndex_findAndLookup() throws Exception {
+        SegmentLog log = SegmentLog.open(tempDir.resolve("vehicle"), options(1 << 20), Set.of("type"), objectMapper);
+        log.put("v1", record("v1", "a", "car"));
+        log.put("v2", record("v2", "b", "truck"));
+        log.put("v3", record("v3", "c", "car"));
+        log.put("v3", record("v3", "c", "truck"));
+
+        assertEquals(Set.of("v1"), log.lookup("type", "car"));
+        assertEquals(Set.of("v2", "v3"), log.lookup("type", "truck"));
+        assertNull(log.lookup("name", "a"));
+
+        List<Map<String, Object>> found = log.find(Map.of("type", "truck", "name", "b"), 100);
+        assertEquals(1, found.size());
+        assertEquals("v2", found.get(0).get("id"));
+        log.close();
+    }
+
+    @Test
+    void compact_reclaimsDeadBytesAndKeepsData() throws Exception {
+        Path dir = tempDir.resolve("vehicle");
+        SegmentLog log = SegmentLog.open(dir, options(512), Set.of("type"), objectMapper);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 20; i++) {
+                log.put("v" + i, record("v" + i, "name-" + round, i % 2 == 0 ? "car" : "truck"));
+            }
+        }
+        for (int i = 10; i < 20; i++) {
+            log.delete("v" + i);
+        }
+        long before = log.getTotalBytes();
+        assertTrue(log.needsCompaction());
+
+        log.compact();
+
+        assertTrue(log.getTotalBytes() < before);
+        assertEquals(log.getLiveBytes(), log.getTotalBytes());
+        assertEquals(10, log.size());
+        assertEquals("name-4", log.get("v0").get("name"));
+        assertEquals(5, log.lookup("type", "car").size());
+        log.close();
+
+        SegmentLog reopened = SegmentLog.open(dir, options(512), Set.of("type"), objectMapper);
+        assertEquals(10, reopened.size());
+        assertNull(reopened.get("v15"));
+        reopened.close();
+    }
+
+    @Test
+    void segmentedInstanceStorage_importsLegacyFiles() throws Exception {
+        PathManager pathManager = new PathManager(tempDir.toString(), "test");
+        Path legacyDir = Path.of(pathManager.getInstanceDir("vehicle"));
+        Files.createDirectories(legacyDir);
+        objectMapper.writeValue(legacyDir.resolve("v1.json").toFile(), record("v1", "a", "car"));
+        objectMapper.writeValue(legacyDir.resolve("v2.json").toFile(), record("v2", "b", "truck"));
+
+        try (SegmentedInstanceStorage storage = new SegmentedInstanceStorage(pathManager, options(1 << 20),
+                type -> Set.of("type"), true)) {
+            assertEquals(2, storage.listInstances("vehicle", 0, 10).getTotal());
+            assertEquals("b", storage.getInstance("vehicle", "v2").get("name"));
+            assertEquals(1, storage.searchInstances("vehicle", Map.of("type", "car")).size());
+
+            String id = storage.createInstance("vehicle", Map.of("name", "c", "type", "car"));
+            assertEquals(2, storage.searchInstances("vehicle", Map.of("type", "car")).size());
+            storage.deleteInstance("vehicle", id);
+            assertThrows(java.io.IOException.class, () -> storage.getInstance("vehicle", id));
+            storage.deleteInstance("vehicle", "v1");
+        }
+
+        // 重启后不再导入旧文件，已删除的实例不会恢复
+        try (SegmentedInstanceStorage storage = new SegmentedInstanceStorage(pathManager, options(1 << 20),
+                type -> Set.of("type"), true)) {
+            assertEquals(1, storage.listInstances("vehicle", 0, 10).getTotal());
+            assertThrows(java.io.IOException.class, () -> storage.getInstance("vehicle", "v1"));
+        }
+    }
+
+    @Test
+    void segmentedInstanceStorage_concurrentCreateAndUpdateAreAtomic() throws Exception {
+        PathManager pathManager = new PathManager(tempDir.toString(), "test");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try (SegmentedInstanceStorage storage = new SegmentedInstanceStorage(pathManager, options(1 << 20), null, false)) {
+            // 同一 id 并发创建只有一个成功
+            AtomicInteger created = new AtomicInteger();
+            List<Future<?>> creates = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                String name = "n" + i;
+                creates.add(pool.submit(() -> {
+                    try {
+                        storage.createInstanceWithId("vehicle", "v1", Map.of("name", name));
+                        created.incrementAndGet();
+                    } catch (java.io.IOException e) {
+                        // 已存在
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : creates) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(1, created.get());
+
+            // 并发更新不同字段互不覆盖
+            List<Future<?>> updates = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                String field = "f" + i;
+                updates.add(pool.submit(() -> {
+                    storage.updateInstance("vehicle", "v1", Map.of(field, "x"));
+                    return null;
+                }));
+            }
+            for (Future<?> f : updates) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+            Map<String, Object> instance = storage.getInstance("vehicle", "v1");
+            for (int i = 0; i < 16; i++) {
+                assertEquals("x", instance.get("f" + i), "f" + i);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
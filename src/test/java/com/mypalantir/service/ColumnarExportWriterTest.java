@@ -0,0 +1,300 @@
+package com.mypalantir.service;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryEncoder;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.util.Text;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 列式导出：Arrow IPC 流与 Parquet 文件按标准读取器回读
+ */
+class ColumnarExportWriterTest {
+
+    private static List<ColumnarExportWriter.Column> columns() {
+        return List.of(
+            new ColumnarExportWriter.Column("id", ColumnarExportWriter.TYPE_STRING),
+            new ColumnarExportWriter.Column("station", ColumnarExportWriter.TYPE_STRING),
+            new ColumnarExportWriter.Column("fee", ColumnarExportWriter.TYPE_DECIMAL),
+            new ColumnarExportWriter.Column("axles", ColumnarExportWriter.TYPE_INT64),
+            new ColumnarExportWriter.Column("day", ColumnarExportWriter.TYPE_DATE),
+            new ColumnarExportWriter.Column("passed_at", ColumnarExportWriter.TYPE_TIMESTAMP),
+            new ColumnarExportWriter.Column("score", null));
+    }
+
+    private static Map<String, Object> row(int i) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", "p" + i);
+        row.put("station", "S" + (i % 2));
+        row.put("fee", new BigDecimal("12.5").add(BigDecimal.valueOf(i)));
+        row.put("axles", i == 4 ? "not a number" : String.valueOf(2 + i % 2));
+        row.put("day", java.sql.Date.valueOf(LocalDate.of(2024, 3, 1 + i % 2)));
+        row.put("passed_at", "2024-03-01 08:00:0" + (i % 10));
+        row.put("score", 0.5 * i);
+        return row;
+    }
+
+    @Test
+    void arrow_typedColumnsAndDictionaryEncodedLowCardinalityStrings() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArrowExportWriter writer = new ArrowExportWriter(out, columns(), 4, 256);
+        for (int i = 0; i < 10; i++) {
+            writer.writeRow(row(i));
+        }
+        writer.close();
+
+        assertEquals(10, writer.getTotalRows());
+        assertEquals(1, writer.getConversionErrors());
+        assertEquals(Set.of("station"), writer.getDictionaryEncodedColumns());
+
+        List<Map<String, Object>> rows = readArrow(out.toByteArray(), schema -> {
+            assertEquals(new ArrowType.Utf8(), schema.get("id").getType());
+            assertNotNull(schema.get("station").getDictionary());
+            assertEquals(new ArrowType.Decimal(38, 2, 128), schema.get("fee").getType());
+            assertEquals(new ArrowType.Int(64, true), schema.get("axles").getType());
+            assertTrue(schema.get("day").getType() instanceof ArrowType.Date);
+            assertTrue(schema.get("passed_at").getType() instanceof ArrowType.Timestamp);
+            assertTrue(schema.get("score").getType() instanceof ArrowType.FloatingPoint);
+        });
+        assertEquals(10, rows.size());
+        assertEquals("p7", rows.get(7).get("id"));
+        assertEquals("S1", rows.get(7).get("station"));
+        assertEquals(new BigDecimal("19.50"), rows.get(7).get("fee"));
+        assertEquals(3L, rows.get(7).get("axles"));
+        assertNull(rows.get(4).get("axles"));
+        assertEquals(LocalDate.of(2024, 3, 2).toEpochDay(), ((Number) rows.get(7).get("day")).longValue());
+        assertEquals(LocalDateTime.of(2024, 3, 1, 8, 0, 7), rows.get(7).get("passed_at"));
+        assertEquals(3.5, rows.get(7).get("score"));
+    }
+
+    @Test
+    void arrow_dictionaryIsReplacedWhenItOutgrowsTheLimit() throws Exception {
+        List<ColumnarExportWriter.Column> columns = List.of(
+            new ColumnarExportWriter.Column("station", ColumnarExportWriter.TYPE_STRING));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArrowExportWriter writer = new ArrowExportWriter(out, columns, 4, 3);
+        // 首批 2 个不同值，按字典编码；第二批起新值使字典超过 3 项，字典替换为当批取值
+        String[] values = {"A", "B", "A", "B", "C", "D", "C", null, "E", "E", "F", "E"};
+        for (String value : values) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("station", value);
+            writer.writeRow(row);
+        }
+        writer.close();
+
+        assertEquals(Set.of("station"), writer.getDictionaryEncodedColumns());
+        List<Map<String, Object>> rows = readArrow(out.toByteArray(), schema -> { });
+        List<Object> read = new ArrayList<>();
+        rows.forEach(row -> read.add(row.get("station")));
+        assertEquals(Arrays.asList((Object[]) values), read);
+    }
+
+    @Test
+    void arrow_highCardinalityStringsStayPlainAndEmptyExportHasSchema() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArrowExportWriter writer = new ArrowExportWriter(out, columns(), 4, 256);
+        writer.close();
+        assertTrue(writer.getDictionaryEncodedColumns().isEmpty());
+        List<String> names = new ArrayList<>();
+        assertTrue(readArrow(out.toByteArray(), schema -> names.addAll(schema.keySet())).isEmpty());
+        assertEquals(List.of("id", "station", "fee", "axles", "day", "passed_at", "score"), names);
+    }
+
+    @Test
+    void parquet_typedColumnsWithDictionaryPagesForStrings() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ParquetExportWriter writer = new ParquetExportWriter(out, columns(), 4, 1024 * 1024);
+        for (int i = 0; i < 10; i++) {
+            writer.writeRow(row(i));
+        }
+        writer.close();
+        byte[] bytes = out.toByteArray();
+
+        List<Group> groups = new ArrayList<>();
+        try (ParquetFileReader reader = ParquetFileReader.open(new BytesInputFile(bytes))) {
+            MessageType schema = reader.getFooter().getFileMetaData().getSchema();
+            assertEquals(LogicalTypeAnnotation.stringType(), schema.getType("station").getLogicalTypeAnnotation());
+            assertEquals(LogicalTypeAnnotation.decimalType(2, 38), schema.getType("fee").getLogicalTypeAnnotation());
+            assertEquals(LogicalTypeAnnotation.dateType(), schema.getType("day").getLogicalTypeAnnotation());
+            assertEquals(10, reader.getRecordCount());
+            ColumnChunkMetaData station = reader.getFooter().getBlocks().get(0).getColumns().get(1);
+            assertTrue(station.getEncodings().contains(Encoding.PLAIN_DICTIONARY)
+                || station.getEncodings().contains(Encoding.RLE_DICTIONARY));
+
+            for (PageReadStore pages = reader.readNextRowGroup(); pages != null; pages = reader.readNextRowGroup()) {
+                RecordReader<Group> records = new ColumnIOFactory().getColumnIO(schema)
+                    .getRecordReader(pages, new GroupRecordConverter(schema));
+                for (long r = 0; r < pages.getRowCount(); r++) {
+                    groups.add(records.read());
+                }
+            }
+        }
+        assertEquals(10, groups.size());
+        Group seventh = groups.get(7);
+        assertEquals("S1", seventh.getString("station", 0));
+        assertEquals(new BigDecimal("19.50"),
+            new BigDecimal(new java.math.BigInteger(seventh.getBinary("fee", 0).getBytes()), 2));
+        assertEquals(3L, seventh.getLong("axles", 0));
+        assertEquals(0, groups.get(4).getFieldRepetitionCount("axles"));
+        assertEquals((int) LocalDate.of(2024, 3, 2).toEpochDay(), seventh.getInteger("day", 0));
+        assertEquals(LocalDateTime.of(2024, 3, 1, 8, 0, 7).toInstant(ZoneOffset.UTC).toEpochMilli(),
+            seventh.getLong("passed_at", 0));
+        assertEquals(3.5, seventh.getDouble("score", 0));
+    }
+
+    interface SchemaCheck {
+        void check(Map<String, Field> fields);
+    }
+
+    /**
+     * 读取 Arrow 流，字典列解码为原值
+     */
+    static List<Map<String, Object>> readArrow(byte[] bytes, SchemaCheck schemaCheck) throws IOException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(bytes), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            Map<String, Field> fields = new LinkedHashMap<>();
+            root.getSchema().getFields().forEach(field -> fields.put(field.getName(), field));
+            schemaCheck.check(fields);
+            while (reader.loadNextBatch()) {
+                List<ValueVector> decoded = new ArrayList<>();
+                for (FieldVector vector : root.getFieldVectors()) {
+                    if (vector.getField().getDictionary() != null) {
+                        Dictionary dictionary = reader.getDictionaryVectors().get(vector.getField().getDictionary().getId());
+                        decoded.add(DictionaryEncoder.decode(vector, dictionary));
+                    } else {
+                        decoded.add(vector);
+                    }
+                }
+                for (int r = 0; r < root.getRowCount(); r++) {
+                    Map<String, Object> row = new HashMap<>();
+                    for (int i = 0; i < decoded.size(); i++) {
+                        Object value = decoded.get(i).getObject(r);
+                        row.put(root.getVector(i).getName(), value instanceof Text ? value.toString() : value);
+                    }
+                    rows.add(row);
+                }
+                for (int i = 0; i < decoded.size(); i++) {
+                    if (decoded.get(i) != root.getVector(i)) {
+                        decoded.get(i).close();
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 内存中的 Parquet 文件
+     */
+    static class BytesInputFile implements InputFile {
+        private final byte[] bytes;
+
+        BytesInputFile(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long getLength() {
+            return bytes.length;
+        }
+
+        @Override
+        public SeekableInputStream newStream() {
+            return new SeekableInputStream() {
+                private int position;
+
+                @Override
+                public long getPos() {
+                    return position;
+                }
+
+                @Override
+                public void seek(long newPos) {
+                    position = (int) newPos;
+                }
+
+                @Override
+                public int read() {
+                    return position < bytes.length ? bytes[position++] & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (position >= bytes.length) {
+                        return -1;
+                    }
+                    int n = Math.min(len, bytes.length - position);
+                    System.arraycopy(bytes, position, b, off, n);
+                    position += n;
+                    return n;
+                }
+
+                @Override
+                public void readFully(byte[] b) throws IOException {
+                    readFully(b, 0, b.length);
+                }
+
+                @Override
+                public void readFully(byte[] b, int off, int len) throws IOException {
+                    if (bytes.length - position < len) {
+                        throw new EOFException();
+                    }
+                    read(b, off, len);
+                }
+
+                @Override
+                public int read(ByteBuffer buf) {
+                    int n = Math.min(buf.remaining(), bytes.length - position);
+                    if (n <= 0) {
+                        return buf.hasRemaining() ? -1 : 0;
+                    }
+                    buf.put(bytes, position, n);
+                    position += n;
+                    return n;
+                }
+
+                @Override
+                public void readFully(ByteBuffer buf) throws IOException {
+                    if (bytes.length - position < buf.remaining()) {
+                        throw new EOFException();
+                    }
+                    read(buf);
+                }
+            };
+        }
+    }
+}
@@ -132,4 +132,36 @@ class DataValidatorTest {
 
         validator.validateLinkData("owns", "s1", "t1", new HashMap<>());
     }
+
+    @Test
+    void compile_typeAliases_acceptedAndValidatedAgainstCompiledPattern() throws Exception {
+        ObjectType ot = new ObjectType();
+        ot.setName("Vehicle");
+        Property count = new Property();
+        count.setName("count");
+        count.setDataType("integer");
+        Property fee = new Property();
+        fee.setName("fee");
+        fee.setDataType("bigdecimal");
+        fee.setConstraints(Map.of("min", 0));
+        Property plate = new Property();
+        plate.setName("plate");
+        plate.setDataType("string");
+        plate.setConstraints(Map.of("pattern", "^[A-Z]\\d+$"));
+        ot.setProperties(List.of(count, fee, plate));
+        when(loader.getObjectType("Vehicle")).thenReturn(ot);
+
+        DataValidator.CompiledRules rules = validator.compile("Vehicle");
+        Map<String, Object> data = new HashMap<>();
+        data.put("count", 3L);
+        data.put("fee", new java.math.BigDecimal("1.5"));
+        data.put("plate", "A123");
+        rules.validate(data);
+
+        data.put("fee", -1.0);
+        assertThrows(ValidationException.class, () -> rules.validate(data));
+        data.put("fee", 1.0);
+        data.put("plate", "a-1");
+        assertThrows(ValidationException.class, () -> rules.validate(data));
+    }
 }
@@ -0,0 +1,139 @@
+package com.mypalantir.service;
+
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.meta.Property;
+import org.apache.calcite.adapter.jdbc.JdbcSchema;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.impl.ViewTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 小维度类型内存热层（H2 MySQL 模式源表 + 模拟映射，Calcite 通过 JdbcSchema 读热层表）
+ */
+class DimensionHotTierTest {
+
+    private static final String SOURCE_URL = "jdbc:h2:mem:hot_tier_source;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private Connection source;
+    private DimensionHotTier hotTier;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        source = DriverManager.getConnection(SOURCE_URL);
+        try (Statement stmt = source.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS toll_station");
+            stmt.execute("CREATE TABLE toll_station (code VARCHAR(20), name VARCHAR(50), lanes INT, remark VARCHAR(50))");
+            stmt.execute("INSERT INTO toll_station VALUES ('S1', '北站', 8, 'x'), ('S2', '南站', 6, 'y')");
+        }
+
+        MappingService mappingService = mock(MappingService.class);
+        Map<String, Object> mapping = new HashMap<>();
+        mapping.put("table_id", "t1");
+        mapping.put("column_property_mappings", Map.of("code", "编号", "name", "名称", "lanes", "车道数"));
+        when(mappingService.getMappingsByObjectType("收费站")).thenReturn(List.of(mapping));
+        when(mappingService.getTableInstance("t1")).thenReturn(Map.of("name", "toll_station", "database_id", "db1"));
+
+        ObjectType station = new ObjectType();
+        station.setName("收费站");
+        List<Property> properties = new ArrayList<>();
+        for (String name : List.of("编号", "名称", "车道数", "备注")) {
+            Property prop = new Property();
+            prop.setName(name);
+            properties.add(prop);
+        }
+        station.setProperties(properties);
+        Loader loader = mock(Loader.class);
+        when(loader.getObjectType("收费站")).thenReturn(station);
+
+        DatabaseMetadataService databaseMetadataService = mock(DatabaseMetadataService.class);
+        when(databaseMetadataService.getDatabaseType("db1")).thenReturn("h2");
+        when(databaseMetadataService.getConnectionForDatabase("db1")).thenAnswer(inv -> DriverManager.getConnection(SOURCE_URL));
+        when(databaseMetadataService.getQueryTimeoutSeconds()).thenReturn(30);
+
+        hotTier = new DimensionHotTier();
+        ReflectionTestUtils.setField(hotTier, "mappingService", mappingService);
+        ReflectionTestUtils.setField(hotTier, "databaseMetadataService", databaseMetadataService);
+        ReflectionTestUtils.setField(hotTier, "loader", loader);
+        ReflectionTestUtils.setField(hotTier, "types", List.of("收费站"));
+        ReflectionTestUtils.setField(hotTier, "maxRows", 2L);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        hotTier.destroy();
+        source.close();
+    }
+
+    @Test
+    void loadsMappedPropertiesAndServesThemThroughCalcite() throws Exception {
+        assertNull(hotTier.getLoadedTable("收费站"));
+        Map<String, Object> loaded = hotTier.refresh("收费站");
+        assertEquals(2L, loaded.get("rows"));
+        String table = hotTier.getLoadedTable("收费站");
+        assertNotNull(table);
+        assertNull(hotTier.getLoadedTable("门架"));
+
+        // 与联邦查询相同的挂载方式：热层 JdbcSchema + 以对象类型命名的视图
+        try (Connection connection = DriverManager.getConnection("jdbc:calcite:")) {
+            SchemaPlus rootSchema = connection.unwrap(CalciteConnection.class).getRootSchema();
+            rootSchema.add(DimensionHotTier.SCHEMA_NAME,
+                JdbcSchema.create(rootSchema, DimensionHotTier.SCHEMA_NAME, hotTier.getDataSource(), null, null));
+            rootSchema.add("收费站", ViewTable.viewMacro(rootSchema,
+                "SELECT * FROM \"" + DimensionHotTier.SCHEMA_NAME + "\".\"" + table + "\"",
+                Collections.emptyList(), Collections.emptyList(), false));
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT \"名称\", \"车道数\" FROM \"收费站\" WHERE \"编号\" = 'S2'")) {
+                assertTrue(rs.next());
+                assertEquals("南站", rs.getString(1));
+                assertEquals(6, rs.getInt(2));
+                assertFalse(rs.next());
+            }
+        }
+    }
+
+    @Test
+    void reloadSwapsTablesAndKeepsPreviousCopyWhenLoadFails() throws Exception {
+        hotTier.refresh("收费站");
+        String first = hotTier.getLoadedTable("收费站");
+
+        try (Statement stmt = source.createStatement()) {
+            stmt.execute("UPDATE toll_station SET lanes = 10 WHERE code = 'S1'");
+        }
+        hotTier.onMappingSynced("收费站");
+        String second = hotTier.getLoadedTable("收费站");
+        assertNotEquals(first, second);
+        try (Connection hot = hotTier.getDataSource().getConnection(); Statement stmt = hot.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT \"车道数\" FROM \"" + second + "\" WHERE \"编号\" = 'S1'")) {
+            assertTrue(rs.next());
+            assertEquals(10, rs.getInt(1));
+        }
+
+        // 超过行数上限：放弃加载，继续使用上一代数据并记录错误
+        try (Statement stmt = source.createStatement()) {
+            stmt.execute("INSERT INTO toll_station VALUES ('S3', '东站', 4, 'z')");
+        }
+        assertThrows(IOException.class, () -> hotTier.refresh("收费站"));
+        assertEquals(second, hotTier.getLoadedTable("收费站"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> entry = (Map<String, Object>) ((Map<String, Object>) hotTier.getStatus().get("entries")).get("收费站");
+        assertEquals(true, entry.get("loaded"));
+        assertTrue(entry.get("error").toString().contains("more than 2 rows"));
+
+        assertThrows(IllegalArgumentException.class, () -> hotTier.refresh("门架"));
+    }
+}
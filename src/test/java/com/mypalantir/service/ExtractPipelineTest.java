@@ -0,0 +1,116 @@
+package com.mypalantir.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.*;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * 跨库抽取流水线（H2 MySQL 模式）
+ */
+class ExtractPipelineTest {
+
+    private static final String SOURCE_URL = "jdbc:h2:mem:pipeline_src;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String TARGET_URL = "jdbc:h2:mem:pipeline_tgt;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String INSERT_PREFIX = "INSERT INTO `passage` (`id`, `station`, `fee`) VALUES ";
+    private static final String UPSERT_SUFFIX = " ON DUPLICATE KEY UPDATE `station` = VALUES(`station`), `fee` = VALUES(`fee`)";
+    private static final int ROWS = 20_000;
+
+    private Connection source;
+    private Connection target;
+    private DatabaseMetadataService databaseMetadataService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        source = DriverManager.getConnection(SOURCE_URL);
+        target = DriverManager.getConnection(TARGET_URL);
+        try (Statement stmt = source.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS gantry_passage");
+            stmt.execute("CREATE TABLE gantry_passage (pass_id VARCHAR(32) PRIMARY KEY, station VARCHAR(32), fee DECIMAL(10,2))");
+        }
+        try (PreparedStatement ps = source.prepareStatement("INSERT INTO gantry_passage VALUES (?, ?, ?)")) {
+            for (int i = 1; i <= ROWS; i++) {
+                ps.setString(1, "p" + i);
+                ps.setString(2, "S" + (i % 50));
+                ps.setBigDecimal(3, java.math.BigDecimal.valueOf(i, 2));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        try (Statement stmt = target.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS passage");
+            stmt.execute("CREATE TABLE passage (id VARCHAR(32) PRIMARY KEY, station VARCHAR(32), fee DECIMAL(10,2))");
+        }
+        databaseMetadataService = mock(DatabaseMetadataService.class);
+        when(databaseMetadataService.getConnectionForDatabase(eq("src"))).thenAnswer(inv -> DriverManager.getConnection(SOURCE_URL));
+        when(databaseMetadataService.getConnectionForDatabase(isNull())).thenAnswer(inv -> DriverManager.getConnection(TARGET_URL));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        source.close();
+        target.close();
+    }
+
+    private static Object[] toTarget(Map<String, Object> row) {
+        return new Object[]{row.get("pass_id"), row.get("station"), row.get("fee")};
+    }
+
+    private int targetCount(String where) throws SQLException {
+        try (Statement stmt = target.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM passage" + where)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    void streamsAllRowsThroughBoundedQueueToConcurrentWriters() throws Exception {
+        // 小队列 + 小批次：读取必然因背压等待写入
+        ExtractPipeline pipeline = new ExtractPipeline(databaseMetadataService, 500, 700, 3, 2);
+        ExtractPipeline.Stats stats = pipeline.run("src", "SELECT pass_id, station, fee FROM gantry_passage", List.of(),
+            null, INSERT_PREFIX, UPSERT_SUFFIX, 3, ExtractPipelineTest::toTarget);
+
+        assertEquals(ROWS, stats.getRowsRead());
+        assertEquals(ROWS, stats.getRowsWritten());
+        assertEquals(ROWS, targetCount(""));
+        assertEquals((ROWS + 699) / 700, ((Number) stats.toMap().get("batches_written")).intValue());
+        assertTrue(((Number) stats.toMap().get("read_rows_per_sec")).longValue() > 0);
+
+        // 重跑按 id 覆盖，不产生重复行
+        try (Statement stmt = source.createStatement()) {
+            stmt.executeUpdate("UPDATE gantry_passage SET station = 'MOVED' WHERE pass_id IN ('p1', 'p2')");
+        }
+        pipeline.run("src", "SELECT pass_id, station, fee FROM gantry_passage WHERE station = ?", List.of("MOVED"),
+            null, INSERT_PREFIX, UPSERT_SUFFIX, 3, ExtractPipelineTest::toTarget);
+        assertEquals(ROWS, targetCount(""));
+        assertEquals(2, targetCount(" WHERE station = 'MOVED'"));
+    }
+
+    @Test
+    void skippedRowsAreNotWritten() throws Exception {
+        ExtractPipeline pipeline = new ExtractPipeline(databaseMetadataService, 1000, 1000, 2, 4);
+        ExtractPipeline.Stats stats = pipeline.run("src", "SELECT pass_id, station, fee FROM gantry_passage", List.of(),
+            null, INSERT_PREFIX, "", 3, row -> "S0".equals(row.get("station")) ? toTarget(row) : null);
+        assertEquals(ROWS, stats.getRowsRead());
+        assertEquals(ROWS / 50, stats.getRowsWritten());
+        assertEquals(ROWS / 50, targetCount(""));
+    }
+
+    @Test
+    void writerFailure_stopsReaderAndPropagates() {
+        ExtractPipeline pipeline = new ExtractPipeline(databaseMetadataService, 100, 100, 2, 1);
+        SQLException error = assertThrows(SQLException.class, () -> pipeline.run("src",
+            "SELECT pass_id, station, fee FROM gantry_passage", List.of(), null,
+            "INSERT INTO `missing_table` (`id`, `station`, `fee`) VALUES ", "", 3, ExtractPipelineTest::toTarget));
+        assertTrue(error.getMessage().toLowerCase().contains("missing_table"));
+    }
+}
@@ -0,0 +1,170 @@
+package com.mypalantir.service;
+
+import com.mypalantir.repository.IInstanceStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 同步表 -> 图数据库流式同步（H2 MySQL 模式 + 模拟图存储）
+ */
+class GraphSyncPipelineTest {
+
+    private static final String URL = "jdbc:h2:mem:graph_sync;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final int ROWS = 5_000;
+
+    private Connection connection;
+    private DatabaseMetadataService databaseMetadataService;
+    private IInstanceStorage graphStorage;
+    private final Set<Object> mergedIds = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        connection = DriverManager.getConnection(URL);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS vehicle");
+            stmt.execute("CREATE TABLE vehicle (id VARCHAR(32) PRIMARY KEY, vlp VARCHAR(32), load_weight DECIMAL(10,2), "
+                + "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO vehicle (id, vlp, load_weight) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < ROWS; i++) {
+                ps.setString(1, String.format("v%05d", i));
+                ps.setString(2, "PLATE" + i);
+                ps.setBigDecimal(3, java.math.BigDecimal.valueOf(i, 1));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        databaseMetadataService = mock(DatabaseMetadataService.class);
+        when(databaseMetadataService.getConnectionForDatabase(isNull())).thenAnswer(inv -> DriverManager.getConnection(URL));
+        graphStorage = mock(IInstanceStorage.class);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recordMerges(int failOnCall) throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        when(graphStorage.batchMergeInstances(eq("vehicle"), anyList())).thenAnswer(inv -> {
+            int call = calls.incrementAndGet();
+            int now = inFlight.incrementAndGet();
+            peakInFlight.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(2);
+                if (call == failOnCall) {
+                    throw new IOException("graph unavailable");
+                }
+                List<Map<String, Object>> batch = inv.getArgument(1);
+                for (Map<String, Object> summary : batch) {
+                    assertFalse(summary.get("load_weight") instanceof java.math.BigDecimal);
+                    mergedIds.add(summary.get("id"));
+                }
+                return batch.size();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    private static Map<String, Object> summary(Map<String, Object> row) {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("id", row.get("id"));
+        summary.put("vlp", row.get("vlp"));
+        summary.put("load_weight", row.get("load_weight"));
+        return summary;
+    }
+
+    @Test
+    void streamsTableInIdOrderWithBoundedParallelism() throws Exception {
+        recordMerges(-1);
+        List<String> checkpoints = Collections.synchronizedList(new ArrayList<>());
+        GraphSyncPipeline pipeline = new GraphSyncPipeline(databaseMetadataService, graphStorage, 200, 100, 2, 3, 1000, 0, 0);
+
+        GraphSyncPipeline.Stats stats = pipeline.syncTable("vehicle", "vehicle", null, null,
+            GraphSyncPipelineTest::summary, (lastId, rows) -> checkpoints.add(lastId));
+
+        assertEquals(ROWS, stats.getRowsSynced());
+        assertEquals(ROWS, mergedIds.size());
+        assertTrue(peakInFlight.get() <= 3, "in-flight batches must stay within max parallelism");
+        assertEquals(String.format("v%05d", ROWS - 1), stats.getLastId());
+        // 检查点单调前移
+        List<String> sorted = new ArrayList<>(checkpoints);
+        Collections.sort(sorted);
+        assertEquals(sorted, checkpoints);
+        assertEquals(ROWS / 100, ((Number) stats.toMap().get("batches")).intValue());
+    }
+
+    @Test
+    void failedSyncResumesAfterContiguousCheckpoint() throws Exception {
+        recordMerges(7);
+        AtomicReference<String> checkpoint = new AtomicReference<>();
+        AtomicReference<Long> committedRows = new AtomicReference<>(0L);
+        GraphSyncPipeline pipeline = new GraphSyncPipeline(databaseMetadataService, graphStorage, 200, 100, 4, 4, 1000, 0, 0);
+
+        IOException error = assertThrows(IOException.class, () -> pipeline.syncTable("vehicle", "vehicle", null, null,
+            GraphSyncPipelineTest::summary, (lastId, rows) -> {
+                checkpoint.set(lastId);
+                committedRows.set(rows);
+            }));
+        assertEquals("graph unavailable", error.getMessage());
+        assertNotNull(checkpoint.get());
+        assertTrue(committedRows.get() < ROWS);
+
+        // 续传：只读取检查点之后的行，合并后覆盖全部 id
+        reset(graphStorage);
+        recordMerges(-1);
+        GraphSyncPipeline.Stats resumed = pipeline.syncTable("vehicle", "vehicle", null, checkpoint.get(),
+            GraphSyncPipelineTest::summary, null);
+        assertEquals(ROWS - committedRows.get(), resumed.getRowsSynced());
+        assertEquals(checkpoint.get(), resumed.toMap().get("resumed_after"));
+        assertEquals(ROWS, mergedIds.size());
+    }
+
+    @Test
+    void transientFailureIsRetriedAndHalvesParallelism() throws Exception {
+        recordMerges(3);
+        GraphSyncPipeline pipeline = new GraphSyncPipeline(databaseMetadataService, graphStorage, 200, 500, 4, 4, 1000, 2, 0);
+
+        GraphSyncPipeline.Stats stats = pipeline.syncTable("vehicle", "vehicle", null, null, GraphSyncPipelineTest::summary, null);
+
+        assertEquals(ROWS, stats.getRowsSynced());
+        assertEquals(1L, stats.toMap().get("retries"));
+        assertEquals(2, stats.toMap().get("parallelism_min"));
+    }
+
+    @Test
+    void adaptiveLimit_increasesAdditivelyAndHalvesOncePerWindow() {
+        GraphSyncPipeline.AdaptiveLimit limit = new GraphSyncPipeline.AdaptiveLimit(4, 8, 1_000_000);
+        for (int i = 0; i < 50; i++) {
+            limit.record(System.nanoTime(), 10, true);
+        }
+        assertEquals(8, limit.current());
+
+        long staleBatchStart = System.nanoTime();
+        limit.record(System.nanoTime(), 5_000_000, true);
+        assertEquals(4, limit.current());
+        // 减半之前开始的慢批次属于同一拥塞窗口，不再重复减半
+        limit.record(staleBatchStart, 5_000_000, true);
+        assertEquals(4, limit.current());
+        limit.record(System.nanoTime(), 0, false);
+        assertEquals(2, limit.current());
+        assertEquals(2, limit.observedMin());
+        assertEquals(8, limit.observedMax());
+    }
+}
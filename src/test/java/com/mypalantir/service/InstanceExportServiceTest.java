@@ -0,0 +1,166 @@
+package com.mypalantir.service;
+
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.meta.Property;
+import com.mypalantir.query.OntologyQuery;
+import com.mypalantir.query.QueryExecutor;
+import com.mypalantir.repository.IInstanceStorage;
+import com.mypalantir.repository.InstanceStorage;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 流式导出：查询结果逐行写出不经过 QueryResult，实例按页读取
+ */
+class InstanceExportServiceTest {
+
+    private QueryService queryService;
+    private IInstanceStorage instanceStorage;
+    private InstanceExportService service;
+    private Loader loader;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        queryService = mock(QueryService.class);
+        instanceStorage = mock(IInstanceStorage.class);
+        service = new InstanceExportService();
+        ReflectionTestUtils.setField(service, "queryService", queryService);
+        ReflectionTestUtils.setField(service, "instanceStorage", instanceStorage);
+        ReflectionTestUtils.setField(service, "environment", new MockEnvironment());
+        loader = mock(Loader.class);
+        ReflectionTestUtils.setField(service, "loader", loader);
+        ObjectType passage = new ObjectType();
+        passage.setName("passage");
+        passage.setProperties(List.of(property("station", "string"), property("fee", "bigdecimal"),
+            property("day", "date")));
+        when(loader.getObjectType("passage")).thenReturn(passage);
+    }
+
+    private static Property property(String name, String dataType) {
+        Property property = new Property();
+        property.setName(name);
+        property.setDataType(dataType);
+        return property;
+    }
+
+    @Test
+    void exportQuery_writesRowsAsTheyAreRead() throws Exception {
+        OntologyQuery query = new OntologyQuery();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Integer> bytesBeforeRow = new ArrayList<>();
+        when(queryService.streamQuery(eq(query), any())).thenAnswer(inv -> {
+            QueryExecutor.RowConsumer consumer = inv.getArgument(1);
+            consumer.columns(List.of("id", "day"));
+            for (int i = 0; i < 3; i++) {
+                bytesBeforeRow.add(out.size());
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("id", "v" + i);
+                row.put("day", LocalDate.of(2024, 3, i + 1));
+                consumer.accept(row);
+            }
+            return 3L;
+        });
+
+        assertEquals(3, service.exportQuery(query, out));
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("{\"id\":\"v0\",\"day\":\"2024-03-01\"}", lines[0]);
+        // 每行在读取下一行前已写出
+        assertEquals(0, bytesBeforeRow.get(0));
+        assertEquals(lines[0].length() + 1, bytesBeforeRow.get(1));
+        verify(queryService, never()).executeQuery(any(OntologyQuery.class));
+    }
+
+    @Test
+    void exportQuery_wrapsQueryFailures() throws Exception {
+        when(queryService.streamQuery(any(), any())).thenThrow(new IllegalStateException("boom"));
+        IOException e = assertThrows(IOException.class, () -> service.exportQuery(new OntologyQuery(), new ByteArrayOutputStream()));
+        assertTrue(e.getMessage().contains("boom"));
+    }
+
+    @Test
+    void exportInstances_pagesThroughStorage() throws Exception {
+        when(instanceStorage.listInstances(eq("vehicle"), anyInt(), eq(2))).thenAnswer(inv -> {
+            int offset = inv.getArgument(1);
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (int i = offset; i < Math.min(offset + 2, 5); i++) {
+                items.add(Map.of("id", "v" + i));
+            }
+            return new InstanceStorage.ListResult(items, 5);
+        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(5, service.exportInstances("vehicle", out, 2));
+        assertEquals(5, out.toString(StandardCharsets.UTF_8).split("\n").length);
+        verify(instanceStorage, times(3)).listInstances(eq("vehicle"), anyInt(), eq(2));
+    }
+
+    @Test
+    void exportInstances_arrowColumnsTypedFromOntology() throws Exception {
+        when(instanceStorage.listInstances(eq("passage"), anyInt(), eq(4))).thenAnswer(inv -> {
+            int offset = inv.getArgument(1);
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (int i = offset; i < Math.min(offset + 4, 6); i++) {
+                // 文件存储中的值都是字符串，按本体类型写出
+                items.add(Map.of("id", "p" + i, "station", "G00" + (i % 2), "fee", "1" + i + ".5", "day", "2024-03-0" + (i + 1)));
+            }
+            return new InstanceStorage.ListResult(items, 6);
+        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(6, service.exportInstances("passage", InstanceExportService.FORMAT_ARROW, out, 4));
+
+        List<Map<String, Object>> rows = ColumnarExportWriterTest.readArrow(out.toByteArray(), fields -> {
+            assertEquals(List.of("id", "station", "fee", "day"), new ArrayList<>(fields.keySet()));
+            assertNotNull(fields.get("station").getDictionary());
+        });
+        assertEquals(6, rows.size());
+        assertEquals("G001", rows.get(5).get("station"));
+        assertEquals(new BigDecimal("15.50"), rows.get(5).get("fee"));
+        assertEquals((int) LocalDate.of(2024, 3, 6).toEpochDay(), rows.get(5).get("day"));
+    }
+
+    @Test
+    void exportQuery_parquetInfersColumnsThatAreNotProperties() throws Exception {
+        OntologyQuery query = new OntologyQuery();
+        query.setFrom("passage");
+        when(queryService.streamQuery(eq(query), any())).thenAnswer(inv -> {
+            QueryExecutor.RowConsumer consumer = inv.getArgument(1);
+            consumer.columns(List.of("station", "total"));
+            consumer.accept(Map.of("station", "G001", "total", 3L));
+            return 1L;
+        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(1, service.exportQuery(query, InstanceExportService.FORMAT_PARQUET, out, 16));
+        byte[] bytes = out.toByteArray();
+        assertEquals("PAR1", new String(bytes, 0, 4, StandardCharsets.US_ASCII));
+        try (ParquetFileReader reader = ParquetFileReader.open(new ColumnarExportWriterTest.BytesInputFile(bytes))) {
+            MessageType schema = reader.getFooter().getFileMetaData().getSchema();
+            assertEquals(LogicalTypeAnnotation.stringType(),
+                schema.getType("station").getLogicalTypeAnnotation());
+            assertEquals(PrimitiveType.PrimitiveTypeName.INT64,
+                schema.getType("total").asPrimitiveType().getPrimitiveTypeName());
+        }
+    }
+}
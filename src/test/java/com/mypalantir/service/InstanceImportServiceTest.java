@@ -0,0 +1,182 @@
+package com.mypalantir.service;
+
+import com.mypalantir.config.Config;
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.meta.Property;
+import com.mypalantir.repository.IInstanceStorage;
+import com.mypalantir.repository.PathManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class InstanceImportServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private InstanceImportService service;
+    private IInstanceStorage storage;
+    private PathManager pathManager;
+    private final Map<String, Map<String, Object>> stored = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Loader loader = mock(Loader.class);
+        ObjectType ot = new ObjectType();
+        ot.setName("Vehicle");
+        ot.setProperties(List.of(property("id", "string", true), property("plate", "string", true),
+            property("axles", "int", false), property("paid", "boolean", false)));
+        when(loader.getObjectType("Vehicle")).thenReturn(ot);
+
+        storage = mock(IInstanceStorage.class);
+        pathManager = new PathManager(tempDir.toString(), "test");
+        Config config = new Config();
+        ReflectionTestUtils.setField(config, "importChunkSize", 1000);
+        ReflectionTestUtils.setField(config, "importParallelism", 4);
+        ReflectionTestUtils.setField(config, "importErrorSampleSize", 2);
+
+        service = new InstanceImportService();
+        ReflectionTestUtils.setField(service, "instanceStorage", storage);
+        ReflectionTestUtils.setField(service, "dataValidator", new DataValidator(loader));
+        ReflectionTestUtils.setField(service, "pathManager", pathManager);
+        ReflectionTestUtils.setField(service, "config", config);
+    }
+
+    private static Property property(String name, String dataType, boolean required) {
+        Property p = new Property();
+        p.setName(name);
+        p.setDataType(dataType);
+        p.setRequired(required);
+        return p;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recordMerges(AtomicBoolean failOnce, String failingId) throws IOException {
+        doAnswer(inv -> {
+            List<Map<String, Object>> rows = inv.getArgument(1);
+            if (failOnce != null && rows.stream().anyMatch(r -> failingId.equals(r.get("id")))
+                    && failOnce.compareAndSet(true, false)) {
+                throw new IOException("storage unavailable");
+            }
+            for (Map<String, Object> row : rows) {
+                stored.put((String) row.get("id"), row);
+            }
+            return rows.size();
+        }).when(storage).batchMergeInstances(eq("Vehicle"), anyList());
+    }
+
+    private Map<String, Object> await(String jobId) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            Map<String, Object> job = service.getJob(jobId);
+            String status = (String) job.get("status");
+            if (InstanceImportService.STATUS_COMPLETED.equals(status) || InstanceImportService.STATUS_FAILED.equals(status)) {
+                return job;
+            }
+            Thread.sleep(20);
+        }
+        fail("import job did not finish");
+        return null;
+    }
+
+    private static ByteArrayInputStream content(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void csvImport_coercesTypesAndSamplesRowErrors() throws Exception {
+        recordMerges(null, null);
+        String csv = "\uFEFFid,plate,axles,paid\n"
+            + "v1,\"京A,001\",2,true\n"
+            + "v2,\"B \"\"x\"\"\",3,0\n"
+            + "v3,,2,1\n"
+            + "v4,C1,many,1\n"
+            + "v5,D1,6\n"
+            + ",E1,2,1\n";
+        InstanceImportService.ImportJob job = service.submit("Vehicle", content(csv), "vehicles.csv", null, 2, 2, null);
+        Map<String, Object> result = await(job.getId());
+
+        assertEquals(InstanceImportService.STATUS_COMPLETED, result.get("status"));
+        assertEquals(2, ((Number) result.get("rowsWritten")).intValue());
+        assertEquals(4, ((Number) result.get("rowsFailed")).intValue());
+        assertEquals(6, ((Number) result.get("checkpoint")).intValue());
+        assertEquals(2, ((List<?>) result.get("errorSample")).size());
+        assertEquals("京A,001", stored.get("v1").get("plate"));
+        assertEquals(2L, stored.get("v1").get("axles"));
+        assertEquals("B \"x\"", stored.get("v2").get("plate"));
+        assertEquals(Boolean.FALSE, stored.get("v2").get("paid"));
+        verify(storage, times(1)).batchMergeInstances(eq("Vehicle"), anyList());
+        // 成功后删除落盘数据，任务状态保留
+        assertFalse(Files.exists(Path.of(pathManager.getImportJobDir(), job.getId() + ".data")));
+        assertTrue(Files.exists(Path.of(pathManager.getImportJobDir(), job.getId() + ".json")));
+    }
+
+    @Test
+    void failedChunk_resumesFromCheckpoint() throws Exception {
+        AtomicBoolean failOnce = new AtomicBoolean(true);
+        recordMerges(failOnce, "v250");
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 1; i <= 1000; i++) {
+            ndjson.append("{\"vid\":\"v").append(i).append("\",\"plate\":\"P").append(i).append("\",\"axles\":2}\n");
+        }
+        InstanceImportService.ImportJob job = service.submit("Vehicle", content(ndjson.toString()), "vehicles.ndjson",
+            null, 100, 1, "vid");
+        Map<String, Object> failed = await(job.getId());
+        assertEquals(InstanceImportService.STATUS_FAILED, failed.get("status"));
+        assertEquals(200, ((Number) failed.get("checkpoint")).intValue());
+        assertTrue(((String) failed.get("error")).contains("storage unavailable"));
+
+        service.resume(job.getId());
+        Map<String, Object> resumed = await(job.getId());
+        assertEquals(InstanceImportService.STATUS_COMPLETED, resumed.get("status"));
+        assertEquals(1000, ((Number) resumed.get("checkpoint")).intValue());
+        assertEquals(1000, ((Number) resumed.get("rowsWritten")).intValue());
+        assertEquals(1000, stored.size());
+        assertEquals(2, ((Number) resumed.get("attempts")).intValue());
+
+        assertThrows(IllegalStateException.class, () -> service.resume(job.getId()));
+    }
+
+    @Test
+    void shortWrite_failsJob() throws Exception {
+        // 存储只写入部分行（或未实现批量写入返回 0）时任务失败，不把未写入的行计为成功
+        when(storage.batchMergeInstances(eq("Vehicle"), anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(1)).size() - 1);
+        InstanceImportService.ImportJob job = service.submit("Vehicle", content("id,plate\nv1,A\nv2,B\n"), "vehicles.csv",
+            null, 10, 1, null);
+        Map<String, Object> result = await(job.getId());
+        assertEquals(InstanceImportService.STATUS_FAILED, result.get("status"));
+        assertEquals(0, ((Number) result.get("rowsWritten")).intValue());
+        assertTrue(((String) result.get("error")).contains("wrote 1 of 2 rows"));
+    }
+
+    @Test
+    void loadJobs_marksInterruptedJobsFailed() throws Exception {
+        recordMerges(null, null);
+        InstanceImportService.ImportJob job = service.submit("Vehicle", content("{\"id\":\"v1\",\"plate\":\"A\"}\n"),
+            "v.jsonl", null, null, null, null);
+        await(job.getId());
+        Path jobFile = Path.of(pathManager.getImportJobDir(), job.getId() + ".json");
+        Files.writeString(jobFile, Files.readString(jobFile).replace("\"COMPLETED\"", "\"RUNNING\""));
+
+        InstanceImportService restarted = new InstanceImportService();
+        ReflectionTestUtils.setField(restarted, "pathManager", pathManager);
+        restarted.loadJobs();
+        Map<String, Object> loaded = restarted.getJob(job.getId());
+        assertEquals(InstanceImportService.STATUS_FAILED, loaded.get("status"));
+        assertEquals("interrupted by restart", loaded.get("error"));
+    }
+}
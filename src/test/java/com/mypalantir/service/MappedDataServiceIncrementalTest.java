@@ -0,0 +1,245 @@
+package com.mypalantir.service;
+
+import com.mypalantir.config.Config;
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.meta.Property;
+import com.mypalantir.repository.IInstanceStorage;
+import com.mypalantir.repository.PathManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 映射增量抽取（H2 MySQL 模式，源库与默认库分离）
+ */
+class MappedDataServiceIncrementalTest {
+
+    private static final String SOURCE_URL = "jdbc:h2:mem:incremental_src;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String TARGET_URL = "jdbc:h2:mem:incremental_tgt;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final Timestamp BASE = Timestamp.valueOf("2024-03-01 08:00:00");
+
+    @TempDir
+    Path tempDir;
+
+    private Connection source;
+    private Connection target;
+    private MappedDataService service;
+    private final Map<String, Object> mapping = new HashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        source = DriverManager.getConnection(SOURCE_URL);
+        target = DriverManager.getConnection(TARGET_URL);
+        try (Statement stmt = source.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS toll_record");
+            stmt.execute("CREATE TABLE toll_record (record_id VARCHAR(64) PRIMARY KEY, plate VARCHAR(64), fee DECIMAL(10,2), updated_time TIMESTAMP)");
+        }
+        try (Statement stmt = target.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS tollrecord");
+            stmt.execute("CREATE TABLE tollrecord (id VARCHAR(64) PRIMARY KEY, plate VARCHAR(64), fee DECIMAL(10,2), "
+                + "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+
+        mapping.put("table_id", "t1");
+        mapping.put("column_property_mappings", new LinkedHashMap<>(Map.of("record_id", "id", "plate", "plate", "fee", "fee")));
+        mapping.put("primary_key_columns", List.of("record_id"));
+        MappingService mappingService = mock(MappingService.class);
+        when(mappingService.getMapping("m1")).thenReturn(mapping);
+
+        IInstanceStorage instanceStorage = mock(IInstanceStorage.class);
+        when(instanceStorage.getInstance("table", "t1")).thenReturn(Map.of("name", "toll_record", "database_id", "src"));
+
+        ObjectType objectType = new ObjectType();
+        objectType.setName("TollRecord");
+        List<Property> properties = new ArrayList<>();
+        for (String name : List.of("id", "plate", "fee")) {
+            Property property = new Property();
+            property.setName(name);
+            property.setDataType("fee".equals(name) ? "float" : "string");
+            properties.add(property);
+        }
+        objectType.setProperties(properties);
+        Loader loader = mock(Loader.class);
+        when(loader.getObjectType("TollRecord")).thenReturn(objectType);
+
+        DatabaseMetadataService databaseMetadataService = mock(DatabaseMetadataService.class);
+        when(databaseMetadataService.getColumns("src", "toll_record")).thenReturn(List.of(
+            column("record_id", "VARCHAR", 64), column("plate", "VARCHAR", 64), column("fee", "DECIMAL", 10),
+            column("updated_time", "TIMESTAMP", 19)));
+        when(databaseMetadataService.tableExists(isNull(), eq("tollrecord"))).thenReturn(true);
+        when(databaseMetadataService.getDatabaseType(any())).thenReturn("mysql");
+        when(databaseMetadataService.getQueryTimeoutSeconds()).thenReturn(30);
+        when(databaseMetadataService.getConnectionForDatabase("src")).thenAnswer(inv -> DriverManager.getConnection(SOURCE_URL));
+        when(databaseMetadataService.getConnectionForDatabase(isNull())).thenAnswer(inv -> DriverManager.getConnection(TARGET_URL));
+
+        service = new MappedDataService();
+        ReflectionTestUtils.setField(service, "mappingService", mappingService);
+        ReflectionTestUtils.setField(service, "instanceStorage", instanceStorage);
+        ReflectionTestUtils.setField(service, "loader", loader);
+        ReflectionTestUtils.setField(service, "databaseMetadataService", databaseMetadataService);
+        ReflectionTestUtils.setField(service, "checkpointStore",
+            new ExtractCheckpointStore(new PathManager(tempDir.toString(), "test")));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        source.close();
+        target.close();
+    }
+
+    private static Map<String, Object> column(String name, String type, int size) {
+        Map<String, Object> column = new HashMap<>();
+        column.put("name", name);
+        column.put("data_type", type);
+        column.put("column_size", size);
+        column.put("nullable", true);
+        return column;
+    }
+
+    private void upsertSource(int from, int to, String platePrefix, int minuteOffset) throws SQLException {
+        try (PreparedStatement ps = source.prepareStatement("MERGE INTO toll_record KEY (record_id) VALUES (?, ?, ?, ?)")) {
+            for (int i = from; i < to; i++) {
+                ps.setString(1, "r" + i);
+                ps.setString(2, platePrefix + i);
+                ps.setBigDecimal(3, new java.math.BigDecimal(i + ".50"));
+                ps.setTimestamp(4, new Timestamp(BASE.getTime() + (i + minuteOffset) * 60_000L));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private String targetPlate(String id) throws SQLException {
+        try (PreparedStatement ps = target.prepareStatement("SELECT plate FROM tollrecord WHERE id = ?")) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private int targetCount() throws SQLException {
+        try (Statement stmt = target.createStatement(); ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM tollrecord")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    void watermarkMode_movesOnlyRowsPastCheckpoint() throws Exception {
+        mapping.put("incremental_mode", "watermark");
+        mapping.put("watermark_column", "updated_time");
+        upsertSource(0, 100, "P", 0);
+
+        MappedDataService.SyncExtractResult first = service.syncExtractWithTable("TollRecord", "m1", null);
+        assertEquals(100, first.rowsRead);
+        assertEquals(100, first.rowsExtracted);
+        assertEquals("2024-03-01 09:39:00.0", first.checkpoint);
+        assertEquals(100, targetCount());
+
+        // 3 行被修改（水位线前移），2 行新增
+        upsertSource(10, 13, "CHANGED-", 200);
+        upsertSource(100, 102, "P", 0);
+        MappedDataService.SyncExtractResult second = service.syncExtractWithTable("TollRecord", "m1", null);
+        assertEquals(5, second.rowsRead);
+        assertEquals(5, second.rowsExtracted);
+        assertEquals("CHANGED-11", targetPlate("r11"));
+        assertEquals(102, targetCount());
+
+        MappedDataService.SyncExtractResult idle = service.syncExtractWithTable("TollRecord", "m1", null);
+        assertEquals(0, idle.rowsRead);
+        assertEquals(0, idle.rowsExtracted);
+        assertEquals(second.checkpoint, idle.checkpoint);
+        assertEquals("watermark", idle.toMap().get("extract_mode"));
+
+        MappedDataService.SyncExtractResult refresh = service.syncExtractWithTable("TollRecord", "m1", null, true);
+        assertEquals(102, refresh.rowsRead);
+    }
+
+    @Test
+    void rowHashMode_writesOnlyChangedRows() throws Exception {
+        mapping.put("incremental_mode", "row_hash");
+        upsertSource(0, 50, "P", 0);
+
+        MappedDataService.SyncExtractResult first = service.syncExtractWithTable("TollRecord", "m1", null);
+        assertEquals(50, first.rowsRead);
+        assertEquals(50, first.rowsExtracted);
+        assertEquals(50, first.checkpoint);
+
+        try (Statement stmt = source.createStatement()) {
+            stmt.executeUpdate("UPDATE toll_record SET plate = 'FIXED' WHERE record_id IN ('r3', 'r7')");
+        }
+        MappedDataService.SyncExtractResult second = service.syncExtractWithTable("TollRecord", "m1", null);
+        assertEquals(50, second.rowsRead);
+        assertEquals(2, second.rowsExtracted);
+        assertEquals("FIXED", targetPlate("r7"));
+
+        // 模式变化时检查点作废，重新全量
+        mapping.put("incremental_mode", "watermark");
+        mapping.put("watermark_column", "updated_time");
+        assertEquals(50, service.syncExtractWithTable("TollRecord", "m1", null).rowsRead);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void graphSync_failureKeepsCheckpointAndResumeContinuesAfterIt() throws Exception {
+        upsertSource(0, 10, "P", 0);
+        service.syncExtractWithTable("TollRecord", "m1", null);
+        IInstanceStorage graphStorage = mock(IInstanceStorage.class);
+        ReflectionTestUtils.setField(service, "graphInstanceStorage", graphStorage);
+        Config config = mock(Config.class);
+        when(config.getExtractFetchSize()).thenReturn(100);
+        when(config.getGraphSyncBatchSize()).thenReturn(3);
+        when(config.getGraphSyncParallelism()).thenReturn(1);
+        when(config.getGraphSyncMaxParallelism()).thenReturn(1);
+        when(config.getGraphSyncTargetLatencyMs()).thenReturn(1000L);
+        ReflectionTestUtils.setField(service, "config", config);
+
+        List<Object> merged = new ArrayList<>();
+        when(graphStorage.batchMergeInstances(eq("TollRecord"), anyList()))
+            .thenAnswer(inv -> {
+                List<Map<String, Object>> batch = inv.getArgument(1);
+                batch.forEach(summary -> merged.add(summary.get("id")));
+                return batch.size();
+            })
+            .thenThrow(new java.io.IOException("graph down"))
+            .thenAnswer(inv -> {
+                List<Map<String, Object>> batch = inv.getArgument(1);
+                batch.forEach(summary -> merged.add(summary.get("id")));
+                return batch.size();
+            });
+
+        assertThrows(java.io.IOException.class, () -> service.syncTableToGraph("TollRecord", "default", false));
+        ExtractCheckpointStore store = (ExtractCheckpointStore) ReflectionTestUtils.getField(service, "checkpointStore");
+        ExtractCheckpointStore.GraphSyncCheckpoint checkpoint = store.loadGraphSync("TollRecord");
+        assertEquals("FAILED", checkpoint.getStatus());
+        assertEquals("r2", checkpoint.getLastId());
+        assertEquals(3, checkpoint.getRowsSynced());
+
+        Map<String, Object> resumed = service.syncTableToGraph("TollRecord", null, false);
+        assertEquals("r2", resumed.get("resumed_after"));
+        assertEquals(7L, resumed.get("rows_synced"));
+        assertEquals(10, new HashSet<>(merged).size());
+        assertNull(store.loadGraphSync("TollRecord"));
+    }
+
+    @Test
+    void rowHash_distinguishesNullFromEmpty() {
+        Map<String, Object> withNull = new HashMap<>();
+        withNull.put("a", null);
+        assertNotEquals(MappedDataService.rowHash(withNull), MappedDataService.rowHash(Map.of("a", "")));
+        assertEquals(MappedDataService.rowHash(new LinkedHashMap<>(Map.of("a", 1, "b", 2))),
+            MappedDataService.rowHash(new TreeMap<>(Map.of("b", 2, "a", 1))));
+    }
+}
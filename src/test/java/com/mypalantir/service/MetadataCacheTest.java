@@ -0,0 +1,177 @@
+package com.mypalantir.service;
+
+import com.mypalantir.config.Config;
+import com.mypalantir.config.DatabaseConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 数据源元数据缓存（TTL、提前后台刷新、并发加载合并，以及 DatabaseMetadataService 经缓存读取 H2 元数据）
+ */
+class MetadataCacheTest {
+
+    private static final String URL = "jdbc:h2:mem:metadata_cache;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    private MetadataCache cache(long ttlMs, long refreshAheadMs, Executor refresher) {
+        return new MetadataCache(ttlMs, refreshAheadMs, id -> mock(Connection.class), refresher, now::get);
+    }
+
+    @Test
+    void servesWithinTtlAndReloadsAfterExpiry() throws Exception {
+        MetadataCache cache = cache(10_000, 0, Runnable::run);
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache.MetadataLoader<List<String>> loader = conn -> List.of("v" + loads.incrementAndGet());
+
+        assertEquals(List.of("v1"), cache.get("db1", MetadataCache.TABLES, null, null, loader));
+        now.addAndGet(9_000);
+        assertEquals(List.of("v1"), cache.get("db1", MetadataCache.TABLES, null, null, loader));
+        now.addAndGet(1_000);
+        assertEquals(List.of("v2"), cache.get("db1", MetadataCache.TABLES, null, null, loader));
+
+        // 失效后立即重新加载；其他数据库不受影响
+        cache.get("db2", MetadataCache.TABLES, null, null, loader);
+        assertEquals(1, cache.invalidate("db1"));
+        assertEquals(List.of("v4"), cache.get("db1", MetadataCache.TABLES, null, null, loader));
+        assertEquals(List.of("v3"), cache.get("db2", MetadataCache.TABLES, null, null, loader));
+
+        Map<String, Object> stats = cache.stats();
+        assertEquals(2L, stats.get("hits"));
+        assertEquals(4L, stats.get("misses"));
+    }
+
+    @Test
+    void refreshesAheadOfExpiryInBackground() throws Exception {
+        List<Runnable> queued = new ArrayList<>();
+        MetadataCache cache = cache(10_000, 2_000, queued::add);
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache.MetadataLoader<Integer> loader = conn -> loads.incrementAndGet();
+
+        assertEquals(1, cache.get("db1", MetadataCache.COLUMNS, "t1", null, loader));
+        now.addAndGet(8_500);
+        // 进入提前刷新窗口：返回旧值，只排队一次后台刷新
+        assertEquals(1, cache.get("db1", MetadataCache.COLUMNS, "t1", null, loader));
+        assertEquals(1, cache.get("db1", MetadataCache.COLUMNS, "t1", null, loader));
+        assertEquals(1, queued.size());
+
+        queued.get(0).run();
+        now.addAndGet(5_000);
+        assertEquals(2, cache.get("db1", MetadataCache.COLUMNS, "t1", null, loader));
+        assertEquals(1L, cache.stats().get("background_refreshes"));
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        MetadataCache cache = cache(10_000, 0, Runnable::run);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache.MetadataLoader<String> slowLoader = conn -> {
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "tables";
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(pool.submit(() -> cache.get("db1", MetadataCache.TABLES, null, null, slowLoader)));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                results.add(pool.submit(() -> cache.get("db1", MetadataCache.TABLES, null, null, slowLoader)));
+            }
+            // 等待合并的请求都挂到同一次加载上
+            long deadline = System.currentTimeMillis() + 5_000;
+            while ((Long) cache.stats().get("coalesced") < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("tables", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(3L, cache.stats().get("coalesced"));
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        MetadataCache cache = cache(10_000, 0, Runnable::run);
+        assertThrows(SQLException.class, () -> cache.get("db1", MetadataCache.TABLES, null, null, conn -> {
+            throw new SQLException("ORA-01013: user requested cancel");
+        }));
+        assertEquals(0, cache.stats().get("entries"));
+    }
+
+    @Test
+    void metadataServiceCachesTablesColumnsAndPrimaryKeys() throws Exception {
+        try (Connection conn = DriverManager.getConnection(URL, "sa", ""); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS gantry");
+            stmt.execute("DROP TABLE IF EXISTS lane");
+            stmt.execute("CREATE TABLE gantry (gantry_id VARCHAR(20) PRIMARY KEY, name VARCHAR(50))");
+        }
+        DatabaseMetadataService service = new DatabaseMetadataService();
+        DatabaseConfig.DatabaseConnectionManager connectionManager = mock(DatabaseConfig.DatabaseConnectionManager.class);
+        Config config = mock(Config.class);
+        when(connectionManager.getJdbcUrl()).thenReturn(URL);
+        when(connectionManager.getConfig()).thenReturn(config);
+        when(config.getDbType()).thenReturn("h2");
+        when(config.getDbUser()).thenReturn("sa");
+        when(config.getDbPassword()).thenReturn("");
+        ReflectionTestUtils.setField(service, "connectionManager", connectionManager);
+        ReflectionTestUtils.setField(service, "poolMaxSize", 2);
+        ReflectionTestUtils.setField(service, "poolIdleTimeoutMs", 600_000L);
+        ReflectionTestUtils.setField(service, "poolMaxLifetimeMs", 1_800_000L);
+        ReflectionTestUtils.setField(service, "poolConnectionTimeoutMs", 5_000L);
+        try {
+            List<Map<String, Object>> columns = service.getColumns(null, "gantry");
+            assertEquals(2, columns.size());
+            assertEquals(List.of("gantry_id"), service.getPrimaryKeyColumns(null, "gantry"));
+            long tables = service.getTables((String) null).stream().filter(t -> "gantry".equals(t.get("name"))).count();
+            assertEquals(1, tables);
+
+            // 调用方修改返回结果不影响缓存
+            columns.get(0).put("name", "changed");
+            assertNotEquals("changed", service.getColumns(null, "gantry").get(0).get("name"));
+
+            // 绕过 executeUpdate 的改表在失效前不可见，经 executeUpdate 的 DDL 自动失效
+            try (Connection conn = DriverManager.getConnection(URL, "sa", ""); Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE gantry ADD COLUMN road VARCHAR(20)");
+            }
+            assertEquals(2, service.getColumns(null, "gantry").size());
+            service.invalidateMetadata(null, "gantry");
+            assertEquals(3, service.getColumns(null, "gantry").size());
+
+            service.executeUpdate("CREATE TABLE lane (lane_id INT)", null);
+            assertTrue(service.getTables((String) null).stream().anyMatch(t -> "lane".equals(t.get("name"))));
+
+            Map<String, Object> stats = service.getMetadataCacheStats();
+            assertEquals(true, stats.get("enabled"));
+            assertTrue((Long) stats.get("hits") >= 1);
+        } finally {
+            service.destroy();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.mypalantir.service;
+
+import com.mypalantir.repository.IInstanceStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MetadataRegistryTest {
+
+    private IInstanceStorage storage;
+    private MetadataRegistry registry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = mock(IInstanceStorage.class);
+        registry = new MetadataRegistry();
+        ReflectionTestUtils.setField(registry, "instanceStorage", storage);
+        ReflectionTestUtils.setField(registry, "enabled", true);
+        ReflectionTestUtils.setField(registry, "refreshIntervalMs", 0L);
+
+        when(storage.searchInstances(eq("mapping"), anyMap())).thenReturn(List.of(
+            mapping("m1", "vehicle", "t1", "vehicle_tbl", Map.of("vlp_col", "vlp")),
+            mapping("m2", "passage", "t2", "passage_tbl", Map.of())));
+        when(storage.searchInstances(eq("table"), anyMap())).thenReturn(List.of(
+            new HashMap<>(Map.of("id", "t1", "name", "vehicle_tbl", "database_id", "d1"))));
+        when(storage.searchInstances(eq("database"), anyMap())).thenReturn(List.of(
+            new HashMap<>(Map.of("id", "d1", "type", "mysql"))));
+    }
+
+    private static Map<String, Object> mapping(String id, String objectType, String tableId, String tableName,
+                                               Map<String, String> columns) {
+        Map<String, Object> mapping = new HashMap<>();
+        mapping.put("id", id);
+        mapping.put("object_type", objectType);
+        mapping.put("table_id", tableId);
+        mapping.put("table_name", tableName);
+        mapping.put("column_property_mappings", columns);
+        return mapping;
+    }
+
+    @Test
+    void lookups_loadOnceThenServeFromMemory() throws Exception {
+        assertEquals("m1", registry.getMappingsByObjectType("vehicle").get(0).get("id"));
+        assertEquals("m2", registry.getMappingsByTable("passage_tbl").get(0).get("id"));
+        assertEquals("m2", registry.getMappingsByTable("t2").get(0).get("id"));
+        assertTrue(registry.getMappingsByObjectType("unmapped").isEmpty());
+        assertEquals("d1", registry.get("table", "t1").get("database_id"));
+        assertEquals("mysql", registry.get("database", "d1").get("type"));
+        assertEquals(Map.of("vlp", "vlp_col"), registry.getFieldMapping("m1"));
+
+        registry.getMappingsByObjectType("vehicle").get(0).put("table_id", "mutated");
+        assertEquals("t1", registry.getMappingsByObjectType("vehicle").get(0).get("table_id"));
+
+        verify(storage, times(3)).searchInstances(anyString(), anyMap());
+        verify(storage, never()).getInstance(anyString(), anyString());
+    }
+
+    @Test
+    void refreshAndRemove_updateSnapshotAndVersion() throws Exception {
+        registry.getMappingsByObjectType("vehicle");
+        long loadedVersion = registry.getVersion();
+
+        when(storage.getInstance("mapping", "m3"))
+            .thenReturn(mapping("m3", "vehicle", "t1", "vehicle_tbl", Map.of("vlpc_col", "vlpc")));
+        registry.refresh("mapping", "m3");
+        assertEquals(2, registry.getMappingsByObjectType("vehicle").size());
+        assertEquals(Map.of("vlpc", "vlpc_col"), registry.getFieldMapping("m3"));
+
+        registry.remove("mapping", "m1");
+        List<Map<String, Object>> remaining = registry.getMappingsByObjectType("vehicle");
+        assertEquals(1, remaining.size());
+        assertEquals("m3", remaining.get(0).get("id"));
+        assertEquals(loadedVersion + 2, registry.getVersion());
+
+        // 未跟踪的类型不影响注册表
+        registry.refresh("vehicle", "v1");
+        assertEquals(loadedVersion + 2, registry.getVersion());
+        verify(storage, times(3)).searchInstances(anyString(), anyMap());
+    }
+
+    @Test
+    void get_missingInstanceReadsThroughAndIsRemembered() throws Exception {
+        when(storage.getInstance("table", "t9")).thenReturn(new HashMap<>(Map.of("id", "t9", "name", "late_tbl")));
+        when(storage.getInstance("table", "nope")).thenThrow(new IOException("instance not found"));
+
+        assertEquals("late_tbl", registry.get("table", "t9").get("name"));
+        assertEquals("late_tbl", registry.get("table", "t9").get("name"));
+        verify(storage, times(1)).getInstance("table", "t9");
+        assertThrows(IOException.class, () -> registry.get("table", "nope"));
+    }
+
+    @Test
+    void loadFailure_fallsBackToStorageAndRetries() throws Exception {
+        when(storage.searchInstances(eq("table"), anyMap()))
+            .thenThrow(new IOException("graph unavailable"))
+            .thenReturn(List.of());
+        when(storage.getInstance("table", "t1")).thenReturn(new HashMap<>(Map.of("id", "t1")));
+
+        assertEquals("t1", registry.get("table", "t1").get("id"));
+        assertFalse(registry.isLoaded());
+
+        ReflectionTestUtils.setField(registry, "lastLoadFailureAt", 0L);
+        registry.getMappingsByObjectType("vehicle");
+        assertTrue(registry.isLoaded());
+    }
+}
@@ -0,0 +1,120 @@
+package com.mypalantir.service;
+
+import com.mypalantir.metric.AtomicMetric;
+import com.mypalantir.metric.MetricDefinition;
+import com.mypalantir.metric.MetricResult;
+import com.mypalantir.query.QueryExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 批量指标查询（并行执行、批内合并相同子计算、整批截止时间与逐项错误）
+ */
+class MetricBatchServiceTest {
+
+    private final Map<String, AtomicInteger> queriesByType = new ConcurrentHashMap<>();
+    private final CountDownLatch never = new CountDownLatch(1);
+    private MetricTaskExecutor taskExecutor;
+    private MetricBatchService batchService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        QueryService queryService = mock(QueryService.class);
+        AtomicMetricService atomicMetricService = mock(AtomicMetricService.class);
+        MetricService metricService = mock(MetricService.class);
+        when(metricService.getMetricDefinition(anyString())).thenThrow(new IOException("not found"));
+        when(atomicMetricService.getAtomicMetric(anyString())).thenThrow(new IOException("not found"));
+
+        for (String[] spec : new String[][]{{"fee", "通行记录"}, {"vehicles", "车辆"}, {"slow", "慢表"}}) {
+            AtomicMetric atomic = new AtomicMetric();
+            atomic.setId(spec[0]);
+            atomic.setBusinessProcess(spec[1]);
+            atomic.setAggregationFunction("SUM");
+            atomic.setAggregationField(spec[0]);
+            doReturn(atomic).when(atomicMetricService).getAtomicMetric(spec[0]);
+        }
+        MetricDefinition ratio = new MetricDefinition();
+        ratio.setId("avg_fee");
+        ratio.setMetricType("composite");
+        ratio.setBaseMetricIds(List.of("fee", "vehicles"));
+        ratio.setDerivedFormula("{fee} / {vehicles}");
+        doReturn(ratio).when(metricService).getMetricDefinition("avg_fee");
+
+        when(queryService.executeQuery(any(Map.class))).thenAnswer(inv -> {
+            Map<String, Object> queryMap = inv.getArgument(0);
+            String from = (String) queryMap.get("from");
+            queriesByType.computeIfAbsent(from, k -> new AtomicInteger()).incrementAndGet();
+            if ("慢表".equals(from)) {
+                never.await(10, TimeUnit.SECONDS);
+            }
+            Map<String, Object> row = new HashMap<>();
+            row.put("total", "通行记录".equals(from) ? 900 : 300);
+            return new QueryExecutor.QueryResult(new ArrayList<>(List.of(row)), List.of("total"));
+        });
+
+        taskExecutor = new MetricTaskExecutor();
+        MetricCalculator calculator = new MetricCalculator(queryService, atomicMetricService, metricService);
+        ReflectionTestUtils.setField(calculator, "taskExecutor", taskExecutor);
+        batchService = new MetricBatchService(calculator, metricService, atomicMetricService, taskExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        never.countDown();
+        taskExecutor.destroy();
+    }
+
+    private static Map<String, Object> item(String metricId) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("metric_id", metricId);
+        item.put("time_range", Map.of("start", "2024-03-01", "end", "2024-03-31"));
+        return item;
+    }
+
+    @Test
+    void sharedSubComputationsRunOnceAndFailuresStayPerItem() {
+        List<Map<String, Object>> queries = List.of(item("avg_fee"), item("fee"), item("fee"), item("missing"));
+        MetricBatchService.BatchResult batch = batchService.execute(queries, 10_000L);
+
+        List<MetricResult> results = batch.getResults();
+        assertEquals(4, results.size());
+        assertEquals(3.0, ((Number) results.get(0).getResults().get(0).get("metric_value")).doubleValue(), 1e-9);
+        assertNull(results.get(0).getError());
+        assertEquals(900, results.get(1).getResults().get(0).get("total"));
+        assertEquals(900, results.get(2).getResults().get(0).get("total"));
+        assertEquals("missing", results.get(3).getMetricId());
+        assertTrue(results.get(3).getError().contains("missing"));
+        assertEquals(1, batch.getFailed());
+
+        // 复合指标的基础指标 fee 与两个直接查询 fee 的项共用一次计算
+        assertEquals(1, queriesByType.get("通行记录").get());
+        assertEquals(1, queriesByType.get("车辆").get());
+        assertEquals(3, batch.getComputed());
+        assertEquals(2, batch.getShared());
+    }
+
+    @Test
+    void deadlineReturnsPartialResults() {
+        long start = System.currentTimeMillis();
+        MetricBatchService.BatchResult batch = batchService.execute(List.of(item("slow"), item("fee")), 300L);
+        assertTrue(System.currentTimeMillis() - start < 5_000);
+
+        assertTrue(batch.getResults().get(0).getError().startsWith("Timed out"));
+        assertEquals(900, batch.getResults().get(1).getResults().get(0).get("total"));
+        assertEquals(1, batch.getFailed());
+    }
+}
@@ -0,0 +1,234 @@
+package com.mypalantir.service;
+
+import com.mypalantir.metric.AtomicMetric;
+import com.mypalantir.metric.MetricDefinition;
+import com.mypalantir.metric.MetricQuery;
+import com.mypalantir.metric.MetricResult;
+import com.mypalantir.query.QueryExecutor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 指标计算（对比指标按对比类型一次查询平移范围并在内存中对齐；复合指标并行计算基础指标并按编译后的公式求值；同一数据源超出并发的任务排队而不占用线程）
+ */
+class MetricCalculatorTest {
+
+    private QueryService queryService;
+    private MetricCalculator calculator;
+    private final List<List<String>> queriedRanges = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        queryService = mock(QueryService.class);
+        AtomicMetricService atomicMetricService = mock(AtomicMetricService.class);
+        AtomicMetric atomic = new AtomicMetric();
+        atomic.setId("atomic_fee");
+        atomic.setBusinessProcess("通行记录");
+        atomic.setAggregationFunction("SUM");
+        atomic.setAggregationField("fee");
+        when(atomicMetricService.getAtomicMetric("atomic_fee")).thenReturn(atomic);
+
+        // 模拟按 日期 + 收费站 分组的结果：值 = 日序号 * 10 + 站序号
+        when(queryService.executeQuery(any(Map.class))).thenAnswer(inv -> {
+            Map<String, Object> queryMap = inv.getArgument(0);
+            String start = null;
+            String end = null;
+            for (Object expr : (List<?>) queryMap.get("filter")) {
+                List<?> parts = (List<?>) expr;
+                if (">=".equals(parts.get(0))) {
+                    start = (String) parts.get(2);
+                } else if ("<=".equals(parts.get(0))) {
+                    end = (String) parts.get(2);
+                }
+            }
+            queriedRanges.add(List.of(start, end));
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (LocalDate d = LocalDate.parse(start); !d.isAfter(LocalDate.parse(end)); d = d.plusDays(1)) {
+                for (int station = 1; station <= 2; station++) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("pass_date", d.toString());
+                    row.put("station", "S" + station);
+                    row.put("total", d.getDayOfYear() * 10 + station);
+                    rows.add(row);
+                }
+            }
+            return new QueryExecutor.QueryResult(rows, List.of("pass_date", "station", "total"));
+        });
+        calculator = new MetricCalculator(queryService, atomicMetricService, mock(MetricService.class));
+    }
+
+    @Test
+    void comparisonsUseOneQueryPerComparisonType() throws Exception {
+        MetricDefinition definition = new MetricDefinition();
+        definition.setId("daily_fee");
+        definition.setMetricType("derived");
+        definition.setAtomicMetricId("atomic_fee");
+        definition.setTimeDimension("pass_date");
+        definition.setTimeGranularity("day");
+        definition.setDimensions(List.of("station"));
+        definition.setComparisonType(List.of("MoM", "WoW"));
+        definition.setBusinessScope(Map.of("type", "single", "base_object_type", "通行记录"));
+
+        MetricQuery query = new MetricQuery();
+        query.setTimeRange(new MetricQuery.TimeRange("2024-03-10", "2024-03-12"));
+        MetricResult result = calculator.calculateMetric(definition, query);
+
+        // 1 次主查询 + 每种对比类型 1 次（原实现为 6 个点 × 2 种对比 = 12 次）
+        verify(queryService, times(3)).executeQuery(any(Map.class));
+        assertEquals(List.of("2024-03-10", "2024-03-12"), queriedRanges.get(0));
+        assertEquals(List.of("2024-03-09", "2024-03-11"), queriedRanges.get(1));
+        assertEquals(List.of("2024-03-03", "2024-03-05"), queriedRanges.get(2));
+
+        assertEquals(6, result.getResults().size());
+        for (Map<String, Object> point : result.getResults()) {
+            @SuppressWarnings("unchecked")
+            Map<String, MetricResult.ComparisonValue> comparisons = (Map<String, MetricResult.ComparisonValue>) point.get("comparisons");
+            int current = (Integer) point.get("total");
+            // 对比值与当前点同一收费站
+            assertEquals((current - (current - 10)) / (double) (current - 10), comparisons.get("MoM").getValue(), 1e-9);
+            assertEquals((current - (current - 70)) / (double) (current - 70), comparisons.get("WoW").getValue(), 1e-9);
+            assertTrue(comparisons.get("MoM").getDescription().startsWith("较上一周期增长"));
+        }
+    }
+
+    @Test
+    void compositeBaseMetricsRunConcurrentlyAndFormulaIsCompiled() throws Exception {
+        QueryService queryService = mock(QueryService.class);
+        AtomicMetricService atomicMetricService = mock(AtomicMetricService.class);
+        MetricService metricService = mock(MetricService.class);
+        for (String[] spec : new String[][]{{"fee", "通行记录"}, {"vehicles", "车辆"}}) {
+            AtomicMetric atomic = new AtomicMetric();
+            atomic.setId(spec[0]);
+            atomic.setBusinessProcess(spec[1]);
+            atomic.setAggregationFunction("SUM");
+            atomic.setAggregationField(spec[0]);
+            when(metricService.getMetricDefinition(spec[0])).thenThrow(new java.io.IOException("not a definition"));
+            when(atomicMetricService.getAtomicMetric(spec[0])).thenReturn(atomic);
+        }
+        // 两个基础指标都进入查询后才放行：串行执行会在屏障处超时
+        CyclicBarrier bothRunning = new CyclicBarrier(2);
+        when(queryService.executeQuery(any(Map.class))).thenAnswer(inv -> {
+            Map<String, Object> queryMap = inv.getArgument(0);
+            bothRunning.await(5, TimeUnit.SECONDS);
+            Map<String, Object> row = new HashMap<>();
+            row.put("total", "通行记录".equals(queryMap.get("from")) ? 900 : 300);
+            return new QueryExecutor.QueryResult(new ArrayList<>(List.of(row)), List.of("total"));
+        });
+
+        MetricTaskExecutor taskExecutor = new MetricTaskExecutor();
+        MetricCalculator composite = new MetricCalculator(queryService, atomicMetricService, metricService);
+        ReflectionTestUtils.setField(composite, "taskExecutor", taskExecutor);
+        try {
+            MetricDefinition definition = new MetricDefinition();
+            definition.setId("avg_fee");
+            definition.setMetricType("composite");
+            definition.setBaseMetricIds(List.of("fee", "vehicles"));
+            definition.setDerivedFormula("{fee} / {vehicles} * (1 + 1)");
+
+            MetricResult result = composite.calculateMetric(definition, new MetricQuery());
+            assertEquals(1, result.getResults().size());
+            assertEquals(6.0, ((Number) result.getResults().get(0).get("metric_value")).doubleValue(), 1e-9);
+        } finally {
+            taskExecutor.destroy();
+        }
+    }
+
+    @Test
+    void compositeOverOneSourceIsPushedDownIntoOneQuery() throws Exception {
+        QueryService queryService = mock(QueryService.class);
+        AtomicMetricService atomicMetricService = mock(AtomicMetricService.class);
+        MetricService metricService = mock(MetricService.class);
+        for (String[] spec : new String[][]{{"fee", "SUM", "fee"}, {"trips", "COUNT", null}}) {
+            AtomicMetric atomic = new AtomicMetric();
+            atomic.setId(spec[0]);
+            atomic.setBusinessProcess("通行记录");
+            atomic.setAggregationFunction(spec[1]);
+            atomic.setAggregationField(spec[2]);
+            when(atomicMetricService.getAtomicMetric(spec[0])).thenReturn(atomic);
+
+            MetricDefinition derived = new MetricDefinition();
+            derived.setId("daily_" + spec[0]);
+            derived.setMetricType("derived");
+            derived.setAtomicMetricId(spec[0]);
+            derived.setTimeDimension("pass_date");
+            derived.setDimensions(List.of("station"));
+            when(metricService.getMetricDefinition("daily_" + spec[0])).thenReturn(derived);
+        }
+        List<Map<String, Object>> queries = new ArrayList<>();
+        when(queryService.executeQuery(any(Map.class))).thenAnswer(inv -> {
+            queries.add(inv.getArgument(0));
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("pass_date", "2024-03-01");
+            row.put("station", "S1");
+            row.put("sum_fee", 900.0);
+            row.put("count_star", 30L);
+            row.put("metric_value", 30.0);
+            Map<String, Object> empty = new LinkedHashMap<>(row);
+            empty.put("station", "S2");
+            empty.put("metric_value", null);
+            return new QueryExecutor.QueryResult(new ArrayList<>(List.of(row, empty)), new ArrayList<>(row.keySet()));
+        });
+        MetricCalculator calculator = new MetricCalculator(queryService, atomicMetricService, metricService);
+
+        MetricDefinition composite = new MetricDefinition();
+        composite.setId("avg_fee");
+        composite.setMetricType("composite");
+        composite.setTimeDimension("pass_date");
+        composite.setDimensions(List.of("station"));
+        composite.setBaseMetricIds(List.of("daily_fee", "daily_trips"));
+        composite.setDerivedFormula("{daily_fee} / {daily_trips}");
+        MetricQuery query = new MetricQuery();
+        query.setTimeRange(new MetricQuery.TimeRange("2024-03-01", "2024-03-31"));
+
+        MetricResult result = calculator.calculateMetric(composite, query);
+        assertEquals(1, queries.size());
+        assertEquals(List.of(Arrays.asList("sum", "fee", "sum_fee"), Arrays.asList("count", "*", "count_star")),
+            queries.get(0).get("metrics"));
+        assertEquals(List.of(Arrays.asList("metric_value", "({sum_fee} / {count_star})")), queries.get(0).get("computed"));
+        // 公式无结果的数据点不输出，数据点只保留 时间 + 维度 与 metric_value
+        assertEquals(List.of(Map.of("pass_date", "2024-03-01", "station", "S1", "metric_value", 30.0)), result.getResults());
+
+        // 基础指标过滤条件不同：回退为逐个基础指标查询
+        metricService.getMetricDefinition("daily_trips").setFilterConditions(Map.of("station", "S1"));
+        queries.clear();
+        calculator.calculateMetric(composite, query);
+        assertEquals(2, queries.size());
+        assertTrue(queries.stream().noneMatch(q -> q.containsKey("computed")));
+    }
+
+    @Test
+    void busyDataSourceDoesNotHoldPoolThreadsOfOtherSources() throws Exception {
+        MetricTaskExecutor taskExecutor = new MetricTaskExecutor();
+        ReflectionTestUtils.setField(taskExecutor, "maxThreads", 2);
+        ReflectionTestUtils.setField(taskExecutor, "perDataSource", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // db1 只允许一个并发：第二个任务排队等待名额，而不是占住线程池的另一个线程
+            Future<String> first = taskExecutor.submit(() -> release.await(5, TimeUnit.SECONDS) ? "db1-a" : "timeout", "db1");
+            Future<String> second = taskExecutor.submit(() -> "db1-b", "db1");
+            Future<String> other = taskExecutor.submit(() -> "db2", "db2");
+            assertEquals("db2", other.get(2, TimeUnit.SECONDS));
+            assertFalse(second.isDone());
+            assertEquals(1, ((Map<?, ?>) taskExecutor.stats().get("queued_by_datasource")).get("db1"));
+
+            release.countDown();
+            assertEquals("db1-a", first.get(5, TimeUnit.SECONDS));
+            assertEquals("db1-b", second.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            taskExecutor.destroy();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.mypalantir.service;
+
+import com.mypalantir.metric.AtomicMetric;
+import com.mypalantir.metric.MetricDefinition;
+import com.mypalantir.metric.MetricQuery;
+import com.mypalantir.metric.MetricResult;
+import com.mypalantir.query.QueryExecutor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 指标依赖规划：拓扑序与共享节点、按定义版本复用规划、循环引用检测、请求内共享节点只计算一次
+ */
+class MetricDependencyPlannerTest {
+
+    private final Map<String, AtomicInteger> queriesByType = new ConcurrentHashMap<>();
+    private QueryService queryService;
+    private MetricService metricService;
+    private AtomicMetricService atomicMetricService;
+    private MetricDependencyPlanner planner;
+
+    /**
+     * fee（通行记录）、trips（车辆）为原子指标；
+     * avg_fee = fee / trips，fee_gap = fee - trips，score = avg_fee + fee_gap —— fee、trips 被两个复合指标共享
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        queryService = mock(QueryService.class);
+        metricService = mock(MetricService.class);
+        atomicMetricService = mock(AtomicMetricService.class);
+        when(metricService.getMetricDefinition(anyString())).thenThrow(new IOException("not found"));
+        when(atomicMetricService.getAtomicMetric(anyString())).thenThrow(new IOException("not found"));
+
+        for (String[] spec : new String[][]{{"fee", "通行记录"}, {"trips", "车辆"}}) {
+            AtomicMetric atomic = new AtomicMetric();
+            atomic.setId(spec[0]);
+            atomic.setBusinessProcess(spec[1]);
+            atomic.setAggregationFunction("SUM");
+            atomic.setAggregationField(spec[0]);
+            doReturn(atomic).when(atomicMetricService).getAtomicMetric(spec[0]);
+        }
+        define("avg_fee", "{fee} / {trips}", "fee", "trips");
+        define("fee_gap", "{fee} - {trips}", "fee", "trips");
+        define("score", "{avg_fee} + {fee_gap}", "avg_fee", "fee_gap");
+
+        when(queryService.executeQuery(any(Map.class))).thenAnswer(inv -> {
+            String from = (String) ((Map<String, Object>) inv.getArgument(0)).get("from");
+            queriesByType.computeIfAbsent(from, k -> new AtomicInteger()).incrementAndGet();
+            Map<String, Object> row = new HashMap<>();
+            row.put("total", "通行记录".equals(from) ? 900 : 300);
+            return new QueryExecutor.QueryResult(new ArrayList<>(List.of(row)), List.of("total"));
+        });
+        planner = new MetricDependencyPlanner(metricService, atomicMetricService);
+    }
+
+    private MetricDefinition define(String id, String formula, String... baseIds) throws IOException {
+        MetricDefinition definition = new MetricDefinition();
+        definition.setId(id);
+        definition.setMetricType("composite");
+        definition.setBaseMetricIds(List.of(baseIds));
+        definition.setDerivedFormula(formula);
+        doReturn(definition).when(metricService).getMetricDefinition(id);
+        return definition;
+    }
+
+    @Test
+    void planOrdersDependenciesFirstAndIsReusedUntilInvalidated() throws Exception {
+        MetricDependencyPlanner.MetricPlan plan = planner.plan("score");
+        List<String> order = plan.getOrder().stream().map(MetricDependencyPlanner.Node::getKey).toList();
+        assertEquals(List.of("atomic:fee", "atomic:trips", "metric:avg_fee", "metric:fee_gap", "metric:score"), order);
+        assertEquals(Set.of("atomic:fee", "atomic:trips"), plan.getShared());
+        assertEquals(List.of("metric:avg_fee", "metric:fee_gap"), plan.getDependencies("metric:score"));
+        assertEquals("score", plan.toMap().get("metric_id"));
+
+        // 定义未变化时复用规划，不再读取依赖
+        assertSame(plan, planner.plan("score"));
+        verify(metricService, times(1)).getMetricDefinition("avg_fee");
+
+        // 基础指标修改后重新规划，读取新的定义
+        define("fee_gap", "{fee} + {trips}", "fee", "trips");
+        planner.invalidate("fee_gap");
+        MetricDependencyPlanner.MetricPlan replanned = planner.plan("score");
+        assertNotSame(plan, replanned);
+        assertNotEquals(plan.getVersion(), replanned.getVersion());
+        verify(metricService, times(1)).getMetricDefinition("avg_fee");
+    }
+
+    @Test
+    void cyclesAreRejectedBeforeAnyQuery() throws Exception {
+        define("a", "{b} + 1", "b");
+        define("b", "{fee} + {a}", "fee", "a");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> planner.plan("a"));
+        assertTrue(e.getMessage().contains("metric:a -> metric:b -> metric:a"), e.getMessage());
+
+        MetricCalculator calculator = new MetricCalculator(queryService, atomicMetricService, metricService);
+        ReflectionTestUtils.setField(calculator, "dependencyPlanner", planner);
+        assertThrows(IllegalArgumentException.class, () -> calculator.calculateMetric(metricService.getMetricDefinition("a"), query()));
+        verify(queryService, never()).executeQuery(any(Map.class));
+    }
+
+    @Test
+    void sharedNodeIsComputedOncePerRequest() throws Exception {
+        MetricCalculator calculator = new MetricCalculator(queryService, atomicMetricService, metricService);
+        ReflectionTestUtils.setField(calculator, "dependencyPlanner", planner);
+
+        MetricResult result = calculator.calculateMetric(metricService.getMetricDefinition("score"), query());
+        // avg_fee = 900 / 300 = 3，fee_gap = 600
+        assertEquals(603.0, ((Number) result.getResults().get(0).get("metric_value")).doubleValue(), 1e-9);
+        assertEquals(1, queriesByType.get("通行记录").get());
+        assertEquals(1, queriesByType.get("车辆").get());
+
+        // 下一个请求重新计算（请求间只复用规划，不复用结果）
+        calculator.calculateMetric(metricService.getMetricDefinition("score"), query());
+        assertEquals(2, queriesByType.get("通行记录").get());
+    }
+
+    private static MetricQuery query() {
+        MetricQuery query = new MetricQuery();
+        query.setTimeRange(new MetricQuery.TimeRange("2024-03-01", "2024-03-31"));
+        return query;
+    }
+}
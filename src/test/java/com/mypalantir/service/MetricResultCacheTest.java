@@ -0,0 +1,252 @@
+package com.mypalantir.service;
+
+import com.mypalantir.metric.AtomicMetric;
+import com.mypalantir.metric.MetricDefinition;
+import com.mypalantir.metric.MetricQuery;
+import com.mypalantir.metric.MetricResult;
+import com.mypalantir.query.QueryExecutor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 指标结果缓存（已关闭周期长期保留、当前周期短 TTL、跨越今天的序列拆分缓存、按依赖失效，以及 MetricCalculator 按 useCache 读写缓存）
+ */
+class MetricResultCacheTest {
+
+    private static final Instant NOW = Instant.parse("2024-03-15T08:00:00Z");
+
+    private MetricResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new MetricResultCache();
+        ReflectionTestUtils.setField(cache, "closedTtlMs", 3_600_000L);
+        ReflectionTestUtils.setField(cache, "openTtlMs", 60_000L);
+        ReflectionTestUtils.setField(cache, "clock", Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private void advance(long millis) {
+        ReflectionTestUtils.setField(cache, "clock", Clock.fixed(NOW.plusMillis(millis), ZoneOffset.UTC));
+    }
+
+    private static MetricQuery query(String start, String end) {
+        MetricQuery query = new MetricQuery();
+        query.setTimeRange(new MetricQuery.TimeRange(start, end));
+        query.setUseCache(true);
+        return query;
+    }
+
+    private static MetricResult result(Object value) {
+        MetricResult result = new MetricResult();
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("metric_value", value);
+        result.setResults(new ArrayList<>(List.of(row)));
+        return result;
+    }
+
+    @Test
+    void closedRangesOutliveOpenOnes() {
+        MetricQuery closed = query("2024-03-01", "2024-03-14");
+        MetricQuery open = query("2024-03-01", "2024-03-15");
+        String closedKey = cache.keyOf(MetricResultCache.KIND_DEFINITION, "m1", Map.of("name", "日通行费"), closed);
+        String openKey = cache.keyOf(MetricResultCache.KIND_DEFINITION, "m1", Map.of("name", "日通行费"), open);
+        assertNotEquals(closedKey, openKey);
+
+        cache.put(closedKey, result(10), closed, cache.generation(), Set.of("m1"), Set.of("通行记录"));
+        cache.put(openKey, result(12), open, cache.generation(), Set.of("m1"), Set.of("通行记录"));
+        assertEquals(1L, cache.stats().get("closed_entries"));
+
+        // 返回副本：修改不影响缓存
+        cache.get(closedKey).getResults().get(0).put("metric_value", 99);
+        assertEquals(10, cache.get(closedKey).getResults().get(0).get("metric_value"));
+
+        advance(120_000);
+        assertNull(cache.get(openKey));
+        assertNotNull(cache.get(closedKey));
+
+        // 定义内容变化即版本变化，旧条目不再命中
+        assertNotEquals(closedKey, cache.keyOf(MetricResultCache.KIND_DEFINITION, "m1", Map.of("name", "月通行费"), closed));
+    }
+
+    @Test
+    void invalidatesByMetricAndObjectTypeAndDropsStaleWrites() {
+        MetricQuery closed = query("2024-01-01", "2024-01-31");
+        String composite = cache.keyOf(MetricResultCache.KIND_DEFINITION, "ratio", Map.of(), closed);
+        String other = cache.keyOf(MetricResultCache.KIND_DEFINITION, "lanes", Map.of(), closed);
+        cache.put(composite, result(0.5), closed, cache.generation(), Set.of("ratio", "fee", "atomic_fee"), Set.of("通行记录"));
+        cache.put(other, result(8), closed, cache.generation(), Set.of("lanes"), Set.of("收费站"));
+
+        assertEquals(1, cache.invalidateMetric("atomic_fee"));
+        assertNull(cache.get(composite));
+        assertEquals(1, cache.invalidateObjectType("收费站"));
+        assertNull(cache.get(other));
+
+        // 计算期间发生失效：结果不写入
+        long generation = cache.generation();
+        cache.invalidateObjectType("通行记录");
+        cache.put(composite, result(0.6), closed, generation, Set.of("ratio"), Set.of("通行记录"));
+        assertNull(cache.get(composite));
+    }
+
+    @Test
+    void calculatorServesRepeatedCachedQueriesWithoutRequerying() throws Exception {
+        QueryService queryService = mock(QueryService.class);
+        AtomicMetricService atomicMetricService = mock(AtomicMetricService.class);
+        MetricService metricService = mock(MetricService.class);
+        AtomicMetric atomic = new AtomicMetric();
+        atomic.setId("atomic_fee");
+        atomic.setBusinessProcess("通行记录");
+        atomic.setAggregationFunction("SUM");
+        atomic.setAggregationField("fee");
+        when(atomicMetricService.getAtomicMetric("atomic_fee")).thenReturn(atomic);
+        when(queryService.executeQuery(any(Map.class))).thenAnswer(inv -> {
+            Map<String, Object> row = new HashMap<>();
+            row.put("pass_date", "2024-03-01");
+            row.put("total", 100);
+            return new QueryExecutor.QueryResult(new ArrayList<>(List.of(row)), List.of("pass_date", "total"));
+        });
+
+        MetricCalculator calculator = new MetricCalculator(queryService, atomicMetricService, metricService);
+        ReflectionTestUtils.setField(calculator, "resultCache", cache);
+
+        MetricDefinition definition = new MetricDefinition();
+        definition.setId("daily_fee");
+        definition.setMetricType("derived");
+        definition.setAtomicMetricId("atomic_fee");
+        definition.setTimeDimension("pass_date");
+        definition.setBusinessScope(Map.of("type", "single", "base_object_type", "通行记录"));
+
+        MetricQuery cached = query("2024-03-01", "2024-03-10");
+        calculator.calculateMetric(definition, cached);
+        MetricResult second = calculator.calculateMetric(definition, cached);
+        assertEquals(100, second.getResults().get(0).get("total"));
+        verify(queryService, times(1)).executeQuery(any(Map.class));
+
+        // useCache=false 始终重新计算
+        MetricQuery uncached = query("2024-03-01", "2024-03-10");
+        uncached.setUseCache(false);
+        calculator.calculateMetric(definition, uncached);
+        verify(queryService, times(2)).executeQuery(any(Map.class));
+
+        // 底层对象类型同步后重新计算
+        cache.invalidateObjectType("通行记录");
+        calculator.calculateMetric(definition, cached);
+        verify(queryService, times(3)).executeQuery(any(Map.class));
+    }
+
+    @Test
+    void seriesSpanningTodayCachesClosedPeriodsSeparately() throws Exception {
+        assertNull(cache.openPeriodStart(query("2024-03-01", "2024-03-14")));
+        assertNull(cache.openPeriodStart(query("2024-03-15", "2024-03-20")));
+        assertEquals("2024-03-15", String.valueOf(cache.openPeriodStart(query("2024-03-01", "2024-03-20"))));
+
+        QueryService queryService = mock(QueryService.class);
+        AtomicMetricService atomicMetricService = mock(AtomicMetricService.class);
+        AtomicMetric atomic = new AtomicMetric();
+        atomic.setId("atomic_fee");
+        atomic.setBusinessProcess("通行记录");
+        atomic.setAggregationFunction("SUM");
+        atomic.setAggregationField("fee");
+        when(atomicMetricService.getAtomicMetric("atomic_fee")).thenReturn(atomic);
+        List<String> requested = new ArrayList<>();
+        when(queryService.executeQuery(any(Map.class))).thenAnswer(inv -> {
+            String text = String.valueOf(inv.getArgument(0, Map.class));
+            requested.add(text);
+            Map<String, Object> row = new HashMap<>();
+            row.put("pass_date", text.contains("2024-03-01") ? "2024-03-01" : "2024-03-15");
+            row.put("total", 100);
+            return new QueryExecutor.QueryResult(new ArrayList<>(List.of(row)), List.of("pass_date", "total"));
+        });
+
+        MetricCalculator calculator = new MetricCalculator(queryService, atomicMetricService, mock(MetricService.class));
+        ReflectionTestUtils.setField(calculator, "resultCache", cache);
+
+        MetricDefinition definition = new MetricDefinition();
+        definition.setId("daily_fee");
+        definition.setMetricType("derived");
+        definition.setAtomicMetricId("atomic_fee");
+        definition.setTimeDimension("pass_date");
+        definition.setTimeGranularity("day");
+        definition.setBusinessScope(Map.of("type", "single", "base_object_type", "通行记录"));
+
+        MetricResult first = calculator.calculateMetric(definition, query("2024-03-01", "2024-03-20"));
+        assertEquals(2, first.getResults().size());
+        assertEquals(2, requested.size());
+        assertEquals(1L, cache.stats().get("closed_entries"));
+
+        // 当前周期过期后只重新计算 [今天, 结束]，已关闭部分仍命中缓存
+        advance(120_000);
+        MetricResult second = calculator.calculateMetric(definition, query("2024-03-01", "2024-03-20"));
+        assertEquals(2, second.getResults().size());
+        assertEquals(3, requested.size());
+        assertTrue(requested.get(2).contains("2024-03-15"), requested.get(2));
+        assertFalse(requested.get(2).contains("2024-03-01"), requested.get(2));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void splitAtTodayKeepsIntradayRowsOfTheBoundaryDay() throws Exception {
+        // 时间维度为时间戳：昨天 15:30 的记录必须落在已关闭部分（< 今天），而不是被 <= 昨天（即昨天 00:00:00）截掉
+        List<Map<String, Object>> passes = List.of(
+            Map.of("pass_time", "2024-03-01 10:00:00", "fee", 1),
+            Map.of("pass_time", "2024-03-14 15:30:00", "fee", 7),
+            Map.of("pass_time", "2024-03-15 09:00:00", "fee", 5));
+        QueryService queryService = mock(QueryService.class);
+        AtomicMetricService atomicMetricService = mock(AtomicMetricService.class);
+        AtomicMetric atomic = new AtomicMetric();
+        atomic.setId("atomic_fee");
+        atomic.setBusinessProcess("通行记录");
+        atomic.setAggregationFunction("SUM");
+        atomic.setAggregationField("fee");
+        when(atomicMetricService.getAtomicMetric("atomic_fee")).thenReturn(atomic);
+        List<Object> filters = new ArrayList<>();
+        when(queryService.executeQuery(any(Map.class))).thenAnswer(inv -> {
+            List<List<Object>> filter = (List<List<Object>>) inv.getArgument(0, Map.class).get("filter");
+            filters.add(filter);
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (Map<String, Object> pass : passes) {
+                String time = (String) pass.get("pass_time");
+                boolean matches = filter.stream().allMatch(f -> {
+                    int cmp = time.compareTo((String) f.get(2));
+                    switch ((String) f.get(0)) {
+                        case ">=": return cmp >= 0;
+                        case "<": return cmp < 0;
+                        case "<=": return cmp <= 0;
+                        default: return true;
+                    }
+                });
+                if (matches) {
+                    rows.add(new HashMap<>(Map.of("pass_time", time, "total", pass.get("fee"))));
+                }
+            }
+            return new QueryExecutor.QueryResult(rows, List.of("pass_time", "total"));
+        });
+
+        MetricCalculator calculator = new MetricCalculator(queryService, atomicMetricService, mock(MetricService.class));
+        ReflectionTestUtils.setField(calculator, "resultCache", cache);
+
+        MetricDefinition definition = new MetricDefinition();
+        definition.setId("fee_by_time");
+        definition.setMetricType("derived");
+        definition.setAtomicMetricId("atomic_fee");
+        definition.setTimeDimension("pass_time");
+        definition.setTimeGranularity("day");
+        definition.setBusinessScope(Map.of("type", "single", "base_object_type", "通行记录"));
+
+        MetricResult result = calculator.calculateMetric(definition, query("2024-03-01", "2024-03-20"));
+        List<Object> times = result.getResults().stream().map(row -> row.get("pass_time")).toList();
+        assertEquals(List.of("2024-03-01 10:00:00", "2024-03-14 15:30:00", "2024-03-15 09:00:00"), times);
+        assertTrue(String.valueOf(filters.get(0)).contains("[<, pass_time, 2024-03-15]"), String.valueOf(filters.get(0)));
+        assertEquals(1L, cache.stats().get("closed_entries"));
+    }
+}
@@ -0,0 +1,276 @@
+package com.mypalantir.service;
+
+import com.mypalantir.meta.Loader;
+import com.mypalantir.meta.ObjectType;
+import com.mypalantir.meta.Property;
+import com.mypalantir.metric.AtomicMetric;
+import com.mypalantir.metric.MetricDefinition;
+import com.mypalantir.metric.MetricQuery;
+import com.mypalantir.metric.MetricResult;
+import com.mypalantir.query.QueryExecutor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.DriverManager;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 指标汇总：按天填充已关闭日期、历史部分从汇总读取并与原始查询结果一致、增量同步只重填写入日期、全量同步后过期与重建
+ */
+class MetricRollupStoreTest {
+
+    private static final AtomicInteger DB_COUNTER = new AtomicInteger();
+
+    /** 原始通行记录：日期、收费站、金额 */
+    private final List<Map<String, Object>> records = new ArrayList<>();
+    private final List<Map<String, Object>> rawQueries = new ArrayList<>();
+    private final List<Map<String, Object>> fillQueries = new ArrayList<>();
+
+    private MetricRollupStore store;
+    private MetricCalculator withRollup;
+    private MetricCalculator withoutRollup;
+    private MetricDefinition stationFee;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (int day = 1; day <= 31; day++) {
+            String date = LocalDate.of(2024, 3, day).toString();
+            records.add(record(date, "A", 10.0 * day));
+            records.add(record(date, "A", 1.5));
+            records.add(record(date, "B", 7.0));
+        }
+        records.add(record("2024-04-01", "A", 100.0));
+
+        QueryService queryService = mock(QueryService.class);
+        when(queryService.executeQuery(any(Map.class))).thenAnswer(inv -> execute(inv.getArgument(0)));
+
+        AtomicMetricService atomicMetricService = mock(AtomicMetricService.class);
+        when(atomicMetricService.getAtomicMetric("fee")).thenReturn(feeMetric());
+
+        String url = "jdbc:h2:mem:metric_rollup_" + DB_COUNTER.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+        DatabaseMetadataService databaseMetadataService = mock(DatabaseMetadataService.class);
+        when(databaseMetadataService.getConnectionForDatabase(null)).thenAnswer(inv -> DriverManager.getConnection(url, "sa", ""));
+
+        Loader loader = mock(Loader.class);
+        ObjectType passes = new ObjectType();
+        passes.setProperties(List.of(property("pass_date", "date"), property("pass_time", "datetime"),
+            property("station", "string"), property("fee", "double")));
+        when(loader.getObjectType("通行记录")).thenReturn(passes);
+
+        store = new MetricRollupStore(queryService, atomicMetricService, databaseMetadataService, loader);
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "initialDays", 31);
+        ReflectionTestUtils.setField(store, "chunkDays", 10);
+        ReflectionTestUtils.setField(store, "clock",
+            Clock.fixed(LocalDate.of(2024, 4, 1).atTime(9, 0).atZone(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault()));
+
+        MetricService metricService = mock(MetricService.class);
+        withRollup = new MetricCalculator(queryService, atomicMetricService, metricService);
+        ReflectionTestUtils.setField(withRollup, "rollupStore", store);
+        withoutRollup = new MetricCalculator(queryService, atomicMetricService, metricService);
+
+        stationFee = new MetricDefinition();
+        stationFee.setId("station_a_fee");
+        stationFee.setMetricType("derived");
+        stationFee.setAtomicMetricId("fee");
+        stationFee.setTimeDimension("pass_date");
+        stationFee.setTimeGranularity("day");
+        stationFee.setFilterConditions(Map.of("station", "A"));
+    }
+
+    private static AtomicMetric feeMetric() {
+        AtomicMetric fee = new AtomicMetric();
+        fee.setId("fee");
+        fee.setBusinessProcess("通行记录");
+        fee.setAggregationFunction("SUM");
+        fee.setAggregationField("fee");
+        return fee;
+    }
+
+    private static Property property(String name, String dataType) {
+        Property property = new Property();
+        property.setName(name);
+        property.setDataType(dataType);
+        return property;
+    }
+
+    private static Map<String, Object> record(String date, String station, double fee) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("pass_date", date);
+        row.put("pass_time", date + (fee > 5 ? " 08:30:00" : " 17:45:00"));
+        row.put("station", station);
+        row.put("fee", fee);
+        return row;
+    }
+
+    private static MetricQuery query(String start, String end) {
+        MetricQuery query = new MetricQuery();
+        query.setMetricId("station_a_fee");
+        query.setTimeRange(new MetricQuery.TimeRange(start, end));
+        return query;
+    }
+
+    @Test
+    void historyComesFromRollupAndMatchesRawData() throws Exception {
+        Map<String, Object> rollup = store.register("fee", "pass_date", List.of("station"));
+        Map<String, Object> filled = store.fillNewlyClosed((String) rollup.get("id"));
+        assertEquals("2024-03-01", filled.get("filled_from"));
+        assertEquals("2024-03-31", filled.get("filled_through"));
+        assertEquals(31, filled.get("filled_days"));
+
+        rawQueries.clear();
+        MetricResult fromRollup = withRollup.calculateMetric(stationFee, query("2024-03-20", "2024-04-01"));
+        // 只有今天（未关闭）的部分查询原始数据
+        assertEquals(1, rawQueries.size());
+        assertTrue(((List<?>) rawQueries.get(0).get("filter")).contains(Arrays.asList(">=", "pass_date", "2024-04-01")));
+
+        MetricResult raw = withoutRollup.calculateMetric(stationFee, query("2024-03-20", "2024-04-01"));
+        assertEquals(13, fromRollup.getResults().size());
+        assertEquals(raw.getResults(), fromRollup.getResults());
+        assertEquals(Map.of("pass_date", "2024-03-20", "sum_fee", 201.5), fromRollup.getResults().get(0));
+
+        // 指标维度不在汇总维度内时回退原始数据
+        MetricDefinition byLane = new MetricDefinition(stationFee.toMap());
+        byLane.setDimensions(List.of("lane"));
+        assertNull(store.tryRead(byLane, feeMetric(), query("2024-03-20", "2024-03-21")));
+    }
+
+    @Test
+    void timestampTimeDimensionIsNotReadFromRollup() throws Exception {
+        String id = (String) store.register("fee", "pass_time", List.of("station")).get("id");
+        store.fillNewlyClosed(id);
+
+        // datetime 列的原始查询按时间戳分组，汇总的一天一行会改变结果形状
+        MetricDefinition byTime = new MetricDefinition(stationFee.toMap());
+        byTime.setTimeDimension("pass_time");
+        assertNull(store.tryRead(byTime, feeMetric(), query("2024-03-20", "2024-03-21")));
+
+        MetricResult fromStore = withRollup.calculateMetric(byTime, query("2024-03-20", "2024-03-22"));
+        MetricResult raw = withoutRollup.calculateMetric(byTime, query("2024-03-20", "2024-03-22"));
+        assertEquals(4, fromStore.getResults().size());
+        assertEquals(raw.getResults(), fromStore.getResults());
+        assertEquals("2024-03-20 08:30:00", fromStore.getResults().get(0).get("pass_time"));
+    }
+
+    @Test
+    void syncMarksRollupStaleUntilRebuilt() throws Exception {
+        String id = (String) store.register("fee", "pass_date", List.of("station")).get("id");
+        store.fillNewlyClosed(id);
+        assertNotNull(store.tryRead(stationFee, feeMetric(), query("2024-03-01", "2024-03-02")));
+
+        records.add(record("2024-03-01", "A", 1000.0));
+        store.onObjectTypeSynced("通行记录");
+        assertNull(store.tryRead(stationFee, feeMetric(), query("2024-03-01", "2024-03-02")));
+
+        store.scheduledFill();
+        MetricRollupStore.RollupRead read = store.tryRead(stationFee, feeMetric(), query("2024-03-01", "2024-03-02"));
+        assertNotNull(read);
+        assertNull(read.getOpenStart());
+        assertEquals(1011.5, read.getRows().get(0).get("sum_fee"));
+
+        // 回填到更早的日期后填充区间向前扩展
+        Map<String, Object> backfilled = store.backfill(id, LocalDate.of(2024, 2, 20));
+        assertEquals("2024-02-20", backfilled.get("filled_from"));
+        assertEquals(10, backfilled.get("filled_days"));
+    }
+
+    @Test
+    void incrementalSyncRefillsOnlyTouchedDays() throws Exception {
+        String id = (String) store.register("fee", "pass_date", List.of("station")).get("id");
+        store.fillNewlyClosed(id);
+
+        Map<String, Object> changed = record("2024-03-05", "A", 1000.0);
+        records.add(changed);
+        fillQueries.clear();
+        // 2024-04-01 尚未关闭，不在填充区间内
+        store.onRowsSynced("通行记录", List.of(changed, record("2024-04-01", "B", 1.0)));
+        assertEquals(1, fillQueries.size());
+        assertEquals(List.of(Arrays.asList(">=", "pass_date", "2024-03-05"), Arrays.asList("<", "pass_date", "2024-03-06")),
+            fillQueries.get(0).get("filter"));
+
+        MetricRollupStore.RollupRead read = store.tryRead(stationFee, feeMetric(), query("2024-03-04", "2024-03-05"));
+        assertNotNull(read);
+        assertEquals(41.5, read.getRows().get(0).get("sum_fee"));
+        assertEquals(1051.5, read.getRows().get(1).get("sum_fee"));
+
+        // 无法确定日期的行：退回整体重建
+        Map<String, Object> undated = record(null, "A", 1.0);
+        store.onRowsSynced("通行记录", List.of(undated));
+        assertNull(store.tryRead(stationFee, feeMetric(), query("2024-03-04", "2024-03-05")));
+    }
+
+    @Test
+    void valueColumnMatchesSanitizedAggregateAlias() {
+        AtomicMetric metric = feeMetric();
+        metric.setAggregationField("fee.amount");
+        assertEquals("sum_fee_amount", MetricRollupStore.valueColumnOf(metric));
+    }
+
+    /**
+     * 简化的查询执行：等值与范围过滤、按 group_by 分组、sum / count / min / max 聚合
+     */
+    @SuppressWarnings("unchecked")
+    private QueryExecutor.QueryResult execute(Map<String, Object> queryMap) {
+        List<Object> metrics = (List<Object>) queryMap.get("metrics");
+        boolean fill = ((List<Object>) metrics.get(0)).get(2) != null;
+        (fill ? fillQueries : rawQueries).add(queryMap);
+        List<List<Object>> filters = (List<List<Object>>) queryMap.getOrDefault("filter", List.of());
+        List<String> groupBy = (List<String>) queryMap.getOrDefault("group_by", List.of());
+
+        Map<List<Object>, List<Map<String, Object>>> groups = new TreeMap<>(Comparator.comparing(Object::toString));
+        for (Map<String, Object> record : records) {
+            if (filters.stream().allMatch(f -> test(record, f))) {
+                List<Object> key = new ArrayList<>();
+                groupBy.forEach(g -> key.add(record.get(g)));
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(record);
+            }
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<List<Object>, List<Map<String, Object>>> group : groups.entrySet()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 0; i < groupBy.size(); i++) {
+                row.put(groupBy.get(i), group.getKey().get(i));
+            }
+            for (Object metricObj : metrics) {
+                List<Object> metric = (List<Object>) metricObj;
+                String function = (String) metric.get(0);
+                String field = (String) metric.get(1);
+                String alias = metric.get(2) != null ? (String) metric.get(2) : ("*".equals(field) ? "count_star" : function + "_" + field);
+                DoubleSummaryStatistics stats = group.getValue().stream()
+                    .filter(r -> "*".equals(field) || r.get(field) != null)
+                    .mapToDouble(r -> "*".equals(field) ? 1 : ((Number) r.get(field)).doubleValue())
+                    .summaryStatistics();
+                switch (function) {
+                    case "sum" -> row.put(alias, stats.getSum());
+                    case "count" -> row.put(alias, stats.getCount());
+                    case "min" -> row.put(alias, stats.getMin());
+                    default -> row.put(alias, stats.getMax());
+                }
+            }
+            rows.add(row);
+        }
+        return new QueryExecutor.QueryResult(rows, rows.isEmpty() ? List.of() : new ArrayList<>(rows.get(0).keySet()));
+    }
+
+    private static boolean test(Map<String, Object> record, List<Object> filter) {
+        String op = (String) filter.get(0);
+        String value = String.valueOf(record.get((String) filter.get(1)));
+        String operand = String.valueOf(filter.get(2));
+        return switch (op) {
+            case "=" -> value.equals(operand);
+            case ">=" -> value.compareTo(operand) >= 0;
+            case "<=" -> value.compareTo(operand) <= 0;
+            case "<" -> value.compareTo(operand) < 0;
+            default -> throw new IllegalArgumentException(op);
+        };
+    }
+}
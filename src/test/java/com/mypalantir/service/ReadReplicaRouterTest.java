@@ -0,0 +1,192 @@
+package com.mypalantir.service;
+
+import com.mypalantir.config.Config;
+import com.mypalantir.config.DatabaseConfig;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 只读副本路由（两个 H2 内存库分别充当主库与副本，用 lag_query 模拟复制延迟）
+ */
+class ReadReplicaRouterTest {
+
+    private static final String PRIMARY_URL = "jdbc:h2:mem:rr_primary;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String REPLICA_URL = "jdbc:h2:mem:rr_replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String LAG_QUERY = "SELECT lag_ms FROM replica_lag";
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private DataSource primary;
+    private DataSource replica;
+
+    private static DataSource h2(String url) {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL(url);
+        ds.setUser("sa");
+        ds.setPassword("");
+        return ds;
+    }
+
+    private static void exec(DataSource ds, String... sqls) throws SQLException {
+        try (Connection conn = ds.getConnection(); Statement stmt = conn.createStatement()) {
+            for (String sql : sqls) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    private static String role(Connection conn) throws SQLException {
+        try (Connection c = conn; Statement stmt = c.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT role FROM node_role")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        primary = h2(PRIMARY_URL);
+        replica = h2(REPLICA_URL);
+        exec(primary, "DROP TABLE IF EXISTS node_role", "CREATE TABLE node_role (role VARCHAR(20))",
+            "INSERT INTO node_role VALUES ('primary')");
+        exec(replica, "DROP TABLE IF EXISTS node_role", "CREATE TABLE node_role (role VARCHAR(20))",
+            "INSERT INTO node_role VALUES ('replica')",
+            "DROP TABLE IF EXISTS replica_lag", "CREATE TABLE replica_lag (lag_ms BIGINT)",
+            "INSERT INTO replica_lag VALUES (100)");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        exec(primary, "DROP TABLE IF EXISTS node_role");
+        exec(replica, "DROP TABLE IF EXISTS node_role", "DROP TABLE IF EXISTS replica_lag");
+    }
+
+    private ReadReplicaRouter router() {
+        return new ReadReplicaRouter(List.of(ReadRouting.QUERY, ReadRouting.METRIC), 5_000, now::get);
+    }
+
+    private ReadReplicaRouter.ReplicaSet replicaSet(DataSource replicaSource) {
+        return new ReadReplicaRouter.ReplicaSet(primary,
+            List.of(new ReadReplicaRouter.Replica("r0", replicaSource, "h2", 1_000, LAG_QUERY)));
+    }
+
+    @Test
+    void routesConfiguredWorkloadsToReplicaAndEverythingElseToPrimary() throws Exception {
+        ReadReplicaRouter router = router();
+        ReadReplicaRouter.ReplicaSet set = replicaSet(replica);
+
+        assertEquals("replica", role(router.getConnection(set, ReadRouting.QUERY)));
+        assertEquals("replica", role(router.getConnection(set, ReadRouting.METRIC)));
+        assertEquals("primary", role(router.getConnection(set, null)));
+        assertEquals("primary", role(router.getConnection(set, ReadRouting.PRIMARY)));
+        assertEquals("primary", role(router.getConnection(set, ReadRouting.COMPARISON)));
+
+        Map<String, Object> status = set.toMap();
+        assertEquals(3L, status.get("primary_reads"));
+        assertEquals(0L, status.get("fallbacks"));
+
+        // 按调用时的工作负载路由的 DataSource
+        DataSource routing = router.routingDataSource(set, ReadRouting::current);
+        assertEquals("primary", role(routing.getConnection()));
+        assertEquals("replica", ReadRouting.call(ReadRouting.QUERY, () -> role(routing.getConnection())));
+        assertNull(ReadRouting.current());
+    }
+
+    @Test
+    void laggingReplicaFallsBackUntilNextCheckSeesItCaughtUp() throws Exception {
+        ReadReplicaRouter router = router();
+        ReadReplicaRouter.ReplicaSet set = replicaSet(replica);
+        exec(replica, "UPDATE replica_lag SET lag_ms = 30000");
+
+        assertEquals("primary", role(router.getConnection(set, ReadRouting.QUERY)));
+        assertEquals(1L, set.toMap().get("fallbacks"));
+
+        // 检查间隔内沿用上次结论
+        exec(replica, "UPDATE replica_lag SET lag_ms = 10");
+        now.addAndGet(1_000);
+        assertEquals("primary", role(router.getConnection(set, ReadRouting.QUERY)));
+
+        now.addAndGet(5_000);
+        assertEquals("replica", role(router.getConnection(set, ReadRouting.QUERY)));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> replicaStatus = ((List<Map<String, Object>>) set.toMap().get("replicas")).get(0);
+        assertEquals(true, replicaStatus.get("healthy"));
+        assertEquals(10L, replicaStatus.get("lag_ms"));
+    }
+
+    @Test
+    void unreachableReplicaIsMarkedUnhealthy() throws Exception {
+        DataSource broken = mock(DataSource.class);
+        when(broken.getConnection()).thenThrow(new SQLException("connection refused"));
+        ReadReplicaRouter router = router();
+        ReadReplicaRouter.ReplicaSet set = replicaSet(broken);
+
+        assertEquals("primary", role(router.getConnection(set, ReadRouting.QUERY)));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> replicaStatus = ((List<Map<String, Object>>) set.toMap().get("replicas")).get(0);
+        assertEquals(false, replicaStatus.get("healthy"));
+        assertEquals("connection refused", replicaStatus.get("error"));
+    }
+
+    @Test
+    void parsesReplicaSpecs() throws Exception {
+        List<ReadReplicaRouter.ReplicaSpec> fromJson = ReadReplicaRouter.parseSpecs(
+            "[\"jdbc:mysql://r1:3306/db\", {\"host\": \"r2\", \"port\": 3307, \"max_lag_ms\": 500}]");
+        assertEquals(2, fromJson.size());
+        assertEquals("jdbc:mysql://r1:3306/db", fromJson.get(0).getUrl());
+        assertEquals("r2", fromJson.get(1).getHost());
+        assertEquals(Integer.valueOf(3307), fromJson.get(1).getPort());
+        assertEquals(500L, fromJson.get(1).getMaxLagMs());
+
+        assertTrue(ReadReplicaRouter.parseSpecs(null).isEmpty());
+        assertEquals(1, ReadReplicaRouter.parseSpecs(List.of(Map.of("url", REPLICA_URL))).size());
+        assertThrows(IOException.class, () -> ReadReplicaRouter.parseSpecs(List.of(Map.of("port", 3306))));
+    }
+
+    @Test
+    void metadataServiceRoutesDefaultDatabaseReadsOnly() throws Exception {
+        DatabaseMetadataService service = new DatabaseMetadataService();
+        DatabaseConfig.DatabaseConnectionManager connectionManager = mock(DatabaseConfig.DatabaseConnectionManager.class);
+        Config config = mock(Config.class);
+        when(connectionManager.getJdbcUrl()).thenReturn(PRIMARY_URL);
+        when(connectionManager.getConfig()).thenReturn(config);
+        when(config.getDbType()).thenReturn("h2");
+        when(config.getDbUser()).thenReturn("sa");
+        when(config.getDbPassword()).thenReturn("");
+        ReflectionTestUtils.setField(service, "connectionManager", connectionManager);
+        ReflectionTestUtils.setField(service, "defaultReadReplicaUrls", List.of(REPLICA_URL));
+        ReflectionTestUtils.setField(service, "poolMaxSize", 2);
+        ReflectionTestUtils.setField(service, "poolIdleTimeoutMs", 600_000L);
+        ReflectionTestUtils.setField(service, "poolMaxLifetimeMs", 1_800_000L);
+        ReflectionTestUtils.setField(service, "poolConnectionTimeoutMs", 5_000L);
+        try {
+            assertEquals("primary", role(service.getReadConnectionForDatabase(null)));
+            assertEquals("replica", ReadRouting.call(ReadRouting.QUERY,
+                () -> role(service.getReadConnectionForDatabase(null))));
+            assertEquals("primary", ReadRouting.call(ReadRouting.QUERY,
+                () -> role(service.getConnectionForDatabase(null))));
+            assertEquals("replica", role(service.getReadDataSourceForDatabase(null, ReadRouting.COMPARISON).getConnection()));
+
+            Map<String, Object> status = service.getReadReplicaStatus();
+            assertEquals(true, status.get("enabled"));
+            assertNotNull(status.get("databases"));
+        } finally {
+            service.destroy();
+        }
+    }
+}
@@ -89,6 +89,8 @@ export type MetricResult = {
   columns?: string[];
   calculatedAt: string;
   sql?: string;
+  // 批量查询中该项失败或超时的原因
+  error?: string;
 };
 
 export type MetricDataPoint = {